@@ -14,7 +14,10 @@
  */
 package edu.uci.ics.hyracks.api.application;
 
+import java.util.Properties;
+
 import edu.uci.ics.hyracks.api.context.IHyracksRootContext;
+import edu.uci.ics.hyracks.api.job.profiling.counters.ICounterSource;
 
 /**
  * Application Context at the Node Controller for an application.
@@ -37,6 +40,15 @@ public interface INCApplicationContext extends IApplicationContext {
      */
     public IHyracksRootContext getRootContext();
 
+    /**
+     * Gets the Node Controller settings that applications may use to configure
+     * their node-local resources, such as buffer caches. Keys are the Node
+     * Controller option names without the leading dash.
+     * 
+     * @return the Node Properties.
+     */
+    public Properties getNodeProperties();
+
     /**
      * Set an object that can be later retrieved by the
      * {@link #getApplicationObject()} call.
@@ -53,4 +65,15 @@ public interface INCApplicationContext extends IApplicationContext {
      * @return Application Object
      */
     public Object getApplicationObject();
+
+    /**
+     * Register a source of node-wide counters, such as the statistics of a
+     * buffer cache. The counters of all registered sources are sent to the
+     * Cluster Controller with every heartbeat, and are shown on the node page
+     * of the admin console.
+     * 
+     * @param counterSource
+     *            Counter Source
+     */
+    public void registerCounterSource(ICounterSource counterSource);
 }
\ No newline at end of file
@@ -14,8 +14,122 @@
  */
 package edu.uci.ics.hyracks.api.comm;
 
+import java.nio.ByteBuffer;
+
+import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
+
+/**
+ * Frames are normally frameSize bytes long. A tuple that does not fit into an
+ * empty frame is carried by a large frame whose size is a multiple of
+ * frameSize and that is laid out like any other frame, relative to its
+ * capacity. Readers and byte streams (network channels, run files) only move
+ * frameSize chunks, so a large frame of k chunks is preceded by a header frame
+ * of frameSize bytes whose tuple count is -k, followed by the k chunks of the
+ * large frame in order.
+ */
 public class FrameHelper {
     public static int getTupleCountOffset(int frameSize) {
         return frameSize - 4;
     }
-}
\ No newline at end of file
+
+    /**
+     * Gets the size of the smallest frame, a multiple of frameSize, that
+     * holds minBytes bytes.
+     */
+    public static int getFrameSize(int frameSize, int minBytes) {
+        return Math.max(1, (minBytes + frameSize - 1) / frameSize) * frameSize;
+    }
+
+    public static boolean isLargeFrameHeader(ByteBuffer frame) {
+        return frame.getInt(getTupleCountOffset(frame.capacity())) < 0;
+    }
+
+    /**
+     * Gets the number of chunks that follow a large frame header.
+     */
+    public static int getLargeFrameChunkCount(ByteBuffer header) {
+        return -header.getInt(getTupleCountOffset(header.capacity()));
+    }
+
+    public static void setLargeFrameHeader(ByteBuffer header, int nChunks) {
+        header.putInt(getTupleCountOffset(header.capacity()), -nChunks);
+    }
+
+    /**
+     * Creates the header that precedes the given large frame in a byte
+     * stream.
+     */
+    public static ByteBuffer createLargeFrameHeader(int frameSize, ByteBuffer largeFrame) {
+        ByteBuffer header = ByteBuffer.allocate(frameSize);
+        setLargeFrameHeader(header, largeFrame.capacity() / frameSize);
+        return header;
+    }
+
+    /**
+     * Copies the given chunk of a large frame into dest, whose capacity is
+     * the chunk size, and makes dest readable.
+     */
+    public static void copyChunk(ByteBuffer largeFrame, int chunk, ByteBuffer dest) {
+        int chunkSize = dest.capacity();
+        ByteBuffer src = largeFrame.duplicate();
+        src.limit((chunk + 1) * chunkSize);
+        src.position(chunk * chunkSize);
+        dest.clear();
+        dest.put(src);
+        dest.flip();
+    }
+
+    /**
+     * Reads the next frame from the reader into buffer. If the reader delivers
+     * a large frame header, the chunks that follow are collected into a new
+     * large frame, which is returned instead of buffer.
+     * 
+     * @return the frame that was read, or null at the end of the input
+     */
+    public static ByteBuffer readFrame(IFrameReader reader, ByteBuffer buffer) throws HyracksDataException {
+        if (!reader.nextFrame(buffer)) {
+            return null;
+        }
+        if (!isLargeFrameHeader(buffer)) {
+            return buffer;
+        }
+        int chunkSize = buffer.capacity();
+        int nChunks = getLargeFrameChunkCount(buffer);
+        ByteBuffer largeFrame = ByteBuffer.allocate(nChunks * chunkSize);
+        for (int i = 0; i < nChunks; ++i) {
+            if (!reader.nextFrame(buffer)) {
+                throw new HyracksDataException("Input ended inside a large frame");
+            }
+            System.arraycopy(buffer.array(), 0, largeFrame.array(), i * chunkSize, chunkSize);
+        }
+        // Positioned like a buffer the reader filled.
+        largeFrame.position(largeFrame.capacity());
+        return largeFrame;
+    }
+
+    /**
+     * Reads the chunks of the large frame whose header was borrowed from the
+     * reader. The header and the chunks are returned to the reader.
+     * 
+     * @return the large frame, which is not lent
+     */
+    public static ByteBuffer readLargeFrame(ILendingFrameReader reader, ByteBuffer header)
+            throws HyracksDataException {
+        int chunkSize = header.capacity();
+        int nChunks = getLargeFrameChunkCount(header);
+        reader.returnFrame(header);
+        ByteBuffer largeFrame = ByteBuffer.allocate(nChunks * chunkSize);
+        for (int i = 0; i < nChunks; ++i) {
+            ByteBuffer chunk = reader.borrowFrame();
+            if (chunk == null) {
+                throw new HyracksDataException("Input ended inside a large frame");
+            }
+            chunk.position(0);
+            chunk.limit(chunkSize);
+            largeFrame.put(chunk);
+            reader.returnFrame(chunk);
+        }
+        largeFrame.flip();
+        return largeFrame;
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.uci.ics.hyracks.api.comm;
+
+import java.nio.ByteBuffer;
+
+import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
+
+/**
+ * A frame reader that can lend out the frames it received, e.g., the buffers
+ * a network channel filled, instead of copying them into a frame of the
+ * caller. A lent frame belongs to the caller until it is returned.
+ */
+public interface ILendingFrameReader extends IFrameReader {
+    /**
+     * Lends out the next frame. Only one frame can be borrowed at a time.
+     * 
+     * @return the next frame, or null at the end of the input
+     */
+    public ByteBuffer borrowFrame() throws HyracksDataException;
+
+    /**
+     * Gives back the frame that was borrowed last.
+     */
+    public void returnFrame(ByteBuffer frame);
+}
@@ -21,6 +21,12 @@ import edu.uci.ics.hyracks.api.io.IIOManager;
 public interface IHyracksCommonContext {
     public ByteBuffer allocateFrame();
 
+    /**
+     * Returns a frame obtained from allocateFrame() that the caller no longer
+     * references, so that it can be handed out again.
+     */
+    public void deallocateFrame(ByteBuffer frame);
+
     public int getFrameSize();
 
     public IIOManager getIOManager();
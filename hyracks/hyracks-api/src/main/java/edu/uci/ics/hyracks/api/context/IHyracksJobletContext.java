@@ -19,6 +19,7 @@ import edu.uci.ics.hyracks.api.io.IWorkspaceFileFactory;
 import edu.uci.ics.hyracks.api.job.JobId;
 import edu.uci.ics.hyracks.api.job.profiling.counters.ICounterContext;
 import edu.uci.ics.hyracks.api.resources.IDeallocatableRegistry;
+import edu.uci.ics.hyracks.api.resources.IMemoryBudget;
 
 public interface IHyracksJobletContext extends IHyracksCommonContext, IWorkspaceFileFactory, IDeallocatableRegistry {
     public INCApplicationContext getApplicationContext();
@@ -26,4 +27,6 @@ public interface IHyracksJobletContext extends IHyracksCommonContext, IWorkspace
     public JobId getJobId();
 
     public ICounterContext getCounterContext();
+
+    public IMemoryBudget getMemoryBudget();
 }
\ No newline at end of file
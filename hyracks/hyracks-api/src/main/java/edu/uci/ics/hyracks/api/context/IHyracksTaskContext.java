@@ -19,6 +19,7 @@ import edu.uci.ics.hyracks.api.io.IWorkspaceFileFactory;
 import edu.uci.ics.hyracks.api.job.IOperatorEnvironment;
 import edu.uci.ics.hyracks.api.job.profiling.counters.ICounterContext;
 import edu.uci.ics.hyracks.api.resources.IDeallocatableRegistry;
+import edu.uci.ics.hyracks.api.resources.IMemoryBudget;
 
 public interface IHyracksTaskContext extends IHyracksCommonContext, IWorkspaceFileFactory, IDeallocatableRegistry,
         IOperatorEnvironment {
@@ -27,4 +28,6 @@ public interface IHyracksTaskContext extends IHyracksCommonContext, IWorkspaceFi
     public TaskAttemptId getTaskAttemptId();
 
     public ICounterContext getCounterContext();
+
+    public IMemoryBudget getMemoryBudget();
 }
\ No newline at end of file
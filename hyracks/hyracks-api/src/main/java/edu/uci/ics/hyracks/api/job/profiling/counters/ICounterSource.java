@@ -0,0 +1,31 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.uci.ics.hyracks.api.job.profiling.counters;
+
+import java.util.Map;
+
+/**
+ * Source of counters that are maintained outside of an {@link ICounterContext}, such as the statistics of a buffer
+ * cache, and are read when they are reported.
+ */
+public interface ICounterSource {
+    /**
+     * Put the current value of every counter of the source into a map.
+     * 
+     * @param counters
+     *            - Map from the fully-qualified names of the counters to their values.
+     */
+    public void getCounters(Map<String, Long> counters);
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.uci.ics.hyracks.api.resources;
+
+/**
+ * Memory that operators reserve before they use it, counted in frames. A
+ * task's budget is bounded by the budget of its job, which is bounded by the
+ * memory of the node. An operator that is granted fewer frames than it asked
+ * for is expected to spill earlier instead of allocating more.
+ */
+public interface IMemoryBudget {
+    /**
+     * @return the number of frames that can currently be reserved.
+     */
+    public int getAvailableFrames();
+
+    /**
+     * @return the number of frames currently reserved against this budget.
+     */
+    public int getReservedFrames();
+
+    /**
+     * Reserves as many frames as are available, up to maxFrames. At least
+     * minFrames are always granted, even if that exceeds the budget, so that
+     * an operator can make progress.
+     * 
+     * @return the number of frames reserved, between minFrames and maxFrames.
+     */
+    public int reserveFrames(int minFrames, int maxFrames);
+
+    /**
+     * Returns frames reserved by reserveFrames() to the budget.
+     */
+    public void releaseFrames(int nFrames);
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.uci.ics.hyracks.api.util;
+
+/**
+ * Lets the executor that runs a task know when the task waits for other
+ * tasks, e.g., for an input frame or for room to send an output frame. An
+ * executor that only runs a bounded number of tasks at a time installs an
+ * {@link IBlockingListener} for its threads and runs another task while one
+ * waits. On threads without a listener these methods just wait.
+ */
+public class ManagedBlocking {
+    private static final ThreadLocal<IBlockingListener> listener = new ThreadLocal<IBlockingListener>();
+
+    public static void setListener(IBlockingListener l) {
+        listener.set(l);
+    }
+
+    public static void beginBlocking() {
+        IBlockingListener l = listener.get();
+        if (l != null) {
+            l.beginBlocking();
+        }
+    }
+
+    public static void endBlocking() {
+        IBlockingListener l = listener.get();
+        if (l != null) {
+            l.endBlocking();
+        }
+    }
+
+    /**
+     * Waits on the given monitor, which the caller holds, as
+     * {@link Object#wait()} does.
+     */
+    public static void waitOn(Object monitor) throws InterruptedException {
+        beginBlocking();
+        try {
+            monitor.wait();
+        } finally {
+            endBlocking();
+        }
+    }
+}
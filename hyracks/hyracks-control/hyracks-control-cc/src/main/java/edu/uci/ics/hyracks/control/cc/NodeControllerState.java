@@ -14,6 +14,7 @@
  */
 package edu.uci.ics.hyracks.control.cc;
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -107,6 +108,8 @@ public class NodeControllerState {
 
     private final long[] netSignalingBytesWritten;
 
+    private final long[] netCreditStalls;
+
     private final long[] ipcMessagesSent;
 
     private final long[] ipcMessageBytesSent;
@@ -115,6 +118,18 @@ public class NodeControllerState {
 
     private final long[] ipcMessageBytesReceived;
 
+    private final int[] operatorMemoryFrames;
+
+    private final int[] operatorMemoryReservedFrames;
+
+    private final int[] framePoolFreeFrames;
+
+    private final long[] framePoolAllocatedFrames;
+
+    private final long[] framePoolReusedFrames;
+
+    private Map<String, Long> counters;
+
     private int rrdPtr;
 
     private int lastHeartbeatDuration;
@@ -164,10 +179,17 @@ public class NodeControllerState {
         netPayloadBytesWritten = new long[RRD_SIZE];
         netSignalingBytesRead = new long[RRD_SIZE];
         netSignalingBytesWritten = new long[RRD_SIZE];
+        netCreditStalls = new long[RRD_SIZE];
         ipcMessagesSent = new long[RRD_SIZE];
         ipcMessageBytesSent = new long[RRD_SIZE];
         ipcMessagesReceived = new long[RRD_SIZE];
         ipcMessageBytesReceived = new long[RRD_SIZE];
+        operatorMemoryFrames = new int[RRD_SIZE];
+        operatorMemoryReservedFrames = new int[RRD_SIZE];
+        framePoolFreeFrames = new int[RRD_SIZE];
+        framePoolAllocatedFrames = new long[RRD_SIZE];
+        framePoolReusedFrames = new long[RRD_SIZE];
+        counters = new HashMap<String, Long>();
 
         rrdPtr = 0;
     }
@@ -196,10 +218,19 @@ public class NodeControllerState {
         netPayloadBytesWritten[rrdPtr] = hbData.netPayloadBytesWritten;
         netSignalingBytesRead[rrdPtr] = hbData.netSignalingBytesRead;
         netSignalingBytesWritten[rrdPtr] = hbData.netSignalingBytesWritten;
+        netCreditStalls[rrdPtr] = hbData.netCreditStalls;
         ipcMessagesSent[rrdPtr] = hbData.ipcMessagesSent;
         ipcMessageBytesSent[rrdPtr] = hbData.ipcMessageBytesSent;
         ipcMessagesReceived[rrdPtr] = hbData.ipcMessagesReceived;
         ipcMessageBytesReceived[rrdPtr] = hbData.ipcMessageBytesReceived;
+        operatorMemoryFrames[rrdPtr] = hbData.operatorMemoryFrames;
+        operatorMemoryReservedFrames[rrdPtr] = hbData.operatorMemoryReservedFrames;
+        framePoolFreeFrames[rrdPtr] = hbData.framePoolFreeFrames;
+        framePoolAllocatedFrames[rrdPtr] = hbData.framePoolAllocatedFrames;
+        framePoolReusedFrames[rrdPtr] = hbData.framePoolReusedFrames;
+        if (hbData.counters != null) {
+            counters = hbData.counters;
+        }
         rrdPtr = (rrdPtr + 1) % RRD_SIZE;
     }
 
@@ -271,10 +302,17 @@ public class NodeControllerState {
         o.put("net-payload-bytes-written", netPayloadBytesWritten);
         o.put("net-signaling-bytes-read", netSignalingBytesRead);
         o.put("net-signaling-bytes-written", netSignalingBytesWritten);
+        o.put("net-credit-stalls", netCreditStalls);
         o.put("ipc-messages-sent", ipcMessagesSent);
         o.put("ipc-message-bytes-sent", ipcMessageBytesSent);
         o.put("ipc-messages-received", ipcMessagesReceived);
         o.put("ipc-message-bytes-received", ipcMessageBytesReceived);
+        o.put("operator-memory-frames", operatorMemoryFrames);
+        o.put("operator-memory-reserved-frames", operatorMemoryReservedFrames);
+        o.put("frame-pool-free-frames", framePoolFreeFrames);
+        o.put("frame-pool-allocated-frames", framePoolAllocatedFrames);
+        o.put("frame-pool-reused-frames", framePoolReusedFrames);
+        o.put("counters", counters);
 
         return o;
     }
@@ -41,6 +41,17 @@ $(function() {
             argsHTML += "<span>" + args[i] + "</span>";
         }
         $('#input-arguments')[0].innerHTML = argsHTML;
+        var counters = result['counters'];
+        var counterNames = [];
+        for ( var name in counters) {
+            counterNames.push(name);
+        }
+        counterNames.sort();
+        var countersHTML = "";
+        for ( var i = 0; i < counterNames.length; ++i) {
+            countersHTML += "<tr><td>" + counterNames[i] + "</td><td>" + counters[counterNames[i]] + "</td></tr>";
+        }
+        $('#counters')[0].innerHTML = countersHTML;
         var sysLoad = result['system-load-averages'];
         var heapUsageInitSizes = result['heap-init-sizes'];
         var heapUsageUsedSizes = result['heap-used-sizes'];
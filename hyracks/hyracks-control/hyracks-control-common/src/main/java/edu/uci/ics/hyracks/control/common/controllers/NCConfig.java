@@ -16,6 +16,7 @@ package edu.uci.ics.hyracks.control.common.controllers;
 
 import java.io.Serializable;
 import java.util.List;
+import java.util.Properties;
 
 import org.kohsuke.args4j.Option;
 
@@ -55,6 +56,36 @@ public class NCConfig implements Serializable {
     @Option(name = "-net-thread-count", usage = "Number of threads to use for Network I/O (default: 1)")
     public int nNetThreads = 1;
 
+    @Option(name = "-net-max-thread-count", usage = "Number of threads that Network I/O can grow to as connections are added (default: 0, the number of processors)")
+    public int maxNetThreads = 0;
+
+    @Option(name = "-net-connections-per-node", usage = "Number of connections to open to every other node, across which the channels to that node are spread (default: 1)")
+    public int netConnectionsPerNode = 1;
+
+    @Option(name = "-buffer-cache-page-replacement", usage = "Page replacement strategy for the buffer caches of applications on this node: clock, 2q (default: clock)")
+    public String bufferCachePageReplacement = "clock";
+
+    @Option(name = "-buffer-cache-flushers-per-device", usage = "Number of threads per IO device that write dirty pages of the buffer caches of applications on this node back (default: 1)")
+    public int bufferCacheFlushersPerDevice = 1;
+
+    @Option(name = "-buffer-cache-dirty-page-high-water-mark", usage = "Fraction of the pages of a buffer cache that may be dirty before they are written back (default: 0.5)")
+    public float bufferCacheDirtyPageHighWaterMark = 0.5f;
+
+    @Option(name = "-frame-pool-capacity", usage = "Number of released frames kept for reuse (default: 1024)")
+    public int framePoolCapacity = 1024;
+
+    @Option(name = "-operator-memory", usage = "Bytes of frames that operators on this node can reserve (default: 0, half of the maximum heap size)")
+    public long operatorMemory = 0;
+
+    @Option(name = "-job-operator-memory", usage = "Bytes of frames that the operators of one job can reserve on this node (default: 0, no limit)")
+    public long jobOperatorMemory = 0;
+
+    @Option(name = "-task-operator-memory", usage = "Bytes of frames that the operators of one task can reserve (default: 0, no limit)")
+    public long taskOperatorMemory = 0;
+
+    @Option(name = "-running-task-limit", usage = "Number of tasks that run at the same time, not counting tasks that wait for frames, e.g., the number of cores. This bounds runnable tasks, not threads: every task that waits for frames still holds a thread of its own (default: 0, every task runs right away on a thread of its own)")
+    public int runningTaskLimit = 0;
+
     public void toCommandLine(List<String> cList) {
         cList.add("-cc-host");
         cList.add(ccHost);
@@ -80,5 +111,41 @@ public class NCConfig implements Serializable {
         cList.add(dcacheClientPath);
         cList.add("-net-thread-count");
         cList.add(String.valueOf(nNetThreads));
+        cList.add("-net-max-thread-count");
+        cList.add(String.valueOf(maxNetThreads));
+        cList.add("-net-connections-per-node");
+        cList.add(String.valueOf(netConnectionsPerNode));
+        cList.add("-buffer-cache-page-replacement");
+        cList.add(bufferCachePageReplacement);
+        cList.add("-buffer-cache-flushers-per-device");
+        cList.add(String.valueOf(bufferCacheFlushersPerDevice));
+        cList.add("-buffer-cache-dirty-page-high-water-mark");
+        cList.add(String.valueOf(bufferCacheDirtyPageHighWaterMark));
+        cList.add("-frame-pool-capacity");
+        cList.add(String.valueOf(framePoolCapacity));
+        cList.add("-operator-memory");
+        cList.add(String.valueOf(operatorMemory));
+        cList.add("-job-operator-memory");
+        cList.add(String.valueOf(jobOperatorMemory));
+        cList.add("-task-operator-memory");
+        cList.add(String.valueOf(taskOperatorMemory));
+        cList.add("-running-task-limit");
+        cList.add(String.valueOf(runningTaskLimit));
+    }
+
+    /**
+     * Gets the settings that are made available to applications through
+     * INCApplicationContext.getNodeProperties(), keyed by option name without
+     * the leading dash.
+     */
+    public Properties toNodeProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("frame-size", String.valueOf(frameSize));
+        properties.setProperty("iodevices", ioDevices);
+        properties.setProperty("buffer-cache-page-replacement", bufferCachePageReplacement);
+        properties.setProperty("buffer-cache-flushers-per-device", String.valueOf(bufferCacheFlushersPerDevice));
+        properties.setProperty("buffer-cache-dirty-page-high-water-mark",
+                String.valueOf(bufferCacheDirtyPageHighWaterMark));
+        return properties;
     }
 }
\ No newline at end of file
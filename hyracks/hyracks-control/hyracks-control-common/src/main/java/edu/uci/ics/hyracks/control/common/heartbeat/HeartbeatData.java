@@ -15,6 +15,7 @@
 package edu.uci.ics.hyracks.control.common.heartbeat;
 
 import java.io.Serializable;
+import java.util.Map;
 
 public class HeartbeatData implements Serializable {
     private static final long serialVersionUID = 1L;
@@ -37,8 +38,15 @@ public class HeartbeatData implements Serializable {
     public long netPayloadBytesWritten;
     public long netSignalingBytesRead;
     public long netSignalingBytesWritten;
+    public long netCreditStalls;
     public long ipcMessagesSent;
     public long ipcMessageBytesSent;
     public long ipcMessagesReceived;
     public long ipcMessageBytesReceived;
+    public int operatorMemoryFrames;
+    public int operatorMemoryReservedFrames;
+    public int framePoolFreeFrames;
+    public long framePoolAllocatedFrames;
+    public long framePoolReusedFrames;
+    public Map<String, Long> counters;
 }
\ No newline at end of file
@@ -51,6 +51,7 @@ import edu.uci.ics.hyracks.control.common.job.profiling.om.TaskProfile;
 import edu.uci.ics.hyracks.control.nc.io.IOManager;
 import edu.uci.ics.hyracks.control.nc.io.WorkspaceFileFactory;
 import edu.uci.ics.hyracks.control.nc.resources.DefaultDeallocatableRegistry;
+import edu.uci.ics.hyracks.control.nc.resources.MemoryBudget;
 
 public class Joblet implements IHyracksJobletContext, ICounterContext {
     private final NodeControllerService nodeController;
@@ -75,6 +76,8 @@ public class Joblet implements IHyracksJobletContext, ICounterContext {
 
     private final IWorkspaceFileFactory fileFactory;
 
+    private final MemoryBudget memoryBudget;
+
     private IJobletEventListener jobletEventListener;
 
     private JobStatus cleanupStatus;
@@ -93,6 +96,7 @@ public class Joblet implements IHyracksJobletContext, ICounterContext {
         counterMap = new HashMap<String, Counter>();
         deallocatableRegistry = new DefaultDeallocatableRegistry();
         fileFactory = new WorkspaceFileFactory(this, (IOManager) appCtx.getRootContext().getIOManager());
+        memoryBudget = new MemoryBudget(nodeController.getMemoryBudget(), nodeController.getJobMemoryLimit());
         cleanupPending = false;
     }
 
@@ -173,6 +177,11 @@ public class Joblet implements IHyracksJobletContext, ICounterContext {
         return this;
     }
 
+    @Override
+    public MemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
     @Override
     public void registerDeallocatable(IDeallocatable deallocatable) {
         deallocatableRegistry.registerDeallocatable(deallocatable);
@@ -183,6 +192,7 @@ public class Joblet implements IHyracksJobletContext, ICounterContext {
             @Override
             public void run() {
                 deallocatableRegistry.close();
+                memoryBudget.close();
             }
         });
     }
@@ -192,6 +202,11 @@ public class Joblet implements IHyracksJobletContext, ICounterContext {
         return appCtx.getRootContext().allocateFrame();
     }
 
+    @Override
+    public void deallocateFrame(ByteBuffer frame) {
+        appCtx.getRootContext().deallocateFrame(frame);
+    }
+
     @Override
     public int getFrameSize() {
         return appCtx.getRootContext().getFrameSize();
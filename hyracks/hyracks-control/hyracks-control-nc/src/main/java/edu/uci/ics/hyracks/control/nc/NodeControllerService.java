@@ -26,6 +26,7 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
@@ -59,6 +60,9 @@ import edu.uci.ics.hyracks.control.nc.application.NCApplicationContext;
 import edu.uci.ics.hyracks.control.nc.io.IOManager;
 import edu.uci.ics.hyracks.control.nc.net.NetworkManager;
 import edu.uci.ics.hyracks.control.nc.partitions.PartitionManager;
+import edu.uci.ics.hyracks.control.nc.resources.FramePool;
+import edu.uci.ics.hyracks.control.nc.resources.MemoryBudget;
+import edu.uci.ics.hyracks.control.nc.resources.TaskExecutor;
 import edu.uci.ics.hyracks.control.nc.runtime.RootHyracksContext;
 import edu.uci.ics.hyracks.control.nc.work.AbortTasksWork;
 import edu.uci.ics.hyracks.control.nc.work.BuildJobProfilesWork;
@@ -102,6 +106,12 @@ public class NodeControllerService extends AbstractRemoteService {
 
     private final Executor executor;
 
+    private final Executor taskExecutor;
+
+    private final FramePool framePool;
+
+    private final MemoryBudget memoryBudget;
+
     private NodeParameters nodeParameters;
 
     private HeartbeatTask heartbeatTask;
@@ -124,15 +134,24 @@ public class NodeControllerService extends AbstractRemoteService {
         this.ncConfig = ncConfig;
         id = ncConfig.nodeId;
         executor = Executors.newCachedThreadPool();
+        taskExecutor = ncConfig.runningTaskLimit > 0 ? new TaskExecutor(ncConfig.runningTaskLimit) : executor;
         NodeControllerIPCI ipci = new NodeControllerIPCI();
         ipc = new IPCSystem(new InetSocketAddress(ncConfig.clusterNetIPAddress, 0), ipci,
                 new CCNCFunctions.SerializerDeserializer());
-        this.ctx = new RootHyracksContext(ncConfig.frameSize, new IOManager(getDevices(ncConfig.ioDevices), executor));
+        framePool = new FramePool(ncConfig.frameSize, ncConfig.framePoolCapacity);
+        long operatorMemory = ncConfig.operatorMemory > 0 ? ncConfig.operatorMemory
+                : Runtime.getRuntime().maxMemory() / 2;
+        memoryBudget = new MemoryBudget(null, getFrameCount(operatorMemory, ncConfig.frameSize));
+        this.ctx = new RootHyracksContext(ncConfig.frameSize, new IOManager(getDevices(ncConfig.ioDevices), executor),
+                framePool);
         if (id == null) {
             throw new Exception("id not set");
         }
         partitionManager = new PartitionManager(this);
-        netManager = new NetworkManager(ctx, getIpAddress(ncConfig), partitionManager, ncConfig.nNetThreads);
+        int maxNetThreads = ncConfig.maxNetThreads > 0 ? ncConfig.maxNetThreads : Runtime.getRuntime()
+                .availableProcessors();
+        netManager = new NetworkManager(ctx, getIpAddress(ncConfig), partitionManager, ncConfig.nNetThreads,
+                maxNetThreads, ncConfig.netConnectionsPerNode);
 
         queue = new WorkQueue();
         jobletMap = new Hashtable<JobId, Joblet>();
@@ -152,6 +171,32 @@ public class NodeControllerService extends AbstractRemoteService {
         return ctx;
     }
 
+    public FramePool getFramePool() {
+        return framePool;
+    }
+
+    /**
+     * @return the budget of all operators on this node, which the budgets of
+     *         joblets are created from.
+     */
+    public MemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public int getJobMemoryLimit() {
+        return ncConfig.jobOperatorMemory > 0 ? getFrameCount(ncConfig.jobOperatorMemory, ncConfig.frameSize)
+                : MemoryBudget.UNLIMITED;
+    }
+
+    public int getTaskMemoryLimit() {
+        return ncConfig.taskOperatorMemory > 0 ? getFrameCount(ncConfig.taskOperatorMemory, ncConfig.frameSize)
+                : MemoryBudget.UNLIMITED;
+    }
+
+    private static int getFrameCount(long bytes, int frameSize) {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, bytes / frameSize));
+    }
+
     private static List<IODeviceHandle> getDevices(String ioDevices) {
         List<IODeviceHandle> devices = new ArrayList<IODeviceHandle>();
         StringTokenizer tok = new StringTokenizer(ioDevices, ",");
@@ -257,6 +302,10 @@ public class NodeControllerService extends AbstractRemoteService {
         return executor;
     }
 
+    public Executor getTaskExecutor() {
+        return taskExecutor;
+    }
+
     public NCConfig getConfiguration() throws Exception {
         return ncConfig;
     }
@@ -292,6 +341,7 @@ public class NodeControllerService extends AbstractRemoteService {
             hbData = new HeartbeatData();
             hbData.gcCollectionCounts = new long[gcMXBeans.size()];
             hbData.gcCollectionTimes = new long[gcMXBeans.size()];
+            hbData.counters = new HashMap<String, Long>();
         }
 
         @Override
@@ -322,6 +372,7 @@ public class NodeControllerService extends AbstractRemoteService {
             hbData.netPayloadBytesWritten = netPC.getPayloadBytesWritten();
             hbData.netSignalingBytesRead = netPC.getSignalingBytesRead();
             hbData.netSignalingBytesWritten = netPC.getSignalingBytesWritten();
+            hbData.netCreditStalls = netPC.getCreditStalls();
 
             IPCPerformanceCounters ipcPC = ipc.getPerformanceCounters();
             hbData.ipcMessagesSent = ipcPC.getMessageSentCount();
@@ -329,6 +380,17 @@ public class NodeControllerService extends AbstractRemoteService {
             hbData.ipcMessagesReceived = ipcPC.getMessageReceivedCount();
             hbData.ipcMessageBytesReceived = ipcPC.getMessageBytesReceived();
 
+            hbData.operatorMemoryFrames = memoryBudget.getLimit();
+            hbData.operatorMemoryReservedFrames = memoryBudget.getReservedFrames();
+            hbData.framePoolFreeFrames = framePool.getFreeFrameCount();
+            hbData.framePoolAllocatedFrames = framePool.getAllocatedFrameCount();
+            hbData.framePoolReusedFrames = framePool.getReusedFrameCount();
+
+            hbData.counters.clear();
+            for (NCApplicationContext appCtx : applications.values()) {
+                appCtx.getCounters(hbData.counters);
+            }
+
             try {
                 cc.nodeHeartbeat(id, hbData);
             } catch (Exception e) {
@@ -26,8 +26,10 @@ import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Semaphore;
 
+import edu.uci.ics.hyracks.api.comm.FrameHelper;
 import edu.uci.ics.hyracks.api.comm.IFrameReader;
 import edu.uci.ics.hyracks.api.comm.IFrameWriter;
+import edu.uci.ics.hyracks.api.comm.ILendingFrameReader;
 import edu.uci.ics.hyracks.api.comm.IPartitionCollector;
 import edu.uci.ics.hyracks.api.context.IHyracksJobletContext;
 import edu.uci.ics.hyracks.api.context.IHyracksTaskContext;
@@ -45,6 +47,8 @@ import edu.uci.ics.hyracks.api.job.profiling.counters.ICounter;
 import edu.uci.ics.hyracks.api.job.profiling.counters.ICounterContext;
 import edu.uci.ics.hyracks.api.partitions.PartitionId;
 import edu.uci.ics.hyracks.api.resources.IDeallocatable;
+import edu.uci.ics.hyracks.api.resources.IMemoryBudget;
+import edu.uci.ics.hyracks.api.util.ManagedBlocking;
 import edu.uci.ics.hyracks.control.common.job.PartitionState;
 import edu.uci.ics.hyracks.control.common.job.profiling.counters.Counter;
 import edu.uci.ics.hyracks.control.common.job.profiling.om.PartitionProfile;
@@ -52,10 +56,17 @@ import edu.uci.ics.hyracks.control.common.job.profiling.om.TaskProfile;
 import edu.uci.ics.hyracks.control.nc.io.IOManager;
 import edu.uci.ics.hyracks.control.nc.io.WorkspaceFileFactory;
 import edu.uci.ics.hyracks.control.nc.resources.DefaultDeallocatableRegistry;
+import edu.uci.ics.hyracks.control.nc.resources.MemoryBudget;
 import edu.uci.ics.hyracks.control.nc.work.NotifyTaskCompleteWork;
 import edu.uci.ics.hyracks.control.nc.work.NotifyTaskFailureWork;
 
 public class Task implements IHyracksTaskContext, ICounterContext, Runnable {
+    // Received frames that went to the operator without a copy.
+    public static final String LENT_FRAMES_COUNTER = "task.lent-frames";
+
+    // Received frames that were copied before they went to the operator.
+    public static final String COPIED_FRAMES_COUNTER = "task.copied-frames";
+
     private final Joblet joblet;
 
     private final TaskAttemptId taskAttemptId;
@@ -68,6 +79,8 @@ public class Task implements IHyracksTaskContext, ICounterContext, Runnable {
 
     private final DefaultDeallocatableRegistry deallocatableRegistry;
 
+    private final MemoryBudget memoryBudget;
+
     private final Map<String, Counter> counterMap;
 
     private final IOperatorEnvironment opEnv;
@@ -95,6 +108,7 @@ public class Task implements IHyracksTaskContext, ICounterContext, Runnable {
         this.executor = executor;
         fileFactory = new WorkspaceFileFactory(this, (IOManager) joblet.getIOManager());
         deallocatableRegistry = new DefaultDeallocatableRegistry();
+        memoryBudget = new MemoryBudget(joblet.getMemoryBudget(), joblet.getNodeController().getTaskMemoryLimit());
         counterMap = new HashMap<String, Counter>();
         opEnv = joblet.getEnvironment();
         partitionSendProfile = new Hashtable<PartitionId, PartitionProfile>();
@@ -114,6 +128,11 @@ public class Task implements IHyracksTaskContext, ICounterContext, Runnable {
         return joblet.allocateFrame();
     }
 
+    @Override
+    public void deallocateFrame(ByteBuffer frame) {
+        joblet.deallocateFrame(frame);
+    }
+
     @Override
     public int getFrameSize() {
         return joblet.getFrameSize();
@@ -141,6 +160,7 @@ public class Task implements IHyracksTaskContext, ICounterContext, Runnable {
 
     public void close() {
         deallocatableRegistry.close();
+        memoryBudget.close();
     }
 
     @Override
@@ -168,6 +188,11 @@ public class Task implements IHyracksTaskContext, ICounterContext, Runnable {
         return this;
     }
 
+    @Override
+    public IMemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
     public Joblet getJoblet() {
         return joblet;
     }
@@ -264,7 +289,12 @@ public class Task implements IHyracksTaskContext, ICounterContext, Runnable {
                     try {
                         pushFrames(collectors[0], operator.getInputFrameWriter(0));
                     } finally {
-                        sem.acquire(collectors.length - 1);
+                        ManagedBlocking.beginBlocking();
+                        try {
+                            sem.acquire(collectors.length - 1);
+                        } finally {
+                            ManagedBlocking.endBlocking();
+                        }
                     }
                 }
             } finally {
@@ -297,6 +327,8 @@ public class Task implements IHyracksTaskContext, ICounterContext, Runnable {
         if (aborted) {
             return;
         }
+        long lentFrames = 0;
+        long copiedFrames = 0;
         try {
             collector.open();
             try {
@@ -306,14 +338,43 @@ public class Task implements IHyracksTaskContext, ICounterContext, Runnable {
                 reader.open();
                 try {
                     writer.open();
-                    ByteBuffer buffer = allocateFrame();
-                    while (reader.nextFrame(buffer)) {
-                        if (aborted) {
-                            return;
+                    if (reader instanceof ILendingFrameReader) {
+                        // The frames the channels received go to the operator without a copy.
+                        ILendingFrameReader lendingReader = (ILendingFrameReader) reader;
+                        ByteBuffer frame;
+                        while ((frame = lendingReader.borrowFrame()) != null) {
+                            if (aborted) {
+                                lendingReader.returnFrame(frame);
+                                return;
+                            }
+                            if (FrameHelper.isLargeFrameHeader(frame)) {
+                                // The chunks are copied into one large frame.
+                                writer.nextFrame(FrameHelper.readLargeFrame(lendingReader, frame));
+                                ++copiedFrames;
+                                continue;
+                            }
+                            frame.position(0);
+                            frame.limit(frame.capacity());
+                            ++lentFrames;
+                            try {
+                                writer.nextFrame(frame);
+                            } finally {
+                                lendingReader.returnFrame(frame);
+                            }
                         }
-                        buffer.flip();
-                        writer.nextFrame(buffer);
-                        buffer.compact();
+                    } else {
+                        ByteBuffer buffer = allocateFrame();
+                        ByteBuffer frame;
+                        while ((frame = FrameHelper.readFrame(reader, buffer)) != null) {
+                            if (aborted) {
+                                return;
+                            }
+                            frame.flip();
+                            ++copiedFrames;
+                            writer.nextFrame(frame);
+                            frame.clear();
+                        }
+                        deallocateFrame(buffer);
                     }
                     writer.close();
                 } catch (Exception e) {
@@ -329,9 +390,16 @@ public class Task implements IHyracksTaskContext, ICounterContext, Runnable {
             throw new HyracksDataException(e);
         } catch (Exception e) {
             throw new HyracksDataException(e);
+        } finally {
+            updateFrameCounters(lentFrames, copiedFrames);
         }
     }
 
+    private synchronized void updateFrameCounters(long lentFrames, long copiedFrames) {
+        getCounter(LENT_FRAMES_COUNTER, true).update(lentFrames);
+        getCounter(COPIED_FRAMES_COUNTER, true).update(copiedFrames);
+    }
+
     @Override
     public void setTaskState(ITaskState taskState) {
         opEnv.setTaskState(taskState);
@@ -2,23 +2,33 @@ package edu.uci.ics.hyracks.control.nc.application;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import edu.uci.ics.hyracks.api.application.INCApplicationContext;
 import edu.uci.ics.hyracks.api.application.INCBootstrap;
 import edu.uci.ics.hyracks.api.context.IHyracksRootContext;
+import edu.uci.ics.hyracks.api.job.profiling.counters.ICounterSource;
 import edu.uci.ics.hyracks.control.common.application.ApplicationContext;
 import edu.uci.ics.hyracks.control.common.context.ServerContext;
 
 public class NCApplicationContext extends ApplicationContext implements INCApplicationContext {
     private final String nodeId;
     private final IHyracksRootContext rootCtx;
+    private final Properties nodeProperties;
     private Object appObject;
+    private final List<ICounterSource> counterSources;
 
-    public NCApplicationContext(ServerContext serverCtx, IHyracksRootContext rootCtx, String appName, String nodeId)
-            throws IOException {
+    public NCApplicationContext(ServerContext serverCtx, IHyracksRootContext rootCtx, String appName, String nodeId,
+            Properties nodeProperties) throws IOException {
         super(serverCtx, appName);
         this.nodeId = nodeId;
         this.rootCtx = rootCtx;
+        this.nodeProperties = nodeProperties;
+        counterSources = new CopyOnWriteArrayList<ICounterSource>();
     }
 
     @Override
@@ -48,6 +58,11 @@ public class NCApplicationContext extends ApplicationContext implements INCAppli
         return rootCtx;
     }
 
+    @Override
+    public Properties getNodeProperties() {
+        return nodeProperties;
+    }
+
     @Override
     public void setApplicationObject(Object object) {
         this.appObject = object;
@@ -57,4 +72,26 @@ public class NCApplicationContext extends ApplicationContext implements INCAppli
     public Object getApplicationObject() {
         return appObject;
     }
+
+    @Override
+    public void registerCounterSource(ICounterSource counterSource) {
+        counterSources.add(counterSource);
+    }
+
+    /**
+     * Puts the counters of the registered counter sources into a map. Their names are prefixed with the name of
+     * the application.
+     */
+    public void getCounters(Map<String, Long> counters) {
+        if (counterSources.isEmpty()) {
+            return;
+        }
+        Map<String, Long> appCounters = new HashMap<String, Long>();
+        for (ICounterSource counterSource : counterSources) {
+            counterSource.getCounters(appCounters);
+        }
+        for (Map.Entry<String, Long> e : appCounters.entrySet()) {
+            counters.put(appName + "." + e.getKey(), e.getValue());
+        }
+    }
 }
\ No newline at end of file
@@ -29,6 +29,7 @@ import edu.uci.ics.hyracks.api.io.FileReference;
 import edu.uci.ics.hyracks.api.io.IIOFuture;
 import edu.uci.ics.hyracks.api.io.IIOManager;
 import edu.uci.ics.hyracks.api.io.IODeviceHandle;
+import edu.uci.ics.hyracks.api.util.ManagedBlocking;
 
 public class IOManager implements IIOManager {
     private final List<IODeviceHandle> ioDevices;
@@ -190,7 +191,7 @@ public class IOManager implements IIOManager {
         @Override
         public synchronized int synchronize() throws HyracksDataException, InterruptedException {
             while (!complete) {
-                wait();
+                ManagedBlocking.waitOn(this);
             }
             if (exception != null) {
                 throw exception;
@@ -28,6 +28,7 @@ import edu.uci.ics.hyracks.api.dataflow.ConnectorDescriptorId;
 import edu.uci.ics.hyracks.api.exceptions.HyracksException;
 import edu.uci.ics.hyracks.api.job.JobId;
 import edu.uci.ics.hyracks.api.partitions.PartitionId;
+import edu.uci.ics.hyracks.api.util.ManagedBlocking;
 import edu.uci.ics.hyracks.control.nc.partitions.IPartitionRequestListener;
 import edu.uci.ics.hyracks.net.buffers.ICloseableBufferAcceptor;
 import edu.uci.ics.hyracks.net.exceptions.NetException;
@@ -51,10 +52,12 @@ public class NetworkManager {
     private NetworkAddress networkAddress;
 
     public NetworkManager(IHyracksRootContext ctx, InetAddress inetAddress,
-            IPartitionRequestListener partitionRequestListener, int nThreads) throws IOException {
+            IPartitionRequestListener partitionRequestListener, int nThreads, int maxThreads, int nConnectionsPerNode)
+            throws IOException {
         this.ctx = ctx;
         this.partitionRequestListener = partitionRequestListener;
-        md = new MuxDemux(new InetSocketAddress(inetAddress, 0), new ChannelOpenListener(), nThreads);
+        md = new MuxDemux(new InetSocketAddress(inetAddress, 0), new ChannelOpenListener(), nThreads, maxThreads,
+                nConnectionsPerNode);
     }
 
     public void start() throws IOException {
@@ -72,8 +75,14 @@ public class NetworkManager {
     }
 
     public ChannelControlBlock connect(SocketAddress remoteAddress) throws InterruptedException, NetException {
-        MultiplexedConnection mConn = md.connect((InetSocketAddress) remoteAddress);
-        return mConn.openChannel();
+        // hyracks-net does not know about ManagedBlocking, so the wait for the connection is reported here.
+        ManagedBlocking.beginBlocking();
+        try {
+            MultiplexedConnection mConn = md.connect((InetSocketAddress) remoteAddress);
+            return mConn.openChannel();
+        } finally {
+            ManagedBlocking.endBlocking();
+        }
     }
 
     private class ChannelOpenListener implements IChannelOpenListener {
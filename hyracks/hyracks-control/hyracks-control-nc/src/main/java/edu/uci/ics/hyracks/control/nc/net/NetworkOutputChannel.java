@@ -18,9 +18,11 @@ import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.Deque;
 
+import edu.uci.ics.hyracks.api.comm.FrameHelper;
 import edu.uci.ics.hyracks.api.comm.IFrameWriter;
 import edu.uci.ics.hyracks.api.context.IHyracksRootContext;
 import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
+import edu.uci.ics.hyracks.api.util.ManagedBlocking;
 import edu.uci.ics.hyracks.net.buffers.IBufferAcceptor;
 import edu.uci.ics.hyracks.net.protocols.muxdemux.ChannelControlBlock;
 
@@ -46,6 +48,29 @@ public class NetworkOutputChannel implements IFrameWriter {
 
     @Override
     public void nextFrame(ByteBuffer buffer) throws HyracksDataException {
+        ByteBuffer destBuffer = getEmptyBuffer();
+        if (buffer.capacity() > destBuffer.capacity()) {
+            // A large frame goes out as a header followed by its chunks.
+            int nChunks = buffer.capacity() / destBuffer.capacity();
+            destBuffer.clear();
+            FrameHelper.setLargeFrameHeader(destBuffer, nChunks);
+            ccb.getWriteInterface().getFullBufferAcceptor().accept(destBuffer);
+            for (int i = 0; i < nChunks; ++i) {
+                destBuffer = getEmptyBuffer();
+                FrameHelper.copyChunk(buffer, i, destBuffer);
+                ccb.getWriteInterface().getFullBufferAcceptor().accept(destBuffer);
+            }
+            return;
+        }
+        buffer.position(0);
+        buffer.limit(destBuffer.capacity());
+        destBuffer.clear();
+        destBuffer.put(buffer);
+        destBuffer.flip();
+        ccb.getWriteInterface().getFullBufferAcceptor().accept(destBuffer);
+    }
+
+    private ByteBuffer getEmptyBuffer() throws HyracksDataException {
         ByteBuffer destBuffer = null;
         synchronized (this) {
             while (true) {
@@ -57,18 +82,13 @@ public class NetworkOutputChannel implements IFrameWriter {
                     break;
                 }
                 try {
-                    wait();
+                    ManagedBlocking.waitOn(this);
                 } catch (InterruptedException e) {
                     throw new HyracksDataException(e);
                 }
             }
         }
-        buffer.position(0);
-        buffer.limit(destBuffer.capacity());
-        destBuffer.clear();
-        destBuffer.put(buffer);
-        destBuffer.flip();
-        ccb.getWriteInterface().getFullBufferAcceptor().accept(destBuffer);
+        return destBuffer;
     }
 
     @Override
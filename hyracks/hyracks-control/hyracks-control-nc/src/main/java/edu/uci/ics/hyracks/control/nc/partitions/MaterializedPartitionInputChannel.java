@@ -20,6 +20,7 @@ import java.util.Queue;
 
 import edu.uci.ics.hyracks.api.channels.IInputChannel;
 import edu.uci.ics.hyracks.api.channels.IInputChannelMonitor;
+import edu.uci.ics.hyracks.api.comm.FrameHelper;
 import edu.uci.ics.hyracks.api.comm.IFrameWriter;
 import edu.uci.ics.hyracks.api.context.IHyracksRootContext;
 import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
@@ -27,6 +28,8 @@ import edu.uci.ics.hyracks.api.partitions.IPartition;
 import edu.uci.ics.hyracks.api.partitions.PartitionId;
 
 public class MaterializedPartitionInputChannel implements IInputChannel {
+    private final int frameSize;
+
     private final Queue<ByteBuffer> emptyQueue;
 
     private final Queue<ByteBuffer> fullQueue;
@@ -43,6 +46,7 @@ public class MaterializedPartitionInputChannel implements IInputChannel {
 
     public MaterializedPartitionInputChannel(IHyracksRootContext ctx, int nBuffers, PartitionId pid,
             PartitionManager manager) {
+        frameSize = ctx.getFrameSize();
         this.emptyQueue = new ArrayDeque<ByteBuffer>(nBuffers);
         for (int i = 0; i < nBuffers; ++i) {
             emptyQueue.add(ctx.allocateFrame());
@@ -101,6 +105,29 @@ public class MaterializedPartitionInputChannel implements IInputChannel {
 
         @Override
         public void nextFrame(ByteBuffer buffer) throws HyracksDataException {
+            if (buffer.capacity() > frameSize) {
+                // A large frame is passed on as a header followed by its chunks.
+                int nChunks = buffer.capacity() / frameSize;
+                ByteBuffer header = getEmptyFrame();
+                header.clear();
+                FrameHelper.setLargeFrameHeader(header, nChunks);
+                addFullFrame(header);
+                for (int i = 0; i < nChunks; ++i) {
+                    ByteBuffer destFrame = getEmptyFrame();
+                    FrameHelper.copyChunk(buffer, i, destFrame);
+                    addFullFrame(destFrame);
+                }
+                return;
+            }
+            ByteBuffer destFrame = getEmptyFrame();
+            buffer.position(0);
+            buffer.limit(buffer.capacity());
+            destFrame.clear();
+            destFrame.put(buffer);
+            addFullFrame(destFrame);
+        }
+
+        private ByteBuffer getEmptyFrame() throws HyracksDataException {
             synchronized (MaterializedPartitionInputChannel.this) {
                 while (emptyQueue.isEmpty()) {
                     try {
@@ -109,12 +136,13 @@ public class MaterializedPartitionInputChannel implements IInputChannel {
                         throw new HyracksDataException(e);
                     }
                 }
-                ByteBuffer destFrame = emptyQueue.poll();
-                buffer.position(0);
-                buffer.limit(buffer.capacity());
-                destFrame.clear();
-                destFrame.put(buffer);
-                fullQueue.add(destFrame);
+                return emptyQueue.poll();
+            }
+        }
+
+        private void addFullFrame(ByteBuffer frame) {
+            synchronized (MaterializedPartitionInputChannel.this) {
+                fullQueue.add(frame);
                 monitor.notifyDataAvailability(MaterializedPartitionInputChannel.this, 1);
             }
         }
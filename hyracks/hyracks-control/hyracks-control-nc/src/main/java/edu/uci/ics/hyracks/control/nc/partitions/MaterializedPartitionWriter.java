@@ -19,6 +19,7 @@ import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import edu.uci.ics.hyracks.api.comm.FrameHelper;
 import edu.uci.ics.hyracks.api.comm.IFrameWriter;
 import edu.uci.ics.hyracks.api.context.IHyracksRootContext;
 import edu.uci.ics.hyracks.api.dataflow.TaskAttemptId;
@@ -74,6 +75,10 @@ public class MaterializedPartitionWriter implements IFrameWriter {
 
     @Override
     public void nextFrame(ByteBuffer buffer) throws HyracksDataException {
+        if (buffer.capacity() > ctx.getFrameSize()) {
+            ByteBuffer header = FrameHelper.createLargeFrameHeader(ctx.getFrameSize(), buffer);
+            size += ctx.getIOManager().syncWrite(handle, size, header);
+        }
         size += ctx.getIOManager().syncWrite(handle, size, buffer);
     }
 
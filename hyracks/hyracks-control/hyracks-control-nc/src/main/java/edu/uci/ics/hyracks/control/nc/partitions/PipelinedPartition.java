@@ -21,6 +21,7 @@ import edu.uci.ics.hyracks.api.dataflow.TaskAttemptId;
 import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
 import edu.uci.ics.hyracks.api.partitions.IPartition;
 import edu.uci.ics.hyracks.api.partitions.PartitionId;
+import edu.uci.ics.hyracks.api.util.ManagedBlocking;
 import edu.uci.ics.hyracks.control.common.job.PartitionState;
 
 public class PipelinedPartition implements IFrameWriter, IPartition {
@@ -76,7 +77,7 @@ public class PipelinedPartition implements IFrameWriter, IPartition {
             synchronized (this) {
                 while (delegate == null) {
                     try {
-                        wait();
+                        ManagedBlocking.waitOn(this);
                     } catch (InterruptedException e) {
                         throw new HyracksDataException(e);
                     }
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.uci.ics.hyracks.control.nc.resources;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Hands out the frames of a node and keeps up to a fixed number of frames
+ * that were given back for reuse, so that tasks that come and go do not
+ * allocate fresh frames every time.
+ */
+public class FramePool {
+    private final int frameSize;
+
+    private final int capacity;
+
+    private final Deque<ByteBuffer> freeFrames;
+
+    private long allocatedFrames;
+
+    private long reusedFrames;
+
+    public FramePool(int frameSize, int capacity) {
+        this.frameSize = frameSize;
+        this.capacity = capacity;
+        freeFrames = new ArrayDeque<ByteBuffer>();
+    }
+
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    public ByteBuffer allocate() {
+        synchronized (this) {
+            ByteBuffer frame = freeFrames.pollFirst();
+            if (frame != null) {
+                ++reusedFrames;
+                frame.clear();
+                return frame;
+            }
+            ++allocatedFrames;
+        }
+        return ByteBuffer.allocate(frameSize);
+    }
+
+    public void deallocate(ByteBuffer frame) {
+        if (frame.capacity() != frameSize || !frame.hasArray()) {
+            return;
+        }
+        synchronized (this) {
+            if (freeFrames.size() < capacity) {
+                freeFrames.addFirst(frame);
+            }
+        }
+    }
+
+    /**
+     * @return the number of frames kept for reuse.
+     */
+    public synchronized int getFreeFrameCount() {
+        return freeFrames.size();
+    }
+
+    /**
+     * @return the number of frames allocated because none could be reused.
+     */
+    public synchronized long getAllocatedFrameCount() {
+        return allocatedFrames;
+    }
+
+    /**
+     * @return the number of frames handed out again after they were given
+     *         back.
+     */
+    public synchronized long getReusedFrameCount() {
+        return reusedFrames;
+    }
+}
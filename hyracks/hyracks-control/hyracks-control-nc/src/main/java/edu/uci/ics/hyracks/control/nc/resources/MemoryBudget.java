@@ -0,0 +1,85 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.uci.ics.hyracks.control.nc.resources;
+
+import edu.uci.ics.hyracks.api.resources.IMemoryBudget;
+
+/**
+ * A budget of frames that is also charged to the budget it was created from,
+ * so that a reservation has to fit into the task, the job and the node at
+ * the same time. Child budgets only ever lock their parent, never the other
+ * way around.
+ */
+public class MemoryBudget implements IMemoryBudget {
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private final MemoryBudget parent;
+
+    private final int limit;
+
+    private int reserved;
+
+    public MemoryBudget(MemoryBudget parent, int limit) {
+        this.parent = parent;
+        this.limit = limit;
+        reserved = 0;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public synchronized int getAvailableFrames() {
+        int available = Math.max(0, limit - reserved);
+        if (parent != null) {
+            available = Math.min(available, parent.getAvailableFrames());
+        }
+        return available;
+    }
+
+    @Override
+    public synchronized int getReservedFrames() {
+        return reserved;
+    }
+
+    @Override
+    public synchronized int reserveFrames(int minFrames, int maxFrames) {
+        int nFrames = Math.max(minFrames, Math.min(maxFrames, Math.max(0, limit - reserved)));
+        if (parent != null) {
+            // The parent may grant less, but never less than minFrames.
+            nFrames = parent.reserveFrames(minFrames, nFrames);
+        }
+        reserved += nFrames;
+        return nFrames;
+    }
+
+    @Override
+    public synchronized void releaseFrames(int nFrames) {
+        nFrames = Math.min(nFrames, reserved);
+        reserved -= nFrames;
+        if (parent != null) {
+            parent.releaseFrames(nFrames);
+        }
+    }
+
+    /**
+     * Releases whatever is still reserved, e.g., by operators of a task that
+     * failed before they could release their frames.
+     */
+    public synchronized void close() {
+        releaseFrames(reserved);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.uci.ics.hyracks.control.nc.resources;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import edu.uci.ics.hyracks.api.util.IBlockingListener;
+import edu.uci.ics.hyracks.api.util.ManagedBlocking;
+
+/**
+ * Runs tasks on pooled threads, but at most a fixed number of them at the
+ * same time, e.g., one per core, and queues the others in the order they
+ * came. A task that waits for frames of other tasks through
+ * {@link ManagedBlocking} gives up its turn while it waits, so that a queued
+ * task can run, which also keeps a task from waiting for a task that never
+ * gets a turn. A task that stops waiting continues right away, even if that
+ * briefly runs more tasks than the limit, and the queue waits until enough
+ * tasks are done or wait again.
+ * <p>
+ * The limit bounds the tasks that can run, not the threads. A waiting task
+ * keeps its thread, since its stack holds its state, so the pool still has
+ * one thread per waiting task on top of the running ones. Capping the
+ * threads as well would bring back the deadlock the turns avoid, where the
+ * tasks that would produce the frames cannot get a thread.
+ */
+public class TaskExecutor implements Executor {
+    private final int runningTaskLimit;
+
+    private final ExecutorService threadPool;
+
+    private final Deque<Runnable> queuedTasks;
+
+    private final IBlockingListener blockingListener;
+
+    private int runningTasks;
+
+    public TaskExecutor(int runningTaskLimit) {
+        this.runningTaskLimit = runningTaskLimit;
+        threadPool = Executors.newCachedThreadPool();
+        queuedTasks = new ArrayDeque<Runnable>();
+        blockingListener = new IBlockingListener() {
+            @Override
+            public void beginBlocking() {
+                synchronized (TaskExecutor.this) {
+                    --runningTasks;
+                }
+                startQueuedTasks();
+            }
+
+            @Override
+            public void endBlocking() {
+                synchronized (TaskExecutor.this) {
+                    ++runningTasks;
+                }
+            }
+        };
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        synchronized (this) {
+            if (runningTasks >= runningTaskLimit) {
+                queuedTasks.addLast(task);
+                return;
+            }
+            ++runningTasks;
+        }
+        start(task);
+    }
+
+    private void start(final Runnable task) {
+        threadPool.execute(new Runnable() {
+            @Override
+            public void run() {
+                ManagedBlocking.setListener(blockingListener);
+                try {
+                    Runnable next = task;
+                    while (next != null) {
+                        boolean completed = false;
+                        try {
+                            next.run();
+                            completed = true;
+                        } finally {
+                            next = finishTask(completed);
+                        }
+                    }
+                } finally {
+                    ManagedBlocking.setListener(null);
+                }
+            }
+        });
+    }
+
+    /**
+     * Hands the turn of a finished task to the next queued task, which then
+     * runs on the same thread, or gives it up.
+     */
+    private Runnable finishTask(boolean takeNext) {
+        synchronized (this) {
+            if (takeNext && runningTasks <= runningTaskLimit && !queuedTasks.isEmpty()) {
+                return queuedTasks.pollFirst();
+            }
+            --runningTasks;
+        }
+        startQueuedTasks();
+        return null;
+    }
+
+    private void startQueuedTasks() {
+        List<Runnable> tasks = null;
+        synchronized (this) {
+            while (runningTasks < runningTaskLimit && !queuedTasks.isEmpty()) {
+                if (tasks == null) {
+                    tasks = new ArrayList<Runnable>();
+                }
+                tasks.add(queuedTasks.pollFirst());
+                ++runningTasks;
+            }
+        }
+        if (tasks != null) {
+            for (Runnable task : tasks) {
+                start(task);
+            }
+        }
+    }
+}
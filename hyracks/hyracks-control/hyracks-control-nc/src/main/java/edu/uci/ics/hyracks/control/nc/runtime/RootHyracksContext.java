@@ -18,15 +18,19 @@ import java.nio.ByteBuffer;
 
 import edu.uci.ics.hyracks.api.context.IHyracksRootContext;
 import edu.uci.ics.hyracks.api.io.IIOManager;
+import edu.uci.ics.hyracks.control.nc.resources.FramePool;
 
 public class RootHyracksContext implements IHyracksRootContext {
     private final int frameSize;
 
     private final IIOManager ioManager;
 
-    public RootHyracksContext(int frameSize, IIOManager ioManager) {
+    private final FramePool framePool;
+
+    public RootHyracksContext(int frameSize, IIOManager ioManager, FramePool framePool) {
         this.frameSize = frameSize;
         this.ioManager = ioManager;
+        this.framePool = framePool;
     }
 
     @Override
@@ -41,6 +45,11 @@ public class RootHyracksContext implements IHyracksRootContext {
 
     @Override
     public ByteBuffer allocateFrame() {
-        return ByteBuffer.allocate(frameSize);
+        return framePool.allocate();
+    }
+
+    @Override
+    public void deallocateFrame(ByteBuffer frame) {
+        framePool.deallocate(frame);
     }
 }
\ No newline at end of file
@@ -61,7 +61,8 @@ public class CreateApplicationWork extends SynchronizableWork {
             if (applications.containsKey(appName)) {
                 throw new HyracksException("Duplicate application with name: " + appName + " being created.");
             }
-            appCtx = new NCApplicationContext(ncs.getServerContext(), ncs.getRootContext(), appName, ncs.getId());
+            appCtx = new NCApplicationContext(ncs.getServerContext(), ncs.getRootContext(), appName, ncs.getId(),
+                    ncs.getConfiguration().toNodeProperties());
             applications.put(appName, appCtx);
             if (deployHar) {
                 NCConfig ncConfig = ncs.getConfiguration();
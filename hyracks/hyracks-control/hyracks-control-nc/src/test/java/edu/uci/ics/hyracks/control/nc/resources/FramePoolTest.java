@@ -0,0 +1,93 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.uci.ics.hyracks.control.nc.resources;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Allocates and gives back frames of a FramePool and checks which of them are
+ * reused.
+ */
+public class FramePoolTest {
+    private static final int FRAME_SIZE = 256;
+
+    @Test
+    public void reuseTest() {
+        FramePool pool = new FramePool(FRAME_SIZE, 2);
+        ByteBuffer frame1 = pool.allocate();
+        ByteBuffer frame2 = pool.allocate();
+        Assert.assertEquals(FRAME_SIZE, frame1.capacity());
+        Assert.assertEquals(2, pool.getAllocatedFrameCount());
+        Assert.assertEquals(0, pool.getReusedFrameCount());
+
+        frame1.position(10);
+        frame1.limit(20);
+        pool.deallocate(frame1);
+        Assert.assertEquals(1, pool.getFreeFrameCount());
+        ByteBuffer frame3 = pool.allocate();
+        // the frame is handed out again, cleared
+        Assert.assertSame(frame1, frame3);
+        Assert.assertEquals(0, frame3.position());
+        Assert.assertEquals(FRAME_SIZE, frame3.limit());
+        Assert.assertEquals(2, pool.getAllocatedFrameCount());
+        Assert.assertEquals(1, pool.getReusedFrameCount());
+        Assert.assertEquals(0, pool.getFreeFrameCount());
+
+        pool.deallocate(frame2);
+        pool.deallocate(frame3);
+        // the most recently returned frame comes first
+        Assert.assertSame(frame3, pool.allocate());
+        Assert.assertSame(frame2, pool.allocate());
+        Assert.assertTrue(frame2 != pool.allocate());
+        Assert.assertEquals(3, pool.getAllocatedFrameCount());
+        Assert.assertEquals(3, pool.getReusedFrameCount());
+    }
+
+    @Test
+    public void capacityTest() {
+        FramePool pool = new FramePool(FRAME_SIZE, 2);
+        for (int i = 0; i < 5; ++i) {
+            pool.deallocate(pool.allocate());
+        }
+        // one frame goes back and forth
+        Assert.assertEquals(1, pool.getAllocatedFrameCount());
+        Assert.assertEquals(4, pool.getReusedFrameCount());
+
+        ByteBuffer[] frames = new ByteBuffer[4];
+        for (int i = 0; i < frames.length; ++i) {
+            frames[i] = pool.allocate();
+        }
+        for (ByteBuffer frame : frames) {
+            pool.deallocate(frame);
+        }
+        // the pool keeps no more than its capacity
+        Assert.assertEquals(2, pool.getFreeFrameCount());
+    }
+
+    @Test
+    public void foreignFrameTest() {
+        FramePool pool = new FramePool(FRAME_SIZE, 4);
+        // large frames and direct buffers are not pooled
+        pool.deallocate(ByteBuffer.allocate(3 * FRAME_SIZE));
+        pool.deallocate(ByteBuffer.allocateDirect(FRAME_SIZE));
+        Assert.assertEquals(0, pool.getFreeFrameCount());
+        pool.deallocate(ByteBuffer.allocate(FRAME_SIZE));
+        Assert.assertEquals(1, pool.getFreeFrameCount());
+    }
+}
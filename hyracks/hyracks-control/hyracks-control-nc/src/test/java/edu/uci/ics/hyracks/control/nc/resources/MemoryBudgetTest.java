@@ -0,0 +1,98 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.uci.ics.hyracks.control.nc.resources;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Reserves and releases frames in a node, job and task budget hierarchy.
+ */
+public class MemoryBudgetTest {
+    @Test
+    public void hierarchyTest() {
+        MemoryBudget node = new MemoryBudget(null, 10);
+        MemoryBudget job = new MemoryBudget(node, 6);
+        MemoryBudget task1 = new MemoryBudget(job, 4);
+        MemoryBudget task2 = new MemoryBudget(job, 4);
+
+        // limited by the task
+        Assert.assertEquals(4, task1.reserveFrames(1, 8));
+        Assert.assertEquals(4, task1.getReservedFrames());
+        Assert.assertEquals(4, job.getReservedFrames());
+        Assert.assertEquals(4, node.getReservedFrames());
+        Assert.assertEquals(0, task1.getAvailableFrames());
+
+        // limited by the job
+        Assert.assertEquals(2, task2.getAvailableFrames());
+        Assert.assertEquals(2, task2.reserveFrames(1, 8));
+        Assert.assertEquals(6, job.getReservedFrames());
+        Assert.assertEquals(4, node.getAvailableFrames());
+
+        // released up the hierarchy
+        task1.releaseFrames(3);
+        Assert.assertEquals(1, task1.getReservedFrames());
+        Assert.assertEquals(3, job.getReservedFrames());
+        Assert.assertEquals(3, node.getReservedFrames());
+        // the freed frames of the job go to the other task, up to its limit
+        Assert.assertEquals(2, task2.reserveFrames(1, 8));
+        Assert.assertEquals(5, job.getReservedFrames());
+    }
+
+    @Test
+    public void minMaxTest() {
+        MemoryBudget node = new MemoryBudget(null, 4);
+        MemoryBudget job = new MemoryBudget(node, MemoryBudget.UNLIMITED);
+        MemoryBudget task = new MemoryBudget(job, MemoryBudget.UNLIMITED);
+
+        // never more than the maximum
+        Assert.assertEquals(2, task.reserveFrames(1, 2));
+        // the minimum is granted even if the node is short of frames
+        Assert.assertEquals(3, task.reserveFrames(3, 5));
+        Assert.assertEquals(5, node.getReservedFrames());
+        Assert.assertEquals(0, node.getAvailableFrames());
+        Assert.assertEquals(0, task.getAvailableFrames());
+        // an exhausted budget still grants the minimum
+        Assert.assertEquals(1, task.reserveFrames(1, 10));
+        Assert.assertEquals(6, node.getReservedFrames());
+
+        // more than reserved is never released
+        task.releaseFrames(100);
+        Assert.assertEquals(0, task.getReservedFrames());
+        Assert.assertEquals(0, job.getReservedFrames());
+        Assert.assertEquals(0, node.getReservedFrames());
+        Assert.assertEquals(4, task.getAvailableFrames());
+    }
+
+    @Test
+    public void closeTest() {
+        MemoryBudget node = new MemoryBudget(null, 10);
+        MemoryBudget job = new MemoryBudget(node, 10);
+        MemoryBudget task = new MemoryBudget(job, 10);
+        task.reserveFrames(2, 2);
+        job.reserveFrames(3, 3);
+
+        // a task that did not release its frames
+        task.close();
+        Assert.assertEquals(0, task.getReservedFrames());
+        Assert.assertEquals(3, job.getReservedFrames());
+        Assert.assertEquals(3, node.getReservedFrames());
+
+        job.close();
+        Assert.assertEquals(0, job.getReservedFrames());
+        Assert.assertEquals(0, node.getReservedFrames());
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.uci.ics.hyracks.control.nc.resources;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import edu.uci.ics.hyracks.api.util.ManagedBlocking;
+
+/**
+ * Runs tasks on a TaskExecutor and checks how many of them run at the same
+ * time, with and without tasks that wait through ManagedBlocking, and that
+ * waiting tasks are not held to the limit.
+ */
+public class TaskExecutorTest {
+    private static final int NUM_TASKS = 20;
+
+    private static final long TIMEOUT = 10;
+
+    @Test
+    public void boundTest() throws Exception {
+        TaskExecutor executor = new TaskExecutor(2);
+        ConcurrencyCounter counter = new ConcurrencyCounter(NUM_TASKS);
+        for (int i = 0; i < NUM_TASKS; ++i) {
+            executor.execute(counter.createTask());
+        }
+        Assert.assertTrue(counter.done.await(TIMEOUT, TimeUnit.SECONDS));
+        Assert.assertEquals(2, counter.maxRunning.get());
+    }
+
+    @Test
+    public void blockingTest() throws Exception {
+        TaskExecutor executor = new TaskExecutor(1);
+        final ConcurrencyCounter counter = new ConcurrencyCounter(NUM_TASKS);
+        final CountDownLatch waited = new CountDownLatch(1);
+        // takes the only turn and waits for the tasks queued behind it
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                ManagedBlocking.beginBlocking();
+                try {
+                    if (counter.done.await(TIMEOUT, TimeUnit.SECONDS)) {
+                        waited.countDown();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    ManagedBlocking.endBlocking();
+                }
+            }
+        });
+        for (int i = 0; i < NUM_TASKS; ++i) {
+            executor.execute(counter.createTask());
+        }
+        Assert.assertTrue(waited.await(2 * TIMEOUT, TimeUnit.SECONDS));
+        // the waiting task gave up its turn to one task at a time
+        Assert.assertEquals(1, counter.maxRunning.get());
+    }
+
+    @Test
+    public void waitingThreadsTest() throws Exception {
+        // the limit does not bound the threads of waiting tasks, so tasks
+        // that wait for each other all get a thread even with a limit of one
+        TaskExecutor executor = new TaskExecutor(1);
+        final CountDownLatch waiting = new CountDownLatch(NUM_TASKS);
+        final CountDownLatch done = new CountDownLatch(NUM_TASKS);
+        for (int i = 0; i < NUM_TASKS; ++i) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    ManagedBlocking.beginBlocking();
+                    try {
+                        waiting.countDown();
+                        if (waiting.await(TIMEOUT, TimeUnit.SECONDS)) {
+                            done.countDown();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        ManagedBlocking.endBlocking();
+                    }
+                }
+            });
+        }
+        Assert.assertTrue(done.await(2 * TIMEOUT, TimeUnit.SECONDS));
+    }
+
+    private static class ConcurrencyCounter {
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger maxRunning = new AtomicInteger();
+        private final CountDownLatch done;
+
+        ConcurrencyCounter(int nTasks) {
+            done = new CountDownLatch(nTasks);
+        }
+
+        Runnable createTask() {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    int nRunning = running.incrementAndGet();
+                    int max;
+                    while ((max = maxRunning.get()) < nRunning && !maxRunning.compareAndSet(max, nRunning)) {
+                    }
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        running.decrementAndGet();
+                        done.countDown();
+                    }
+                }
+            };
+        }
+    }
+}
@@ -16,6 +16,7 @@ package edu.uci.ics.hyracks.dataflow.common.comm.io;
 
 import java.nio.ByteBuffer;
 
+import edu.uci.ics.hyracks.api.comm.FrameHelper;
 import edu.uci.ics.hyracks.api.comm.IFrameReader;
 import edu.uci.ics.hyracks.api.context.IHyracksTaskContext;
 import edu.uci.ics.hyracks.api.dataflow.IOpenableDataReader;
@@ -65,10 +66,11 @@ public class FrameDeserializingDataReader implements IOpenableDataReader<Object[
                 return frameDeserializer.deserializeRecord();
             }
             buffer.clear();
-            if (!frameReader.nextFrame(buffer)) {
+            ByteBuffer frame = FrameHelper.readFrame(frameReader, buffer);
+            if (frame == null) {
                 eos = true;
             } else {
-                frameDeserializer.reset(buffer);
+                frameDeserializer.reset(frame);
             }
             first = false;
         }
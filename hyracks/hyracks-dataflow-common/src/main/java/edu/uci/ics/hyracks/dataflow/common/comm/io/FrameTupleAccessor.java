@@ -30,18 +30,17 @@ import edu.uci.ics.hyracks.dataflow.common.comm.util.ByteBufferInputStream;
  * the frame. FS - ((i + 1) * 4) for i from 0 to N - 1 holds an int indicating
  * the offset of the (i + 1)^th tuple. Every tuple is organized as a sequence of
  * ints indicating the end of each field in the tuple relative to the end of the
- * field slots.
+ * field slots. FS is the capacity of the frame, which is a multiple of the
+ * frame size for large frames.
  * 
  * @author vinayakb
  */
 public final class FrameTupleAccessor implements IFrameTupleAccessor {
-    private final int frameSize;
     private final RecordDescriptor recordDescriptor;
 
     private ByteBuffer buffer;
 
     public FrameTupleAccessor(int frameSize, RecordDescriptor recordDescriptor) {
-        this.frameSize = frameSize;
         this.recordDescriptor = recordDescriptor;
     }
 
@@ -57,17 +56,17 @@ public final class FrameTupleAccessor implements IFrameTupleAccessor {
 
     @Override
     public int getTupleCount() {
-        return buffer.getInt(FrameHelper.getTupleCountOffset(frameSize));
+        return buffer.getInt(FrameHelper.getTupleCountOffset(buffer.capacity()));
     }
 
     @Override
     public int getTupleStartOffset(int tupleIndex) {
-        return tupleIndex == 0 ? 0 : buffer.getInt(FrameHelper.getTupleCountOffset(frameSize) - 4 * tupleIndex);
+        return tupleIndex == 0 ? 0 : buffer.getInt(FrameHelper.getTupleCountOffset(buffer.capacity()) - 4 * tupleIndex);
     }
 
     @Override
     public int getTupleEndOffset(int tupleIndex) {
-        return buffer.getInt(FrameHelper.getTupleCountOffset(frameSize) - 4 * (tupleIndex + 1));
+        return buffer.getInt(FrameHelper.getTupleCountOffset(buffer.capacity()) - 4 * (tupleIndex + 1));
     }
 
     @Override
@@ -20,7 +20,11 @@ import edu.uci.ics.hyracks.api.comm.FrameHelper;
 import edu.uci.ics.hyracks.api.comm.IFrameTupleAccessor;
 
 public class FrameTupleAppender {
-    private final int frameSize;
+    /**
+     * The capacity of the current frame, which is a multiple of the frame
+     * size for large frames.
+     */
+    private int frameSize;
 
     private ByteBuffer buffer;
 
@@ -34,6 +38,7 @@ public class FrameTupleAppender {
 
     public void reset(ByteBuffer buffer, boolean clear) {
         this.buffer = buffer;
+        frameSize = buffer.capacity();
         if (clear) {
             buffer.putInt(FrameHelper.getTupleCountOffset(frameSize), 0);
             tupleCount = 0;
@@ -217,6 +222,35 @@ public class FrameTupleAppender {
         return false;
     }
 
+    public boolean appendConcat(int[] fieldSlots0, byte[] bytes0, int offset0, int dataLen0, int[] fieldSlots1,
+            byte[] bytes1, int offset1, int dataLen1) {
+        int slotsLen0 = fieldSlots0.length * 4;
+        int slotsLen1 = fieldSlots1.length * 4;
+        int length = slotsLen0 + slotsLen1 + dataLen0 + dataLen1;
+
+        if (tupleDataEndOffset + length + 4 + (tupleCount + 1) * 4 <= frameSize) {
+            // Copy fieldSlots0 verbatim
+            for (int i = 0; i < fieldSlots0.length; ++i) {
+                buffer.putInt(tupleDataEndOffset + i * 4, fieldSlots0[i]);
+            }
+            // Copy fieldSlots1 with the following transformation: newSlotIdx = oldSlotIdx + dataLen0
+            for (int i = 0; i < fieldSlots1.length; ++i) {
+                buffer.putInt(tupleDataEndOffset + slotsLen0 + i * 4, fieldSlots1[i] + dataLen0);
+            }
+            // Copy bytes0
+            System.arraycopy(bytes0, offset0, buffer.array(), tupleDataEndOffset + slotsLen0 + slotsLen1, dataLen0);
+            // Copy bytes1
+            System.arraycopy(bytes1, offset1, buffer.array(), tupleDataEndOffset + slotsLen0 + slotsLen1 + dataLen0,
+                    dataLen1);
+            tupleDataEndOffset += length;
+            buffer.putInt(FrameHelper.getTupleCountOffset(frameSize) - 4 * (tupleCount + 1), tupleDataEndOffset);
+            ++tupleCount;
+            buffer.putInt(FrameHelper.getTupleCountOffset(frameSize), tupleCount);
+            return true;
+        }
+        return false;
+    }
+
     public boolean appendProjection(IFrameTupleAccessor accessor, int tIndex, int[] fields) {
         int fTargetSlotsLength = fields.length * 4;
         int length = fTargetSlotsLength;
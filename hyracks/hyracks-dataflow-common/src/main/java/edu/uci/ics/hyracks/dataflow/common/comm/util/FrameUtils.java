@@ -16,9 +16,12 @@ package edu.uci.ics.hyracks.dataflow.common.comm.util;
 
 import java.nio.ByteBuffer;
 
+import edu.uci.ics.hyracks.api.comm.FrameHelper;
 import edu.uci.ics.hyracks.api.comm.IFrameTupleAccessor;
 import edu.uci.ics.hyracks.api.comm.IFrameWriter;
+import edu.uci.ics.hyracks.api.context.IHyracksCommonContext;
 import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAppender;
 
 public class FrameUtils {
     public static void copy(ByteBuffer srcFrame, ByteBuffer destFrame) {
@@ -40,6 +43,101 @@ public class FrameUtils {
         buffer.limit(buffer.capacity());
     }
 
+    /**
+     * Allocates a large frame, a multiple of frameSize, for a single tuple of
+     * tupleLength bytes that does not fit into an empty frame.
+     */
+    public static ByteBuffer allocateLargeFrame(int frameSize, int tupleLength) {
+        // The tuple needs its end offset slot and the tuple count as well.
+        return ByteBuffer.allocate(FrameHelper.getFrameSize(frameSize, tupleLength + 8));
+    }
+
+    /**
+     * Allocates a frame of the given capacity, which is either the frame size
+     * or the size of a large frame.
+     */
+    public static ByteBuffer allocateFrame(IHyracksCommonContext ctx, int capacity) {
+        return capacity == ctx.getFrameSize() ? ctx.allocateFrame() : ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * Makes sure that destFrame can hold a copy of srcFrame. Since the tuple
+     * count is stored relative to the capacity, a copy needs a frame of the
+     * same capacity.
+     * 
+     * @return destFrame, or a new frame of the capacity of srcFrame
+     */
+    public static ByteBuffer ensureCapacity(ByteBuffer destFrame, ByteBuffer srcFrame) {
+        if (srcFrame.capacity() != destFrame.capacity()) {
+            return ByteBuffer.allocate(srcFrame.capacity());
+        }
+        return destFrame;
+    }
+
+    /**
+     * Writes a tuple that does not fit into an empty frame to the writer, in
+     * a large frame of its own.
+     */
+    public static void flushLargeTuple(int frameSize, IFrameTupleAccessor accessor, int tIndex, IFrameWriter writer)
+            throws HyracksDataException {
+        flushLargeTuple(frameSize, accessor, accessor.getTupleStartOffset(tIndex), accessor.getTupleEndOffset(tIndex),
+                writer);
+    }
+
+    public static void flushLargeTuple(int frameSize, IFrameTupleAccessor accessor, int tStartOffset,
+            int tEndOffset, IFrameWriter writer) throws HyracksDataException {
+        flushFrame(createLargeFrame(frameSize, accessor, tStartOffset, tEndOffset), writer);
+    }
+
+    /**
+     * Creates a large frame that holds only the given tuple.
+     */
+    public static ByteBuffer createLargeFrame(int frameSize, IFrameTupleAccessor accessor, int tIndex) {
+        return createLargeFrame(frameSize, accessor, accessor.getTupleStartOffset(tIndex),
+                accessor.getTupleEndOffset(tIndex));
+    }
+
+    private static ByteBuffer createLargeFrame(int frameSize, IFrameTupleAccessor accessor, int tStartOffset,
+            int tEndOffset) {
+        ByteBuffer frame = allocateLargeFrame(frameSize, tEndOffset - tStartOffset);
+        FrameTupleAppender appender = new FrameTupleAppender(frameSize);
+        appender.reset(frame, true);
+        appender.append(accessor, tStartOffset, tEndOffset);
+        return frame;
+    }
+
+    public static void flushLargeTuple(int frameSize, int[] fieldSlots, byte[] bytes, int offset, int length,
+            IFrameWriter writer) throws HyracksDataException {
+        ByteBuffer frame = allocateLargeFrame(frameSize, fieldSlots.length * 4 + length);
+        FrameTupleAppender appender = new FrameTupleAppender(frameSize);
+        appender.reset(frame, true);
+        appender.append(fieldSlots, bytes, offset, length);
+        flushFrame(frame, writer);
+    }
+
+    public static void flushLargeConcat(int frameSize, IFrameTupleAccessor accessor0, int tIndex0,
+            IFrameTupleAccessor accessor1, int tIndex1, IFrameWriter writer) throws HyracksDataException {
+        ByteBuffer frame = allocateLargeFrame(frameSize,
+                accessor0.getTupleEndOffset(tIndex0) - accessor0.getTupleStartOffset(tIndex0)
+                        + accessor1.getTupleEndOffset(tIndex1) - accessor1.getTupleStartOffset(tIndex1));
+        FrameTupleAppender appender = new FrameTupleAppender(frameSize);
+        appender.reset(frame, true);
+        appender.appendConcat(accessor0, tIndex0, accessor1, tIndex1);
+        flushFrame(frame, writer);
+    }
+
+    public static void flushLargeConcat(int frameSize, IFrameTupleAccessor accessor0, int tIndex0,
+            int[] fieldSlots1, byte[] bytes1, int offset1, int dataLen1, IFrameWriter writer)
+            throws HyracksDataException {
+        ByteBuffer frame = allocateLargeFrame(frameSize,
+                accessor0.getTupleEndOffset(tIndex0) - accessor0.getTupleStartOffset(tIndex0) + fieldSlots1.length
+                        * 4 + dataLen1);
+        FrameTupleAppender appender = new FrameTupleAppender(frameSize);
+        appender.reset(frame, true);
+        appender.appendConcat(accessor0, tIndex0, fieldSlots1, bytes1, offset1, dataLen1);
+        flushFrame(frame, writer);
+    }
+
     public static int getAbsoluteFieldStartOffset(IFrameTupleAccessor accessor, int tuple, int field) {
         return accessor.getTupleStartOffset(tuple) + accessor.getFieldSlotsLength()
                 + accessor.getFieldStartOffset(tuple, field);
@@ -1,31 +1,52 @@
 package edu.uci.ics.hyracks.dataflow.common.io;
 
 import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
 
+import edu.uci.ics.hyracks.api.comm.FrameHelper;
 import edu.uci.ics.hyracks.api.comm.IFrameReader;
 import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
 import edu.uci.ics.hyracks.api.io.FileHandle;
 import edu.uci.ics.hyracks.api.io.FileReference;
 import edu.uci.ics.hyracks.api.io.IIOManager;
 
+/**
+ * Reads the frames of a run file into frames of the reader's buffer size.
+ * A larger frame is delivered as a large frame header followed by its chunks,
+ * see {@link FrameHelper}.
+ */
 public class RunFileReader implements IFrameReader {
     private final FileReference file;
     private final IIOManager ioManager;
     private final long size;
+    private final List<Long> frameSizeChangeOffsets;
+    private final List<Integer> frameSizes;
 
     private FileHandle handle;
     private long readPtr;
+    private int frameSizeIndex;
+    private long largeFrameEnd;
 
     public RunFileReader(FileReference file, IIOManager ioManager, long size) {
+        this(file, ioManager, size, Collections.<Long> emptyList(), Collections.<Integer> emptyList());
+    }
+
+    public RunFileReader(FileReference file, IIOManager ioManager, long size, List<Long> frameSizeChangeOffsets,
+            List<Integer> frameSizes) {
         this.file = file;
         this.ioManager = ioManager;
         this.size = size;
+        this.frameSizeChangeOffsets = frameSizeChangeOffsets;
+        this.frameSizes = frameSizes;
     }
 
     @Override
     public void open() throws HyracksDataException {
         handle = ioManager.open(file, IIOManager.FileReadWriteMode.READ_ONLY, null);
         readPtr = 0;
+        frameSizeIndex = -1;
+        largeFrameEnd = 0;
     }
 
     @Override
@@ -34,10 +55,27 @@ public class RunFileReader implements IFrameReader {
         if (readPtr >= size) {
             return false;
         }
+        if (readPtr >= largeFrameEnd) {
+            int frameSize = getFrameSize(readPtr);
+            if (frameSize > buffer.capacity()) {
+                largeFrameEnd = readPtr + frameSize;
+                FrameHelper.setLargeFrameHeader(buffer, frameSize / buffer.capacity());
+                buffer.position(buffer.capacity());
+                return true;
+            }
+        }
         readPtr += ioManager.syncRead(handle, readPtr, buffer);
         return true;
     }
 
+    private int getFrameSize(long offset) {
+        while (frameSizeIndex + 1 < frameSizeChangeOffsets.size()
+                && frameSizeChangeOffsets.get(frameSizeIndex + 1) <= offset) {
+            ++frameSizeIndex;
+        }
+        return frameSizeIndex < 0 ? 0 : frameSizes.get(frameSizeIndex);
+    }
+
     @Override
     public void close() throws HyracksDataException {
         ioManager.close(handle);
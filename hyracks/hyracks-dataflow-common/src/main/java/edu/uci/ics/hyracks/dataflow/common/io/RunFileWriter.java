@@ -15,6 +15,8 @@
 package edu.uci.ics.hyracks.dataflow.common.io;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 import edu.uci.ics.hyracks.api.comm.IFrameWriter;
 import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
@@ -30,9 +32,18 @@ public class RunFileWriter implements IFrameWriter {
     private FileHandle handle;
     private long size;
 
+    /**
+     * File offsets at which the size of the written frames changes, and the
+     * frame size from there on, so that readers can tell large frames apart.
+     */
+    private final List<Long> frameSizeChangeOffsets;
+    private final List<Integer> frameSizes;
+
     public RunFileWriter(FileReference file, IIOManager ioManager) {
         this.file = file;
         this.ioManager = ioManager;
+        frameSizeChangeOffsets = new ArrayList<Long>();
+        frameSizes = new ArrayList<Integer>();
     }
 
     @Override
@@ -41,6 +52,8 @@ public class RunFileWriter implements IFrameWriter {
                 IIOManager.FileSyncMode.METADATA_ASYNC_DATA_ASYNC);
         size = 0;
         failed = false;
+        frameSizeChangeOffsets.clear();
+        frameSizes.clear();
     }
 
     @Override
@@ -51,6 +64,10 @@ public class RunFileWriter implements IFrameWriter {
 
     @Override
     public void nextFrame(ByteBuffer buffer) throws HyracksDataException {
+        if (frameSizes.isEmpty() || frameSizes.get(frameSizes.size() - 1) != buffer.capacity()) {
+            frameSizeChangeOffsets.add(size);
+            frameSizes.add(buffer.capacity());
+        }
         size += ioManager.syncWrite(handle, size, buffer);
     }
 
@@ -73,6 +90,7 @@ public class RunFileWriter implements IFrameWriter {
         if (failed) {
             throw new HyracksDataException("createReader() called on a failed RunFileWriter");
         }
-        return new RunFileReader(file, ioManager, size);
+        return new RunFileReader(file, ioManager, size, new ArrayList<Long>(frameSizeChangeOffsets),
+                new ArrayList<Integer>(frameSizes));
     }
 }
\ No newline at end of file
@@ -6,6 +6,7 @@ import edu.uci.ics.hyracks.api.channels.IInputChannel;
 import edu.uci.ics.hyracks.api.channels.IInputChannelMonitor;
 import edu.uci.ics.hyracks.api.comm.IFrameReader;
 import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
+import edu.uci.ics.hyracks.api.util.ManagedBlocking;
 import edu.uci.ics.hyracks.dataflow.common.comm.util.FrameUtils;
 
 public class InputChannelFrameReader implements IFrameReader, IInputChannelMonitor {
@@ -33,7 +34,7 @@ public class InputChannelFrameReader implements IFrameReader, IInputChannelMonit
         synchronized (this) {
             while (!failed && !eos && availableFrames <= 0) {
                 try {
-                    wait();
+                    ManagedBlocking.waitOn(this);
                 } catch (InterruptedException e) {
                     throw new HyracksDataException(e);
                 }
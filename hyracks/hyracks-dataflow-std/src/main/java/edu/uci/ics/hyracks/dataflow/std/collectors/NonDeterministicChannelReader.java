@@ -22,6 +22,7 @@ import edu.uci.ics.hyracks.api.channels.IInputChannel;
 import edu.uci.ics.hyracks.api.channels.IInputChannelMonitor;
 import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
 import edu.uci.ics.hyracks.api.partitions.PartitionId;
+import edu.uci.ics.hyracks.api.util.ManagedBlocking;
 
 public class NonDeterministicChannelReader implements IInputChannelMonitor, IPartitionAcceptor {
     private static final Logger LOGGER = Logger.getLogger(NonDeterministicChannelReader.class.getName());
@@ -107,13 +108,36 @@ public class NonDeterministicChannelReader implements IInputChannelMonitor, IPar
                 return lastReadSender;
             }
             try {
-                wait();
+                ManagedBlocking.waitOn(this);
             } catch (InterruptedException e) {
                 throw new HyracksDataException(e);
             }
         }
     }
 
+    /**
+     * Waits for the next frame of the given sender, e.g., for the next chunk
+     * of a large frame whose header was read from that sender.
+     */
+    public synchronized void waitForSender(int sender) throws HyracksDataException {
+        while (availableFrameCounts[sender] <= 0) {
+            if (failSenders.get(sender)) {
+                throw new HyracksDataException("Failure occurred on input");
+            }
+            if (eosSenders.get(sender)) {
+                throw new HyracksDataException("Input ended inside a large frame");
+            }
+            try {
+                ManagedBlocking.waitOn(this);
+            } catch (InterruptedException e) {
+                throw new HyracksDataException(e);
+            }
+        }
+        if (--availableFrameCounts[sender] == 0) {
+            frameAvailability.clear(sender);
+        }
+    }
+
     public synchronized void close() throws HyracksDataException {
         for (int i = closedSenders.nextClearBit(0); i >= 0 && i < nSenderPartitions; i = closedSenders
                 .nextClearBit(i + 1)) {
@@ -17,13 +17,24 @@ package edu.uci.ics.hyracks.dataflow.std.collectors;
 import java.nio.ByteBuffer;
 
 import edu.uci.ics.hyracks.api.channels.IInputChannel;
-import edu.uci.ics.hyracks.api.comm.IFrameReader;
+import edu.uci.ics.hyracks.api.comm.FrameHelper;
+import edu.uci.ics.hyracks.api.comm.ILendingFrameReader;
 import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
 import edu.uci.ics.hyracks.dataflow.common.comm.util.FrameUtils;
 
-public class NonDeterministicFrameReader implements IFrameReader {
+public class NonDeterministicFrameReader implements ILendingFrameReader {
     private final NonDeterministicChannelReader channelReader;
 
+    /**
+     * The chunks of a large frame have to be read from the sender of its
+     * header before frames of other senders.
+     */
+    private int largeFrameSender;
+
+    private int pendingChunks;
+
+    private IInputChannel lendingChannel;
+
     public NonDeterministicFrameReader(NonDeterministicChannelReader channelReader) {
         this.channelReader = channelReader;
     }
@@ -31,19 +42,46 @@ public class NonDeterministicFrameReader implements IFrameReader {
     @Override
     public void open() throws HyracksDataException {
         channelReader.open();
+        pendingChunks = 0;
     }
 
     @Override
     public boolean nextFrame(ByteBuffer buffer) throws HyracksDataException {
-        int index = channelReader.findNextSender();
-        if (index >= 0) {
-            IInputChannel[] channels = channelReader.getChannels();
-            ByteBuffer srcFrame = channels[index].getNextBuffer();
-            FrameUtils.copy(srcFrame, buffer);
-            channels[index].recycleBuffer(srcFrame);
-            return true;
+        ByteBuffer srcFrame = borrowFrame();
+        if (srcFrame == null) {
+            return false;
+        }
+        FrameUtils.copy(srcFrame, buffer);
+        returnFrame(srcFrame);
+        return true;
+    }
+
+    @Override
+    public ByteBuffer borrowFrame() throws HyracksDataException {
+        int index;
+        boolean chunk = pendingChunks > 0;
+        if (chunk) {
+            index = largeFrameSender;
+            channelReader.waitForSender(index);
+            --pendingChunks;
+        } else {
+            index = channelReader.findNextSender();
+        }
+        if (index < 0) {
+            return null;
+        }
+        lendingChannel = channelReader.getChannels()[index];
+        ByteBuffer frame = lendingChannel.getNextBuffer();
+        if (!chunk && FrameHelper.isLargeFrameHeader(frame)) {
+            largeFrameSender = index;
+            pendingChunks = FrameHelper.getLargeFrameChunkCount(frame);
         }
-        return false;
+        return frame;
+    }
+
+    @Override
+    public void returnFrame(ByteBuffer frame) {
+        lendingChannel.recycleBuffer(frame);
     }
 
     @Override
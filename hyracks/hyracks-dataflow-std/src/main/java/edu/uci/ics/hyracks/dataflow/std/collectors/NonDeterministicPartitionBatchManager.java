@@ -21,6 +21,7 @@ import edu.uci.ics.hyracks.api.channels.IInputChannel;
 import edu.uci.ics.hyracks.api.comm.IFrameReader;
 import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
 import edu.uci.ics.hyracks.api.partitions.PartitionId;
+import edu.uci.ics.hyracks.api.util.ManagedBlocking;
 
 public class NonDeterministicPartitionBatchManager implements IPartitionBatchManager {
     private final IInputChannel[] channels;
@@ -68,7 +69,7 @@ public class NonDeterministicPartitionBatchManager implements IPartitionBatchMan
         this.requiredSize = size;
         while (batch.size() < size) {
             try {
-                wait();
+                ManagedBlocking.waitOn(this);
             } catch (InterruptedException e) {
                 throw new HyracksDataException(e);
             }
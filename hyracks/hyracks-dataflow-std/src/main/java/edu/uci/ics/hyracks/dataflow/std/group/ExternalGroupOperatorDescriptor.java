@@ -23,6 +23,7 @@ import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 
+import edu.uci.ics.hyracks.api.comm.FrameHelper;
 import edu.uci.ics.hyracks.api.comm.IFrameTupleAccessor;
 import edu.uci.ics.hyracks.api.comm.IFrameWriter;
 import edu.uci.ics.hyracks.api.context.IHyracksTaskContext;
@@ -128,6 +129,13 @@ public class ExternalGroupOperatorDescriptor extends AbstractOperatorDescriptor
 
         private ISpillableTable gTable;
 
+        /**
+         * Frames reserved for gTable. A table that did not spill is kept
+         * until the merge activity has written it, so the frames are charged
+         * to the job rather than to the aggregate task.
+         */
+        private int reservedFrames;
+
         public AggregateActivityState() {
         }
 
@@ -167,10 +175,14 @@ public class ExternalGroupOperatorDescriptor extends AbstractOperatorDescriptor
                     state = new AggregateActivityState(ctx.getJobletContext().getJobId(), new TaskId(getActivityId(),
                             partition));
                     state.runs = new LinkedList<RunFileReader>();
+                    // The table spills earlier when the budget grants fewer
+                    // than framesLimit frames.
+                    state.reservedFrames = ctx.getJobletContext().getMemoryBudget().reserveFrames(2,
+                            Math.min(framesLimit, ctx.getMemoryBudget().getAvailableFrames()));
                     state.gTable = spillableTableFactory.buildSpillableTable(ctx, keyFields, comparatorFactories,
                             firstNormalizerFactory, aggregatorFactory,
                             recordDescProvider.getInputRecordDescriptor(getOperatorId(), 0), recordDescriptors[0],
-                            ExternalGroupOperatorDescriptor.this.framesLimit);
+                            state.reservedFrames);
                     state.gTable.reset();
                 }
 
@@ -209,6 +221,10 @@ public class ExternalGroupOperatorDescriptor extends AbstractOperatorDescriptor
                             state.gTable = null;
                         }
                     }
+                    if (state.gTable == null) {
+                        ctx.getJobletContext().getMemoryBudget().releaseFrames(state.reservedFrames);
+                        state.reservedFrames = 0;
+                    }
                     ctx.setTaskState(state);
                 }
 
@@ -297,6 +313,12 @@ public class ExternalGroupOperatorDescriptor extends AbstractOperatorDescriptor
                  */
                 private int runFrameLimit = 1;
 
+                /**
+                 * Frames granted by the memory budget for merging, at most
+                 * framesLimit. Fewer frames mean more merge passes.
+                 */
+                private int mergeFrames;
+
                 private int[] currentFrameIndexInRun;
                 private int[] currentRunFrames;
 
@@ -307,6 +329,9 @@ public class ExternalGroupOperatorDescriptor extends AbstractOperatorDescriptor
                     aggState = (AggregateActivityState) ctx.getTaskState(new TaskId(new ActivityId(getOperatorId(),
                             AGGREGATE_ACTIVITY_ID), partition));
                     runs = aggState.runs;
+                    // the frames of a table that did not spill
+                    int tableFrames = aggState.reservedFrames;
+                    aggState.reservedFrames = 0;
                     writer.open();
                     try {
                         if (runs.size() <= 0) {
@@ -315,6 +340,7 @@ public class ExternalGroupOperatorDescriptor extends AbstractOperatorDescriptor
                                 if (isOutputSorted)
                                     gTable.sortFrames();
                                 gTable.flushFrames(writer, false);
+                                gTable.close();
                             }
                             gTable = null;
                             aggState = null;
@@ -323,23 +349,33 @@ public class ExternalGroupOperatorDescriptor extends AbstractOperatorDescriptor
                             aggState = null;
                             System.gc();
                             runs = new LinkedList<RunFileReader>(runs);
+                            mergeFrames = ctx.getMemoryBudget().reserveFrames(Math.min(4, framesLimit), framesLimit);
                             inFrames = new ArrayList<ByteBuffer>();
                             outFrame = ctx.allocateFrame();
                             outAppender.reset(outFrame, true);
                             outFrameAccessor.reset(outFrame);
-                            while (runs.size() > 0) {
-                                try {
-                                    doPass(runs);
-                                } catch (Exception e) {
-                                    throw new HyracksDataException(e);
+                            try {
+                                while (runs.size() > 0) {
+                                    try {
+                                        doPass(runs);
+                                    } catch (Exception e) {
+                                        throw new HyracksDataException(e);
+                                    }
+                                }
+                                for (ByteBuffer inFrame : inFrames) {
+                                    ctx.deallocateFrame(inFrame);
                                 }
+                                ctx.deallocateFrame(outFrame);
+                                inFrames.clear();
+                            } finally {
+                                ctx.getMemoryBudget().releaseFrames(mergeFrames);
                             }
-                            inFrames.clear();
                         }
                     } catch (Exception e) {
                         writer.fail();
                         throw new HyracksDataException(e);
                     } finally {
+                        ctx.getJobletContext().getMemoryBudget().releaseFrames(tableFrames);
                         aggregateState.close();
                         writer.close();
                     }
@@ -350,16 +386,16 @@ public class ExternalGroupOperatorDescriptor extends AbstractOperatorDescriptor
                     IFrameWriter writer = this.writer;
                     boolean finalPass = false;
 
-                    while (inFrames.size() + 2 < framesLimit) {
+                    while (inFrames.size() + 2 < mergeFrames) {
                         inFrames.add(ctx.allocateFrame());
                     }
                     int runNumber;
-                    if (runs.size() + 2 <= framesLimit) {
+                    if (runs.size() + 2 <= mergeFrames) {
                         finalPass = true;
-                        runFrameLimit = (framesLimit - 2) / runs.size();
+                        runFrameLimit = (mergeFrames - 2) / runs.size();
                         runNumber = runs.size();
                     } else {
-                        runNumber = framesLimit - 2;
+                        runNumber = mergeFrames - 2;
                         newRun = ctx.getJobletContext().createManagedWorkspaceFile(
                                 ExternalGroupOperatorDescriptor.class.getSimpleName());
                         writer = new RunFileWriter(newRun, ctx.getIOManager());
@@ -393,10 +429,12 @@ public class ExternalGroupOperatorDescriptor extends AbstractOperatorDescriptor
                             currentFrameIndexInRun[runIndex] = runIndex * runFrameLimit;
                             for (int j = 0; j < runFrameLimit; j++) {
                                 int frameIndex = currentFrameIndexInRun[runIndex] + j;
-                                if (runFileReaders[runIndex].nextFrame(inFrames.get(frameIndex))) {
+                                ByteBuffer frame = FrameHelper.readFrame(runFileReaders[runIndex],
+                                        inFrames.get(frameIndex));
+                                if (frame != null) {
                                     tupleAccessors[frameIndex] = new FrameTupleAccessor(ctx.getFrameSize(),
                                             recordDescriptors[0]);
-                                    tupleAccessors[frameIndex].reset(inFrames.get(frameIndex));
+                                    tupleAccessors[frameIndex].reset(frame);
                                     currentRunFrames[runIndex]++;
                                     if (j == 0)
                                         setNextTopTuple(runIndex, tupleIndices, runFileReaders, tupleAccessors,
@@ -574,10 +612,9 @@ public class ExternalGroupOperatorDescriptor extends AbstractOperatorDescriptor
                         for (int j = 0; j < runFrameLimit; j++) {
                             int frameIndex = currentFrameIndexInRun[runIndex]
                                     + j;
-                            if (runCursors[runIndex].nextFrame(inFrames
-                                    .get(frameIndex))) {
-                                tupleAccessors[frameIndex].reset(inFrames
-                                        .get(frameIndex));
+                            ByteBuffer frame = FrameHelper.readFrame(runCursors[runIndex], inFrames.get(frameIndex));
+                            if (frame != null) {
+                                tupleAccessors[frameIndex].reset(frame);
                                 existNext = true;
                                 currentRunFrames[runIndex]++;
                             } else {
@@ -36,7 +36,8 @@ import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAppender;
 import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTuplePairComparator;
 import edu.uci.ics.hyracks.dataflow.common.comm.util.FrameUtils;
 import edu.uci.ics.hyracks.dataflow.std.structures.ISerializableTable;
-import edu.uci.ics.hyracks.dataflow.std.structures.SerializableHashTable;
+import edu.uci.ics.hyracks.dataflow.std.structures.ISerializableTableFactory;
+import edu.uci.ics.hyracks.dataflow.std.structures.SerializableHashTableFactory;
 import edu.uci.ics.hyracks.dataflow.std.structures.TuplePointer;
 
 /**
@@ -47,10 +48,17 @@ public class HashSpillableTableFactory implements ISpillableTableFactory {
     private static final long serialVersionUID = 1L;
     private final ITuplePartitionComputerFactory tpcf;
     private final int tableSize;
+    private final ISerializableTableFactory serializableTableFactory;
 
     public HashSpillableTableFactory(ITuplePartitionComputerFactory tpcf, int tableSize) {
+        this(tpcf, tableSize, SerializableHashTableFactory.INSTANCE);
+    }
+
+    public HashSpillableTableFactory(ITuplePartitionComputerFactory tpcf, int tableSize,
+            ISerializableTableFactory serializableTableFactory) {
         this.tpcf = tpcf;
         this.tableSize = tableSize;
+        this.serializableTableFactory = serializableTableFactory;
     }
 
     /*
@@ -142,7 +150,8 @@ public class HashSpillableTableFactory implements ISpillableTableFactory {
 
             private FrameTupleAppender stateAppender = new FrameTupleAppender(ctx.getFrameSize());
 
-            private final ISerializableTable table = new SerializableHashTable(tableSize, ctx);
+            private final ISerializableTable table = serializableTableFactory.createSerializableTable(tableSize,
+                    ctx);
             private final TuplePointer storedTuplePointer = new TuplePointer();
             private final List<ByteBuffer> frames = new ArrayList<ByteBuffer>();
 
@@ -373,7 +382,14 @@ public class HashSpillableTableFactory implements ISpillableTableFactory {
                 lastBufIndex = -1;
                 tPointers = null;
                 table.close();
+                for (ByteBuffer frame : frames) {
+                    ctx.deallocateFrame(frame);
+                }
                 frames.clear();
+                if (outputFrame != null) {
+                    ctx.deallocateFrame(outputFrame);
+                    outputFrame = null;
+                }
                 aggregateState.close();
             }
 
@@ -27,12 +27,13 @@ import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAppender;
 import edu.uci.ics.hyracks.dataflow.common.comm.util.FrameUtils;
 
 public class PreclusteredGroupWriter implements IFrameWriter {
+    private final int frameSize;
     private final int[] groupFields;
     private final IBinaryComparator[] comparators;
     private final IAggregatorDescriptor aggregator;
     private final AggregateState aggregateState;
     private final IFrameWriter writer;
-    private final ByteBuffer copyFrame;
+    private ByteBuffer copyFrame;
     private final FrameTupleAccessor inFrameAccessor;
     private final FrameTupleAccessor copyFrameAccessor;
 
@@ -45,6 +46,7 @@ public class PreclusteredGroupWriter implements IFrameWriter {
     public PreclusteredGroupWriter(IHyracksTaskContext ctx, int[] groupFields, IBinaryComparator[] comparators,
             IAggregatorDescriptor aggregator, RecordDescriptor inRecordDesc, RecordDescriptor outRecordDesc,
             IFrameWriter writer) {
+        this.frameSize = ctx.getFrameSize();
         this.groupFields = groupFields;
         this.comparators = comparators;
         this.aggregator = aggregator;
@@ -92,6 +94,12 @@ public class PreclusteredGroupWriter implements IFrameWriter {
 
             }
         }
+        // a large input frame needs a large copy
+        ByteBuffer newCopyFrame = FrameUtils.ensureCapacity(copyFrame, buffer);
+        if (newCopyFrame != copyFrame) {
+            copyFrame = newCopyFrame;
+            copyFrameAccessor.reset(copyFrame);
+        }
         FrameUtils.copy(buffer, copyFrame);
     }
 
@@ -125,7 +133,8 @@ public class PreclusteredGroupWriter implements IFrameWriter {
             appender.reset(outFrame, true);
             if (!appender.appendSkipEmptyField(tupleBuilder.getFieldEndOffsets(), tupleBuilder.getByteArray(), 0,
                     tupleBuilder.getSize())) {
-                throw new HyracksDataException("The output cannot be fit into a frame.");
+                FrameUtils.flushLargeTuple(frameSize, tupleBuilder.getFieldEndOffsets(), tupleBuilder.getByteArray(),
+                        0, tupleBuilder.getSize(), writer);
             }
         }
 
@@ -19,6 +19,7 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
+import edu.uci.ics.hyracks.api.comm.FrameHelper;
 import edu.uci.ics.hyracks.api.context.IHyracksTaskContext;
 import edu.uci.ics.hyracks.api.dataflow.ActivityId;
 import edu.uci.ics.hyracks.api.dataflow.IActivityGraphBuilder;
@@ -321,9 +322,10 @@ public class GraceHashJoinOperatorDescriptor extends AbstractOperatorDescriptor
                             if (buildWriter != null) {
                                 RunFileReader buildReader = buildWriter.createReader();
                                 buildReader.open();
-                                while (buildReader.nextFrame(buffer)) {
-                                    ByteBuffer copyBuffer = ctx.allocateFrame();
-                                    FrameUtils.copy(buffer, copyBuffer);
+                                ByteBuffer frame;
+                                while ((frame = FrameHelper.readFrame(buildReader, buffer)) != null) {
+                                    ByteBuffer copyBuffer = FrameUtils.allocateFrame(ctx, frame.capacity());
+                                    FrameUtils.copy(frame, copyBuffer);
                                     joiner.build(copyBuffer);
                                     buffer.clear();
                                 }
@@ -333,8 +335,9 @@ public class GraceHashJoinOperatorDescriptor extends AbstractOperatorDescriptor
                             // probe
                             RunFileReader probeReader = probeWriter.createReader();
                             probeReader.open();
-                            while (probeReader.nextFrame(buffer)) {
-                                joiner.join(buffer, writer);
+                            ByteBuffer frame;
+                            while ((frame = FrameHelper.readFrame(probeReader, buffer)) != null) {
+                                joiner.join(frame, writer);
                                 buffer.clear();
                             }
                             probeReader.close();
@@ -19,6 +19,7 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
+import edu.uci.ics.hyracks.api.comm.FrameHelper;
 import edu.uci.ics.hyracks.api.context.IHyracksTaskContext;
 import edu.uci.ics.hyracks.api.dataflow.ActivityId;
 import edu.uci.ics.hyracks.api.dataflow.IActivityGraphBuilder;
@@ -273,7 +274,7 @@ public class HybridHashJoinOperatorDescriptor extends AbstractOperatorDescriptor
                 }
 
                 private void build(ByteBuffer inBuffer) throws HyracksDataException {
-                    ByteBuffer copyBuffer = ctx.allocateFrame();
+                    ByteBuffer copyBuffer = FrameUtils.allocateFrame(ctx, inBuffer.capacity());
                     FrameUtils.copy(inBuffer, copyBuffer);
                     state.joiner.build(copyBuffer);
                 }
@@ -498,9 +499,10 @@ public class HybridHashJoinOperatorDescriptor extends AbstractOperatorDescriptor
                             if (buildWriter != null) {
                                 RunFileReader buildReader = buildWriter.createReader();
                                 buildReader.open();
-                                while (buildReader.nextFrame(inBuffer)) {
-                                    ByteBuffer copyBuffer = ctx.allocateFrame();
-                                    FrameUtils.copy(inBuffer, copyBuffer);
+                                ByteBuffer frame;
+                                while ((frame = FrameHelper.readFrame(buildReader, inBuffer)) != null) {
+                                    ByteBuffer copyBuffer = FrameUtils.allocateFrame(ctx, frame.capacity());
+                                    FrameUtils.copy(frame, copyBuffer);
                                     joiner.build(copyBuffer);
                                     inBuffer.clear();
                                 }
@@ -510,8 +512,9 @@ public class HybridHashJoinOperatorDescriptor extends AbstractOperatorDescriptor
                             // probe
                             RunFileReader probeReader = probeWriter.createReader();
                             probeReader.open();
-                            while (probeReader.nextFrame(inBuffer)) {
-                                joiner.join(inBuffer, writer);
+                            ByteBuffer frame;
+                            while ((frame = FrameHelper.readFrame(probeReader, inBuffer)) != null) {
+                                joiner.join(frame, writer);
                                 inBuffer.clear();
                             }
                             probeReader.close();
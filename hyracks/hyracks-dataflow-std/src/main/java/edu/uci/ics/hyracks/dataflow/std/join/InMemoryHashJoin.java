@@ -28,6 +28,7 @@ import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
 import edu.uci.ics.hyracks.dataflow.common.comm.io.ArrayTupleBuilder;
 import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAccessor;
 import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAppender;
+import edu.uci.ics.hyracks.dataflow.common.comm.util.FrameUtils;
 import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTuplePairComparator;
 import edu.uci.ics.hyracks.dataflow.std.structures.ISerializableTable;
 import edu.uci.ics.hyracks.dataflow.std.structures.TuplePointer;
@@ -47,6 +48,7 @@ public class InMemoryHashJoin {
     private final ISerializableTable table;
 	private final int tableSize;
     private final TuplePointer storedTuplePointer;
+    private final int frameSize;
     
     public InMemoryHashJoin(IHyracksTaskContext ctx, int tableSize, FrameTupleAccessor accessor0,
             ITuplePartitionComputer tpc0, FrameTupleAccessor accessor1, ITuplePartitionComputer tpc1,
@@ -61,6 +63,7 @@ public class InMemoryHashJoin {
         this.accessorProbe = accessor0;
         this.tpcProbe = tpc0;
         appender = new FrameTupleAppender(ctx.getFrameSize());
+        frameSize = ctx.getFrameSize();
         tpComparator = comparator;
         outBuffer = ctx.allocateFrame();
         appender.reset(outBuffer, true);
@@ -112,7 +115,7 @@ public class InMemoryHashJoin {
                         flushFrame(outBuffer, writer);
                         appender.reset(outBuffer, true);
                         if (!appender.appendConcat(accessorProbe, i, accessorBuild, tIndex)) {
-                            throw new IllegalStateException();
+                            FrameUtils.flushLargeConcat(frameSize, accessorProbe, i, accessorBuild, tIndex, writer);
                         }
                     }
                 }
@@ -125,7 +128,8 @@ public class InMemoryHashJoin {
                     appender.reset(outBuffer, true);
                     if (!appender.appendConcat(accessorProbe, i, nullTupleBuild.getFieldEndOffsets(),
                             nullTupleBuild.getByteArray(), 0, nullTupleBuild.getSize())) {
-                        throw new IllegalStateException();
+                        FrameUtils.flushLargeConcat(frameSize, accessorProbe, i, nullTupleBuild.getFieldEndOffsets(),
+                                nullTupleBuild.getByteArray(), 0, nullTupleBuild.getSize(), writer);
                     }
                 }
             }
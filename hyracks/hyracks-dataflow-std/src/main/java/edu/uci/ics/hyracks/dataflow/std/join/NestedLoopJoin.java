@@ -18,6 +18,7 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
+import edu.uci.ics.hyracks.api.comm.FrameHelper;
 import edu.uci.ics.hyracks.api.comm.IFrameWriter;
 import edu.uci.ics.hyracks.api.context.IHyracksTaskContext;
 import edu.uci.ics.hyracks.api.dataflow.value.ITuplePairComparator;
@@ -78,8 +79,9 @@ public class NestedLoopJoin {
         for (ByteBuffer outBuffer : outBuffers) {
             runFileReader = runFileWriter.createReader();
             runFileReader.open();
-            while (runFileReader.nextFrame(innerBuffer)) {
-                blockJoin(outBuffer, innerBuffer, writer);
+            ByteBuffer frame;
+            while ((frame = FrameHelper.readFrame(runFileReader, innerBuffer)) != null) {
+                blockJoin(outBuffer, frame, writer);
             }
             runFileReader.close();
         }
@@ -88,15 +90,16 @@ public class NestedLoopJoin {
     }
 
     private void createAndCopyFrame(ByteBuffer outerBuffer) {
-        ByteBuffer outerBufferCopy = ctx.allocateFrame();
+        ByteBuffer outerBufferCopy = FrameUtils.allocateFrame(ctx, outerBuffer.capacity());
         FrameUtils.copy(outerBuffer, outerBufferCopy);
         outBuffers.add(outerBufferCopy);
         currentMemSize++;
     }
 
     private void reloadFrame(ByteBuffer outerBuffer) {
-        outBuffers.get(currentMemSize).clear();
-        FrameUtils.copy(outerBuffer, outBuffers.get(currentMemSize));
+        ByteBuffer outerBufferCopy = FrameUtils.ensureCapacity(outBuffers.get(currentMemSize), outerBuffer);
+        FrameUtils.copy(outerBuffer, outerBufferCopy);
+        outBuffers.set(currentMemSize, outerBufferCopy);
         currentMemSize++;
     }
 
@@ -115,7 +118,8 @@ public class NestedLoopJoin {
                         flushFrame(outBuffer, writer);
                         appender.reset(outBuffer, true);
                         if (!appender.appendConcat(accessorOuter, i, accessorInner, j)) {
-                            throw new IllegalStateException();
+                            FrameUtils.flushLargeConcat(ctx.getFrameSize(), accessorOuter, i, accessorInner, j,
+                                    writer);
                         }
                     }
                 }
@@ -134,8 +138,9 @@ public class NestedLoopJoin {
             ByteBuffer outBuffer = outBuffers.get(i);
             runFileReader = runFileWriter.createReader();
             runFileReader.open();
-            while (runFileReader.nextFrame(innerBuffer)) {
-                blockJoin(outBuffer, innerBuffer, writer);
+            ByteBuffer frame;
+            while ((frame = FrameHelper.readFrame(runFileReader, innerBuffer)) != null) {
+                blockJoin(outBuffer, frame, writer);
             }
             runFileReader.close();
         }
@@ -120,7 +120,7 @@ public class NestedLoopJoinOperatorDescriptor extends AbstractOperatorDescriptor
 
                 @Override
                 public void nextFrame(ByteBuffer buffer) throws HyracksDataException {
-                    ByteBuffer copyBuffer = ctx.allocateFrame();
+                    ByteBuffer copyBuffer = FrameUtils.allocateFrame(ctx, buffer.capacity());
                     FrameUtils.copy(buffer, copyBuffer);
                     FrameUtils.makeReadable(copyBuffer);
                     state.joiner.cache(copyBuffer);
@@ -19,8 +19,9 @@ import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTuplePairComparator;
 import edu.uci.ics.hyracks.dataflow.common.comm.util.FrameUtils;
 import edu.uci.ics.hyracks.dataflow.common.io.RunFileReader;
 import edu.uci.ics.hyracks.dataflow.common.io.RunFileWriter;
+import edu.uci.ics.hyracks.dataflow.std.structures.BloomFilter;
 import edu.uci.ics.hyracks.dataflow.std.structures.ISerializableTable;
-import edu.uci.ics.hyracks.dataflow.std.structures.SerializableHashTable;
+import edu.uci.ics.hyracks.dataflow.std.structures.ISerializableTableFactory;
 
 /**
  * @author pouria
@@ -34,6 +35,9 @@ public class OptimizedHybridHashJoin {
     private final int INVALID_BUFFER = -2;
     private final int UNALLOCATED_FRAME = -3;
     private final int BUFFER_FOR_RESIDENT_PARTS = -1;
+
+    public static final String BLOOM_FILTERED_PROBE_TUPLES_COUNTER = "optimized-hybrid-hash-join.bloom-filtered-probe-tuples";
+    private static final int BLOOM_FILTER_INITIAL_CAPACITY = 1024;
     
     private IHyracksTaskContext ctx;
 
@@ -44,6 +48,7 @@ public class OptimizedHybridHashJoin {
     private final int[] probeKeys;
 
     private final IBinaryComparator[] comparators;
+    private final ISerializableTableFactory serializableTableFactory;
 
     private ITuplePartitionComputer buildHpc;
     private ITuplePartitionComputer probeHpc;
@@ -64,6 +69,7 @@ public class OptimizedHybridHashJoin {
     private int[] probePSizeInTups; //Size of probe partitions (in tuples)
     private int nextFreeBuffIx; //Index of next available free buffer to allocate/use
     private BitSet pStatus; //0=resident, 1=spilled
+    private BitSet largeFramePStatus; //1=the spilled build partition holds large frames and can not be reloaded
     private int numOfPartitions;
     private int memForJoin;
     private InMemoryHashJoin inMemJoiner; //Used for joining resident partitions
@@ -82,9 +88,13 @@ public class OptimizedHybridHashJoin {
     private int[] buildPSizeInFrames; //Used for partition tuning
     private int freeFramesCounter; //Used for partition tuning
 
+    private BloomFilter[] buildPFilters; //Hashes of the build keys of each partition, to drop probe tuples without a match (inner joins only)
+    private long bloomFilteredProbeTuples;
+
     public OptimizedHybridHashJoin(IHyracksTaskContext ctx, int memForJoin, int numOfPartitions, String rel0Name,
             String rel1Name, int[] keys0, int[] keys1, IBinaryComparator[] comparators, RecordDescriptor buildRd,
-            RecordDescriptor probeRd, ITuplePartitionComputer probeHpc, ITuplePartitionComputer buildHpc) {
+            RecordDescriptor probeRd, ITuplePartitionComputer probeHpc, ITuplePartitionComputer buildHpc,
+            ISerializableTableFactory serializableTableFactory) {
         this.ctx = ctx;
         this.memForJoin = memForJoin;
         this.buildRd = buildRd;
@@ -94,6 +104,7 @@ public class OptimizedHybridHashJoin {
         this.buildKeys = keys0;
         this.probeKeys = keys1;
         this.comparators = comparators;
+        this.serializableTableFactory = serializableTableFactory;
         this.rel0Name = rel0Name;
         this.rel1Name = rel1Name;
 
@@ -112,7 +123,8 @@ public class OptimizedHybridHashJoin {
     public OptimizedHybridHashJoin(IHyracksTaskContext ctx, int memForJoin, int numOfPartitions, String rel0Name,
             String rel1Name, int[] keys0, int[] keys1, IBinaryComparator[] comparators, RecordDescriptor buildRd,
             RecordDescriptor probeRd, ITuplePartitionComputer probeHpc, ITuplePartitionComputer buildHpc,
-            boolean isLeftOuter, INullWriterFactory[] nullWriterFactories1) {
+            boolean isLeftOuter, INullWriterFactory[] nullWriterFactories1,
+            ISerializableTableFactory serializableTableFactory) {
         this.ctx = ctx;
         this.memForJoin = memForJoin;
         this.buildRd = buildRd;
@@ -122,6 +134,7 @@ public class OptimizedHybridHashJoin {
         this.buildKeys = keys0;
         this.probeKeys = keys1;
         this.comparators = comparators;
+        this.serializableTableFactory = serializableTableFactory;
         this.rel0Name = rel0Name;
         this.rel1Name = rel1Name;
 
@@ -147,6 +160,7 @@ public class OptimizedHybridHashJoin {
         curPBuff = new int[numOfPartitions];
         nextBuff = new int[memForJoin];
         pStatus = new BitSet(numOfPartitions);
+        largeFramePStatus = new BitSet(numOfPartitions);
         buildPSizeInTups = new int[numOfPartitions];
 
         buildPSizeInFrames = new int[numOfPartitions];
@@ -166,13 +180,26 @@ public class OptimizedHybridHashJoin {
 
         buildTupAppender = new FrameTupleAppender(ctx.getFrameSize());
 
+        if (!isLeftOuter) {
+            buildPFilters = new BloomFilter[numOfPartitions];
+            for (int i = 0; i < numOfPartitions; i++) {
+                buildPFilters[i] = new BloomFilter(BLOOM_FILTER_INITIAL_CAPACITY);
+            }
+        }
     }
 
     public void build(ByteBuffer buffer) throws HyracksDataException {
         accessorBuild.reset(buffer);
         int tupleCount = accessorBuild.getTupleCount();
         for (int i = 0; i < tupleCount; ++i) {
-            int pid = buildHpc.partition(accessorBuild, i, numOfPartitions);
+            int pid;
+            if (buildPFilters != null) {
+                int hash = buildHpc.partition(accessorBuild, i, Integer.MAX_VALUE) & Integer.MAX_VALUE;
+                pid = hash % numOfPartitions;
+                buildPFilters[pid].add(hash);
+            } else {
+                pid = buildHpc.partition(accessorBuild, i, numOfPartitions);
+            }
             processTuple(i, pid);
             buildPSizeInTups[pid]++;
         }
@@ -202,10 +229,12 @@ public class OptimizedHybridHashJoin {
                 }  //New Buffer allocated successfully
                 partition = memBuffs[curPBuff[pid]]; //Current Buffer for the partition is now updated by allocateFreeBuffer() call above
                 buildTupAppender.reset(partition, true);
-                if (!buildTupAppender.append(accessorBuild, tid)) {
-                    throw new HyracksDataException("Invalid State (Can not append to newly allocated buffer)");
-                }
                 buildPSizeInFrames[pid]++;
+                if (!buildTupAppender.append(accessorBuild, tid)) { //Tuple does not fit into a frame, spill its partition
+                    spillPartition(pid);
+                    buildTupAppender.reset(memBuffs[pid], true);
+                    buildWriteLargeTuple(pid, tid);
+                }
                 break;
             }
         } else { //spilled partition
@@ -215,6 +244,10 @@ public class OptimizedHybridHashJoin {
                 if (buildTupAppender.append(accessorBuild, tid)) {
                     break;
                 }
+                if (buildTupAppender.getTupleCount() == 0) { //Tuple does not fit into a frame
+                    buildWriteLargeTuple(pid, tid);
+                    break;
+                }
                 //Dedicated in-memory buffer for the partition is full, needed to be flushed first 
                 buildWrite(pid, partition);
                 partition.clear();
@@ -284,6 +317,17 @@ public class OptimizedHybridHashJoin {
     }
 
     private void buildWrite(int pid, ByteBuffer buff) throws HyracksDataException {
+        getBuildRFWriter(pid).nextFrame(buff);
+    }
+
+    private void buildWriteLargeTuple(int pid, int tid) throws HyracksDataException {
+        ByteBuffer largeFrame = FrameUtils.createLargeFrame(ctx.getFrameSize(), accessorBuild, tid);
+        FrameUtils.flushFrame(largeFrame, getBuildRFWriter(pid));
+        buildPSizeInFrames[pid] += largeFrame.capacity() / ctx.getFrameSize();
+        largeFramePStatus.set(pid);
+    }
+
+    private RunFileWriter getBuildRFWriter(int pid) throws HyracksDataException {
         RunFileWriter writer = buildRFWriters[pid];
         if (writer == null) {
             FileReference file = ctx.getJobletContext().createManagedWorkspaceFile(rel0Name);
@@ -291,7 +335,7 @@ public class OptimizedHybridHashJoin {
             writer.open();
             buildRFWriters[pid] = writer;
         }
-        writer.nextFrame(buff);
+        return writer;
     }
 
     public void closeBuild() throws HyracksDataException {
@@ -398,7 +442,7 @@ public class OptimizedHybridHashJoin {
     private ArrayList<Integer> selectPartitionsToReload() {
         ArrayList<Integer> p = new ArrayList<Integer>();
         for (int i = pStatus.nextSetBit(0); i >= 0; i = pStatus.nextSetBit(i + 1)) {
-            if (buildPSizeInFrames[i]>0 && (freeFramesCounter - buildPSizeInFrames[i] >= 0) ) {
+            if (buildPSizeInFrames[i]>0 && !largeFramePStatus.get(i) && (freeFramesCounter - buildPSizeInFrames[i] >= 0) ) {
                 p.add(i);
                 freeFramesCounter -= buildPSizeInFrames[i];
             }
@@ -410,7 +454,7 @@ public class OptimizedHybridHashJoin {
     }
 
     private void createInMemoryJoiner(int inMemTupCount) throws HyracksDataException {
-        ISerializableTable table = new SerializableHashTable(inMemTupCount, ctx);
+        ISerializableTable table = serializableTableFactory.createSerializableTable(inMemTupCount, ctx);
         this.inMemJoiner = new InMemoryHashJoin(ctx, inMemTupCount,
                 new FrameTupleAccessor(ctx.getFrameSize(), probeRd), probeHpc, new FrameTupleAccessor(
                         ctx.getFrameSize(), buildRd), buildHpc, new FrameTuplePairComparator(probeKeys, buildKeys,
@@ -467,7 +511,17 @@ public class OptimizedHybridHashJoin {
         }
 
         for (int i = 0; i < tupleCount; ++i) {
-            int pid = probeHpc.partition(accessorProbe, i, numOfPartitions);
+            int pid;
+            if (buildPFilters != null) {
+                int hash = probeHpc.partition(accessorProbe, i, Integer.MAX_VALUE) & Integer.MAX_VALUE;
+                pid = hash % numOfPartitions;
+                if (buildPSizeInTups[pid] > 0 && !buildPFilters[pid].mightContain(hash)) { //No build tuple has the key
+                    bloomFilteredProbeTuples++;
+                    continue;
+                }
+            } else {
+                pid = probeHpc.partition(accessorProbe, i, numOfPartitions);
+            }
 
             if (buildPSizeInTups[pid] > 0) { //Tuple has potential match from previous phase
                 if (pStatus.get(pid)) { //pid is Spilled
@@ -478,6 +532,10 @@ public class OptimizedHybridHashJoin {
                         if (probeTupAppenderToSpilled.append(accessorProbe, i)) {
                             break;
                         } 
+                        if (probeTupAppenderToSpilled.getTupleCount() == 0) { //Tuple does not fit into a frame
+                            FrameUtils.flushLargeTuple(ctx.getFrameSize(), accessorProbe, i, getProbeRFWriter(pid));
+                            break;
+                        }
                         probeWrite(pid, buff);
                         buff.clear();
                         needToClear = true;
@@ -487,6 +545,10 @@ public class OptimizedHybridHashJoin {
                         if (probeTupAppenderToResident.append(accessorProbe, i)){
                             break;
                         }
+                        if (probeTupAppenderToResident.getTupleCount() == 0) { //Tuple does not fit into a frame
+                            inMemJoiner.join(FrameUtils.createLargeFrame(ctx.getFrameSize(), accessorProbe, i), writer);
+                            break;
+                        }
                         inMemJoiner.join(probeResBuff, writer);
                         probeTupAppenderToResident.reset(probeResBuff, true);
                     }
@@ -511,9 +573,49 @@ public class OptimizedHybridHashJoin {
             }
             closeProbeWriter(pid);
         }
+
+        if (bloomFilteredProbeTuples > 0) {
+            ctx.getCounterContext().getCounter(BLOOM_FILTERED_PROBE_TUPLES_COUNTER, true).update(
+                    bloomFilteredProbeTuples);
+        }
+        buildPFilters = null;
+        releaseFrames();
+    }
+
+    /**
+     * Gives the frames of the resident partitions and the probe buffers back
+     * once the in-memory join is done. The spilled partitions are joined
+     * from their run files.
+     */
+    private void releaseFrames() {
+        inMemJoiner = null;
+        for (int i = 0; i < memBuffs.length; i++) {
+            if (memBuffs[i] != null) {
+                ctx.deallocateFrame(memBuffs[i]);
+                memBuffs[i] = null;
+            }
+        }
+        for (int i = 0; i < sPartBuffs.length; i++) {
+            ctx.deallocateFrame(sPartBuffs[i]);
+            sPartBuffs[i] = null;
+        }
+        ctx.deallocateFrame(probeResBuff);
+        probeResBuff = null;
+        if (reloadBuffer != null) {
+            ctx.deallocateFrame(reloadBuffer);
+            reloadBuffer = null;
+        }
+    }
+
+    public long getBloomFilteredProbeTuples() {
+        return bloomFilteredProbeTuples;
     }
 
     private void probeWrite(int pid, ByteBuffer buff) throws HyracksDataException {
+        getProbeRFWriter(pid).nextFrame(buff);
+    }
+
+    private RunFileWriter getProbeRFWriter(int pid) throws HyracksDataException {
         RunFileWriter pWriter = probeRFWriters[pid];
         if (pWriter == null) {
             FileReference file = ctx.createManagedWorkspaceFile(rel1Name);
@@ -521,7 +623,7 @@ public class OptimizedHybridHashJoin {
             pWriter.open();
             probeRFWriters[pid] = pWriter;
         }
-        pWriter.nextFrame(buff);
+        return pWriter;
     }
 
     private void closeProbeWriter(int pid) throws HyracksDataException {
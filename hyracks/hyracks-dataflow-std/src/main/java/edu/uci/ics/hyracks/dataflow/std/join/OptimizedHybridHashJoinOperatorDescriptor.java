@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.BitSet;
 
+import edu.uci.ics.hyracks.api.comm.FrameHelper;
 import edu.uci.ics.hyracks.api.context.IHyracksTaskContext;
 import edu.uci.ics.hyracks.api.dataflow.ActivityId;
 import edu.uci.ics.hyracks.api.dataflow.IActivityGraphBuilder;
@@ -51,7 +52,8 @@ import edu.uci.ics.hyracks.dataflow.std.base.AbstractTaskState;
 import edu.uci.ics.hyracks.dataflow.std.base.AbstractUnaryInputSinkOperatorNodePushable;
 import edu.uci.ics.hyracks.dataflow.std.base.AbstractUnaryInputUnaryOutputOperatorNodePushable;
 import edu.uci.ics.hyracks.dataflow.std.structures.ISerializableTable;
-import edu.uci.ics.hyracks.dataflow.std.structures.SerializableHashTable;
+import edu.uci.ics.hyracks.dataflow.std.structures.ISerializableTableFactory;
+import edu.uci.ics.hyracks.dataflow.std.structures.SerializableHashTableFactory;
 
 /**
  * @author pouria
@@ -115,6 +117,7 @@ public class OptimizedHybridHashJoinOperatorDescriptor extends AbstractOperatorD
 
     private final boolean isLeftOuter;
     private final INullWriterFactory[] nullWriterFactories1;
+    private final ISerializableTableFactory serializableTableFactory; //For in-mem HJ
 
     public OptimizedHybridHashJoinOperatorDescriptor(JobSpecification spec, int memsize, int inputsize0, double factor,
             int[] keys0, int[] keys1, IBinaryHashFunctionFamily[] hashFunctionGeneratorFactories,
@@ -122,6 +125,18 @@ public class OptimizedHybridHashJoinOperatorDescriptor extends AbstractOperatorD
             ITuplePairComparatorFactory tupPaircomparatorFactory0,
             ITuplePairComparatorFactory tupPaircomparatorFactory1, boolean isLeftOuter,
             INullWriterFactory[] nullWriterFactories1) throws HyracksDataException {
+        this(spec, memsize, inputsize0, factor, keys0, keys1, hashFunctionGeneratorFactories, comparatorFactories,
+                recordDescriptor, tupPaircomparatorFactory0, tupPaircomparatorFactory1, isLeftOuter,
+                nullWriterFactories1, SerializableHashTableFactory.INSTANCE);
+    }
+
+    public OptimizedHybridHashJoinOperatorDescriptor(JobSpecification spec, int memsize, int inputsize0, double factor,
+            int[] keys0, int[] keys1, IBinaryHashFunctionFamily[] hashFunctionGeneratorFactories,
+            IBinaryComparatorFactory[] comparatorFactories, RecordDescriptor recordDescriptor,
+            ITuplePairComparatorFactory tupPaircomparatorFactory0,
+            ITuplePairComparatorFactory tupPaircomparatorFactory1, boolean isLeftOuter,
+            INullWriterFactory[] nullWriterFactories1, ISerializableTableFactory serializableTableFactory)
+            throws HyracksDataException {
 
         super(spec, 2, 1);
         this.memsize = memsize;
@@ -136,6 +151,7 @@ public class OptimizedHybridHashJoinOperatorDescriptor extends AbstractOperatorD
         recordDescriptors[0] = recordDescriptor;
         this.isLeftOuter = isLeftOuter;
         this.nullWriterFactories1 = nullWriterFactories1;
+        this.serializableTableFactory = serializableTableFactory;
 
     }
 
@@ -158,6 +174,7 @@ public class OptimizedHybridHashJoinOperatorDescriptor extends AbstractOperatorD
         recordDescriptors[0] = recordDescriptor;
         this.isLeftOuter = false;
         this.nullWriterFactories1 = null;
+        this.serializableTableFactory = SerializableHashTableFactory.INSTANCE;
     }
 
     @Override
@@ -204,6 +221,12 @@ public class OptimizedHybridHashJoinOperatorDescriptor extends AbstractOperatorD
     public static class BuildAndPartitionTaskState extends AbstractTaskState {
 
         private int memForJoin;
+        /**
+         * Frames reserved for the join. The resident build partitions stay in
+         * memory until the probe is done, so the frames are charged to the
+         * job rather than to the build task.
+         */
+        private int reservedFrames;
         private int numOfPartitions;
         private OptimizedHybridHashJoin hybridHJ;
 
@@ -273,12 +296,16 @@ public class OptimizedHybridHashJoinOperatorDescriptor extends AbstractOperatorD
                     if (memsize <= 2) { //Dedicated buffers: One buffer to read and one buffer for output
                         throw new HyracksDataException("not enough memory for Hybrid Hash Join");
                     }
-                    state.memForJoin = memsize - 2;
+                    // The memory budget may grant fewer than memsize frames, in
+                    // which case the join spills more partitions.
+                    state.reservedFrames = ctx.getJobletContext().getMemoryBudget().reserveFrames(3,
+                            Math.min(memsize, ctx.getMemoryBudget().getAvailableFrames()));
+                    state.memForJoin = state.reservedFrames - 2;
                     state.numOfPartitions = getNumberOfPartitions(state.memForJoin, inputsize0, fudgeFactor,
                             nPartitions);
                     state.hybridHJ = new OptimizedHybridHashJoin(ctx, state.memForJoin, state.numOfPartitions,
                             PROBE_REL, BUILD_REL, probeKeys, buildKeys, comparators, probeRd, buildRd, probeHpc,
-                            buildHpc);
+                            buildHpc, serializableTableFactory);
                     state.hybridHJ.initBuild();
                 }
 
@@ -373,31 +400,36 @@ public class OptimizedHybridHashJoinOperatorDescriptor extends AbstractOperatorD
 
                 @Override
                 public void close() throws HyracksDataException {
+                    try {
+                        state.hybridHJ.closeProbe(writer);
 
-                    state.hybridHJ.closeProbe(writer);
+                        BitSet partitionStatus = state.hybridHJ.getPartitinStatus();
+                        hpcRep0 = new RepartitionComputerGeneratorFactory(state.numOfPartitions, hpcf0)
+                                .createPartitioner(0);
+                        hpcRep1 = new RepartitionComputerGeneratorFactory(state.numOfPartitions, hpcf1)
+                                .createPartitioner(0);
 
-                    BitSet partitionStatus = state.hybridHJ.getPartitinStatus();
-                    hpcRep0 = new RepartitionComputerGeneratorFactory(state.numOfPartitions, hpcf0)
-                            .createPartitioner(0);
-                    hpcRep1 = new RepartitionComputerGeneratorFactory(state.numOfPartitions, hpcf1)
-                            .createPartitioner(0);
+                        rPartbuff.clear();
+                        for (int pid = partitionStatus.nextSetBit(0); pid >= 0; pid = partitionStatus
+                                .nextSetBit(pid + 1)) {
 
-                    rPartbuff.clear();
-                    for (int pid = partitionStatus.nextSetBit(0); pid >= 0; pid = partitionStatus.nextSetBit(pid + 1)) {
+                            RunFileReader bReader = state.hybridHJ.getBuildRFReader(pid);
+                            RunFileReader pReader = state.hybridHJ.getProbeRFReader(pid);
 
-                        RunFileReader bReader = state.hybridHJ.getBuildRFReader(pid);
-                        RunFileReader pReader = state.hybridHJ.getProbeRFReader(pid);
+                            if (bReader == null || pReader == null) { //either of sides (or both) does not have any tuple, thus no need for joining (no potential match)
+                                continue;
+                            }
+                            int bSize = state.hybridHJ.getBuildPartitionSizeInTup(pid);
+                            int pSize = state.hybridHJ.getProbePartitionSizeInTup(pid);
+                            int beforeMax = (bSize > pSize) ? bSize : pSize;
+                            joinPartitionPair(state.hybridHJ, bReader, pReader, pid, beforeMax, 1);
 
-                        if (bReader == null || pReader == null) { //either of sides (or both) does not have any tuple, thus no need for joining (no potential match)
-                            continue;
                         }
-                        int bSize = state.hybridHJ.getBuildPartitionSizeInTup(pid);
-                        int pSize = state.hybridHJ.getProbePartitionSizeInTup(pid);
-                        int beforeMax = (bSize > pSize) ? bSize : pSize;
-                        joinPartitionPair(state.hybridHJ, bReader, pReader, pid, beforeMax, 1);
-
+                        writer.close();
+                    } finally {
+                        ctx.getJobletContext().getMemoryBudget().releaseFrames(state.reservedFrames);
+                        state.reservedFrames = 0;
                     }
-                    writer.close();
                 }
 
                 private void joinPartitionPair(OptimizedHybridHashJoin ohhj, RunFileReader buildSideReader,
@@ -442,13 +474,15 @@ public class OptimizedHybridHashJoinOperatorDescriptor extends AbstractOperatorD
                             int n = getNumberOfPartitions(state.memForJoin, (int) buildPartSize, fudgeFactor,
                                     nPartitions);
                             rHHj = new OptimizedHybridHashJoin(ctx, state.memForJoin, n, PROBE_REL, BUILD_REL,
-                                    probeKeys, buildKeys, comparators, probeRd, buildRd, probeHpc, buildHpc);
+                                    probeKeys, buildKeys, comparators, probeRd, buildRd, probeHpc, buildHpc,
+                                    serializableTableFactory);
 
                             buildSideReader.open();
                             rHHj.initBuild();
+                            ByteBuffer frame;
                             rPartbuff.clear();
-                            while (buildSideReader.nextFrame(rPartbuff)) {
-                                rHHj.build(rPartbuff);
+                            while ((frame = FrameHelper.readFrame(buildSideReader, rPartbuff)) != null) {
+                                rHHj.build(frame);
                             }
 
                             rHHj.closeBuild();
@@ -456,8 +490,8 @@ public class OptimizedHybridHashJoinOperatorDescriptor extends AbstractOperatorD
                             probeSideReader.open();
                             rHHj.initProbe();
                             rPartbuff.clear();
-                            while (probeSideReader.nextFrame(rPartbuff)) {
-                                rHHj.probe(rPartbuff, writer);
+                            while ((frame = FrameHelper.readFrame(probeSideReader, rPartbuff)) != null) {
+                                rHHj.probe(frame, writer);
                             }
                             rHHj.closeProbe(writer);
 
@@ -503,20 +537,22 @@ public class OptimizedHybridHashJoinOperatorDescriptor extends AbstractOperatorD
                             int n = getNumberOfPartitions(state.memForJoin, (int) probePartSize, fudgeFactor,
                                     nPartitions);
                             rHHj = new OptimizedHybridHashJoin(ctx, state.memForJoin, n, BUILD_REL, PROBE_REL,
-                                    buildKeys, probeKeys, comparators, buildRd, probeRd, buildHpc, probeHpc);
+                                    buildKeys, probeKeys, comparators, buildRd, probeRd, buildHpc, probeHpc,
+                                    serializableTableFactory);
 
                             probeSideReader.open();
                             rHHj.initBuild();
+                            ByteBuffer frame;
                             rPartbuff.clear();
-                            while (probeSideReader.nextFrame(rPartbuff)) {
-                                rHHj.build(rPartbuff);
+                            while ((frame = FrameHelper.readFrame(probeSideReader, rPartbuff)) != null) {
+                                rHHj.build(frame);
                             }
                             rHHj.closeBuild();
                             rHHj.initProbe();
                             buildSideReader.open();
                             rPartbuff.clear();
-                            while (buildSideReader.nextFrame(rPartbuff)) {
-                                rHHj.probe(rPartbuff, writer);
+                            while ((frame = FrameHelper.readFrame(buildSideReader, rPartbuff)) != null) {
+                                rHHj.probe(frame, writer);
                             }
                             rHHj.closeProbe(writer);
                             int maxAfterBuildSize = rHHj.getMaxBuildPartitionSize();
@@ -567,7 +603,7 @@ public class OptimizedHybridHashJoinOperatorDescriptor extends AbstractOperatorD
                         ITuplePartitionComputer hpcRepSmaller, RunFileReader bReader, RunFileReader pReader)
                         throws HyracksDataException {
 
-                    ISerializableTable table = new SerializableHashTable(tabSize, ctx);
+                    ISerializableTable table = serializableTableFactory.createSerializableTable(tabSize, ctx);
                     InMemoryHashJoin joiner = new InMemoryHashJoin(ctx, tabSize, new FrameTupleAccessor(
                             ctx.getFrameSize(), probeRDesc), hpcRepLarger, new FrameTupleAccessor(ctx.getFrameSize(),
                             buildRDesc), hpcRepSmaller, new FrameTuplePairComparator(pKeys, bKeys, comparators),
@@ -575,9 +611,10 @@ public class OptimizedHybridHashJoinOperatorDescriptor extends AbstractOperatorD
 
                     bReader.open();
                     rPartbuff.clear();
-                    while (bReader.nextFrame(rPartbuff)) {
-                        ByteBuffer copyBuffer = ctx.allocateFrame(); //We need to allocate a copyBuffer, because this buffer gets added to the buffers list in the InMemoryHashJoin
-                        FrameUtils.copy(rPartbuff, copyBuffer);
+                    ByteBuffer frame;
+                    while ((frame = FrameHelper.readFrame(bReader, rPartbuff)) != null) {
+                        ByteBuffer copyBuffer = FrameUtils.allocateFrame(ctx, frame.capacity()); //We need to allocate a copyBuffer, because this buffer gets added to the buffers list in the InMemoryHashJoin
+                        FrameUtils.copy(frame, copyBuffer);
                         FrameUtils.makeReadable(copyBuffer);
                         joiner.build(copyBuffer);
                         rPartbuff.clear();
@@ -586,8 +623,8 @@ public class OptimizedHybridHashJoinOperatorDescriptor extends AbstractOperatorD
                     rPartbuff.clear();
                     // probe
                     pReader.open();
-                    while (pReader.nextFrame(rPartbuff)) {
-                        joiner.join(rPartbuff, writer);
+                    while ((frame = FrameHelper.readFrame(pReader, rPartbuff)) != null) {
+                        joiner.join(frame, writer);
                         rPartbuff.clear();
                     }
                     pReader.close();
@@ -603,9 +640,10 @@ public class OptimizedHybridHashJoinOperatorDescriptor extends AbstractOperatorD
 
                     ByteBuffer cacheBuff = ctx.allocateFrame();
                     innerReader.open();
-                    while (innerReader.nextFrame(cacheBuff)) {
-                        FrameUtils.makeReadable(cacheBuff);
-                        nlj.cache(cacheBuff);
+                    ByteBuffer frame;
+                    while ((frame = FrameHelper.readFrame(innerReader, cacheBuff)) != null) {
+                        FrameUtils.makeReadable(frame);
+                        nlj.cache(frame);
                         cacheBuff.clear();
                     }
                     nlj.closeCache();
@@ -613,9 +651,9 @@ public class OptimizedHybridHashJoinOperatorDescriptor extends AbstractOperatorD
                     ByteBuffer joinBuff = ctx.allocateFrame();
                     outerReader.open();
 
-                    while (outerReader.nextFrame(joinBuff)) {
-                        FrameUtils.makeReadable(joinBuff);
-                        nlj.join(joinBuff, writer);
+                    while ((frame = FrameHelper.readFrame(outerReader, joinBuff)) != null) {
+                        FrameUtils.makeReadable(frame);
+                        nlj.join(frame, writer);
                         joinBuff.clear();
                     }
 
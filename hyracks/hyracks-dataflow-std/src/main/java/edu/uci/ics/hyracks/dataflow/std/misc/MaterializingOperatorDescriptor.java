@@ -19,6 +19,7 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
+import edu.uci.ics.hyracks.api.comm.FrameHelper;
 import edu.uci.ics.hyracks.api.context.IHyracksTaskContext;
 import edu.uci.ics.hyracks.api.dataflow.ActivityId;
 import edu.uci.ics.hyracks.api.dataflow.IActivityGraphBuilder;
@@ -138,14 +139,15 @@ public class MaterializingOperatorDescriptor extends AbstractOperatorDescriptor
             return new AbstractUnaryOutputSourceOperatorNodePushable() {
                 @Override
                 public void initialize() throws HyracksDataException {
-                    ByteBuffer frame = ctx.allocateFrame();
+                    ByteBuffer buffer = ctx.allocateFrame();
                     MaterializerTaskState state = (MaterializerTaskState) ctx.getTaskState(new TaskId(new ActivityId(
                             getOperatorId(), MATERIALIZER_ACTIVITY_ID), partition));
                     RunFileReader in = state.out.createReader();
                     writer.open();
                     try {
                         in.open();
-                        while (in.nextFrame(frame)) {
+                        ByteBuffer frame;
+                        while ((frame = FrameHelper.readFrame(in, buffer)) != null) {
                             frame.flip();
                             writer.nextFrame(frame);
                             frame.clear();
@@ -17,6 +17,12 @@ package edu.uci.ics.hyracks.dataflow.std.sort;
 import java.nio.ByteBuffer;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import edu.uci.ics.hyracks.api.comm.IFrameReader;
 import edu.uci.ics.hyracks.api.comm.IFrameWriter;
@@ -28,19 +34,47 @@ import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
 import edu.uci.ics.hyracks.api.io.FileReference;
 import edu.uci.ics.hyracks.dataflow.common.io.RunFileWriter;
 
+/**
+ * Generates sorted runs from the frames of one partition. In the sequential mode, a batch of frames is sorted and
+ * written as a run on the calling thread once it fills the memory. In the parallel mode, the memory is split in two
+ * batches: while a full batch is sorted and written on a background thread, the calling thread keeps filling the
+ * other one.
+ */
 public class ExternalSortRunGenerator implements IFrameWriter {
     private final IHyracksTaskContext ctx;
-    private final FrameSorter frameSorter;
+    private FrameSorter frameSorter;
     private final List<IFrameReader> runs;
     private final int maxSortFrames;
 
+    // Used in the parallel mode only
+    private FrameSorter backgroundSorter;
+    private ExecutorService executor;
+    private Future<IFrameReader> pendingRun;
+
     public ExternalSortRunGenerator(IHyracksTaskContext ctx, int[] sortFields,
             INormalizedKeyComputerFactory firstKeyNormalizerFactory, IBinaryComparatorFactory[] comparatorFactories,
             RecordDescriptor recordDesc, int framesLimit) {
+        this(ctx, sortFields, firstKeyNormalizerFactory, comparatorFactories, recordDesc, framesLimit, false);
+    }
+
+    /**
+     * @param parallel
+     *            whether to sort and write full batches on a background thread. Each of the two batches then gets
+     *            half of the sort memory, so the option is ignored if the memory holds less than two frames.
+     */
+    public ExternalSortRunGenerator(IHyracksTaskContext ctx, int[] sortFields,
+            INormalizedKeyComputerFactory firstKeyNormalizerFactory, IBinaryComparatorFactory[] comparatorFactories,
+            RecordDescriptor recordDesc, int framesLimit, boolean parallel) {
         this.ctx = ctx;
         frameSorter = new FrameSorter(ctx, sortFields, firstKeyNormalizerFactory, comparatorFactories, recordDesc);
         runs = new LinkedList<IFrameReader>();
-        maxSortFrames = framesLimit - 1;
+        if (parallel && framesLimit - 1 >= 2) {
+            maxSortFrames = (framesLimit - 1) / 2;
+            backgroundSorter = new FrameSorter(ctx, sortFields, firstKeyNormalizerFactory, comparatorFactories,
+                    recordDesc);
+        } else {
+            maxSortFrames = framesLimit - 1;
+        }
     }
 
     @Override
@@ -52,39 +86,116 @@ public class ExternalSortRunGenerator implements IFrameWriter {
     @Override
     public void nextFrame(ByteBuffer buffer) throws HyracksDataException {
         if (frameSorter.getFrameCount() >= maxSortFrames) {
-            flushFramesToRun();
+            if (backgroundSorter != null) {
+                flushFramesToRunInBackground();
+            } else {
+                flushFramesToRun();
+            }
         }
         frameSorter.insertFrame(buffer);
     }
 
     @Override
     public void close() throws HyracksDataException {
-        if (frameSorter.getFrameCount() > 0) {
-            if (runs.size() <= 0) {
-                frameSorter.sortFrames();
-            } else {
-                flushFramesToRun();
+        try {
+            waitForPendingRun();
+            if (frameSorter.getFrameCount() > 0) {
+                if (runs.size() <= 0) {
+                    frameSorter.sortFrames();
+                } else {
+                    flushFramesToRun();
+                }
             }
+        } finally {
+            shutdownExecutor();
+        }
+        if (backgroundSorter != null) {
+            backgroundSorter.close();
         }
     }
 
     private void flushFramesToRun() throws HyracksDataException {
-        frameSorter.sortFrames();
         FileReference file = ctx.getJobletContext().createManagedWorkspaceFile(
                 ExternalSortRunGenerator.class.getSimpleName());
+        runs.add(sortAndFlush(frameSorter, file));
+    }
+
+    private IFrameReader sortAndFlush(FrameSorter sorter, FileReference file) throws HyracksDataException {
+        sorter.sortFrames();
         RunFileWriter writer = new RunFileWriter(file, ctx.getIOManager());
         writer.open();
         try {
-            frameSorter.flushFrames(writer);
+            sorter.flushFrames(writer);
         } finally {
             writer.close();
         }
-        frameSorter.reset();
-        runs.add(writer.createReader());
+        sorter.reset();
+        return writer.createReader();
+    }
+
+    /**
+     * Hands the full batch to the background thread and continues with the other batch, once the background thread
+     * is done with it.
+     */
+    private void flushFramesToRunInBackground() throws HyracksDataException {
+        waitForPendingRun();
+        final FrameSorter sorter = frameSorter;
+        frameSorter = backgroundSorter;
+        backgroundSorter = sorter;
+        final FileReference file = ctx.getJobletContext().createManagedWorkspaceFile(
+                ExternalSortRunGenerator.class.getSimpleName());
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, ExternalSortRunGenerator.class.getSimpleName());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        pendingRun = executor.submit(new Callable<IFrameReader>() {
+            @Override
+            public IFrameReader call() throws Exception {
+                return sortAndFlush(sorter, file);
+            }
+        });
+    }
+
+    private void waitForPendingRun() throws HyracksDataException {
+        if (pendingRun == null) {
+            return;
+        }
+        Future<IFrameReader> run = pendingRun;
+        pendingRun = null;
+        try {
+            runs.add(run.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HyracksDataException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof HyracksDataException) {
+                throw (HyracksDataException) cause;
+            }
+            throw new HyracksDataException(cause);
+        }
+    }
+
+    private void shutdownExecutor() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
     }
 
     @Override
     public void fail() throws HyracksDataException {
+        if (pendingRun != null) {
+            pendingRun.cancel(true);
+            pendingRun = null;
+        }
+        shutdownExecutor();
     }
 
     public FrameSorter getFrameSorter() {
@@ -94,4 +205,4 @@ public class ExternalSortRunGenerator implements IFrameWriter {
     public List<IFrameReader> getRuns() {
         return runs;
     }
-}
\ No newline at end of file
+}
@@ -4,14 +4,25 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
+import edu.uci.ics.hyracks.api.comm.FrameHelper;
 import edu.uci.ics.hyracks.api.comm.IFrameReader;
 import edu.uci.ics.hyracks.api.comm.IFrameWriter;
 import edu.uci.ics.hyracks.api.context.IHyracksTaskContext;
 import edu.uci.ics.hyracks.api.dataflow.value.IBinaryComparator;
+import edu.uci.ics.hyracks.api.dataflow.value.IBinaryComparatorFactory;
 import edu.uci.ics.hyracks.api.dataflow.value.RecordDescriptor;
 import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
 import edu.uci.ics.hyracks.api.io.FileReference;
+import edu.uci.ics.hyracks.api.util.ManagedBlocking;
 import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAccessor;
 import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAppender;
 import edu.uci.ics.hyracks.dataflow.common.comm.util.FrameUtils;
@@ -36,7 +47,10 @@ import edu.uci.ics.hyracks.dataflow.common.io.RunFileWriter;
  *         selection, if outputLimit is specified, once the final pass is done
  *         on the runs (which is the pass that generates the final sorted
  *         output), as soon as the output size hits the output limit, the
- *         process stops, closes, and returns.
+ *         process stops, closes, and returns. Without replacement selection,
+ *         the intermediate passes can also run in parallel: each pass then
+ *         splits the runs in disjoint groups that are merged concurrently into
+ *         new runs, until the remaining runs can be merged in the final pass.
  */
 
 public class ExternalSortRunMerger {
@@ -60,6 +74,9 @@ public class ExternalSortRunMerger {
                                    // selection and limit on output size
     private int currentSize; // Used in External sort, with replacement
                              // selection and limit on output size
+    // Used in External sort, no replacement selection, with parallel merging
+    private final IBinaryComparatorFactory[] comparatorFactories;
+    private final int parallelism;
 
     // Constructor for external sort, no replacement selection
     public ExternalSortRunMerger(IHyracksTaskContext ctx, FrameSorter frameSorter, List<IFrameReader> runs,
@@ -74,6 +91,27 @@ public class ExternalSortRunMerger {
         this.framesLimit = framesLimit;
         this.writer = writer;
         this.outputLimit = -1;
+        this.comparatorFactories = null;
+        this.parallelism = 1;
+    }
+
+    // Constructor for external sort, no replacement selection, with up to
+    // parallelism groups of runs merged concurrently in intermediate passes
+    public ExternalSortRunMerger(IHyracksTaskContext ctx, FrameSorter frameSorter, List<IFrameReader> runs,
+            int[] sortFields, IBinaryComparatorFactory[] comparatorFactories, RecordDescriptor recordDesc,
+            int framesLimit, IFrameWriter writer, int parallelism) {
+        this.ctx = ctx;
+        this.frameSorter = frameSorter;
+        this.runs = new LinkedList<IFrameReader>(runs);
+        this.sortFields = sortFields;
+        this.comparatorFactories = comparatorFactories;
+        this.comparators = createComparators(comparatorFactories);
+        this.recordDesc = recordDesc;
+        this.framesLimit = framesLimit;
+        this.writer = writer;
+        this.outputLimit = -1;
+        // every concurrent merge needs at least two input frames and an output frame
+        this.parallelism = Math.max(1, Math.min(parallelism, framesLimit / 3));
     }
 
     // Constructor for external sort with replacement selection
@@ -89,6 +127,16 @@ public class ExternalSortRunMerger {
         this.outputLimit = outputLimit;
         this.currentSize = 0;
         this.frameSorter = null;
+        this.comparatorFactories = null;
+        this.parallelism = 1;
+    }
+
+    private static IBinaryComparator[] createComparators(IBinaryComparatorFactory[] comparatorFactories) {
+        IBinaryComparator[] comparators = new IBinaryComparator[comparatorFactories.length];
+        for (int i = 0; i < comparatorFactories.length; ++i) {
+            comparators[i] = comparatorFactories[i].createBinaryComparator();
+        }
+        return comparators;
     }
 
     public void process() throws HyracksDataException {
@@ -107,6 +155,9 @@ public class ExternalSortRunMerger {
                 frameSorter.close();
                 System.gc();
 
+                if (parallelism > 1) {
+                    doParallelPasses();
+                }
                 inFrames = new ArrayList<ByteBuffer>();
                 outFrame = ctx.allocateFrame();
                 outFrameAppender = new FrameTupleAppender(ctx.getFrameSize());
@@ -121,6 +172,7 @@ public class ExternalSortRunMerger {
                         throw new HyracksDataException(e);
                     }
                 }
+                releaseMergeFrames();
             }
         } catch (Exception e) {
             writer.fail();
@@ -138,7 +190,7 @@ public class ExternalSortRunMerger {
         if (runs.size() + 1 <= framesLimit) { // + 1 outFrame
             finalPass = true;
             for (int i = inFrames.size() - 1; i >= runs.size(); i--) {
-                inFrames.remove(i);
+                ctx.deallocateFrame(inFrames.remove(i));
             }
         } else {
             newRun = ctx.createManagedWorkspaceFile(ExternalSortRunMerger.class.getSimpleName());
@@ -154,8 +206,9 @@ public class ExternalSortRunMerger {
                     comparators, recordDesc);
             merger.open();
             try {
-                while (merger.nextFrame(outFrame)) {
-                    FrameUtils.flushFrame(outFrame, writer);
+                ByteBuffer frame;
+                while ((frame = FrameHelper.readFrame(merger, outFrame)) != null) {
+                    FrameUtils.flushFrame(frame, writer);
                 }
             } finally {
                 merger.close();
@@ -171,6 +224,124 @@ public class ExternalSortRunMerger {
         }
     }
 
+    /**
+     * Runs intermediate passes, each merging disjoint groups of runs on up to parallelism threads, until the
+     * remaining runs fit in the final pass. The frames are split evenly between the threads.
+     */
+    private void doParallelPasses() throws HyracksDataException {
+        if (runs.size() + 1 <= framesLimit) {
+            return;
+        }
+        int fanIn = framesLimit / parallelism - 1;
+        final BlockingQueue<List<ByteBuffer>> frameSets = new ArrayBlockingQueue<List<ByteBuffer>>(parallelism);
+        for (int i = 0; i < parallelism; ++i) {
+            List<ByteBuffer> frames = new ArrayList<ByteBuffer>();
+            for (int j = 0; j < fanIn + 1; ++j) {
+                frames.add(ctx.allocateFrame());
+            }
+            frameSets.add(frames);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, ExternalSortRunMerger.class.getSimpleName());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        try {
+            while (runs.size() + 1 > framesLimit) {
+                List<Future<IFrameReader>> mergedRuns = new ArrayList<Future<IFrameReader>>();
+                while (runs.size() > 1) {
+                    List<IFrameReader> group = runs.subList(0, Math.min(fanIn, runs.size()));
+                    final IFrameReader[] runCursors = group.toArray(new IFrameReader[group.size()]);
+                    group.clear();
+                    final FileReference newRun = ctx.createManagedWorkspaceFile(ExternalSortRunMerger.class
+                            .getSimpleName());
+                    mergedRuns.add(executor.submit(new Callable<IFrameReader>() {
+                        @Override
+                        public IFrameReader call() throws Exception {
+                            List<ByteBuffer> frames;
+                            ManagedBlocking.beginBlocking();
+                            try {
+                                frames = frameSets.take();
+                            } finally {
+                                ManagedBlocking.endBlocking();
+                            }
+                            try {
+                                return mergeToRun(runCursors, frames, newRun);
+                            } finally {
+                                frameSets.add(frames);
+                            }
+                        }
+                    }));
+                }
+                for (Future<IFrameReader> mergedRun : mergedRuns) {
+                    runs.add(getMergedRun(mergedRun));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // all merges are done, nobody uses the frames anymore
+        for (List<ByteBuffer> frames : frameSets) {
+            for (ByteBuffer frame : frames) {
+                ctx.deallocateFrame(frame);
+            }
+        }
+    }
+
+    private void releaseMergeFrames() {
+        for (ByteBuffer inFrame : inFrames) {
+            ctx.deallocateFrame(inFrame);
+        }
+        inFrames.clear();
+        ctx.deallocateFrame(outFrame);
+        outFrame = null;
+    }
+
+    private IFrameReader mergeToRun(IFrameReader[] runCursors, List<ByteBuffer> frames, FileReference newRun)
+            throws HyracksDataException {
+        List<ByteBuffer> runFrames = frames.subList(0, runCursors.length);
+        ByteBuffer runOutFrame = frames.get(frames.size() - 1);
+        RunFileWriter runWriter = new RunFileWriter(newRun, ctx.getIOManager());
+        runWriter.open();
+        try {
+            RunMergingFrameReader merger = new RunMergingFrameReader(ctx, runCursors, runFrames, sortFields,
+                    createComparators(comparatorFactories), recordDesc);
+            merger.open();
+            try {
+                ByteBuffer frame;
+                while ((frame = FrameHelper.readFrame(merger, runOutFrame)) != null) {
+                    FrameUtils.flushFrame(frame, runWriter);
+                }
+            } finally {
+                merger.close();
+            }
+        } finally {
+            runWriter.close();
+        }
+        return runWriter.createReader();
+    }
+
+    private IFrameReader getMergedRun(Future<IFrameReader> mergedRun) throws HyracksDataException {
+        ManagedBlocking.beginBlocking();
+        try {
+            return mergedRun.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HyracksDataException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof HyracksDataException) {
+                throw (HyracksDataException) cause;
+            }
+            throw new HyracksDataException(cause);
+        } finally {
+            ManagedBlocking.endBlocking();
+        }
+    }
+
     public void processWithReplacementSelection() throws HyracksDataException {
         writer.open();
         try {
@@ -182,8 +353,9 @@ public class ExternalSortRunMerger {
                 if (outputLimit < 1) {
                     runs.get(0).open();
                     ByteBuffer nextFrame = ctx.allocateFrame();
-                    while (runs.get(0).nextFrame(nextFrame)) {
-                        FrameUtils.flushFrame(nextFrame, writer);
+                    ByteBuffer frame;
+                    while ((frame = FrameHelper.readFrame(runs.get(0), nextFrame)) != null) {
+                        FrameUtils.flushFrame(frame, writer);
                         outFrameAppender.reset(nextFrame, true);
                     }
                     System.gc();
@@ -194,11 +366,13 @@ public class ExternalSortRunMerger {
                 runs.get(0).open();
                 FrameTupleAccessor fta = new FrameTupleAccessor(ctx.getFrameSize(), recordDesc);
                 ByteBuffer nextFrame = ctx.allocateFrame();
-                while (totalCount <= outputLimit && runs.get(0).nextFrame(nextFrame)) {
-                    fta.reset(nextFrame);
+                ByteBuffer frame;
+                while (totalCount <= outputLimit
+                        && (frame = FrameHelper.readFrame(runs.get(0), nextFrame)) != null) {
+                    fta.reset(frame);
                     int tupCount = fta.getTupleCount();
                     if ((totalCount + tupCount) < outputLimit) {
-                        FrameUtils.flushFrame(nextFrame, writer);
+                        FrameUtils.flushFrame(frame, writer);
                         totalCount += tupCount;
                         continue;
                     }
@@ -207,7 +381,8 @@ public class ExternalSortRunMerger {
                     outFrameAppender.reset(outFrame, true);
                     for (int i = 0; i < copyCount; i++) {
                         if (!outFrameAppender.append(fta, i)) {
-                            throw new IllegalStateException();
+                            // Only a large frame holds a tuple that does not fit.
+                            FrameUtils.flushLargeTuple(ctx.getFrameSize(), fta, i, writer);
                         }
                         totalCount++;
                     }
@@ -232,6 +407,7 @@ public class ExternalSortRunMerger {
                     throw new HyracksDataException(e);
                 }
             }
+            releaseMergeFrames();
 
         } catch (Exception e) {
             writer.fail();
@@ -249,7 +425,7 @@ public class ExternalSortRunMerger {
         if (runs.size() + 1 <= framesLimit) { // + 1 outFrame
             finalPass = true;
             for (int i = inFrames.size() - 1; i >= runs.size(); i--) {
-                inFrames.remove(i);
+                ctx.deallocateFrame(inFrames.remove(i));
             }
         } else {
             newRun = ctx.createManagedWorkspaceFile(ExternalSortRunMerger.class.getSimpleName());
@@ -265,12 +441,13 @@ public class ExternalSortRunMerger {
                     comparators, recordDesc);
             merger.open();
             try {
-                while (merger.nextFrame(outFrame)) {
+                ByteBuffer frame;
+                while ((frame = FrameHelper.readFrame(merger, outFrame)) != null) {
                     if (outputLimit > 0 && finalPass) {
-                        outFrameAccessor.reset(outFrame);
+                        outFrameAccessor.reset(frame);
                         int count = outFrameAccessor.getTupleCount();
                         if ((currentSize + count) > outputLimit) {
-                            ByteBuffer b = ctx.allocateFrame();
+                            ByteBuffer b = FrameUtils.ensureCapacity(ctx.allocateFrame(), frame);
                             FrameTupleAppender partialAppender = new FrameTupleAppender(ctx.getFrameSize());
                             partialAppender.reset(b, true);
                             int copyCount = outputLimit - currentSize;
@@ -282,11 +459,11 @@ public class ExternalSortRunMerger {
                             FrameUtils.flushFrame(b, writer);
                             break;
                         } else {
-                            FrameUtils.flushFrame(outFrame, writer);
+                            FrameUtils.flushFrame(frame, writer);
                             currentSize += count;
                         }
                     } else {
-                        FrameUtils.flushFrame(outFrame, writer);
+                        FrameUtils.flushFrame(frame, writer);
                     }
                 }
             } finally {
@@ -16,6 +16,7 @@ package edu.uci.ics.hyracks.dataflow.std.sort;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import edu.uci.ics.hyracks.api.comm.IFrameWriter;
@@ -31,10 +32,16 @@ import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAppender;
 import edu.uci.ics.hyracks.dataflow.common.comm.util.FrameUtils;
 
 public class FrameSorter {
+    // Below this many tuples, the quicksort is faster than the radix sort passes.
+    private static final int MIN_RADIX_SORT_TUPLE_COUNT = 64;
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+
     private final IHyracksCommonContext ctx;
     private final int[] sortFields;
     private final INormalizedKeyComputer nkc;
     private final IBinaryComparator[] comparators;
+    private final boolean radixSort;
     private final List<ByteBuffer> buffers;
 
     private final FrameTupleAccessor fta1;
@@ -48,9 +55,26 @@ public class FrameSorter {
     private int[] tPointers;
     private int tupleCount;
 
+    private int[] tPointersTemp;
+    private long[] radixKeys;
+    private long[] radixKeysTemp;
+    private final int[] radixCounts;
+
     public FrameSorter(IHyracksCommonContext ctx, int[] sortFields,
             INormalizedKeyComputerFactory firstKeyNormalizerFactory, IBinaryComparatorFactory[] comparatorFactories,
             RecordDescriptor recordDescriptor) {
+        this(ctx, sortFields, firstKeyNormalizerFactory, comparatorFactories, recordDescriptor, true);
+    }
+
+    /**
+     * @param radixSort
+     *            if a normalizer factory is given, whether to radix sort the tuples on their normalized keys, and
+     *            only use the comparators within runs of equal normalized keys. Otherwise, the tuples are sorted
+     *            with a quicksort that compares the normalized keys before calling the comparators.
+     */
+    public FrameSorter(IHyracksCommonContext ctx, int[] sortFields,
+            INormalizedKeyComputerFactory firstKeyNormalizerFactory, IBinaryComparatorFactory[] comparatorFactories,
+            RecordDescriptor recordDescriptor, boolean radixSort) {
         this.ctx = ctx;
         this.sortFields = sortFields;
         nkc = firstKeyNormalizerFactory == null ? null : firstKeyNormalizerFactory.createNormalizedKeyComputer();
@@ -58,6 +82,8 @@ public class FrameSorter {
         for (int i = 0; i < comparatorFactories.length; ++i) {
             comparators[i] = comparatorFactories[i].createBinaryComparator();
         }
+        this.radixSort = radixSort && nkc != null;
+        radixCounts = new int[RADIX];
         buffers = new ArrayList<ByteBuffer>();
         fta1 = new FrameTupleAccessor(ctx.getFrameSize(), recordDescriptor);
         fta2 = new FrameTupleAccessor(ctx.getFrameSize(), recordDescriptor);
@@ -79,10 +105,15 @@ public class FrameSorter {
     public void insertFrame(ByteBuffer buffer) {
         ByteBuffer copyFrame;
         if (dataFrameCount == buffers.size()) {
-            copyFrame = ctx.allocateFrame();
+            copyFrame = FrameUtils.allocateFrame(ctx, buffer.capacity());
             buffers.add(copyFrame);
         } else {
             copyFrame = buffers.get(dataFrameCount);
+            if (copyFrame.capacity() != buffer.capacity()) {
+                // The copy of a large frame has to be just as large.
+                copyFrame = FrameUtils.allocateFrame(ctx, buffer.capacity());
+                buffers.set(dataFrameCount, copyFrame);
+            }
         }
         FrameUtils.copy(buffer, copyFrame);
         ++dataFrameCount;
@@ -115,11 +146,76 @@ public class FrameSorter {
                 ++ptr;
             }
         }
-        if (tupleCount > 0) {
+        if (radixSort && tupleCount >= MIN_RADIX_SORT_TUPLE_COUNT) {
+            radixSort();
+        } else if (tupleCount > 0) {
             sort(tPointers, 0, tupleCount);
         }
     }
 
+    /**
+     * Sorts the tuples with an LSD radix sort on their normalized keys, and then sorts each run of tuples with equal
+     * normalized keys with the comparators. The radix sort runs over longs that hold the normalized key in the upper
+     * half and the index of the tuple in the lower half, so that the passes move 8 bytes per tuple instead of the 16
+     * bytes of its tPointers entry, and the tPointers are permuted only once at the end.
+     */
+    private void radixSort() {
+        int n = tupleCount;
+        if (radixKeys == null || radixKeys.length < n) {
+            radixKeys = new long[n];
+            radixKeysTemp = new long[n];
+        }
+        if (tPointersTemp == null || tPointersTemp.length < tPointers.length) {
+            tPointersTemp = new int[tPointers.length];
+        }
+        long[] keys = radixKeys;
+        long[] temp = radixKeysTemp;
+        for (int i = 0; i < n; ++i) {
+            keys[i] = ((long) tPointers[i * 4 + 3]) << 32 | i;
+        }
+        int[] counts = radixCounts;
+        for (int shift = 32; shift < 64; shift += RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < n; ++i) {
+                ++counts[(int) (keys[i] >>> shift) & (RADIX - 1)];
+            }
+            if (counts[(int) (keys[0] >>> shift) & (RADIX - 1)] == n) {
+                // All keys have the same digit, the pass would not move anything.
+                continue;
+            }
+            int sum = 0;
+            for (int d = 0; d < RADIX; ++d) {
+                int c = counts[d];
+                counts[d] = sum;
+                sum += c;
+            }
+            for (int i = 0; i < n; ++i) {
+                long key = keys[i];
+                temp[counts[(int) (key >>> shift) & (RADIX - 1)]++] = key;
+            }
+            long[] t = keys;
+            keys = temp;
+            temp = t;
+        }
+        for (int i = 0; i < n; ++i) {
+            int src = (int) keys[i] * 4;
+            System.arraycopy(tPointers, src, tPointersTemp, i * 4, 4);
+        }
+        int[] t = tPointers;
+        tPointers = tPointersTemp;
+        tPointersTemp = t;
+
+        int runStart = 0;
+        for (int i = 1; i <= n; ++i) {
+            if (i == n || (keys[i] >>> 32) != (keys[runStart] >>> 32)) {
+                if (i - runStart > 1) {
+                    sort(tPointers, runStart, i - runStart);
+                }
+                runStart = i;
+            }
+        }
+    }
+
     public void flushFrames(IFrameWriter writer) throws HyracksDataException {
         appender.reset(outFrame, true);
         for (int ptr = 0; ptr < tupleCount; ++ptr) {
@@ -132,7 +228,7 @@ public class FrameSorter {
                 FrameUtils.flushFrame(outFrame, writer);
                 appender.reset(outFrame, true);
                 if (!appender.append(fta1, tStart, tEnd)) {
-                    throw new IllegalStateException();
+                    FrameUtils.flushLargeTuple(ctx.getFrameSize(), fta1, tStart, tEnd, writer);
                 }
             }
         }
@@ -240,6 +336,9 @@ public class FrameSorter {
     }
 
     public void close() {
+        for (ByteBuffer buffer : buffers) {
+            ctx.deallocateFrame(buffer);
+        }
         this.buffers.clear();
     }
 }
\ No newline at end of file
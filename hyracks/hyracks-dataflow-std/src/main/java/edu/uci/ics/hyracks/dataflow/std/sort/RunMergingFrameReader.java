@@ -18,6 +18,7 @@ import java.nio.ByteBuffer;
 import java.util.Comparator;
 import java.util.List;
 
+import edu.uci.ics.hyracks.api.comm.FrameHelper;
 import edu.uci.ics.hyracks.api.comm.IFrameReader;
 import edu.uci.ics.hyracks.api.comm.IFrameTupleAccessor;
 import edu.uci.ics.hyracks.api.context.IHyracksTaskContext;
@@ -26,6 +27,7 @@ import edu.uci.ics.hyracks.api.dataflow.value.RecordDescriptor;
 import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
 import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAccessor;
 import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAppender;
+import edu.uci.ics.hyracks.dataflow.common.comm.util.FrameUtils;
 import edu.uci.ics.hyracks.dataflow.std.util.ReferenceEntry;
 import edu.uci.ics.hyracks.dataflow.std.util.ReferencedPriorityQueue;
 
@@ -41,6 +43,13 @@ public class RunMergingFrameReader implements IFrameReader {
     private int[] tupleIndexes;
     private FrameTupleAccessor[] tupleAccessors;
 
+    /**
+     * A tuple that does not fit into an empty frame is handed out in a large
+     * frame, as a large frame header followed by its chunks.
+     */
+    private ByteBuffer largeFrame;
+    private int nextChunk;
+
     public RunMergingFrameReader(IHyracksTaskContext ctx, IFrameReader[] runCursors, List<ByteBuffer> inFrames,
             int[] sortFields, IBinaryComparator[] comparators, RecordDescriptor recordDesc) {
         this.ctx = ctx;
@@ -58,13 +67,15 @@ public class RunMergingFrameReader implements IFrameReader {
         Comparator<ReferenceEntry> comparator = createEntryComparator(comparators);
         topTuples = new ReferencedPriorityQueue(ctx.getFrameSize(), recordDesc, inFrames.size(), comparator);
         tupleIndexes = new int[inFrames.size()];
+        largeFrame = null;
         for (int i = 0; i < inFrames.size(); i++) {
             tupleIndexes[i] = 0;
             int runIndex = topTuples.peek().getRunid();
             runCursors[runIndex].open();
-            if (runCursors[runIndex].nextFrame(inFrames.get(runIndex))) {
+            ByteBuffer frame = FrameHelper.readFrame(runCursors[runIndex], inFrames.get(runIndex));
+            if (frame != null) {
                 tupleAccessors[runIndex] = new FrameTupleAccessor(ctx.getFrameSize(), recordDesc);
-                tupleAccessors[runIndex].reset(inFrames.get(runIndex));
+                tupleAccessors[runIndex].reset(frame);
                 setNextTopTuple(runIndex, tupleIndexes, runCursors, tupleAccessors, topTuples);
             } else {
                 closeRun(runIndex, runCursors, tupleAccessors);
@@ -75,6 +86,13 @@ public class RunMergingFrameReader implements IFrameReader {
 
     @Override
     public boolean nextFrame(ByteBuffer buffer) throws HyracksDataException {
+        if (largeFrame != null) {
+            FrameHelper.copyChunk(largeFrame, nextChunk++, buffer);
+            if (nextChunk * buffer.capacity() == largeFrame.capacity()) {
+                largeFrame = null;
+            }
+            return true;
+        }
         outFrameAppender.reset(buffer, true);
         while (!topTuples.areRunsExhausted()) {
             ReferenceEntry top = topTuples.peek();
@@ -83,6 +101,17 @@ public class RunMergingFrameReader implements IFrameReader {
             int tupleIndex = top.getTupleIndex();
 
             if (!outFrameAppender.append(fta, tupleIndex)) {
+                if (outFrameAppender.getTupleCount() > 0) {
+                    return true;
+                }
+                largeFrame = FrameUtils.allocateLargeFrame(buffer.capacity(), fta.getTupleEndOffset(tupleIndex)
+                        - fta.getTupleStartOffset(tupleIndex));
+                outFrameAppender.reset(largeFrame, true);
+                outFrameAppender.append(fta, tupleIndex);
+                FrameHelper.setLargeFrameHeader(buffer, largeFrame.capacity() / buffer.capacity());
+                nextChunk = 0;
+                ++tupleIndexes[runIndex];
+                setNextTopTuple(runIndex, tupleIndexes, runCursors, tupleAccessors, topTuples);
                 return true;
             }
 
@@ -119,8 +148,9 @@ public class RunMergingFrameReader implements IFrameReader {
         if (tupleAccessors[runIndex] == null || runCursors[runIndex] == null) {
             return false;
         } else if (tupleIndexes[runIndex] >= tupleAccessors[runIndex].getTupleCount()) {
-            ByteBuffer buf = tupleAccessors[runIndex].getBuffer(); // same-as-inFrames.get(runIndex)
-            if (runCursors[runIndex].nextFrame(buf)) {
+            ByteBuffer frame = FrameHelper.readFrame(runCursors[runIndex], inFrames.get(runIndex));
+            if (frame != null) {
+                tupleAccessors[runIndex].reset(frame);
                 tupleIndexes[runIndex] = 0;
                 return hasNextTuple(runIndex, tupleIndexes, runCursors, tupleAccessors);
             } else {
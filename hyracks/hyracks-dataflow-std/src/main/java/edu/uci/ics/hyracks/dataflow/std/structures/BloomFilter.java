@@ -0,0 +1,112 @@
+package edu.uci.ics.hyracks.dataflow.std.structures;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Bloom filter over int hash values, for sets whose size is not known in
+ * advance. The filter is a chain of stages: once a stage holds as many values
+ * as it was sized for, a stage four times as large is added for the next
+ * values. A value might be in the set if any stage might contain it. The bits
+ * of a stage are a power of two, at least BITS_PER_VALUE per value, and every
+ * value sets NUM_HASHES of them, which gives a false positive rate of about 1%
+ * per full stage.
+ */
+public class BloomFilter {
+    private static final int BITS_PER_VALUE = 10;
+    private static final int NUM_HASHES = 5;
+    private static final int GROWTH_FACTOR = 4;
+    private static final int MAX_STAGE_WORDS = 1 << 20;
+
+    private final int initialCapacity;
+    private final List<long[]> stages = new ArrayList<long[]>();
+    private long[] lastStage;
+    private int lastStageCapacity;
+    private int lastStageCount;
+
+    /**
+     * @param initialCapacity
+     *            the number of values the first stage is sized for
+     */
+    public BloomFilter(int initialCapacity) {
+        this.initialCapacity = Math.max(64, initialCapacity);
+    }
+
+    public void add(int hash) {
+        if (lastStage == null || lastStageCount >= lastStageCapacity) {
+            addStage();
+        }
+        int h1 = mix(hash);
+        int h2 = mix(h1) | 1;
+        int mask = (lastStage.length << 6) - 1;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            int bit = (h1 + i * h2) & mask;
+            lastStage[bit >>> 6] |= 1L << bit;
+        }
+        lastStageCount++;
+    }
+
+    public boolean mightContain(int hash) {
+        int h1 = mix(hash);
+        int h2 = mix(h1) | 1;
+        for (int s = 0; s < stages.size(); s++) {
+            if (mightContain(stages.get(s), h1, h2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void reset() {
+        stages.clear();
+        lastStage = null;
+        lastStageCount = 0;
+        lastStageCapacity = 0;
+    }
+
+    /**
+     * Gets the size of the filter in bytes.
+     */
+    public long getSize() {
+        long size = 0;
+        for (long[] stage : stages) {
+            size += stage.length * 8L;
+        }
+        return size;
+    }
+
+    private static boolean mightContain(long[] stage, int h1, int h2) {
+        int mask = (stage.length << 6) - 1;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            int bit = (h1 + i * h2) & mask;
+            if ((stage[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addStage() {
+        long capacity = lastStage == null ? initialCapacity : (long) lastStageCapacity * GROWTH_FACTOR;
+        int words = 1;
+        while (words < MAX_STAGE_WORDS && ((long) words << 6) < capacity * BITS_PER_VALUE) {
+            words <<= 1;
+        }
+        lastStageCapacity = (int) (((long) words << 6) / BITS_PER_VALUE);
+        lastStage = new long[words];
+        lastStageCount = 0;
+        stages.add(lastStage);
+    }
+
+    /**
+     * Spreads the bits of a hash value, which is often a small or partitioned number.
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,9 @@
+package edu.uci.ics.hyracks.dataflow.std.structures;
+
+import java.io.Serializable;
+
+import edu.uci.ics.hyracks.api.context.IHyracksTaskContext;
+
+public interface ISerializableTableFactory extends Serializable {
+    public ISerializableTable createSerializableTable(int tableSize, IHyracksTaskContext ctx);
+}
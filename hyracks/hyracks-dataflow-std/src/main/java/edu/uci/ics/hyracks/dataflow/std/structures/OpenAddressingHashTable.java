@@ -0,0 +1,180 @@
+package edu.uci.ics.hyracks.dataflow.std.structures;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.uci.ics.hyracks.api.context.IHyracksTaskContext;
+
+/**
+ * A table that keeps all tuple pointers in one open-addressing array with
+ * linear probing, laid out over frames. A slot is: entry, fIndex, tIndex. The
+ * entry stored in a slot acts as the fingerprint of the slot, so a probe skips
+ * the slots of other entries without looking at their tuples. The tuples of an
+ * entry are found by scanning from the home slot of the entry up to the first
+ * empty slot. The number of slots is a power of two. The array is sized to
+ * hold tableSize tuples and doubles when it is three quarters full.
+ */
+public class OpenAddressingHashTable implements ISerializableTable {
+
+    private static final int INT_SIZE = 4;
+    private static final int SLOT_SIZE = 3 * INT_SIZE;
+    private static final int EMPTY = -1;
+
+    private final IHyracksTaskContext ctx;
+    private final int frameSlotsBits;
+    private final int frameSlotsMask;
+    private List<ByteBuffer> frames = new ArrayList<ByteBuffer>();
+    private int slotsMask;
+    private int tupleCount = 0;
+
+    // the last slot returned by getTuplePointer(), to continue from it for the next offset of the same entry
+    private int cursorEntry = EMPTY;
+    private int cursorOffset;
+    private int cursorSlot;
+
+    public OpenAddressingHashTable(int tableSize, final IHyracksTaskContext ctx) {
+        this.ctx = ctx;
+        int frameSlots = Integer.highestOneBit(ctx.getFrameSize() / SLOT_SIZE);
+        frameSlotsBits = Integer.numberOfTrailingZeros(frameSlots);
+        frameSlotsMask = frameSlots - 1;
+        int capacity = frameSlots;
+        while (capacity < (1 << 30) && capacity - (capacity >>> 2) < tableSize) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    @Override
+    public void insert(int entry, TuplePointer pointer) {
+        if (tupleCount + 1 > capacity() - (capacity() >>> 2)) {
+            grow();
+        }
+        insertSlot(entry, pointer.frameIndex, pointer.tupleIndex);
+        tupleCount++;
+        cursorEntry = EMPTY;
+    }
+
+    @Override
+    public void getTuplePointer(int entry, int offset, TuplePointer dataPointer) {
+        int slot;
+        int matches;
+        if (entry == cursorEntry && offset == cursorOffset + 1) {
+            slot = (cursorSlot + 1) & slotsMask;
+            matches = offset;
+        } else {
+            slot = getHomeSlot(entry);
+            matches = 0;
+        }
+        while (true) {
+            ByteBuffer frame = frames.get(slot >>> frameSlotsBits);
+            int pos = (slot & frameSlotsMask) * SLOT_SIZE;
+            int slotEntry = frame.getInt(pos);
+            if (slotEntry == EMPTY) {
+                dataPointer.frameIndex = -1;
+                dataPointer.tupleIndex = -1;
+                cursorEntry = EMPTY;
+                return;
+            }
+            if (slotEntry == entry) {
+                if (matches == offset) {
+                    dataPointer.frameIndex = frame.getInt(pos + INT_SIZE);
+                    dataPointer.tupleIndex = frame.getInt(pos + 2 * INT_SIZE);
+                    cursorEntry = entry;
+                    cursorOffset = offset;
+                    cursorSlot = slot;
+                    return;
+                }
+                matches++;
+            }
+            slot = (slot + 1) & slotsMask;
+        }
+    }
+
+    @Override
+    public int getFrameCount() {
+        return frames.size();
+    }
+
+    @Override
+    public int getTupleCount() {
+        return tupleCount;
+    }
+
+    @Override
+    public void reset() {
+        for (ByteBuffer frame : frames) {
+            resetFrame(frame);
+        }
+        tupleCount = 0;
+        cursorEntry = EMPTY;
+    }
+
+    @Override
+    public void close() {
+        frames.clear();
+        slotsMask = -1;
+        tupleCount = 0;
+        cursorEntry = EMPTY;
+    }
+
+    private int capacity() {
+        return slotsMask + 1;
+    }
+
+    private void allocate(int capacity) {
+        frames = new ArrayList<ByteBuffer>();
+        int frameCount = Math.max(1, capacity >>> frameSlotsBits);
+        for (int i = 0; i < frameCount; i++) {
+            ByteBuffer frame = ctx.allocateFrame();
+            resetFrame(frame);
+            frames.add(frame);
+        }
+        slotsMask = capacity - 1;
+    }
+
+    private void grow() {
+        List<ByteBuffer> oldFrames = frames;
+        int oldCapacity = capacity();
+        allocate(oldCapacity * 2);
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            ByteBuffer frame = oldFrames.get(slot >>> frameSlotsBits);
+            int pos = (slot & frameSlotsMask) * SLOT_SIZE;
+            int entry = frame.getInt(pos);
+            if (entry != EMPTY) {
+                insertSlot(entry, frame.getInt(pos + INT_SIZE), frame.getInt(pos + 2 * INT_SIZE));
+            }
+        }
+    }
+
+    private void insertSlot(int entry, int frameIndex, int tupleIndex) {
+        int slot = getHomeSlot(entry);
+        while (true) {
+            ByteBuffer frame = frames.get(slot >>> frameSlotsBits);
+            int pos = (slot & frameSlotsMask) * SLOT_SIZE;
+            if (frame.getInt(pos) == EMPTY) {
+                frame.putInt(pos, entry);
+                frame.putInt(pos + INT_SIZE, frameIndex);
+                frame.putInt(pos + 2 * INT_SIZE, tupleIndex);
+                return;
+            }
+            slot = (slot + 1) & slotsMask;
+        }
+    }
+
+    /**
+     * Entries are usually consecutive hash values modulo the table size, so they are scrambled before they are
+     * mapped to a slot, to keep neighboring entries from sharing a probe sequence.
+     */
+    private int getHomeSlot(int entry) {
+        int h = entry * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & slotsMask;
+    }
+
+    private void resetFrame(ByteBuffer frame) {
+        int frameSlots = frameSlotsMask + 1;
+        for (int i = 0; i < frameSlots; i++) {
+            frame.putInt(i * SLOT_SIZE, EMPTY);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package edu.uci.ics.hyracks.dataflow.std.structures;
+
+import edu.uci.ics.hyracks.api.context.IHyracksTaskContext;
+
+public class SerializableHashTableFactory implements ISerializableTableFactory {
+    private static final long serialVersionUID = 1L;
+
+    public static final SerializableHashTableFactory INSTANCE = new SerializableHashTableFactory();
+
+    private SerializableHashTableFactory() {
+    }
+
+    @Override
+    public ISerializableTable createSerializableTable(int tableSize, IHyracksTaskContext ctx) {
+        return new SerializableHashTable(tableSize, ctx);
+    }
+}
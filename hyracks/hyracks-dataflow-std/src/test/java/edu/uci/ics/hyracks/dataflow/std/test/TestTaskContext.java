@@ -0,0 +1,281 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.uci.ics.hyracks.dataflow.std.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.uci.ics.hyracks.api.application.INCApplicationContext;
+import edu.uci.ics.hyracks.api.context.IHyracksJobletContext;
+import edu.uci.ics.hyracks.api.context.IHyracksTaskContext;
+import edu.uci.ics.hyracks.api.dataflow.TaskAttemptId;
+import edu.uci.ics.hyracks.api.dataflow.TaskId;
+import edu.uci.ics.hyracks.api.dataflow.state.ITaskState;
+import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
+import edu.uci.ics.hyracks.api.io.FileHandle;
+import edu.uci.ics.hyracks.api.io.FileReference;
+import edu.uci.ics.hyracks.api.io.IIOFuture;
+import edu.uci.ics.hyracks.api.io.IIOManager;
+import edu.uci.ics.hyracks.api.io.IODeviceHandle;
+import edu.uci.ics.hyracks.api.job.JobId;
+import edu.uci.ics.hyracks.api.job.profiling.counters.ICounter;
+import edu.uci.ics.hyracks.api.job.profiling.counters.ICounterContext;
+import edu.uci.ics.hyracks.api.resources.IDeallocatable;
+import edu.uci.ics.hyracks.api.resources.IMemoryBudget;
+
+/**
+ * A task context for operator tests that creates workspace files in the
+ * temporary directory, does file I/O on the calling thread and keeps its
+ * counters in memory.
+ */
+public class TestTaskContext implements IHyracksTaskContext, IHyracksJobletContext, IIOManager {
+    private final int frameSize;
+    private final List<File> workspaceFiles = new ArrayList<File>();
+    private final ICounterContext counterContext = new ICounterContext() {
+        private final Map<String, ICounter> counters = new HashMap<String, ICounter>();
+
+        @Override
+        public synchronized ICounter getCounter(String name, boolean create) {
+            ICounter counter = counters.get(name);
+            if (counter == null && create) {
+                counter = new Counter(name);
+                counters.put(name, counter);
+            }
+            return counter;
+        }
+    };
+
+    private final IMemoryBudget memoryBudget = new IMemoryBudget() {
+        private int reserved;
+
+        @Override
+        public synchronized int getAvailableFrames() {
+            return Integer.MAX_VALUE - reserved;
+        }
+
+        @Override
+        public synchronized int getReservedFrames() {
+            return reserved;
+        }
+
+        @Override
+        public synchronized int reserveFrames(int minFrames, int maxFrames) {
+            reserved += maxFrames;
+            return maxFrames;
+        }
+
+        @Override
+        public synchronized void releaseFrames(int nFrames) {
+            reserved -= nFrames;
+        }
+    };
+
+    public TestTaskContext(int frameSize) {
+        this.frameSize = frameSize;
+    }
+
+    public void deleteWorkspaceFiles() {
+        synchronized (workspaceFiles) {
+            for (File f : workspaceFiles) {
+                f.delete();
+            }
+            workspaceFiles.clear();
+        }
+    }
+
+    @Override
+    public ByteBuffer allocateFrame() {
+        return ByteBuffer.allocate(frameSize);
+    }
+
+    @Override
+    public void deallocateFrame(ByteBuffer frame) {
+        // spoil the frame, so that a test fails if the frame is used after it was given back
+        Arrays.fill(frame.array(), (byte) 0xff);
+    }
+
+    @Override
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    @Override
+    public IIOManager getIOManager() {
+        return this;
+    }
+
+    @Override
+    public FileReference createUnmanagedWorkspaceFile(String prefix) throws HyracksDataException {
+        try {
+            File f = File.createTempFile(prefix, ".waf");
+            synchronized (workspaceFiles) {
+                workspaceFiles.add(f);
+            }
+            return new FileReference(f);
+        } catch (IOException e) {
+            throw new HyracksDataException(e);
+        }
+    }
+
+    @Override
+    public FileReference createManagedWorkspaceFile(String prefix) throws HyracksDataException {
+        return createUnmanagedWorkspaceFile(prefix);
+    }
+
+    @Override
+    public void registerDeallocatable(IDeallocatable deallocatable) {
+    }
+
+    @Override
+    public void setTaskState(ITaskState taskState) {
+    }
+
+    @Override
+    public ITaskState getTaskState(TaskId taskId) {
+        return null;
+    }
+
+    @Override
+    public IHyracksJobletContext getJobletContext() {
+        return this;
+    }
+
+    @Override
+    public TaskAttemptId getTaskAttemptId() {
+        return null;
+    }
+
+    @Override
+    public ICounterContext getCounterContext() {
+        return counterContext;
+    }
+
+    @Override
+    public IMemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    @Override
+    public INCApplicationContext getApplicationContext() {
+        return null;
+    }
+
+    @Override
+    public JobId getJobId() {
+        return null;
+    }
+
+    @Override
+    public List<IODeviceHandle> getIODevices() {
+        return new ArrayList<IODeviceHandle>();
+    }
+
+    @Override
+    public FileHandle open(FileReference fileRef, FileReadWriteMode rwMode, FileSyncMode syncMode)
+            throws HyracksDataException {
+        FileHandle fHandle = new FileHandle(fileRef);
+        try {
+            fHandle.open(rwMode, syncMode);
+        } catch (IOException e) {
+            throw new HyracksDataException(e);
+        }
+        return fHandle;
+    }
+
+    @Override
+    public int syncWrite(FileHandle fHandle, long offset, ByteBuffer data) throws HyracksDataException {
+        try {
+            int n = 0;
+            while (data.remaining() > 0) {
+                n += fHandle.getFileChannel().write(data, offset + n);
+            }
+            return n;
+        } catch (IOException e) {
+            throw new HyracksDataException(e);
+        }
+    }
+
+    @Override
+    public int syncRead(FileHandle fHandle, long offset, ByteBuffer data) throws HyracksDataException {
+        try {
+            int n = 0;
+            while (data.remaining() > 0) {
+                int len = fHandle.getFileChannel().read(data, offset + n);
+                if (len < 0) {
+                    return -1;
+                }
+                n += len;
+            }
+            return n;
+        } catch (IOException e) {
+            throw new HyracksDataException(e);
+        }
+    }
+
+    @Override
+    public IIOFuture asyncWrite(FileHandle fHandle, long offset, ByteBuffer data) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public IIOFuture asyncRead(FileHandle fHandle, long offset, ByteBuffer data) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close(FileHandle fHandle) throws HyracksDataException {
+        try {
+            fHandle.close();
+        } catch (IOException e) {
+            throw new HyracksDataException(e);
+        }
+    }
+
+    private static class Counter implements ICounter {
+        private final String name;
+        private final AtomicLong value = new AtomicLong();
+
+        public Counter(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public long update(long delta) {
+            return value.addAndGet(delta);
+        }
+
+        @Override
+        public long set(long value) {
+            return this.value.getAndSet(value);
+        }
+
+        @Override
+        public long get() {
+            return value.get();
+        }
+    }
+}
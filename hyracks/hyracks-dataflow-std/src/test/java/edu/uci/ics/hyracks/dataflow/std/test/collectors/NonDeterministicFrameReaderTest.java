@@ -0,0 +1,159 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.uci.ics.hyracks.dataflow.std.test.collectors;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Queue;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import edu.uci.ics.hyracks.api.channels.IInputChannel;
+import edu.uci.ics.hyracks.api.channels.IInputChannelMonitor;
+import edu.uci.ics.hyracks.api.comm.FrameHelper;
+import edu.uci.ics.hyracks.api.dataflow.ConnectorDescriptorId;
+import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
+import edu.uci.ics.hyracks.api.job.JobId;
+import edu.uci.ics.hyracks.api.partitions.PartitionId;
+import edu.uci.ics.hyracks.dataflow.std.collectors.NonDeterministicChannelReader;
+import edu.uci.ics.hyracks.dataflow.std.collectors.NonDeterministicFrameReader;
+
+/**
+ * Reads the frames of two senders, one of which sends a large frame, by
+ * borrowing them from the channels, and checks that the channel buffers are
+ * lent out as they are and all go back to their channels.
+ */
+public class NonDeterministicFrameReaderTest {
+    private static final int FRAME_SIZE = 256;
+
+    @Test
+    public void borrowFrameTest() throws Exception {
+        NonDeterministicChannelReader channelReader = new NonDeterministicChannelReader(2, allSenders(2));
+        NonDeterministicFrameReader reader = new NonDeterministicFrameReader(channelReader);
+        TestInputChannel[] channels = new TestInputChannel[2];
+        for (int i = 0; i < channels.length; ++i) {
+            channels[i] = new TestInputChannel();
+            channelReader.addPartition(new PartitionId(new JobId(0), new ConnectorDescriptorId(0), i, 0), channels[i]);
+        }
+
+        ByteBuffer largeFrame = ByteBuffer.allocate(3 * FRAME_SIZE);
+        for (int i = 0; i < largeFrame.capacity(); ++i) {
+            largeFrame.put(i, (byte) i);
+        }
+        List<ByteBuffer> sentFrames = new ArrayList<ByteBuffer>();
+        sentFrames.add(createFrame(1));
+        channels[0].send(sentFrames.get(0));
+        channels[0].send(FrameHelper.createLargeFrameHeader(FRAME_SIZE, largeFrame));
+        for (int i = 0; i < 3; ++i) {
+            ByteBuffer chunk = ByteBuffer.allocate(FRAME_SIZE);
+            FrameHelper.copyChunk(largeFrame, i, chunk);
+            channels[0].send(chunk);
+        }
+        sentFrames.add(createFrame(2));
+        channels[1].send(sentFrames.get(1));
+        channels[0].close();
+        channels[1].close();
+
+        reader.open();
+        List<ByteBuffer> readFrames = new ArrayList<ByteBuffer>();
+        ByteBuffer readLargeFrame = null;
+        ByteBuffer frame;
+        while ((frame = reader.borrowFrame()) != null) {
+            if (FrameHelper.isLargeFrameHeader(frame)) {
+                Assert.assertNull(readLargeFrame);
+                readLargeFrame = FrameHelper.readLargeFrame(reader, frame);
+            } else {
+                readFrames.add(frame);
+                reader.returnFrame(frame);
+            }
+        }
+        reader.close();
+
+        Assert.assertEquals(sentFrames.size(), readFrames.size());
+        for (ByteBuffer sentFrame : sentFrames) {
+            // the frames are lent out, not copied
+            Assert.assertTrue(readFrames.contains(sentFrame));
+        }
+        Assert.assertNotNull(readLargeFrame);
+        Assert.assertEquals(largeFrame, readLargeFrame);
+        Assert.assertEquals(5, channels[0].recycledFrames);
+        Assert.assertEquals(1, channels[1].recycledFrames);
+    }
+
+    private static BitSet allSenders(int nSenders) {
+        BitSet senders = new BitSet(nSenders);
+        senders.set(0, nSenders);
+        return senders;
+    }
+
+    private static ByteBuffer createFrame(int tag) {
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_SIZE);
+        frame.putInt(0, tag);
+        return frame;
+    }
+
+    private static class TestInputChannel implements IInputChannel {
+        private final Queue<ByteBuffer> fullQueue = new ArrayDeque<ByteBuffer>();
+        private IInputChannelMonitor monitor;
+        private Object attachment;
+        private int recycledFrames;
+
+        public void send(ByteBuffer frame) {
+            synchronized (this) {
+                fullQueue.add(frame);
+            }
+            monitor.notifyDataAvailability(this, 1);
+        }
+
+        @Override
+        public void registerMonitor(IInputChannelMonitor monitor) {
+            this.monitor = monitor;
+        }
+
+        @Override
+        public void setAttachment(Object attachment) {
+            this.attachment = attachment;
+        }
+
+        @Override
+        public Object getAttachment() {
+            return attachment;
+        }
+
+        @Override
+        public synchronized ByteBuffer getNextBuffer() {
+            return fullQueue.poll();
+        }
+
+        @Override
+        public synchronized void recycleBuffer(ByteBuffer buffer) {
+            recycledFrames++;
+        }
+
+        @Override
+        public void open() throws HyracksDataException {
+        }
+
+        @Override
+        public void close() throws HyracksDataException {
+            monitor.notifyEndOfStream(this);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.uci.ics.hyracks.dataflow.std.test.group;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import edu.uci.ics.hyracks.api.comm.FrameHelper;
+import edu.uci.ics.hyracks.api.comm.IFrameReader;
+import edu.uci.ics.hyracks.api.comm.IFrameWriter;
+import edu.uci.ics.hyracks.api.dataflow.value.IBinaryComparator;
+import edu.uci.ics.hyracks.api.dataflow.value.ISerializerDeserializer;
+import edu.uci.ics.hyracks.api.dataflow.value.RecordDescriptor;
+import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
+import edu.uci.ics.hyracks.data.std.accessors.PointableBinaryComparatorFactory;
+import edu.uci.ics.hyracks.data.std.primitive.IntegerPointable;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.ArrayTupleBuilder;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameDeserializingDataReader;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAccessor;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAppender;
+import edu.uci.ics.hyracks.dataflow.common.comm.util.FrameUtils;
+import edu.uci.ics.hyracks.dataflow.common.data.marshalling.IntegerSerializerDeserializer;
+import edu.uci.ics.hyracks.dataflow.common.data.marshalling.UTF8StringSerializerDeserializer;
+import edu.uci.ics.hyracks.dataflow.std.group.IAggregatorDescriptor;
+import edu.uci.ics.hyracks.dataflow.std.group.IFieldAggregateDescriptorFactory;
+import edu.uci.ics.hyracks.dataflow.std.group.PreclusteredGroupWriter;
+import edu.uci.ics.hyracks.dataflow.std.group.aggregators.CountFieldAggregatorFactory;
+import edu.uci.ics.hyracks.dataflow.std.group.aggregators.MultiFieldsAggregatorFactory;
+import edu.uci.ics.hyracks.dataflow.std.test.TestTaskContext;
+
+/**
+ * Groups clustered input of which some tuples are larger than a frame, and
+ * reads such input the way it arrives over the network, as a header frame
+ * followed by frame-sized chunks.
+ */
+public class LargeTupleGroupTest {
+    private static final int FRAME_SIZE = 4096;
+    private static final int NUM_GROUPS = 500;
+    private static final int GROUP_SIZE = 20;
+    private static final int LARGE_TUPLE_INTERVAL = 37;
+    private static final int LARGE_PAYLOAD_LENGTH = 3 * FRAME_SIZE;
+
+    @SuppressWarnings("rawtypes")
+    private final RecordDescriptor inRecDesc = new RecordDescriptor(new ISerializerDeserializer[] {
+            IntegerSerializerDeserializer.INSTANCE, UTF8StringSerializerDeserializer.INSTANCE });
+
+    @SuppressWarnings("rawtypes")
+    private final RecordDescriptor outRecDesc = new RecordDescriptor(new ISerializerDeserializer[] {
+            IntegerSerializerDeserializer.INSTANCE, IntegerSerializerDeserializer.INSTANCE });
+
+    private static final TestTaskContext ctx = new TestTaskContext(FRAME_SIZE);
+
+    @Test
+    public void preclusteredGroupTest() throws Exception {
+        int[] groupFields = new int[] { 0 };
+        IAggregatorDescriptor aggregator = new MultiFieldsAggregatorFactory(
+                new IFieldAggregateDescriptorFactory[] { new CountFieldAggregatorFactory(true) }).createAggregator(
+                ctx, inRecDesc, outRecDesc, groupFields, groupFields);
+        IBinaryComparator[] comparators = new IBinaryComparator[] { PointableBinaryComparatorFactory.of(
+                IntegerPointable.FACTORY).createBinaryComparator() };
+        GroupCollector groups = new GroupCollector();
+        PreclusteredGroupWriter pgw = new PreclusteredGroupWriter(ctx, groupFields, comparators, aggregator,
+                inRecDesc, outRecDesc, groups);
+        pgw.open();
+        int largeFrames = 0;
+        for (ByteBuffer frame : createFrames()) {
+            if (frame.capacity() > FRAME_SIZE) {
+                largeFrames++;
+            }
+            pgw.nextFrame(frame);
+        }
+        pgw.close();
+
+        Assert.assertTrue(largeFrames > 0);
+        Assert.assertEquals(NUM_GROUPS, groups.keys.size());
+        for (int i = 0; i < NUM_GROUPS; ++i) {
+            Assert.assertEquals(i, (int) groups.keys.get(i));
+            Assert.assertEquals(GROUP_SIZE, (int) groups.counts.get(i));
+        }
+    }
+
+    @Test
+    public void chunkedFrameReaderTest() throws Exception {
+        // split the large frames into a header and chunks, like NetworkOutputChannel does
+        final List<ByteBuffer> sentFrames = new ArrayList<ByteBuffer>();
+        for (ByteBuffer frame : createFrames()) {
+            if (frame.capacity() > FRAME_SIZE) {
+                sentFrames.add(FrameHelper.createLargeFrameHeader(FRAME_SIZE, frame));
+                for (int i = 0; i < frame.capacity() / FRAME_SIZE; ++i) {
+                    ByteBuffer chunk = ctx.allocateFrame();
+                    FrameHelper.copyChunk(frame, i, chunk);
+                    sentFrames.add(chunk);
+                }
+            } else {
+                sentFrames.add(frame);
+            }
+        }
+        IFrameReader frameReader = new IFrameReader() {
+            private int nextFrame;
+
+            @Override
+            public void open() throws HyracksDataException {
+                nextFrame = 0;
+            }
+
+            @Override
+            public boolean nextFrame(ByteBuffer buffer) throws HyracksDataException {
+                if (nextFrame >= sentFrames.size()) {
+                    return false;
+                }
+                FrameUtils.copy(sentFrames.get(nextFrame++), buffer);
+                return true;
+            }
+
+            @Override
+            public void close() throws HyracksDataException {
+            }
+        };
+
+        FrameDeserializingDataReader reader = new FrameDeserializingDataReader(ctx, frameReader, inRecDesc);
+        reader.open();
+        int nRecords = 0;
+        int nLargeRecords = 0;
+        Object[] record;
+        while ((record = reader.readData()) != null) {
+            Assert.assertEquals(nRecords / GROUP_SIZE, ((Integer) record[0]).intValue());
+            if (((String) record[1]).length() == LARGE_PAYLOAD_LENGTH) {
+                nLargeRecords++;
+            }
+            nRecords++;
+        }
+        reader.close();
+        Assert.assertEquals(NUM_GROUPS * GROUP_SIZE, nRecords);
+        Assert.assertEquals((NUM_GROUPS * GROUP_SIZE + LARGE_TUPLE_INTERVAL - 1) / LARGE_TUPLE_INTERVAL,
+                nLargeRecords);
+    }
+
+    /**
+     * Creates GROUP_SIZE tuples for each of the keys 0, 1, ... in key order.
+     * Every LARGE_TUPLE_INTERVAL-th tuple has a payload that does not fit into
+     * a frame and is put into a large frame of its own.
+     */
+    private List<ByteBuffer> createFrames() throws HyracksDataException {
+        char[] largePayload = new char[LARGE_PAYLOAD_LENGTH];
+        Arrays.fill(largePayload, 'x');
+        final List<ByteBuffer> frames = new ArrayList<ByteBuffer>();
+        IFrameWriter frameCollector = new IFrameWriter() {
+            @Override
+            public void open() throws HyracksDataException {
+            }
+
+            @Override
+            public void nextFrame(ByteBuffer buffer) throws HyracksDataException {
+                frames.add(buffer);
+            }
+
+            @Override
+            public void fail() throws HyracksDataException {
+            }
+
+            @Override
+            public void close() throws HyracksDataException {
+            }
+        };
+        ArrayTupleBuilder tb = new ArrayTupleBuilder(2);
+        FrameTupleAppender appender = new FrameTupleAppender(FRAME_SIZE);
+        ByteBuffer frame = ctx.allocateFrame();
+        appender.reset(frame, true);
+        for (int i = 0; i < NUM_GROUPS * GROUP_SIZE; ++i) {
+            tb.reset();
+            tb.addField(IntegerSerializerDeserializer.INSTANCE, i / GROUP_SIZE);
+            tb.addField(UTF8StringSerializerDeserializer.INSTANCE,
+                    i % LARGE_TUPLE_INTERVAL == 0 ? new String(largePayload) : "p" + i);
+            if (!appender.append(tb.getFieldEndOffsets(), tb.getByteArray(), 0, tb.getSize())) {
+                frames.add(frame);
+                frame = ctx.allocateFrame();
+                appender.reset(frame, true);
+                if (!appender.append(tb.getFieldEndOffsets(), tb.getByteArray(), 0, tb.getSize())) {
+                    FrameUtils.flushLargeTuple(FRAME_SIZE, tb.getFieldEndOffsets(), tb.getByteArray(), 0,
+                            tb.getSize(), frameCollector);
+                }
+            }
+        }
+        frames.add(frame);
+        return frames;
+    }
+
+    private class GroupCollector implements IFrameWriter {
+        private final FrameTupleAccessor fta = new FrameTupleAccessor(FRAME_SIZE, outRecDesc);
+        private final List<Integer> keys = new ArrayList<Integer>();
+        private final List<Integer> counts = new ArrayList<Integer>();
+
+        @Override
+        public void open() throws HyracksDataException {
+        }
+
+        @Override
+        public void nextFrame(ByteBuffer buffer) throws HyracksDataException {
+            fta.reset(buffer);
+            byte[] array = buffer.array();
+            for (int i = 0; i < fta.getTupleCount(); ++i) {
+                int fieldsStart = fta.getTupleStartOffset(i) + fta.getFieldSlotsLength();
+                keys.add(IntegerSerializerDeserializer.getInt(array, fieldsStart + fta.getFieldStartOffset(i, 0)));
+                counts.add(IntegerSerializerDeserializer.getInt(array, fieldsStart + fta.getFieldStartOffset(i, 1)));
+            }
+        }
+
+        @Override
+        public void fail() throws HyracksDataException {
+        }
+
+        @Override
+        public void close() throws HyracksDataException {
+        }
+    }
+}
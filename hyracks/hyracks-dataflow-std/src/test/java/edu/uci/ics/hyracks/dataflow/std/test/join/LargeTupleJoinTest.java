@@ -0,0 +1,281 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.uci.ics.hyracks.dataflow.std.test.join;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import edu.uci.ics.hyracks.api.comm.FrameHelper;
+import edu.uci.ics.hyracks.api.comm.IFrameWriter;
+import edu.uci.ics.hyracks.api.dataflow.value.IBinaryComparator;
+import edu.uci.ics.hyracks.api.dataflow.value.IBinaryHashFunction;
+import edu.uci.ics.hyracks.api.dataflow.value.IBinaryHashFunctionFamily;
+import edu.uci.ics.hyracks.api.dataflow.value.ISerializerDeserializer;
+import edu.uci.ics.hyracks.api.dataflow.value.ITuplePartitionComputer;
+import edu.uci.ics.hyracks.api.dataflow.value.RecordDescriptor;
+import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
+import edu.uci.ics.hyracks.data.std.accessors.PointableBinaryComparatorFactory;
+import edu.uci.ics.hyracks.data.std.primitive.IntegerPointable;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.ArrayTupleBuilder;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAccessor;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAppender;
+import edu.uci.ics.hyracks.dataflow.common.comm.util.FrameUtils;
+import edu.uci.ics.hyracks.dataflow.common.data.marshalling.IntegerSerializerDeserializer;
+import edu.uci.ics.hyracks.dataflow.common.data.marshalling.UTF8StringSerializerDeserializer;
+import edu.uci.ics.hyracks.dataflow.common.data.partition.FieldHashPartitionComputerFamily;
+import edu.uci.ics.hyracks.dataflow.common.io.RunFileReader;
+import edu.uci.ics.hyracks.dataflow.std.join.OptimizedHybridHashJoin;
+import edu.uci.ics.hyracks.dataflow.std.structures.SerializableHashTableFactory;
+import edu.uci.ics.hyracks.dataflow.std.test.TestTaskContext;
+
+/**
+ * Joins inputs of which some tuples are larger than a frame, with little
+ * enough memory that some partitions spill. Checks that every probe tuple is
+ * either joined or spilled, and that the large tuples come out whole, from
+ * the in-memory join as well as from the run files.
+ */
+public class LargeTupleJoinTest {
+    private static final int FRAME_SIZE = 4096;
+    private static final int MEM_FOR_JOIN = 16;
+    private static final int NUM_PARTITIONS = 8;
+    private static final int NUM_TUPLES = 5000;
+    private static final int LARGE_TUPLE_INTERVAL = 97;
+    private static final int LARGE_PAYLOAD_LENGTH = 3 * FRAME_SIZE;
+
+    private static final IBinaryHashFunctionFamily BYTES_HASH_FUNCTION_FAMILY = new IBinaryHashFunctionFamily() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public IBinaryHashFunction createBinaryHashFunction(final int seed) {
+            return new IBinaryHashFunction() {
+                @Override
+                public int hash(byte[] bytes, int offset, int length) {
+                    int h = seed;
+                    for (int i = offset; i < offset + length; i++) {
+                        h = 31 * h + bytes[i];
+                    }
+                    return h;
+                }
+            };
+        }
+    };
+
+    private static final TestTaskContext ctx = new TestTaskContext(FRAME_SIZE);
+
+    @SuppressWarnings("rawtypes")
+    private final RecordDescriptor recDesc = new RecordDescriptor(new ISerializerDeserializer[] {
+            IntegerSerializerDeserializer.INSTANCE, UTF8StringSerializerDeserializer.INSTANCE });
+
+    @SuppressWarnings("rawtypes")
+    private final RecordDescriptor joinRecDesc = new RecordDescriptor(new ISerializerDeserializer[] {
+            IntegerSerializerDeserializer.INSTANCE, UTF8StringSerializerDeserializer.INSTANCE,
+            IntegerSerializerDeserializer.INSTANCE, UTF8StringSerializerDeserializer.INSTANCE });
+
+    @Test
+    public void largeProbeTupleTest() throws Exception {
+        runTest(false);
+    }
+
+    @Test
+    public void largeBuildAndProbeTupleTest() throws Exception {
+        runTest(true);
+    }
+
+    private void runTest(boolean largeBuild) throws Exception {
+        int[] keys = new int[] { 0 };
+        ITuplePartitionComputer hpc = new FieldHashPartitionComputerFamily(keys,
+                new IBinaryHashFunctionFamily[] { BYTES_HASH_FUNCTION_FAMILY }).createPartitioner(0);
+        IBinaryComparator[] comparators = new IBinaryComparator[] { PointableBinaryComparatorFactory.of(
+                IntegerPointable.FACTORY).createBinaryComparator() };
+        OptimizedHybridHashJoin join = new OptimizedHybridHashJoin(ctx, MEM_FOR_JOIN, NUM_PARTITIONS, "build",
+                "probe", keys, keys, comparators, recDesc, recDesc, hpc, hpc, SerializableHashTableFactory.INSTANCE);
+
+        join.initBuild();
+        for (ByteBuffer frame : createFrames(largeBuild)) {
+            join.build(frame);
+        }
+        join.closeBuild();
+        BitSet spilledPartitions = join.getPartitinStatus();
+        Assert.assertTrue(spilledPartitions.cardinality() > 0);
+
+        TupleCollector joined = new TupleCollector(joinRecDesc);
+        join.initProbe();
+        for (ByteBuffer frame : createFrames(true)) {
+            join.probe(frame, joined);
+        }
+        join.closeProbe(joined);
+
+        TupleCollector spilledBuild = new TupleCollector(recDesc);
+        TupleCollector spilledProbe = new TupleCollector(recDesc);
+        for (int pid = spilledPartitions.nextSetBit(0); pid >= 0; pid = spilledPartitions.nextSetBit(pid + 1)) {
+            readRunFile(join.getBuildRFReader(pid), spilledBuild);
+            readRunFile(join.getProbeRFReader(pid), spilledProbe);
+        }
+
+        BitSet seen = new BitSet();
+        for (int i = 0; i < joined.keys.size(); ++i) {
+            int key = joined.keys.get(i);
+            Assert.assertFalse(seen.get(key));
+            seen.set(key);
+            Assert.assertEquals(key, (int) joined.secondKeys.get(i));
+            // the probe tuple comes first
+            Assert.assertEquals(getPayloadLength(key, true), (int) joined.payloadLengths.get(i));
+            Assert.assertEquals(getPayloadLength(key, largeBuild), (int) joined.secondPayloadLengths.get(i));
+        }
+        for (int i = 0; i < spilledProbe.keys.size(); ++i) {
+            int key = spilledProbe.keys.get(i);
+            Assert.assertFalse(seen.get(key));
+            seen.set(key);
+            Assert.assertEquals(getPayloadLength(key, true), (int) spilledProbe.payloadLengths.get(i));
+        }
+        Assert.assertEquals(NUM_TUPLES, seen.cardinality());
+        for (int i = 0; i < spilledBuild.keys.size(); ++i) {
+            int key = spilledBuild.keys.get(i);
+            Assert.assertEquals(getPayloadLength(key, largeBuild), (int) spilledBuild.payloadLengths.get(i));
+        }
+        Assert.assertEquals(NUM_TUPLES - joined.keys.size(), spilledBuild.keys.size());
+        if (!largeBuild) {
+            // large probe tuples of partitions in memory are joined there
+            Assert.assertTrue(joined.largeFrames > 0);
+        }
+        Assert.assertTrue(spilledProbe.largeFrames > 0);
+    }
+
+    private static void readRunFile(RunFileReader reader, IFrameWriter writer) throws HyracksDataException {
+        reader.open();
+        ByteBuffer buffer = ctx.allocateFrame();
+        ByteBuffer frame;
+        while ((frame = FrameHelper.readFrame(reader, buffer)) != null) {
+            writer.nextFrame(frame);
+        }
+        reader.close();
+    }
+
+    private static int getPayloadLength(int key, boolean large) {
+        // the payloads are UTF8 strings with a two byte length
+        return (large && key % LARGE_TUPLE_INTERVAL == 0 ? LARGE_PAYLOAD_LENGTH : ("p" + key).length()) + 2;
+    }
+
+    /**
+     * Creates a tuple for each of the keys 0, 1, ... If large is set, every
+     * LARGE_TUPLE_INTERVAL-th tuple has a payload that does not fit into a
+     * frame and is put into a large frame of its own.
+     */
+    private List<ByteBuffer> createFrames(boolean large) throws HyracksDataException {
+        char[] largePayload = new char[LARGE_PAYLOAD_LENGTH];
+        Arrays.fill(largePayload, 'x');
+        final List<ByteBuffer> frames = new ArrayList<ByteBuffer>();
+        IFrameWriter frameCollector = new IFrameWriter() {
+            @Override
+            public void open() throws HyracksDataException {
+            }
+
+            @Override
+            public void nextFrame(ByteBuffer buffer) throws HyracksDataException {
+                frames.add(buffer);
+            }
+
+            @Override
+            public void fail() throws HyracksDataException {
+            }
+
+            @Override
+            public void close() throws HyracksDataException {
+            }
+        };
+        ArrayTupleBuilder tb = new ArrayTupleBuilder(2);
+        FrameTupleAppender appender = new FrameTupleAppender(FRAME_SIZE);
+        ByteBuffer frame = ctx.allocateFrame();
+        appender.reset(frame, true);
+        for (int i = 0; i < NUM_TUPLES; ++i) {
+            tb.reset();
+            tb.addField(IntegerSerializerDeserializer.INSTANCE, i);
+            tb.addField(UTF8StringSerializerDeserializer.INSTANCE,
+                    large && i % LARGE_TUPLE_INTERVAL == 0 ? new String(largePayload) : "p" + i);
+            if (!appender.append(tb.getFieldEndOffsets(), tb.getByteArray(), 0, tb.getSize())) {
+                frames.add(frame);
+                frame = ctx.allocateFrame();
+                appender.reset(frame, true);
+                if (!appender.append(tb.getFieldEndOffsets(), tb.getByteArray(), 0, tb.getSize())) {
+                    FrameUtils.flushLargeTuple(FRAME_SIZE, tb.getFieldEndOffsets(), tb.getByteArray(), 0,
+                            tb.getSize(), frameCollector);
+                }
+            }
+        }
+        frames.add(frame);
+        return frames;
+    }
+
+    @AfterClass
+    public static void cleanup() throws Exception {
+        ctx.deleteWorkspaceFiles();
+    }
+
+    /**
+     * Collects the key and the payload length of every tuple, and of the
+     * second key and payload for joined tuples.
+     */
+    private static class TupleCollector implements IFrameWriter {
+        private final FrameTupleAccessor fta;
+        private final List<Integer> keys = new ArrayList<Integer>();
+        private final List<Integer> payloadLengths = new ArrayList<Integer>();
+        private final List<Integer> secondKeys = new ArrayList<Integer>();
+        private final List<Integer> secondPayloadLengths = new ArrayList<Integer>();
+        private int largeFrames;
+
+        public TupleCollector(RecordDescriptor recDesc) {
+            fta = new FrameTupleAccessor(FRAME_SIZE, recDesc);
+        }
+
+        @Override
+        public void open() throws HyracksDataException {
+        }
+
+        @Override
+        public void nextFrame(ByteBuffer buffer) throws HyracksDataException {
+            if (buffer.capacity() > FRAME_SIZE) {
+                largeFrames++;
+            }
+            fta.reset(buffer);
+            byte[] array = buffer.array();
+            for (int i = 0; i < fta.getTupleCount(); ++i) {
+                int fieldsStart = fta.getTupleStartOffset(i) + fta.getFieldSlotsLength();
+                keys.add(IntegerSerializerDeserializer.getInt(array, fieldsStart + fta.getFieldStartOffset(i, 0)));
+                payloadLengths.add(fta.getFieldLength(i, 1));
+                if (fta.getFieldCount() > 2) {
+                    secondKeys.add(IntegerSerializerDeserializer.getInt(array,
+                            fieldsStart + fta.getFieldStartOffset(i, 2)));
+                    secondPayloadLengths.add(fta.getFieldLength(i, 3));
+                }
+            }
+        }
+
+        @Override
+        public void fail() throws HyracksDataException {
+        }
+
+        @Override
+        public void close() throws HyracksDataException {
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.uci.ics.hyracks.dataflow.std.test.join;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import junit.framework.Assert;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import edu.uci.ics.hyracks.api.comm.IFrameWriter;
+import edu.uci.ics.hyracks.api.dataflow.value.IBinaryComparator;
+import edu.uci.ics.hyracks.api.dataflow.value.IBinaryHashFunction;
+import edu.uci.ics.hyracks.api.dataflow.value.IBinaryHashFunctionFamily;
+import edu.uci.ics.hyracks.api.dataflow.value.ISerializerDeserializer;
+import edu.uci.ics.hyracks.api.dataflow.value.ITuplePartitionComputer;
+import edu.uci.ics.hyracks.api.dataflow.value.RecordDescriptor;
+import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
+import edu.uci.ics.hyracks.data.std.accessors.PointableBinaryComparatorFactory;
+import edu.uci.ics.hyracks.data.std.primitive.UTF8StringPointable;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.ArrayTupleBuilder;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAccessor;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAppender;
+import edu.uci.ics.hyracks.dataflow.common.data.marshalling.IntegerSerializerDeserializer;
+import edu.uci.ics.hyracks.dataflow.common.data.marshalling.UTF8StringSerializerDeserializer;
+import edu.uci.ics.hyracks.dataflow.common.data.partition.FieldHashPartitionComputerFamily;
+import edu.uci.ics.hyracks.dataflow.common.io.RunFileReader;
+import edu.uci.ics.hyracks.dataflow.std.join.OptimizedHybridHashJoin;
+import edu.uci.ics.hyracks.dataflow.std.structures.BloomFilter;
+import edu.uci.ics.hyracks.dataflow.std.structures.SerializableHashTableFactory;
+import edu.uci.ics.hyracks.dataflow.std.test.TestTaskContext;
+
+/**
+ * Joins a build input with a probe input ten times as large, of which only
+ * the first tenth has a match, with little enough memory that partitions
+ * spill. Checks that every probe tuple with a match is either joined or
+ * spilled, that the Bloom filters drop nearly all of the others, and that the
+ * number of dropped tuples is reported through the task counters.
+ */
+public class OptimizedHybridHashJoinBloomFilterTest {
+    private static final Logger LOGGER = Logger.getLogger(OptimizedHybridHashJoinBloomFilterTest.class.getName());
+
+    private static final int FRAME_SIZE = 4096;
+    private static final int MEM_FOR_JOIN = 16;
+    private static final int NUM_PARTITIONS = 8;
+    private static final int NUM_BUILD_TUPLES = 20000;
+    private static final int NUM_PROBE_TUPLES = 10 * NUM_BUILD_TUPLES;
+
+    // the filters can only tell keys apart by their hash values, so the keys are hashed over the whole int range
+    private static final IBinaryHashFunctionFamily BYTES_HASH_FUNCTION_FAMILY = new IBinaryHashFunctionFamily() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public IBinaryHashFunction createBinaryHashFunction(final int seed) {
+            return new IBinaryHashFunction() {
+                @Override
+                public int hash(byte[] bytes, int offset, int length) {
+                    int h = seed;
+                    for (int i = offset; i < offset + length; i++) {
+                        h = 31 * h + bytes[i];
+                    }
+                    return h;
+                }
+            };
+        }
+    };
+
+    private static final TestTaskContext ctx = new TestTaskContext(FRAME_SIZE);
+
+    @SuppressWarnings("rawtypes")
+    private final RecordDescriptor recDesc = new RecordDescriptor(new ISerializerDeserializer[] {
+            UTF8StringSerializerDeserializer.INSTANCE, IntegerSerializerDeserializer.INSTANCE });
+
+    @SuppressWarnings("rawtypes")
+    private final RecordDescriptor joinRecDesc = new RecordDescriptor(new ISerializerDeserializer[] {
+            UTF8StringSerializerDeserializer.INSTANCE, IntegerSerializerDeserializer.INSTANCE,
+            UTF8StringSerializerDeserializer.INSTANCE, IntegerSerializerDeserializer.INSTANCE });
+
+    @Test
+    public void bloomFilterJoinTest() throws Exception {
+        int[] keys = new int[] { 0 };
+        ITuplePartitionComputer hpc = new FieldHashPartitionComputerFamily(keys,
+                new IBinaryHashFunctionFamily[] { BYTES_HASH_FUNCTION_FAMILY }).createPartitioner(0);
+        IBinaryComparator[] comparators = new IBinaryComparator[] { PointableBinaryComparatorFactory.of(
+                UTF8StringPointable.FACTORY).createBinaryComparator() };
+        OptimizedHybridHashJoin join = new OptimizedHybridHashJoin(ctx, MEM_FOR_JOIN, NUM_PARTITIONS, "build",
+                "probe", keys, keys, comparators, recDesc, recDesc, hpc, hpc, SerializableHashTableFactory.INSTANCE);
+
+        join.initBuild();
+        for (ByteBuffer frame : createFrames(NUM_BUILD_TUPLES)) {
+            join.build(frame);
+        }
+        join.closeBuild();
+        Assert.assertTrue(join.getPartitinStatus().cardinality() > 0);
+
+        KeyCollector joined = new KeyCollector(joinRecDesc);
+        long start = System.currentTimeMillis();
+        join.initProbe();
+        for (ByteBuffer frame : createFrames(NUM_PROBE_TUPLES)) {
+            join.probe(frame, joined);
+        }
+        join.closeProbe(joined);
+        long probeTime = System.currentTimeMillis() - start;
+
+        KeyCollector spilled = new KeyCollector(recDesc);
+        ByteBuffer frame = ctx.allocateFrame();
+        for (int pid = 0; pid < NUM_PARTITIONS; pid++) {
+            RunFileReader reader = join.getProbeRFReader(pid);
+            if (reader != null) {
+                reader.open();
+                while (reader.nextFrame(frame)) {
+                    spilled.nextFrame(frame);
+                }
+                reader.close();
+            }
+        }
+
+        BitSet matched = new BitSet();
+        for (int key : joined.keys) {
+            Assert.assertTrue(key < NUM_BUILD_TUPLES);
+            Assert.assertFalse(matched.get(key));
+            matched.set(key);
+        }
+        int spilledWithoutMatch = 0;
+        for (int key : spilled.keys) {
+            if (key < NUM_BUILD_TUPLES) {
+                Assert.assertFalse(matched.get(key));
+                matched.set(key);
+            } else {
+                spilledWithoutMatch++;
+            }
+        }
+        Assert.assertEquals(NUM_BUILD_TUPLES, matched.cardinality());
+
+        long filtered = join.getBloomFilteredProbeTuples();
+        Assert.assertEquals(filtered, ctx.getCounterContext()
+                .getCounter(OptimizedHybridHashJoin.BLOOM_FILTERED_PROBE_TUPLES_COUNTER, false).get());
+        Assert.assertTrue(filtered > (NUM_PROBE_TUPLES - NUM_BUILD_TUPLES) * 0.95);
+
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info("Probing " + NUM_PROBE_TUPLES + " tuples against " + NUM_BUILD_TUPLES + " build tuples in "
+                    + probeTime + "ms: " + filtered + " dropped by the Bloom filters, " + spilledWithoutMatch
+                    + " spilled without a match");
+        }
+    }
+
+    @Test
+    public void bloomFilterTest() {
+        BloomFilter filter = new BloomFilter(64);
+        for (int i = 0; i < 100000; i++) {
+            filter.add(i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++) {
+            Assert.assertTrue(filter.mightContain(i));
+            if (filter.mightContain(100000 + i)) {
+                falsePositives++;
+            }
+        }
+        // every full stage adds about 1%
+        Assert.assertTrue(falsePositives < 5000);
+        filter.reset();
+        Assert.assertFalse(filter.mightContain(1));
+        Assert.assertEquals(0, filter.getSize());
+    }
+
+    /**
+     * Creates tuples with the keys "key0", "key1", ... and the key number as payload.
+     */
+    private List<ByteBuffer> createFrames(int numTuples) throws HyracksDataException {
+        List<ByteBuffer> frames = new ArrayList<ByteBuffer>();
+        ArrayTupleBuilder tb = new ArrayTupleBuilder(2);
+        FrameTupleAppender appender = new FrameTupleAppender(FRAME_SIZE);
+        ByteBuffer frame = ctx.allocateFrame();
+        appender.reset(frame, true);
+        for (int i = 0; i < numTuples; ++i) {
+            tb.reset();
+            tb.addField(UTF8StringSerializerDeserializer.INSTANCE, "key" + i);
+            tb.addField(IntegerSerializerDeserializer.INSTANCE, i);
+            if (!appender.append(tb.getFieldEndOffsets(), tb.getByteArray(), 0, tb.getSize())) {
+                frames.add(frame);
+                frame = ctx.allocateFrame();
+                appender.reset(frame, true);
+                Assert.assertTrue(appender.append(tb.getFieldEndOffsets(), tb.getByteArray(), 0, tb.getSize()));
+            }
+        }
+        frames.add(frame);
+        return frames;
+    }
+
+    @AfterClass
+    public static void cleanup() throws Exception {
+        ctx.deleteWorkspaceFiles();
+    }
+
+    /**
+     * Collects the number in the key of the first field of every tuple.
+     */
+    private static class KeyCollector implements IFrameWriter {
+        private final FrameTupleAccessor fta;
+        private final List<Integer> keys = new ArrayList<Integer>();
+
+        public KeyCollector(RecordDescriptor recDesc) {
+            fta = new FrameTupleAccessor(FRAME_SIZE, recDesc);
+        }
+
+        @Override
+        public void open() throws HyracksDataException {
+        }
+
+        @Override
+        public void nextFrame(ByteBuffer buffer) throws HyracksDataException {
+            fta.reset(buffer);
+            byte[] array = buffer.array();
+            for (int i = 0; i < fta.getTupleCount(); ++i) {
+                int start = fta.getTupleStartOffset(i) + fta.getFieldSlotsLength() + fta.getFieldStartOffset(i, 0);
+                String key = UTF8StringSerializerDeserializer.INSTANCE.deserialize(new DataInputStream(
+                        new ByteArrayInputStream(array, start, fta.getFieldLength(i, 0))));
+                keys.add(Integer.parseInt(key.substring(3)));
+            }
+        }
+
+        @Override
+        public void fail() throws HyracksDataException {
+        }
+
+        @Override
+        public void close() throws HyracksDataException {
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.uci.ics.hyracks.dataflow.std.test.sort;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import junit.framework.Assert;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import edu.uci.ics.hyracks.api.comm.IFrameWriter;
+import edu.uci.ics.hyracks.api.dataflow.value.IBinaryComparatorFactory;
+import edu.uci.ics.hyracks.api.dataflow.value.ISerializerDeserializer;
+import edu.uci.ics.hyracks.api.dataflow.value.RecordDescriptor;
+import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
+import edu.uci.ics.hyracks.data.std.accessors.PointableBinaryComparatorFactory;
+import edu.uci.ics.hyracks.data.std.primitive.IntegerPointable;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.ArrayTupleBuilder;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAccessor;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAppender;
+import edu.uci.ics.hyracks.dataflow.common.data.marshalling.IntegerSerializerDeserializer;
+import edu.uci.ics.hyracks.dataflow.common.data.normalizers.IntegerNormalizedKeyComputerFactory;
+import edu.uci.ics.hyracks.dataflow.std.sort.ExternalSortRunGenerator;
+import edu.uci.ics.hyracks.dataflow.std.sort.ExternalSortRunMerger;
+import edu.uci.ics.hyracks.dataflow.std.test.TestTaskContext;
+
+/**
+ * Sorts the same frames with sequential and with parallel run generation and
+ * merging, with little enough memory that the runs need intermediate merge
+ * passes, checks that both produce all tuples in order, and logs the times.
+ */
+public class ExternalSortParallelTest {
+    private static final Logger LOGGER = Logger.getLogger(ExternalSortParallelTest.class.getName());
+
+    private static final int FRAME_SIZE = 4096;
+    private static final int FRAMES_LIMIT = 16;
+    private static final int NUM_TUPLES = 200000;
+    private static final int MERGE_PARALLELISM = 2;
+
+    @SuppressWarnings("rawtypes")
+    private final RecordDescriptor recDesc = new RecordDescriptor(new ISerializerDeserializer[] {
+            IntegerSerializerDeserializer.INSTANCE, IntegerSerializerDeserializer.INSTANCE });
+
+    private final IBinaryComparatorFactory[] comparatorFactories = new IBinaryComparatorFactory[] { PointableBinaryComparatorFactory
+            .of(IntegerPointable.FACTORY) };
+
+    private static final TestTaskContext ctx = new TestTaskContext(FRAME_SIZE);
+
+    @Test
+    public void parallelSortTest() throws Exception {
+        List<ByteBuffer> frames = createFrames();
+        long start = System.currentTimeMillis();
+        TupleCollector sequentialTuples = sort(frames, false, 1);
+        long sequentialTime = System.currentTimeMillis() - start;
+        start = System.currentTimeMillis();
+        TupleCollector parallelTuples = sort(frames, true, MERGE_PARALLELISM);
+        long parallelTime = System.currentTimeMillis() - start;
+
+        Assert.assertEquals(NUM_TUPLES, parallelTuples.keys.size());
+        Assert.assertEquals(sequentialTuples.keys, parallelTuples.keys);
+        long checksum = 0;
+        for (int i = 0; i < NUM_TUPLES; ++i) {
+            if (i > 0) {
+                Assert.assertTrue(parallelTuples.keys.get(i - 1) <= parallelTuples.keys.get(i));
+            }
+            checksum += parallelTuples.payloads.get(i);
+        }
+        Assert.assertEquals((long) NUM_TUPLES * (NUM_TUPLES - 1) / 2, checksum);
+
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info("Sorting " + NUM_TUPLES + " tuples in " + FRAMES_LIMIT + " frames: sequential "
+                    + sequentialTime + "ms, parallel " + parallelTime + "ms");
+        }
+    }
+
+    @Test
+    public void inMemoryParallelSortTest() throws Exception {
+        List<ByteBuffer> frames = createFrames().subList(0, 2);
+        ExternalSortRunGenerator runGen = new ExternalSortRunGenerator(ctx, new int[] { 0 },
+                new IntegerNormalizedKeyComputerFactory(), comparatorFactories, recDesc, FRAMES_LIMIT, true);
+        runGen.open();
+        for (ByteBuffer frame : frames) {
+            runGen.nextFrame(frame);
+        }
+        runGen.close();
+        Assert.assertEquals(0, runGen.getRuns().size());
+        Assert.assertEquals(2, runGen.getFrameSorter().getFrameCount());
+    }
+
+    private TupleCollector sort(List<ByteBuffer> frames, boolean parallelRunGeneration, int mergeParallelism)
+            throws HyracksDataException {
+        ExternalSortRunGenerator runGen = new ExternalSortRunGenerator(ctx, new int[] { 0 },
+                new IntegerNormalizedKeyComputerFactory(), comparatorFactories, recDesc, FRAMES_LIMIT,
+                parallelRunGeneration);
+        runGen.open();
+        for (ByteBuffer frame : frames) {
+            runGen.nextFrame(frame);
+        }
+        runGen.close();
+        Assert.assertTrue(runGen.getRuns().size() + 1 > FRAMES_LIMIT);
+
+        TupleCollector tuples = new TupleCollector();
+        ExternalSortRunMerger merger = new ExternalSortRunMerger(ctx, runGen.getFrameSorter(), runGen.getRuns(),
+                new int[] { 0 }, comparatorFactories, recDesc, FRAMES_LIMIT, tuples, mergeParallelism);
+        merger.process();
+        return tuples;
+    }
+
+    /**
+     * Creates tuples with a random key and a distinct payload.
+     */
+    private List<ByteBuffer> createFrames() throws HyracksDataException {
+        Random rnd = new Random(50);
+        List<ByteBuffer> frames = new ArrayList<ByteBuffer>();
+        ArrayTupleBuilder tb = new ArrayTupleBuilder(2);
+        FrameTupleAppender appender = new FrameTupleAppender(FRAME_SIZE);
+        ByteBuffer frame = ctx.allocateFrame();
+        appender.reset(frame, true);
+        for (int i = 0; i < NUM_TUPLES; ++i) {
+            tb.reset();
+            tb.addField(IntegerSerializerDeserializer.INSTANCE, rnd.nextInt());
+            tb.addField(IntegerSerializerDeserializer.INSTANCE, i);
+            if (!appender.append(tb.getFieldEndOffsets(), tb.getByteArray(), 0, tb.getSize())) {
+                frames.add(frame);
+                frame = ctx.allocateFrame();
+                appender.reset(frame, true);
+                Assert.assertTrue(appender.append(tb.getFieldEndOffsets(), tb.getByteArray(), 0, tb.getSize()));
+            }
+        }
+        frames.add(frame);
+        return frames;
+    }
+
+    @AfterClass
+    public static void cleanup() throws Exception {
+        ctx.deleteWorkspaceFiles();
+    }
+
+    private class TupleCollector implements IFrameWriter {
+        private final FrameTupleAccessor fta = new FrameTupleAccessor(FRAME_SIZE, recDesc);
+        private final List<Integer> keys = new ArrayList<Integer>();
+        private final List<Integer> payloads = new ArrayList<Integer>();
+
+        @Override
+        public void open() throws HyracksDataException {
+        }
+
+        @Override
+        public void nextFrame(ByteBuffer buffer) throws HyracksDataException {
+            fta.reset(buffer);
+            byte[] array = buffer.array();
+            for (int i = 0; i < fta.getTupleCount(); ++i) {
+                int fieldsStart = fta.getTupleStartOffset(i) + fta.getFieldSlotsLength();
+                keys.add(IntegerSerializerDeserializer.getInt(array, fieldsStart + fta.getFieldStartOffset(i, 0)));
+                payloads.add(IntegerSerializerDeserializer.getInt(array, fieldsStart + fta.getFieldStartOffset(i, 1)));
+            }
+        }
+
+        @Override
+        public void fail() throws HyracksDataException {
+        }
+
+        @Override
+        public void close() throws HyracksDataException {
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.uci.ics.hyracks.dataflow.std.test.sort;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import edu.uci.ics.hyracks.api.comm.IFrameWriter;
+import edu.uci.ics.hyracks.api.context.IHyracksCommonContext;
+import edu.uci.ics.hyracks.api.dataflow.value.IBinaryComparatorFactory;
+import edu.uci.ics.hyracks.api.dataflow.value.INormalizedKeyComputerFactory;
+import edu.uci.ics.hyracks.api.dataflow.value.ISerializerDeserializer;
+import edu.uci.ics.hyracks.api.dataflow.value.RecordDescriptor;
+import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
+import edu.uci.ics.hyracks.api.io.IIOManager;
+import edu.uci.ics.hyracks.data.std.accessors.PointableBinaryComparatorFactory;
+import edu.uci.ics.hyracks.data.std.primitive.IntegerPointable;
+import edu.uci.ics.hyracks.data.std.primitive.UTF8StringPointable;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.ArrayTupleBuilder;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAccessor;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAppender;
+import edu.uci.ics.hyracks.dataflow.common.data.marshalling.IntegerSerializerDeserializer;
+import edu.uci.ics.hyracks.dataflow.common.data.marshalling.UTF8StringSerializerDeserializer;
+import edu.uci.ics.hyracks.dataflow.common.data.normalizers.IntegerNormalizedKeyComputerFactory;
+import edu.uci.ics.hyracks.dataflow.common.data.normalizers.UTF8StringNormalizedKeyComputerFactory;
+import edu.uci.ics.hyracks.dataflow.std.sort.FrameSorter;
+
+/**
+ * Sorts the same frames with the normalized-key radix sort and with the
+ * quicksort of FrameSorter, on integer keys and on string keys, checks that
+ * both produce the same order, and logs the sort times.
+ */
+public class FrameSorterPerfTest {
+    private static final Logger LOGGER = Logger.getLogger(FrameSorterPerfTest.class.getName());
+
+    private static final int FRAME_SIZE = 32768;
+    private static final int NUM_TUPLES = 200000;
+    private static final int NUM_RUNS = 5;
+
+    private final IHyracksCommonContext ctx = new IHyracksCommonContext() {
+        @Override
+        public ByteBuffer allocateFrame() {
+            return ByteBuffer.allocate(FRAME_SIZE);
+        }
+
+        @Override
+        public void deallocateFrame(ByteBuffer frame) {
+        }
+
+        @Override
+        public int getFrameSize() {
+            return FRAME_SIZE;
+        }
+
+        @Override
+        public IIOManager getIOManager() {
+            return null;
+        }
+    };
+
+    @SuppressWarnings("rawtypes")
+    private final RecordDescriptor recDesc = new RecordDescriptor(new ISerializerDeserializer[] {
+            IntegerSerializerDeserializer.INSTANCE, UTF8StringSerializerDeserializer.INSTANCE });
+
+    @Test
+    public void integerKeySortTest() throws Exception {
+        compareSorts("integer keys", new int[] { 0, 1 }, new IntegerNormalizedKeyComputerFactory(),
+                new IBinaryComparatorFactory[] { PointableBinaryComparatorFactory.of(IntegerPointable.FACTORY),
+                        PointableBinaryComparatorFactory.of(UTF8StringPointable.FACTORY) });
+    }
+
+    @Test
+    public void stringKeySortTest() throws Exception {
+        compareSorts("string keys", new int[] { 1, 0 }, new UTF8StringNormalizedKeyComputerFactory(),
+                new IBinaryComparatorFactory[] { PointableBinaryComparatorFactory.of(UTF8StringPointable.FACTORY),
+                        PointableBinaryComparatorFactory.of(IntegerPointable.FACTORY) });
+    }
+
+    private void compareSorts(String name, int[] sortFields, INormalizedKeyComputerFactory nkcf,
+            IBinaryComparatorFactory[] comparatorFactories) throws Exception {
+        List<ByteBuffer> frames = createFrames();
+        FrameSorter radixSorter = new FrameSorter(ctx, sortFields, nkcf, comparatorFactories, recDesc, true);
+        FrameSorter quickSorter = new FrameSorter(ctx, sortFields, nkcf, comparatorFactories, recDesc, false);
+        long radixTime = 0;
+        long quickTime = 0;
+        for (int i = 0; i < NUM_RUNS; ++i) {
+            radixTime += sort(radixSorter, frames);
+            quickTime += sort(quickSorter, frames);
+        }
+
+        TupleCollector radixTuples = new TupleCollector();
+        radixSorter.flushFrames(radixTuples);
+        TupleCollector quickTuples = new TupleCollector();
+        quickSorter.flushFrames(quickTuples);
+        Assert.assertEquals(NUM_TUPLES, radixTuples.keys.size());
+        Assert.assertEquals(quickTuples.strings, radixTuples.strings);
+        Assert.assertEquals(quickTuples.keys, radixTuples.keys);
+        for (int i = 1; i < NUM_TUPLES; ++i) {
+            int c = sortFields[0] == 0 ? radixTuples.keys.get(i - 1).compareTo(radixTuples.keys.get(i))
+                    : radixTuples.strings.get(i - 1).compareTo(radixTuples.strings.get(i));
+            Assert.assertTrue(c <= 0);
+        }
+
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info("Sorting " + NUM_TUPLES + " tuples on " + name + ": radix sort " + radixTime / NUM_RUNS
+                    + "ms, quicksort " + quickTime / NUM_RUNS + "ms");
+        }
+    }
+
+    private long sort(FrameSorter sorter, List<ByteBuffer> frames) {
+        sorter.reset();
+        for (ByteBuffer frame : frames) {
+            sorter.insertFrame(frame);
+        }
+        long start = System.currentTimeMillis();
+        sorter.sortFrames();
+        return System.currentTimeMillis() - start;
+    }
+
+    /**
+     * Creates tuples with random integers and random strings. A quarter of the strings share a prefix that is
+     * longer than a normalized key, so that the comparators have to order runs of equal normalized keys.
+     */
+    private List<ByteBuffer> createFrames() throws HyracksDataException {
+        Random rnd = new Random(50);
+        List<ByteBuffer> frames = new ArrayList<ByteBuffer>();
+        ArrayTupleBuilder tb = new ArrayTupleBuilder(2);
+        FrameTupleAppender appender = new FrameTupleAppender(FRAME_SIZE);
+        ByteBuffer frame = ctx.allocateFrame();
+        appender.reset(frame, true);
+        for (int i = 0; i < NUM_TUPLES; ++i) {
+            tb.reset();
+            tb.addField(IntegerSerializerDeserializer.INSTANCE, rnd.nextInt());
+            String prefix = rnd.nextInt(4) == 0 ? "commonprefix" : "";
+            tb.addField(UTF8StringSerializerDeserializer.INSTANCE, prefix + Long.toString(rnd.nextLong(), 36));
+            if (!appender.append(tb.getFieldEndOffsets(), tb.getByteArray(), 0, tb.getSize())) {
+                frames.add(frame);
+                frame = ctx.allocateFrame();
+                appender.reset(frame, true);
+                Assert.assertTrue(appender.append(tb.getFieldEndOffsets(), tb.getByteArray(), 0, tb.getSize()));
+            }
+        }
+        frames.add(frame);
+        return frames;
+    }
+
+    private class TupleCollector implements IFrameWriter {
+        private final FrameTupleAccessor fta = new FrameTupleAccessor(FRAME_SIZE, recDesc);
+        private final List<Integer> keys = new ArrayList<Integer>();
+        private final List<String> strings = new ArrayList<String>();
+
+        @Override
+        public void open() throws HyracksDataException {
+        }
+
+        @Override
+        public void nextFrame(ByteBuffer buffer) throws HyracksDataException {
+            fta.reset(buffer);
+            byte[] array = buffer.array();
+            for (int i = 0; i < fta.getTupleCount(); ++i) {
+                int fieldsStart = fta.getTupleStartOffset(i) + fta.getFieldSlotsLength();
+                keys.add(IntegerSerializerDeserializer.getInt(array, fieldsStart + fta.getFieldStartOffset(i, 0)));
+                int sStart = fieldsStart + fta.getFieldStartOffset(i, 1);
+                strings.add(UTF8StringSerializerDeserializer.INSTANCE.deserialize(new DataInputStream(
+                        new ByteArrayInputStream(array, sStart, fta.getFieldLength(i, 1)))));
+            }
+        }
+
+        @Override
+        public void fail() throws HyracksDataException {
+        }
+
+        @Override
+        public void close() throws HyracksDataException {
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.uci.ics.hyracks.dataflow.std.test.sort;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import edu.uci.ics.hyracks.api.comm.FrameHelper;
+import edu.uci.ics.hyracks.api.comm.IFrameWriter;
+import edu.uci.ics.hyracks.api.dataflow.value.IBinaryComparatorFactory;
+import edu.uci.ics.hyracks.api.dataflow.value.ISerializerDeserializer;
+import edu.uci.ics.hyracks.api.dataflow.value.RecordDescriptor;
+import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
+import edu.uci.ics.hyracks.data.std.accessors.PointableBinaryComparatorFactory;
+import edu.uci.ics.hyracks.data.std.primitive.IntegerPointable;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.ArrayTupleBuilder;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAccessor;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAppender;
+import edu.uci.ics.hyracks.dataflow.common.comm.util.FrameUtils;
+import edu.uci.ics.hyracks.dataflow.common.data.marshalling.IntegerSerializerDeserializer;
+import edu.uci.ics.hyracks.dataflow.common.data.marshalling.UTF8StringSerializerDeserializer;
+import edu.uci.ics.hyracks.dataflow.common.data.normalizers.IntegerNormalizedKeyComputerFactory;
+import edu.uci.ics.hyracks.dataflow.common.io.RunFileReader;
+import edu.uci.ics.hyracks.dataflow.common.io.RunFileWriter;
+import edu.uci.ics.hyracks.dataflow.std.sort.ExternalSortRunGenerator;
+import edu.uci.ics.hyracks.dataflow.std.sort.ExternalSortRunMerger;
+import edu.uci.ics.hyracks.dataflow.std.test.TestTaskContext;
+
+/**
+ * Sorts tuples of which some are larger than a frame, with little enough
+ * memory that the large tuples go through run files and merge passes, and
+ * checks that every tuple comes out whole and in order.
+ */
+public class LargeTupleSortTest {
+    private static final int FRAME_SIZE = 4096;
+    private static final int FRAMES_LIMIT = 4;
+    private static final int NUM_TUPLES = 20000;
+    private static final int LARGE_TUPLE_INTERVAL = 500;
+    private static final int LARGE_PAYLOAD_LENGTH = 3 * FRAME_SIZE;
+
+    @SuppressWarnings("rawtypes")
+    private final RecordDescriptor recDesc = new RecordDescriptor(new ISerializerDeserializer[] {
+            IntegerSerializerDeserializer.INSTANCE, UTF8StringSerializerDeserializer.INSTANCE });
+
+    private final IBinaryComparatorFactory[] comparatorFactories = new IBinaryComparatorFactory[] { PointableBinaryComparatorFactory
+            .of(IntegerPointable.FACTORY) };
+
+    private static final TestTaskContext ctx = new TestTaskContext(FRAME_SIZE);
+
+    @Test
+    public void largeTupleSortTest() throws Exception {
+        List<ByteBuffer> frames = createFrames();
+        ExternalSortRunGenerator runGen = new ExternalSortRunGenerator(ctx, new int[] { 0 },
+                new IntegerNormalizedKeyComputerFactory(), comparatorFactories, recDesc, FRAMES_LIMIT);
+        runGen.open();
+        for (ByteBuffer frame : frames) {
+            runGen.nextFrame(frame);
+        }
+        runGen.close();
+        Assert.assertTrue(runGen.getRuns().size() + 1 > FRAMES_LIMIT);
+
+        TupleCollector tuples = new TupleCollector();
+        ExternalSortRunMerger merger = new ExternalSortRunMerger(ctx, runGen.getFrameSorter(), runGen.getRuns(),
+                new int[] { 0 }, comparatorFactories, recDesc, FRAMES_LIMIT, tuples, 1);
+        merger.process();
+
+        Assert.assertEquals(NUM_TUPLES, tuples.keys.size());
+        int largeTuples = 0;
+        for (int i = 0; i < NUM_TUPLES; ++i) {
+            if (i > 0) {
+                Assert.assertTrue(tuples.keys.get(i - 1) <= tuples.keys.get(i));
+            }
+            if (tuples.payloadLengths.get(i) > FRAME_SIZE) {
+                // the payload is a UTF8 string with a two byte length
+                Assert.assertEquals(LARGE_PAYLOAD_LENGTH + 2, (int) tuples.payloadLengths.get(i));
+                largeTuples++;
+            }
+        }
+        Assert.assertEquals(NUM_TUPLES / LARGE_TUPLE_INTERVAL, largeTuples);
+        Assert.assertTrue(tuples.largeFrames > 0);
+    }
+
+    @Test
+    public void runFileTest() throws Exception {
+        RunFileWriter writer = new RunFileWriter(ctx.createManagedWorkspaceFile("LargeFrames"), ctx.getIOManager());
+        writer.open();
+        List<ByteBuffer> frames = createFrames();
+        for (ByteBuffer frame : frames) {
+            writer.nextFrame(frame);
+        }
+        writer.close();
+
+        RunFileReader reader = writer.createReader();
+        reader.open();
+        ByteBuffer buffer = ctx.allocateFrame();
+        ByteBuffer frame;
+        int i = 0;
+        while ((frame = FrameHelper.readFrame(reader, buffer)) != null) {
+            Assert.assertEquals(frames.get(i).capacity(), frame.capacity());
+            Assert.assertTrue(Arrays.equals(frames.get(i).array(), frame.array()));
+            i++;
+        }
+        reader.close();
+        Assert.assertEquals(frames.size(), i);
+    }
+
+    /**
+     * Creates tuples with a random key and a short payload, except for every
+     * LARGE_TUPLE_INTERVAL-th tuple, whose payload does not fit into a frame
+     * and which is put into a large frame of its own.
+     */
+    private List<ByteBuffer> createFrames() throws HyracksDataException {
+        Random rnd = new Random(50);
+        char[] largePayload = new char[LARGE_PAYLOAD_LENGTH];
+        Arrays.fill(largePayload, 'x');
+        final List<ByteBuffer> frames = new ArrayList<ByteBuffer>();
+        IFrameWriter frameCollector = new IFrameWriter() {
+            @Override
+            public void open() throws HyracksDataException {
+            }
+
+            @Override
+            public void nextFrame(ByteBuffer buffer) throws HyracksDataException {
+                frames.add(buffer);
+            }
+
+            @Override
+            public void fail() throws HyracksDataException {
+            }
+
+            @Override
+            public void close() throws HyracksDataException {
+            }
+        };
+        ArrayTupleBuilder tb = new ArrayTupleBuilder(2);
+        FrameTupleAppender appender = new FrameTupleAppender(FRAME_SIZE);
+        ByteBuffer frame = ctx.allocateFrame();
+        appender.reset(frame, true);
+        for (int i = 0; i < NUM_TUPLES; ++i) {
+            tb.reset();
+            tb.addField(IntegerSerializerDeserializer.INSTANCE, rnd.nextInt());
+            tb.addField(UTF8StringSerializerDeserializer.INSTANCE,
+                    i % LARGE_TUPLE_INTERVAL == 0 ? new String(largePayload) : "p" + i);
+            if (!appender.append(tb.getFieldEndOffsets(), tb.getByteArray(), 0, tb.getSize())) {
+                frames.add(frame);
+                frame = ctx.allocateFrame();
+                appender.reset(frame, true);
+                if (!appender.append(tb.getFieldEndOffsets(), tb.getByteArray(), 0, tb.getSize())) {
+                    FrameUtils.flushLargeTuple(FRAME_SIZE, tb.getFieldEndOffsets(), tb.getByteArray(), 0,
+                            tb.getSize(), frameCollector);
+                }
+            }
+        }
+        frames.add(frame);
+        return frames;
+    }
+
+    @AfterClass
+    public static void cleanup() throws Exception {
+        ctx.deleteWorkspaceFiles();
+    }
+
+    private class TupleCollector implements IFrameWriter {
+        private final FrameTupleAccessor fta = new FrameTupleAccessor(FRAME_SIZE, recDesc);
+        private final List<Integer> keys = new ArrayList<Integer>();
+        private final List<Integer> payloadLengths = new ArrayList<Integer>();
+        private int largeFrames;
+
+        @Override
+        public void open() throws HyracksDataException {
+        }
+
+        @Override
+        public void nextFrame(ByteBuffer buffer) throws HyracksDataException {
+            if (buffer.capacity() > FRAME_SIZE) {
+                largeFrames++;
+            }
+            fta.reset(buffer);
+            byte[] array = buffer.array();
+            for (int i = 0; i < fta.getTupleCount(); ++i) {
+                int fieldsStart = fta.getTupleStartOffset(i) + fta.getFieldSlotsLength();
+                keys.add(IntegerSerializerDeserializer.getInt(array, fieldsStart + fta.getFieldStartOffset(i, 0)));
+                payloadLengths.add(fta.getFieldLength(i, 1));
+            }
+        }
+
+        @Override
+        public void fail() throws HyracksDataException {
+        }
+
+        @Override
+        public void close() throws HyracksDataException {
+        }
+    }
+}
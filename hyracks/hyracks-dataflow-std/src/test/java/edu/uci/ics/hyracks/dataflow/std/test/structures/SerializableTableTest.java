@@ -0,0 +1,206 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.uci.ics.hyracks.dataflow.std.test.structures;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import edu.uci.ics.hyracks.api.context.IHyracksTaskContext;
+import edu.uci.ics.hyracks.dataflow.std.structures.ISerializableTable;
+import edu.uci.ics.hyracks.dataflow.std.structures.ISerializableTableFactory;
+import edu.uci.ics.hyracks.dataflow.std.structures.OpenAddressingHashTableFactory;
+import edu.uci.ics.hyracks.dataflow.std.structures.SerializableHashTableFactory;
+import edu.uci.ics.hyracks.dataflow.std.structures.TuplePointer;
+
+/**
+ * Fills the chained and the open-addressing tables with the same tuple
+ * pointers, checks that every entry holds the same pointers in both, and logs
+ * the build and probe times of each.
+ */
+public class SerializableTableTest {
+    private static final Logger LOGGER = Logger.getLogger(SerializableTableTest.class.getName());
+
+    private static final int FRAME_SIZE = 32768;
+    private static final int NUM_TUPLES = 1000000;
+    private static final int NUM_KEYS = NUM_TUPLES / 2;
+    private static final int TUPLES_PER_FRAME = 100;
+    private static final int NUM_RUNS = 5;
+
+    // the tables only allocate frames
+    private final IHyracksTaskContext ctx = (IHyracksTaskContext) Proxy.newProxyInstance(getClass()
+            .getClassLoader(), new Class<?>[] { IHyracksTaskContext.class }, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().equals("allocateFrame")) {
+                        return ByteBuffer.allocate(FRAME_SIZE);
+                    }
+                    if (method.getName().equals("getFrameSize")) {
+                        return FRAME_SIZE;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+
+    @Test
+    public void sameContentsTest() throws Exception {
+        int[] keys = createKeys();
+        ISerializableTable chained = build(SerializableHashTableFactory.INSTANCE, keys, NUM_KEYS);
+        // a small initial size makes the open-addressing table grow several times
+        ISerializableTable open = build(OpenAddressingHashTableFactory.INSTANCE, keys, 16);
+        Assert.assertEquals(NUM_TUPLES, chained.getTupleCount());
+        Assert.assertEquals(NUM_TUPLES, open.getTupleCount());
+
+        TuplePointer p = new TuplePointer();
+        for (int entry = 0; entry < NUM_KEYS; entry++) {
+            List<Long> chainedPointers = getPointers(chained, entry, p);
+            List<Long> openPointers = getPointers(open, entry, p);
+            Collections.sort(chainedPointers);
+            Collections.sort(openPointers);
+            Assert.assertEquals(chainedPointers, openPointers);
+        }
+        // random access by offset, as the group-by does after sorting
+        List<Long> pointers = getPointers(open, 7, p);
+        for (int offset = pointers.size() - 1; offset >= 0; offset--) {
+            open.getTuplePointer(7, offset, p);
+            Assert.assertEquals(pointers.get(offset).longValue(), toLong(p));
+        }
+
+        open.reset();
+        Assert.assertEquals(0, open.getTupleCount());
+        open.getTuplePointer(7, 0, p);
+        Assert.assertEquals(-1, p.frameIndex);
+        p.frameIndex = 3;
+        p.tupleIndex = 4;
+        open.insert(7, p);
+        open.getTuplePointer(7, 0, p);
+        Assert.assertEquals(3, p.frameIndex);
+        Assert.assertEquals(4, p.tupleIndex);
+        open.getTuplePointer(7, 1, p);
+        Assert.assertEquals(-1, p.frameIndex);
+        open.close();
+        chained.close();
+    }
+
+    @Test
+    public void buildAndProbePerfTest() throws Exception {
+        int[] keys = createKeys();
+        Random rnd = new Random(51);
+        int[] probeKeys = new int[NUM_TUPLES];
+        for (int i = 0; i < NUM_TUPLES; i++) {
+            probeKeys[i] = rnd.nextInt(2 * NUM_KEYS);
+        }
+        ISerializableTableFactory[] factories = new ISerializableTableFactory[] {
+                SerializableHashTableFactory.INSTANCE, OpenAddressingHashTableFactory.INSTANCE };
+        long[] buildTimes = new long[factories.length];
+        long[] probeTimes = new long[factories.length];
+        long[] matches = new long[factories.length];
+        for (int r = 0; r < NUM_RUNS; r++) {
+            for (int f = 0; f < factories.length; f++) {
+                long start = System.currentTimeMillis();
+                ISerializableTable table = build(factories[f], keys, NUM_TUPLES);
+                buildTimes[f] += System.currentTimeMillis() - start;
+                start = System.currentTimeMillis();
+                matches[f] = probe(table, keys, probeKeys);
+                probeTimes[f] += System.currentTimeMillis() - start;
+                table.close();
+            }
+        }
+        Assert.assertEquals(matches[0], matches[1]);
+
+        if (LOGGER.isLoggable(Level.INFO)) {
+            for (int f = 0; f < factories.length; f++) {
+                LOGGER.info(factories[f].getClass().getSimpleName() + ": build of " + NUM_TUPLES + " tuples "
+                        + buildTimes[f] / NUM_RUNS + "ms, probe of " + NUM_TUPLES + " tuples "
+                        + probeTimes[f] / NUM_RUNS + "ms");
+            }
+        }
+    }
+
+    /**
+     * Creates the keys of the build tuples. Every key occurs twice on average. The entry of a key is the key itself,
+     * as if it was hashed into a table of NUM_KEYS entries.
+     */
+    private int[] createKeys() {
+        Random rnd = new Random(50);
+        int[] keys = new int[NUM_TUPLES];
+        for (int i = 0; i < NUM_TUPLES; i++) {
+            keys[i] = rnd.nextInt(NUM_KEYS);
+        }
+        return keys;
+    }
+
+    private ISerializableTable build(ISerializableTableFactory factory, int[] keys, int tableSize) {
+        ISerializableTable table = factory.createSerializableTable(tableSize, ctx);
+        TuplePointer p = new TuplePointer();
+        for (int i = 0; i < keys.length; i++) {
+            p.frameIndex = i / TUPLES_PER_FRAME;
+            p.tupleIndex = i % TUPLES_PER_FRAME;
+            table.insert(keys[i], p);
+        }
+        return table;
+    }
+
+    /**
+     * Looks up the keys like a hash join: probe keys that fall outside the table's entries are folded into it, so
+     * about half the probes have to compare against tuples of other keys.
+     */
+    private long probe(ISerializableTable table, int[] buildKeys, int[] probeKeys) {
+        TuplePointer p = new TuplePointer();
+        long matches = 0;
+        for (int i = 0; i < probeKeys.length; i++) {
+            int key = probeKeys[i];
+            int entry = key % NUM_KEYS;
+            int offset = 0;
+            while (true) {
+                table.getTuplePointer(entry, offset++, p);
+                if (p.frameIndex < 0) {
+                    break;
+                }
+                if (buildKeys[p.frameIndex * TUPLES_PER_FRAME + p.tupleIndex] == key) {
+                    matches++;
+                }
+            }
+        }
+        return matches;
+    }
+
+    private List<Long> getPointers(ISerializableTable table, int entry, TuplePointer p) {
+        List<Long> pointers = new ArrayList<Long>();
+        int offset = 0;
+        while (true) {
+            table.getTuplePointer(entry, offset++, p);
+            if (p.frameIndex < 0) {
+                return pointers;
+            }
+            pointers.add(toLong(p));
+        }
+    }
+
+    private static long toLong(TuplePointer p) {
+        return ((long) p.frameIndex << 32) | p.tupleIndex;
+    }
+}
@@ -153,6 +153,8 @@ public class ChannelControlBlock {
 
         private boolean channelWritabilityState;
 
+        private boolean creditStalled;
+
         private final ICloseableBufferAcceptor fba = new ICloseableBufferAcceptor() {
             @Override
             public void accept(ByteBuffer buffer) {
@@ -276,6 +278,11 @@ public class ChannelControlBlock {
         }
 
         void adjustChannelWritability() {
+            boolean stalled = (currentWriteBuffer != null || !wiFullQueue.isEmpty()) && credits <= 0;
+            if (stalled && !creditStalled) {
+                cSet.getMultiplexedConnection().getPerformanceCounters().addCreditStall();
+            }
+            creditStalled = stalled;
             boolean writable = computeWritability();
             if (writable) {
                 if (!channelWritabilityState) {
@@ -58,6 +58,10 @@ public class ChannelSet {
         openChannelCount = 0;
     }
 
+    MultiplexedConnection getMultiplexedConnection() {
+        return mConn;
+    }
+
     ChannelControlBlock allocateChannel() throws NetException {
         synchronized (mConn) {
             int idx = allocationBitmap.nextClearBit(0);
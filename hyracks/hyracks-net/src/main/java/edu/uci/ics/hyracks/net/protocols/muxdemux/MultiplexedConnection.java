@@ -33,6 +33,8 @@ public class MultiplexedConnection implements ITCPConnectionEventListener {
 
     private final MuxDemux muxDemux;
 
+    private final MuxDemuxPerformanceCounters perfCounters;
+
     private final IEventCounter pendingWriteEventsCounter;
 
     private final ChannelSet cSet;
@@ -51,6 +53,7 @@ public class MultiplexedConnection implements ITCPConnectionEventListener {
 
     public MultiplexedConnection(MuxDemux muxDemux) {
         this.muxDemux = muxDemux;
+        perfCounters = muxDemux.getPerformanceCounters().createConnectionCounters();
         pendingWriteEventsCounter = new IEventCounter() {
             private int counter;
 
@@ -90,12 +93,14 @@ public class MultiplexedConnection implements ITCPConnectionEventListener {
 
     synchronized void setTCPConnection(TCPConnection tcpConnection) {
         this.tcpConnection = tcpConnection;
+        perfCounters.setRemoteAddress(tcpConnection.getRemoteAddress());
         tcpConnection.enable(SelectionKey.OP_READ);
         notifyAll();
     }
 
     synchronized void setConnectionFailure() {
         this.connectionFailure = true;
+        muxDemux.getPerformanceCounters().removeConnectionCounters(perfCounters);
         notifyAll();
     }
 
@@ -119,6 +124,15 @@ public class MultiplexedConnection implements ITCPConnectionEventListener {
         }
     }
 
+    @Override
+    public void notifyClosed(TCPConnection connection) {
+        muxDemux.getPerformanceCounters().removeConnectionCounters(perfCounters);
+    }
+
+    public MuxDemuxPerformanceCounters getPerformanceCounters() {
+        return perfCounters;
+    }
+
     public ChannelControlBlock openChannel() throws NetException, InterruptedException {
         ChannelControlBlock channel = cSet.allocateChannel();
         int channelId = channel.getChannelId();
@@ -161,7 +175,7 @@ public class MultiplexedConnection implements ITCPConnectionEventListener {
             int len = writeBuffer.remaining();
             if (len > 0) {
                 int written = sc.write(writeBuffer);
-                muxDemux.getPerformanceCounters().addSignalingBytesWritten(written);
+                perfCounters.addSignalingBytesWritten(written);
                 if (written < len) {
                     return false;
                 }
@@ -173,7 +187,7 @@ public class MultiplexedConnection implements ITCPConnectionEventListener {
                     try {
                         pendingBuffer.limit(pendingWriteSize + pendingBuffer.position());
                         int written = sc.write(pendingBuffer);
-                        muxDemux.getPerformanceCounters().addPayloadBytesWritten(written);
+                        perfCounters.addPayloadBytesWritten(written);
                         pendingWriteSize -= written;
                     } finally {
                         pendingBuffer.limit(oldLimit);
@@ -316,7 +330,7 @@ public class MultiplexedConnection implements ITCPConnectionEventListener {
                 if (read < 0) {
                     throw new NetException("Socket Closed");
                 }
-                muxDemux.getPerformanceCounters().addSignalingBytesRead(read);
+                perfCounters.addSignalingBytesRead(read);
                 if (readerState.readBuffer.remaining() > 0) {
                     return;
                 }
@@ -372,7 +386,7 @@ public class MultiplexedConnection implements ITCPConnectionEventListener {
             if (readerState.pendingReadSize > 0) {
                 ++chunksRead;
                 int newPendingReadSize = readerState.ccb.read(sc, readerState.pendingReadSize);
-                muxDemux.getPerformanceCounters().addPayloadBytesRead(readerState.pendingReadSize - newPendingReadSize);
+                perfCounters.addPayloadBytesRead(readerState.pendingReadSize - newPendingReadSize);
                 readerState.pendingReadSize = newPendingReadSize;
                 if (readerState.pendingReadSize > 0) {
                     return;
@@ -29,23 +29,35 @@ public class MuxDemux {
 
     private final IChannelOpenListener channelOpenListener;
 
-    private final Map<InetSocketAddress, MultiplexedConnection> connectionMap;
+    private final int nStripes;
+
+    private final Map<InetSocketAddress, ConnectionStripes> connectionMap;
 
     private final TCPEndpoint tcpEndpoint;
 
     private final MuxDemuxPerformanceCounters perfCounters;
 
     public MuxDemux(InetSocketAddress localAddress, IChannelOpenListener listener, int nThreads) {
+        this(localAddress, listener, nThreads, nThreads, 1);
+    }
+
+    /**
+     * Creates a MuxDemux that opens up to nStripes connections to every
+     * remote MuxDemux and spreads the channels to that MuxDemux across them.
+     * It starts with nThreads IO threads and starts more, up to maxThreads,
+     * as connections are added.
+     */
+    public MuxDemux(InetSocketAddress localAddress, IChannelOpenListener listener, int nThreads, int maxThreads,
+            int nStripes) {
         this.localAddress = localAddress;
         this.channelOpenListener = listener;
-        connectionMap = new HashMap<InetSocketAddress, MultiplexedConnection>();
+        this.nStripes = Math.max(1, nStripes);
+        connectionMap = new HashMap<InetSocketAddress, ConnectionStripes>();
+        perfCounters = new MuxDemuxPerformanceCounters();
         this.tcpEndpoint = new TCPEndpoint(new ITCPConnectionListener() {
             @Override
             public void connectionEstablished(TCPConnection connection) {
-                MultiplexedConnection mConn;
-                synchronized (MuxDemux.this) {
-                    mConn = connectionMap.get(connection.getRemoteAddress());
-                }
+                MultiplexedConnection mConn = (MultiplexedConnection) connection.getAttachment();
                 assert mConn != null;
                 mConn.setTCPConnection(connection);
                 connection.setEventListener(mConn);
@@ -61,37 +73,49 @@ public class MuxDemux {
             }
 
             @Override
-            public void connectionFailure(InetSocketAddress remoteAddress) {
-                MultiplexedConnection mConn;
+            public void connectionFailure(InetSocketAddress remoteAddress, Object attachment) {
+                MultiplexedConnection mConn = (MultiplexedConnection) attachment;
                 synchronized (MuxDemux.this) {
-                    mConn = connectionMap.get(remoteAddress);
                     assert mConn != null;
                     int nConnectionAttempts = mConn.getConnectionAttempts();
                     if (nConnectionAttempts > 5) {
-                        connectionMap.remove(remoteAddress);
+                        ConnectionStripes stripes = connectionMap.get(remoteAddress);
+                        if (stripes != null) {
+                            stripes.remove(mConn);
+                        }
                         mConn.setConnectionFailure();
                     } else {
                         mConn.setConnectionAttempts(nConnectionAttempts + 1);
-                        tcpEndpoint.initiateConnection(remoteAddress);
+                        tcpEndpoint.initiateConnection(remoteAddress, mConn);
                     }
                 }
             }
-        }, nThreads);
-        perfCounters = new MuxDemuxPerformanceCounters();
+        }, nThreads, maxThreads);
     }
 
     public void start() throws IOException {
         tcpEndpoint.start(localAddress);
     }
 
+    /**
+     * Gets a connection to the given remote MuxDemux to open channels on.
+     * Successive calls go round-robin over the stripes to that MuxDemux,
+     * connecting a stripe when it is used for the first time.
+     */
     public MultiplexedConnection connect(InetSocketAddress remoteAddress) throws InterruptedException, NetException {
         MultiplexedConnection mConn = null;
         synchronized (this) {
-            mConn = connectionMap.get(remoteAddress);
+            ConnectionStripes stripes = connectionMap.get(remoteAddress);
+            if (stripes == null) {
+                stripes = new ConnectionStripes(nStripes);
+                connectionMap.put(remoteAddress, stripes);
+            }
+            int stripe = stripes.nextStripe();
+            mConn = stripes.connections[stripe];
             if (mConn == null) {
                 mConn = new MultiplexedConnection(this);
-                connectionMap.put(remoteAddress, mConn);
-                tcpEndpoint.initiateConnection(remoteAddress);
+                stripes.connections[stripe] = mConn;
+                tcpEndpoint.initiateConnection(remoteAddress, mConn);
             }
         }
         mConn.waitUntilConnected();
@@ -109,4 +133,28 @@ public class MuxDemux {
     public MuxDemuxPerformanceCounters getPerformanceCounters() {
         return perfCounters;
     }
+
+    private static class ConnectionStripes {
+        private final MultiplexedConnection[] connections;
+
+        private int nextStripe;
+
+        ConnectionStripes(int nStripes) {
+            connections = new MultiplexedConnection[nStripes];
+        }
+
+        int nextStripe() {
+            int stripe = nextStripe;
+            nextStripe = (nextStripe + 1) % connections.length;
+            return stripe;
+        }
+
+        void remove(MultiplexedConnection mConn) {
+            for (int i = 0; i < connections.length; ++i) {
+                if (connections[i] == mConn) {
+                    connections[i] = null;
+                }
+            }
+        }
+    }
 }
\ No newline at end of file
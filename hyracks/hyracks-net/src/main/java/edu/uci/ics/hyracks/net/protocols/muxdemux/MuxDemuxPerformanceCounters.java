@@ -14,9 +14,23 @@
  */
 package edu.uci.ics.hyracks.net.protocols.muxdemux;
 
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Counters of a MuxDemux. The counters of the MuxDemux add up the counters of
+ * its connections, which are available through getConnectionCounters().
+ */
 public class MuxDemuxPerformanceCounters {
+    private final MuxDemuxPerformanceCounters parent;
+
+    private final List<MuxDemuxPerformanceCounters> connectionCounters;
+
+    private volatile InetSocketAddress remoteAddress;
+
     private final AtomicLong payloadBytesRead;
 
     private final AtomicLong payloadBytesWritten;
@@ -25,15 +39,61 @@ public class MuxDemuxPerformanceCounters {
 
     private final AtomicLong signalingBytesWritten;
 
+    private final AtomicLong creditStalls;
+
     public MuxDemuxPerformanceCounters() {
+        this(null);
+    }
+
+    private MuxDemuxPerformanceCounters(MuxDemuxPerformanceCounters parent) {
+        this.parent = parent;
+        connectionCounters = new CopyOnWriteArrayList<MuxDemuxPerformanceCounters>();
         payloadBytesRead = new AtomicLong();
         payloadBytesWritten = new AtomicLong();
         signalingBytesRead = new AtomicLong();
         signalingBytesWritten = new AtomicLong();
+        creditStalls = new AtomicLong();
+    }
+
+    /**
+     * Creates the counters of a connection, which also count towards these
+     * counters.
+     */
+    MuxDemuxPerformanceCounters createConnectionCounters() {
+        MuxDemuxPerformanceCounters counters = new MuxDemuxPerformanceCounters(this);
+        connectionCounters.add(counters);
+        return counters;
+    }
+
+    /**
+     * Drops the counters of a connection that is closed or failed. What they
+     * counted stays in these counters.
+     */
+    void removeConnectionCounters(MuxDemuxPerformanceCounters counters) {
+        connectionCounters.remove(counters);
+    }
+
+    public List<MuxDemuxPerformanceCounters> getConnectionCounters() {
+        return Collections.unmodifiableList(connectionCounters);
+    }
+
+    void setRemoteAddress(InetSocketAddress remoteAddress) {
+        this.remoteAddress = remoteAddress;
+    }
+
+    /**
+     * Gets the address of the remote end of the connection that these counters
+     * belong to, or null for the counters of the MuxDemux.
+     */
+    public InetSocketAddress getRemoteAddress() {
+        return remoteAddress;
     }
 
     public void addPayloadBytesRead(long delta) {
         payloadBytesRead.addAndGet(delta);
+        if (parent != null) {
+            parent.addPayloadBytesRead(delta);
+        }
     }
 
     public long getPayloadBytesRead() {
@@ -42,6 +102,9 @@ public class MuxDemuxPerformanceCounters {
 
     public void addPayloadBytesWritten(long delta) {
         payloadBytesWritten.addAndGet(delta);
+        if (parent != null) {
+            parent.addPayloadBytesWritten(delta);
+        }
     }
 
     public long getPayloadBytesWritten() {
@@ -50,6 +113,9 @@ public class MuxDemuxPerformanceCounters {
 
     public void addSignalingBytesRead(long delta) {
         signalingBytesRead.addAndGet(delta);
+        if (parent != null) {
+            parent.addSignalingBytesRead(delta);
+        }
     }
 
     public long getSignalingBytesRead() {
@@ -58,9 +124,27 @@ public class MuxDemuxPerformanceCounters {
 
     public void addSignalingBytesWritten(long delta) {
         signalingBytesWritten.addAndGet(delta);
+        if (parent != null) {
+            parent.addSignalingBytesWritten(delta);
+        }
     }
 
     public long getSignalingBytesWritten() {
         return signalingBytesWritten.get();
     }
+
+    /**
+     * Counts a channel that has data to send but ran out of credits, i.e., has
+     * to wait for the receiver to free buffers.
+     */
+    public void addCreditStall() {
+        creditStalls.incrementAndGet();
+        if (parent != null) {
+            parent.addCreditStall();
+        }
+    }
+
+    public long getCreditStalls() {
+        return creditStalls.get();
+    }
 }
\ No newline at end of file
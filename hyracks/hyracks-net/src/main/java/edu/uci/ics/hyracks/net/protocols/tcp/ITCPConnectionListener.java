@@ -19,7 +19,13 @@ import java.net.InetSocketAddress;
 public interface ITCPConnectionListener {
     public void acceptedConnection(TCPConnection connection);
 
+    /**
+     * Called when a connection initiated by
+     * {@link TCPEndpoint#initiateConnection(InetSocketAddress, Object)} is
+     * established. The connection carries the attachment that was passed to
+     * initiateConnection().
+     */
     public void connectionEstablished(TCPConnection connection);
 
-    public void connectionFailure(InetSocketAddress remoteAddress);
+    public void connectionFailure(InetSocketAddress remoteAddress, Object attachment);
 }
\ No newline at end of file
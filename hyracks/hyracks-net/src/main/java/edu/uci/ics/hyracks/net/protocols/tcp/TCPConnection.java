@@ -83,11 +83,17 @@ public class TCPConnection {
     }
 
     public void close() {
+        if (key.isValid()) {
+            endpoint.connectionClosed(selector);
+        }
         key.cancel();
         try {
             channel.close();
         } catch (IOException e) {
             e.printStackTrace();
         }
+        if (eventListener != null) {
+            eventListener.notifyClosed(this);
+        }
     }
 }
\ No newline at end of file
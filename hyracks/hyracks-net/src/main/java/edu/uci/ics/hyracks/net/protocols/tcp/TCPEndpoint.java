@@ -25,23 +25,39 @@ import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class TCPEndpoint {
+    private static final Logger LOGGER = Logger.getLogger(TCPEndpoint.class.getName());
+
     private final ITCPConnectionListener connectionListener;
 
     private final int nThreads;
 
+    private final int maxThreads;
+
     private ServerSocketChannel serverSocketChannel;
 
     private InetSocketAddress localAddress;
 
-    private IOThread[] ioThreads;
-
-    private int nextThread;
+    private final List<IOThread> ioThreads;
 
     public TCPEndpoint(ITCPConnectionListener connectionListener, int nThreads) {
+        this(connectionListener, nThreads, nThreads);
+    }
+
+    /**
+     * Creates an endpoint that starts with nThreads IO threads. Connections
+     * go to the IO thread that serves the fewest connections, and another IO
+     * thread is started, up to maxThreads, when every running IO thread
+     * already serves one.
+     */
+    public TCPEndpoint(ITCPConnectionListener connectionListener, int nThreads, int maxThreads) {
         this.connectionListener = connectionListener;
         this.nThreads = nThreads;
+        this.maxThreads = Math.max(nThreads, maxThreads);
+        ioThreads = new ArrayList<IOThread>();
     }
 
     public void start(InetSocketAddress localAddress) throws IOException {
@@ -49,40 +65,79 @@ public class TCPEndpoint {
         ServerSocket serverSocket = serverSocketChannel.socket();
         serverSocket.bind(localAddress);
         this.localAddress = (InetSocketAddress) serverSocket.getLocalSocketAddress();
-        ioThreads = new IOThread[nThreads];
-        for (int i = 0; i < ioThreads.length; ++i) {
-            ioThreads[i] = new IOThread();
+        synchronized (this) {
+            for (int i = 0; i < nThreads; ++i) {
+                ioThreads.add(new IOThread());
+            }
+            ioThreads.get(0).registerServerSocket(serverSocketChannel);
+            for (IOThread ioThread : ioThreads) {
+                ioThread.start();
+            }
+        }
+    }
+
+    private synchronized IOThread getNextThread() {
+        IOThread target = null;
+        for (IOThread ioThread : ioThreads) {
+            if (target == null || ioThread.nConnections < target.nConnections) {
+                target = ioThread;
+            }
         }
-        ioThreads[0].registerServerSocket(serverSocketChannel);
-        for (int i = 0; i < ioThreads.length; ++i) {
-            ioThreads[i].start();
+        if (target.nConnections > 0 && ioThreads.size() < maxThreads) {
+            try {
+                IOThread ioThread = new IOThread();
+                ioThreads.add(ioThread);
+                ioThread.start();
+                target = ioThread;
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not start another IO thread, the connection goes to a running one.",
+                        e);
+            }
         }
+        ++target.nConnections;
+        return target;
     }
 
-    private synchronized int getNextThread() {
-        int result = nextThread;
-        nextThread = (nextThread + 1) % nThreads;
-        return result;
+    synchronized void connectionClosed(Selector selector) {
+        for (IOThread ioThread : ioThreads) {
+            if (ioThread.selector == selector) {
+                --ioThread.nConnections;
+                return;
+            }
+        }
     }
 
-    public void initiateConnection(InetSocketAddress remoteAddress) {
-        int targetThread = getNextThread();
-        ioThreads[targetThread].initiateConnection(remoteAddress);
+    /**
+     * Initiates a connection to the given address. The attachment is handed
+     * back with the established connection or with the connection failure.
+     */
+    public void initiateConnection(InetSocketAddress remoteAddress, Object attachment) {
+        getNextThread().initiateConnection(new PendingConnection(remoteAddress, attachment));
     }
 
     private void distributeIncomingConnection(SocketChannel channel) {
-        int targetThread = getNextThread();
-        ioThreads[targetThread].addIncomingConnection(channel);
+        getNextThread().addIncomingConnection(channel);
     }
 
     public InetSocketAddress getLocalAddress() {
         return localAddress;
     }
 
+    private static class PendingConnection {
+        private final InetSocketAddress address;
+
+        private final Object attachment;
+
+        PendingConnection(InetSocketAddress address, Object attachment) {
+            this.address = address;
+            this.attachment = attachment;
+        }
+    }
+
     private class IOThread extends Thread {
-        private final List<InetSocketAddress> pendingConnections;
+        private final List<PendingConnection> pendingConnections;
 
-        private final List<InetSocketAddress> workingPendingConnections;
+        private final List<PendingConnection> workingPendingConnections;
 
         private final List<SocketChannel> incomingConnections;
 
@@ -90,11 +145,13 @@ public class TCPEndpoint {
 
         private Selector selector;
 
+        private int nConnections;
+
         public IOThread() throws IOException {
             super("TCPEndpoint IO Thread");
             setPriority(MAX_PRIORITY);
-            this.pendingConnections = new ArrayList<InetSocketAddress>();
-            this.workingPendingConnections = new ArrayList<InetSocketAddress>();
+            this.pendingConnections = new ArrayList<PendingConnection>();
+            this.workingPendingConnections = new ArrayList<PendingConnection>();
             this.incomingConnections = new ArrayList<SocketChannel>();
             this.workingIncomingConnections = new ArrayList<SocketChannel>();
             selector = Selector.open();
@@ -107,24 +164,25 @@ public class TCPEndpoint {
                     int n = selector.select();
                     collectOutstandingWork();
                     if (!workingPendingConnections.isEmpty()) {
-                        for (InetSocketAddress address : workingPendingConnections) {
+                        for (PendingConnection pc : workingPendingConnections) {
                             SocketChannel channel = SocketChannel.open();
                             channel.configureBlocking(false);
                             boolean connect = false;
                             boolean failure = false;
                             try {
-                                connect = channel.connect(address);
+                                connect = channel.connect(pc.address);
                             } catch (IOException e) {
                                 failure = true;
-                                connectionListener.connectionFailure(address);
+                                connectionClosed(selector);
+                                connectionListener.connectionFailure(pc.address, pc.attachment);
                             }
                             if (!failure) {
                                 if (!connect) {
                                     SelectionKey key = channel.register(selector, SelectionKey.OP_CONNECT);
-                                    key.attach(address);
+                                    key.attach(pc);
                                 } else {
                                     SelectionKey key = channel.register(selector, 0);
-                                    createConnection(key, channel);
+                                    createConnection(key, channel, pc.attachment);
                                 }
                             }
                         }
@@ -161,16 +219,18 @@ public class TCPEndpoint {
                                 distributeIncomingConnection(channel);
                             } else if (key.isConnectable()) {
                                 SocketChannel channel = (SocketChannel) sc;
+                                PendingConnection pc = (PendingConnection) key.attachment();
                                 boolean finishConnect = false;
                                 try {
                                     finishConnect = channel.finishConnect();
                                 } catch (Exception e) {
                                     e.printStackTrace();
                                     key.cancel();
-                                    connectionListener.connectionFailure((InetSocketAddress) key.attachment());
+                                    connectionClosed(selector);
+                                    connectionListener.connectionFailure(pc.address, pc.attachment);
                                 }
                                 if (finishConnect) {
-                                    createConnection(key, channel);
+                                    createConnection(key, channel, pc.attachment);
                                 }
                             }
                         }
@@ -181,15 +241,16 @@ public class TCPEndpoint {
             }
         }
 
-        private void createConnection(SelectionKey key, SocketChannel channel) {
+        private void createConnection(SelectionKey key, SocketChannel channel, Object attachment) {
             TCPConnection connection = new TCPConnection(TCPEndpoint.this, channel, key, selector);
+            connection.setAttachment(attachment);
             key.attach(connection);
             key.interestOps(0);
             connectionListener.connectionEstablished(connection);
         }
 
-        synchronized void initiateConnection(InetSocketAddress remoteAddress) {
-            pendingConnections.add(remoteAddress);
+        synchronized void initiateConnection(PendingConnection pc) {
+            pendingConnections.add(pc);
             selector.wakeup();
         }
 
@@ -15,6 +15,7 @@
 package edu.uci.ics.hyracks.net.tests;
 
 import java.net.InetSocketAddress;
+import java.net.ServerSocket;
 import java.nio.ByteBuffer;
 import java.util.LinkedList;
 import java.util.Queue;
@@ -27,6 +28,7 @@ import org.junit.Test;
 
 import edu.uci.ics.hyracks.net.buffers.IBufferAcceptor;
 import edu.uci.ics.hyracks.net.buffers.ICloseableBufferAcceptor;
+import edu.uci.ics.hyracks.net.exceptions.NetException;
 import edu.uci.ics.hyracks.net.protocols.muxdemux.ChannelControlBlock;
 import edu.uci.ics.hyracks.net.protocols.muxdemux.IChannelOpenListener;
 import edu.uci.ics.hyracks.net.protocols.muxdemux.MultiplexedConnection;
@@ -56,6 +58,26 @@ public class NetTest {
         Assert.assertFalse("Failure flag was set to true", failFlag.get());
     }
 
+    @Test
+    public void connectionFailureTest() throws Exception {
+        AtomicBoolean failFlag = new AtomicBoolean();
+        MuxDemux md = createMuxDemux("md", failFlag);
+        md.start();
+
+        // a port that nobody listens on
+        ServerSocket socket = new ServerSocket(0);
+        InetSocketAddress closedAddress = new InetSocketAddress("127.0.0.1", socket.getLocalPort());
+        socket.close();
+        try {
+            md.connect(closedAddress);
+            Assert.fail("Connected to a closed port");
+        } catch (NetException e) {
+            // expected
+        }
+        // the failed connection does not keep its counters
+        Assert.assertTrue(md.getPerformanceCounters().getConnectionCounters().isEmpty());
+    }
+
     private Thread createThread(final MultiplexedConnection md1md2, final int factor) {
         return new Thread() {
             @Override
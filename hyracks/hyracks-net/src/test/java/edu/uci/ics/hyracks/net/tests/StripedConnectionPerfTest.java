@@ -0,0 +1,162 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.uci.ics.hyracks.net.tests;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import edu.uci.ics.hyracks.net.buffers.IBufferAcceptor;
+import edu.uci.ics.hyracks.net.buffers.ICloseableBufferAcceptor;
+import edu.uci.ics.hyracks.net.protocols.muxdemux.ChannelControlBlock;
+import edu.uci.ics.hyracks.net.protocols.muxdemux.IChannelOpenListener;
+import edu.uci.ics.hyracks.net.protocols.muxdemux.MuxDemux;
+import edu.uci.ics.hyracks.net.protocols.muxdemux.MuxDemuxPerformanceCounters;
+
+/**
+ * Measures the aggregate throughput of many channels between two MuxDemuxes
+ * over the loopback interface, with 1 to MAX_STRIPES connections between them.
+ * Every channel sends BYTES_PER_CHANNEL bytes, which the receiver hands back
+ * as credits as soon as they arrive. The throughput for each stripe count is
+ * logged.
+ */
+public class StripedConnectionPerfTest {
+    private static final Logger LOGGER = Logger.getLogger(StripedConnectionPerfTest.class.getName());
+
+    private static final int MAX_STRIPES = 4;
+    private static final int N_CHANNELS = 16;
+    private static final int BUFFER_SIZE = 32768;
+    private static final int BUFFERS_PER_CHANNEL = 4;
+    private static final long BYTES_PER_CHANNEL = 16L * 1024 * 1024;
+
+    @Test
+    public void stripedThroughputTest() throws Exception {
+        for (int nStripes = 1; nStripes <= MAX_STRIPES; nStripes *= 2) {
+            runTest(nStripes);
+        }
+    }
+
+    private void runTest(int nStripes) throws Exception {
+        final AtomicLong bytesReceived = new AtomicLong();
+        final CountDownLatch channelsClosed = new CountDownLatch(N_CHANNELS);
+        MuxDemux receiver = new MuxDemux(new InetSocketAddress("127.0.0.1", 0), new IChannelOpenListener() {
+            @Override
+            public void channelOpened(ChannelControlBlock channel) {
+                final IBufferAcceptor rieba = channel.getReadInterface().getEmptyBufferAcceptor();
+                channel.getReadInterface().setFullBufferAcceptor(new ICloseableBufferAcceptor() {
+                    @Override
+                    public void accept(ByteBuffer buffer) {
+                        bytesReceived.addAndGet(buffer.remaining());
+                        buffer.clear();
+                        rieba.accept(buffer);
+                    }
+
+                    @Override
+                    public void error(int ecode) {
+                    }
+
+                    @Override
+                    public void close() {
+                        channelsClosed.countDown();
+                    }
+                });
+                for (int i = 0; i < BUFFERS_PER_CHANNEL; ++i) {
+                    rieba.accept(ByteBuffer.allocateDirect(BUFFER_SIZE));
+                }
+            }
+        }, 1, nStripes, 1);
+        receiver.start();
+        final MuxDemux sender = new MuxDemux(new InetSocketAddress("127.0.0.1", 0), new IChannelOpenListener() {
+            @Override
+            public void channelOpened(ChannelControlBlock channel) {
+            }
+        }, 1, nStripes, nStripes);
+        sender.start();
+        final InetSocketAddress receiverAddress = receiver.getLocalAddress();
+
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[N_CHANNELS];
+        for (int i = 0; i < N_CHANNELS; ++i) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        ChannelControlBlock ccb = sender.connect(receiverAddress).openChannel();
+                        final BlockingQueue<ByteBuffer> emptyBuffers = new ArrayBlockingQueue<ByteBuffer>(
+                                BUFFERS_PER_CHANNEL);
+                        ccb.getWriteInterface().setEmptyBufferAcceptor(new IBufferAcceptor() {
+                            @Override
+                            public void accept(ByteBuffer buffer) {
+                                emptyBuffers.add(buffer);
+                            }
+                        });
+                        for (int j = 0; j < BUFFERS_PER_CHANNEL; ++j) {
+                            emptyBuffers.add(ByteBuffer.allocateDirect(BUFFER_SIZE));
+                        }
+                        ICloseableBufferAcceptor fba = ccb.getWriteInterface().getFullBufferAcceptor();
+                        for (long sent = 0; sent < BYTES_PER_CHANNEL; sent += BUFFER_SIZE) {
+                            ByteBuffer buffer = emptyBuffers.take();
+                            buffer.clear();
+                            fba.accept(buffer);
+                        }
+                        fba.close();
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            };
+        }
+        long timeStart = System.nanoTime();
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        channelsClosed.await();
+        long timeEnd = System.nanoTime();
+        if (failure.get() != null) {
+            throw new Exception(failure.get());
+        }
+
+        long totalBytes = N_CHANNELS * BYTES_PER_CHANNEL;
+        Assert.assertEquals(totalBytes, bytesReceived.get());
+        MuxDemuxPerformanceCounters senderCounters = sender.getPerformanceCounters();
+        Assert.assertEquals(totalBytes, senderCounters.getPayloadBytesWritten());
+        Assert.assertEquals(nStripes, senderCounters.getConnectionCounters().size());
+        for (MuxDemuxPerformanceCounters connectionCounters : senderCounters.getConnectionCounters()) {
+            // the channels are spread evenly across the stripes
+            Assert.assertEquals(totalBytes / nStripes, connectionCounters.getPayloadBytesWritten());
+            Assert.assertEquals(receiverAddress, connectionCounters.getRemoteAddress());
+        }
+
+        double seconds = (timeEnd - timeStart) / 1000000000.0;
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info(nStripes + " stripes: " + totalBytes + " bytes on " + N_CHANNELS + " channels in " + seconds
+                    + "s, " + (long) (totalBytes / seconds / (1024 * 1024)) + " MB/s, "
+                    + senderCounters.getCreditStalls() + " credit stalls");
+        }
+    }
+}
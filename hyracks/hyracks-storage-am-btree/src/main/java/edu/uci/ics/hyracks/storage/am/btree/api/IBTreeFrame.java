@@ -13,4 +13,22 @@ public interface IBTreeFrame extends ITreeIndexFrame {
     public boolean getSmFlag();
     public void setSmFlag(boolean smFlag);
     public void setMultiComparator(MultiComparator cmp);
+
+    /**
+     * Gets the high key of the node, the greatest key it may hold. Keys
+     * greater than the high key have been moved to the right sibling by a
+     * split.
+     * 
+     * @return the high key, or null if the node has none, which means that it
+     *         holds every key that its parent routes to it.
+     */
+    public ITupleReference getHighKey();
+
+    /**
+     * Sets the high key of the node, moving its tuples if the size of the high
+     * key changes.
+     */
+    public void setHighKey(ITupleReference highKey);
+
+    public int getRightSibling();
 }
@@ -27,4 +27,6 @@ public interface IBTreeInteriorFrame extends IBTreeFrame {
     public void setRightmostChildPageId(int pageId);
 
     public void deleteGreatest();
+
+    public void setRightSibling(int pageId);
 }
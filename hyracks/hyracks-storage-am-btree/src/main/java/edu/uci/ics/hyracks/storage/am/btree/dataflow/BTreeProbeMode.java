@@ -0,0 +1,37 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.am.btree.dataflow;
+
+/**
+ * How the BTree search operator probes the BTree with its input tuples.
+ */
+public enum BTreeProbeMode {
+    /**
+     * Every input tuple is searched from the root, in input order.
+     */
+    PER_TUPLE,
+    /**
+     * The tuples of every frame are sorted on their low key and probed in
+     * that order. A probe continues from the leaf the previous one stopped on
+     * when its range starts there or in the next leaf.
+     */
+    SORT_FRAME,
+    /**
+     * Like SORT_FRAME, for input that is already sorted on the low key, so
+     * the frames are probed in input order.
+     */
+    SORTED_INPUT
+}
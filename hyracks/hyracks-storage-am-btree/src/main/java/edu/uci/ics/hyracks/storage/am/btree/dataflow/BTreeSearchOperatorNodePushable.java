@@ -28,10 +28,10 @@ import edu.uci.ics.hyracks.dataflow.common.comm.util.FrameUtils;
 import edu.uci.ics.hyracks.dataflow.common.data.accessors.ITupleReference;
 import edu.uci.ics.hyracks.dataflow.std.base.AbstractUnaryInputUnaryOutputOperatorNodePushable;
 import edu.uci.ics.hyracks.storage.am.btree.api.IBTreeLeafFrame;
-import edu.uci.ics.hyracks.storage.am.btree.impls.BTree;
 import edu.uci.ics.hyracks.storage.am.btree.impls.BTreeRangeSearchCursor;
 import edu.uci.ics.hyracks.storage.am.btree.impls.RangePredicate;
 import edu.uci.ics.hyracks.storage.am.btree.util.BTreeUtils;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndex;
 import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexAccessor;
 import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexCursor;
 import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexFrame;
@@ -39,8 +39,15 @@ import edu.uci.ics.hyracks.storage.am.common.dataflow.AbstractTreeIndexOperatorD
 import edu.uci.ics.hyracks.storage.am.common.dataflow.PermutingFrameTupleReference;
 import edu.uci.ics.hyracks.storage.am.common.dataflow.TreeIndexDataflowHelper;
 import edu.uci.ics.hyracks.storage.am.common.ophelpers.MultiComparator;
+import edu.uci.ics.hyracks.storage.am.common.util.IndexUtils;
 
 public class BTreeSearchOperatorNodePushable extends AbstractUnaryInputUnaryOutputOperatorNodePushable {
+    /**
+     * Counts the probes of the batched modes that did not descend from the
+     * root.
+     */
+    public static final String SAVED_DESCENTS_COUNTER = "btree-search.saved-descents";
+
 	protected TreeIndexDataflowHelper treeIndexHelper;
 	protected FrameTupleAccessor accessor;
 
@@ -49,7 +56,7 @@ public class BTreeSearchOperatorNodePushable extends AbstractUnaryInputUnaryOutp
 	protected ArrayTupleBuilder tb;
 	protected DataOutput dos;
 
-	protected BTree btree;
+	protected ITreeIndex btree;
 	protected boolean isForward;
 	protected PermutingFrameTupleReference lowKey;
 	protected PermutingFrameTupleReference highKey;
@@ -64,9 +71,23 @@ public class BTreeSearchOperatorNodePushable extends AbstractUnaryInputUnaryOutp
 
 	protected RecordDescriptor recDesc;
 
+	protected BTreeProbeMode probeMode;
+	// set if the probes are batched
+	protected BTreeRangeSearchCursor batchCursor;
+	protected int[] probeOrder;
+	protected PermutingFrameTupleReference sortKeyA;
+	protected PermutingFrameTupleReference sortKeyB;
+
     public BTreeSearchOperatorNodePushable(AbstractTreeIndexOperatorDescriptor opDesc, IHyracksTaskContext ctx,
             int partition, IRecordDescriptorProvider recordDescProvider, boolean isForward, int[] lowKeyFields,
             int[] highKeyFields, boolean lowKeyInclusive, boolean highKeyInclusive) {
+        this(opDesc, ctx, partition, recordDescProvider, isForward, lowKeyFields, highKeyFields, lowKeyInclusive,
+                highKeyInclusive, BTreeProbeMode.PER_TUPLE);
+    }
+
+    public BTreeSearchOperatorNodePushable(AbstractTreeIndexOperatorDescriptor opDesc, IHyracksTaskContext ctx,
+            int partition, IRecordDescriptorProvider recordDescProvider, boolean isForward, int[] lowKeyFields,
+            int[] highKeyFields, boolean lowKeyInclusive, boolean highKeyInclusive, BTreeProbeMode probeMode) {
         treeIndexHelper = (TreeIndexDataflowHelper) opDesc.getIndexDataflowHelperFactory().createIndexDataflowHelper(
                 opDesc, ctx, partition, false);
         this.isForward = isForward;
@@ -81,6 +102,13 @@ public class BTreeSearchOperatorNodePushable extends AbstractUnaryInputUnaryOutp
             highKey = new PermutingFrameTupleReference();
             highKey.setFieldPermutation(highKeyFields);
         }
+        this.probeMode = probeMode;
+        if (probeMode == BTreeProbeMode.SORT_FRAME && lowKey != null) {
+            sortKeyA = new PermutingFrameTupleReference();
+            sortKeyA.setFieldPermutation(lowKeyFields);
+            sortKeyB = new PermutingFrameTupleReference();
+            sortKeyB.setFieldPermutation(lowKeyFields);
+        }
     }
 
     @Override
@@ -90,16 +118,22 @@ public class BTreeSearchOperatorNodePushable extends AbstractUnaryInputUnaryOutp
         accessor = new FrameTupleAccessor(treeIndexHelper.getHyracksTaskContext().getFrameSize(), recDesc);
 
         cursorFrame = opDesc.getTreeIndexLeafFactory().createFrame();
-        setCursor();        
+        setCursor();
+        if (probeMode != BTreeProbeMode.PER_TUPLE && isForward && lowKey != null
+                && cursor instanceof BTreeRangeSearchCursor) {
+            batchCursor = (BTreeRangeSearchCursor) cursor;
+            probeOrder = new int[0];
+        }
         writer.open();
 
         try {
             treeIndexHelper.init();
-            btree = (BTree) treeIndexHelper.getIndex();
+            btree = (ITreeIndex) treeIndexHelper.getIndex();
 
             // Construct range predicate.
-            lowKeySearchCmp = BTreeUtils.getSearchMultiComparator(btree.getMultiComparator(), lowKey);
-            highKeySearchCmp = BTreeUtils.getSearchMultiComparator(btree.getMultiComparator(), highKey);
+            MultiComparator cmp = IndexUtils.createMultiComparator(opDesc.getTreeIndexComparatorFactories());
+            lowKeySearchCmp = BTreeUtils.getSearchMultiComparator(cmp, lowKey);
+            highKeySearchCmp = BTreeUtils.getSearchMultiComparator(cmp, highKey);
             rangePred = new RangePredicate(isForward, null, null, lowKeyInclusive, highKeyInclusive, lowKeySearchCmp,
                     highKeySearchCmp);
 
@@ -116,7 +150,7 @@ public class BTreeSearchOperatorNodePushable extends AbstractUnaryInputUnaryOutp
     }
 
     protected void setCursor() {
-        cursor = new BTreeRangeSearchCursor((IBTreeLeafFrame) cursorFrame, false);
+        cursor = ((BTreeDataflowHelper) treeIndexHelper).createSearchCursor((IBTreeLeafFrame) cursorFrame, false);
     }
     
     protected void writeSearchResults() throws Exception {
@@ -145,6 +179,10 @@ public class BTreeSearchOperatorNodePushable extends AbstractUnaryInputUnaryOutp
         accessor.reset(buffer);
         int tupleCount = accessor.getTupleCount();
         try {
+            if (batchCursor != null) {
+                probeBatch(tupleCount);
+                return;
+            }
             for (int i = 0; i < tupleCount; i++) {
                 if (lowKey != null) {
                     lowKey.reset(accessor, i);
@@ -163,6 +201,90 @@ public class BTreeSearchOperatorNodePushable extends AbstractUnaryInputUnaryOutp
         }
     }
 
+    /**
+     * Probes the tuples of the frame in the order of their low keys. A probe
+     * continues from the leaf that the previous one stopped on if it can,
+     * which does not depend on the order, only the savings do.
+     */
+    protected void probeBatch(int tupleCount) throws Exception {
+        if (probeOrder.length < tupleCount) {
+            probeOrder = new int[tupleCount];
+        }
+        for (int i = 0; i < tupleCount; i++) {
+            probeOrder[i] = i;
+        }
+        if (sortKeyA != null) {
+            sortProbeOrder(0, tupleCount - 1);
+        }
+        long savedDescents = 0;
+        try {
+            for (int i = 0; i < tupleCount; i++) {
+                lowKey.reset(accessor, probeOrder[i]);
+                if (highKey != null) {
+                    highKey.reset(accessor, probeOrder[i]);
+                }
+                rangePred.setLowKey(lowKey, lowKeyInclusive);
+                rangePred.setHighKey(highKey, highKeyInclusive);
+                if (batchCursor.reopen(rangePred)) {
+                    savedDescents++;
+                } else {
+                    cursor.reset();
+                    indexAccessor.search(cursor, rangePred);
+                }
+                writeSearchResults();
+            }
+        } finally {
+            // don't keep the leaf latched while waiting for the next frame
+            cursor.reset();
+        }
+        if (savedDescents > 0) {
+            treeIndexHelper.getHyracksTaskContext().getCounterContext().getCounter(SAVED_DESCENTS_COUNTER, true)
+                    .update(savedDescents);
+        }
+    }
+
+    private void sortProbeOrder(int left, int right) {
+        while (right - left > 8) {
+            int pivot = probeOrder[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (compareLowKeys(probeOrder[i], pivot) < 0) {
+                    i++;
+                }
+                while (compareLowKeys(probeOrder[j], pivot) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    int t = probeOrder[i];
+                    probeOrder[i++] = probeOrder[j];
+                    probeOrder[j--] = t;
+                }
+            }
+            if (j - left < right - i) {
+                sortProbeOrder(left, j);
+                left = i;
+            } else {
+                sortProbeOrder(i, right);
+                right = j;
+            }
+        }
+        for (int i = left + 1; i <= right; i++) {
+            int t = probeOrder[i];
+            int j = i;
+            for (; j > left && compareLowKeys(probeOrder[j - 1], t) > 0; j--) {
+                probeOrder[j] = probeOrder[j - 1];
+            }
+            probeOrder[j] = t;
+        }
+    }
+
+    private int compareLowKeys(int tIndexA, int tIndexB) {
+        sortKeyA.reset(accessor, tIndexA);
+        sortKeyB.reset(accessor, tIndexB);
+        return lowKeySearchCmp.compare(sortKeyA, sortKeyB);
+    }
+
     @Override
     public void close() throws HyracksDataException {
         try {
@@ -31,6 +31,10 @@ public class BTreeUpdateSearchOperatorDescriptor extends BTreeSearchOperatorDesc
         super(spec, recDesc, storageManager, indexRegistryProvider, fileSplitProvider, interiorFrameFactory,
                 leafFrameFactory, typeTraits, comparatorFactories, isForward, lowKeyFields, highKeyFields, lowKeyInclusive,
                 highKeyInclusive, dataflowHelperFactory);
+        if (dataflowHelperFactory instanceof LSMBTreeDataflowHelperFactory) {
+            // the tuples of an LSM BTree cannot be updated in place
+            throw new IllegalArgumentException("An update search cannot run on an LSM BTree.");
+        }
         this.tupleUpdaterFactory = tupleUpdaterFactory;
     }
 
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.am.btree.dataflow;
+
+import edu.uci.ics.hyracks.api.context.IHyracksTaskContext;
+import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
+import edu.uci.ics.hyracks.storage.am.btree.api.IBTreeLeafFrame;
+import edu.uci.ics.hyracks.storage.am.btree.exceptions.BTreeException;
+import edu.uci.ics.hyracks.storage.am.btree.frames.BTreeFieldPrefixNSMLeafFrameFactory;
+import edu.uci.ics.hyracks.storage.am.btree.frames.BTreeLeafFrameType;
+import edu.uci.ics.hyracks.storage.am.btree.impls.LSMBTree;
+import edu.uci.ics.hyracks.storage.am.btree.impls.LSMBTreeRangeSearchCursor;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndex;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexCursor;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexFrame;
+import edu.uci.ics.hyracks.storage.am.common.dataflow.IIndexOperatorDescriptor;
+import edu.uci.ics.hyracks.storage.am.common.ophelpers.MultiComparator;
+import edu.uci.ics.hyracks.storage.am.common.util.IndexUtils;
+
+/**
+ * Creates an LSMBTree for the index of the operator. The components use the
+ * leaf frame type of the operator's leaf frame factory. The LSMBTree is closed
+ * when its last user is done, which flushes the memory component and stops
+ * the merges; the next user opens it again from its disk components.
+ */
+public class LSMBTreeDataflowHelper extends BTreeDataflowHelper {
+    private final int memPageBudget;
+    private final int mergeThreshold;
+
+    public LSMBTreeDataflowHelper(IIndexOperatorDescriptor opDesc, IHyracksTaskContext ctx, int partition,
+            boolean createIfNotExists, int memPageBudget, int mergeThreshold) {
+        super(opDesc, ctx, partition, createIfNotExists);
+        this.memPageBudget = memPageBudget;
+        this.mergeThreshold = mergeThreshold;
+    }
+
+    @Override
+    public ITreeIndex createIndexInstance() throws HyracksDataException {
+        MultiComparator cmp = IndexUtils.createMultiComparator(treeOpDesc.getTreeIndexComparatorFactories());
+        BTreeLeafFrameType leafType = treeOpDesc.getTreeIndexLeafFactory() instanceof BTreeFieldPrefixNSMLeafFrameFactory ? BTreeLeafFrameType.FIELD_PREFIX_COMPRESSED_NSM
+                : BTreeLeafFrameType.REGULAR_NSM;
+        try {
+            return new LSMBTree(opDesc.getStorageManager().getBufferCache(ctx), opDesc.getStorageManager()
+                    .getFileMapProvider(ctx), treeOpDesc.getTreeIndexTypeTraits(), cmp, leafType, memPageBudget,
+                    mergeThreshold);
+        } catch (BTreeException e) {
+            throw new HyracksDataException(e);
+        }
+    }
+
+    @Override
+    protected boolean closeIndexOnLastUser() {
+        return true;
+    }
+
+    @Override
+    public ITreeIndexCursor createSearchCursor(IBTreeLeafFrame leafFrame, boolean exclusiveLatchNodes) {
+        if (exclusiveLatchNodes) {
+            throw new UnsupportedOperationException("Cannot update tuples in place in an LSM BTree.");
+        }
+        return new LSMBTreeRangeSearchCursor();
+    }
+
+    @Override
+    public ITreeIndexCursor createDiskOrderScanCursor(ITreeIndexFrame leafFrame) throws HyracksDataException {
+        return new LSMBTreeRangeSearchCursor();
+    }
+}
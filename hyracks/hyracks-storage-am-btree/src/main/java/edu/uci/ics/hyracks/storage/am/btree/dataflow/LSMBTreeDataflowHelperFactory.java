@@ -0,0 +1,55 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.am.btree.dataflow;
+
+import edu.uci.ics.hyracks.api.context.IHyracksTaskContext;
+import edu.uci.ics.hyracks.storage.am.btree.impls.LSMBTree;
+import edu.uci.ics.hyracks.storage.am.common.dataflow.IIndexDataflowHelperFactory;
+import edu.uci.ics.hyracks.storage.am.common.dataflow.IIndexOperatorDescriptor;
+import edu.uci.ics.hyracks.storage.am.common.dataflow.IndexDataflowHelper;
+
+/**
+ * Makes the tree index operators work on an LSMBTree instead of a BTree.
+ */
+public class LSMBTreeDataflowHelperFactory implements IIndexDataflowHelperFactory {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int memPageBudget;
+    private final int mergeThreshold;
+
+    public LSMBTreeDataflowHelperFactory() {
+        this(LSMBTree.DEFAULT_MEM_PAGE_BUDGET, LSMBTree.DEFAULT_MERGE_THRESHOLD);
+    }
+
+    /**
+     * @param memPageBudget
+     *            The number of pages the memory component may allocate before
+     *            it is flushed.
+     * @param mergeThreshold
+     *            The number of disk components that are merged into one.
+     */
+    public LSMBTreeDataflowHelperFactory(int memPageBudget, int mergeThreshold) {
+        this.memPageBudget = memPageBudget;
+        this.mergeThreshold = mergeThreshold;
+    }
+
+    @Override
+    public IndexDataflowHelper createIndexDataflowHelper(IIndexOperatorDescriptor opDesc, IHyracksTaskContext ctx,
+            int partition, boolean createIfNotExists) {
+        return new LSMBTreeDataflowHelper(opDesc, ctx, partition, createIfNotExists, memPageBudget, mergeThreshold);
+    }
+}
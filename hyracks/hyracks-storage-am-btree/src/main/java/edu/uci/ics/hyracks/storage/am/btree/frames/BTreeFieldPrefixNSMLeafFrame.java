@@ -30,6 +30,7 @@ import edu.uci.ics.hyracks.storage.am.btree.exceptions.BTreeNonExistentKeyExcept
 import edu.uci.ics.hyracks.storage.am.btree.impls.FieldPrefixPrefixTupleReference;
 import edu.uci.ics.hyracks.storage.am.btree.impls.FieldPrefixSlotManager;
 import edu.uci.ics.hyracks.storage.am.btree.impls.FieldPrefixTupleReference;
+import edu.uci.ics.hyracks.storage.am.btree.util.BTreeUtils;
 import edu.uci.ics.hyracks.storage.am.common.api.ISlotManager;
 import edu.uci.ics.hyracks.storage.am.common.api.ISplitKey;
 import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexFrame;
@@ -60,6 +61,9 @@ public class BTreeFieldPrefixNSMLeafFrame implements IBTreeLeafFrame {
 
     protected static final int prevLeafOff = prefixTupleCountOff + 4; // 30
     protected static final int nextLeafOff = prevLeafOff + 4; // 34
+    // The high key is kept right after the fixed header, the tuples follow it.
+    protected static final int highKeySizeOff = nextLeafOff + 4; // 38
+    protected static final int highKeyOff = highKeySizeOff + 4; // 42
 
     protected ICachedPage page = null;
     protected ByteBuffer buf = null;
@@ -73,10 +77,12 @@ public class BTreeFieldPrefixNSMLeafFrame implements IBTreeLeafFrame {
     
     private final FieldPrefixTupleReference frameTuple;
     private final FieldPrefixPrefixTupleReference framePrefixTuple;
+    private final ITreeIndexTupleReference highKeyTuple;
 
     public BTreeFieldPrefixNSMLeafFrame(ITreeIndexTupleWriter tupleWriter) {
         this.tupleWriter = tupleWriter;
         this.frameTuple = new FieldPrefixTupleReference(tupleWriter.createTupleReference());
+        this.highKeyTuple = tupleWriter.createTupleReference();
         ITypeTraits[] typeTraits = ((TypeAwareTupleWriter) tupleWriter).getTypeTraits();
         this.framePrefixTuple = new FieldPrefixPrefixTupleReference(typeTraits);
         this.slotManager = new FieldPrefixSlotManager();
@@ -338,6 +344,7 @@ public class BTreeFieldPrefixNSMLeafFrame implements IBTreeLeafFrame {
         buf.putLong(pageLsnOff, 0);
         // during creation
         buf.putInt(tupleCountOff, 0);
+        buf.putInt(highKeySizeOff, 0);
         resetSpaceParams();
         buf.putInt(uncompressedTupleCountOff, 0);
         buf.putInt(prefixTupleCountOff, 0);
@@ -352,7 +359,7 @@ public class BTreeFieldPrefixNSMLeafFrame implements IBTreeLeafFrame {
     }
 
     public int getOrigTotalFreeSpace() {
-        return buf.capacity() - (nextLeafOff + 4);
+        return buf.capacity() - getOrigFreeSpaceOff();
     }
 
     @Override
@@ -636,6 +643,9 @@ public class BTreeFieldPrefixNSMLeafFrame implements IBTreeLeafFrame {
         splitKey.initData(splitKeySize);
         tupleWriter.writeTupleFields(frameTuple, 0, cmp.getKeyFieldCount(), splitKey.getBuffer(), 0);
         splitKey.getTuple().resetByTupleOffset(splitKey.getBuffer(), 0);
+
+        // the right page keeps the old high key, the split key bounds the left page
+        setHighKey(splitKey.getTuple());
     }
 
     @Override
@@ -644,7 +654,7 @@ public class BTreeFieldPrefixNSMLeafFrame implements IBTreeLeafFrame {
     }
 
     public int getOrigFreeSpaceOff() {
-        return nextLeafOff + 4;
+        return highKeyOff + buf.getInt(highKeySizeOff);
     }
 
     @Override
@@ -672,6 +682,52 @@ public class BTreeFieldPrefixNSMLeafFrame implements IBTreeLeafFrame {
         return buf.getInt(prevLeafOff);
     }
 
+    @Override
+    public int getRightSibling() {
+        return buf.getInt(nextLeafOff);
+    }
+
+    @Override
+    public ITupleReference getHighKey() {
+        if (buf.getInt(highKeySizeOff) == 0) {
+            return null;
+        }
+        highKeyTuple.resetByTupleOffset(buf, highKeyOff);
+        return highKeyTuple;
+    }
+
+    @Override
+    public void setHighKey(ITupleReference highKey) {
+        int highKeySize = buf.getInt(highKeySizeOff);
+        int newHighKeySize = BTreeUtils.getKeyBytesRequired(tupleWriter, highKey, cmp.getKeyFieldCount());
+        int delta = newHighKeySize - highKeySize;
+        if (delta != 0) {
+            // Move the prefix and suffix tuples, and the offsets in their slots.
+            int tupleSpaceOff = getOrigFreeSpaceOff();
+            int freeSpace = buf.getInt(freeSpaceOff);
+            System.arraycopy(buf.array(), tupleSpaceOff, buf.array(), tupleSpaceOff + delta, freeSpace
+                    - tupleSpaceOff);
+            int prefixTupleCount = buf.getInt(prefixTupleCountOff);
+            for (int i = 0; i < prefixTupleCount; i++) {
+                int slotOff = slotManager.getPrefixSlotOff(i);
+                int slot = buf.getInt(slotOff);
+                buf.putInt(slotOff, slotManager.encodeSlotFields(slotManager.decodeFirstSlotField(slot),
+                        slotManager.decodeSecondSlotField(slot) + delta));
+            }
+            int tupleCount = buf.getInt(tupleCountOff);
+            for (int i = 0; i < tupleCount; i++) {
+                int slotOff = slotManager.getTupleSlotOff(i);
+                int slot = buf.getInt(slotOff);
+                buf.putInt(slotOff, slotManager.encodeSlotFields(slotManager.decodeFirstSlotField(slot),
+                        slotManager.decodeSecondSlotField(slot) + delta));
+            }
+            buf.putInt(freeSpaceOff, freeSpace + delta);
+            buf.putInt(totalFreeSpaceOff, buf.getInt(totalFreeSpaceOff) - delta);
+        }
+        BTreeUtils.writeKey(tupleWriter, highKey, cmp.getKeyFieldCount(), buf, highKeyOff);
+        buf.putInt(highKeySizeOff, newHighKeySize);
+    }
+
     public int getUncompressedTupleCount() {
         return buf.getInt(uncompressedTupleCountOff);
     }
@@ -715,5 +771,6 @@ public class BTreeFieldPrefixNSMLeafFrame implements IBTreeLeafFrame {
 	public void setMultiComparator(MultiComparator cmp) {
 		this.cmp = cmp;
 		this.slotManager.setMultiComparator(cmp);
+		this.highKeyTuple.setFieldCount(cmp.getKeyFieldCount());
 	}
 }
@@ -23,6 +23,7 @@ import edu.uci.ics.hyracks.dataflow.common.data.accessors.ITupleReference;
 import edu.uci.ics.hyracks.dataflow.common.data.marshalling.IntegerSerializerDeserializer;
 import edu.uci.ics.hyracks.storage.am.btree.api.IBTreeInteriorFrame;
 import edu.uci.ics.hyracks.storage.am.btree.impls.RangePredicate;
+import edu.uci.ics.hyracks.storage.am.btree.util.BTreeUtils;
 import edu.uci.ics.hyracks.storage.am.common.api.ISplitKey;
 import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexFrame;
 import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexTupleReference;
@@ -39,19 +40,27 @@ public class BTreeNSMInteriorFrame extends TreeIndexNSMFrame implements IBTreeIn
 
     private static final int rightLeafOff = smFlagOff + 1;
     private static final int childPtrSize = 4;
+    private static final int rightSiblingOff = rightLeafOff + childPtrSize;
+    // The high key is kept right after the fixed header, the tuples follow it.
+    private static final int highKeySizeOff = rightSiblingOff + 4;
+    private static final int highKeyOff = highKeySizeOff + 4;
 
     private final ITreeIndexTupleReference cmpFrameTuple;
+    private final ITreeIndexTupleReference highKeyTuple;
     private MultiComparator cmp;
 
     public BTreeNSMInteriorFrame(ITreeIndexTupleWriter tupleWriter) {
         super(tupleWriter, new OrderedSlotManager());
         cmpFrameTuple = tupleWriter.createTupleReference();
+        highKeyTuple = tupleWriter.createTupleReference();
     }
 
     @Override
     public void initBuffer(byte level) {
+        buf.putInt(highKeySizeOff, 0);
         super.initBuffer(level);
         buf.putInt(rightLeafOff, -1);
+        buf.putInt(rightSiblingOff, -1);
     }
 
     @Override
@@ -77,7 +86,7 @@ public class BTreeNSMInteriorFrame extends TreeIndexNSMFrame implements IBTreeIn
     public void insert(ITupleReference tuple, int tupleIndex) {
         int slotOff = slotManager.insertSlot(tupleIndex, buf.getInt(freeSpaceOff));
         int freeSpace = buf.getInt(freeSpaceOff);
-        int bytesWritten = tupleWriter.writeTupleFields(tuple, 0, tuple.getFieldCount(), buf, freeSpace);
+        int bytesWritten = BTreeUtils.writeKey(tupleWriter, tuple, cmp.getKeyFieldCount(), buf, freeSpace);
         System.arraycopy(tuple.getFieldData(tuple.getFieldCount() - 1), getLeftChildPageOff(tuple), buf.array(),
                 freeSpace + bytesWritten, childPtrSize);
         int tupleSize = bytesWritten + childPtrSize;
@@ -167,7 +176,7 @@ public class BTreeNSMInteriorFrame extends TreeIndexNSMFrame implements IBTreeIn
     public void insertSorted(ITupleReference tuple) {
         int freeSpace = buf.getInt(freeSpaceOff);
         slotManager.insertSlot(slotManager.getGreatestKeyIndicator(), freeSpace);
-        int bytesWritten = tupleWriter.writeTuple(tuple, buf, freeSpace);
+        int bytesWritten = BTreeUtils.writeKey(tupleWriter, tuple, cmp.getKeyFieldCount(), buf, freeSpace);
         System.arraycopy(tuple.getFieldData(tuple.getFieldCount() - 1), getLeftChildPageOff(tuple), buf.array(),
                 freeSpace + bytesWritten, childPtrSize);
         int tupleSize = bytesWritten + childPtrSize;
@@ -217,9 +226,9 @@ public class BTreeNSMInteriorFrame extends TreeIndexNSMFrame implements IBTreeIn
         // Set split key to be highest value in left page.
         int tupleOff = slotManager.getTupleOff(slotManager.getSlotEndOff());
         frameTuple.resetByTupleOffset(buf, tupleOff);
-        int splitKeySize = tupleWriter.bytesRequired(frameTuple, 0, cmp.getKeyFieldCount());
+        int splitKeySize = BTreeUtils.getKeyBytesRequired(tupleWriter, frameTuple, cmp.getKeyFieldCount());
         splitKey.initData(splitKeySize);
-        tupleWriter.writeTuple(frameTuple, splitKey.getBuffer(), 0);
+        BTreeUtils.writeKey(tupleWriter, frameTuple, cmp.getKeyFieldCount(), splitKey.getBuffer(), 0);
         splitKey.getTuple().resetByTupleOffset(splitKey.getBuffer(), 0);
 
         int deleteTupleOff = slotManager.getTupleOff(slotManager.getSlotEndOff());
@@ -235,6 +244,9 @@ public class BTreeNSMInteriorFrame extends TreeIndexNSMFrame implements IBTreeIn
         int targetTupleIndex = ((BTreeNSMInteriorFrame) targetFrame)
                 .findInsertTupleIndex(savedSplitKey.getTuple());
         targetFrame.insert(savedSplitKey.getTuple(), targetTupleIndex);
+
+        // The right page keeps the old high key, the split key bounds the left page.
+        setHighKey(splitKey.getTuple());
     }
 
     @Override
@@ -358,8 +370,9 @@ public class BTreeNSMInteriorFrame extends TreeIndexNSMFrame implements IBTreeIn
 
     @Override
     protected void resetSpaceParams() {
-        buf.putInt(freeSpaceOff, rightLeafOff + childPtrSize);
-        buf.putInt(totalFreeSpaceOff, buf.capacity() - (rightLeafOff + childPtrSize));
+        int tupleSpaceOff = highKeyOff + buf.getInt(highKeySizeOff);
+        buf.putInt(freeSpaceOff, tupleSpaceOff);
+        buf.putInt(totalFreeSpaceOff, buf.capacity() - tupleSpaceOff);
     }
 
     @Override
@@ -380,6 +393,34 @@ public class BTreeNSMInteriorFrame extends TreeIndexNSMFrame implements IBTreeIn
         buf.putInt(rightLeafOff, pageId);
     }
 
+    @Override
+    public int getRightSibling() {
+        return buf.getInt(rightSiblingOff);
+    }
+
+    @Override
+    public void setRightSibling(int pageId) {
+        buf.putInt(rightSiblingOff, pageId);
+    }
+
+    @Override
+    public ITupleReference getHighKey() {
+        if (buf.getInt(highKeySizeOff) == 0) {
+            return null;
+        }
+        highKeyTuple.resetByTupleOffset(buf, highKeyOff);
+        return highKeyTuple;
+    }
+
+    @Override
+    public void setHighKey(ITupleReference highKey) {
+        int highKeySize = buf.getInt(highKeySizeOff);
+        int newHighKeySize = BTreeUtils.getKeyBytesRequired(tupleWriter, highKey, cmp.getKeyFieldCount());
+        shiftTupleSpace(highKeyOff + highKeySize, newHighKeySize - highKeySize);
+        BTreeUtils.writeKey(tupleWriter, highKey, cmp.getKeyFieldCount(), buf, highKeyOff);
+        buf.putInt(highKeySizeOff, newHighKeySize);
+    }
+
     @Override
     public int getPageHeaderSize() {
         return rightLeafOff;
@@ -408,6 +449,7 @@ public class BTreeNSMInteriorFrame extends TreeIndexNSMFrame implements IBTreeIn
         this.cmp = cmp;
         cmpFrameTuple.setFieldCount(cmp.getKeyFieldCount());
         frameTuple.setFieldCount(cmp.getKeyFieldCount());
+        highKeyTuple.setFieldCount(cmp.getKeyFieldCount());
     }
     
     @Override
@@ -21,6 +21,7 @@ import edu.uci.ics.hyracks.dataflow.common.data.accessors.ITupleReference;
 import edu.uci.ics.hyracks.storage.am.btree.api.IBTreeLeafFrame;
 import edu.uci.ics.hyracks.storage.am.btree.exceptions.BTreeDuplicateKeyException;
 import edu.uci.ics.hyracks.storage.am.btree.exceptions.BTreeNonExistentKeyException;
+import edu.uci.ics.hyracks.storage.am.btree.util.BTreeUtils;
 import edu.uci.ics.hyracks.storage.am.common.api.ISplitKey;
 import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexFrame;
 import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexTupleReference;
@@ -34,14 +35,20 @@ import edu.uci.ics.hyracks.storage.am.common.ophelpers.MultiComparator;
 public class BTreeNSMLeafFrame extends TreeIndexNSMFrame implements IBTreeLeafFrame {
     protected static final int prevLeafOff = smFlagOff + 1;
     protected static final int nextLeafOff = prevLeafOff + 4;
+    // The high key is kept right after the fixed header, the tuples follow it.
+    protected static final int highKeySizeOff = nextLeafOff + 4;
+    protected static final int highKeyOff = highKeySizeOff + 4;
+    private final ITreeIndexTupleReference highKeyTuple;
     private MultiComparator cmp;
     
     public BTreeNSMLeafFrame(ITreeIndexTupleWriter tupleWriter) {
         super(tupleWriter, new OrderedSlotManager());
+        highKeyTuple = tupleWriter.createTupleReference();
     }
 
     @Override
     public void initBuffer(byte level) {
+        buf.putInt(highKeySizeOff, 0);
         super.initBuffer(level);
         buf.putInt(prevLeafOff, -1);
         buf.putInt(nextLeafOff, -1);
@@ -67,6 +74,29 @@ public class BTreeNSMLeafFrame extends TreeIndexNSMFrame implements IBTreeLeafFr
         return buf.getInt(prevLeafOff);
     }
 
+    @Override
+    public int getRightSibling() {
+        return buf.getInt(nextLeafOff);
+    }
+
+    @Override
+    public ITupleReference getHighKey() {
+        if (buf.getInt(highKeySizeOff) == 0) {
+            return null;
+        }
+        highKeyTuple.resetByTupleOffset(buf, highKeyOff);
+        return highKeyTuple;
+    }
+
+    @Override
+    public void setHighKey(ITupleReference highKey) {
+        int highKeySize = buf.getInt(highKeySizeOff);
+        int newHighKeySize = BTreeUtils.getKeyBytesRequired(tupleWriter, highKey, cmp.getKeyFieldCount());
+        shiftTupleSpace(highKeyOff + highKeySize, newHighKeySize - highKeySize);
+        BTreeUtils.writeKey(tupleWriter, highKey, cmp.getKeyFieldCount(), buf, highKeyOff);
+        buf.putInt(highKeySizeOff, newHighKeySize);
+    }
+
     @Override
     public int findInsertTupleIndex(ITupleReference tuple) throws TreeIndexException {
         int tupleIndex = slotManager.findTupleIndex(tuple, frameTuple, cmp, FindTupleMode.EXCLUSIVE_ERROR_IF_EXISTS,
@@ -164,12 +194,16 @@ public class BTreeNSMLeafFrame extends TreeIndexNSMFrame implements IBTreeLeafFr
         splitKey.initData(splitKeySize);
         tupleWriter.writeTupleFields(frameTuple, 0, cmp.getKeyFieldCount(), splitKey.getBuffer(), 0);
         splitKey.getTuple().resetByTupleOffset(splitKey.getBuffer(), 0);
+
+        // The right page keeps the old high key, the split key bounds the left page.
+        setHighKey(splitKey.getTuple());
     }
 
     @Override
     protected void resetSpaceParams() {
-        buf.putInt(freeSpaceOff, nextLeafOff + 4);
-        buf.putInt(totalFreeSpaceOff, buf.capacity() - (nextLeafOff + 4));
+        int tupleSpaceOff = highKeyOff + buf.getInt(highKeySizeOff);
+        buf.putInt(freeSpaceOff, tupleSpaceOff);
+        buf.putInt(totalFreeSpaceOff, buf.capacity() - tupleSpaceOff);
     }
 
     @Override
@@ -205,5 +239,6 @@ public class BTreeNSMLeafFrame extends TreeIndexNSMFrame implements IBTreeLeafFr
 	@Override
 	public void setMultiComparator(MultiComparator cmp) {
 		this.cmp = cmp;
+		highKeyTuple.setFieldCount(cmp.getKeyFieldCount());
 	}
 }
@@ -28,6 +28,10 @@ public class OrderedSlotManager extends AbstractSlotManager {
     public int findTupleIndex(ITupleReference searchKey, ITreeIndexTupleReference frameTuple, MultiComparator multiCmp,
             FindTupleMode mode, FindTupleNoExactMatchPolicy matchPolicy) {
         if (frame.getTupleCount() <= 0) {
+            // An exact match fails on an empty page, like on any other page.
+            if (mode == FindTupleMode.EXACT) {
+                return ERROR_INDICATOR;
+            }
             return GREATEST_KEY_INDICATOR;
         }
 
@@ -16,9 +16,8 @@
 package edu.uci.ics.hyracks.storage.am.btree.impls;
 
 import java.util.ArrayList;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import edu.uci.ics.hyracks.api.dataflow.value.IBinaryComparatorFactory;
 import edu.uci.ics.hyracks.api.dataflow.value.ISerializerDeserializer;
 import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
 import edu.uci.ics.hyracks.dataflow.common.data.accessors.ITupleReference;
@@ -28,6 +27,7 @@ import edu.uci.ics.hyracks.storage.am.btree.api.IBTreeLeafFrame;
 import edu.uci.ics.hyracks.storage.am.btree.exceptions.BTreeException;
 import edu.uci.ics.hyracks.storage.am.btree.exceptions.BTreeNotUpdateableException;
 import edu.uci.ics.hyracks.storage.am.btree.frames.BTreeNSMInteriorFrame;
+import edu.uci.ics.hyracks.storage.am.btree.util.BTreeUtils;
 import edu.uci.ics.hyracks.storage.am.common.api.IFreePageManager;
 import edu.uci.ics.hyracks.storage.am.common.api.IIndexBulkLoadContext;
 import edu.uci.ics.hyracks.storage.am.common.api.ISearchPredicate;
@@ -45,6 +45,7 @@ import edu.uci.ics.hyracks.storage.am.common.frames.FrameOpSpaceStatus;
 import edu.uci.ics.hyracks.storage.am.common.impls.TreeDiskOrderScanCursor;
 import edu.uci.ics.hyracks.storage.am.common.ophelpers.IndexOp;
 import edu.uci.ics.hyracks.storage.am.common.ophelpers.MultiComparator;
+import edu.uci.ics.hyracks.storage.am.common.util.IndexUtils;
 import edu.uci.ics.hyracks.storage.am.common.util.TreeIndexUtils;
 import edu.uci.ics.hyracks.storage.common.buffercache.IBufferCache;
 import edu.uci.ics.hyracks.storage.common.buffercache.ICachedPage;
@@ -54,8 +55,6 @@ public class BTree implements ITreeIndex {
 
     public static final float DEFAULT_FILL_FACTOR = 0.7f;
 
-    private final static long RESTART_OP = Long.MIN_VALUE;
-    private final static int MAX_RESTARTS = 10;
     private final static int rootPage = 1;
         
     private final IFreePageManager freePageManager;
@@ -64,34 +63,52 @@ public class BTree implements ITreeIndex {
     private final ITreeIndexFrameFactory leafFrameFactory;
     private final int fieldCount;
     private final MultiComparator cmp;
-    private final ReadWriteLock treeLatch;
+    // Null if the tree was given a comparator, all accessors then share it.
+    private final IBinaryComparatorFactory[] cmpFactories;
     private final RangePredicate diskOrderScanPredicate;
     private int fileId;
 
+    /**
+     * Creates a BTree whose accessors all use the given comparator. The
+     * comparators keep state while they compare, so the accessors must not be
+     * used by several threads at a time.
+     */
     public BTree(IBufferCache bufferCache, int fieldCount, MultiComparator cmp, IFreePageManager freePageManager,
             ITreeIndexFrameFactory interiorFrameFactory, ITreeIndexFrameFactory leafFrameFactory) {
+        this(bufferCache, fieldCount, cmp, null, freePageManager, interiorFrameFactory, leafFrameFactory);
+    }
+
+    /**
+     * Creates a BTree that gives every accessor its own comparators, so that
+     * threads can insert and search concurrently through their own accessors.
+     */
+    public BTree(IBufferCache bufferCache, int fieldCount, IBinaryComparatorFactory[] cmpFactories,
+            IFreePageManager freePageManager, ITreeIndexFrameFactory interiorFrameFactory,
+            ITreeIndexFrameFactory leafFrameFactory) {
+        this(bufferCache, fieldCount, IndexUtils.createMultiComparator(cmpFactories), cmpFactories,
+                freePageManager, interiorFrameFactory, leafFrameFactory);
+    }
+
+    private BTree(IBufferCache bufferCache, int fieldCount, MultiComparator cmp,
+            IBinaryComparatorFactory[] cmpFactories, IFreePageManager freePageManager,
+            ITreeIndexFrameFactory interiorFrameFactory, ITreeIndexFrameFactory leafFrameFactory) {
         this.bufferCache = bufferCache;
         this.fieldCount = fieldCount;
         this.cmp = cmp;
+        this.cmpFactories = cmpFactories;
         this.interiorFrameFactory = interiorFrameFactory;
         this.leafFrameFactory = leafFrameFactory;        
         this.freePageManager = freePageManager;
-        this.treeLatch = new ReentrantReadWriteLock(true);
         this.diskOrderScanPredicate = new RangePredicate(true, null, null, true, true, cmp, cmp);
     }
 
     @Override
     public void create(int fileId) throws HyracksDataException {
-        treeLatch.writeLock().lock();
-        try {
-            ITreeIndexFrame leafFrame = leafFrameFactory.createFrame();
-            ITreeIndexMetaDataFrame metaFrame = freePageManager.getMetaDataFrameFactory().createFrame();
-            this.fileId = fileId;
-            freePageManager.init(metaFrame, rootPage);
-            initRoot(leafFrame, true);
-        } finally {
-            treeLatch.writeLock().unlock();
-        }
+        ITreeIndexFrame leafFrame = leafFrameFactory.createFrame();
+        ITreeIndexMetaDataFrame metaFrame = freePageManager.getMetaDataFrameFactory().createFrame();
+        this.fileId = fileId;
+        freePageManager.init(metaFrame, rootPage);
+        initRoot(leafFrame, true);
     }
 
     @Override
@@ -104,16 +121,6 @@ public class BTree implements ITreeIndex {
         fileId = -1;
     }
 
-    private void addFreePages(BTreeOpContext ctx) throws HyracksDataException {
-        for (int i = 0; i < ctx.freePages.size(); i++) {
-            // Root page is special, never add it to free pages.
-            if (ctx.freePages.get(i) != rootPage) {
-                freePageManager.addFreePage(ctx.metaFrame, ctx.freePages.get(i));
-            }
-        }
-        ctx.freePages.clear();
-    }
-    
     private void diskOrderScan(ITreeIndexCursor icursor, BTreeOpContext ctx) throws HyracksDataException {
         TreeDiskOrderScanCursor cursor = (TreeDiskOrderScanCursor) icursor;
         ctx.reset();
@@ -142,49 +149,28 @@ public class BTree implements ITreeIndex {
         ctx.reset();
         ctx.pred = (RangePredicate) searchPred;
         ctx.cursor = cursor;
+        // the cursor may read ahead when it is opened on the leaf
+        cursor.setBufferCache(bufferCache);
+        cursor.setFileId(fileId);
         // simple index scan
         if (ctx.pred.getLowKeyComparator() == null) {
-            ctx.pred.setLowKeyComparator(cmp);
+            ctx.pred.setLowKeyComparator(ctx.cmp);
         }
         if (ctx.pred.getHighKeyComparator() == null) {
-            ctx.pred.setHighKeyComparator(cmp);
-        }
-        // we use this loop to deal with possibly multiple operation restarts
-        // due to ongoing structure modifications during the descent
-        boolean repeatOp = true;
-        while (repeatOp && ctx.opRestarts < MAX_RESTARTS) {
-            performOp(rootPage, null, ctx);
-            // if we reach this stage then we need to restart from the (possibly
-            // new) root
-            if (!ctx.pageLsns.isEmpty() && ctx.pageLsns.getLast() == RESTART_OP) {
-                ctx.pageLsns.removeLast(); // pop the restart op indicator
-                continue;
-            }
-            repeatOp = false;
-        }
-        cursor.setBufferCache(bufferCache);
-        cursor.setFileId(fileId);
-    }
-
-    private void unsetSmPages(BTreeOpContext ctx) throws HyracksDataException {
-        ICachedPage originalPage = ctx.interiorFrame.getPage();
-        for (int i = 0; i < ctx.smPages.size(); i++) {
-            int pageId = ctx.smPages.get(i);
-            ICachedPage smPage = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, pageId), false);
-            smPage.acquireWriteLatch();
-            try {
-                ctx.interiorFrame.setPage(smPage);
-                ctx.interiorFrame.setSmFlag(false);
-            } finally {
-                smPage.releaseWriteLatch();
-                bufferCache.unpin(smPage);
-            }
+            ctx.pred.setHighKeyComparator(ctx.cmp);
         }
-        if (ctx.smPages.size() > 0) {
-            treeLatch.writeLock().unlock();
-            ctx.smPages.clear();
+        boolean exclusive = cursor.exclusiveLatchNodes();
+        int leafPageId = findNode(ctx, ctx.leafFrame, 0, exclusive);
+        ICachedPage leaf = ctx.leafFrame.getPage();
+        ctx.cursorInitialState.setPage(leaf);
+        ctx.cursorInitialState.setPageId(leafPageId);
+        try {
+            cursor.open(ctx.cursorInitialState, ctx.pred);
+        } catch (HyracksDataException e) {
+            releaseLatch(leaf, exclusive);
+            bufferCache.unpin(leaf);
+            throw e;
         }
-        ctx.interiorFrame.setPage(originalPage);
     }
 
     private void initRoot(ITreeIndexFrame leafFrame, boolean firstInit) throws HyracksDataException {
@@ -199,85 +185,82 @@ public class BTree implements ITreeIndex {
         }
     }
     
-    private void createNewRoot(BTreeOpContext ctx) throws HyracksDataException, TreeIndexException, PageAllocationException {
+    /**
+     * Turns the split root into the parent of its two halves. The caller holds
+     * the write latches on the root and on the new right node, so no other
+     * operation sees the root between the split and the new root.
+     */
+    private void createNewRoot(ICachedPage rootNode, ICachedPage rightNode, BTreeOpContext ctx)
+            throws HyracksDataException, TreeIndexException, PageAllocationException {
         // Make sure the root is always in the same page.
-        ICachedPage leftNode = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, ctx.splitKey.getLeftPage()),
-                false);
-        leftNode.acquireWriteLatch();
+        int newLeftId = freePageManager.getFreePage(ctx.metaFrame);
+        ICachedPage newLeftNode = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, newLeftId), true);
+        newLeftNode.acquireWriteLatch();
         try {
-            ICachedPage rightNode = bufferCache.pin(
-                    BufferedFileHandle.getDiskPageId(fileId, ctx.splitKey.getRightPage()), false);
-            rightNode.acquireWriteLatch();
-            try {
-                int newLeftId = freePageManager.getFreePage(ctx.metaFrame);
-                ICachedPage newLeftNode = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, newLeftId), true);
-                newLeftNode.acquireWriteLatch();
-                try {
-                    // Copy left child to new left child.
-                    System.arraycopy(leftNode.getBuffer().array(), 0, newLeftNode.getBuffer().array(), 0, newLeftNode
-                            .getBuffer().capacity());
-                    ctx.interiorFrame.setPage(newLeftNode);
-                    ctx.interiorFrame.setSmFlag(false);
-                    // Change sibling pointer if children are leaves.
-                    ctx.leafFrame.setPage(rightNode);
-                    if (ctx.leafFrame.isLeaf()) {
-                        ctx.leafFrame.setPrevLeaf(newLeftId);
-                    }
-                    // Initialize new root (leftNode becomes new root).
-                    ctx.interiorFrame.setPage(leftNode);
-                    ctx.interiorFrame.initBuffer((byte) (ctx.leafFrame.getLevel() + 1));
-                    // Will be cleared later in unsetSmPages.
-                    ctx.interiorFrame.setSmFlag(true);
-                    ctx.splitKey.setLeftPage(newLeftId);
-                    int targetTupleIndex = ctx.interiorFrame.findInsertTupleIndex(ctx.splitKey.getTuple());
-                    ctx.interiorFrame.insert(ctx.splitKey.getTuple(), targetTupleIndex);
-                } finally {
-                    newLeftNode.releaseWriteLatch();
-                    bufferCache.unpin(newLeftNode);
-                }
-            } finally {
-                rightNode.releaseWriteLatch();
-                bufferCache.unpin(rightNode);
+            // Copy left child to new left child.
+            System.arraycopy(rootNode.getBuffer().array(), 0, newLeftNode.getBuffer().array(), 0, newLeftNode
+                    .getBuffer().capacity());
+            // Change sibling pointer if children are leaves.
+            ctx.leafFrame.setPage(rightNode);
+            if (ctx.leafFrame.isLeaf()) {
+                ctx.leafFrame.setPrevLeaf(newLeftId);
             }
+            // Initialize new root (the old root page becomes the new root).
+            ctx.interiorFrame.setPage(rootNode);
+            ctx.interiorFrame.initBuffer((byte) (ctx.leafFrame.getLevel() + 1));
+            ctx.splitKey.setLeftPage(newLeftId);
+            int targetTupleIndex = ctx.interiorFrame.findInsertTupleIndex(ctx.splitKey.getTuple());
+            ctx.interiorFrame.insert(ctx.splitKey.getTuple(), targetTupleIndex);
+            ctx.splitKey.reset();
         } finally {
-            leftNode.releaseWriteLatch();
-            bufferCache.unpin(leftNode);
+            newLeftNode.releaseWriteLatch();
+            bufferCache.unpin(newLeftNode);
         }
     }
     
     private void insertUpdateOrDelete(ITupleReference tuple, BTreeOpContext ctx) throws HyracksDataException, TreeIndexException, PageAllocationException {
         ctx.reset();
-        ctx.pred.setLowKeyComparator(cmp);
-        ctx.pred.setHighKeyComparator(cmp);
+        ctx.pred.setLowKeyComparator(ctx.cmp);
+        ctx.pred.setHighKeyComparator(ctx.cmp);
         ctx.pred.setLowKey(tuple, true);
         ctx.pred.setHighKey(tuple, true);
         ctx.splitKey.reset();
         ctx.splitKey.getTuple().setFieldCount(cmp.getKeyFieldCount());
-        // We use this loop to deal with possibly multiple operation restarts
-        // due to ongoing structure modifications during the descent.
-        boolean repeatOp = true;
-        while (repeatOp && ctx.opRestarts < MAX_RESTARTS) {
-            performOp(rootPage, null, ctx);
-            // Do we need to restart from the (possibly new) root?
-            if (!ctx.pageLsns.isEmpty() && ctx.pageLsns.getLast() == RESTART_OP) {
-                ctx.pageLsns.removeLast(); // pop the restart op indicator
-                continue;
-            }
-            // Split key propagated?
-            if (ctx.splitKey.getBuffer() != null) {
-                if (ctx.op == IndexOp.DELETE) {
-                    // Reset level of root to zero.
-                    initRoot(ctx.leafFrame, false);
-                } else {
-                    // Insert or update op. Create a new root.
-                    createNewRoot(ctx);
+        int pageId = findNode(ctx, ctx.leafFrame, 0, true);
+        ICachedPage node = ctx.leafFrame.getPage();
+        try {
+            switch (ctx.op) {
+                case INSERT: {
+                    insertLeaf(node, pageId, tuple, ctx);
+                    break;
+                }
+                case UPDATE: {
+                    updateLeaf(node, pageId, tuple, ctx);
+                    break;
+                }
+                case DELETE: {
+                    deleteLeaf(node, pageId, tuple, ctx);
+                    break;
                 }
             }
-            unsetSmPages(ctx);
-            if (ctx.op == IndexOp.DELETE) {
-                addFreePages(ctx);
+        } finally {
+            node.releaseWriteLatch();
+            bufferCache.unpin(node);
+        }
+        // Post the split keys one level up, until a parent has room for its key.
+        ctx.pred.setLowKey(ctx.splitKey.getTuple(), true);
+        ctx.pred.setHighKey(ctx.splitKey.getTuple(), true);
+        int level = 1;
+        while (ctx.splitKey.getBuffer() != null) {
+            pageId = findParent(ctx, level);
+            node = ctx.interiorFrame.getPage();
+            try {
+                insertInterior(node, pageId, ctx.splitKey.getTuple(), ctx);
+            } finally {
+                node.releaseWriteLatch();
+                bufferCache.unpin(node);
             }
-            repeatOp = false;
+            level++;
         }
     }
     
@@ -299,15 +282,13 @@ public class BTree implements ITreeIndex {
         insertUpdateOrDelete(tuple, ctx);
     }
     
-    private boolean insertLeaf(ICachedPage node, int pageId, ITupleReference tuple, BTreeOpContext ctx) throws Exception {
-        ctx.leafFrame.setPage(node);
-        boolean restartOp = false;
+    private void insertLeaf(ICachedPage node, int pageId, ITupleReference tuple, BTreeOpContext ctx)
+            throws HyracksDataException, TreeIndexException, PageAllocationException {
         int targetTupleIndex = ctx.leafFrame.findInsertTupleIndex(tuple);
         FrameOpSpaceStatus spaceStatus = ctx.leafFrame.hasSpaceInsert(tuple);
         switch (spaceStatus) {
             case SUFFICIENT_CONTIGUOUS_SPACE: {
                 ctx.leafFrame.insert(tuple, targetTupleIndex);
-                ctx.splitKey.reset();
                 break;
             }
             case SUFFICIENT_SPACE: {
@@ -316,7 +297,6 @@ public class BTree implements ITreeIndex {
                     targetTupleIndex = ctx.leafFrame.findInsertTupleIndex(tuple);
                 }
                 ctx.leafFrame.insert(tuple, targetTupleIndex);
-                ctx.splitKey.reset();
                 break;
             }
             case INSUFFICIENT_SPACE: {            	
@@ -329,98 +309,110 @@ public class BTree implements ITreeIndex {
                 }
                 if (spaceStatus == FrameOpSpaceStatus.SUFFICIENT_CONTIGUOUS_SPACE) {
                     ctx.leafFrame.insert(tuple, targetTupleIndex);
-                    ctx.splitKey.reset();
                 } else {
-                	restartOp = performLeafSplit(pageId, tuple, ctx);
+                	performLeafSplit(node, pageId, tuple, ctx);
                 }
                 break;
             }
         }
-        node.releaseWriteLatch();
-        bufferCache.unpin(node);
-        return restartOp;
     }
     
-    private boolean performLeafSplit(int pageId, ITupleReference tuple, BTreeOpContext ctx) throws Exception {    	
-    	// Lock is released in unsetSmPages(), after sm has fully completed.
-        if (!treeLatch.writeLock().tryLock()) {
-        	return true;
-        }
+    /**
+     * Splits the write latched leaf, latching only the new right leaf and the
+     * old right sibling, whose back pointer changes. Until the split key
+     * reaches the parent, operations that the parent routes to the leaf find
+     * the moved keys through its high key and next pointer.
+     */
+    private void performLeafSplit(ICachedPage node, int pageId, ITupleReference tuple, BTreeOpContext ctx)
+            throws HyracksDataException, TreeIndexException, PageAllocationException {
     	int rightSiblingPageId = ctx.leafFrame.getNextLeaf();
-        ICachedPage rightSibling = null;
-        if (rightSiblingPageId > 0) {
-            rightSibling = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, rightSiblingPageId),
-                    false);
-        }
+        int rightPageId = freePageManager.getFreePage(ctx.metaFrame);
+        ICachedPage rightNode = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, rightPageId), true);
+        rightNode.acquireWriteLatch();
         try {
-            int rightPageId = freePageManager.getFreePage(ctx.metaFrame);
-            ICachedPage rightNode = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, rightPageId),
-                    true);
-            rightNode.acquireWriteLatch();
-            try {
-                IBTreeLeafFrame rightFrame = ctx.createLeafFrame();
-                rightFrame.setPage(rightNode);
-                rightFrame.initBuffer((byte) 0);
-                rightFrame.setMultiComparator(cmp);
-                ctx.leafFrame.split(rightFrame, tuple, ctx.splitKey);
-
-                ctx.smPages.add(pageId);
-                ctx.smPages.add(rightPageId);
-                ctx.leafFrame.setSmFlag(true);
-                rightFrame.setSmFlag(true);
-
-                rightFrame.setNextLeaf(ctx.leafFrame.getNextLeaf());
-                rightFrame.setPrevLeaf(pageId);
-                ctx.leafFrame.setNextLeaf(rightPageId);
-
-                // TODO: we just use increasing numbers as pageLsn,
-                // we
-                // should tie this together with the LogManager and
-                // TransactionManager
-                rightFrame.setPageLsn(rightFrame.getPageLsn() + 1);
-                ctx.leafFrame.setPageLsn(ctx.leafFrame.getPageLsn() + 1);
-
-                ctx.splitKey.setPages(pageId, rightPageId);
-                
-                if (rightSibling != null) {
-                	rightSibling.acquireWriteLatch();
-                    try {
-                        // Reuse rightFrame for modification.
-                        rightFrame.setPage(rightSibling);
-                        rightFrame.setPrevLeaf(rightPageId);
-                    } finally {
-                        rightSibling.releaseWriteLatch();
-                    }
+            IBTreeLeafFrame rightFrame = ctx.createLeafFrame();
+            rightFrame.setPage(rightNode);
+            rightFrame.initBuffer((byte) 0);
+            rightFrame.setMultiComparator(ctx.cmp);
+            ctx.leafFrame.split(rightFrame, tuple, ctx.splitKey);
+            truncateSplitKey(rightFrame, ctx);
+
+            rightFrame.setNextLeaf(rightSiblingPageId);
+            rightFrame.setPrevLeaf(pageId);
+            ctx.leafFrame.setNextLeaf(rightPageId);
+
+            // TODO: we just use increasing numbers as pageLsn,
+            // we
+            // should tie this together with the LogManager and
+            // TransactionManager
+            rightFrame.setPageLsn(rightFrame.getPageLsn() + 1);
+            ctx.leafFrame.setPageLsn(ctx.leafFrame.getPageLsn() + 1);
+
+            ctx.splitKey.setPages(pageId, rightPageId);
+
+            if (pageId == rootPage) {
+                createNewRoot(node, rightNode, ctx);
+            } else if (rightSiblingPageId > 0) {
+                ICachedPage rightSibling = bufferCache.pin(
+                        BufferedFileHandle.getDiskPageId(fileId, rightSiblingPageId), false);
+                rightSibling.acquireWriteLatch();
+                try {
+                    // Reuse rightFrame for modification.
+                    rightFrame.setPage(rightSibling);
+                    rightFrame.setPrevLeaf(rightPageId);
+                } finally {
+                    rightSibling.releaseWriteLatch();
+                    bufferCache.unpin(rightSibling);
                 }
-            } finally {
-                rightNode.releaseWriteLatch();
-                bufferCache.unpin(rightNode);
             }
-        } catch (Exception e) {
-            treeLatch.writeLock().unlock();
-            throw e;
         } finally {
-            if (rightSibling != null) {
-                bufferCache.unpin(rightSibling);
-            }
+            rightNode.releaseWriteLatch();
+            bufferCache.unpin(rightNode);
+        }
+    }
+    
+    /**
+     * Shortens the split key of a leaf split to the key fields that tell the
+     * greatest key of the left leaf from the least key of the right leaf, and
+     * makes it the high key of the left leaf. Shorter separators leave room
+     * for more children in each interior node.
+     */
+    private void truncateSplitKey(IBTreeLeafFrame rightFrame, BTreeOpContext ctx) {
+        if (ctx.leafFrame.getTupleCount() == 0 || rightFrame.getTupleCount() == 0) {
+            return;
+        }
+        ctx.leftSplitTuple.resetByTupleIndex(ctx.leafFrame, ctx.leafFrame.getTupleCount() - 1);
+        ctx.rightSplitTuple.resetByTupleIndex(rightFrame, 0);
+        int numFields = BTreeUtils.getSeparatorFieldCount(ctx.cmp, ctx.leftSplitTuple, ctx.rightSplitTuple);
+        if (numFields == cmp.getKeyFieldCount()) {
+            return;
+        }
+        setSeparator(ctx.splitKey, ctx.leafFrame.getTupleWriter(), ctx.leftSplitTuple, numFields);
+        ctx.leafFrame.setHighKey(ctx.splitKey.getTuple());
+    }
+
+    private void setSeparator(BTreeSplitKey splitKey, ITreeIndexTupleWriter tupleWriter, ITupleReference tuple,
+            int numFields) {
+        splitKey.initData(tupleWriter.bytesRequired(tuple, 0, numFields));
+        if (numFields < cmp.getKeyFieldCount()) {
+            tupleWriter.writeTruncatedTuple(tuple, numFields, splitKey.getBuffer(), 0);
+        } else {
+            tupleWriter.writeTupleFields(tuple, 0, numFields, splitKey.getBuffer(), 0);
         }
-        return false;
+        splitKey.getTuple().resetByTupleOffset(splitKey.getBuffer(), 0);
     }
     
-    private boolean updateLeaf(ICachedPage node, int pageId, ITupleReference tuple, BTreeOpContext ctx) throws Exception {
-        ctx.leafFrame.setPage(node);
+    private void updateLeaf(ICachedPage node, int pageId, ITupleReference tuple, BTreeOpContext ctx)
+            throws HyracksDataException, TreeIndexException, PageAllocationException {
         int oldTupleIndex = ctx.leafFrame.findUpdateTupleIndex(tuple);
         FrameOpSpaceStatus spaceStatus = ctx.leafFrame.hasSpaceUpdate(tuple, oldTupleIndex);
-        boolean restartOp = false;
         switch (spaceStatus) {
             case SUFFICIENT_INPLACE_SPACE: {
                 ctx.leafFrame.update(tuple, oldTupleIndex, true);
-                ctx.splitKey.reset();
                 break;
             }
             case SUFFICIENT_CONTIGUOUS_SPACE: {
                 ctx.leafFrame.update(tuple, oldTupleIndex, false);
-                ctx.splitKey.reset();
                 break;
             }                
             case SUFFICIENT_SPACE: {
@@ -429,7 +421,6 @@ public class BTree implements ITreeIndex {
                 ctx.leafFrame.compact();
                 int targetTupleIndex = ctx.leafFrame.findInsertTupleIndex(tuple);
                 ctx.leafFrame.insert(tuple, targetTupleIndex);
-                ctx.splitKey.reset();
                 break;
             }                
             case INSUFFICIENT_SPACE: {
@@ -441,21 +432,20 @@ public class BTree implements ITreeIndex {
                 if (spaceStatus == FrameOpSpaceStatus.SUFFICIENT_CONTIGUOUS_SPACE) {
                     int targetTupleIndex = ctx.leafFrame.findInsertTupleIndex(tuple);
                     ctx.leafFrame.insert(tuple, targetTupleIndex);
-                    ctx.splitKey.reset();
                 } else {
-                    restartOp = performLeafSplit(pageId, tuple, ctx);
+                    performLeafSplit(node, pageId, tuple, ctx);
                 }
                 break;
             }
         }
-        node.releaseWriteLatch();
-        bufferCache.unpin(node);
-        return restartOp;
     }
 
     private void insertInterior(ICachedPage node, int pageId, ITupleReference tuple, BTreeOpContext ctx)
-            throws Exception {
-        ctx.interiorFrame.setPage(node);
+            throws HyracksDataException, TreeIndexException, PageAllocationException {
+        // The key goes left of the child that covers it. That is the split node
+        // itself, unless the split node was split off a node whose split key
+        // has not been posted yet.
+        ctx.splitKey.setLeftPage(ctx.interiorFrame.getChildPageId(ctx.pred));
         int targetTupleIndex = ctx.interiorFrame.findInsertTupleIndex(tuple);
         FrameOpSpaceStatus spaceStatus = ctx.interiorFrame.hasSpaceInsert(tuple);
         switch (spaceStatus) {
@@ -467,14 +457,12 @@ public class BTree implements ITreeIndex {
                     IBTreeFrame rightFrame = ctx.createInteriorFrame();
                     rightFrame.setPage(rightNode);
                     rightFrame.initBuffer((byte) ctx.interiorFrame.getLevel());
-                    rightFrame.setMultiComparator(cmp);
+                    rightFrame.setMultiComparator(ctx.cmp);
                     // instead of creating a new split key, use the existing
                     // splitKey
                     ctx.interiorFrame.split(rightFrame, ctx.splitKey.getTuple(), ctx.splitKey);
-                    ctx.smPages.add(pageId);
-                    ctx.smPages.add(rightPageId);
-                    ctx.interiorFrame.setSmFlag(true);
-                    rightFrame.setSmFlag(true);
+                    // The right node took over the old right sibling.
+                    ctx.interiorFrame.setRightSibling(rightPageId);
                     // TODO: we just use increasing numbers as pageLsn, we
                     // should tie this together with the LogManager and
                     // TransactionManager
@@ -482,6 +470,9 @@ public class BTree implements ITreeIndex {
                     ctx.interiorFrame.setPageLsn(ctx.interiorFrame.getPageLsn() + 1);
 
                     ctx.splitKey.setPages(pageId, rightPageId);
+                    if (pageId == rootPage) {
+                        createNewRoot(node, rightNode, ctx);
+                    }
                 } finally {
                     rightNode.releaseWriteLatch();
                     bufferCache.unpin(rightNode);
@@ -507,313 +498,142 @@ public class BTree implements ITreeIndex {
         }
     }
 
-    private boolean deleteLeaf(ICachedPage node, int pageId, ITupleReference tuple, BTreeOpContext ctx) throws Exception {
-        ctx.leafFrame.setPage(node);
+    private void deleteLeaf(ICachedPage node, int pageId, ITupleReference tuple, BTreeOpContext ctx)
+            throws TreeIndexException {
         int tupleIndex = ctx.leafFrame.findDeleteTupleIndex(tuple);
-        
-        // Will this leaf become empty?
-        if (ctx.leafFrame.getTupleCount() > 1) {
-            // Leaf will not become empty.
-            ctx.leafFrame.delete(tuple, tupleIndex);
+        // A leaf that becomes empty stays in the tree. Freeing it would need
+        // the latches of its parent and both siblings, which is exactly what
+        // splits avoid, and searches may still be on their way to it.
+        ctx.leafFrame.delete(tuple, tupleIndex);
+        // TODO: Tie together with logging.
+        ctx.leafFrame.setPageLsn(ctx.leafFrame.getPageLsn() + 1);
+    }
+
+    /**
+     * Descends from the root to the node at the given level that covers the
+     * search key of ctx.pred, holding the latch of one node at a time. A node
+     * that has been split since its parent was read may no longer hold the
+     * key, the descent then moves right along the level. The interior nodes
+     * above the target level are pushed on ctx.pageStack.
+     * 
+     * @return the page id of the node, which is left pinned and latched in the
+     *         given frame.
+     */
+    private int findNode(BTreeOpContext ctx, IBTreeFrame targetFrame, int targetLevel, boolean exclusive)
+            throws HyracksDataException {
+        int pageId = rootPage;
+        ICachedPage node = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, pageId), false);
+        ctx.interiorFrame.setPage(node);
+        // This check performs an unprotected read in the page, the root may
+        // be split before we latch it.
+        boolean isTarget = ctx.interiorFrame.getLevel() == targetLevel;
+        acquireLatch(node, exclusive && isTarget);
+        if ((ctx.interiorFrame.getLevel() == targetLevel) != isTarget) {
+            releaseLatch(node, exclusive && isTarget);
+            isTarget = !isTarget;
+            acquireLatch(node, exclusive && isTarget);
+        }
+        while (!isTarget) {
+            pageId = moveRight(pageId, ctx.interiorFrame, ctx.pred, false);
+            node = ctx.interiorFrame.getPage();
+            ctx.pageStack.add(pageId);
+            int childPageId = ctx.interiorFrame.getChildPageId(ctx.pred);
+            isTarget = ctx.interiorFrame.getLevel() - 1 == targetLevel;
+            node.releaseReadLatch();
+            bufferCache.unpin(node);
+            pageId = childPageId;
+            node = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, pageId), false);
+            acquireLatch(node, exclusive && isTarget);
+            ctx.interiorFrame.setPage(node);
+        }
+        targetFrame.setPage(node);
+        return moveRight(pageId, targetFrame, ctx.pred, exclusive);
+    }
+
+    /**
+     * Write latches the node at the given level that the split key must be
+     * posted to, normally the node that the descent passed through.
+     */
+    private int findParent(BTreeOpContext ctx, int level) throws HyracksDataException {
+        if (!ctx.pageStack.isEmpty()) {
+            int pageId = ctx.pageStack.getLast();
+            ctx.pageStack.removeLast();
+            ICachedPage node = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, pageId), false);
+            node.acquireWriteLatch();
+            ctx.interiorFrame.setPage(node);
+            if (ctx.interiorFrame.getLevel() == level) {
+                return moveRight(pageId, ctx.interiorFrame, ctx.pred, true);
+            }
+            // The root was split after the descent passed it, so the parent
+            // is now below the root.
             node.releaseWriteLatch();
             bufferCache.unpin(node);
-            return false;
         }
-        
-        // Leaf will become empty. 
-        IBTreeLeafFrame siblingFrame = (IBTreeLeafFrame) leafFrameFactory.createFrame();
-        siblingFrame.setMultiComparator(cmp);
-        ICachedPage leftNode = null;
-        ICachedPage rightNode = null;
-        int nextLeaf = ctx.leafFrame.getNextLeaf();
-        int prevLeaf = ctx.leafFrame.getPrevLeaf();
-        // Try to get the tree latch, if it's already taken, then restart this operation
-        // to avoid latch deadlock.
-        if (!treeLatch.writeLock().tryLock()) {
-        	return true;
-        }
-        try {
-        	if (prevLeaf > 0) {
-        		leftNode = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, prevLeaf), false);
-        	}
-        	try {
-        		if (nextLeaf > 0) {
-        			rightNode = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, nextLeaf), false);
-        		}
-        		try {
-        			try {
-        				ctx.leafFrame.delete(tuple, tupleIndex);
-        				// To propagate the deletion we only need to make the
-        				// splitKey != null.
-        				// Reuse data to identify which key to delete in the parent.
-        				ctx.splitKey.initData(1);
-        			} catch (Exception e) {
-        				// Don't propagate deletion.
-        				ctx.splitKey.reset();
-        				throw e;
-        			}
-
-        			// TODO: Tie together with logging.
-        			ctx.leafFrame.setPageLsn(ctx.leafFrame.getPageLsn() + 1);
-        			ctx.leafFrame.setLevel(freePageManager.getFreePageLevelIndicator());
-
-        			ctx.smPages.add(pageId);
-        			ctx.leafFrame.setSmFlag(true);
-
-        			node.releaseWriteLatch();
-        			bufferCache.unpin(node);
-
-        			if (leftNode != null) {
-        				leftNode.acquireWriteLatch();
-        				try {
-        					siblingFrame.setPage(leftNode);
-        					siblingFrame.setNextLeaf(nextLeaf);
-        					// TODO: Tie together with logging.
-        					siblingFrame.setPageLsn(siblingFrame.getPageLsn() + 1);
-        				} finally {
-        					leftNode.releaseWriteLatch();
-        				}
-        			}
-
-        			if (rightNode != null) {
-        				rightNode.acquireWriteLatch();
-        				try {
-        					siblingFrame.setPage(rightNode);
-        					siblingFrame.setPrevLeaf(prevLeaf);
-        					// TODO: Tie together with logging.
-        					siblingFrame.setPageLsn(siblingFrame.getPageLsn() + 1);
-        				} finally {
-        					rightNode.releaseWriteLatch();
-        				}
-        			}
-        			// Register pageId as a free.
-        			ctx.freePages.add(pageId);
-        		} finally {
-        			if (rightNode != null) {
-                		bufferCache.unpin(rightNode);
-                	}
-        		}
-        	} finally {
-        		if (leftNode != null) {
-        			bufferCache.unpin(leftNode);
-        		}
-        	}
-        } catch (Exception e) {
-        	treeLatch.writeLock().unlock();
-        	throw e;
+        return findNode(ctx, ctx.interiorFrame, level, true);
+    }
+
+    /**
+     * Follows the right links from the latched node in the frame to the node
+     * that covers the search key of the predicate, latching one node at a
+     * time. Nodes are never freed, so a right link stays valid after the
+     * latch is released.
+     * 
+     * @return the page id of the node, which is left pinned and latched in the
+     *         frame.
+     */
+    private int moveRight(int pageId, IBTreeFrame frame, RangePredicate pred, boolean exclusive)
+            throws HyracksDataException {
+        while (isBeyondHighKey(frame, pred)) {
+            int rightPageId = frame.getRightSibling();
+            ICachedPage node = frame.getPage();
+            releaseLatch(node, exclusive);
+            bufferCache.unpin(node);
+            node = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, rightPageId), false);
+            acquireLatch(node, exclusive);
+            frame.setPage(node);
+            pageId = rightPageId;
         }
-        return false;
+        return pageId;
     }
 
-    private void deleteInterior(ICachedPage node, int pageId, ITupleReference tuple, BTreeOpContext ctx)
-            throws Exception {
-        ctx.interiorFrame.setPage(node);
-
-        int tupleIndex = ctx.interiorFrame.findDeleteTupleIndex(tuple);
-        
-        // this means there is only a child pointer but no key, this case
-        // propagates the split
-        if (ctx.interiorFrame.getTupleCount() == 0) {
-            ctx.interiorFrame.setPageLsn(ctx.interiorFrame.getPageLsn() + 1); // TODO:
-            // tie
-            // together
-            // with
-            // logging
-            ctx.leafFrame.setLevel(freePageManager.getFreePageLevelIndicator());
-            ctx.smPages.add(pageId);
-            ctx.interiorFrame.setSmFlag(true);
-            ctx.interiorFrame.setRightmostChildPageId(-1); // this node is
-            // completely empty
-            // register this pageId as a free page
-            ctx.freePages.add(pageId);
-
-        } else {
-            ctx.interiorFrame.delete(tuple, tupleIndex);
-            // TODO: Tie together with logging.
-            ctx.interiorFrame.setPageLsn(ctx.interiorFrame.getPageLsn() + 1);
-            // Don't propagate deletion.
-            ctx.splitKey.reset();
+    /**
+     * Checks whether keys that the predicate starts from may have been moved to
+     * the right of the node in the frame, i.e., beyond its high key.
+     */
+    private boolean isBeyondHighKey(IBTreeFrame frame, RangePredicate pred) {
+        ITupleReference highKey = frame.getHighKey();
+        if (highKey == null) {
+            return false;
         }
-    }
-
-    private final void acquireLatch(ICachedPage node, BTreeOpContext ctx, boolean isLeaf) {
-        if (!isLeaf || (ctx.op == IndexOp.SEARCH && !ctx.cursor.exclusiveLatchNodes())) {
-            node.acquireReadLatch();
+        if (pred.isForward()) {
+            if (pred.getLowKey() == null) {
+                return false;
+            }
+            int c = pred.getLowKeyComparator().compare(pred.getLowKey(), highKey);
+            return pred.isLowKeyInclusive() ? c > 0 : c >= 0;
         } else {
-            node.acquireWriteLatch();
+            if (pred.getHighKey() == null) {
+                return true;
+            }
+            // A prefix of the high key may be continued in the right node.
+            int c = pred.getHighKeyComparator().compare(pred.getHighKey(), highKey);
+            return pred.isHighKeyInclusive() ? c >= 0 : c > 0;
         }
     }
 
-    private final void releaseLatch(ICachedPage node, BTreeOpContext ctx, boolean isLeaf) {
-        if (!isLeaf || (ctx.op == IndexOp.SEARCH && !ctx.cursor.exclusiveLatchNodes())) {
-            node.releaseReadLatch();
+    private final void acquireLatch(ICachedPage node, boolean exclusive) {
+        if (exclusive) {
+            node.acquireWriteLatch();
         } else {
-            node.releaseWriteLatch();
+            node.acquireReadLatch();
         }
     }
 
-    private boolean isConsistent(int pageId, BTreeOpContext ctx) throws Exception {
-        ICachedPage node = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, pageId), false);
-        node.acquireReadLatch();
-        ctx.interiorFrame.setPage(node);
-        boolean isConsistent = false;
-        try {
-            isConsistent = ctx.pageLsns.getLast() == ctx.interiorFrame.getPageLsn();
-        } finally {
+    private final void releaseLatch(ICachedPage node, boolean exclusive) {
+        if (exclusive) {
+            node.releaseWriteLatch();
+        } else {
             node.releaseReadLatch();
-            bufferCache.unpin(node);
-        }
-        return isConsistent;
-    }
-
-    private void performOp(int pageId, ICachedPage parent, BTreeOpContext ctx) throws HyracksDataException, TreeIndexException, PageAllocationException {
-        ICachedPage node = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, pageId), false);
-        ctx.interiorFrame.setPage(node);
-        
-        // this check performs an unprotected read in the page
-        // the following could happen: TODO fill out
-        boolean unsafeIsLeaf = ctx.interiorFrame.isLeaf();
-        acquireLatch(node, ctx, unsafeIsLeaf);
-        boolean smFlag = ctx.interiorFrame.getSmFlag();
-        // re-check leafness after latching
-        boolean isLeaf = ctx.interiorFrame.isLeaf();
-
-        // remember trail of pageLsns, to unwind recursion in case of an ongoing
-        // structure modification
-        ctx.pageLsns.add(ctx.interiorFrame.getPageLsn());
-        try {
-            // latch coupling, note: parent should never be write latched,
-            // otherwise something is wrong.
-            if (parent != null) {
-                parent.releaseReadLatch();
-                bufferCache.unpin(parent);
-            }
-            if (!isLeaf || smFlag) {
-                if (!smFlag) {
-                    // We use this loop to deal with possibly multiple operation
-                    // restarts due to ongoing structure modifications during
-                    // the descent.
-                    boolean repeatOp = true;
-                    while (repeatOp && ctx.opRestarts < MAX_RESTARTS) {
-                        int childPageId = ctx.interiorFrame.getChildPageId(ctx.pred);
-                        performOp(childPageId, node, ctx);
-
-                        if (!ctx.pageLsns.isEmpty() && ctx.pageLsns.getLast() == RESTART_OP) {
-                            // Pop the restart op indicator.
-                            ctx.pageLsns.removeLast();
-                            if (isConsistent(pageId, ctx)) {
-                                // Don't unpin and unlatch node again in recursive call.
-                                node = null; 
-                                // Descend the tree again.
-                                continue;
-                            } else {
-                                // Pop pageLsn of this page (version seen by this op during descent).
-                                ctx.pageLsns.removeLast(); 
-                                // This node is not consistent set the restart indicator for upper level.
-                                ctx.pageLsns.add(RESTART_OP);
-                                break;
-                            }
-                        }
-                        
-                        switch (ctx.op) {
-                            case INSERT:
-                            case UPDATE:
-                            case DELETE: {
-                                // Is there a propagated split key?
-                                if (ctx.splitKey.getBuffer() != null) {
-                                    node = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, pageId), false);
-                                    node.acquireWriteLatch();
-                                    try {
-                                        if (ctx.op == IndexOp.DELETE) {
-                                            deleteInterior(node, pageId, ctx.pred.getLowKey(), ctx);                                          
-                                        } else {
-                                            // Insert or update op. Both can cause split keys to propagate upwards.                                            
-                                            insertInterior(node, pageId, ctx.splitKey.getTuple(), ctx);
-                                        }
-                                    } finally {
-                                        node.releaseWriteLatch();
-                                        bufferCache.unpin(node);
-                                    }
-                                } else {
-                                    unsetSmPages(ctx);
-                                }
-                                break;
-                            }
-                            default: {
-                                // Do nothing for Search and DiskOrderScan.
-                                break;
-                            }
-                        }
-                        // Operation completed.
-                        repeatOp = false;
-                    } // end while
-                } else { // smFlag
-                    ctx.opRestarts++;
-                    releaseLatch(node, ctx, unsafeIsLeaf);
-                    bufferCache.unpin(node);
-
-                    // TODO: this should be an instant duration lock, how to do
-                    // this in java?
-                    // instead we just immediately release the lock. this is
-                    // inefficient but still correct and will not cause
-                    // latch-deadlock
-                    treeLatch.writeLock().lock();
-                    treeLatch.writeLock().unlock();
-                    
-                    // unwind recursion and restart operation, find lowest page
-                    // with a pageLsn as seen by this operation during descent
-                    ctx.pageLsns.removeLast(); // pop current page lsn
-                    // put special value on the stack to inform caller of
-                    // restart
-                    ctx.pageLsns.add(RESTART_OP);
-                }
-            } else { // isLeaf and !smFlag
-                // We may have to restart an op to avoid latch deadlock.
-            	boolean restartOp = false;
-            	switch (ctx.op) {
-                    case INSERT: {
-                        restartOp = insertLeaf(node, pageId, ctx.pred.getLowKey(), ctx);
-                        break;
-                    }
-                    case UPDATE: {
-                    	restartOp = updateLeaf(node, pageId, ctx.pred.getLowKey(), ctx);
-                        break;
-                    }
-                    case DELETE: {
-                    	restartOp = deleteLeaf(node, pageId, ctx.pred.getLowKey(), ctx);
-                        break;
-                    }
-                    case SEARCH: {
-                        ctx.cursorInitialState.setPage(node);
-                        ctx.cursor.open(ctx.cursorInitialState, ctx.pred);
-                        break;
-                    }
-                }
-            	if (restartOp) {
-            		ctx.pageLsns.removeLast();
-                    ctx.pageLsns.add(RESTART_OP);
-            	}
-            }
-        } catch (TreeIndexException e) {
-        	if (!ctx.exceptionHandled) {
-                releaseLatch(node, ctx, unsafeIsLeaf);
-                bufferCache.unpin(node);
-                ctx.exceptionHandled = true;
-            }
-            throw e;
-        } catch (PageAllocationException e) {
-        	if (!ctx.exceptionHandled) {
-                releaseLatch(node, ctx, unsafeIsLeaf);
-                bufferCache.unpin(node);
-                ctx.exceptionHandled = true;
-            }
-            throw e;
-        } catch (Exception e) {
-        	e.printStackTrace();
-            releaseLatch(node, ctx, unsafeIsLeaf);
-            bufferCache.unpin(node);
-            BTreeException wrappedException = new BTreeException(e);
-            throw wrappedException;
         }
     }
 
@@ -872,6 +692,17 @@ public class BTree implements ITreeIndex {
             interiorFrame.initBuffer((byte) nodeFrontiers.size());
             nodeFrontiers.add(frontier);
         }
+
+        private void releaseFrontiers() throws HyracksDataException {
+            for (NodeFrontier frontier : nodeFrontiers) {
+                if (frontier.page != null) {
+                    ICachedPage page = frontier.page;
+                    frontier.page = null;
+                    page.releaseWriteLatch();
+                    bufferCache.unpin(page);
+                }
+            }
+        }
     }
 
     private void propagateBulk(BulkLoadContext ctx, int level) throws HyracksDataException, PageAllocationException {
@@ -886,7 +717,8 @@ public class BTree implements ITreeIndex {
         ctx.interiorFrame.setPage(frontier.page);
 
         ITupleReference tuple = ctx.splitKey.getTuple();
-        int spaceNeeded = ctx.tupleWriter.bytesRequired(tuple, 0, cmp.getKeyFieldCount()) + ctx.slotSize + 4;
+        int spaceNeeded = BTreeUtils.getKeyBytesRequired(ctx.tupleWriter, tuple, cmp.getKeyFieldCount()) + ctx.slotSize
+                + 4;
         int spaceUsed = ctx.interiorFrame.getBuffer().capacity() - ctx.interiorFrame.getTotalFreeSpace();
         if (spaceUsed + spaceNeeded > ctx.interiorMaxBytes) {
 
@@ -894,10 +726,11 @@ public class BTree implements ITreeIndex {
             tuple = copyKey.getTuple();
 
             frontier.lastTuple.resetByTupleIndex(ctx.interiorFrame, ctx.interiorFrame.getTupleCount() - 1);
-            int splitKeySize = ctx.tupleWriter.bytesRequired(frontier.lastTuple, 0, cmp.getKeyFieldCount());
+            int splitKeySize = BTreeUtils.getKeyBytesRequired(ctx.tupleWriter, frontier.lastTuple,
+                    cmp.getKeyFieldCount());
             ctx.splitKey.initData(splitKeySize);
-            ctx.tupleWriter
-                    .writeTupleFields(frontier.lastTuple, 0, cmp.getKeyFieldCount(), ctx.splitKey.getBuffer(), 0);
+            BTreeUtils.writeKey(ctx.tupleWriter, frontier.lastTuple, cmp.getKeyFieldCount(),
+                    ctx.splitKey.getBuffer(), 0);
             ctx.splitKey.getTuple().resetByTupleOffset(ctx.splitKey.getBuffer(), 0);
             ctx.splitKey.setLeftPage(frontier.pageId);
 
@@ -905,6 +738,7 @@ public class BTree implements ITreeIndex {
 
             frontier.page.releaseWriteLatch();
             bufferCache.unpin(frontier.page);
+            frontier.page = null;
             frontier.pageId = freePageManager.getFreePage(ctx.metaFrame);
 
             ctx.splitKey.setRightPage(frontier.pageId);
@@ -949,11 +783,8 @@ public class BTree implements ITreeIndex {
 
         if (spaceUsed + spaceNeeded > ctx.leafMaxBytes) {
             leafFrontier.lastTuple.resetByTupleIndex(leafFrame, leafFrame.getTupleCount() - 1);
-            int splitKeySize = ctx.tupleWriter.bytesRequired(leafFrontier.lastTuple, 0, cmp.getKeyFieldCount());
-            ctx.splitKey.initData(splitKeySize);
-            ctx.tupleWriter.writeTupleFields(leafFrontier.lastTuple, 0, cmp.getKeyFieldCount(),
-                    ctx.splitKey.getBuffer(), 0);
-            ctx.splitKey.getTuple().resetByTupleOffset(ctx.splitKey.getBuffer(), 0);
+            int numFields = BTreeUtils.getSeparatorFieldCount(cmp, leafFrontier.lastTuple, tuple);
+            setSeparator(ctx.splitKey, ctx.tupleWriter, leafFrontier.lastTuple, numFields);
             ctx.splitKey.setLeftPage(leafFrontier.pageId);
             int prevPageId = leafFrontier.pageId;
             leafFrontier.pageId = freePageManager.getFreePage(ctx.metaFrame);
@@ -961,6 +792,7 @@ public class BTree implements ITreeIndex {
             leafFrame.setNextLeaf(leafFrontier.pageId);
             leafFrontier.page.releaseWriteLatch();
             bufferCache.unpin(leafFrontier.page);
+            leafFrontier.page = null;
 
             ctx.splitKey.setRightPage(leafFrontier.pageId);
             propagateBulk(ctx, 1);
@@ -1001,16 +833,23 @@ public class BTree implements ITreeIndex {
             interiorFrame.initBuffer(freePageManager.getFreePageLevelIndicator());
 
             // cleanup
-            for (int i = 0; i < ctx.nodeFrontiers.size(); i++) {
-                ctx.nodeFrontiers.get(i).page.releaseWriteLatch();
-                bufferCache.unpin(ctx.nodeFrontiers.get(i).page);
-            }
+            ctx.releaseFrontiers();
         }
     }
 
+    /**
+     * Gives up a bulk load that failed: releases the pages that the bulk load
+     * still holds latched and pinned, so that the file can be closed. The
+     * tree is left incomplete.
+     */
+    public void abortBulkLoad(IIndexBulkLoadContext ictx) throws HyracksDataException {
+        ((BulkLoadContext) ictx).releaseFrontiers();
+    }
+
     private BTreeOpContext createOpContext() {
+        MultiComparator opCmp = cmpFactories == null ? cmp : IndexUtils.createMultiComparator(cmpFactories);
         return new BTreeOpContext(leafFrameFactory, interiorFrameFactory, freePageManager.getMetaDataFrameFactory()
-                .createFrame(), cmp);
+                .createFrame(), opCmp);
     }
     
     public ITreeIndexFrameFactory getInteriorFrameFactory() {
@@ -1021,6 +860,11 @@ public class BTree implements ITreeIndex {
         return leafFrameFactory;
     }
 
+    /**
+     * @return the comparator of the tree, which is not safe to use from
+     *         several threads at a time. Concurrent searches pass predicates
+     *         with comparators of their own.
+     */
     public MultiComparator getMultiComparator() {
         return cmp;
     }
@@ -6,6 +6,7 @@ import edu.uci.ics.hyracks.storage.common.buffercache.ICachedPage;
 public class BTreeCursorInitialState implements ICursorInitialState {
 
     private ICachedPage page;
+    private int pageId = -1;
 
     public BTreeCursorInitialState(ICachedPage page) {
         this.page = page;
@@ -18,4 +19,12 @@ public class BTreeCursorInitialState implements ICursorInitialState {
     public void setPage(ICachedPage page) {
         this.page = page;
     }
+
+    public int getPageId() {
+        return pageId;
+    }
+
+    public void setPageId(int pageId) {
+        this.pageId = pageId;
+    }
 }
@@ -21,9 +21,9 @@ import edu.uci.ics.hyracks.storage.am.common.api.IIndexOpContext;
 import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexCursor;
 import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexFrameFactory;
 import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexMetaDataFrame;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexTupleReference;
 import edu.uci.ics.hyracks.storage.am.common.ophelpers.IndexOp;
 import edu.uci.ics.hyracks.storage.am.common.ophelpers.IntArrayList;
-import edu.uci.ics.hyracks.storage.am.common.ophelpers.LongArrayList;
 import edu.uci.ics.hyracks.storage.am.common.ophelpers.MultiComparator;
 
 public class BTreeOpContext implements IIndexOpContext {
@@ -33,19 +33,24 @@ public class BTreeOpContext implements IIndexOpContext {
     public IBTreeLeafFrame leafFrame;
     public IBTreeInteriorFrame interiorFrame;
     public ITreeIndexMetaDataFrame metaFrame;
+    // Comparators of this context only, they must not be shared between threads.
+    public final MultiComparator cmp;
     public IndexOp op;
     public ITreeIndexCursor cursor;
     public BTreeCursorInitialState cursorInitialState;
     public RangePredicate pred;
-    public BTreeSplitKey splitKey;    
-    public LongArrayList pageLsns;
-    public IntArrayList smPages;
-    public IntArrayList freePages;
-    public int opRestarts = 0;
-    public boolean exceptionHandled;
+    // Predicate of insert, update and delete, never one passed in by a search.
+    private RangePredicate modifyPred;
+    public BTreeSplitKey splitKey;
+    // Tuples on either side of a leaf split, used to truncate the split key.
+    public ITreeIndexTupleReference leftSplitTuple;
+    public ITreeIndexTupleReference rightSplitTuple;
+    // Interior pages passed on the way down, where split keys are posted.
+    public IntArrayList pageStack;
     
     public BTreeOpContext(ITreeIndexFrameFactory leafFrameFactory, ITreeIndexFrameFactory interiorFrameFactory,
             ITreeIndexMetaDataFrame metaFrame, MultiComparator cmp) {
+        this.cmp = cmp;
         this.leafFrameFactory = leafFrameFactory;
         this.leafFrame = (IBTreeLeafFrame) leafFrameFactory.createFrame();
         if (leafFrame != null) {
@@ -57,18 +62,11 @@ public class BTreeOpContext implements IIndexOpContext {
             interiorFrame.setMultiComparator(cmp);
         }
         this.metaFrame = metaFrame;
-        this.pageLsns = new LongArrayList(INIT_ARRAYLIST_SIZE, INIT_ARRAYLIST_SIZE);
+        this.pageStack = new IntArrayList(INIT_ARRAYLIST_SIZE, INIT_ARRAYLIST_SIZE);
     }
 
     public void reset() {
-        if (pageLsns != null)
-            pageLsns.clear();
-        if (freePages != null)
-            freePages.clear();
-        if (smPages != null)
-            smPages.clear();
-        opRestarts = 0;
-        exceptionHandled = false;
+        pageStack.clear();
     }
 
     @Override
@@ -79,21 +77,19 @@ public class BTreeOpContext implements IIndexOpContext {
             }
         } else {
             // Insert, update or delete operation.
-            if (smPages == null) {
-                smPages = new IntArrayList(INIT_ARRAYLIST_SIZE, INIT_ARRAYLIST_SIZE);
-            }
-            if (freePages == null) {
-                freePages = new IntArrayList(INIT_ARRAYLIST_SIZE, INIT_ARRAYLIST_SIZE);
-            }
-            if (pred == null) {
-                pred = new RangePredicate(true, null, null, true, true, null, null);
+            if (modifyPred == null) {
+                modifyPred = new RangePredicate(true, null, null, true, true, null, null);
             }
+            pred = modifyPred;
             if (splitKey == null) {
                 splitKey = new BTreeSplitKey(leafFrame.getTupleWriter().createTupleReference());
             }
+            if (leftSplitTuple == null) {
+                leftSplitTuple = leafFrame.createTupleReference();
+                rightSplitTuple = leafFrame.createTupleReference();
+            }
         }
         op = newOp;
-        exceptionHandled = false;
     }
 
     public IBTreeLeafFrame createLeafFrame() {
@@ -33,6 +33,7 @@ public class BTreeRangeSearchCursor implements ITreeIndexCursor {
 
     private int fileId = -1;
     private ICachedPage page = null;
+    private int pageId = -1;
     private IBufferCache bufferCache = null;
 
     private int tupleIndex = 0;
@@ -96,21 +97,87 @@ public class BTreeRangeSearchCursor implements ITreeIndexCursor {
         }
         bufferCache.unpin(page);
         page = nextLeaf;
+        pageId = nextLeafPage;
         frame.setPage(page);
     }
 
+    private void acquireLatch(ICachedPage leaf) {
+        if (exclusiveLatchNodes) {
+            leaf.acquireWriteLatch();
+        } else {
+            leaf.acquireReadLatch();
+        }
+    }
+
+    private void releaseLatch(ICachedPage leaf) {
+        if (exclusiveLatchNodes) {
+            leaf.releaseWriteLatch();
+        } else {
+            leaf.releaseReadLatch();
+        }
+    }
+
+    /**
+     * Moves to the leaf before the current one. Splits latch leaves from left
+     * to right, so the current leaf is released before the previous one is
+     * latched. If the previous leaf has been split in the meantime, the scan
+     * moves right from it to the leaf that is now next to the current one.
+     */
+    private void fetchPrevLeafPage(int prevLeafPage) throws HyracksDataException {
+        int currentPageId = pageId;
+        releaseLatch(page);
+        bufferCache.unpin(page);
+        page = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, prevLeafPage), false);
+        acquireLatch(page);
+        pageId = prevLeafPage;
+        frame.setPage(page);
+        int nextLeafPage = frame.getNextLeaf();
+        while (currentPageId >= 0 && nextLeafPage >= 0 && nextLeafPage != currentPageId) {
+            fetchNextLeafPage(nextLeafPage);
+            nextLeafPage = frame.getNextLeaf();
+        }
+    }
+
+    /**
+     * Starts reading the leaf that follows the current one in scan order, if
+     * the scan can reach it, so that its read overlaps with the processing of
+     * the current leaf.
+     */
+    private void prefetchNextLeafPage() throws HyracksDataException {
+        int nextLeafPage;
+        if (pred.isForward()) {
+            if (highKey != null && stopTupleIndex < frame.getTupleCount() - 1) {
+                return;
+            }
+            nextLeafPage = frame.getNextLeaf();
+        } else {
+            if (lowKey != null && stopTupleIndex > 0) {
+                return;
+            }
+            nextLeafPage = frame.getPrevLeaf();
+        }
+        if (nextLeafPage >= 0) {
+            bufferCache.prefetch(BufferedFileHandle.getDiskPageId(fileId, nextLeafPage), 1);
+        }
+    }
+
     @Override
     public boolean hasNext() throws Exception {
         if (pred.isForward()) {
-            if (tupleIndex >= frame.getTupleCount()) {
+            // Leaves that became empty are not freed, so we may have to skip some.
+            while (tupleIndex >= frame.getTupleCount()) {
                 int nextLeafPage = frame.getNextLeaf();
                 if (nextLeafPage >= 0) {
                     fetchNextLeafPage(nextLeafPage);
                     tupleIndex = 0;
+                    if (frame.getTupleCount() == 0) {
+                        continue;
+                    }
 
                     stopTupleIndex = getHighKeyIndex();
                     if (stopTupleIndex < 0)
                         return false;
+                    prefetchNextLeafPage();
                 } else {
                     return false;
                 }
@@ -122,15 +189,19 @@ public class BTreeRangeSearchCursor implements ITreeIndexCursor {
             } else
                 return false;
         } else {
-            if (tupleIndex < 0) {
+            while (tupleIndex < 0) {
                 int nextLeafPage = frame.getPrevLeaf();
                 if (nextLeafPage >= 0) {
-                    fetchNextLeafPage(nextLeafPage);
+                    fetchPrevLeafPage(nextLeafPage);
                     tupleIndex = frame.getTupleCount() - 1;
+                    if (frame.getTupleCount() == 0) {
+                        continue;
+                    }
 
                     stopTupleIndex = getLowKeyIndex();
                     if (stopTupleIndex >= frame.getTupleCount())
                         return false;
+                    prefetchNextLeafPage();
                 } else {
                     return false;
                 }
@@ -193,9 +264,70 @@ public class BTreeRangeSearchCursor implements ITreeIndexCursor {
         }
 
         page = ((BTreeCursorInitialState) initialState).getPage();
+        pageId = ((BTreeCursorInitialState) initialState).getPageId();
         frame.setPage(page);
 
-        pred = (RangePredicate) searchPred;
+        setPredicate((RangePredicate) searchPred);
+
+        if (pred.isForward()) {
+            tupleIndex = getLowKeyIndex();
+            stopTupleIndex = getHighKeyIndex();
+            tupleIndexInc = 1;
+        } else {
+            tupleIndex = getHighKeyIndex();
+            stopTupleIndex = getLowKeyIndex();
+            tupleIndexInc = -1;
+        }
+        prefetchNextLeafPage();
+    }
+
+    /**
+     * Starts a new forward search on the leaf that the cursor stopped on,
+     * without descending from the root. This is possible if the low key of
+     * the predicate is greater than the first key of the current leaf, which
+     * bounds the keys of all leaves before it, and if the range starts in the
+     * current leaf or in the next one. The latch of the current leaf is kept
+     * until the next one is latched, so no key can slip in between.
+     * 
+     * @return false if the search has to descend from the root, the cursor
+     *         must then be reset before it is used again
+     */
+    public boolean reopen(ISearchPredicate searchPred) throws HyracksDataException {
+        if (page == null) {
+            return false;
+        }
+        RangePredicate rangePred = (RangePredicate) searchPred;
+        if (!rangePred.isForward() || rangePred.getLowKey() == null || rangePred.getLowKeyComparator() == null
+                || (rangePred.getHighKey() != null && rangePred.getHighKeyComparator() == null)) {
+            return false;
+        }
+        setPredicate(rangePred);
+        if (frame.getTupleCount() == 0) {
+            return false;
+        }
+        frameTuple.resetByTupleIndex(frame, 0);
+        if (lowKeyCmp.compare(lowKey, frameTuple) <= 0) {
+            return false;
+        }
+        tupleIndexInc = 1;
+        tupleIndex = getLowKeyIndex();
+        if (tupleIndex >= frame.getTupleCount()) {
+            int nextLeafPage = frame.getNextLeaf();
+            if (nextLeafPage >= 0) {
+                fetchNextLeafPage(nextLeafPage);
+                tupleIndex = getLowKeyIndex();
+                if (tupleIndex >= frame.getTupleCount()) {
+                    return false;
+                }
+            }
+        }
+        stopTupleIndex = getHighKeyIndex();
+        prefetchNextLeafPage();
+        return true;
+    }
+
+    private void setPredicate(RangePredicate searchPred) {
+        pred = searchPred;
         lowKeyCmp = pred.getLowKeyComparator();
         highKeyCmp = pred.getHighKeyComparator();
 
@@ -216,16 +348,6 @@ public class BTreeRangeSearchCursor implements ITreeIndexCursor {
         } else {
             highKeyFtp = FindTupleNoExactMatchPolicy.LOWER_KEY;
         }
-
-        if (pred.isForward()) {
-            tupleIndex = getLowKeyIndex();
-            stopTupleIndex = getHighKeyIndex();
-            tupleIndexInc = 1;
-        } else {
-            tupleIndex = getHighKeyIndex();
-            stopTupleIndex = getLowKeyIndex();
-            tupleIndexInc = -1;
-        }
     }
 
     @Override
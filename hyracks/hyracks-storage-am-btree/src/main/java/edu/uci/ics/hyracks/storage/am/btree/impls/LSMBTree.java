@@ -0,0 +1,836 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.am.btree.impls;
+
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import edu.uci.ics.hyracks.api.dataflow.value.ITypeTraits;
+import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
+import edu.uci.ics.hyracks.api.io.FileReference;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.ArrayTupleBuilder;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.ArrayTupleReference;
+import edu.uci.ics.hyracks.dataflow.common.data.accessors.ITupleReference;
+import edu.uci.ics.hyracks.storage.am.btree.api.IBTreeLeafFrame;
+import edu.uci.ics.hyracks.storage.am.btree.exceptions.BTreeDuplicateKeyException;
+import edu.uci.ics.hyracks.storage.am.btree.exceptions.BTreeException;
+import edu.uci.ics.hyracks.storage.am.btree.exceptions.BTreeNonExistentKeyException;
+import edu.uci.ics.hyracks.storage.am.btree.exceptions.BTreeNotUpdateableException;
+import edu.uci.ics.hyracks.storage.am.btree.frames.BTreeLeafFrameType;
+import edu.uci.ics.hyracks.storage.am.btree.frames.BTreeNSMInteriorFrameFactory;
+import edu.uci.ics.hyracks.storage.am.btree.util.BTreeUtils;
+import edu.uci.ics.hyracks.storage.am.common.api.IFreePageManager;
+import edu.uci.ics.hyracks.storage.am.common.api.IIndexBulkLoadContext;
+import edu.uci.ics.hyracks.storage.am.common.api.ISearchPredicate;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndex;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexAccessor;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexCursor;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexFrameFactory;
+import edu.uci.ics.hyracks.storage.am.common.api.IndexType;
+import edu.uci.ics.hyracks.storage.am.common.api.PageAllocationException;
+import edu.uci.ics.hyracks.storage.am.common.api.TreeIndexException;
+import edu.uci.ics.hyracks.storage.am.common.frames.LIFOMetaDataFrameFactory;
+import edu.uci.ics.hyracks.storage.am.common.freepage.LinkedListFreePageManager;
+import edu.uci.ics.hyracks.storage.am.common.ophelpers.MultiComparator;
+import edu.uci.ics.hyracks.storage.am.common.tuples.TypeAwareTupleWriterFactory;
+import edu.uci.ics.hyracks.storage.common.buffercache.HeapBufferAllocator;
+import edu.uci.ics.hyracks.storage.common.buffercache.IBufferCache;
+import edu.uci.ics.hyracks.storage.common.buffercache.InMemoryBufferCache;
+import edu.uci.ics.hyracks.storage.common.file.IFileMapProvider;
+
+/**
+ * A log-structured merge BTree. Writes go to a BTree in memory, which is
+ * flushed to a new bulk-loaded BTree on disk once it has allocated its budget
+ * of pages. The BTrees on disk are never modified, a background merge combines
+ * the oldest ones into one as soon as there are mergeThreshold of them in a
+ * row. A search merges the cursors of all components, the newest version of a
+ * key wins and deleted keys are shadowed by tombstones until a merge that
+ * includes the oldest component drops them.
+ * <p>
+ * The tuples of the components carry a flag field after the fields of the
+ * index that marks tombstones. The file of the index itself stays empty, every
+ * disk component has its own file next to it, named after the index file and
+ * the range of flushes it contains. The memory component is not logged, writes
+ * that have not been flushed when the process dies are lost.
+ */
+public class LSMBTree implements ITreeIndex {
+    private static final Logger LOGGER = Logger.getLogger(LSMBTree.class.getName());
+
+    public static final int DEFAULT_MEM_PAGE_BUDGET = 1024;
+    public static final int DEFAULT_MERGE_THRESHOLD = 4;
+
+    static final byte LIVE = 0;
+    static final byte TOMBSTONE = 1;
+
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final int MAX_CACHED_ACCESSORS = 64;
+
+    private static final ITypeTraits FLAG_TYPE_TRAITS = new ITypeTraits() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public boolean isFixedLength() {
+            return true;
+        }
+
+        @Override
+        public int getFixedLength() {
+            return 1;
+        }
+    };
+
+    private final IBufferCache diskBufferCache;
+    private final IFileMapProvider diskFileMapProvider;
+    private final ITypeTraits[] typeTraits;
+    private final MultiComparator cmp;
+    private final ITreeIndexFrameFactory interiorFrameFactory;
+    private final ITreeIndexFrameFactory leafFrameFactory;
+    private final int memPageBudget;
+    private final int mergeThreshold;
+    // Writers to the memory component hold the read lock, a flush takes the write lock to replace it.
+    private final ReadWriteLock memLock = new ReentrantReadWriteLock();
+
+    // Guarded by this.
+    private File baseFile;
+    private long nextFlush;
+    private LSMBTreeComponent memComponent;
+    // Components that are flushing or on disk, newest first.
+    private final List<LSMBTreeComponent> components = new ArrayList<LSMBTreeComponent>();
+    private boolean merging;
+    private ExecutorService mergeExecutor;
+
+    public LSMBTree(IBufferCache diskBufferCache, IFileMapProvider diskFileMapProvider, ITypeTraits[] typeTraits,
+            MultiComparator cmp, BTreeLeafFrameType leafType, int memPageBudget, int mergeThreshold)
+            throws BTreeException {
+        this.diskBufferCache = diskBufferCache;
+        this.diskFileMapProvider = diskFileMapProvider;
+        this.typeTraits = typeTraits;
+        this.cmp = cmp;
+        ITypeTraits[] componentTypeTraits = new ITypeTraits[typeTraits.length + 1];
+        System.arraycopy(typeTraits, 0, componentTypeTraits, 0, typeTraits.length);
+        componentTypeTraits[typeTraits.length] = FLAG_TYPE_TRAITS;
+        TypeAwareTupleWriterFactory tupleWriterFactory = new TypeAwareTupleWriterFactory(componentTypeTraits);
+        this.interiorFrameFactory = new BTreeNSMInteriorFrameFactory(tupleWriterFactory);
+        this.leafFrameFactory = BTreeUtils.getLeafFrameFactory(tupleWriterFactory, leafType);
+        this.memPageBudget = memPageBudget;
+        this.mergeThreshold = Math.max(2, mergeThreshold);
+    }
+
+    /**
+     * Removes the disk components of an earlier index in the same file.
+     */
+    @Override
+    public synchronized void create(int fileId) throws HyracksDataException {
+        File base = diskFileMapProvider.lookupFileName(fileId).getFile();
+        for (File file : listComponentFiles(base)) {
+            if (!file.delete()) {
+                throw new HyracksDataException("Could not delete " + file + ".");
+            }
+        }
+    }
+
+    /**
+     * Opens the disk components found next to the index file and creates an
+     * empty memory component. Leftovers of interrupted flushes and merges are
+     * deleted: the temporary files, and components whose range of flushes is
+     * covered by another component.
+     */
+    @Override
+    public synchronized void open(int fileId) throws HyracksDataException {
+        if (memComponent != null) {
+            // already open, the bulk load operator opens the index again
+            return;
+        }
+        baseFile = diskFileMapProvider.lookupFileName(fileId).getFile();
+        Pattern pattern = getComponentFilePattern(baseFile);
+        List<long[]> ranges = new ArrayList<long[]>();
+        for (File file : listComponentFiles(baseFile)) {
+            Matcher m = pattern.matcher(file.getName());
+            m.matches();
+            if (m.group(3) != null) {
+                deleteFile(file);
+            } else {
+                ranges.add(new long[] { Long.parseLong(m.group(1)), Long.parseLong(m.group(2)) });
+            }
+        }
+        // newest first, a range before the ranges it covers
+        Collections.sort(ranges, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                if (a[1] != b[1]) {
+                    return a[1] > b[1] ? -1 : 1;
+                }
+                return a[0] < b[0] ? -1 : (a[0] > b[0] ? 1 : 0);
+            }
+        });
+        components.clear();
+        nextFlush = 0;
+        long minFlush = Long.MAX_VALUE;
+        for (long[] range : ranges) {
+            File file = getComponentFile(range[0], range[1], false);
+            if (range[1] >= minFlush) {
+                deleteFile(file);
+                continue;
+            }
+            components.add(openDiskComponent(file, range[0], range[1]));
+            minFlush = range[0];
+            nextFlush = Math.max(nextFlush, range[1] + 1);
+        }
+        memComponent = createMemComponent();
+        merging = false;
+        mergeExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "LSMBTree merge " + baseFile.getName());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        scheduleMerge();
+    }
+
+    /**
+     * Flushes the memory component, waits for the merges, and closes the files
+     * of the disk components.
+     */
+    @Override
+    public void close() throws HyracksDataException {
+        flush();
+        ExecutorService executor;
+        synchronized (this) {
+            executor = mergeExecutor;
+            executor.shutdown();
+        }
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            throw new HyracksDataException(e);
+        }
+        synchronized (this) {
+            for (LSMBTreeComponent component : components) {
+                component.getBTree().close();
+                diskBufferCache.closeFile(component.getFileId());
+            }
+            components.clear();
+            memComponent = null;
+        }
+    }
+
+    /**
+     * Writes the memory component to a new disk component, unless it is empty.
+     */
+    public void flush() throws HyracksDataException {
+        LSMBTreeComponent mem;
+        synchronized (this) {
+            mem = memComponent;
+        }
+        if (!mem.getBTree().isEmptyTree((IBTreeLeafFrame) leafFrameFactory.createFrame())) {
+            flush(mem);
+        }
+    }
+
+    private void flush(LSMBTreeComponent mem) throws HyracksDataException {
+        long flush;
+        memLock.writeLock().lock();
+        try {
+            synchronized (this) {
+                if (memComponent != mem) {
+                    // flushed by another thread
+                    return;
+                }
+                memComponent = createMemComponent();
+                components.add(0, mem);
+                flush = nextFlush++;
+            }
+        } finally {
+            memLock.writeLock().unlock();
+        }
+        LSMBTreeComponent disk = buildDiskComponent(Collections.singletonList(mem), flush, flush, false);
+        synchronized (this) {
+            int index = components.indexOf(mem);
+            if (disk != null) {
+                components.set(index, disk);
+            } else {
+                components.remove(index);
+            }
+        }
+        scheduleMerge();
+    }
+
+    private synchronized void scheduleMerge() {
+        if (merging || mergeExecutor == null || mergeExecutor.isShutdown()) {
+            return;
+        }
+        // the oldest disk components, up to the first one that is still flushing
+        int start = components.size();
+        while (start > 0 && components.get(start - 1).isOnDisk()) {
+            start--;
+        }
+        if (components.size() - start < mergeThreshold) {
+            return;
+        }
+        final List<LSMBTreeComponent> inputs = new ArrayList<LSMBTreeComponent>(components.subList(start,
+                components.size()));
+        merging = true;
+        mergeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    merge(inputs);
+                } catch (Exception e) {
+                    if (LOGGER.isLoggable(Level.WARNING)) {
+                        LOGGER.log(Level.WARNING, "Merge of " + baseFile + " failed.", e);
+                    }
+                    synchronized (LSMBTree.this) {
+                        merging = false;
+                    }
+                }
+            }
+        });
+    }
+
+    private void merge(List<LSMBTreeComponent> inputs) throws HyracksDataException {
+        long minFlush = inputs.get(inputs.size() - 1).getMinFlush();
+        long maxFlush = inputs.get(0).getMaxFlush();
+        // the inputs include the oldest component, nothing is left for a tombstone to shadow
+        LSMBTreeComponent merged = buildDiskComponent(inputs, minFlush, maxFlush, true);
+        synchronized (this) {
+            int index = components.indexOf(inputs.get(0));
+            components.subList(index, index + inputs.size()).clear();
+            if (merged != null) {
+                components.add(index, merged);
+            }
+            merging = false;
+            for (LSMBTreeComponent input : inputs) {
+                input.obsolete = true;
+                if (input.refCount == 0) {
+                    destroyDiskComponent(input);
+                }
+            }
+        }
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info("Merged " + inputs.size() + " components of " + baseFile + " into flushes " + minFlush
+                    + " to " + maxFlush + ".");
+        }
+        scheduleMerge();
+    }
+
+    /**
+     * Bulk loads the merged tuples of the given components, newest first, into
+     * a new disk component.
+     * 
+     * @return the component, or null if no tuple was left.
+     */
+    private LSMBTreeComponent buildDiskComponent(List<LSMBTreeComponent> inputs, long minFlush, long maxFlush,
+            boolean dropTombstones) throws HyracksDataException {
+        DiskComponentBuilder builder = new DiskComponentBuilder(minFlush, maxFlush, 1.0f);
+        LSMBTreeRangeSearchCursor cursor = new LSMBTreeRangeSearchCursor(!dropTombstones);
+        try {
+            ITreeIndexAccessor[] accessors = new ITreeIndexAccessor[inputs.size()];
+            for (int i = 0; i < accessors.length; i++) {
+                accessors[i] = inputs.get(i).getBTree().createAccessor();
+            }
+            LSMBTreeCursorInitialState initialState = new LSMBTreeCursorInitialState(this);
+            initialState.reset(inputs, accessors, false);
+            cursor.open(initialState, new RangePredicate(true, null, null, true, true, null, null));
+            try {
+                while (cursor.hasNext()) {
+                    cursor.next();
+                    builder.add(cursor.getComponentTuple());
+                }
+            } finally {
+                cursor.close();
+            }
+            return builder.end();
+        } catch (Exception e) {
+            builder.abort();
+            if (e instanceof HyracksDataException) {
+                throw (HyracksDataException) e;
+            }
+            throw new HyracksDataException(e);
+        }
+    }
+
+    synchronized List<LSMBTreeComponent> acquireComponents() {
+        List<LSMBTreeComponent> snapshot = new ArrayList<LSMBTreeComponent>(components.size() + 1);
+        snapshot.add(memComponent);
+        snapshot.addAll(components);
+        for (LSMBTreeComponent component : snapshot) {
+            component.refCount++;
+        }
+        return snapshot;
+    }
+
+    synchronized void releaseComponents(List<LSMBTreeComponent> snapshot) throws HyracksDataException {
+        for (LSMBTreeComponent component : snapshot) {
+            component.refCount--;
+            if (component.obsolete && component.refCount == 0) {
+                destroyDiskComponent(component);
+            }
+        }
+    }
+
+    private LSMBTreeComponent createMemComponent() throws HyracksDataException {
+        InMemoryBufferCache memBufferCache = new InMemoryBufferCache(new HeapBufferAllocator(), diskBufferCache
+                .getPageSize(), memPageBudget);
+        BTree btree = createBTree(memBufferCache, 0);
+        btree.create(0);
+        btree.open(0);
+        return new LSMBTreeComponent(btree, memBufferCache, 0, null, -1, -1);
+    }
+
+    private boolean isFull(LSMBTreeComponent mem) {
+        return mem.getBufferCache().getNumPages() >= memPageBudget;
+    }
+
+    private LSMBTreeComponent openDiskComponent(File file, long minFlush, long maxFlush)
+            throws HyracksDataException {
+        FileReference fileRef = new FileReference(file);
+        if (!diskFileMapProvider.isMapped(fileRef)) {
+            diskBufferCache.createFile(fileRef);
+        }
+        int fileId = diskFileMapProvider.lookupFileId(fileRef);
+        diskBufferCache.openFile(fileId);
+        BTree btree = createBTree(diskBufferCache, fileId);
+        btree.open(fileId);
+        return new LSMBTreeComponent(btree, diskBufferCache, fileId, file, minFlush, maxFlush);
+    }
+
+    private void destroyDiskComponent(LSMBTreeComponent component) throws HyracksDataException {
+        component.getBTree().close();
+        diskBufferCache.closeFile(component.getFileId());
+        diskBufferCache.deleteFile(component.getFileId(), false);
+        deleteFile(component.getFile());
+    }
+
+    private BTree createBTree(IBufferCache bufferCache, int fileId) {
+        IFreePageManager freePageManager = new LinkedListFreePageManager(bufferCache, fileId, 0,
+                new LIFOMetaDataFrameFactory());
+        return new BTree(bufferCache, typeTraits.length + 1, cmp, freePageManager, interiorFrameFactory,
+                leafFrameFactory);
+    }
+
+    private File getComponentFile(long minFlush, long maxFlush, boolean tmp) {
+        return new File(baseFile.getPath() + "_" + minFlush + "_" + maxFlush + (tmp ? TMP_SUFFIX : ""));
+    }
+
+    private static Pattern getComponentFilePattern(File base) {
+        return Pattern.compile(Pattern.quote(base.getName()) + "_(\\d+)_(\\d+)(" + Pattern.quote(TMP_SUFFIX)
+                + ")?");
+    }
+
+    private static List<File> listComponentFiles(File base) {
+        List<File> files = new ArrayList<File>();
+        File[] siblings = base.getAbsoluteFile().getParentFile().listFiles();
+        if (siblings == null) {
+            return files;
+        }
+        Pattern pattern = getComponentFilePattern(base);
+        for (File file : siblings) {
+            if (pattern.matcher(file.getName()).matches()) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    private static void deleteFile(File file) throws HyracksDataException {
+        if (file.exists() && !file.delete()) {
+            throw new HyracksDataException("Could not delete " + file + ".");
+        }
+    }
+
+    /**
+     * Bulk loads a new disk component into a temporary file, which gets its
+     * final name once it is complete.
+     */
+    private class DiskComponentBuilder {
+        private final long minFlush;
+        private final long maxFlush;
+        private final File tmpFile;
+        private final int fileId;
+        private final BTree btree;
+        private final IIndexBulkLoadContext bulkLoadCtx;
+        private long tupleCount;
+        private boolean fileOpen;
+
+        public DiskComponentBuilder(long minFlush, long maxFlush, float fillFactor) throws HyracksDataException {
+            this.minFlush = minFlush;
+            this.maxFlush = maxFlush;
+            this.tmpFile = getComponentFile(minFlush, maxFlush, true);
+            FileReference fileRef = new FileReference(tmpFile);
+            diskBufferCache.createFile(fileRef);
+            this.fileId = diskFileMapProvider.lookupFileId(fileRef);
+            diskBufferCache.openFile(fileId);
+            fileOpen = true;
+            this.btree = createBTree(diskBufferCache, fileId);
+            try {
+                btree.create(fileId);
+                btree.open(fileId);
+                this.bulkLoadCtx = btree.beginBulkLoad(fillFactor);
+            } catch (Exception e) {
+                abort();
+                if (e instanceof HyracksDataException) {
+                    throw (HyracksDataException) e;
+                }
+                throw new HyracksDataException(e);
+            }
+        }
+
+        public void add(ITupleReference componentTuple) throws HyracksDataException, PageAllocationException {
+            btree.bulkLoadAddTuple(componentTuple, bulkLoadCtx);
+            tupleCount++;
+        }
+
+        /**
+         * Completes the component.
+         * 
+         * @return the opened component, or null if it is empty.
+         */
+        public LSMBTreeComponent end() throws HyracksDataException {
+            btree.endBulkLoad(bulkLoadCtx);
+            btree.close();
+            closeFile();
+            if (tupleCount == 0) {
+                deleteFile(tmpFile);
+                return null;
+            }
+            File file = getComponentFile(minFlush, maxFlush, false);
+            if (!tmpFile.renameTo(file)) {
+                throw new HyracksDataException("Could not rename " + tmpFile + " to " + file + ".");
+            }
+            return openDiskComponent(file, minFlush, maxFlush);
+        }
+
+        /**
+         * Releases the pages of the bulk load and deletes the temporary file.
+         * Called while the failure that stopped the build is thrown, so a
+         * failure here is only logged and does not replace it.
+         */
+        public void abort() {
+            try {
+                if (bulkLoadCtx != null) {
+                    btree.abortBulkLoad(bulkLoadCtx);
+                }
+                closeFile();
+                deleteFile(tmpFile);
+            } catch (Exception e) {
+                if (LOGGER.isLoggable(Level.WARNING)) {
+                    LOGGER.log(Level.WARNING, "Could not delete " + tmpFile + ".", e);
+                }
+            }
+        }
+
+        private void closeFile() throws HyracksDataException {
+            if (fileOpen) {
+                fileOpen = false;
+                diskBufferCache.closeFile(fileId);
+                // writes the dirty pages and unmaps the file before it is renamed
+                diskBufferCache.deleteFile(fileId, true);
+            }
+        }
+    }
+
+    @Override
+    public IIndexBulkLoadContext beginBulkLoad(float fillFactor) throws TreeIndexException, HyracksDataException,
+            PageAllocationException {
+        long flush;
+        synchronized (this) {
+            if (!components.isEmpty()
+                    || !memComponent.getBTree().isEmptyTree((IBTreeLeafFrame) leafFrameFactory.createFrame())) {
+                throw new BTreeException("Trying to Bulk-load a non-empty LSM BTree.");
+            }
+            flush = nextFlush++;
+        }
+        return new BulkLoadContext(new DiskComponentBuilder(flush, flush, fillFactor));
+    }
+
+    @Override
+    public void bulkLoadAddTuple(ITupleReference tuple, IIndexBulkLoadContext ictx) throws HyracksDataException,
+            PageAllocationException {
+        BulkLoadContext ctx = (BulkLoadContext) ictx;
+        ctx.builder.add(ctx.tupleBuilder.build(tuple, LIVE));
+    }
+
+    @Override
+    public void endBulkLoad(IIndexBulkLoadContext ictx) throws HyracksDataException {
+        LSMBTreeComponent disk = ((BulkLoadContext) ictx).builder.end();
+        if (disk != null) {
+            synchronized (this) {
+                components.add(disk);
+            }
+        }
+    }
+
+    private class BulkLoadContext implements IIndexBulkLoadContext {
+        private final DiskComponentBuilder builder;
+        private final ComponentTupleBuilder tupleBuilder = new ComponentTupleBuilder();
+
+        public BulkLoadContext(DiskComponentBuilder builder) {
+            this.builder = builder;
+        }
+    }
+
+    /**
+     * Appends the flag field to the tuples of the index. A delete may only
+     * give the key fields, the tombstone gets empty values for the rest.
+     */
+    private class ComponentTupleBuilder {
+        private final ArrayTupleBuilder tb = new ArrayTupleBuilder(typeTraits.length + 1);
+        private final ArrayTupleReference tuple = new ArrayTupleReference();
+
+        public ITupleReference build(ITupleReference indexTuple, byte flag) throws HyracksDataException {
+            tb.reset();
+            DataOutput dos = tb.getDataOutput();
+            try {
+                for (int i = 0; i < typeTraits.length; i++) {
+                    if (i < indexTuple.getFieldCount()) {
+                        dos.write(indexTuple.getFieldData(i), indexTuple.getFieldStart(i), indexTuple
+                                .getFieldLength(i));
+                    } else if (typeTraits[i].isFixedLength()) {
+                        for (int j = 0; j < typeTraits[i].getFixedLength(); j++) {
+                            dos.writeByte(0);
+                        }
+                    }
+                    tb.addFieldEndOffset();
+                }
+                dos.writeByte(flag);
+                tb.addFieldEndOffset();
+            } catch (IOException e) {
+                throw new HyracksDataException(e);
+            }
+            tuple.reset(tb.getFieldEndOffsets(), tb.getByteArray());
+            return tuple;
+        }
+    }
+
+    /**
+     * Gets the leaf frame factory of the components, whose tuples carry the
+     * flag field.
+     */
+    @Override
+    public ITreeIndexFrameFactory getLeafFrameFactory() {
+        return leafFrameFactory;
+    }
+
+    @Override
+    public ITreeIndexFrameFactory getInteriorFrameFactory() {
+        return interiorFrameFactory;
+    }
+
+    /**
+     * The components have their own free page managers.
+     */
+    @Override
+    public IFreePageManager getFreePageManager() {
+        return null;
+    }
+
+    @Override
+    public int getFieldCount() {
+        return typeTraits.length;
+    }
+
+    @Override
+    public int getRootPageId() {
+        return -1;
+    }
+
+    @Override
+    public IndexType getIndexType() {
+        return IndexType.BTREE;
+    }
+
+    public MultiComparator getMultiComparator() {
+        return cmp;
+    }
+
+    /**
+     * Gets the number of components that are flushing or on disk.
+     */
+    public synchronized int getNumDiskComponents() {
+        return components.size();
+    }
+
+    @Override
+    public ITreeIndexAccessor createAccessor() {
+        return new LSMBTreeAccessor();
+    }
+
+    private class LSMBTreeAccessor implements ITreeIndexAccessor {
+        private final Map<LSMBTreeComponent, ITreeIndexAccessor> accessors = new IdentityHashMap<LSMBTreeComponent, ITreeIndexAccessor>();
+        private final ComponentTupleBuilder tupleBuilder = new ComponentTupleBuilder();
+        private final BTreeRangeSearchCursor lookupCursor = new BTreeRangeSearchCursor(
+                (IBTreeLeafFrame) leafFrameFactory.createFrame(), false);
+        private final RangePredicate lookupPred = new RangePredicate(true, null, null, true, true, cmp, cmp);
+        private final LSMBTreeCursorInitialState initialState = new LSMBTreeCursorInitialState(LSMBTree.this);
+
+        @Override
+        public void insert(ITupleReference tuple) throws HyracksDataException, TreeIndexException,
+                PageAllocationException {
+            modify(tuple, LIVE, true);
+        }
+
+        @Override
+        public void update(ITupleReference tuple) throws HyracksDataException, TreeIndexException,
+                PageAllocationException {
+            if (cmp.getKeyFieldCount() == typeTraits.length) {
+                throw new BTreeNotUpdateableException("Cannot perform updates when the entire tuple forms the key.");
+            }
+            modify(tuple, LIVE, false);
+        }
+
+        @Override
+        public void delete(ITupleReference tuple) throws HyracksDataException, TreeIndexException,
+                PageAllocationException {
+            modify(tuple, TOMBSTONE, false);
+        }
+
+        /**
+         * Writes a new version of the key to the memory component, after
+         * checking the newest version like the BTree checks its single one.
+         */
+        private void modify(ITupleReference tuple, byte flag, boolean insert) throws HyracksDataException,
+                TreeIndexException, PageAllocationException {
+            LSMBTreeComponent mem;
+            memLock.readLock().lock();
+            try {
+                List<LSMBTreeComponent> snapshot = acquireComponents();
+                mem = snapshot.get(0);
+                try {
+                    boolean exists = false;
+                    for (LSMBTreeComponent component : snapshot) {
+                        byte version = lookup(component, tuple);
+                        if (version >= 0) {
+                            exists = version == LIVE;
+                            break;
+                        }
+                    }
+                    if (insert && exists) {
+                        throw new BTreeDuplicateKeyException("Trying to insert duplicate key into LSM BTree.");
+                    }
+                    if (!insert && !exists) {
+                        throw new BTreeNonExistentKeyException("Trying to "
+                                + (flag == TOMBSTONE ? "delete" : "update")
+                                + " a tuple with a nonexistent key in LSM BTree.");
+                    }
+                } finally {
+                    releaseComponents(snapshot);
+                }
+                ITupleReference componentTuple = tupleBuilder.build(tuple, flag);
+                ITreeIndexAccessor memAccessor = getAccessor(mem);
+                try {
+                    memAccessor.insert(componentTuple);
+                } catch (BTreeDuplicateKeyException e) {
+                    // the memory component has an older version, which may
+                    // also have been inserted by a concurrent writer
+                    if (insert && lookup(mem, tuple) == LIVE) {
+                        throw new BTreeDuplicateKeyException("Trying to insert duplicate key into LSM BTree.");
+                    }
+                    memAccessor.update(componentTuple);
+                }
+            } finally {
+                memLock.readLock().unlock();
+            }
+            if (isFull(mem)) {
+                flush(mem);
+            }
+        }
+
+        /**
+         * Gets the flag of the version of the key in the component, or -1 if
+         * it has none.
+         */
+        private byte lookup(LSMBTreeComponent component, ITupleReference tuple) throws HyracksDataException,
+                TreeIndexException, PageAllocationException {
+            lookupPred.setLowKey(tuple, true);
+            lookupPred.setHighKey(tuple, true);
+            lookupCursor.reset();
+            getAccessor(component).search(lookupCursor, lookupPred);
+            try {
+                if (!lookupCursor.hasNext()) {
+                    return -1;
+                }
+                ITupleReference componentTuple = lookupCursor.getTuple();
+                int flagField = typeTraits.length;
+                return componentTuple.getFieldData(flagField)[componentTuple.getFieldStart(flagField)];
+            } catch (HyracksDataException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new HyracksDataException(e);
+            } finally {
+                lookupCursor.reset();
+            }
+        }
+
+        private ITreeIndexAccessor getAccessor(LSMBTreeComponent component) {
+            ITreeIndexAccessor accessor = accessors.get(component);
+            if (accessor == null) {
+                if (accessors.size() >= MAX_CACHED_ACCESSORS) {
+                    accessors.clear();
+                }
+                accessor = component.getBTree().createAccessor();
+                accessors.put(component, accessor);
+            }
+            return accessor;
+        }
+
+        @Override
+        public void search(ITreeIndexCursor cursor, ISearchPredicate searchPred) throws HyracksDataException,
+                TreeIndexException, PageAllocationException {
+            List<LSMBTreeComponent> snapshot = acquireComponents();
+            ITreeIndexAccessor[] componentAccessors = new ITreeIndexAccessor[snapshot.size()];
+            for (int i = 0; i < componentAccessors.length; i++) {
+                componentAccessors[i] = getAccessor(snapshot.get(i));
+            }
+            // the cursor releases the snapshot when it is closed, or if it fails to open
+            initialState.reset(snapshot, componentAccessors, true);
+            cursor.open(initialState, searchPred);
+        }
+
+        /**
+         * Scans the index in key order, the components have no common disk
+         * order.
+         */
+        @Override
+        public void diskOrderScan(ITreeIndexCursor cursor) throws HyracksDataException {
+            try {
+                search(cursor, new RangePredicate(true, null, null, true, true, null, null));
+            } catch (TreeIndexException e) {
+                throw new HyracksDataException(e);
+            } catch (PageAllocationException e) {
+                throw new HyracksDataException(e);
+            }
+        }
+    }
+}
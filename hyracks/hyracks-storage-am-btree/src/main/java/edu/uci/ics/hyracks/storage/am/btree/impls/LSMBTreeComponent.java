@@ -0,0 +1,79 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.am.btree.impls;
+
+import java.io.File;
+
+import edu.uci.ics.hyracks.storage.common.buffercache.IBufferCache;
+
+/**
+ * One of the BTrees of an LSMBTree, either the one in memory or an immutable
+ * one on disk. A component contains the writes of a range of flushes of the
+ * LSMBTree, numbered from 0, which also name its file.
+ */
+public class LSMBTreeComponent {
+    private final BTree btree;
+    private final IBufferCache bufferCache;
+    private final int fileId;
+    private final File file;
+    private final long minFlush;
+    private final long maxFlush;
+
+    // Guarded by the LSMBTree.
+    int refCount;
+    boolean obsolete;
+
+    public LSMBTreeComponent(BTree btree, IBufferCache bufferCache, int fileId, File file, long minFlush,
+            long maxFlush) {
+        this.btree = btree;
+        this.bufferCache = bufferCache;
+        this.fileId = fileId;
+        this.file = file;
+        this.minFlush = minFlush;
+        this.maxFlush = maxFlush;
+    }
+
+    public BTree getBTree() {
+        return btree;
+    }
+
+    public IBufferCache getBufferCache() {
+        return bufferCache;
+    }
+
+    public int getFileId() {
+        return fileId;
+    }
+
+    /**
+     * Gets the file of the component, or null if the component is in memory.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    public boolean isOnDisk() {
+        return file != null;
+    }
+
+    public long getMinFlush() {
+        return minFlush;
+    }
+
+    public long getMaxFlush() {
+        return maxFlush;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.am.btree.impls;
+
+import java.util.List;
+
+import edu.uci.ics.hyracks.storage.am.common.api.ICursorInitialState;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexAccessor;
+import edu.uci.ics.hyracks.storage.common.buffercache.ICachedPage;
+
+public class LSMBTreeCursorInitialState implements ICursorInitialState {
+    private final LSMBTree lsmBTree;
+    private List<LSMBTreeComponent> components;
+    private ITreeIndexAccessor[] accessors;
+    private boolean releaseComponents;
+
+    public LSMBTreeCursorInitialState(LSMBTree lsmBTree) {
+        this.lsmBTree = lsmBTree;
+    }
+
+    /**
+     * Sets the components to search, newest first, and the accessors to search
+     * them with. If releaseComponents is set, the cursor releases the
+     * components to the LSMBTree when it is closed.
+     */
+    public void reset(List<LSMBTreeComponent> components, ITreeIndexAccessor[] accessors, boolean releaseComponents) {
+        this.components = components;
+        this.accessors = accessors;
+        this.releaseComponents = releaseComponents;
+    }
+
+    public LSMBTree getLSMBTree() {
+        return lsmBTree;
+    }
+
+    public List<LSMBTreeComponent> getComponents() {
+        return components;
+    }
+
+    public ITreeIndexAccessor[] getAccessors() {
+        return accessors;
+    }
+
+    public boolean getReleaseComponents() {
+        return releaseComponents;
+    }
+
+    @Override
+    public ICachedPage getPage() {
+        return null;
+    }
+
+    @Override
+    public void setPage(ICachedPage page) {
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.am.btree.impls;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
+import edu.uci.ics.hyracks.dataflow.common.data.accessors.ITupleReference;
+import edu.uci.ics.hyracks.storage.am.btree.api.IBTreeLeafFrame;
+import edu.uci.ics.hyracks.storage.am.common.api.ICursorInitialState;
+import edu.uci.ics.hyracks.storage.am.common.api.ISearchPredicate;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexAccessor;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexCursor;
+import edu.uci.ics.hyracks.storage.am.common.ophelpers.MultiComparator;
+import edu.uci.ics.hyracks.storage.common.buffercache.IBufferCache;
+import edu.uci.ics.hyracks.storage.common.buffercache.ICachedPage;
+
+/**
+ * Merges range search cursors over the components of an LSMBTree. The cursors
+ * are kept in a heap on their current keys, ties go to the newest component,
+ * whose version of the key shadows the older ones. Tombstones are skipped
+ * unless the cursor feeds a flush or merge, which must keep them.
+ */
+public class LSMBTreeRangeSearchCursor implements ITreeIndexCursor {
+    private final boolean includeTombstones;
+    private final ProjectedTupleReference tuple = new ProjectedTupleReference();
+    private final PriorityQueue<ComponentCursor> queue = new PriorityQueue<ComponentCursor>(16,
+            new ComponentCursorComparator());
+
+    private ComponentCursor[] componentCursors = new ComponentCursor[0];
+    private int numComponents;
+    private LSMBTree lsmBTree;
+    private List<LSMBTreeComponent> components;
+    private boolean releaseComponents;
+    private MultiComparator cmp;
+    private boolean forward;
+    private int flagField;
+    // The cursor of the tuple returned by the last call to hasNext, it is moved past it by the next call.
+    private ComponentCursor current;
+    private boolean hasNext;
+
+    public LSMBTreeRangeSearchCursor() {
+        this(false);
+    }
+
+    public LSMBTreeRangeSearchCursor(boolean includeTombstones) {
+        this.includeTombstones = includeTombstones;
+    }
+
+    @Override
+    public void open(ICursorInitialState initialState, ISearchPredicate searchPred) throws HyracksDataException {
+        LSMBTreeCursorInitialState lsmInitialState = (LSMBTreeCursorInitialState) initialState;
+        RangePredicate pred = (RangePredicate) searchPred;
+        lsmBTree = lsmInitialState.getLSMBTree();
+        components = lsmInitialState.getComponents();
+        releaseComponents = lsmInitialState.getReleaseComponents();
+        cmp = lsmBTree.getMultiComparator();
+        forward = pred.isForward();
+        flagField = lsmBTree.getFieldCount();
+        tuple.setFieldCount(flagField);
+        numComponents = components.size();
+        if (componentCursors.length < numComponents) {
+            ComponentCursor[] newCursors = new ComponentCursor[numComponents];
+            System.arraycopy(componentCursors, 0, newCursors, 0, componentCursors.length);
+            for (int i = componentCursors.length; i < numComponents; i++) {
+                newCursors[i] = new ComponentCursor(new BTreeRangeSearchCursor((IBTreeLeafFrame) lsmBTree
+                        .getLeafFrameFactory().createFrame(), false));
+            }
+            componentCursors = newCursors;
+        }
+        ITreeIndexAccessor[] accessors = lsmInitialState.getAccessors();
+        try {
+            for (int i = 0; i < numComponents; i++) {
+                ComponentCursor componentCursor = componentCursors[i];
+                componentCursor.index = i;
+                componentCursor.cursor.reset();
+                accessors[i].search(componentCursor.cursor, pred);
+                if (componentCursor.cursor.hasNext()) {
+                    queue.add(componentCursor);
+                }
+            }
+        } catch (Exception e) {
+            reset();
+            if (e instanceof HyracksDataException) {
+                throw (HyracksDataException) e;
+            }
+            throw new HyracksDataException(e);
+        }
+    }
+
+    @Override
+    public boolean hasNext() throws Exception {
+        if (hasNext) {
+            return true;
+        }
+        if (current != null) {
+            advance(current);
+            current = null;
+        }
+        while (!queue.isEmpty()) {
+            ComponentCursor top = queue.poll();
+            ITupleReference topTuple = top.cursor.getTuple();
+            while (!queue.isEmpty() && cmp.compare(queue.peek().cursor.getTuple(), topTuple) == 0) {
+                advance(queue.poll());
+            }
+            if (!includeTombstones && isTombstone(topTuple)) {
+                advance(top);
+                continue;
+            }
+            current = top;
+            tuple.reset(topTuple);
+            hasNext = true;
+            return true;
+        }
+        return false;
+    }
+
+    private void advance(ComponentCursor componentCursor) throws Exception {
+        componentCursor.cursor.next();
+        if (componentCursor.cursor.hasNext()) {
+            queue.add(componentCursor);
+        }
+    }
+
+    private boolean isTombstone(ITupleReference componentTuple) {
+        return componentTuple.getFieldData(flagField)[componentTuple.getFieldStart(flagField)] == LSMBTree.TOMBSTONE;
+    }
+
+    @Override
+    public void next() throws Exception {
+        hasNext = false;
+    }
+
+    /**
+     * Gets the current tuple without the fields of the index.
+     */
+    @Override
+    public ITupleReference getTuple() {
+        return tuple;
+    }
+
+    /**
+     * Gets the current tuple as it is stored in its component, with the flag
+     * that marks tombstones.
+     */
+    public ITupleReference getComponentTuple() {
+        return current.cursor.getTuple();
+    }
+
+    @Override
+    public void close() throws Exception {
+        try {
+            for (int i = 0; i < numComponents; i++) {
+                componentCursors[i].cursor.close();
+            }
+        } finally {
+            queue.clear();
+            current = null;
+            hasNext = false;
+            numComponents = 0;
+            if (components != null && releaseComponents) {
+                lsmBTree.releaseComponents(components);
+            }
+            components = null;
+        }
+    }
+
+    @Override
+    public void reset() {
+        try {
+            close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public ICachedPage getPage() {
+        return null;
+    }
+
+    @Override
+    public void setBufferCache(IBufferCache bufferCache) {
+    }
+
+    @Override
+    public void setFileId(int fileId) {
+    }
+
+    @Override
+    public boolean exclusiveLatchNodes() {
+        return false;
+    }
+
+    private static class ComponentCursor {
+        private final BTreeRangeSearchCursor cursor;
+        private int index;
+
+        public ComponentCursor(BTreeRangeSearchCursor cursor) {
+            this.cursor = cursor;
+        }
+    }
+
+    private class ComponentCursorComparator implements Comparator<ComponentCursor> {
+        @Override
+        public int compare(ComponentCursor a, ComponentCursor b) {
+            int c = cmp.compare(a.cursor.getTuple(), b.cursor.getTuple());
+            if (c != 0) {
+                return forward ? c : -c;
+            }
+            return a.index - b.index;
+        }
+    }
+
+    private static class ProjectedTupleReference implements ITupleReference {
+        private ITupleReference tuple;
+        private int fieldCount;
+
+        public void setFieldCount(int fieldCount) {
+            this.fieldCount = fieldCount;
+        }
+
+        public void reset(ITupleReference tuple) {
+            this.tuple = tuple;
+        }
+
+        @Override
+        public int getFieldCount() {
+            return fieldCount;
+        }
+
+        @Override
+        public byte[] getFieldData(int fIdx) {
+            return tuple.getFieldData(fIdx);
+        }
+
+        @Override
+        public int getFieldStart(int fIdx) {
+            return tuple.getFieldStart(fIdx);
+        }
+
+        @Override
+        public int getFieldLength(int fIdx) {
+            return tuple.getFieldLength(fIdx);
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package edu.uci.ics.hyracks.storage.am.btree.util;
 
+import java.nio.ByteBuffer;
+
 import edu.uci.ics.hyracks.api.dataflow.value.IBinaryComparator;
+import edu.uci.ics.hyracks.api.dataflow.value.IBinaryComparatorFactory;
 import edu.uci.ics.hyracks.api.dataflow.value.ITypeTraits;
 import edu.uci.ics.hyracks.dataflow.common.data.accessors.ITupleReference;
 import edu.uci.ics.hyracks.storage.am.btree.exceptions.BTreeException;
@@ -12,6 +15,7 @@ import edu.uci.ics.hyracks.storage.am.btree.impls.BTree;
 import edu.uci.ics.hyracks.storage.am.common.api.IFreePageManager;
 import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexFrameFactory;
 import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexMetaDataFrameFactory;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexTupleWriter;
 import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexTupleWriterFactory;
 import edu.uci.ics.hyracks.storage.am.common.frames.LIFOMetaDataFrameFactory;
 import edu.uci.ics.hyracks.storage.am.common.freepage.LinkedListFreePageManager;
@@ -31,6 +35,21 @@ public class BTreeUtils {
         return btree;
     }
     
+    /**
+     * Creates a BTree that gives every accessor its own comparators, for use
+     * by concurrent threads.
+     */
+    public static BTree createBTree(IBufferCache bufferCache, int btreeFileId, ITypeTraits[] typeTraits,
+            IBinaryComparatorFactory[] cmpFactories, BTreeLeafFrameType leafType) throws BTreeException {
+        TypeAwareTupleWriterFactory tupleWriterFactory = new TypeAwareTupleWriterFactory(typeTraits);
+        ITreeIndexFrameFactory leafFrameFactory = getLeafFrameFactory(tupleWriterFactory, leafType);
+        ITreeIndexFrameFactory interiorFrameFactory = new BTreeNSMInteriorFrameFactory(tupleWriterFactory);
+        ITreeIndexMetaDataFrameFactory metaFrameFactory = new LIFOMetaDataFrameFactory();
+        IFreePageManager freePageManager = new LinkedListFreePageManager(bufferCache, btreeFileId, 0, metaFrameFactory);
+        return new BTree(bufferCache, typeTraits.length, cmpFactories, freePageManager, interiorFrameFactory,
+                leafFrameFactory);
+    }
+
     public static MultiComparator getSearchMultiComparator(MultiComparator btreeCmp, ITupleReference searchKey) {
         if (searchKey == null) {
         	return btreeCmp;
@@ -58,4 +77,37 @@ public class BTreeUtils {
             }
         }
     }
+    
+    /**
+     * Gets the number of key fields a separator between leftTuple and the
+     * next greater rightTuple needs: the fields up to and including the
+     * first one in which they differ. Comparators are opaque, so separators
+     * are only shortened by whole fields.
+     */
+    public static int getSeparatorFieldCount(MultiComparator cmp, ITupleReference leftTuple,
+            ITupleReference rightTuple) {
+        int keyFieldCount = cmp.getKeyFieldCount();
+        for (int i = 0; i < keyFieldCount - 1; i++) {
+            if (cmp.fieldRangeCompare(leftTuple, rightTuple, i, 1) != 0) {
+                return i + 1;
+            }
+        }
+        return keyFieldCount;
+    }
+    
+    public static int getKeyBytesRequired(ITreeIndexTupleWriter tupleWriter, ITupleReference key, int keyFieldCount) {
+        return tupleWriter.bytesRequired(key, 0, Math.min(key.getFieldCount(), keyFieldCount));
+    }
+    
+    /**
+     * Writes the key fields of the given tuple, keeping the truncation of a
+     * separator that has fewer than keyFieldCount fields.
+     */
+    public static int writeKey(ITreeIndexTupleWriter tupleWriter, ITupleReference key, int keyFieldCount,
+            ByteBuffer targetBuf, int targetOff) {
+        if (key.getFieldCount() < keyFieldCount) {
+            return tupleWriter.writeTruncatedTuple(key, key.getFieldCount(), targetBuf, targetOff);
+        }
+        return tupleWriter.writeTupleFields(key, 0, keyFieldCount, targetBuf, targetOff);
+    }
 }
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.am.common.api;
+
+import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
+
+/**
+ * A tree index whose bulk load keeps a window of the appended tuples in
+ * memory, to reorder them before they are packed into pages. The bulk load
+ * operator reserves the window from the memory budget of its task.
+ */
+public interface IBufferedBulkLoadIndex extends ITreeIndex {
+    /**
+     * @return The size in bytes of the window that beginBulkLoad(float) uses.
+     *         A bulk load gains nothing from a larger window.
+     */
+    public int getBulkLoadWindowSize();
+
+    /**
+     * Prepares the index for bulk loading with a window of the given size.
+     *
+     * @param fillFactor
+     *            Desired fill factor in [0, 1.0].
+     * @param windowSize
+     *            Size of the window in bytes.
+     * @throws HyracksDataException
+     *             If the BufferCache throws while un/pinning or un/latching.
+     * @throws TreeIndexException
+     *             If the tree is not empty.
+     * @throws PageAllocationException
+     * @returns A new context for bulk loading, required for appending tuples.
+     */
+    public IIndexBulkLoadContext beginBulkLoad(float fillFactor, int windowSize) throws TreeIndexException,
+            HyracksDataException, PageAllocationException;
+}
@@ -32,6 +32,12 @@ public interface ITreeIndexTupleWriter {
 
     public int bytesRequired(ITupleReference tuple, int startField, int numFields);
 
+    // write the first numFields fields of the tuple, and mark it as a tuple
+    // whose other fields were truncated, a tuple reference that expects more
+    // fields reads it as a tuple of numFields fields
+    // the written tuple needs bytesRequired(tuple, 0, numFields) bytes
+    public int writeTruncatedTuple(ITupleReference tuple, int numFields, ByteBuffer targetBuf, int targetOff);
+
     // return a tuplereference instance that can read the tuple written by this
     // writer
     // the main idea is that the format of the written tuple may not be the same
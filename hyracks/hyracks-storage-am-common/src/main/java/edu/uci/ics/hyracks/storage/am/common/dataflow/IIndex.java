@@ -37,11 +37,17 @@ public interface IIndex {
      * 
      * @param indexFileId
      *            The file id backing this index.
+     * @throws HyracksDataException
+     *             If the index keeps state outside of the buffer cache that
+     *             cannot be read.
      */
-    public void open(int indexFileId);
+    public void open(int indexFileId) throws HyracksDataException;
     
     /**
      * Closes the index.
+     * 
+     * @throws HyracksDataException
+     *             If the index cannot write back state it keeps in memory.
      */
-    public void close();
+    public void close() throws HyracksDataException;
 }
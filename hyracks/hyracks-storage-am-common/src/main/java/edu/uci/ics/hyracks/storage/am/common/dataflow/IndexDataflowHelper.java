@@ -26,6 +26,7 @@ public abstract class IndexDataflowHelper {
     protected IIndex index;
     protected int indexFileId = -1;
     protected int partition;
+    private boolean isUser;
     
     protected final IIndexOperatorDescriptor opDesc;
     protected final IHyracksTaskContext ctx;
@@ -70,26 +71,45 @@ public abstract class IndexDataflowHelper {
         synchronized (indexRegistry) {
             // Check if the index has already been registered.
             index = indexRegistry.get(indexFileId);
-            if (index != null) {
-                return;
-            }
-            index = createIndexInstance();
-            if (createIfNotExists) {
-                index.create(indexFileId);                
+            if (index == null) {
+                index = createIndexInstance();
+                if (createIfNotExists) {
+                    index.create(indexFileId);
+                }
+                index.open(indexFileId);
+                indexRegistry.register(indexFileId, index);
             }
-            index.open(indexFileId);
-            indexRegistry.register(indexFileId, index);
+            indexRegistry.addUser(indexFileId);
+            isUser = true;
         }
     }
 
     public abstract IIndex createIndexInstance() throws HyracksDataException;
 
+    /**
+     * Tells whether the index is closed and unregistered when its last user
+     * calls deinit(). Otherwise the index stays open for the next job.
+     */
+    protected boolean closeIndexOnLastUser() {
+        return false;
+    }
+
     public FileReference getFilereference() {
         IFileSplitProvider fileSplitProvider = opDesc.getFileSplitProvider();
         return fileSplitProvider.getFileSplits()[partition].getLocalFile();
     }
     
     public void deinit() throws HyracksDataException {
+        if (isUser) {
+            isUser = false;
+            IndexRegistry<IIndex> indexRegistry = opDesc.getIndexRegistryProvider().getRegistry(ctx);
+            synchronized (indexRegistry) {
+                if (indexRegistry.removeUser(indexFileId) == 0 && closeIndexOnLastUser()) {
+                    indexRegistry.unregister(indexFileId);
+                    index.close();
+                }
+            }
+        }
         if (indexFileId != -1) {
             IBufferCache bufferCache = opDesc.getStorageManager().getBufferCache(ctx);
             bufferCache.closeFile(indexFileId);
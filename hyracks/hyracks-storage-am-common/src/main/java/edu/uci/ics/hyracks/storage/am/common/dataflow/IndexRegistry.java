@@ -20,6 +20,7 @@ import java.util.HashMap;
 public class IndexRegistry<IndexType> {
 
 	private HashMap<Integer, IndexType> map = new HashMap<Integer, IndexType>();
+	private HashMap<Integer, Integer> userCounts = new HashMap<Integer, Integer>();
 
 	public IndexType get(int fileId) {
 		return map.get(fileId);
@@ -36,6 +37,29 @@ public class IndexRegistry<IndexType> {
 		}
 	}
 
+	/**
+	 * Counts a user of the registered index.
+	 */
+	public void addUser(int fileId) {
+		Integer count = userCounts.get(fileId);
+		userCounts.put(fileId, count == null ? 1 : count + 1);
+	}
+
+	/**
+	 * Removes a user of the registered index.
+	 * 
+	 * @return the number of users left.
+	 */
+	public int removeUser(int fileId) {
+		Integer count = userCounts.get(fileId);
+		if (count == null || count <= 1) {
+			userCounts.remove(fileId);
+			return 0;
+		}
+		userCounts.put(fileId, count - 1);
+		return count - 1;
+	}
+
 	public int size() {
 		return map.size();
 	}
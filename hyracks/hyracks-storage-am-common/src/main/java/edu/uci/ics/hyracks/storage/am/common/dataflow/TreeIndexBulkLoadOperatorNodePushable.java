@@ -22,6 +22,7 @@ import edu.uci.ics.hyracks.api.dataflow.value.RecordDescriptor;
 import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
 import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAccessor;
 import edu.uci.ics.hyracks.dataflow.std.base.AbstractUnaryInputSinkOperatorNodePushable;
+import edu.uci.ics.hyracks.storage.am.common.api.IBufferedBulkLoadIndex;
 import edu.uci.ics.hyracks.storage.am.common.api.IIndexBulkLoadContext;
 import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndex;
 import edu.uci.ics.hyracks.storage.am.common.api.PageAllocationException;
@@ -32,6 +33,8 @@ public class TreeIndexBulkLoadOperatorNodePushable extends AbstractUnaryInputSin
     private FrameTupleAccessor accessor;
     private IIndexBulkLoadContext bulkLoadCtx;
     private ITreeIndex treeIndex;
+    // frames reserved from the task's budget for the bulk load window
+    private int reservedFrames;
 
     private IRecordDescriptorProvider recordDescProvider;
 
@@ -56,14 +59,34 @@ public class TreeIndexBulkLoadOperatorNodePushable extends AbstractUnaryInputSin
             treeIndexHelper.init();
             treeIndex = (ITreeIndex) treeIndexHelper.getIndex();
             treeIndex.open(treeIndexHelper.getIndexFileId());
-            bulkLoadCtx = treeIndex.beginBulkLoad(fillFactor);
+            bulkLoadCtx = beginBulkLoad();
         } catch (Exception e) {
             // cleanup in case of failure
+            releaseWindow();
             treeIndexHelper.deinit();
             throw new HyracksDataException(e);
         }
     }
 
+    private IIndexBulkLoadContext beginBulkLoad() throws Exception {
+        if (!(treeIndex instanceof IBufferedBulkLoadIndex)) {
+            return treeIndex.beginBulkLoad(fillFactor);
+        }
+        IBufferedBulkLoadIndex bufferedIndex = (IBufferedBulkLoadIndex) treeIndex;
+        IHyracksTaskContext ctx = treeIndexHelper.getHyracksTaskContext();
+        int frameSize = ctx.getFrameSize();
+        int windowFrames = (bufferedIndex.getBulkLoadWindowSize() + frameSize - 1) / frameSize;
+        reservedFrames = ctx.getMemoryBudget().reserveFrames(1, windowFrames);
+        return bufferedIndex.beginBulkLoad(fillFactor, reservedFrames * frameSize);
+    }
+
+    private void releaseWindow() {
+        if (reservedFrames > 0) {
+            treeIndexHelper.getHyracksTaskContext().getMemoryBudget().releaseFrames(reservedFrames);
+            reservedFrames = 0;
+        }
+    }
+
     @Override
     public void nextFrame(ByteBuffer buffer) throws HyracksDataException {
         accessor.reset(buffer);
@@ -85,6 +108,7 @@ public class TreeIndexBulkLoadOperatorNodePushable extends AbstractUnaryInputSin
         } catch (PageAllocationException e) {
             throw new HyracksDataException(e);
         } finally {
+            releaseWindow();
             treeIndexHelper.deinit();
         }
     }
@@ -197,6 +197,26 @@ public abstract class TreeIndexNSMFrame implements ITreeIndexFrame {
         buf.putInt(totalFreeSpaceOff, buf.capacity() - (smFlagOff + 1));
     }
 
+    /**
+     * Moves the tuple space starting at the given offset by delta bytes and
+     * updates the slots, e.g., to grow or shrink a variable-length header. The
+     * caller must make sure that there is enough contiguous free space.
+     */
+    protected void shiftTupleSpace(int startOff, int delta) {
+        if (delta == 0) {
+            return;
+        }
+        int freeSpace = buf.getInt(freeSpaceOff);
+        System.arraycopy(buf.array(), startOff, buf.array(), startOff + delta, freeSpace - startOff);
+        int tupleCount = buf.getInt(tupleCountOff);
+        for (int i = 0; i < tupleCount; i++) {
+            int slotOff = slotManager.getSlotOff(i);
+            slotManager.setSlot(slotOff, slotManager.getTupleOff(slotOff) + delta);
+        }
+        buf.putInt(freeSpaceOff, freeSpace + delta);
+        buf.putInt(totalFreeSpaceOff, buf.getInt(totalFreeSpaceOff) - delta);
+    }
+
     @Override
     public void insert(ITupleReference tuple, int tupleIndex) {
         slotManager.insertSlot(tupleIndex, buf.getInt(freeSpaceOff));
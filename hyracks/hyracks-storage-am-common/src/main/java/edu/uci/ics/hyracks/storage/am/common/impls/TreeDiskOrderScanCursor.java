@@ -27,10 +27,14 @@ import edu.uci.ics.hyracks.storage.common.file.BufferedFileHandle;
 
 public class TreeDiskOrderScanCursor implements ITreeIndexCursor {
 
+	// Number of pages read ahead of the scan.
+	private static final int PREFETCH_PAGES = 16;
+
 	private int tupleIndex = 0;
 	private int fileId = -1;
 	private int currentPageId = -1;
 	private int maxPageId = -1;
+	private int prefetchedPageId = -1;
 	private ICachedPage page = null;	
 	private IBufferCache bufferCache = null;
 	
@@ -61,8 +65,11 @@ public class TreeDiskOrderScanCursor implements ITreeIndexCursor {
 
 	private boolean positionToNextLeaf(boolean skipCurrent)
 			throws HyracksDataException {
-		while ((frame.getLevel() != 0 || skipCurrent) && (currentPageId <= maxPageId)) {
+		// empty leaves are skipped like interior nodes
+		while ((frame.getLevel() != 0 || frame.getTupleCount() == 0 || skipCurrent)
+				&& (currentPageId <= maxPageId)) {
 			currentPageId++;
+			prefetch();
 
 			ICachedPage nextPage = bufferCache.pin(
 					BufferedFileHandle.getDiskPageId(fileId, currentPageId),
@@ -83,6 +90,24 @@ public class TreeDiskOrderScanCursor implements ITreeIndexCursor {
 			return false;
 	}
 
+	/**
+	 * Keeps reads of the next pages in flight, so that the scan does not wait
+	 * for one page at a time. A new batch is started when the scan is halfway
+	 * through the previous one.
+	 */
+	private void prefetch() throws HyracksDataException {
+		if (prefetchedPageId >= maxPageId
+				|| currentPageId + PREFETCH_PAGES / 2 <= prefetchedPageId) {
+			return;
+		}
+		int startPageId = Math.max(prefetchedPageId + 1, currentPageId);
+		int numPages = Math.min(PREFETCH_PAGES, maxPageId - startPageId + 1);
+		int prefetched = bufferCache.prefetch(
+				BufferedFileHandle.getDiskPageId(fileId, startPageId),
+				numPages);
+		prefetchedPageId = startPageId + prefetched - 1;
+	}
+
 	@Override
 	public boolean hasNext() throws Exception {		
 		if (currentPageId > maxPageId) {
@@ -125,6 +150,7 @@ public class TreeDiskOrderScanCursor implements ITreeIndexCursor {
 		tupleIndex = 0;
 		currentPageId = -1;
 		maxPageId = -1;
+		prefetchedPageId = -1;
 		page = null;
 	}
 
@@ -27,6 +27,10 @@ public class MultiComparator {
 	}
 
 	public int compare(ITupleReference tupleA, ITupleReference tupleB) {
+		if (tupleA.getFieldCount() < cmps.length
+				|| tupleB.getFieldCount() < cmps.length) {
+			return compareTruncated(tupleA, tupleB);
+		}
 		for (int i = 0; i < cmps.length; i++) {
 			int cmp = cmps[i].compare(tupleA.getFieldData(i),
 					tupleA.getFieldStart(i), tupleA.getFieldLength(i),
@@ -40,6 +44,22 @@ public class MultiComparator {
 		return 0;
 	}
 
+	// A tuple with fewer fields than there are comparators is a truncated
+	// separator key, e.g., in a BTree interior node. Its missing fields are
+	// greater than any value, it sorts after all tuples that share its fields.
+	private int compareTruncated(ITupleReference tupleA, ITupleReference tupleB) {
+		int fieldCountA = Math.min(tupleA.getFieldCount(), cmps.length);
+		int fieldCountB = Math.min(tupleB.getFieldCount(), cmps.length);
+		int c = fieldRangeCompare(tupleA, tupleB, 0, Math.min(fieldCountA, fieldCountB));
+		if (c != 0) {
+			return c;
+		}
+		if (fieldCountA == fieldCountB) {
+			return 0;
+		}
+		return fieldCountA < fieldCountB ? 1 : -1;
+	}
+
 	public int fieldRangeCompare(ITupleReference tupleA,
 			ITupleReference tupleB, int startFieldIndex, int numFields) {
 		for (int i = startFieldIndex; i < startFieldIndex + numFields; i++) {
@@ -25,6 +25,8 @@ public class SimpleTupleReference implements ITreeIndexTupleReference {
     protected ByteBuffer buf;
     protected int fieldStartIndex;
     protected int fieldCount;
+    // The number of fields of the current tuple, fewer than fieldCount if it was truncated.
+    protected int tupleFieldCount;
     protected int tupleStartOff;
     protected int nullFlagsBytes;
     protected int fieldSlotsBytes;
@@ -33,6 +35,12 @@ public class SimpleTupleReference implements ITreeIndexTupleReference {
     public void resetByTupleOffset(ByteBuffer buf, int tupleStartOff) {
         this.buf = buf;
         this.tupleStartOff = tupleStartOff;
+        int numFields = TruncatedTupleMarker.getFieldCount(buf.array(), tupleStartOff, fieldCount);
+        if (numFields != tupleFieldCount) {
+            tupleFieldCount = numFields;
+            nullFlagsBytes = getNullFlagsBytes();
+            fieldSlotsBytes = getFieldSlotsBytes();
+        }
     }
 
     @Override
@@ -43,6 +51,7 @@ public class SimpleTupleReference implements ITreeIndexTupleReference {
     @Override
     public void setFieldCount(int fieldCount) {
         this.fieldCount = fieldCount;
+        this.tupleFieldCount = fieldCount;
         nullFlagsBytes = getNullFlagsBytes();
         fieldSlotsBytes = getFieldSlotsBytes();
         fieldStartIndex = 0;
@@ -51,12 +60,13 @@ public class SimpleTupleReference implements ITreeIndexTupleReference {
     @Override
     public void setFieldCount(int fieldStartIndex, int fieldCount) {
         this.fieldCount = fieldCount;
+        this.tupleFieldCount = fieldCount;
         this.fieldStartIndex = fieldStartIndex;
     }
 
     @Override
     public int getFieldCount() {
-        return fieldCount;
+        return tupleFieldCount;
     }
 
     @Override
@@ -85,15 +95,15 @@ public class SimpleTupleReference implements ITreeIndexTupleReference {
     }
 
     protected int getNullFlagsBytes() {
-        return (int) Math.ceil(fieldCount / 8.0);
+        return (int) Math.ceil(tupleFieldCount / 8.0);
     }
 
     protected int getFieldSlotsBytes() {
-        return fieldCount * 2;
+        return tupleFieldCount * 2;
     }
 
 	@Override
 	public int getTupleSize() {
-		return nullFlagsBytes + fieldSlotsBytes + buf.getShort(tupleStartOff + nullFlagsBytes + (fieldCount-1) * 2);
+		return nullFlagsBytes + fieldSlotsBytes + buf.getShort(tupleStartOff + nullFlagsBytes + (tupleFieldCount-1) * 2);
 	}
 }
\ No newline at end of file
@@ -107,6 +107,13 @@ public class SimpleTupleWriter implements ITreeIndexTupleWriter {
         return runner - targetOff;
     }
 
+    @Override
+    public int writeTruncatedTuple(ITupleReference tuple, int numFields, ByteBuffer targetBuf, int targetOff) {
+        int bytesWritten = writeTupleFields(tuple, 0, numFields, targetBuf, targetOff);
+        TruncatedTupleMarker.mark(targetBuf.array(), targetOff, numFields);
+        return bytesWritten;
+    }
+
     protected int getNullFlagsBytes(ITupleReference tuple) {
         return (int) Math.ceil((double) tuple.getFieldCount() / 8.0);
     }
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.am.common.tuples;
+
+/**
+ * Marks tuples whose trailing fields were truncated, e.g., BTree separator
+ * keys that only keep the key fields needed to tell two leaves apart. The
+ * tuple writers begin a tuple with one null flag bit per field, which are
+ * otherwise always zero. A truncated tuple sets the bit of its last field, so
+ * a tuple reference that expects more fields knows where the tuple ends. The
+ * marked bit is in the last null flags byte the writer wrote for the fields
+ * it has, so the reference can find it without knowing the field count.
+ */
+public class TruncatedTupleMarker {
+
+    private static int getNullFlagMask(int field) {
+        return 0x80 >>> (field % 8);
+    }
+
+    /**
+     * Marks the tuple at the given offset as having only numFields fields.
+     */
+    public static void mark(byte[] buf, int tupleStartOff, int numFields) {
+        int lastField = numFields - 1;
+        buf[tupleStartOff + lastField / 8] |= getNullFlagMask(lastField);
+    }
+
+    /**
+     * Gets the number of fields of the tuple at the given offset, which is
+     * fieldCount unless the tuple was truncated to fewer fields.
+     */
+    public static int getFieldCount(byte[] buf, int tupleStartOff, int fieldCount) {
+        int nullFlagsBytes = (fieldCount + 7) / 8;
+        for (int i = 0; i < nullFlagsBytes; i++) {
+            int flags = buf[tupleStartOff + i] & 0xFF;
+            if (flags != 0) {
+                // The first set bit marks the last field.
+                int lastField = i * 8 + Integer.numberOfLeadingZeros(flags) - 24;
+                return Math.min(lastField + 1, fieldCount);
+            }
+        }
+        return fieldCount;
+    }
+}
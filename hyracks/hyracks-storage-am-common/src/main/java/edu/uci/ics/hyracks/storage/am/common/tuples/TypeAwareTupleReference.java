@@ -25,6 +25,8 @@ public class TypeAwareTupleReference implements ITreeIndexTupleReference {
     protected ByteBuffer buf;
     protected int fieldStartIndex;
     protected int fieldCount;
+    // The number of fields of the current tuple, fewer than fieldCount if it was truncated.
+    protected int tupleFieldCount;
     protected int tupleStartOff;
     protected int nullFlagsBytes;
     protected int dataStartOff;
@@ -43,12 +45,14 @@ public class TypeAwareTupleReference implements ITreeIndexTupleReference {
     public void resetByTupleOffset(ByteBuffer buf, int tupleStartOff) {
         this.buf = buf;
         this.tupleStartOff = tupleStartOff;
+        tupleFieldCount = TruncatedTupleMarker.getFieldCount(buf.array(), tupleStartOff, fieldCount);
+        int tupleNullFlagsBytes = tupleFieldCount < fieldCount ? getNullFlagsBytes(tupleFieldCount) : nullFlagsBytes;
 
         // decode field slots
         int field = 0;
         int cumul = 0;
-        int end = fieldStartIndex + fieldCount;
-        encDec.reset(buf.array(), tupleStartOff + nullFlagsBytes);
+        int end = fieldStartIndex + tupleFieldCount;
+        encDec.reset(buf.array(), tupleStartOff + tupleNullFlagsBytes);
         for (int i = fieldStartIndex; i < end; i++) {
             if (!typeTraits[i].isFixedLength()) {
                 cumul += encDec.decode();
@@ -69,6 +73,7 @@ public class TypeAwareTupleReference implements ITreeIndexTupleReference {
     @Override
     public void setFieldCount(int fieldCount) {
         this.fieldCount = fieldCount;
+        this.tupleFieldCount = fieldCount;
         if (decodedFieldSlots == null) {
             decodedFieldSlots = new int[fieldCount];
         } else {
@@ -88,7 +93,7 @@ public class TypeAwareTupleReference implements ITreeIndexTupleReference {
 
     @Override
     public int getFieldCount() {
-        return fieldCount;
+        return tupleFieldCount;
     }
 
     @Override
@@ -115,11 +120,15 @@ public class TypeAwareTupleReference implements ITreeIndexTupleReference {
     }
 
     protected int getNullFlagsBytes() {
-        return (int) Math.ceil(fieldCount / 8.0);
+        return getNullFlagsBytes(fieldCount);
+    }
+
+    protected int getNullFlagsBytes(int numFields) {
+        return (int) Math.ceil(numFields / 8.0);
     }
 
     @Override
     public int getTupleSize() {
-        return dataStartOff - tupleStartOff + decodedFieldSlots[fieldCount - 1];
+        return dataStartOff - tupleStartOff + decodedFieldSlots[tupleFieldCount - 1];
     }
 }
@@ -51,12 +51,28 @@ public class TreeIndexStats {
 		// nothing here currently
 	}
 
+	public int getTreeLevels() {
+		return treeLevels;
+	}
+
+	// average number of children of the interior pages (including the root),
+	// every page except the root is the child of exactly one interior page
+	public double getAvgFanOut() {
+		long interiorPages = interiorStats.getNumPages();
+		if (interiorPages == 0) {
+			return 0;
+		}
+		return (double) (interiorPages + leafStats.getNumPages() - 1)
+				/ (double) interiorPages;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder strBuilder = new StringBuilder();
 		DecimalFormat df = new DecimalFormat("#####.##");
 
 		strBuilder.append("TREE LEVELS:  " + treeLevels + "\n");
+		strBuilder.append("AVG FAN-OUT:  " + df.format(getAvgFanOut()) + "\n");
 		strBuilder.append("FREE PAGES :  " + freePages + "\n");
 		strBuilder.append("META PAGES :  " + metaPages + "\n");
 		long totalPages = interiorStats.getNumPages() + leafStats.getNumPages()
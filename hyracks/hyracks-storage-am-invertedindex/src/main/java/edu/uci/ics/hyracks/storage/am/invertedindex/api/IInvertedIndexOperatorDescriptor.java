@@ -26,4 +26,6 @@ public interface IInvertedIndexOperatorDescriptor extends ITreeIndexOperatorDesc
     public ITypeTraits[] getInvListsTypeTraits();
     
     public IFileSplitProvider getInvListsFileSplitProvider();
+
+    public IInvertedListFormat getInvListFormat();
 }
@@ -27,11 +27,21 @@ public interface IInvertedListCursor extends Comparable<IInvertedListCursor> {
 
     void pinPagesAsync() throws HyracksDataException;
 
+    /**
+     * Prepares the cursor without pinning any pages. The pages are pinned as
+     * next(), positionCursor() or the probes reach them, and stay pinned until
+     * unpinPages().
+     */
+    void pinPagesOnDemand() throws HyracksDataException;
+
     void unpinPages() throws HyracksDataException;
 
+    // number of pages pinned since the last call to unpinPages()
+    int getNumPinnedPages();
+
     boolean hasNext();
 
-    void next();
+    void next() throws HyracksDataException;
 
     ITupleReference getTuple();
 
@@ -45,9 +55,18 @@ public interface IInvertedListCursor extends Comparable<IInvertedListCursor> {
     int getStartOff();
 
     // jump to a specific element
-    void positionCursor(int elementIx);
-
-    boolean containsKey(ITupleReference searchTuple, MultiComparator invListCmp);
+    void positionCursor(int elementIx) throws HyracksDataException;
+
+    boolean containsKey(ITupleReference searchTuple, MultiComparator invListCmp) throws HyracksDataException;
+
+    /**
+     * Tells whether the list contains the key, like containsKey(), after
+     * pinPagesOnDemand(). The keys of consecutive probes are expected to
+     * increase: a probe gallops over the pages from the page of the previous
+     * probe, comparing the key with the first elements of the pages, so pages
+     * between two probed keys are never pinned.
+     */
+    boolean probeKey(ITupleReference searchTuple, MultiComparator invListCmp) throws HyracksDataException;
 
     // for debugging
     String printInvList(ISerializerDeserializer[] serdes) throws HyracksDataException;
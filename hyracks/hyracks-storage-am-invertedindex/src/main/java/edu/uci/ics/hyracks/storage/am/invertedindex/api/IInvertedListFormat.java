@@ -0,0 +1,39 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.am.invertedindex.api;
+
+import java.io.Serializable;
+
+import edu.uci.ics.hyracks.api.dataflow.value.ITypeTraits;
+import edu.uci.ics.hyracks.storage.common.buffercache.IBufferCache;
+
+/**
+ * The layout of the inverted lists on their pages. Lists are written by the
+ * builder and read by the cursor of the same format.
+ */
+public interface IInvertedListFormat extends Serializable {
+    /**
+     * The ID that is stored in the header of the inverted lists file, so
+     * the lists are never read with another format than they were written
+     * with.
+     */
+    public int getFormatId();
+
+    public IInvertedListBuilder createInvertedListBuilder(ITypeTraits[] invListFields);
+
+    public IInvertedListCursor createInvertedListCursor(IBufferCache bufferCache, int fileId,
+            ITypeTraits[] invListFields);
+}
@@ -30,6 +30,8 @@ import edu.uci.ics.hyracks.storage.am.common.dataflow.IIndexDataflowHelperFactor
 import edu.uci.ics.hyracks.storage.am.common.dataflow.IIndexRegistryProvider;
 import edu.uci.ics.hyracks.storage.am.common.tuples.TypeAwareTupleWriterFactory;
 import edu.uci.ics.hyracks.storage.am.invertedindex.api.IInvertedIndexOperatorDescriptor;
+import edu.uci.ics.hyracks.storage.am.invertedindex.api.IInvertedListFormat;
+import edu.uci.ics.hyracks.storage.am.invertedindex.impls.FixedSizeElementInvertedListFormat;
 import edu.uci.ics.hyracks.storage.am.invertedindex.util.InvertedIndexUtils;
 import edu.uci.ics.hyracks.storage.common.IStorageManagerInterface;
 
@@ -54,6 +56,7 @@ public abstract class AbstractInvertedIndexOperatorDescriptor extends AbstractSi
     protected final ITypeTraits[] invListsTypeTraits;
     protected final IBinaryComparatorFactory[] invListComparatorFactories;
     protected final IFileSplitProvider invListsFileSplitProvider;
+    protected final IInvertedListFormat invListFormat;
 
     public AbstractInvertedIndexOperatorDescriptor(JobSpecification spec, int inputArity, int outputArity,
             RecordDescriptor recDesc, IStorageManagerInterface storageManager,
@@ -62,6 +65,19 @@ public abstract class AbstractInvertedIndexOperatorDescriptor extends AbstractSi
             IBinaryComparatorFactory[] tokenComparatorFactories, ITypeTraits[] invListsTypeTraits,
             IBinaryComparatorFactory[] invListComparatorFactories,
             IIndexDataflowHelperFactory btreeDataflowHelperFactory) {
+        this(spec, inputArity, outputArity, recDesc, storageManager, btreeFileSplitProvider,
+                invListsFileSplitProvider, indexRegistryProvider, tokenTypeTraits, tokenComparatorFactories,
+                invListsTypeTraits, invListComparatorFactories, btreeDataflowHelperFactory,
+                new FixedSizeElementInvertedListFormat());
+    }
+
+    public AbstractInvertedIndexOperatorDescriptor(JobSpecification spec, int inputArity, int outputArity,
+            RecordDescriptor recDesc, IStorageManagerInterface storageManager,
+            IFileSplitProvider btreeFileSplitProvider, IFileSplitProvider invListsFileSplitProvider,
+            IIndexRegistryProvider<IIndex> indexRegistryProvider, ITypeTraits[] tokenTypeTraits,
+            IBinaryComparatorFactory[] tokenComparatorFactories, ITypeTraits[] invListsTypeTraits,
+            IBinaryComparatorFactory[] invListComparatorFactories,
+            IIndexDataflowHelperFactory btreeDataflowHelperFactory, IInvertedListFormat invListFormat) {
         super(spec, inputArity, outputArity);
 
         // General.
@@ -81,6 +97,7 @@ public abstract class AbstractInvertedIndexOperatorDescriptor extends AbstractSi
         this.invListsTypeTraits = invListsTypeTraits;
         this.invListComparatorFactories = invListComparatorFactories;
         this.invListsFileSplitProvider = invListsFileSplitProvider;
+        this.invListFormat = invListFormat;
 
         if (outputArity > 0) {
             recordDescriptors[0] = recDesc;
@@ -97,6 +114,11 @@ public abstract class AbstractInvertedIndexOperatorDescriptor extends AbstractSi
         return invListsFileSplitProvider;
     }
 
+    @Override
+    public IInvertedListFormat getInvListFormat() {
+        return invListFormat;
+    }
+
     @Override
     public IBinaryComparatorFactory[] getTreeIndexComparatorFactories() {
         return btreeComparatorFactories;
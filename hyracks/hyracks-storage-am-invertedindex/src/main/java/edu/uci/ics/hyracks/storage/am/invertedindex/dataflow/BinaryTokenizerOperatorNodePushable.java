@@ -27,6 +27,7 @@ import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAccessor;
 import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAppender;
 import edu.uci.ics.hyracks.dataflow.common.comm.util.FrameUtils;
 import edu.uci.ics.hyracks.dataflow.std.base.AbstractUnaryInputUnaryOutputOperatorNodePushable;
+import edu.uci.ics.hyracks.storage.am.invertedindex.tokenizers.IBatchBinaryTokenizer;
 import edu.uci.ics.hyracks.storage.am.invertedindex.tokenizers.IBinaryTokenizer;
 import edu.uci.ics.hyracks.storage.am.invertedindex.tokenizers.IToken;
 
@@ -34,6 +35,7 @@ public class BinaryTokenizerOperatorNodePushable extends AbstractUnaryInputUnary
 
     private final IHyracksTaskContext ctx;
     private final IBinaryTokenizer tokenizer;
+    private final IBatchBinaryTokenizer batchTokenizer;
     private final int[] tokenFields;
     private final int[] projFields;
     private final RecordDescriptor inputRecDesc;
@@ -44,11 +46,14 @@ public class BinaryTokenizerOperatorNodePushable extends AbstractUnaryInputUnary
     private DataOutput builderDos;
     private FrameTupleAppender appender;
     private ByteBuffer writeBuffer;
+    private ArrayTupleBuilder projBuilder;
+    private final int[] tokenFieldSlot = new int[1];
 
     public BinaryTokenizerOperatorNodePushable(IHyracksTaskContext ctx, RecordDescriptor inputRecDesc,
             RecordDescriptor outputRecDesc, IBinaryTokenizer tokenizer, int[] tokenFields, int[] projFields) {
         this.ctx = ctx;
         this.tokenizer = tokenizer;
+        this.batchTokenizer = tokenizer instanceof IBatchBinaryTokenizer ? (IBatchBinaryTokenizer) tokenizer : null;
         this.tokenFields = tokenFields;
         this.projFields = projFields;
         this.inputRecDesc = inputRecDesc;
@@ -61,6 +66,7 @@ public class BinaryTokenizerOperatorNodePushable extends AbstractUnaryInputUnary
         writeBuffer = ctx.allocateFrame();
         builder = new ArrayTupleBuilder(outputRecDesc.getFieldCount());
         builderDos = builder.getDataOutput();
+        projBuilder = new ArrayTupleBuilder(projFields.length);
         appender = new FrameTupleAppender(ctx.getFrameSize());
         appender.reset(writeBuffer, true);
         writer.open();
@@ -70,6 +76,11 @@ public class BinaryTokenizerOperatorNodePushable extends AbstractUnaryInputUnary
     public void nextFrame(ByteBuffer buffer) throws HyracksDataException {
         accessor.reset(buffer);
 
+        if (batchTokenizer != null) {
+            nextFrameBatch();
+            return;
+        }
+
         int tupleCount = accessor.getTupleCount();
         for (int i = 0; i < tupleCount; i++) {
 
@@ -111,6 +122,58 @@ public class BinaryTokenizerOperatorNodePushable extends AbstractUnaryInputUnary
 
         if (appender.getTupleCount() > 0) {
             FrameUtils.flushFrame(writeBuffer, writer);
+            appender.reset(writeBuffer, true);
+        }
+    }
+
+    /**
+     * Tokenizes every string at once and appends its tokens with the
+     * projected fields, which are copied out of the input tuple only once.
+     */
+    private void nextFrameBatch() throws HyracksDataException {
+        int tupleCount = accessor.getTupleCount();
+        for (int i = 0; i < tupleCount; i++) {
+            projBuilder.reset();
+            for (int k = 0; k < projFields.length; k++) {
+                projBuilder.addField(accessor, i, projFields[k]);
+            }
+            int[] projFieldEndOffsets = projBuilder.getFieldEndOffsets();
+            byte[] projBytes = projBuilder.getByteArray();
+            int projSize = projBuilder.getSize();
+
+            for (int j = 0; j < tokenFields.length; j++) {
+                int numTokens;
+                try {
+                    numTokens = batchTokenizer.tokenize(accessor.getBuffer().array(), accessor.getTupleStartOffset(i)
+                            + accessor.getFieldSlotsLength() + accessor.getFieldStartOffset(i, tokenFields[j]),
+                            accessor.getFieldLength(i, tokenFields[j]));
+                } catch (IOException e) {
+                    throw new HyracksDataException(e.getMessage());
+                }
+                byte[] tokenBuffer = batchTokenizer.getTokenBuffer();
+                int[] tokenEndOffsets = batchTokenizer.getTokenEndOffsets();
+
+                int tokenStart = 0;
+                for (int t = 0; t < numTokens; t++) {
+                    int tokenLength = tokenEndOffsets[t] - tokenStart;
+                    tokenFieldSlot[0] = tokenLength;
+                    if (!appender.appendConcat(tokenFieldSlot, tokenBuffer, tokenStart, tokenLength,
+                            projFieldEndOffsets, projBytes, 0, projSize)) {
+                        FrameUtils.flushFrame(writeBuffer, writer);
+                        appender.reset(writeBuffer, true);
+                        if (!appender.appendConcat(tokenFieldSlot, tokenBuffer, tokenStart, tokenLength,
+                                projFieldEndOffsets, projBytes, 0, projSize)) {
+                            throw new IllegalStateException();
+                        }
+                    }
+                    tokenStart = tokenEndOffsets[t];
+                }
+            }
+        }
+
+        if (appender.getTupleCount() > 0) {
+            FrameUtils.flushFrame(writeBuffer, writer);
+            appender.reset(writeBuffer, true);
         }
     }
 
@@ -50,6 +50,6 @@ public final class InvertedIndexDataflowHelper extends IndexDataflowHelper {
         // Assumes btreeDataflowHelper.init() has already been called.
         BTree btree = (BTree) btreeDataflowHelper.getIndex();
         return new InvertedIndex(opDesc.getStorageManager().getBufferCache(ctx), btree,
-                invIndexOpDesc.getInvListsTypeTraits(), cmp);
+                invIndexOpDesc.getInvListsTypeTraits(), cmp, invIndexOpDesc.getInvListFormat());
     }
 }
\ No newline at end of file
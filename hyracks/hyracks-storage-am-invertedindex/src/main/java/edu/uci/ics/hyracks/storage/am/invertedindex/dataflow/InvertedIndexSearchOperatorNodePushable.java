@@ -36,6 +36,7 @@ import edu.uci.ics.hyracks.storage.am.invertedindex.impls.InvertedIndex;
 import edu.uci.ics.hyracks.storage.am.invertedindex.impls.OccurrenceThresholdPanicException;
 import edu.uci.ics.hyracks.storage.am.invertedindex.impls.SearchResultCursor;
 import edu.uci.ics.hyracks.storage.am.invertedindex.impls.TOccurrenceSearcher;
+import edu.uci.ics.hyracks.storage.am.invertedindex.impls.TopKOccurrenceSearcher;
 import edu.uci.ics.hyracks.storage.am.invertedindex.tokenizers.IBinaryTokenizer;
 
 public class InvertedIndexSearchOperatorNodePushable extends AbstractUnaryInputUnaryOutputOperatorNodePushable {
@@ -50,6 +51,7 @@ public class InvertedIndexSearchOperatorNodePushable extends AbstractUnaryInputU
 
     private final IInvertedIndexSearchModifier searchModifier;
     private final IBinaryTokenizer queryTokenizer;
+    private final int topK;
     private TOccurrenceSearcher searcher;
     private IInvertedIndexResultCursor resultCursor;
 
@@ -62,7 +64,7 @@ public class InvertedIndexSearchOperatorNodePushable extends AbstractUnaryInputU
 
     public InvertedIndexSearchOperatorNodePushable(AbstractInvertedIndexOperatorDescriptor opDesc,
             IHyracksTaskContext ctx, int partition, int queryField, IInvertedIndexSearchModifier searchModifier,
-            IBinaryTokenizer queryTokenizer, IRecordDescriptorProvider recordDescProvider) {
+            IBinaryTokenizer queryTokenizer, IRecordDescriptorProvider recordDescProvider, int topK) {
         this.opDesc = opDesc;
         btreeDataflowHelper = (TreeIndexDataflowHelper) opDesc.getIndexDataflowHelperFactory()
                 .createIndexDataflowHelper(opDesc, ctx, partition, false);
@@ -72,6 +74,7 @@ public class InvertedIndexSearchOperatorNodePushable extends AbstractUnaryInputU
         this.searchModifier = searchModifier;
         this.queryTokenizer = queryTokenizer;
         this.recordDescProvider = recordDescProvider;
+        this.topK = topK;
     }
 
     @Override
@@ -111,7 +114,11 @@ public class InvertedIndexSearchOperatorNodePushable extends AbstractUnaryInputU
         appender = new FrameTupleAppender(btreeDataflowHelper.getHyracksTaskContext().getFrameSize());
         appender.reset(writeBuffer, true);
 
-        searcher = new TOccurrenceSearcher(ctx, invIndex, queryTokenizer);
+        if (topK > 0) {
+            searcher = new TopKOccurrenceSearcher(ctx, invIndex, queryTokenizer, topK);
+        } else {
+            searcher = new TOccurrenceSearcher(ctx, invIndex, queryTokenizer);
+        }
         resultCursor = new SearchResultCursor(searcher.createResultFrameTupleAccessor(),
                 searcher.createResultTupleReference());
 
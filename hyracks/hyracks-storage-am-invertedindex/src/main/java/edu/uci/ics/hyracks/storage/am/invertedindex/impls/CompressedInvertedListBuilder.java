@@ -0,0 +1,151 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.am.invertedindex.impls;
+
+import edu.uci.ics.hyracks.api.dataflow.value.ITypeTraits;
+import edu.uci.ics.hyracks.dataflow.common.data.accessors.ITupleReference;
+import edu.uci.ics.hyracks.dataflow.common.data.marshalling.IntegerSerializerDeserializer;
+import edu.uci.ics.hyracks.storage.am.invertedindex.api.IInvertedListBuilder;
+
+/**
+ * Writes inverted lists in the layout described in
+ * {@link CompressedInvertedListFormat}.
+ */
+public class CompressedInvertedListBuilder implements IInvertedListBuilder {
+    // element count, length of the encoded elements, ID of the first element, index of the first element in the list
+    public static final int BLOCK_HEADER_SIZE = 16;
+    public static final int MAX_BLOCK_ELEMENTS = 128;
+
+    // length of the fields after the element ID
+    private final int restLength;
+    private int listSize = 0;
+
+    private byte[] targetBuf;
+    private int pos;
+
+    private int blockOff = -1;
+    private int blockCount;
+    private int lastId;
+
+    public CompressedInvertedListBuilder(ITypeTraits[] invListFields) {
+        if (invListFields[0].getFixedLength() != 4) {
+            throw new IllegalArgumentException(
+                    "Compressed inverted lists need an integer as the first field of their elements.");
+        }
+        int tmp = 0;
+        for (int i = 1; i < invListFields.length; i++) {
+            tmp += invListFields[i].getFixedLength();
+        }
+        restLength = tmp;
+    }
+
+    @Override
+    public boolean startNewList(ITupleReference tuple, int numTokenFields) {
+        if (pos + BLOCK_HEADER_SIZE + restLength > targetBuf.length) {
+            endPage();
+            return false;
+        }
+        listSize = 0;
+        blockOff = -1;
+        return true;
+    }
+
+    @Override
+    public boolean appendElement(ITupleReference tuple, int numTokenFields, int numElementFields) {
+        int id = IntegerSerializerDeserializer.getInt(tuple.getFieldData(numTokenFields),
+                tuple.getFieldStart(numTokenFields));
+        if (blockOff < 0 || blockCount == MAX_BLOCK_ELEMENTS) {
+            if (pos + BLOCK_HEADER_SIZE + restLength > targetBuf.length) {
+                endPage();
+                return false;
+            }
+            blockOff = pos;
+            blockCount = 0;
+            IntegerSerializerDeserializer.putInt(id, targetBuf, blockOff + 8);
+            IntegerSerializerDeserializer.putInt(listSize, targetBuf, blockOff + 12);
+            pos += BLOCK_HEADER_SIZE;
+        } else {
+            // the elements are sorted, so the delta is unsigned
+            int delta = id - lastId;
+            if (pos + getVarIntLength(delta) + restLength > targetBuf.length) {
+                endPage();
+                return false;
+            }
+            pos = writeVarInt(targetBuf, pos, delta);
+        }
+        for (int i = 1; i < numElementFields; i++) {
+            int field = numTokenFields + i;
+            System.arraycopy(tuple.getFieldData(field), tuple.getFieldStart(field), targetBuf, pos,
+                    tuple.getFieldLength(field));
+            pos += tuple.getFieldLength(field);
+        }
+        lastId = id;
+        blockCount++;
+        listSize++;
+        IntegerSerializerDeserializer.putInt(blockCount, targetBuf, blockOff);
+        IntegerSerializerDeserializer.putInt(pos - blockOff - BLOCK_HEADER_SIZE, targetBuf, blockOff + 4);
+        return true;
+    }
+
+    /**
+     * Marks the end of the blocks on the current page with an element count of
+     * 0, unless the page is too full to hold one.
+     */
+    private void endPage() {
+        if (pos + 4 <= targetBuf.length) {
+            IntegerSerializerDeserializer.putInt(0, targetBuf, pos);
+        }
+        blockOff = -1;
+    }
+
+    @Override
+    public void setTargetBuffer(byte[] targetBuf, int startPos) {
+        this.targetBuf = targetBuf;
+        this.pos = startPos;
+        this.blockOff = -1;
+    }
+
+    @Override
+    public int getListSize() {
+        return listSize;
+    }
+
+    @Override
+    public int getPos() {
+        return pos;
+    }
+
+    private static int getVarIntLength(int value) {
+        int length = 1;
+        while ((value >>>= 7) != 0) {
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Writes the unsigned value with seven bits per byte, low bits first. The
+     * high bit of a byte is set if more bytes follow.
+     */
+    private static int writeVarInt(byte[] bytes, int off, int value) {
+        while ((value & ~0x7F) != 0) {
+            bytes[off++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[off++] = (byte) value;
+        return off;
+    }
+}
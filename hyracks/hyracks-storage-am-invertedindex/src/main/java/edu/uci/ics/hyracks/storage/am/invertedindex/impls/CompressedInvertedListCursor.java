@@ -0,0 +1,472 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.am.invertedindex.impls;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+
+import edu.uci.ics.hyracks.api.dataflow.value.ISerializerDeserializer;
+import edu.uci.ics.hyracks.api.dataflow.value.ITypeTraits;
+import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
+import edu.uci.ics.hyracks.dataflow.common.data.accessors.ITupleReference;
+import edu.uci.ics.hyracks.dataflow.common.data.marshalling.IntegerSerializerDeserializer;
+import edu.uci.ics.hyracks.storage.am.common.ophelpers.MultiComparator;
+import edu.uci.ics.hyracks.storage.am.invertedindex.api.IInvertedListCursor;
+import edu.uci.ics.hyracks.storage.common.buffercache.IBufferCache;
+import edu.uci.ics.hyracks.storage.common.buffercache.ICachedPage;
+import edu.uci.ics.hyracks.storage.common.file.BufferedFileHandle;
+
+/**
+ * Reads inverted lists in the layout described in
+ * {@link CompressedInvertedListFormat}. The elements are decoded one at a time
+ * into a buffer that the tuple of the cursor points to. When the pages are
+ * pinned, the cursor reads the block headers into a directory, so that
+ * positionCursor() and containsKey() only decode the elements of one block.
+ */
+public class CompressedInvertedListCursor implements IInvertedListCursor {
+
+    private final IBufferCache bufferCache;
+    private final int fileId;
+    private final int restLength;
+
+    private int startPageId;
+    private int endPageId;
+    private int startOff;
+    private int numElements;
+
+    private ICachedPage[] pages = new ICachedPage[10];
+    private boolean blockDirectoryRead;
+    private int numPinnedPages;
+    // page of the previous probeKey()
+    private int probePageIx;
+
+    // block directory
+    private int numBlocks;
+    private int[] blockPageIxs = new int[10];
+    private int[] blockOffs = new int[10];
+    private int[] blockFirstIds = new int[10];
+    private int[] blockStartElementIxs = new int[10];
+
+    // index of the element returned by the next call to next()
+    private int currentElementIx;
+    private int currentBlockIx;
+    private int blockEndElementIx;
+    private byte[] currentPage;
+    private int currentOff;
+    private int currentId;
+
+    private final byte[] element;
+    private final FixedSizeTupleReference tuple;
+
+    public CompressedInvertedListCursor(IBufferCache bufferCache, int fileId, ITypeTraits[] invListFields) {
+        this.bufferCache = bufferCache;
+        this.fileId = fileId;
+        int tmp = 0;
+        for (int i = 1; i < invListFields.length; i++) {
+            tmp += invListFields[i].getFixedLength();
+        }
+        restLength = tmp;
+        element = new byte[4 + restLength];
+        tuple = new FixedSizeTupleReference(invListFields);
+        tuple.reset(element, 0);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return currentElementIx < numElements;
+    }
+
+    @Override
+    public void next() throws HyracksDataException {
+        if (currentElementIx == numElements) {
+            // the merges of TOccurrenceSearcher step past the last element
+            return;
+        }
+        if (!blockDirectoryRead) {
+            pinPagesSync();
+        }
+        if (currentElementIx == blockEndElementIx) {
+            enterBlock(currentBlockIx + 1);
+        } else {
+            currentId += readVarInt();
+        }
+        IntegerSerializerDeserializer.putInt(currentId, element, 0);
+        System.arraycopy(currentPage, currentOff, element, 4, restLength);
+        currentOff += restLength;
+        currentElementIx++;
+    }
+
+    private void enterBlock(int blockIx) {
+        currentBlockIx = blockIx;
+        currentPage = pages[blockPageIxs[blockIx]].getBuffer().array();
+        currentOff = blockOffs[blockIx] + CompressedInvertedListBuilder.BLOCK_HEADER_SIZE;
+        currentId = blockFirstIds[blockIx];
+        blockEndElementIx = blockIx + 1 < numBlocks ? blockStartElementIxs[blockIx + 1] : numElements;
+    }
+
+    /**
+     * Makes the next call to next() return the first element of the block.
+     */
+    private void positionAtBlock(int blockIx) {
+        currentBlockIx = blockIx - 1;
+        currentElementIx = numBlocks > 0 ? blockStartElementIxs[blockIx] : 0;
+        blockEndElementIx = currentElementIx;
+    }
+
+    private int readVarInt() {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = currentPage[currentOff++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    @Override
+    public void pinPagesAsync() {
+        // TODO: implement
+    }
+
+    @Override
+    public void pinPagesSync() throws HyracksDataException {
+        int numPages = endPageId - startPageId + 1;
+        for (int i = 0; i < numPages; i++) {
+            pinPage(i);
+        }
+        readBlockHeaders();
+        blockDirectoryRead = true;
+        positionAtBlock(0);
+    }
+
+    /**
+     * Does not read the block directory, probeKey() reads the block headers
+     * of the pages it reaches instead. The first call to next() or
+     * positionCursor() reads the directory, which pins all pages of the list.
+     */
+    @Override
+    public void pinPagesOnDemand() {
+        probePageIx = 0;
+    }
+
+    private byte[] pinPage(int pageIx) throws HyracksDataException {
+        if (pages[pageIx] == null) {
+            pages[pageIx] = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, startPageId + pageIx), false);
+            pages[pageIx].acquireReadLatch();
+            numPinnedPages++;
+        }
+        return pages[pageIx].getBuffer().array();
+    }
+
+    private void readBlockHeaders() {
+        int pageSize = bufferCache.getPageSize();
+        numBlocks = 0;
+        int pageIx = 0;
+        int off = startOff;
+        int elementIx = 0;
+        while (elementIx < numElements) {
+            byte[] page = pages[pageIx].getBuffer().array();
+            int count = off + 4 <= pageSize ? IntegerSerializerDeserializer.getInt(page, off) : 0;
+            if (count == 0) {
+                // no more blocks on this page
+                pageIx++;
+                off = 0;
+                continue;
+            }
+            if (numBlocks == blockOffs.length) {
+                int newLength = numBlocks * 2;
+                blockPageIxs = copyOf(blockPageIxs, newLength);
+                blockOffs = copyOf(blockOffs, newLength);
+                blockFirstIds = copyOf(blockFirstIds, newLength);
+                blockStartElementIxs = copyOf(blockStartElementIxs, newLength);
+            }
+            blockPageIxs[numBlocks] = pageIx;
+            blockOffs[numBlocks] = off;
+            blockFirstIds[numBlocks] = IntegerSerializerDeserializer.getInt(page, off + 8);
+            blockStartElementIxs[numBlocks] = elementIx;
+            numBlocks++;
+            elementIx += count;
+            off += CompressedInvertedListBuilder.BLOCK_HEADER_SIZE + IntegerSerializerDeserializer.getInt(page, off + 4);
+        }
+    }
+
+    private static int[] copyOf(int[] array, int length) {
+        int[] newArray = new int[length];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+
+    @Override
+    public void unpinPages() throws HyracksDataException {
+        int numPages = endPageId - startPageId + 1;
+        for (int i = 0; i < numPages; i++) {
+            if (pages[i] != null) {
+                pages[i].releaseReadLatch();
+                bufferCache.unpin(pages[i]);
+                pages[i] = null;
+            }
+        }
+        numPinnedPages = 0;
+        blockDirectoryRead = false;
+    }
+
+    @Override
+    public int getNumPinnedPages() {
+        return numPinnedPages;
+    }
+
+    @Override
+    public void positionCursor(int elementIx) throws HyracksDataException {
+        if (elementIx < 0 || elementIx >= numElements) {
+            throw new IndexOutOfBoundsException("Requested index: " + elementIx + " from array with numElements: "
+                    + numElements);
+        }
+        if (!blockDirectoryRead) {
+            pinPagesSync();
+        }
+        // last block that starts at or before the element
+        int begin = 0;
+        int end = numBlocks - 1;
+        while (begin < end) {
+            int mid = (begin + end + 1) / 2;
+            if (blockStartElementIxs[mid] <= elementIx) {
+                begin = mid;
+            } else {
+                end = mid - 1;
+            }
+        }
+        positionAtBlock(begin);
+        do {
+            next();
+        } while (currentElementIx <= elementIx);
+    }
+
+    @Override
+    public boolean containsKey(ITupleReference searchTuple, MultiComparator invListCmp) throws HyracksDataException {
+        if (numElements == 0) {
+            return false;
+        }
+        if (!blockDirectoryRead) {
+            pinPagesSync();
+        }
+        int key = IntegerSerializerDeserializer.getInt(searchTuple.getFieldData(0), searchTuple.getFieldStart(0));
+        // last block that starts with a smaller ID, an earlier block than the
+        // one starting with the key may end with the key
+        int begin = 0;
+        int end = numBlocks - 1;
+        int blockIx = 0;
+        while (begin <= end) {
+            int mid = (begin + end) / 2;
+            if (blockFirstIds[mid] < key) {
+                blockIx = mid;
+                begin = mid + 1;
+            } else {
+                end = mid - 1;
+            }
+        }
+        positionAtBlock(blockIx);
+        while (hasNext()) {
+            next();
+            int cmp = invListCmp.compare(searchTuple, tuple);
+            if (cmp == 0) {
+                return true;
+            }
+            if (cmp < 0) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean probeKey(ITupleReference searchTuple, MultiComparator invListCmp) throws HyracksDataException {
+        if (numElements == 0) {
+            return false;
+        }
+        int key = IntegerSerializerDeserializer.getInt(searchTuple.getFieldData(0), searchTuple.getFieldStart(0));
+        int numPages = endPageId - startPageId + 1;
+        int pageIx = probePageIx;
+        if (pageIx > 0 && getPageFirstId(pageIx) >= key) {
+            // the key is smaller than the previous one
+            pageIx = 0;
+        }
+        // gallop to the last page that starts with a smaller ID, an earlier
+        // page than the one starting with the key may end with the key
+        int endPageIx = numPages;
+        int step = 1;
+        while (pageIx + step < numPages) {
+            if (getPageFirstId(pageIx + step) >= key) {
+                endPageIx = pageIx + step;
+                break;
+            }
+            pageIx += step;
+            step *= 2;
+        }
+        while (endPageIx - pageIx > 1) {
+            int mid = (pageIx + endPageIx) / 2;
+            if (getPageFirstId(mid) >= key) {
+                endPageIx = mid;
+            } else {
+                pageIx = mid;
+            }
+        }
+        probePageIx = pageIx;
+
+        int pageSize = bufferCache.getPageSize();
+        byte[] page = pinPage(pageIx);
+        int off = pageIx == 0 ? startOff : 0;
+        while (true) {
+            int count = off + 4 <= pageSize ? IntegerSerializerDeserializer.getInt(page, off) : 0;
+            if (count == 0) {
+                // no more blocks on this page
+                if (++pageIx == numPages) {
+                    return false;
+                }
+                page = pinPage(pageIx);
+                off = 0;
+                continue;
+            }
+            int blockFirstId = IntegerSerializerDeserializer.getInt(page, off + 8);
+            // the blocks after the last one belong to the next list
+            boolean lastBlock = IntegerSerializerDeserializer.getInt(page, off + 12) + count >= numElements;
+            int nextOff = off + CompressedInvertedListBuilder.BLOCK_HEADER_SIZE
+                    + IntegerSerializerDeserializer.getInt(page, off + 4);
+            if (blockFirstId > key) {
+                return false;
+            }
+            // decode the block unless the next block on the page starts with a smaller ID
+            if (lastBlock || nextOff + 4 > pageSize || IntegerSerializerDeserializer.getInt(page, nextOff) == 0
+                    || IntegerSerializerDeserializer.getInt(page, nextOff + 8) >= key) {
+                currentPage = page;
+                currentOff = off + CompressedInvertedListBuilder.BLOCK_HEADER_SIZE;
+                int id = blockFirstId;
+                for (int i = 0; i < count; i++) {
+                    if (i > 0) {
+                        id += readVarInt();
+                    }
+                    IntegerSerializerDeserializer.putInt(id, element, 0);
+                    System.arraycopy(currentPage, currentOff, element, 4, restLength);
+                    currentOff += restLength;
+                    int cmp = invListCmp.compare(searchTuple, tuple);
+                    if (cmp == 0) {
+                        return true;
+                    }
+                    if (cmp < 0) {
+                        return false;
+                    }
+                }
+                if (lastBlock) {
+                    return false;
+                }
+            }
+            off = nextOff;
+        }
+    }
+
+    /**
+     * Gets the ID of the first element on a page after the first page, every
+     * such page starts with a block of the list.
+     */
+    private int getPageFirstId(int pageIx) throws HyracksDataException {
+        return IntegerSerializerDeserializer.getInt(pinPage(pageIx), 8);
+    }
+
+    @Override
+    public void reset(int startPageId, int endPageId, int startOff, int numElements) {
+        this.startPageId = startPageId;
+        this.endPageId = endPageId;
+        this.startOff = startOff;
+        this.numElements = numElements;
+        this.numBlocks = 0;
+        this.blockDirectoryRead = false;
+        positionAtBlock(0);
+
+        int numPages = endPageId - startPageId + 1;
+        if (numPages > pages.length) {
+            pages = new ICachedPage[numPages];
+        }
+    }
+
+    @Override
+    public String printInvList(ISerializerDeserializer[] serdes) throws HyracksDataException {
+        int oldElementIx = currentElementIx;
+        positionAtBlock(0);
+
+        StringBuilder strBuilder = new StringBuilder();
+        while (hasNext()) {
+            next();
+            strBuilder.append(printCurrentElement(serdes));
+            strBuilder.append(" ");
+        }
+
+        // reset previous state
+        if (oldElementIx > 0) {
+            positionCursor(oldElementIx - 1);
+        } else {
+            positionAtBlock(0);
+        }
+
+        return strBuilder.toString();
+    }
+
+    @Override
+    public String printCurrentElement(ISerializerDeserializer[] serdes) throws HyracksDataException {
+        StringBuilder strBuilder = new StringBuilder();
+        for (int i = 0; i < tuple.getFieldCount(); i++) {
+            ByteArrayInputStream inStream = new ByteArrayInputStream(tuple.getFieldData(i), tuple.getFieldStart(i),
+                    tuple.getFieldLength(i));
+            DataInput dataIn = new DataInputStream(inStream);
+            Object o = serdes[i].deserialize(dataIn);
+            strBuilder.append(o.toString());
+            if (i + 1 < tuple.getFieldCount())
+                strBuilder.append(",");
+        }
+        return strBuilder.toString();
+    }
+
+    @Override
+    public int compareTo(IInvertedListCursor invListCursor) {
+        return numElements - invListCursor.getNumElements();
+    }
+
+    @Override
+    public int getEndPageId() {
+        return endPageId;
+    }
+
+    @Override
+    public int getNumElements() {
+        return numElements;
+    }
+
+    @Override
+    public int getStartOff() {
+        return startOff;
+    }
+
+    @Override
+    public int getStartPageId() {
+        return startPageId;
+    }
+
+    @Override
+    public ITupleReference getTuple() {
+        return tuple;
+    }
+}
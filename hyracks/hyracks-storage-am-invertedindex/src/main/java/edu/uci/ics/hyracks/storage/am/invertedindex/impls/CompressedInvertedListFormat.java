@@ -0,0 +1,59 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.am.invertedindex.impls;
+
+import edu.uci.ics.hyracks.api.dataflow.value.ITypeTraits;
+import edu.uci.ics.hyracks.storage.am.invertedindex.api.IInvertedListBuilder;
+import edu.uci.ics.hyracks.storage.am.invertedindex.api.IInvertedListCursor;
+import edu.uci.ics.hyracks.storage.am.invertedindex.api.IInvertedListFormat;
+import edu.uci.ics.hyracks.storage.common.buffercache.IBufferCache;
+
+/**
+ * Inverted lists whose elements start with an integer ID, in the order of
+ * that ID. The elements of a list are stored in blocks of up to
+ * MAX_BLOCK_ELEMENTS elements, and a block never spans pages. A block starts
+ * with a header of its element count, the length of its encoded elements, the
+ * ID of its first element and the index of that element in the list. The
+ * index tells where a list ends on a page that the next list starts on. The
+ * first element is followed by the other
+ * elements, each stored as the variable-byte encoded difference to the ID of
+ * the element before it. The fields after the ID are stored as they are.
+ * When the next block of a list does not fit on a page, the list continues
+ * on the next page, and an element count of 0 marks the end of the blocks on
+ * the page if there is room for it. The block headers serve as skip entries,
+ * so a lookup only decodes the elements of one block.
+ */
+public class CompressedInvertedListFormat implements IInvertedListFormat {
+    private static final long serialVersionUID = 1L;
+
+    public static final int FORMAT_ID = 1;
+
+    @Override
+    public int getFormatId() {
+        return FORMAT_ID;
+    }
+
+    @Override
+    public IInvertedListBuilder createInvertedListBuilder(ITypeTraits[] invListFields) {
+        return new CompressedInvertedListBuilder(invListFields);
+    }
+
+    @Override
+    public IInvertedListCursor createInvertedListCursor(IBufferCache bufferCache, int fileId,
+            ITypeTraits[] invListFields) {
+        return new CompressedInvertedListCursor(bufferCache, fileId, invListFields);
+    }
+}
@@ -31,6 +31,9 @@ public class FixedSizeElementInvertedListCursor implements IInvertedListCursor {
     private final FixedSizeTupleReference tuple;
     private ICachedPage[] pages = new ICachedPage[10];
     private int[] elementIndexes = new int[10];
+    private int numPinnedPages;
+    // page of the previous probeKey()
+    private int probePageIx;
 
     public FixedSizeElementInvertedListCursor(IBufferCache bufferCache, int fileId, ITypeTraits[] invListFields) {
         this.bufferCache = bufferCache;
@@ -56,7 +59,11 @@ public class FixedSizeElementInvertedListCursor implements IInvertedListCursor {
     }
 
     @Override
-    public void next() {
+    public void next() throws HyracksDataException {
+        if (currentElementIx == numElements) {
+            // the merges of TOccurrenceSearcher step past the last element
+            return;
+        }
         if (currentOff + elementSize >= bufferCache.getPageSize()) {
             currentPageIx++;
             currentOff = 0;
@@ -65,6 +72,7 @@ public class FixedSizeElementInvertedListCursor implements IInvertedListCursor {
         }
 
         currentElementIx++;
+        pinPage(currentPageIx);
         tuple.reset(pages[currentPageIx].getBuffer().array(), currentOff);
     }
 
@@ -75,11 +83,22 @@ public class FixedSizeElementInvertedListCursor implements IInvertedListCursor {
 
     @Override
     public void pinPagesSync() throws HyracksDataException {
-        int pix = 0;
-        for (int i = startPageId; i <= endPageId; i++) {
-            pages[pix] = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, i), false);
-            pages[pix].acquireReadLatch();
-            pix++;
+        int numPages = endPageId - startPageId + 1;
+        for (int i = 0; i < numPages; i++) {
+            pinPage(i);
+        }
+    }
+
+    @Override
+    public void pinPagesOnDemand() {
+        probePageIx = 0;
+    }
+
+    private void pinPage(int pageIx) throws HyracksDataException {
+        if (pages[pageIx] == null) {
+            pages[pageIx] = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, startPageId + pageIx), false);
+            pages[pageIx].acquireReadLatch();
+            numPinnedPages++;
         }
     }
 
@@ -87,13 +106,22 @@ public class FixedSizeElementInvertedListCursor implements IInvertedListCursor {
     public void unpinPages() throws HyracksDataException {
         int numPages = endPageId - startPageId + 1;
         for (int i = 0; i < numPages; i++) {
-            pages[i].releaseReadLatch();
-            bufferCache.unpin(pages[i]);
+            if (pages[i] != null) {
+                pages[i].releaseReadLatch();
+                bufferCache.unpin(pages[i]);
+                pages[i] = null;
+            }
         }
+        numPinnedPages = 0;
     }
 
     @Override
-    public void positionCursor(int elementIx) {
+    public int getNumPinnedPages() {
+        return numPinnedPages;
+    }
+
+    @Override
+    public void positionCursor(int elementIx) throws HyracksDataException {
         int numPages = endPageId - startPageId + 1;
 
         currentPageIx = binarySearch(elementIndexes, 0, numPages, elementIx);
@@ -109,12 +137,14 @@ public class FixedSizeElementInvertedListCursor implements IInvertedListCursor {
             currentOff = relativeElementIx * elementSize;
         }
 
-        currentElementIx = elementIx;
+        // the next call to next() returns the following element
+        currentElementIx = elementIx + 1;
+        pinPage(currentPageIx);
         tuple.reset(pages[currentPageIx].getBuffer().array(), currentOff);
     }
 
     @Override
-    public boolean containsKey(ITupleReference searchTuple, MultiComparator invListCmp) {
+    public boolean containsKey(ITupleReference searchTuple, MultiComparator invListCmp) throws HyracksDataException {
         int mid;
         int begin = 0;
         int end = numElements - 1;
@@ -135,6 +165,66 @@ public class FixedSizeElementInvertedListCursor implements IInvertedListCursor {
         return false;
     }
 
+    @Override
+    public boolean probeKey(ITupleReference searchTuple, MultiComparator invListCmp) throws HyracksDataException {
+        if (numElements == 0) {
+            return false;
+        }
+        int numPages = endPageId - startPageId + 1;
+        int pageIx = probePageIx;
+        if (pageIx > 0 && compareWithElement(searchTuple, invListCmp, getFirstElementIx(pageIx)) < 0) {
+            // the key is smaller than the previous one
+            pageIx = 0;
+        }
+        if (compareWithElement(searchTuple, invListCmp, elementIndexes[pageIx]) > 0) {
+            // gallop to the last page that starts at or before the key
+            int endPageIx = numPages;
+            int step = 1;
+            while (pageIx + step < numPages) {
+                if (compareWithElement(searchTuple, invListCmp, getFirstElementIx(pageIx + step)) < 0) {
+                    endPageIx = pageIx + step;
+                    break;
+                }
+                pageIx += step;
+                step *= 2;
+            }
+            while (endPageIx - pageIx > 1) {
+                int mid = (pageIx + endPageIx) / 2;
+                if (compareWithElement(searchTuple, invListCmp, getFirstElementIx(mid)) < 0) {
+                    endPageIx = mid;
+                } else {
+                    pageIx = mid;
+                }
+            }
+        }
+        probePageIx = pageIx;
+
+        int begin = getFirstElementIx(pageIx);
+        int end = elementIndexes[pageIx];
+        while (begin <= end) {
+            int mid = (begin + end) / 2;
+            int cmp = compareWithElement(searchTuple, invListCmp, mid);
+            if (cmp < 0) {
+                end = mid - 1;
+            } else if (cmp > 0) {
+                begin = mid + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int getFirstElementIx(int pageIx) {
+        return pageIx == 0 ? 0 : elementIndexes[pageIx - 1] + 1;
+    }
+
+    private int compareWithElement(ITupleReference searchTuple, MultiComparator invListCmp, int elementIx)
+            throws HyracksDataException {
+        positionCursor(elementIx);
+        return invListCmp.compare(searchTuple, tuple);
+    }
+
     @Override
     public void reset(int startPageId, int endPageId, int startOff, int numElements) {
         this.startPageId = startPageId;
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.am.invertedindex.impls;
+
+import edu.uci.ics.hyracks.api.dataflow.value.ITypeTraits;
+import edu.uci.ics.hyracks.storage.am.invertedindex.api.IInvertedListBuilder;
+import edu.uci.ics.hyracks.storage.am.invertedindex.api.IInvertedListCursor;
+import edu.uci.ics.hyracks.storage.am.invertedindex.api.IInvertedListFormat;
+import edu.uci.ics.hyracks.storage.common.buffercache.IBufferCache;
+
+public class FixedSizeElementInvertedListFormat implements IInvertedListFormat {
+    private static final long serialVersionUID = 1L;
+
+    public static final int FORMAT_ID = 0;
+
+    @Override
+    public int getFormatId() {
+        return FORMAT_ID;
+    }
+
+    @Override
+    public IInvertedListBuilder createInvertedListBuilder(ITypeTraits[] invListFields) {
+        return new FixedSizeElementInvertedListBuilder(invListFields);
+    }
+
+    @Override
+    public IInvertedListCursor createInvertedListCursor(IBufferCache bufferCache, int fileId,
+            ITypeTraits[] invListFields) {
+        return new FixedSizeElementInvertedListCursor(bufferCache, fileId, invListFields);
+    }
+}
@@ -39,6 +39,7 @@ import edu.uci.ics.hyracks.storage.am.common.dataflow.IIndex;
 import edu.uci.ics.hyracks.storage.am.common.ophelpers.MultiComparator;
 import edu.uci.ics.hyracks.storage.am.invertedindex.api.IInvertedListBuilder;
 import edu.uci.ics.hyracks.storage.am.invertedindex.api.IInvertedListCursor;
+import edu.uci.ics.hyracks.storage.am.invertedindex.api.IInvertedListFormat;
 import edu.uci.ics.hyracks.storage.common.buffercache.IBufferCache;
 import edu.uci.ics.hyracks.storage.common.buffercache.ICachedPage;
 import edu.uci.ics.hyracks.storage.common.file.BufferedFileHandle;
@@ -53,31 +54,71 @@ import edu.uci.ics.hyracks.storage.common.file.BufferedFileHandle;
  */
 public class InvertedIndex implements IIndex {
 
+    // the first page of the inverted lists file is a header that records the
+    // format of the lists, the lists start on the page after it
+    private static final int HEADER_PAGE_ID = 0;
+    private static final int HEADER_MAGIC = 0x494e564c;
+    private static final int HEADER_MAGIC_OFF = 0;
+    private static final int HEADER_FORMAT_ID_OFF = 4;
+
     private BTree btree;
-    private int rootPageId = 0;
+    private int rootPageId = HEADER_PAGE_ID + 1;
     private IBufferCache bufferCache;
     private int fileId;
     private final ITypeTraits[] invListTypeTraits;
     private final MultiComparator invListCmp;
     private final int numTokenFields;
     private final int numInvListKeys;
+    private final IInvertedListFormat invListFormat;
 
     public InvertedIndex(IBufferCache bufferCache, BTree btree, ITypeTraits[] invListTypeTraits, MultiComparator invListCmp) {
+        this(bufferCache, btree, invListTypeTraits, invListCmp, new FixedSizeElementInvertedListFormat());
+    }
+
+    public InvertedIndex(IBufferCache bufferCache, BTree btree, ITypeTraits[] invListTypeTraits,
+            MultiComparator invListCmp, IInvertedListFormat invListFormat) {
         this.bufferCache = bufferCache;
         this.btree = btree;
         this.invListCmp = invListCmp;
         this.invListTypeTraits = invListTypeTraits;
         this.numTokenFields = btree.getMultiComparator().getKeyFieldCount();
         this.numInvListKeys = invListCmp.getKeyFieldCount();
+        this.invListFormat = invListFormat;
     }
 
     @Override
-    public void open(int fileId) {
+    public void open(int fileId) throws HyracksDataException {
+        ICachedPage header = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, HEADER_PAGE_ID), false);
+        header.acquireReadLatch();
+        try {
+            ByteBuffer buf = header.getBuffer();
+            if (buf.getInt(HEADER_MAGIC_OFF) != HEADER_MAGIC) {
+                throw new HyracksDataException("File " + fileId + " does not hold inverted lists.");
+            }
+            int formatId = buf.getInt(HEADER_FORMAT_ID_OFF);
+            if (formatId != invListFormat.getFormatId()) {
+                throw new HyracksDataException("Inverted lists of file " + fileId + " were written with format "
+                        + formatId + " and cannot be read with format " + invListFormat.getFormatId() + ".");
+            }
+        } finally {
+            header.releaseReadLatch();
+            bufferCache.unpin(header);
+        }
         this.fileId = fileId;
     }
 
     @Override
     public void create(int indexFileId) throws HyracksDataException {
+        ICachedPage header = bufferCache.pin(BufferedFileHandle.getDiskPageId(indexFileId, HEADER_PAGE_ID), true);
+        header.acquireWriteLatch();
+        try {
+            ByteBuffer buf = header.getBuffer();
+            buf.putInt(HEADER_MAGIC_OFF, HEADER_MAGIC);
+            buf.putInt(HEADER_FORMAT_ID_OFF, invListFormat.getFormatId());
+        } finally {
+            header.releaseWriteLatch();
+            bufferCache.unpin(header);
+        }
     }
     
     public void close() {
@@ -238,6 +279,18 @@ public class InvertedIndex implements IIndex {
         return btree;
     }
 
+    public IInvertedListFormat getInvListFormat() {
+        return invListFormat;
+    }
+
+    public IInvertedListBuilder createInvertedListBuilder() {
+        return invListFormat.createInvertedListBuilder(invListTypeTraits);
+    }
+
+    public IInvertedListCursor createInvertedListCursor() {
+        return invListFormat.createInvertedListCursor(bufferCache, fileId, invListTypeTraits);
+    }
+
     public final class BulkLoadContext {
         private final ByteBuffer btreeTupleBuffer;
         private final ArrayTupleBuilder btreeTupleBuilder;
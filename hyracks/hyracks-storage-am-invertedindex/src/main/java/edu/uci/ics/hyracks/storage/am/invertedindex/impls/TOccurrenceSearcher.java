@@ -19,7 +19,9 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
 
 import edu.uci.ics.hyracks.api.comm.IFrameTupleAccessor;
 import edu.uci.ics.hyracks.api.context.IHyracksTaskContext;
@@ -86,6 +88,10 @@ public class TOccurrenceSearcher implements IInvertedIndexSearcher {
     protected List<IInvertedListCursor> invListCursorCache = new ArrayList<IInvertedListCursor>(cursorCacheSize);
     protected List<IInvertedListCursor> invListCursors = new ArrayList<IInvertedListCursor>(cursorCacheSize);
 
+    // merge the prefix lists in one pass with a heap when there are at least this many
+    protected final int heapMergeMinPrefixLists = 3;
+    protected final PriorityQueue<IInvertedListCursor> invListHeap;
+
     public TOccurrenceSearcher(IHyracksTaskContext ctx, InvertedIndex invIndex, IBinaryTokenizer queryTokenizer) {
         this.ctx = ctx;
         this.invIndex = invIndex;
@@ -120,8 +126,7 @@ public class TOccurrenceSearcher implements IInvertedIndexSearcher {
 
         // pre-create cursor objects
         for (int i = 0; i < cursorCacheSize; i++) {
-            invListCursorCache.add(new FixedSizeElementInvertedListCursor(invIndex.getBufferCache(), invIndex
-                    .getInvListsFileId(), invIndex.getTypeTraits()));
+            invListCursorCache.add(invIndex.createInvertedListCursor());
         }
 
         queryTokenAppender = new FrameTupleAppender(ctx.getFrameSize());
@@ -129,6 +134,14 @@ public class TOccurrenceSearcher implements IInvertedIndexSearcher {
 
         btreeAccessor = invIndex.getBTree().createAccessor();
         currentNumResults = 0;
+
+        final MultiComparator invListCmp = invIndex.getInvListElementCmp();
+        invListHeap = new PriorityQueue<IInvertedListCursor>(cursorCacheSize, new Comparator<IInvertedListCursor>() {
+            @Override
+            public int compare(IInvertedListCursor c1, IInvertedListCursor c2) {
+                return invListCmp.compare(c1.getTuple(), c2.getTuple());
+            }
+        });
     }
 
     public void reset() {
@@ -143,7 +156,29 @@ public class TOccurrenceSearcher implements IInvertedIndexSearcher {
 
     public void search(IInvertedIndexResultCursor resultCursor, ITupleReference queryTuple, int queryField,
             IInvertedIndexSearchModifier searchModifier) throws Exception {
+        int numQueryTokens = openInvListCursors(queryTuple, queryField);
+
+        occurrenceThreshold = searchModifier.getOccurrenceThreshold(invListCursors);
+
+        // TODO: deal with panic cases properly
+        if (occurrenceThreshold <= 0) {
+            throw new OccurrenceThresholdPanicException("Merge Threshold is <= 0. Failing Search.");
+        }
+
+        int numPrefixLists = searchModifier.getPrefixLists(invListCursors);
+        maxResultBufIdx = mergePrefixLists(numPrefixLists, numQueryTokens);
+        maxResultBufIdx = mergeSuffixLists(numPrefixLists, numQueryTokens, maxResultBufIdx);
 
+        resultCursor.reset(this);
+    }
+
+    /**
+     * Tokenizes the query and opens a cursor on the inverted list of every
+     * token in invListCursors.
+     * 
+     * @return the number of query tokens
+     */
+    protected int openInvListCursors(ITupleReference queryTuple, int queryField) throws Exception {
         queryTokenAppender.reset(queryTokenFrame, true);
         queryTokenizer.reset(queryTuple.getFieldData(queryField), queryTuple.getFieldStart(queryField),
                 queryTuple.getFieldLength(queryField));
@@ -171,8 +206,7 @@ public class TOccurrenceSearcher implements IInvertedIndexSearcher {
         if (numQueryTokens > invListCursorCache.size()) {
             int diff = numQueryTokens - invListCursorCache.size();
             for (int i = 0; i < diff; i++) {
-                invListCursorCache.add(new FixedSizeElementInvertedListCursor(invIndex.getBufferCache(), invIndex
-                        .getInvListsFileId(), invIndex.getTypeTraits()));
+                invListCursorCache.add(invIndex.createInvertedListCursor());
             }
         }
 
@@ -182,22 +216,13 @@ public class TOccurrenceSearcher implements IInvertedIndexSearcher {
             invIndex.openCursor(btreeCursor, btreePred, btreeAccessor, invListCursorCache.get(i));
             invListCursors.add(invListCursorCache.get(i));
         }
-
-        occurrenceThreshold = searchModifier.getOccurrenceThreshold(invListCursors);
-
-        // TODO: deal with panic cases properly
-        if (occurrenceThreshold <= 0) {
-            throw new OccurrenceThresholdPanicException("Merge Threshold is <= 0. Failing Search.");
-        }
-
-        int numPrefixLists = searchModifier.getPrefixLists(invListCursors);
-        maxResultBufIdx = mergePrefixLists(numPrefixLists, numQueryTokens);
-        maxResultBufIdx = mergeSuffixLists(numPrefixLists, numQueryTokens, maxResultBufIdx);
-
-        resultCursor.reset(this);
+        return numQueryTokens;
     }
 
     protected int mergePrefixLists(int numPrefixTokens, int numQueryTokens) throws IOException {
+        if (numPrefixTokens >= heapMergeMinPrefixLists) {
+            return mergePrefixListsHeap(numPrefixTokens);
+        }
         int maxPrevBufIdx = 0;
         for (int i = 0; i < numPrefixTokens; i++) {
             swap = prevResultBuffers;
@@ -212,19 +237,72 @@ public class TOccurrenceSearcher implements IInvertedIndexSearcher {
         return maxPrevBufIdx;
     }
 
+    /**
+     * Merges all prefix lists at once, taking the smallest element of the
+     * lists from a heap, instead of merging every list into the results of
+     * the previous ones. Many short lists are merged in one pass over the
+     * results rather than one pass per list.
+     */
+    protected int mergePrefixListsHeap(int numPrefixTokens) throws IOException {
+        swap = prevResultBuffers;
+        prevResultBuffers = newResultBuffers;
+        newResultBuffers = swap;
+        currentNumResults = 0;
+
+        MultiComparator invListCmp = invIndex.getInvListElementCmp();
+        resultFrameTupleApp.reset(newResultBuffers.get(0), true);
+        int newBufIdx = 0;
+
+        invListHeap.clear();
+        for (int i = 0; i < numPrefixTokens; i++) {
+            IInvertedListCursor invListCursor = invListCursors.get(i);
+            invListCursor.pinPagesSync();
+            if (invListCursor.hasNext()) {
+                invListCursor.next();
+                invListHeap.add(invListCursor);
+            }
+        }
+
+        while (!invListHeap.isEmpty()) {
+            IInvertedListCursor invListCursor = invListHeap.poll();
+            int count = 1;
+            while (!invListHeap.isEmpty()
+                    && invListCmp.compare(invListHeap.peek().getTuple(), invListCursor.getTuple()) == 0) {
+                IInvertedListCursor sameElementCursor = invListHeap.poll();
+                count++;
+                if (sameElementCursor.hasNext()) {
+                    sameElementCursor.next();
+                    invListHeap.add(sameElementCursor);
+                }
+            }
+            newBufIdx = appendTupleToNewResults(invListCursor.getTuple(), count, newBufIdx);
+            if (invListCursor.hasNext()) {
+                invListCursor.next();
+                invListHeap.add(invListCursor);
+            }
+        }
+
+        for (int i = 0; i < numPrefixTokens; i++) {
+            invListCursors.get(i).unpinPages();
+        }
+        return newBufIdx;
+    }
+
     protected int mergeSuffixLists(int numPrefixTokens, int numQueryTokens, int maxPrevBufIdx) throws IOException {
         for (int i = numPrefixTokens; i < numQueryTokens; i++) {
             swap = prevResultBuffers;
             prevResultBuffers = newResultBuffers;
             newResultBuffers = swap;
 
-            invListCursors.get(i).pinPagesSync();
             int numInvListElements = invListCursors.get(i).getNumElements();
             // should we binary search the next list or should we sort-merge it?
             if (currentNumResults * Math.log(numInvListElements) < currentNumResults + numInvListElements) {
+                // the probes only pin the pages that may contain a result
+                invListCursors.get(i).pinPagesOnDemand();
                 maxPrevBufIdx = mergeSuffixListProbe(invListCursors.get(i), prevResultBuffers, maxPrevBufIdx,
                         newResultBuffers, i, numQueryTokens);
             } else {
+                invListCursors.get(i).pinPagesSync();
                 maxPrevBufIdx = mergeSuffixListScan(invListCursors.get(i), prevResultBuffers, maxPrevBufIdx,
                         newResultBuffers, i, numQueryTokens);
             }
@@ -257,7 +335,7 @@ public class TOccurrenceSearcher implements IInvertedIndexSearcher {
             int count = IntegerSerializerDeserializer.getInt(resultTuple.getFieldData(0),
                     resultTuple.getFieldStart(resultTuple.getFieldCount() - 1));
 
-            if (invListCursor.containsKey(resultTuple, invListCmp)) {
+            if (invListCursor.probeKey(resultTuple, invListCmp)) {
                 count++;
                 newBufIdx = appendTupleToNewResults(resultTuple, count, newBufIdx);
             } else {
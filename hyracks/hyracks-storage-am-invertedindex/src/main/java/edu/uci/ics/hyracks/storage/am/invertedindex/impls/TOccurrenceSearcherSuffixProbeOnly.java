@@ -39,7 +39,7 @@ public class TOccurrenceSearcherSuffixProbeOnly extends TOccurrenceSearcher {
             newResultBuffers = swap;
             currentNumResults = 0;
 
-            invListCursors.get(i).pinPagesSync();
+            invListCursors.get(i).pinPagesOnDemand();
             maxPrevBufIdx = mergeSuffixListProbe(invListCursors.get(i), prevResultBuffers, maxPrevBufIdx,
                     newResultBuffers, i, numQueryTokens);
             invListCursors.get(i).unpinPages();
@@ -69,7 +69,7 @@ public class TOccurrenceSearcherSuffixProbeOnly extends TOccurrenceSearcher {
             int count = IntegerSerializerDeserializer.getInt(resultTuple.getFieldData(0),
                     resultTuple.getFieldStart(resultTuple.getFieldCount() - 1));
 
-            if (invListCursor.containsKey(resultTuple, invListCmp)) {
+            if (invListCursor.probeKey(resultTuple, invListCmp)) {
                 count++;
                 newBufIdx = appendTupleToNewResults(resultTuple, count, newBufIdx);
             } else {
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.am.invertedindex.impls;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import edu.uci.ics.hyracks.api.context.IHyracksTaskContext;
+import edu.uci.ics.hyracks.api.dataflow.value.ITypeTraits;
+import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
+import edu.uci.ics.hyracks.dataflow.common.data.accessors.ITupleReference;
+import edu.uci.ics.hyracks.storage.am.common.ophelpers.MultiComparator;
+import edu.uci.ics.hyracks.storage.am.invertedindex.api.IInvertedIndexResultCursor;
+import edu.uci.ics.hyracks.storage.am.invertedindex.api.IInvertedIndexSearchModifier;
+import edu.uci.ics.hyracks.storage.am.invertedindex.api.IInvertedListCursor;
+import edu.uci.ics.hyracks.storage.am.invertedindex.tokenizers.IBinaryTokenizer;
+
+/**
+ * Finds the k elements that occur in the most inverted lists of the query
+ * tokens, and at least in as many lists as the occurrence threshold of the
+ * search modifier. The results are ordered by their number of occurrences,
+ * highest first, and elements with the same number by the order of the
+ * lists. Every list adds one to the score of its elements.
+ * 
+ * The lists are traversed together with the WAND algorithm: once k results
+ * are found, an element must occur in more lists than the k-th result to
+ * replace it. With the lists ordered by their current elements, no element
+ * before the current element of the list at that position can occur in enough
+ * lists, so the lists before it can skip ahead to it without reading the
+ * elements in between. Every step skips the shortest of them. The lists are
+ * pinned on demand, so the pages that are skipped are never pinned.
+ */
+public class TopKOccurrenceSearcher extends TOccurrenceSearcher {
+
+    private final int k;
+    private final MultiComparator invListCmp;
+
+    private final List<ListPosition> listPositions = new ArrayList<ListPosition>();
+    private ListPosition[] activeLists = new ListPosition[cursorCacheSize];
+
+    // the current results, the worst one on top
+    private final PriorityQueue<Result> results;
+    private final List<Result> freeResults = new ArrayList<Result>();
+
+    public TopKOccurrenceSearcher(IHyracksTaskContext ctx, InvertedIndex invIndex, IBinaryTokenizer queryTokenizer,
+            int k) {
+        super(ctx, invIndex, queryTokenizer);
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        this.k = k;
+        this.invListCmp = invIndex.getInvListElementCmp();
+        results = new PriorityQueue<Result>(k, new Comparator<Result>() {
+            @Override
+            public int compare(Result r1, Result r2) {
+                if (r1.score != r2.score) {
+                    return r1.score < r2.score ? -1 : 1;
+                }
+                return invListCmp.compare(r2.elementRef, r1.elementRef);
+            }
+        });
+    }
+
+    @Override
+    public void search(IInvertedIndexResultCursor resultCursor, ITupleReference queryTuple, int queryField,
+            IInvertedIndexSearchModifier searchModifier) throws Exception {
+        int numQueryTokens = openInvListCursors(queryTuple, queryField);
+        occurrenceThreshold = searchModifier.getOccurrenceThreshold(invListCursors);
+        // every result occurs in at least one list
+        int minScore = Math.max(1, occurrenceThreshold);
+
+        while (listPositions.size() < numQueryTokens) {
+            listPositions.add(new ListPosition());
+        }
+        if (activeLists.length < numQueryTokens) {
+            activeLists = new ListPosition[numQueryTokens];
+        }
+        int numActiveLists = 0;
+        for (int i = 0; i < numQueryTokens; i++) {
+            IInvertedListCursor invListCursor = invListCursors.get(i);
+            invListCursor.pinPagesOnDemand();
+            ListPosition listPos = listPositions.get(i);
+            listPos.reset(invListCursor);
+            if (listPos.next()) {
+                activeLists[numActiveLists++] = listPos;
+            }
+        }
+
+        results.clear();
+        while (true) {
+            sortActiveLists(numActiveLists);
+            int scoreThreshold = results.size() < k ? minScore : Math.max(minScore, results.peek().score + 1);
+            if (numActiveLists < scoreThreshold) {
+                break;
+            }
+            ListPosition pivot = activeLists[scoreThreshold - 1];
+            ITupleReference pivotElement = pivot.cursor.getTuple();
+            if (invListCmp.compare(activeLists[0].cursor.getTuple(), pivotElement) == 0) {
+                // all lists up to the pivot are on the pivot element, count the lists after it too
+                int score = scoreThreshold;
+                while (score < numActiveLists
+                        && invListCmp.compare(activeLists[score].cursor.getTuple(), pivotElement) == 0) {
+                    score++;
+                }
+                addResult(pivotElement, score);
+                for (int i = 0; i < score; i++) {
+                    activeLists[i].next();
+                }
+            } else {
+                // move the shortest list before the pivot, it is the most likely to skip past the pivot
+                int skipIx = 0;
+                for (int i = 1; i < scoreThreshold - 1; i++) {
+                    if (activeLists[i].cursor.getNumElements() < activeLists[skipIx].cursor.getNumElements()
+                            && invListCmp.compare(activeLists[i].cursor.getTuple(), pivotElement) < 0) {
+                        skipIx = i;
+                    }
+                }
+                activeLists[skipIx].skipTo(pivotElement);
+            }
+            numActiveLists = removeExhaustedLists(numActiveLists);
+        }
+
+        for (int i = 0; i < numQueryTokens; i++) {
+            invListCursors.get(i).unpinPages();
+        }
+        writeResults();
+        resultCursor.reset(this);
+    }
+
+    /**
+     * Sorts the active lists by their current elements with an insertion
+     * sort, the lists are almost sorted after every step.
+     */
+    private void sortActiveLists(int numActiveLists) {
+        for (int i = 1; i < numActiveLists; i++) {
+            ListPosition listPos = activeLists[i];
+            int j = i - 1;
+            while (j >= 0 && invListCmp.compare(activeLists[j].cursor.getTuple(), listPos.cursor.getTuple()) > 0) {
+                activeLists[j + 1] = activeLists[j];
+                j--;
+            }
+            activeLists[j + 1] = listPos;
+        }
+    }
+
+    private int removeExhaustedLists(int numActiveLists) {
+        int numLists = 0;
+        for (int i = 0; i < numActiveLists; i++) {
+            if (!activeLists[i].isExhausted()) {
+                activeLists[numLists++] = activeLists[i];
+            }
+        }
+        return numLists;
+    }
+
+    private void addResult(ITupleReference element, int score) {
+        Result result;
+        if (results.size() < k) {
+            result = freeResults.isEmpty() ? new Result(invIndex.getTypeTraits(), invListKeyLength) : freeResults
+                    .remove(freeResults.size() - 1);
+        } else {
+            // elements come in increasing order, the new element beats the worst result with its higher score
+            result = results.poll();
+        }
+        System.arraycopy(element.getFieldData(0), element.getFieldStart(0), result.element, 0, invListKeyLength);
+        result.score = score;
+        results.add(result);
+    }
+
+    /**
+     * Writes the results to the result buffers, the best result first.
+     */
+    private void writeResults() throws Exception {
+        int numResults = results.size();
+        Result[] sortedResults = new Result[numResults];
+        for (int i = numResults - 1; i >= 0; i--) {
+            sortedResults[i] = results.poll();
+        }
+        resultFrameTupleApp.reset(newResultBuffers.get(0), true);
+        currentNumResults = 0;
+        int newBufIdx = 0;
+        for (int i = 0; i < numResults; i++) {
+            newBufIdx = appendTupleToNewResults(sortedResults[i].elementRef, sortedResults[i].score, newBufIdx);
+            freeResults.add(sortedResults[i]);
+        }
+        maxResultBufIdx = newBufIdx;
+    }
+
+    private static class Result {
+        private final byte[] element;
+        private final FixedSizeTupleReference elementRef;
+        private int score;
+
+        public Result(ITypeTraits[] typeTraits, int elementLength) {
+            element = new byte[elementLength];
+            elementRef = new FixedSizeTupleReference(typeTraits);
+            elementRef.reset(element, 0);
+        }
+    }
+
+    /**
+     * The position of the search in one inverted list, the cursor's tuple is
+     * the current element.
+     */
+    private class ListPosition {
+        private IInvertedListCursor cursor;
+        private int elementIx;
+
+        public void reset(IInvertedListCursor cursor) {
+            this.cursor = cursor;
+            this.elementIx = -1;
+        }
+
+        public boolean isExhausted() {
+            return elementIx >= cursor.getNumElements();
+        }
+
+        public boolean next() throws HyracksDataException {
+            elementIx++;
+            if (isExhausted()) {
+                return false;
+            }
+            cursor.next();
+            return true;
+        }
+
+        /**
+         * Moves to the first element that is not smaller than the given one,
+         * galloping from the current element and then searching the range
+         * the element falls into.
+         */
+        public void skipTo(ITupleReference target) throws HyracksDataException {
+            if (invListCmp.compare(cursor.getTuple(), target) >= 0) {
+                return;
+            }
+            int numElements = cursor.getNumElements();
+            int begin = elementIx;
+            int end = numElements;
+            int positionedIx = elementIx;
+            int step = 1;
+            while (begin + step < numElements) {
+                positionedIx = begin + step;
+                cursor.positionCursor(positionedIx);
+                if (invListCmp.compare(cursor.getTuple(), target) >= 0) {
+                    end = positionedIx;
+                    break;
+                }
+                begin = positionedIx;
+                step *= 2;
+            }
+            while (end - begin > 1) {
+                positionedIx = (begin + end) / 2;
+                cursor.positionCursor(positionedIx);
+                if (invListCmp.compare(cursor.getTuple(), target) >= 0) {
+                    end = positionedIx;
+                } else {
+                    begin = positionedIx;
+                }
+            }
+            elementIx = end;
+            if (end < numElements && positionedIx != end) {
+                cursor.positionCursor(end);
+            }
+        }
+    }
+}
@@ -19,9 +19,14 @@
 
 package edu.uci.ics.hyracks.storage.am.invertedindex.tokenizers;
 
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
 import edu.uci.ics.hyracks.data.std.primitive.UTF8StringPointable;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.ByteArrayAccessibleOutputStream;
 
-public abstract class AbstractUTF8StringBinaryTokenizer implements IBinaryTokenizer {
+public abstract class AbstractUTF8StringBinaryTokenizer implements IBatchBinaryTokenizer {
 
     protected byte[] data;
     protected int start;
@@ -34,6 +39,16 @@ public abstract class AbstractUTF8StringBinaryTokenizer implements IBinaryTokeni
     protected final IntArray tokensLength;
     protected final IToken token;
 
+    // batch tokenization, see tokenize()
+    protected final AbstractUTF8Token charToken;
+    protected char[] chars = new char[64];
+    protected int numChars;
+    private byte[] tokenBuffer = new byte[1024];
+    private int tokenBufferEnd;
+    private final IntArray tokenEndOffsets = new IntArray();
+    private ByteArrayAccessibleOutputStream tokenBaaos;
+    private DataOutputStream tokenDos;
+
     protected final boolean ignoreTokenCount;
     protected final boolean sourceHasTypeTag;
 
@@ -49,6 +64,7 @@ public abstract class AbstractUTF8StringBinaryTokenizer implements IBinaryTokeni
             tokensLength = null;
         }
         token = tokenFactory.createToken();
+        charToken = token instanceof AbstractUTF8Token ? (AbstractUTF8Token) token : null;
     }
 
     @Override
@@ -74,4 +90,89 @@ public abstract class AbstractUTF8StringBinaryTokenizer implements IBinaryTokeni
             tokensLength.reset();
         }
     }
+
+    @Override
+    public int tokenize(byte[] data, int start, int length) throws IOException {
+        tokenBufferEnd = 0;
+        tokenEndOffsets.reset();
+        if (charToken == null) {
+            // the token cannot serialize decoded chars, fall back to one token at a time
+            if (tokenDos == null) {
+                tokenBaaos = new ByteArrayAccessibleOutputStream();
+                tokenDos = new DataOutputStream(tokenBaaos);
+            }
+            reset(data, start, length);
+            while (hasNext()) {
+                next();
+                tokenBaaos.reset();
+                token.serializeToken(tokenDos);
+                ensureTokenBufferCapacity(tokenBaaos.size());
+                System.arraycopy(tokenBaaos.getByteArray(), 0, tokenBuffer, tokenBufferEnd, tokenBaaos.size());
+                tokenBufferEnd += tokenBaaos.size();
+                tokenEndOffsets.add(tokenBufferEnd);
+            }
+        } else {
+            decode(data, start);
+            tokenizeChars();
+        }
+        return tokenEndOffsets.length();
+    }
+
+    /**
+     * Emits all tokens of the decoded chars with addToken().
+     */
+    protected abstract void tokenizeChars();
+
+    protected void addToken(int tokenStart, int tokenLength, int tokenCount) {
+        ensureTokenBufferCapacity(charToken.getMaxSerializedLength(tokenLength));
+        tokenBufferEnd = charToken.serializeToken(chars, tokenStart, tokenLength, tokenCount, tokenBuffer,
+                tokenBufferEnd);
+        tokenEndOffsets.add(tokenBufferEnd);
+    }
+
+    protected boolean charsEqual(int start0, int start1, int len) {
+        for (int i = 0; i < len; i++) {
+            if (chars[start0 + i] != chars[start1 + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the string into chars, in lower case, since tokens are compared
+     * and serialized in lower case.
+     */
+    private void decode(byte[] data, int start) {
+        int pos = start;
+        if (sourceHasTypeTag) {
+            pos++; // skip type tag
+        }
+        int end = pos + 2 + UTF8StringPointable.getUTFLen(data, pos);
+        pos += 2; // skip utf8 length indicator
+        if (chars.length < end - pos) {
+            chars = new char[Math.max(chars.length * 2, end - pos)];
+        }
+        numChars = 0;
+        while (pos < end) {
+            chars[numChars++] = Character.toLowerCase(UTF8StringPointable.charAt(data, pos));
+            pos += UTF8StringPointable.charSize(data, pos);
+        }
+    }
+
+    private void ensureTokenBufferCapacity(int bytesRequired) {
+        if (tokenBufferEnd + bytesRequired > tokenBuffer.length) {
+            tokenBuffer = Arrays.copyOf(tokenBuffer, Math.max(tokenBuffer.length * 2, tokenBufferEnd + bytesRequired));
+        }
+    }
+
+    @Override
+    public byte[] getTokenBuffer() {
+        return tokenBuffer;
+    }
+
+    @Override
+    public int[] getTokenEndOffsets() {
+        return tokenEndOffsets.get();
+    }
 }
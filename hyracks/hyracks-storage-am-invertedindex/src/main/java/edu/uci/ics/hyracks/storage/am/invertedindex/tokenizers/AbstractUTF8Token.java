@@ -101,4 +101,53 @@ public abstract class AbstractUTF8Token implements IToken {
         handleCountTypeTag(dos);
         dos.writeInt(tokenCount);
     }
+
+    /**
+     * Serializes a token whose characters are already decoded and in lower
+     * case, the same way serializeToken() does, into the buffer. The buffer
+     * must have room for getMaxSerializedLength(tokenLength) bytes.
+     * 
+     * @return the end offset of the token in the buffer
+     */
+    public abstract int serializeToken(char[] chars, int start, int tokenLength, int tokenCount, byte[] out,
+            int outStart);
+
+    public int getMaxSerializedLength(int tokenLength) {
+        // type tag, length indicator or hash, and up to three bytes per char
+        return 5 + 3 * tokenLength;
+    }
+
+    protected int writeTokenTypeTag(byte[] out, int pos) {
+        if (tokenTypeTag > 0) {
+            out[pos++] = tokenTypeTag;
+        }
+        return pos;
+    }
+
+    protected static int writeCharAsModifiedUTF8(char c, byte[] out, int pos) {
+        if (c >= 0x0000 && c <= 0x007F) {
+            out[pos++] = (byte) c;
+        } else if (c <= 0x07FF) {
+            out[pos++] = (byte) (0xC0 | ((c >> 6) & 0x3F));
+            out[pos++] = (byte) (0x80 | (c & 0x3F));
+        } else {
+            out[pos++] = (byte) (0xE0 | ((c >> 12) & 0x0F));
+            out[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            out[pos++] = (byte) (0x80 | (c & 0x3F));
+        }
+        return pos;
+    }
+
+    protected static void writeUTF8Len(int len, byte[] out, int pos) {
+        out[pos] = (byte) (len >>> 8);
+        out[pos + 1] = (byte) len;
+    }
+
+    protected static int writeInt(int v, byte[] out, int pos) {
+        out[pos++] = (byte) (v >>> 24);
+        out[pos++] = (byte) (v >>> 16);
+        out[pos++] = (byte) (v >>> 8);
+        out[pos++] = (byte) v;
+        return pos;
+    }
 }
\ No newline at end of file
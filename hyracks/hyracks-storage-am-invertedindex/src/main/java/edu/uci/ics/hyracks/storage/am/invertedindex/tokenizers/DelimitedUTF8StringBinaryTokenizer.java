@@ -78,4 +78,38 @@ public class DelimitedUTF8StringBinaryTokenizer extends AbstractUTF8StringBinary
         // set token
         token.reset(data, currentTokenStart, index, tokenLength, tokenCount);
     }
-}
\ No newline at end of file
+
+    @Override
+    protected void tokenizeChars() {
+        if (!ignoreTokenCount) {
+            tokensStart.reset();
+            tokensLength.reset();
+        }
+        int i = 0;
+        while (true) {
+            while (i < numChars && isSeparator(chars[i])) {
+                i++;
+            }
+            if (i == numChars) {
+                break;
+            }
+            int currentTokenStart = i;
+            while (i < numChars && !isSeparator(chars[i])) {
+                i++;
+            }
+            int currentTokenLength = i - currentTokenStart;
+            int tokenCount = 1;
+            if (!ignoreTokenCount) {
+                for (int j = 0; j < tokensStart.length(); ++j) {
+                    if (currentTokenLength == tokensLength.get(j)
+                            && charsEqual(currentTokenStart, tokensStart.get(j), currentTokenLength)) {
+                        tokenCount++;
+                    }
+                }
+                tokensStart.add(currentTokenStart);
+                tokensLength.add(currentTokenLength);
+            }
+            addToken(currentTokenStart, currentTokenLength, tokenCount);
+        }
+    }
+}
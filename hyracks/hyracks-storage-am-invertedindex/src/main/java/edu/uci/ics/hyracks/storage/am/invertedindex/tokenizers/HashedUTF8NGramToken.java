@@ -61,4 +61,24 @@ public class HashedUTF8NGramToken extends UTF8NGramToken {
 
         dos.writeInt(hash);
     }
+
+    @Override
+    public int serializeToken(char[] chars, int start, int tokenLength, int tokenCount, byte[] out, int outStart) {
+        int h = GOLDEN_RATIO_32;
+        for (int i = 0; i < numPreChars; i++) {
+            h ^= PRECHAR;
+            h *= GOLDEN_RATIO_32;
+        }
+        int numRegChars = tokenLength - numPreChars - numPostChars;
+        for (int i = 0; i < numRegChars; i++) {
+            h ^= chars[start + i];
+            h *= GOLDEN_RATIO_32;
+        }
+        for (int i = 0; i < numPostChars; i++) {
+            h ^= POSTCHAR;
+            h *= GOLDEN_RATIO_32;
+        }
+        h += tokenCount;
+        return writeInt(h, out, writeTokenTypeTag(out, outStart));
+    }
 }
@@ -84,4 +84,15 @@ public class HashedUTF8WordToken extends UTF8WordToken {
         // serialize hash value
         dos.writeInt(hash);
     }
+
+    @Override
+    public int serializeToken(char[] chars, int start, int tokenLength, int tokenCount, byte[] out, int outStart) {
+        int h = GOLDEN_RATIO_32;
+        for (int i = 0; i < tokenLength; i++) {
+            h ^= chars[start + i];
+            h *= GOLDEN_RATIO_32;
+        }
+        h += tokenCount;
+        return writeInt(h, out, writeTokenTypeTag(out, outStart));
+    }
 }
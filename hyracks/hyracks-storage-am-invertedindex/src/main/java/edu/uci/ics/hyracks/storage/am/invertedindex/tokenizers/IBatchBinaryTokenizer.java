@@ -0,0 +1,43 @@
+/**
+ * Copyright 2010-2011 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS"; BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under
+ * the License.
+ */
+
+package edu.uci.ics.hyracks.storage.am.invertedindex.tokenizers;
+
+import java.io.IOException;
+
+/**
+ * A tokenizer that can also tokenize a whole string at once: the string is
+ * decoded a single time and all of its tokens are serialized, one after the
+ * other, into a buffer that is reused for every string.
+ */
+public interface IBatchBinaryTokenizer extends IBinaryTokenizer {
+    /**
+     * Serializes all tokens of the string into the token buffer, the same way
+     * IToken.serializeToken() would.
+     * 
+     * @return the number of tokens
+     */
+    public int tokenize(byte[] data, int start, int length) throws IOException;
+
+    public byte[] getTokenBuffer();
+
+    /**
+     * Gets the end offsets of the tokens in the token buffer. The first token
+     * starts at offset 0, every other token at the end of the one before.
+     */
+    public int[] getTokenEndOffsets();
+}
@@ -28,6 +28,7 @@ public class NGramUTF8StringBinaryTokenizer extends AbstractUTF8StringBinaryToke
 
     private int gramNum;
     private int totalGrams;
+    private int firstCharIndex;
 
     private final INGramToken concreteToken;
 
@@ -68,7 +69,7 @@ public class NGramUTF8StringBinaryTokenizer extends AbstractUTF8StringBinaryToke
         // compute token count
         // ignore pre and post grams for duplicate detection
         if (!ignoreTokenCount && numPreChars == 0 && numPostChars == 0) {
-            int tmpIndex = start;
+            int tmpIndex = firstCharIndex;
             while (tmpIndex < currentTokenStart) {
                 tokenCount++; // assume found
                 int offset = 0;
@@ -92,6 +93,7 @@ public class NGramUTF8StringBinaryTokenizer extends AbstractUTF8StringBinaryToke
     public void reset(byte[] data, int start, int length) {
         super.reset(data, start, length);
         gramNum = 0;
+        firstCharIndex = index;
 
         int numChars = 0;
         int pos = index;
@@ -108,6 +110,33 @@ public class NGramUTF8StringBinaryTokenizer extends AbstractUTF8StringBinaryToke
         }
     }
 
+    @Override
+    protected void tokenizeChars() {
+        // the grams of the string padded with gramLength - 1 pre and post chars, or of the bare string
+        int numGrams = usePrePost ? numChars + gramLength - 1 : numChars - gramLength + 1;
+        for (int i = 0; i < numGrams; i++) {
+            int numPreChars = 0;
+            int numPostChars = 0;
+            int currentTokenStart = i;
+            if (usePrePost) {
+                numPreChars = Math.max(gramLength - i - 1, 0);
+                numPostChars = Math.max(i + 1 - numChars, 0);
+                currentTokenStart = i - gramLength + 1 + numPreChars;
+            }
+            int tokenCount = 1;
+            // ignore pre and post grams for duplicate detection
+            if (!ignoreTokenCount && numPreChars == 0 && numPostChars == 0) {
+                for (int j = 0; j < currentTokenStart; j++) {
+                    if (charsEqual(j, currentTokenStart, gramLength)) {
+                        tokenCount++;
+                    }
+                }
+            }
+            concreteToken.setNumPrePostChars(numPreChars, numPostChars);
+            addToken(currentTokenStart, gramLength, tokenCount);
+        }
+    }
+
     public void setGramlength(int gramLength) {
         this.gramLength = gramLength;
     }
@@ -83,4 +83,22 @@ public class UTF8NGramToken extends AbstractUTF8Token implements INGramToken {
         this.numPreChars = numPreChars;
         this.numPostChars = numPostChars;
     }
+
+    @Override
+    public int serializeToken(char[] chars, int start, int tokenLength, int tokenCount, byte[] out, int outStart) {
+        int lenPos = writeTokenTypeTag(out, outStart);
+        int pos = lenPos + 2;
+        for (int i = 0; i < numPreChars; i++) {
+            out[pos++] = PRECHAR;
+        }
+        int numRegChars = tokenLength - numPreChars - numPostChars;
+        for (int i = 0; i < numRegChars; i++) {
+            pos = writeCharAsModifiedUTF8(chars[start + i], out, pos);
+        }
+        for (int i = 0; i < numPostChars; i++) {
+            out[pos++] = POSTCHAR;
+        }
+        writeUTF8Len(pos - lenPos - 2, out, lenPos);
+        return pos;
+    }
 }
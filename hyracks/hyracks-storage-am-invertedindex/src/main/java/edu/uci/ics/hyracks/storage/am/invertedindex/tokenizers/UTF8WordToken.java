@@ -44,4 +44,15 @@ public class UTF8WordToken extends AbstractUTF8Token {
             pos += UTF8StringPointable.charSize(data, pos);
         }
     }
+
+    @Override
+    public int serializeToken(char[] chars, int start, int tokenLength, int tokenCount, byte[] out, int outStart) {
+        int lenPos = writeTokenTypeTag(out, outStart);
+        int pos = lenPos + 2;
+        for (int i = 0; i < tokenLength; i++) {
+            pos = writeCharAsModifiedUTF8(chars[start + i], out, pos);
+        }
+        writeUTF8Len(pos - lenPos - 2, out, lenPos);
+        return pos;
+    }
 }
@@ -15,6 +15,7 @@
 
 package edu.uci.ics.hyracks.storage.am.rtree.api;
 
+import edu.uci.ics.hyracks.storage.am.common.api.IPrimitiveValueProvider;
 import edu.uci.ics.hyracks.storage.am.common.api.ISplitKey;
 import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexFrame;
 import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexTupleReference;
@@ -36,4 +37,6 @@ public interface IRTreeFrame extends ITreeIndexFrame {
 
 	public void adjustMBR(ITreeIndexTupleReference[] tuples);
 
+	public IPrimitiveValueProvider[] getKeyValueProviders();
+
 }
\ No newline at end of file
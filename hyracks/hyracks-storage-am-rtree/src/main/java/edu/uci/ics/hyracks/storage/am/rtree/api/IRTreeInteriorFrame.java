@@ -25,6 +25,8 @@ public interface IRTreeInteriorFrame extends IRTreeFrame {
 
 	public int getBestChildPageId();
 
+	public int getChildPageId(int tupleIndex, MultiComparator cmp);
+
 	public int getChildPageIdIfIntersect(ITupleReference tuple, int tupleIndex,
 			MultiComparator cmp);
 
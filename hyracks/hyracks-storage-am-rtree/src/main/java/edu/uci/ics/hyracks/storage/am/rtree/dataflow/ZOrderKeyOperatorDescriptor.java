@@ -0,0 +1,56 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.am.rtree.dataflow;
+
+import edu.uci.ics.hyracks.api.context.IHyracksTaskContext;
+import edu.uci.ics.hyracks.api.dataflow.IOperatorNodePushable;
+import edu.uci.ics.hyracks.api.dataflow.value.IRecordDescriptorProvider;
+import edu.uci.ics.hyracks.api.dataflow.value.RecordDescriptor;
+import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
+import edu.uci.ics.hyracks.api.job.JobSpecification;
+import edu.uci.ics.hyracks.dataflow.std.base.AbstractSingleActivityOperatorDescriptor;
+import edu.uci.ics.hyracks.storage.am.common.api.IPrimitiveValueProviderFactory;
+
+/**
+ * Appends to every tuple the Z-order key of the center of its MBR, as a
+ * 64-bit integer field after the input fields. Sorting on that field, e.g.
+ * with the ExternalSortOperatorDescriptor, puts the tuples in the global
+ * spatial order that the R-tree bulk load expects. The bulk load operator
+ * drops the key again with its field permutation.
+ */
+public class ZOrderKeyOperatorDescriptor extends AbstractSingleActivityOperatorDescriptor {
+
+    private static final long serialVersionUID = 1L;
+
+    // the MBR fields, the low corner first, as in the R-tree keys
+    private final int[] mbrFields;
+    private final IPrimitiveValueProviderFactory[] valueProviderFactories;
+
+    public ZOrderKeyOperatorDescriptor(JobSpecification spec, RecordDescriptor recDesc, int[] mbrFields,
+            IPrimitiveValueProviderFactory[] valueProviderFactories) {
+        super(spec, 1, 1);
+        this.mbrFields = mbrFields;
+        this.valueProviderFactories = valueProviderFactories;
+        recordDescriptors[0] = recDesc;
+    }
+
+    @Override
+    public IOperatorNodePushable createPushRuntime(IHyracksTaskContext ctx, IRecordDescriptorProvider recordDescProvider,
+            int partition, int nPartitions) throws HyracksDataException {
+        return new ZOrderKeyOperatorNodePushable(ctx, recordDescProvider.getInputRecordDescriptor(odId, 0),
+                recordDescriptors[0], mbrFields, valueProviderFactories);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.am.rtree.dataflow;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import edu.uci.ics.hyracks.api.context.IHyracksTaskContext;
+import edu.uci.ics.hyracks.api.dataflow.value.RecordDescriptor;
+import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.ArrayTupleBuilder;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAccessor;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAppender;
+import edu.uci.ics.hyracks.dataflow.common.comm.util.FrameUtils;
+import edu.uci.ics.hyracks.dataflow.std.base.AbstractUnaryInputUnaryOutputOperatorNodePushable;
+import edu.uci.ics.hyracks.storage.am.common.api.IPrimitiveValueProvider;
+import edu.uci.ics.hyracks.storage.am.common.api.IPrimitiveValueProviderFactory;
+import edu.uci.ics.hyracks.storage.am.rtree.util.RTreeUtils;
+
+public class ZOrderKeyOperatorNodePushable extends AbstractUnaryInputUnaryOutputOperatorNodePushable {
+
+    private final IHyracksTaskContext ctx;
+    private final RecordDescriptor inputRecDesc;
+    private final RecordDescriptor outputRecDesc;
+    private final int[] mbrFields;
+    private final IPrimitiveValueProvider[] valueProviders;
+    private final double[] center;
+
+    private FrameTupleAccessor accessor;
+    private ArrayTupleBuilder builder;
+    private FrameTupleAppender appender;
+    private ByteBuffer writeBuffer;
+
+    public ZOrderKeyOperatorNodePushable(IHyracksTaskContext ctx, RecordDescriptor inputRecDesc,
+            RecordDescriptor outputRecDesc, int[] mbrFields, IPrimitiveValueProviderFactory[] valueProviderFactories) {
+        this.ctx = ctx;
+        this.inputRecDesc = inputRecDesc;
+        this.outputRecDesc = outputRecDesc;
+        this.mbrFields = mbrFields;
+        this.valueProviders = new IPrimitiveValueProvider[valueProviderFactories.length];
+        for (int i = 0; i < valueProviderFactories.length; i++) {
+            valueProviders[i] = valueProviderFactories[i].createPrimitiveValueProvider();
+        }
+        this.center = new double[mbrFields.length / 2];
+    }
+
+    @Override
+    public void open() throws HyracksDataException {
+        accessor = new FrameTupleAccessor(ctx.getFrameSize(), inputRecDesc);
+        writeBuffer = ctx.allocateFrame();
+        builder = new ArrayTupleBuilder(outputRecDesc.getFieldCount());
+        appender = new FrameTupleAppender(ctx.getFrameSize());
+        appender.reset(writeBuffer, true);
+        writer.open();
+    }
+
+    @Override
+    public void nextFrame(ByteBuffer buffer) throws HyracksDataException {
+        accessor.reset(buffer);
+        byte[] bytes = accessor.getBuffer().array();
+        int fieldCount = accessor.getFieldCount();
+        int tupleCount = accessor.getTupleCount();
+        for (int i = 0; i < tupleCount; i++) {
+            int fieldsStart = accessor.getTupleStartOffset(i) + accessor.getFieldSlotsLength();
+            for (int d = 0; d < center.length; d++) {
+                int j = d + center.length;
+                double low = valueProviders[d].getValue(bytes,
+                        fieldsStart + accessor.getFieldStartOffset(i, mbrFields[d]));
+                double high = valueProviders[j].getValue(bytes,
+                        fieldsStart + accessor.getFieldStartOffset(i, mbrFields[j]));
+                center[d] = (low + high) / 2.0;
+            }
+
+            builder.reset();
+            for (int k = 0; k < fieldCount; k++) {
+                builder.addField(accessor, i, k);
+            }
+            try {
+                builder.getDataOutput().writeLong(RTreeUtils.computeZOrderKey(center));
+            } catch (IOException e) {
+                throw new HyracksDataException(e);
+            }
+            builder.addFieldEndOffset();
+
+            if (!appender.append(builder.getFieldEndOffsets(), builder.getByteArray(), 0, builder.getSize())) {
+                FrameUtils.flushFrame(writeBuffer, writer);
+                appender.reset(writeBuffer, true);
+                if (!appender.append(builder.getFieldEndOffsets(), builder.getByteArray(), 0, builder.getSize())) {
+                    throw new IllegalStateException();
+                }
+            }
+        }
+
+        if (appender.getTupleCount() > 0) {
+            FrameUtils.flushFrame(writeBuffer, writer);
+            appender.reset(writeBuffer, true);
+        }
+    }
+
+    @Override
+    public void close() throws HyracksDataException {
+        writer.close();
+    }
+
+    @Override
+    public void fail() throws HyracksDataException {
+        writer.fail();
+    }
+}
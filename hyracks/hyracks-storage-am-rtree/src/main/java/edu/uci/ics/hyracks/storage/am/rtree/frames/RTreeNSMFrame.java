@@ -120,6 +120,11 @@ public abstract class RTreeNSMFrame extends TreeIndexNSMFrame implements
 		buf.putInt(rightPageOff, rightPage);
 	}
 
+	@Override
+	public IPrimitiveValueProvider[] getKeyValueProviders() {
+		return keyValueProviders;
+	}
+
 	protected ITreeIndexTupleReference[] getTuples() {
 		return tuples;
 	}
@@ -155,6 +155,13 @@ public class RTreeNSMInteriorFrame extends RTreeNSMFrame implements IRTreeInteri
         return buf.getInt(getChildPointerOff(frameTuple));
     }
 
+    @Override
+    public int getChildPageId(int tupleIndex, MultiComparator cmp) {
+        frameTuple.setFieldCount(cmp.getKeyFieldCount());
+        frameTuple.resetByTupleIndex(this, tupleIndex);
+        return buf.getInt(getChildPointerOff(frameTuple));
+    }
+
     @Override
     public int findTupleByPointer(ITupleReference tuple, MultiComparator cmp) {
         frameTuple.setFieldCount(cmp.getKeyFieldCount());
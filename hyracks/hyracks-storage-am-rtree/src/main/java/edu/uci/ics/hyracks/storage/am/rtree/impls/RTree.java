@@ -23,16 +23,17 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 import edu.uci.ics.hyracks.api.dataflow.value.ISerializerDeserializer;
 import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
 import edu.uci.ics.hyracks.dataflow.common.data.accessors.ITupleReference;
+import edu.uci.ics.hyracks.storage.am.common.api.IBufferedBulkLoadIndex;
 import edu.uci.ics.hyracks.storage.am.common.api.IFreePageManager;
 import edu.uci.ics.hyracks.storage.am.common.api.IIndexBulkLoadContext;
 import edu.uci.ics.hyracks.storage.am.common.api.IIndexOpContext;
 import edu.uci.ics.hyracks.storage.am.common.api.ISearchPredicate;
-import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndex;
 import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexAccessor;
 import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexCursor;
 import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexFrame;
 import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexFrameFactory;
 import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexMetaDataFrame;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexTupleWriter;
 import edu.uci.ics.hyracks.storage.am.common.api.IndexType;
 import edu.uci.ics.hyracks.storage.am.common.api.PageAllocationException;
 import edu.uci.ics.hyracks.storage.am.common.api.TreeIndexException;
@@ -49,7 +50,7 @@ import edu.uci.ics.hyracks.storage.common.buffercache.IBufferCache;
 import edu.uci.ics.hyracks.storage.common.buffercache.ICachedPage;
 import edu.uci.ics.hyracks.storage.common.file.BufferedFileHandle;
 
-public class RTree implements ITreeIndex {
+public class RTree implements IBufferedBulkLoadIndex {
 
     private boolean created = false;
     private boolean loaded = false;
@@ -963,39 +964,244 @@ public class RTree implements ITreeIndex {
         throw new UnsupportedOperationException("RTree Update not implemented.");
     }
 
+    // the tuples of a bulk load are tiled in STR order in windows of this many
+    // pages. The window only tiles neighboring leaves, the input is expected
+    // in a global spatial order, e.g. sorted on RTreeUtils.computeZOrderKey().
+    private static final int BULKLOAD_WINDOW_PAGES = 32;
+
+    private final class NodeFrontier {
+        public ICachedPage page;
+        public int pageId;
+        // the MBR of the node and its page id, for the entry in its parent
+        public final RTreeSplitKey mbr;
+
+        public NodeFrontier(RTreeSplitKey mbr) {
+            this.mbr = mbr;
+        }
+    }
+
     public final class BulkLoadContext implements IIndexBulkLoadContext {
+        public final int slotSize;
+        public final int leafMaxBytes;
+        public final int interiorMaxBytes;
+        // we maintain a frontier of nodes for each level
+        private final ArrayList<NodeFrontier> nodeFrontiers = new ArrayList<NodeFrontier>();
+        private final IRTreeLeafFrame leafFrame;
+        private final IRTreeInteriorFrame interiorFrame;
+        private final ITreeIndexMetaDataFrame metaFrame;
+        private final STRTupleBuffer tupleBuffer;
+
+        public BulkLoadContext(float fillFactor, int windowSize, IRTreeLeafFrame leafFrame,
+                IRTreeInteriorFrame interiorFrame, ITreeIndexMetaDataFrame metaFrame) throws HyracksDataException,
+                PageAllocationException {
+            this.leafFrame = leafFrame;
+            this.interiorFrame = interiorFrame;
+            this.metaFrame = metaFrame;
+
+            NodeFrontier leafFrontier = createFrontier();
+            leafFrame.setPage(leafFrontier.page);
+            leafFrame.initBuffer((byte) 0);
+            leafMaxBytes = (int) ((float) leafFrame.getBuffer().capacity() * fillFactor);
+            interiorMaxBytes = leafMaxBytes;
+            slotSize = leafFrame.getSlotSize();
+            nodeFrontiers.add(leafFrontier);
+
+            tupleBuffer = new STRTupleBuffer(leafFrame.getTupleWriter(), fieldCount,
+                    leafFrame.getKeyValueProviders(), windowSize);
+        }
 
-        public ITreeIndexAccessor indexAccessor;
+        private NodeFrontier createFrontier() throws HyracksDataException, PageAllocationException {
+            RTreeSplitKey mbr = new RTreeSplitKey(interiorFrame.createTupleReference(),
+                    interiorFrame.createTupleReference());
+            mbr.getLeftTuple().setFieldCount(cmp.getKeyFieldCount());
+            mbr.getRightTuple().setFieldCount(cmp.getKeyFieldCount());
+            NodeFrontier frontier = new NodeFrontier(mbr);
+            frontier.pageId = freePageManager.getFreePage(metaFrame);
+            frontier.page = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, frontier.pageId), true);
+            frontier.page.acquireWriteLatch();
+            numOfPages++; // debug
+            return frontier;
+        }
 
-        public BulkLoadContext(float fillFactor, IRTreeFrame leafFrame, IRTreeFrame interiorFrame,
-                ITreeIndexMetaDataFrame metaFrame) throws HyracksDataException {
-        	indexAccessor = createAccessor();
+        private void addLevel() throws HyracksDataException, PageAllocationException {
+            NodeFrontier frontier = createFrontier();
+            interiorFrame.setPage(frontier.page);
+            interiorFrame.initBuffer((byte) nodeFrontiers.size());
+            nodeFrontiers.add(frontier);
         }
     }
 
     @Override
-    public IIndexBulkLoadContext beginBulkLoad(float fillFactor) throws HyracksDataException {
+    public int getBulkLoadWindowSize() {
+        return BULKLOAD_WINDOW_PAGES * bufferCache.getPageSize();
+    }
+
+    @Override
+    public IIndexBulkLoadContext beginBulkLoad(float fillFactor) throws TreeIndexException, HyracksDataException,
+            PageAllocationException {
+        return beginBulkLoad(fillFactor, getBulkLoadWindowSize());
+    }
+
+    @Override
+    public IIndexBulkLoadContext beginBulkLoad(float fillFactor, int windowSize) throws TreeIndexException,
+            HyracksDataException, PageAllocationException {
         if (loaded) {
             throw new HyracksDataException("Trying to bulk-load RTree but RTree has already been loaded.");
         }
+        IRTreeLeafFrame leafFrame = (IRTreeLeafFrame) leafFrameFactory.createFrame();
+        ICachedPage rootNode = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, rootPage), false);
+        rootNode.acquireReadLatch();
+        try {
+            leafFrame.setPage(rootNode);
+            if (!leafFrame.isLeaf() || leafFrame.getTupleCount() > 0) {
+                throw new TreeIndexException("Trying to bulk-load a non-empty RTree.");
+            }
+        } finally {
+            rootNode.releaseReadLatch();
+            bufferCache.unpin(rootNode);
+        }
 
-        BulkLoadContext ctx = new BulkLoadContext(fillFactor, (IRTreeFrame) leafFrameFactory.createFrame(),
-                (IRTreeFrame) interiorFrameFactory.createFrame(), freePageManager.getMetaDataFrameFactory()
+        return new BulkLoadContext(fillFactor, windowSize, leafFrame,
+                (IRTreeInteriorFrame) interiorFrameFactory.createFrame(), freePageManager.getMetaDataFrameFactory()
                         .createFrame());
-        return ctx;
     }
 
     @Override
-    public void bulkLoadAddTuple(ITupleReference tuple, IIndexBulkLoadContext ictx) throws HyracksDataException {
-        try {
-        	((BulkLoadContext) ictx).indexAccessor.insert(tuple);
-        } catch (Exception e) {
-            throw new HyracksDataException("BulkLoad Error");
+    public void bulkLoadAddTuple(ITupleReference tuple, IIndexBulkLoadContext ictx) throws HyracksDataException,
+            PageAllocationException {
+        BulkLoadContext ctx = (BulkLoadContext) ictx;
+        if (!ctx.tupleBuffer.add(tuple)) {
+            packTuples(ctx);
+            ctx.tupleBuffer.add(tuple);
         }
     }
 
+    /**
+     * Puts the buffered tuples in STR order and appends them to the leaf level,
+     * filling every leaf up to the fill factor. A full node is closed and its
+     * MBR is appended to the level above it.
+     */
+    private void packTuples(BulkLoadContext ctx) throws HyracksDataException, PageAllocationException {
+        STRTupleBuffer tupleBuffer = ctx.tupleBuffer;
+        int tupleCount = tupleBuffer.getTupleCount();
+        if (tupleCount == 0) {
+            return;
+        }
+        NodeFrontier leafFrontier = ctx.nodeFrontiers.get(0);
+        IRTreeLeafFrame leafFrame = ctx.leafFrame;
+        ITreeIndexTupleWriter tupleWriter = leafFrame.getTupleWriter();
+        leafFrame.setPage(leafFrontier.page);
+        if (leafFrame.getTupleCount() > 0) {
+            // start the tuples of this window in a new leaf, to keep the leaves aligned with the tiles of the window
+            closeNode(ctx, 0);
+            leafFrame.setPage(leafFrontier.page);
+            leafFrame.initBuffer((byte) 0);
+        }
+        int spaceUsed = leafFrame.getBuffer().capacity() - leafFrame.getTotalFreeSpace();
+        int avgTupleSize = tupleBuffer.getSize() / tupleCount + ctx.slotSize;
+        tupleBuffer.sort((ctx.leafMaxBytes - spaceUsed) / avgTupleSize);
+
+        for (int i = 0; i < tupleCount; i++) {
+            ITupleReference tuple = tupleBuffer.getTuple(i);
+            leafFrame.setPage(leafFrontier.page);
+            int spaceNeeded = tupleWriter.bytesRequired(tuple) + ctx.slotSize;
+            spaceUsed = leafFrame.getBuffer().capacity() - leafFrame.getTotalFreeSpace();
+            if (spaceUsed + spaceNeeded > ctx.leafMaxBytes && leafFrame.getTupleCount() > 0) {
+                closeNode(ctx, 0);
+                leafFrame.setPage(leafFrontier.page);
+                leafFrame.initBuffer((byte) 0);
+            }
+            leafFrame.insert(tuple, -1);
+        }
+        tupleBuffer.reset();
+    }
+
+    /**
+     * Appends the MBR of the node at the frontier of the given level to the
+     * level above it and starts a new node at the frontier.
+     */
+    private void closeNode(BulkLoadContext ctx, int level) throws HyracksDataException, PageAllocationException {
+        NodeFrontier frontier = ctx.nodeFrontiers.get(level);
+        IRTreeFrame frame = level == 0 ? ctx.leafFrame : ctx.interiorFrame;
+        frame.setPage(frontier.page);
+        frame.computeMBR(frontier.mbr);
+        frontier.mbr.setLeftPage(frontier.pageId);
+        frontier.page.releaseWriteLatch();
+        bufferCache.unpin(frontier.page);
+
+        addEntry(ctx, level + 1, frontier.mbr.getLeftTuple());
+
+        frontier.pageId = freePageManager.getFreePage(ctx.metaFrame);
+        frontier.page = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, frontier.pageId), true);
+        frontier.page.acquireWriteLatch();
+        numOfPages++; // debug
+        if (level > 0) {
+            ctx.interiorFrame.setPage(frontier.page);
+            ctx.interiorFrame.initBuffer((byte) level);
+        }
+    }
+
+    private void addEntry(BulkLoadContext ctx, int level, ITupleReference tuple) throws HyracksDataException,
+            PageAllocationException {
+        if (level >= ctx.nodeFrontiers.size()) {
+            ctx.addLevel();
+        }
+        NodeFrontier frontier = ctx.nodeFrontiers.get(level);
+        IRTreeInteriorFrame interiorFrame = ctx.interiorFrame;
+        interiorFrame.setPage(frontier.page);
+        int spaceNeeded = interiorFrame.getTupleWriter().bytesRequired(tuple) + 4 + ctx.slotSize;
+        int spaceUsed = interiorFrame.getBuffer().capacity() - interiorFrame.getTotalFreeSpace();
+        if (spaceUsed + spaceNeeded > ctx.interiorMaxBytes && interiorFrame.getTupleCount() > 0) {
+            closeNode(ctx, level);
+            interiorFrame.setPage(frontier.page);
+        }
+        interiorFrame.insert(tuple, -1);
+    }
+
     @Override
-    public void endBulkLoad(IIndexBulkLoadContext ictx) throws HyracksDataException {
+    public void endBulkLoad(IIndexBulkLoadContext ictx) throws HyracksDataException, PageAllocationException {
+        BulkLoadContext ctx = (BulkLoadContext) ictx;
+        packTuples(ctx);
+
+        // close the last node of every level but the top one, which becomes the root
+        for (int level = 0; level < ctx.nodeFrontiers.size() - 1; level++) {
+            NodeFrontier frontier = ctx.nodeFrontiers.get(level);
+            IRTreeFrame frame = level == 0 ? ctx.leafFrame : ctx.interiorFrame;
+            frame.setPage(frontier.page);
+            if (frame.getTupleCount() > 0) {
+                frame.computeMBR(frontier.mbr);
+                frontier.mbr.setLeftPage(frontier.pageId);
+                frontier.page.releaseWriteLatch();
+                bufferCache.unpin(frontier.page);
+                addEntry(ctx, level + 1, frontier.mbr.getLeftTuple());
+            } else {
+                frame.initBuffer(freePageManager.getFreePageLevelIndicator());
+                frontier.page.releaseWriteLatch();
+                bufferCache.unpin(frontier.page);
+                freePageManager.addFreePage(ctx.metaFrame, frontier.pageId);
+            }
+        }
+
+        // copy root
+        NodeFrontier lastNodeFrontier = ctx.nodeFrontiers.get(ctx.nodeFrontiers.size() - 1);
+        ICachedPage rootNode = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, rootPage), false);
+        rootNode.acquireWriteLatch();
+        try {
+            ICachedPage toBeRoot = lastNodeFrontier.page;
+            System.arraycopy(toBeRoot.getBuffer().array(), 0, rootNode.getBuffer().array(), 0, toBeRoot.getBuffer()
+                    .capacity());
+        } finally {
+            rootNode.releaseWriteLatch();
+            bufferCache.unpin(rootNode);
+
+            // make old root a free page
+            ctx.interiorFrame.setPage(lastNodeFrontier.page);
+            ctx.interiorFrame.initBuffer(freePageManager.getFreePageLevelIndicator());
+            lastNodeFrontier.page.releaseWriteLatch();
+            bufferCache.unpin(lastNodeFrontier.page);
+            freePageManager.addFreePage(ctx.metaFrame, lastNodeFrontier.pageId);
+        }
+        currentLevel = (byte) (ctx.nodeFrontiers.size() - 1);
         loaded = true;
     }
 
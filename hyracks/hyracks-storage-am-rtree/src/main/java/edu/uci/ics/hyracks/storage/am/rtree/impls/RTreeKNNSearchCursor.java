@@ -0,0 +1,306 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.am.rtree.impls;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
+import edu.uci.ics.hyracks.dataflow.common.data.accessors.ITupleReference;
+import edu.uci.ics.hyracks.storage.am.common.api.ICursorInitialState;
+import edu.uci.ics.hyracks.storage.am.common.api.IPrimitiveValueProvider;
+import edu.uci.ics.hyracks.storage.am.common.api.ISearchPredicate;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexCursor;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexTupleReference;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexTupleWriter;
+import edu.uci.ics.hyracks.storage.am.common.ophelpers.MultiComparator;
+import edu.uci.ics.hyracks.storage.am.rtree.api.IRTreeInteriorFrame;
+import edu.uci.ics.hyracks.storage.am.rtree.api.IRTreeLeafFrame;
+import edu.uci.ics.hyracks.storage.common.buffercache.IBufferCache;
+import edu.uci.ics.hyracks.storage.common.buffercache.ICachedPage;
+import edu.uci.ics.hyracks.storage.common.file.BufferedFileHandle;
+
+/**
+ * Finds the k tuples closest to the point of a {@link KNNSearchPredicate},
+ * best-first: the nodes to visit wait in a priority queue ordered by the
+ * minimum distance (MINDIST) from the point to their MBR, and the search stops
+ * as soon as the closest node left is farther than the k-th closest tuple found
+ * so far. Every page is read at most once, and only pages whose MBR is closer
+ * than the k-th result are read at all. The tuples come out in order of
+ * increasing distance, ties in no particular order.
+ */
+public class RTreeKNNSearchCursor implements ITreeIndexCursor {
+
+    private int fileId = -1;
+    private IRTreeInteriorFrame interiorFrame = null;
+    private IRTreeLeafFrame leafFrame = null;
+    private IBufferCache bufferCache = null;
+
+    private final ITreeIndexTupleWriter tupleWriter;
+    private final ITreeIndexTupleReference interiorFrameTuple;
+    private final ITreeIndexTupleReference leafFrameTuple;
+    private final ITreeIndexTupleReference frameTuple;
+    private final IPrimitiveValueProvider[] keyValueProviders;
+    private final int dim;
+    private final double[] point;
+
+    private final PriorityQueue<NodeEntry> nodes = new PriorityQueue<NodeEntry>();
+    // farthest candidate on top
+    private final PriorityQueue<Candidate> candidates = new PriorityQueue<Candidate>(11,
+            Collections.reverseOrder());
+    // tuple copies of earlier searches, to copy the next results into
+    private final List<Candidate> spares = new ArrayList<Candidate>();
+    private Candidate[] results = new Candidate[0];
+    private int resultCount = 0;
+    private int resultIndex = 0;
+    private int rootPage;
+    private int k;
+
+    public RTreeKNNSearchCursor(IRTreeInteriorFrame interiorFrame, IRTreeLeafFrame leafFrame) {
+        this.interiorFrame = interiorFrame;
+        this.leafFrame = leafFrame;
+        this.tupleWriter = leafFrame.getTupleWriter();
+        this.interiorFrameTuple = interiorFrame.createTupleReference();
+        this.leafFrameTuple = leafFrame.createTupleReference();
+        this.frameTuple = leafFrame.createTupleReference();
+        this.keyValueProviders = leafFrame.getKeyValueProviders();
+        this.dim = keyValueProviders.length / 2;
+        this.point = new double[dim];
+    }
+
+    @Override
+    public void close() throws Exception {
+        clear();
+    }
+
+    private void clear() {
+        nodes.clear();
+        spares.addAll(candidates);
+        candidates.clear();
+        for (int i = 0; i < resultCount; i++) {
+            spares.add(results[i]);
+        }
+        resultCount = 0;
+        resultIndex = 0;
+    }
+
+    @Override
+    public ITupleReference getTuple() {
+        return frameTuple;
+    }
+
+    /**
+     * Gets the square of the distance between the query point and the tuple
+     * returned by the last call to next().
+     */
+    public double getDistance() {
+        return results[resultIndex - 1].distance;
+    }
+
+    @Override
+    public ICachedPage getPage() {
+        // all pages are released by the time the results are returned
+        return null;
+    }
+
+    @Override
+    public boolean hasNext() throws Exception {
+        return resultIndex < resultCount;
+    }
+
+    @Override
+    public void next() throws Exception {
+        frameTuple.resetByTupleOffset(results[resultIndex++].buf, 0);
+    }
+
+    @Override
+    public void open(ICursorInitialState initialState, ISearchPredicate searchPred) throws HyracksDataException {
+        clear();
+        rootPage = ((RTreeCursorInitialState) initialState).getRootPage();
+
+        KNNSearchPredicate pred = (KNNSearchPredicate) searchPred;
+        MultiComparator cmp = pred.getLowKeyComparator();
+        ITupleReference searchKey = pred.getSearchKey();
+        if (searchKey.getFieldCount() < dim) {
+            throw new IllegalArgumentException("The query point has " + searchKey.getFieldCount()
+                    + " coordinates, the R-tree has " + dim + " dimensions.");
+        }
+        for (int i = 0; i < dim; i++) {
+            point[i] = keyValueProviders[i].getValue(searchKey.getFieldData(i), searchKey.getFieldStart(i));
+        }
+        k = pred.getK();
+        interiorFrameTuple.setFieldCount(cmp.getKeyFieldCount());
+        if (k <= 0) {
+            return;
+        }
+
+        nodes.add(new NodeEntry(rootPage, -1, 0.0));
+        while (!nodes.isEmpty()) {
+            NodeEntry node = nodes.poll();
+            if (candidates.size() == k && node.distance >= candidates.peek().distance) {
+                break;
+            }
+            visit(node, cmp);
+        }
+        nodes.clear();
+
+        resultCount = candidates.size();
+        if (results.length < resultCount) {
+            results = Arrays.copyOf(results, resultCount);
+        }
+        // the farthest candidates come off the heap first
+        for (int i = resultCount - 1; i >= 0; i--) {
+            results[i] = candidates.poll();
+        }
+        resultIndex = 0;
+    }
+
+    private void visit(NodeEntry node, MultiComparator cmp) throws HyracksDataException {
+        ICachedPage page = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, node.pageId), false);
+        page.acquireReadLatch();
+        try {
+            interiorFrame.setPage(page);
+            if (node.pageId != rootPage && node.parentLsn < interiorFrame.getPageNsn()) {
+                // Concurrent split detected, the right page holds some of the
+                // entries that the parent's MBR for this page covered
+                int rightPage = interiorFrame.getRightPage();
+                if (rightPage != -1) {
+                    nodes.add(new NodeEntry(rightPage, node.parentLsn, node.distance));
+                }
+            }
+
+            if (!interiorFrame.isLeaf()) {
+                long pageLsn = interiorFrame.getPageLsn();
+                int tupleCount = interiorFrame.getTupleCount();
+                for (int i = 0; i < tupleCount; i++) {
+                    interiorFrameTuple.resetByTupleIndex(interiorFrame, i);
+                    double distance = minDistance(interiorFrameTuple);
+                    if (candidates.size() < k || distance < candidates.peek().distance) {
+                        nodes.add(new NodeEntry(interiorFrame.getChildPageId(i, cmp), pageLsn, distance));
+                    }
+                }
+            } else {
+                leafFrame.setPage(page);
+                int tupleCount = leafFrame.getTupleCount();
+                for (int i = 0; i < tupleCount; i++) {
+                    leafFrameTuple.resetByTupleIndex(leafFrame, i);
+                    double distance = minDistance(leafFrameTuple);
+                    if (candidates.size() < k) {
+                        candidates.add(copy(leafFrameTuple, distance, newCandidate()));
+                    } else if (distance < candidates.peek().distance) {
+                        candidates.add(copy(leafFrameTuple, distance, candidates.poll()));
+                    }
+                }
+            }
+        } finally {
+            page.releaseReadLatch();
+            bufferCache.unpin(page);
+        }
+    }
+
+    /**
+     * Computes the square of the minimum distance between the query point and
+     * the rectangle in the key fields of the tuple.
+     */
+    private double minDistance(ITupleReference tuple) {
+        double distance = 0.0;
+        for (int i = 0; i < dim; i++) {
+            int j = dim + i;
+            double low = keyValueProviders[i].getValue(tuple.getFieldData(i), tuple.getFieldStart(i));
+            double d = low - point[i];
+            if (d <= 0.0) {
+                double high = keyValueProviders[j].getValue(tuple.getFieldData(j), tuple.getFieldStart(j));
+                d = point[i] - high;
+                if (d <= 0.0) {
+                    continue;
+                }
+            }
+            distance += d * d;
+        }
+        return distance;
+    }
+
+    private Candidate newCandidate() {
+        return spares.isEmpty() ? new Candidate() : spares.remove(spares.size() - 1);
+    }
+
+    private Candidate copy(ITupleReference tuple, double distance, Candidate c) {
+        int bytesRequired = tupleWriter.bytesRequired(tuple);
+        if (c.bytes.length < bytesRequired) {
+            c.bytes = new byte[Math.max(bytesRequired, c.bytes.length * 2)];
+            c.buf = ByteBuffer.wrap(c.bytes);
+        }
+        tupleWriter.writeTuple(tuple, c.bytes, 0);
+        c.distance = distance;
+        return c;
+    }
+
+    @Override
+    public void reset() {
+        try {
+            close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void setBufferCache(IBufferCache bufferCache) {
+        this.bufferCache = bufferCache;
+    }
+
+    @Override
+    public void setFileId(int fileId) {
+        this.fileId = fileId;
+    }
+
+    @Override
+    public boolean exclusiveLatchNodes() {
+        return false;
+    }
+
+    private static final class NodeEntry implements Comparable<NodeEntry> {
+        private final int pageId;
+        private final long parentLsn;
+        private final double distance;
+
+        public NodeEntry(int pageId, long parentLsn, double distance) {
+            this.pageId = pageId;
+            this.parentLsn = parentLsn;
+            this.distance = distance;
+        }
+
+        @Override
+        public int compareTo(NodeEntry o) {
+            return Double.compare(distance, o.distance);
+        }
+    }
+
+    private static final class Candidate implements Comparable<Candidate> {
+        private byte[] bytes = new byte[64];
+        private ByteBuffer buf = ByteBuffer.wrap(bytes);
+        private double distance;
+
+        @Override
+        public int compareTo(Candidate o) {
+            return Double.compare(distance, o.distance);
+        }
+    }
+}
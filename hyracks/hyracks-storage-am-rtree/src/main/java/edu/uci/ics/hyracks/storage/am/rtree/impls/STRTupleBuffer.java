@@ -0,0 +1,186 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.am.rtree.impls;
+
+import java.nio.ByteBuffer;
+
+import edu.uci.ics.hyracks.dataflow.common.data.accessors.ITupleReference;
+import edu.uci.ics.hyracks.storage.am.common.api.IPrimitiveValueProvider;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexTupleReference;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexTupleWriter;
+
+/**
+ * Keeps copies of the tuples of a bulk load, up to a fixed number of bytes, and
+ * puts them in Sort-Tile-Recursive order: the tuples are sorted on the center
+ * of their first dimension and cut into slabs, the tuples of every slab are
+ * sorted on the next dimension and cut again, and so on. Packing the tuples
+ * into nodes in this order gives nodes that cover small, barely overlapping
+ * regions.
+ */
+public class STRTupleBuffer {
+    private final ITreeIndexTupleWriter tupleWriter;
+    private final ITreeIndexTupleReference tuple;
+    private final IPrimitiveValueProvider[] keyValueProviders;
+    private final int dim;
+    private final int capacity;
+
+    private byte[] bytes = new byte[4096];
+    private ByteBuffer buf = ByteBuffer.wrap(bytes);
+    private int size = 0;
+    private int[] offsets = new int[256];
+    private int tupleCount = 0;
+    private double[] centers = new double[256];
+
+    public STRTupleBuffer(ITreeIndexTupleWriter tupleWriter, int fieldCount,
+            IPrimitiveValueProvider[] keyValueProviders, int capacity) {
+        this.tupleWriter = tupleWriter;
+        this.tuple = tupleWriter.createTupleReference();
+        this.tuple.setFieldCount(fieldCount);
+        this.keyValueProviders = keyValueProviders;
+        this.dim = keyValueProviders.length / 2;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Copies the tuple into the buffer.
+     *
+     * @return false if the buffer is full, unless it is empty.
+     */
+    public boolean add(ITupleReference t) {
+        int bytesRequired = tupleWriter.bytesRequired(t);
+        if (tupleCount > 0 && size + bytesRequired > capacity) {
+            return false;
+        }
+        if (size + bytesRequired > bytes.length) {
+            byte[] newBytes = new byte[Math.max(bytes.length * 2, size + bytesRequired)];
+            System.arraycopy(bytes, 0, newBytes, 0, size);
+            bytes = newBytes;
+            buf = ByteBuffer.wrap(bytes);
+        }
+        if (tupleCount == offsets.length) {
+            int[] newOffsets = new int[offsets.length * 2];
+            System.arraycopy(offsets, 0, newOffsets, 0, tupleCount);
+            offsets = newOffsets;
+        }
+        offsets[tupleCount++] = size;
+        size += tupleWriter.writeTuple(t, bytes, size);
+        return true;
+    }
+
+    /**
+     * Puts the tuples in Sort-Tile-Recursive order for nodes of the given
+     * number of tuples.
+     */
+    public void sort(int tuplesPerNode) {
+        if (centers.length < tupleCount) {
+            centers = new double[offsets.length];
+        }
+        sort(0, tupleCount, 0, Math.max(1, tuplesPerNode));
+    }
+
+    private void sort(int start, int end, int d, int tuplesPerNode) {
+        for (int i = start; i < end; i++) {
+            tuple.resetByTupleOffset(buf, offsets[i]);
+            int j = d + dim;
+            centers[i] = (keyValueProviders[d].getValue(tuple.getFieldData(d), tuple.getFieldStart(d)) + keyValueProviders[j]
+                    .getValue(tuple.getFieldData(j), tuple.getFieldStart(j))) / 2.0;
+        }
+        sortByCenter(start, end - 1);
+        if (d == dim - 1) {
+            return;
+        }
+        // cut into slabs of whole nodes, as many slabs as there are nodes along every remaining dimension
+        int n = end - start;
+        int nodeCount = (n + tuplesPerNode - 1) / tuplesPerNode;
+        int slabCount = (int) Math.ceil(Math.pow(nodeCount, 1.0 / (dim - d)));
+        int slabSize = tuplesPerNode * ((nodeCount + slabCount - 1) / slabCount);
+        for (int slabStart = start; slabStart < end; slabStart += slabSize) {
+            sort(slabStart, Math.min(end, slabStart + slabSize), d + 1, tuplesPerNode);
+        }
+    }
+
+    private void sortByCenter(int left, int right) {
+        while (right - left > 16) {
+            int mid = (left + right) >>> 1;
+            if (centers[mid] < centers[left]) {
+                swap(mid, left);
+            }
+            if (centers[right] < centers[left]) {
+                swap(right, left);
+            }
+            if (centers[right] < centers[mid]) {
+                swap(right, mid);
+            }
+            double pivot = centers[mid];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (centers[i] < pivot) {
+                    i++;
+                }
+                while (centers[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            // recurse into the smaller part to bound the stack depth
+            if (j - left < right - i) {
+                sortByCenter(left, j);
+                left = i;
+            } else {
+                sortByCenter(i, right);
+                right = j;
+            }
+        }
+        for (int i = left + 1; i <= right; i++) {
+            for (int j = i; j > left && centers[j] < centers[j - 1]; j--) {
+                swap(j, j - 1);
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        int o = offsets[i];
+        offsets[i] = offsets[j];
+        offsets[j] = o;
+        double c = centers[i];
+        centers[i] = centers[j];
+        centers[j] = c;
+    }
+
+    public int getTupleCount() {
+        return tupleCount;
+    }
+
+    /**
+     * Gets the size of the copied tuples in bytes.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    public ITupleReference getTuple(int index) {
+        tuple.resetByTupleOffset(buf, offsets[index]);
+        return tuple;
+    }
+
+    public void reset() {
+        size = 0;
+        tupleCount = 0;
+    }
+}
@@ -27,4 +27,31 @@ public class RTreeUtils {
         }
         return pvpfs;
     }
+
+    /**
+     * Computes the position of a point on the Z-order curve. Points that are
+     * close on the curve are close in space, so sorting the tuples of a bulk
+     * load on the key of the centers of their MBRs gives the R-tree a global
+     * spatial order to pack.
+     * <p>
+     * The coordinates are not scaled to a bounding box. Every coordinate is
+     * mapped to a long whose unsigned order is the order of the doubles, and
+     * the top 64 / point.length bits of those longs are interleaved, most
+     * significant first. The key is shifted so that comparing keys as signed
+     * longs follows the curve.
+     */
+    public static long computeZOrderKey(double[] point) {
+        int bitsPerDim = 64 / point.length;
+        long key = 0;
+        for (int bit = 63; bit > 63 - bitsPerDim; bit--) {
+            for (int d = 0; d < point.length; d++) {
+                long bits = Double.doubleToLongBits(point[d]);
+                // flip all bits of negative values and the sign bit of positive ones
+                bits ^= (bits >> 63) | Long.MIN_VALUE;
+                key = (key << 1) | ((bits >>> bit) & 1L);
+            }
+        }
+        key <<= 64 - bitsPerDim * point.length;
+        return key ^ Long.MIN_VALUE;
+    }
 }
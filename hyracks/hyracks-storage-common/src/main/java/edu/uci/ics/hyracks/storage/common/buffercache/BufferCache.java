@@ -16,8 +16,16 @@ package edu.uci.ics.hyracks.storage.common.buffercache;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
@@ -30,17 +38,44 @@ import java.util.logging.Logger;
 import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
 import edu.uci.ics.hyracks.api.io.FileHandle;
 import edu.uci.ics.hyracks.api.io.FileReference;
+import edu.uci.ics.hyracks.api.io.IIOFuture;
 import edu.uci.ics.hyracks.api.io.IIOManager;
+import edu.uci.ics.hyracks.api.io.IODeviceHandle;
+import edu.uci.ics.hyracks.storage.common.buffercache.BufferCacheStatistics.FileStatistics;
 import edu.uci.ics.hyracks.storage.common.file.BufferedFileHandle;
 import edu.uci.ics.hyracks.storage.common.file.IFileMapManager;
 
 public class BufferCache implements IBufferCacheInternal {
+    /**
+     * Node property (-buffer-cache-flushers-per-device) with the number of
+     * flushers per IO device.
+     */
+    public static final String FLUSHERS_PER_IO_DEVICE_NODE_PROPERTY = "buffer-cache-flushers-per-device";
+
+    /**
+     * Node property (-buffer-cache-dirty-page-high-water-mark) with the
+     * fraction of the pages that may be dirty before the flushers start
+     * writing.
+     */
+    public static final String DIRTY_PAGE_HIGH_WATER_MARK_NODE_PROPERTY = "buffer-cache-dirty-page-high-water-mark";
+
     private static final Logger LOGGER = Logger.getLogger(BufferCache.class.getName());
     private static final int MAP_FACTOR = 2;
 
     private static final int MAX_VICTIMIZATION_TRY_COUNT = 5;
     private static final int MAX_WAIT_FOR_CLEANER_THREAD_TIME = 1000;
     private static final int MIN_CLEANED_COUNT_DIFF = 4;
+    private static final int REPLACEMENT_PIN_COUNT = Integer.MIN_VALUE;
+
+    private static final int DEFAULT_FLUSHERS_PER_IO_DEVICE = 1;
+    private static final float DEFAULT_DIRTY_PAGE_HIGH_WATER_MARK = 0.5f;
+    private static final int MAX_FLUSH_BATCH_SIZE = 256;
+    private static final int MAX_COALESCED_PAGES = 16;
+    private static final int MAX_WRITES_IN_FLIGHT = 4;
+    private static final int FLUSHER_BACK_OFF_TIME = 10;
+    private static final int FLUSHER_SHUTDOWN_TIMEOUT = 10000;
+    // At most 1/MAX_PREFETCH_FRACTION of the pages are held by prefetch reads that have not been reaped yet.
+    private static final int MAX_PREFETCH_FRACTION = 8;
 
     private final int maxOpenFiles;
     
@@ -51,7 +86,24 @@ public class BufferCache implements IBufferCacheInternal {
     private final CacheBucket[] pageMap;
     private final IPageReplacementStrategy pageReplacementStrategy;
     private final IFileMapManager fileMapManager;
-    private final CleanerThread cleanerThread;
+    private final DirtyPageQueue[] dirtyPageQueues;
+    private final FlusherThread[] flusherThreads;
+    private final AtomicInteger dirtyPageCount;
+    private final int dirtyPageHighWaterMark;
+    private final Object cleanNotification = new Object();
+    // Simply keeps incrementing this counter when a page is cleaned.
+    // Used to implement wait-for-flusher heuristic optimizations.
+    // A waiter can detect whether pages have been cleaned.
+    // Several flushers clean pages at the same time, so it is atomic.
+    private final AtomicInteger cleanedCount = new AtomicInteger();
+    // Pages whose prefetch reads may still be in flight. Each holds a pin until its read has been completed.
+    private final ConcurrentLinkedQueue<CachedPage> prefetchedPages;
+    // The number of pages in prefetchedPages, at most maxPrefetchPages.
+    private final AtomicInteger outstandingPrefetches;
+    // Taken by the thread that reaps prefetchedPages, the others skip reaping.
+    private final Lock reapLock;
+    private final int maxPrefetchPages;
+    private final BufferCacheStatistics statistics;
     private final Map<Integer, BufferedFileHandle> fileInfoMap;    
     
     private boolean closed;
@@ -59,6 +111,37 @@ public class BufferCache implements IBufferCacheInternal {
     public BufferCache(IIOManager ioManager, ICacheMemoryAllocator allocator,
             IPageReplacementStrategy pageReplacementStrategy, IFileMapManager fileMapManager, int pageSize,
             int numPages, int maxOpenFiles) {
+        this(ioManager, allocator, pageReplacementStrategy, fileMapManager, pageSize, numPages, maxOpenFiles,
+                DEFAULT_FLUSHERS_PER_IO_DEVICE, getDirtyPageHighWaterMark(numPages, DEFAULT_DIRTY_PAGE_HIGH_WATER_MARK));
+    }
+
+    /**
+     * Takes the number of flushers per IO device and the dirty page high-water
+     * mark from the node properties of the Node Controller, or uses the
+     * defaults where they are not set.
+     */
+    public BufferCache(IIOManager ioManager, ICacheMemoryAllocator allocator,
+            IPageReplacementStrategy pageReplacementStrategy, IFileMapManager fileMapManager, int pageSize,
+            int numPages, int maxOpenFiles, Properties nodeProperties) {
+        this(ioManager, allocator, pageReplacementStrategy, fileMapManager, pageSize, numPages, maxOpenFiles,
+                Integer.parseInt(nodeProperties.getProperty(FLUSHERS_PER_IO_DEVICE_NODE_PROPERTY,
+                        String.valueOf(DEFAULT_FLUSHERS_PER_IO_DEVICE))), getDirtyPageHighWaterMark(numPages,
+                        Float.parseFloat(nodeProperties.getProperty(DIRTY_PAGE_HIGH_WATER_MARK_NODE_PROPERTY,
+                                String.valueOf(DEFAULT_DIRTY_PAGE_HIGH_WATER_MARK)))));
+    }
+
+    /**
+     * @param flushersPerIODevice
+     *            number of threads that write dirty pages back to each IO device.
+     * @param dirtyPageHighWaterMark
+     *            number of dirty pages at which the flushers start writing the queued dirty pages back.
+     */
+    public BufferCache(IIOManager ioManager, ICacheMemoryAllocator allocator,
+            IPageReplacementStrategy pageReplacementStrategy, IFileMapManager fileMapManager, int pageSize,
+            int numPages, int maxOpenFiles, int flushersPerIODevice, int dirtyPageHighWaterMark) {
+        if (flushersPerIODevice < 1) {
+            throw new IllegalArgumentException("At least one flusher per IO device is needed: " + flushersPerIODevice);
+        }
         this.ioManager = ioManager;
         this.pageSize = pageSize;
         this.numPages = numPages;
@@ -76,11 +159,34 @@ public class BufferCache implements IBufferCacheInternal {
         this.pageReplacementStrategy = pageReplacementStrategy;
         this.fileMapManager = fileMapManager;
         fileInfoMap = new HashMap<Integer, BufferedFileHandle>();
-        cleanerThread = new CleanerThread();
-        cleanerThread.start();
+        prefetchedPages = new ConcurrentLinkedQueue<CachedPage>();
+        outstandingPrefetches = new AtomicInteger();
+        reapLock = new ReentrantLock();
+        maxPrefetchPages = Math.max(1, numPages / MAX_PREFETCH_FRACTION);
+        this.dirtyPageHighWaterMark = dirtyPageHighWaterMark;
+        dirtyPageCount = new AtomicInteger();
+        statistics = new BufferCacheStatistics(dirtyPageCount);
+        int numIODevices = Math.max(1, ioManager.getIODevices().size());
+        dirtyPageQueues = new DirtyPageQueue[numIODevices];
+        flusherThreads = new FlusherThread[numIODevices * flushersPerIODevice];
+        for (int i = 0; i < numIODevices; ++i) {
+            dirtyPageQueues[i] = new DirtyPageQueue(numPages);
+            for (int j = 0; j < flushersPerIODevice; ++j) {
+                FlusherThread flusher = new FlusherThread(dirtyPageQueues[i]);
+                flusherThreads[i * flushersPerIODevice + j] = flusher;
+                flusher.start();
+            }
+        }
         closed = false;
     }
 
+    private static int getDirtyPageHighWaterMark(int numPages, float fraction) {
+        if (fraction <= 0 || fraction > 1) {
+            throw new IllegalArgumentException("The dirty page high-water mark is not in (0, 1]: " + fraction);
+        }
+        return Math.max(1, (int) (numPages * fraction));
+    }
+
     @Override
     public int getPageSize() {
         return pageSize;
@@ -91,7 +197,12 @@ public class BufferCache implements IBufferCacheInternal {
         return numPages;
     }
 
-    private void pinSanityCheck(long dpid) throws HyracksDataException {
+    @Override
+    public BufferCacheStatistics getStatistics() {
+        return statistics;
+    }
+
+    private BufferedFileHandle pinSanityCheck(long dpid) throws HyracksDataException {
         if (closed) {
             throw new HyracksDataException("pin called on a closed cache");
         }
@@ -107,38 +218,48 @@ public class BufferCache implements IBufferCacheInternal {
         } else if (fInfo.getReferenceCount() <= 0) {
             throw new HyracksDataException("pin called on a fileId " + fileId + " that has not been opened.");
         }
+        return fInfo;
     }
 
     @Override
     public ICachedPage tryPin(long dpid) throws HyracksDataException {
-        pinSanityCheck(dpid);
+        BufferedFileHandle fInfo = pinSanityCheck(dpid);
 
-        CachedPage cPage = null;
-        int hash = hash(dpid);
-        CacheBucket bucket = pageMap[hash];
-        bucket.bucketLock.lock();
-        try {
-            cPage = bucket.cachedPage;
-            while (cPage != null) {
-                if (cPage.dpid == dpid) {
-                	cPage.pinCount.incrementAndGet();
-                    pageReplacementStrategy.notifyCachePageAccess(cPage);
-                    return cPage;
+        CachedPage cPage = findPageOptimistically(dpid);
+        if (cPage == null) {
+            int hash = hash(dpid);
+            CacheBucket bucket = pageMap[hash];
+            bucket.bucketLock.lock();
+            try {
+                cPage = bucket.cachedPage;
+                while (cPage != null) {
+                    if (cPage.dpid == dpid) {
+                    	cPage.pinCount.incrementAndGet();
+                        break;
+                    }
+                    cPage = cPage.next;
                 }
-                cPage = cPage.next;
+            } finally {
+                bucket.bucketLock.unlock();
             }
-        } finally {
-            bucket.bucketLock.unlock();
         }
-
+        if (cPage != null) {
+            if (cPage.pendingRead != null) {
+                // Resident, but its prefetch read may not have completed yet.
+                completePendingRead(cPage);
+            }
+            pageReplacementStrategy.notifyCachePageAccess(cPage);
+            fInfo.getStatistics().increment(FileStatistics.HITS);
+        }
         return cPage;
     }
 
     @Override
     public ICachedPage pin(long dpid, boolean newPage) throws HyracksDataException {
-        pinSanityCheck(dpid);
+        BufferedFileHandle fInfo = pinSanityCheck(dpid);
 
-        CachedPage cPage = findPage(dpid, newPage);
+        FileStatistics stats = fInfo.getStatistics();
+        CachedPage cPage = findPage(dpid, newPage, true, stats);
         if (cPage == null) {
             if (LOGGER.isLoggable(Level.FINE)) {
                 LOGGER.fine(dumpState());
@@ -147,6 +268,7 @@ public class BufferCache implements IBufferCacheInternal {
                     + BufferedFileHandle.getPageId(dpid) + " because all pages are pinned.");
         }
         if (!newPage) {
+            int counter = FileStatistics.HITS;
             if (!cPage.valid) {
                 /*
                  * We got a buffer and we have pinned it. But its invalid. If its a new page, we just mark it as valid
@@ -154,25 +276,178 @@ public class BufferCache implements IBufferCacheInternal {
                  */
                 cPage.acquireWriteLatch(false);
                 try {
+                    if (cPage.pendingRead != null) {
+                        completePrefetch(cPage);
+                    }
                     if (!cPage.valid) {
                         read(cPage);
+                        counter = FileStatistics.MISSES;
                     }
                     cPage.valid = true;
                 } finally {
                     cPage.releaseWriteLatch();
                 }
             }
+            stats.increment(counter);
         } else {
+            if (!cPage.valid) {
+                cPage.ioDeviceId = fInfo.getIODeviceId();
+            }
             cPage.valid = true;
         }
         pageReplacementStrategy.notifyCachePageAccess(cPage);
         return cPage;
     }
 
-    private CachedPage findPage(long dpid, boolean newPage) {
+    /**
+     * Looks up and pins a resident page without taking the bucket lock. The bucket chain is traversed through
+     * volatile links, so a concurrent replacement can at worst make us miss a page that is in the table. A page
+     * that is found is pinned with a CAS that refuses pages in the middle of being replaced, and the dpid is
+     * re-checked afterwards, since the page may have been replaced between the lookup and the pin.
+     * 
+     * @return the pinned page, or null if the caller has to fall back to the locked path.
+     */
+    private CachedPage findPageOptimistically(long dpid) {
+        CachedPage cPage = pageMap[hash(dpid)].cachedPage;
+        // Bound the traversal, since pages can move between chains while we follow the links.
+        for (int i = 0; cPage != null && i < numPages; ++i) {
+            if (cPage.dpid == dpid) {
+                if (cPage.pinIfNotBeingReplaced()) {
+                    if (cPage.dpid == dpid) {
+                        return cPage;
+                    }
+                    cPage.pinCount.decrementAndGet();
+                }
+                return null;
+            }
+            cPage = cPage.next;
+        }
+        return null;
+    }
+
+    @Override
+    public int prefetch(long startDpid, int numPages) throws HyracksDataException {
+        BufferedFileHandle fInfo = pinSanityCheck(startDpid);
+        reapPrefetches();
+        int n = Math.min(numPages, maxPrefetchPages);
+        for (int i = 0; i < n; ++i) {
+            long dpid = startDpid + i;
+            CachedPage cPage = findPageOptimistically(dpid);
+            if (cPage == null) {
+                cPage = findPage(dpid, false, false, fInfo.getStatistics());
+                if (cPage == null) {
+                    // Every buffer is in use. Don't wait for one, the scan will read the pages itself.
+                    return i;
+                }
+            }
+            if (cPage.valid || !cPage.latch.writeLock().tryLock()) {
+                // Resident already, or someone else is reading it.
+                cPage.pinCount.decrementAndGet();
+                continue;
+            }
+            try {
+                if (cPage.valid || cPage.pendingRead != null) {
+                    cPage.pinCount.decrementAndGet();
+                    continue;
+                }
+                if (outstandingPrefetches.incrementAndGet() > maxPrefetchPages) {
+                    // The earlier prefetches hold enough pages already.
+                    outstandingPrefetches.decrementAndGet();
+                    cPage.pinCount.decrementAndGet();
+                    return i;
+                }
+                cPage.ioDeviceId = fInfo.getIODeviceId();
+                cPage.buffer.clear();
+                // Keep our pin until the read completes, so that the buffer is not replaced under the read.
+                try {
+                    cPage.pendingRead = ioManager.asyncRead(fInfo.getFileHandle(),
+                            (long) BufferedFileHandle.getPageId(dpid) * pageSize, cPage.buffer);
+                } catch (RuntimeException e) {
+                    cPage.pendingRead = null;
+                    outstandingPrefetches.decrementAndGet();
+                    cPage.pinCount.decrementAndGet();
+                    throw new HyracksDataException(e);
+                }
+                fInfo.getStatistics().increment(FileStatistics.READS);
+                prefetchedPages.add(cPage);
+            } finally {
+                cPage.latch.writeLock().unlock();
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Waits for the prefetch read of a page, and releases the pin taken by prefetch(). If the read failed, the
+     * page stays invalid and is read again by the next pin. The caller holds the write latch of the page.
+     */
+    private void completePrefetch(CachedPage cPage) {
+        IIOFuture pendingRead = cPage.pendingRead;
+        cPage.pendingRead = null;
+        try {
+            pendingRead.synchronize();
+            cPage.valid = true;
+        } catch (HyracksDataException e) {
+            cPage.valid = false;
+        } catch (InterruptedException e) {
+            cPage.valid = false;
+        }
+        cPage.pinCount.decrementAndGet();
+    }
+
+    private void completePendingRead(CachedPage cPage) {
+        cPage.latch.writeLock().lock();
+        try {
+            if (cPage.pendingRead != null) {
+                completePrefetch(cPage);
+            }
+        } finally {
+            cPage.latch.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Completes the prefetch reads that have finished but whose pages have not been pinned, so that their buffers
+     * can be replaced again.
+     */
+    private void reapPrefetches() {
+        if (!reapLock.tryLock()) {
+            return;
+        }
+        try {
+            Iterator<CachedPage> i = prefetchedPages.iterator();
+            while (i.hasNext()) {
+                CachedPage cPage = i.next();
+                IIOFuture pendingRead = cPage.pendingRead;
+                if (pendingRead == null) {
+                    // Completed by a pin.
+                    i.remove();
+                    outstandingPrefetches.decrementAndGet();
+                } else if (pendingRead.isComplete() && cPage.latch.writeLock().tryLock()) {
+                    try {
+                        if (cPage.pendingRead != null) {
+                            completePrefetch(cPage);
+                        }
+                    } finally {
+                        cPage.latch.writeLock().unlock();
+                    }
+                    i.remove();
+                    outstandingPrefetches.decrementAndGet();
+                }
+            }
+        } finally {
+            reapLock.unlock();
+        }
+    }
+
+    private CachedPage findPage(long dpid, boolean newPage, boolean mayWait, FileStatistics stats) {
+        CachedPage optimisticPage = findPageOptimistically(dpid);
+        if (optimisticPage != null) {
+            return optimisticPage;
+        }
         int victimizationTryCount = 0;        
         while (true) {
-        	int startCleanedCount = cleanerThread.cleanedCount;
+        	int startCleanedCount = cleanedCount.get();
         	
             CachedPage cPage = null;
             /*
@@ -217,6 +492,9 @@ public class BufferCache implements IBufferCacheInternal {
                  *  of the bucket indexes (Ordering prevents deadlocks). Check for the existence of a winner in the new bucket
                  *  and for potential use of the victim (pinCount != 1). If everything looks good, remove the CachedPage from
                  *  the old bucket, and add it to the new bucket and update its header with the new dpid.
+                 *  In both 2a and 2b the pinCount == 1 check is a CAS to REPLACEMENT_PIN_COUNT, which keeps lock-free
+                 *  lookups (see findPageOptimistically) from pinning the victim while its dpid is being changed. The
+                 *  pinCount is set back to 1 once the victim holds the new dpid.
                  */
                 if (victim.dpid < 0) {
                     /*
@@ -241,30 +519,34 @@ public class BufferCache implements IBufferCacheInternal {
                     }
                     return victim;
                 }
-                int victimHash = hash(victim.dpid);
+                long victimDpid = victim.dpid;
+                int victimHash = hash(victimDpid);
                 if (victimHash == hash) {
                     /*
                      * Case 2a.
                      */
                     bucket.bucketLock.lock();
                     try {
-                        if (victim.pinCount.get() != 1) {
+                        if (!victim.pinCount.compareAndSet(1, REPLACEMENT_PIN_COUNT)) {
                         	victim.pinCount.decrementAndGet();
+                            stats.increment(FileStatistics.VICTIMIZATION_RETRIES);
                             continue;
                         }
                         cPage = bucket.cachedPage;
                         while (cPage != null) {
                             if (cPage.dpid == dpid) {
                             	cPage.pinCount.incrementAndGet();
-                            	victim.pinCount.decrementAndGet();
+                            	victim.pinCount.set(0);
                                 return cPage;
                             }
                             cPage = cPage.next;
                         }
                         victim.reset(dpid);
+                        victim.pinCount.set(1);
                     } finally {
                         bucket.bucketLock.unlock();
                     }
+                    pageEvicted(victimDpid);
                     return victim;
                 } else {
                     /*
@@ -279,15 +561,16 @@ public class BufferCache implements IBufferCacheInternal {
                         victimBucket.bucketLock.lock();
                     }
                     try {
-                        if (victim.pinCount.get() != 1) {
-                        	victim.pinCount.decrementAndGet();                        	
+                        if (!victim.pinCount.compareAndSet(1, REPLACEMENT_PIN_COUNT)) {
+                        	victim.pinCount.decrementAndGet();
+                            stats.increment(FileStatistics.VICTIMIZATION_RETRIES);
                             continue;
                         }
                         cPage = bucket.cachedPage;
                         while (cPage != null) {
                             if (cPage.dpid == dpid) {
                             	cPage.pinCount.incrementAndGet();
-                            	victim.pinCount.decrementAndGet();
+                            	victim.pinCount.set(0);
                                 return cPage;
                             }
                             cPage = cPage.next;
@@ -305,32 +588,40 @@ public class BufferCache implements IBufferCacheInternal {
                         victim.reset(dpid);
                         victim.next = bucket.cachedPage;
                         bucket.cachedPage = victim;
+                        victim.pinCount.set(1);
                     } finally {
                         victimBucket.bucketLock.unlock();
                         bucket.bucketLock.unlock();
                     }
+                    pageEvicted(victimDpid);
                     return victim;
                 }
             }
             /*
              * Victimization failed -- all pages pinned? wait a bit, increment victimizationTryCount and loop around. Give up after MAX_VICTIMIZATION_TRY_COUNT trys.
              */
-            if (++victimizationTryCount >= MAX_VICTIMIZATION_TRY_COUNT) {
+            stats.increment(FileStatistics.VICTIMIZATION_RETRIES);
+            if (!mayWait || ++victimizationTryCount >= MAX_VICTIMIZATION_TRY_COUNT) {
                 return null;
             }
-            synchronized (cleanerThread) {
-                cleanerThread.notifyAll();
-            }
-			// Heuristic optimization. Check whether the cleaner thread has
+            reapPrefetches();
+            requestFlush();
+			// Heuristic optimization. Check whether the flushers have
 			// cleaned pages since we did our last pin attempt.
-			if (cleanerThread.cleanedCount - startCleanedCount > MIN_CLEANED_COUNT_DIFF) {
-				// Don't go to sleep and wait for notification from the cleaner,
+			if (cleanedCount.get() - startCleanedCount > MIN_CLEANED_COUNT_DIFF) {
+				// Don't go to sleep and wait for notification from the flushers,
 				// just try to pin again immediately.
 				continue;
 			}
-            synchronized (cleanerThread.cleanNotification) {
+            synchronized (cleanNotification) {
             	try {
-            		cleanerThread.cleanNotification.wait(MAX_WAIT_FOR_CLEANER_THREAD_TIME);
+            		// The flushers count cleaned pages before they notify, so we cannot miss a wakeup here.
+            		if (cleanedCount.get() == startCleanedCount) {
+            			long startTime = System.nanoTime();
+            			cleanNotification.wait(MAX_WAIT_FOR_CLEANER_THREAD_TIME);
+            			stats.increment(FileStatistics.CLEANER_WAITS);
+            			stats.add(FileStatistics.CLEANER_WAIT_TIME, System.nanoTime() - startTime);
+            		}
             	} catch (InterruptedException e) {
             		// Do nothing
             	}
@@ -338,6 +629,13 @@ public class BufferCache implements IBufferCacheInternal {
         }
     }
 
+    private void pageEvicted(long dpid) {
+        FileStatistics stats = statistics.getFileStatistics(BufferedFileHandle.getFileId(dpid));
+        if (stats != null) {
+            stats.increment(FileStatistics.EVICTIONS);
+        }
+    }
+
     private String dumpState() {
         StringBuilder buffer = new StringBuilder();
         buffer.append("Buffer cache state\n");
@@ -373,9 +671,11 @@ public class BufferCache implements IBufferCacheInternal {
 
     private void read(CachedPage cPage) throws HyracksDataException {
         BufferedFileHandle fInfo = getFileInfo(cPage);
+        cPage.ioDeviceId = fInfo.getIODeviceId();
         cPage.buffer.clear();
         ioManager.syncRead(fInfo.getFileHandle(), (long) BufferedFileHandle.getPageId(cPage.dpid) * pageSize,
                 cPage.buffer);
+        fInfo.getStatistics().increment(FileStatistics.READS);
     }
 
     private BufferedFileHandle getFileInfo(CachedPage cPage) throws HyracksDataException {
@@ -388,6 +688,12 @@ public class BufferCache implements IBufferCacheInternal {
         }
     }
 
+    private BufferedFileHandle getFileInfo(long dpid) {
+        synchronized (fileInfoMap) {
+            return fileInfoMap.get(BufferedFileHandle.getFileId(dpid));
+        }
+    }
+
     private void write(CachedPage cPage) throws HyracksDataException {
         BufferedFileHandle fInfo = getFileInfo(cPage);
         if(fInfo.fileHasBeenDeleted()){
@@ -397,6 +703,7 @@ public class BufferCache implements IBufferCacheInternal {
         cPage.buffer.limit(pageSize);
         ioManager.syncWrite(fInfo.getFileHandle(), (long) BufferedFileHandle.getPageId(cPage.dpid) * pageSize,
                 cPage.buffer);
+        fInfo.getStatistics().increment(FileStatistics.WRITES);
     }
 
     @Override
@@ -413,7 +720,7 @@ public class BufferCache implements IBufferCacheInternal {
 
     private static class CacheBucket {
         private final Lock bucketLock;
-        private CachedPage cachedPage;
+        private volatile CachedPage cachedPage;
 
         public CacheBucket() {
             bucketLock = new ReentrantLock();
@@ -428,15 +735,19 @@ public class BufferCache implements IBufferCacheInternal {
         private final ReadWriteLock latch;
         private final Object replacementStrategyObject;
         volatile long dpid;
-        CachedPage next;
+        volatile CachedPage next;
         volatile boolean valid;
+        // The IO device of the file of the page, so the flusher queue can be picked without looking up the file.
+        volatile int ioDeviceId;
+        // The read started by prefetch(), if it has not been completed yet.
+        volatile IIOFuture pendingRead;
 
         public CachedPage(int cpid, ByteBuffer buffer, IPageReplacementStrategy pageReplacementStrategy) {
             this.cpid = cpid;
             this.buffer = buffer;
             pinCount = new AtomicInteger();
             dirty = new AtomicBoolean();
-            latch = new ReentrantReadWriteLock(true);
+            latch = new ReentrantReadWriteLock();
             replacementStrategyObject = pageReplacementStrategy.createPerPageStrategyObject(cpid);
             dpid = -1;
             valid = false;
@@ -468,11 +779,28 @@ public class BufferCache implements IBufferCacheInternal {
             return pinCount.compareAndSet(0, 1);
         }
 
+        public boolean pinIfNotBeingReplaced() {
+            while (true) {
+                int pc = pinCount.get();
+                if (pc < 0) {
+                    return false;
+                }
+                if (pinCount.compareAndSet(pc, pc + 1)) {
+                    return true;
+                }
+            }
+        }
+
         @Override
         public int getCachedPageId() {
             return cpid;
         }
 
+        @Override
+        public long getDiskPageId() {
+            return dpid;
+        }
+
         @Override
         public void acquireReadLatch() {
             latch.readLock().lock();
@@ -483,6 +811,7 @@ public class BufferCache implements IBufferCacheInternal {
             if (markDirty) {
                 if (dirty.compareAndSet(false, true)) {
                     pinCount.incrementAndGet();
+                    pageDirtied(this);
                 }
             }
         }
@@ -508,84 +837,357 @@ public class BufferCache implements IBufferCacheInternal {
         return cachedPages[cpid];
     }
 
-    private class CleanerThread extends Thread {
-        private boolean shutdownStart = false;
-        private boolean shutdownComplete = false;
-        private final Object cleanNotification = new Object();
-		// Simply keeps incrementing this counter when a page is cleaned.
-		// Used to implement wait-for-cleanerthread heuristic optimizations.
-		// A waiter can detect whether pages have been cleaned.
-		// No need to make this var volatile or synchronize it's access in any
-		// way because it is used for heuristics.
-        private int cleanedCount = 0;
+    /**
+     * Queues a page that just became dirty for write-back by the flushers of its IO device, and wakes the flushers
+     * up once the number of dirty pages reaches the high-water mark.
+     */
+    private void pageDirtied(CachedPage cPage) {
+        dirtyPageQueues[cPage.ioDeviceId % dirtyPageQueues.length].add(cPage);
+        if (dirtyPageCount.incrementAndGet() >= dirtyPageHighWaterMark) {
+            requestFlush();
+        }
+    }
 
-        public CleanerThread() {
-            setPriority(MAX_PRIORITY);
+    /**
+     * Marks a written page clean and drops the pin of its dirty state. A page can be queued more than once, e.g.
+     * if it was swept and dirtied again while its old entry was still queued, so two flushers may write it at the
+     * same time under their read latches. Only the first of them releases the pin.
+     */
+    private void pageCleaned(CachedPage cPage) {
+        if (!cPage.dirty.compareAndSet(true, false)) {
+            return;
         }
+        cPage.pinCount.decrementAndGet();
+        dirtyPageCount.decrementAndGet();
+        cleanedCount.incrementAndGet();
+    }
 
-        public void cleanPage(CachedPage cPage, boolean force) {
-        	if (cPage.dirty.get()) {
-        		boolean proceed = false;
-        		if (force) {        			
-        			cPage.latch.writeLock().lock();
-        			proceed = true;
-        		} else {        			
-        			proceed = cPage.latch.readLock().tryLock();
-        		}
-                if (proceed) {
-                	try {
-                		// Make sure page is still dirty.
-                    	if (!cPage.dirty.get()) {
-                    		return;
-                    	}
-                        boolean cleaned = true;
-                        try {
-                            write(cPage);
-                        } catch (HyracksDataException e) {
-                            cleaned = false;
-                        }
-                        if (cleaned) {                           	                        	
-                        	cPage.dirty.set(false);
-                        	cPage.pinCount.decrementAndGet();
-                        	cleanedCount++;
-                        	synchronized (cleanNotification) {                        		
-                        		cleanNotification.notifyAll();
-                        	}
-                        }
-                    } finally {
-                        if (force) {
-                        	cPage.latch.writeLock().unlock();
-                        } else {
-                        	cPage.latch.readLock().unlock();
+    private void requestFlush() {
+        for (DirtyPageQueue queue : dirtyPageQueues) {
+            queue.requestFlush();
+        }
+    }
+
+    private void notifyCleaned() {
+        synchronized (cleanNotification) {
+            cleanNotification.notifyAll();
+        }
+    }
+
+    /**
+     * Writes a dirty page back synchronously. Used when the caller needs the page on disk right away.
+     */
+    private void cleanPage(CachedPage cPage) {
+        if (cPage.dirty.get()) {
+            cPage.latch.writeLock().lock();
+            try {
+                // Make sure page is still dirty.
+                if (!cPage.dirty.get()) {
+                    return;
+                }
+                boolean cleaned = true;
+                try {
+                    write(cPage);
+                } catch (HyracksDataException e) {
+                    cleaned = false;
+                }
+                if (cleaned) {
+                    pageCleaned(cPage);
+                    notifyCleaned();
+                }
+            } finally {
+                cPage.latch.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Dirty pages of the files on one IO device, waiting to be written back by the flushers of that device. A page
+     * can be queued more than once, or be cleaned by someone else while it is queued, so the flushers re-check
+     * every page before writing it.
+     */
+    private static class DirtyPageQueue {
+        private final List<CachedPage> pages = new ArrayList<CachedPage>();
+        // Pages that are cleaned by sweeps stay queued until a flush is requested. Past this many entries, the
+        // entries of clean pages and the older entries of pages that were queued more than once are dropped.
+        private final int compactionThreshold;
+        private boolean flushRequested = false;
+        private boolean backingOff = false;
+        private boolean shutdown = false;
+
+        public DirtyPageQueue(int numPages) {
+            compactionThreshold = 2 * numPages;
+        }
+
+        public synchronized void add(CachedPage cPage) {
+            pages.add(cPage);
+            if (pages.size() == 1) {
+                notifyAll();
+            } else if (pages.size() >= compactionThreshold) {
+                compact();
+            }
+        }
+
+        private void compact() {
+            Set<CachedPage> seen = Collections.newSetFromMap(new IdentityHashMap<CachedPage, Boolean>());
+            List<CachedPage> kept = new ArrayList<CachedPage>();
+            for (int i = pages.size() - 1; i >= 0; --i) {
+                CachedPage cPage = pages.get(i);
+                if (cPage.dirty.get() && seen.add(cPage)) {
+                    kept.add(cPage);
+                }
+            }
+            Collections.reverse(kept);
+            pages.clear();
+            pages.addAll(kept);
+        }
+
+        public synchronized void requestFlush() {
+            if (!flushRequested || backingOff) {
+                flushRequested = true;
+                notifyAll();
+            }
+        }
+
+        /**
+         * Waits a little before the flushers retry pages that are latched by someone else. A new flush request
+         * ends the wait early, since the newly dirtied pages can probably be written.
+         */
+        public synchronized void backOff() {
+            backingOff = true;
+            try {
+                wait(FLUSHER_BACK_OFF_TIME);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            } finally {
+                backingOff = false;
+            }
+        }
+
+        public synchronized void shutdown() {
+            shutdown = true;
+            flushRequested = true;
+            notifyAll();
+        }
+
+        public synchronized boolean isShutdown() {
+            return shutdown;
+        }
+
+        /**
+         * Waits until a flush is requested, because the dirty pages reached the high-water mark, a pin found no
+         * victim, or the cache is closed, and takes up to MAX_FLUSH_BATCH_SIZE queued pages. Pages stay queued
+         * for as long as no flush is requested.
+         * 
+         * @return false if the queue has been shut down and no pages are left.
+         */
+        public synchronized boolean takeBatch(List<CachedPage> batch) {
+            while (true) {
+                try {
+                    if (pages.isEmpty()) {
+                        if (shutdown) {
+                            return false;
                         }
+                        flushRequested = false;
+                        wait();
+                    } else if (flushRequested) {
+                        break;
+                    } else {
+                        wait();
                     }
-                } else if (shutdownStart) {
-                    throw new IllegalStateException(
-                            "Cache closed, but unable to acquire read lock on dirty page: " + cPage.dpid);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
                 }
             }
+            int n = Math.min(pages.size(), MAX_FLUSH_BATCH_SIZE);
+            List<CachedPage> head = pages.subList(0, n);
+            batch.addAll(head);
+            head.clear();
+            return true;
         }
-        
+    }
+
+    /**
+     * Writes back the pages of a DirtyPageQueue in batches. Each batch is sorted by dpid, and runs of adjacent
+     * pages of a file are copied into one buffer and written with a single asynchronous write. Up to
+     * MAX_WRITES_IN_FLIGHT writes are issued before the flusher waits for them. Like the synchronous path, a
+     * flusher holds the read latch of a page until its write has completed, so that no update is lost.
+     */
+    private class FlusherThread extends Thread {
+        private final DirtyPageQueue queue;
+        private final List<CachedPage> batch;
+        private final ByteBuffer[] writeBuffers;
+        private final IIOFuture[] writeFutures;
+        private final CachedPage[][] writePages;
+        private final int[] writePageCounts;
+        private final long[] sortDpids;
+        private final CachedPage[] sortPages;
+        private final BufferedFileHandle[] sortFileInfos;
+
+        public FlusherThread(DirtyPageQueue queue) {
+            this.queue = queue;
+            batch = new ArrayList<CachedPage>();
+            writeBuffers = new ByteBuffer[MAX_WRITES_IN_FLIGHT];
+            writeFutures = new IIOFuture[MAX_WRITES_IN_FLIGHT];
+            writePages = new CachedPage[MAX_WRITES_IN_FLIGHT][MAX_COALESCED_PAGES];
+            writePageCounts = new int[MAX_WRITES_IN_FLIGHT];
+            for (int i = 0; i < MAX_WRITES_IN_FLIGHT; ++i) {
+                writeBuffers[i] = ByteBuffer.allocate(pageSize * MAX_COALESCED_PAGES);
+            }
+            sortDpids = new long[MAX_FLUSH_BATCH_SIZE];
+            sortPages = new CachedPage[MAX_FLUSH_BATCH_SIZE];
+            sortFileInfos = new BufferedFileHandle[MAX_FLUSH_BATCH_SIZE];
+            setPriority(MAX_PRIORITY);
+            setDaemon(true);
+        }
+
         @Override
-        public synchronized void run() {
-            try {
-                while (true) {
-                    for (int i = 0; i < numPages; ++i) {                        
-                    	CachedPage cPage = cachedPages[i];
-                        cleanPage(cPage, false);
+        public void run() {
+            while (queue.takeBatch(batch)) {
+                boolean progress;
+                try {
+                    progress = flushBatch();
+                } finally {
+                    batch.clear();
+                }
+                if (!progress) {
+                    if (queue.isShutdown()) {
+                        // Nobody should hold a latch any more. close() reports the pages that are left.
+                        return;
                     }
-                    if (shutdownStart) {
+                    // Every queued page is latched by someone else. Don't spin on them.
+                    queue.backOff();
+                }
+            }
+        }
+
+        /**
+         * @return false if pages were left in the queue but none could be written.
+         */
+        private boolean flushBatch() {
+            int n = 0;
+            for (CachedPage cPage : batch) {
+                long dpid = cPage.dpid;
+                if (dpid >= 0 && cPage.dirty.get()) {
+                    sortDpids[n] = dpid;
+                    sortPages[n] = cPage;
+                    ++n;
+                }
+            }
+            sort(n);
+            // Look the files up before any latch is taken, since closeFile() and openFile() hold the file map
+            // while they wait for the latches of the pages they sweep.
+            for (int i = 0; i < n; ++i) {
+                int fileId = BufferedFileHandle.getFileId(sortDpids[i]);
+                if (i > 0 && fileId == BufferedFileHandle.getFileId(sortDpids[i - 1])) {
+                    sortFileInfos[i] = sortFileInfos[i - 1];
+                } else {
+                    sortFileInfos[i] = getFileInfo(sortDpids[i]);
+                }
+            }
+            int written = 0;
+            int requeued = 0;
+            int inFlight = 0;
+            int i = 0;
+            while (i < n) {
+                int count = 0;
+                long startDpid = sortDpids[i];
+                BufferedFileHandle fInfo = sortFileInfos[i];
+                ByteBuffer buffer = writeBuffers[inFlight];
+                buffer.clear();
+                while (i < n && count < MAX_COALESCED_PAGES && sortDpids[i] == startDpid + count) {
+                    CachedPage cPage = sortPages[i];
+                    ++i;
+                    if (i < n && sortPages[i] == cPage) {
+                        // The page was queued more than once. Leave it to the last entry.
+                        continue;
+                    }
+                    if (!cPage.latch.readLock().tryLock()) {
+                        // Someone is updating the page. It stays dirty, so it is not queued again by the writer.
+                        queue.add(cPage);
+                        ++requeued;
                         break;
                     }
+                    if (!cPage.dirty.get() || cPage.dpid != startDpid + count) {
+                        cPage.latch.readLock().unlock();
+                        break;
+                    }
+                    ByteBuffer pageBuffer = cPage.buffer.duplicate();
+                    pageBuffer.clear();
+                    buffer.put(pageBuffer);
+                    writePages[inFlight][count++] = cPage;
+                }
+                if (count == 0) {
+                    continue;
+                }
+                buffer.flip();
+                written += count;
+                writePageCounts[inFlight] = count;
+                if (fInfo == null || fInfo.fileHasBeenDeleted()) {
+                    writeFutures[inFlight] = null;
+                } else {
+                    writeFutures[inFlight] = ioManager.asyncWrite(fInfo.getFileHandle(),
+                            (long) BufferedFileHandle.getPageId(startDpid) * pageSize, buffer);
+                    fInfo.getStatistics().add(FileStatistics.WRITES, count);
+                }
+                if (++inFlight == MAX_WRITES_IN_FLIGHT) {
+                    completeWrites(inFlight);
+                    inFlight = 0;
+                }
+            }
+            completeWrites(inFlight);
+            for (int j = 0; j < n; ++j) {
+                sortPages[j] = null;
+                sortFileInfos[j] = null;
+            }
+            return written > 0 || requeued == 0;
+        }
+
+        private void completeWrites(int inFlight) {
+            for (int i = 0; i < inFlight; ++i) {
+                boolean cleaned = true;
+                if (writeFutures[i] != null) {
                     try {
-                        wait(1000);
+                        writeFutures[i].synchronize();
+                    } catch (HyracksDataException e) {
+                        cleaned = false;
                     } catch (InterruptedException e) {
-                        e.printStackTrace();
+                        cleaned = false;
                     }
+                    writeFutures[i] = null;
                 }
-            } finally {
-                shutdownComplete = true;
-                notifyAll();
+                for (int j = 0; j < writePageCounts[i]; ++j) {
+                    CachedPage cPage = writePages[i][j];
+                    if (cleaned) {
+                        pageCleaned(cPage);
+                    } else {
+                        queue.add(cPage);
+                    }
+                    cPage.latch.readLock().unlock();
+                    writePages[i][j] = null;
+                }
+            }
+            if (inFlight > 0) {
+                notifyCleaned();
+            }
+        }
+
+        /**
+         * Insertion sort of the batch on the dpids captured when the batch was taken, since the dpids of clean
+         * pages can change while we sort.
+         */
+        private void sort(int n) {
+            for (int i = 1; i < n; ++i) {
+                long dpid = sortDpids[i];
+                CachedPage cPage = sortPages[i];
+                int j = i - 1;
+                while (j >= 0 && sortDpids[j] > dpid) {
+                    sortDpids[j + 1] = sortDpids[j];
+                    sortPages[j + 1] = sortPages[j];
+                    --j;
+                }
+                sortDpids[j + 1] = dpid;
+                sortPages[j + 1] = cPage;
             }
         }
     }
@@ -593,15 +1195,20 @@ public class BufferCache implements IBufferCacheInternal {
     @Override
     public void close() {
     	closed = true;
-        synchronized (cleanerThread) {
-            cleanerThread.shutdownStart = true;
-            cleanerThread.notifyAll();
-            while (!cleanerThread.shutdownComplete) {
-                try {
-                    cleanerThread.wait();
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
+        for (DirtyPageQueue queue : dirtyPageQueues) {
+            queue.shutdown();
+        }
+        long deadline = System.currentTimeMillis() + FLUSHER_SHUTDOWN_TIMEOUT;
+        for (FlusherThread flusher : flusherThreads) {
+            try {
+                flusher.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            if (flusher.isAlive() && LOGGER.isLoggable(Level.WARNING)) {
+                // The sweep below writes the pages that are left, or fails on a page that is still latched.
+                LOGGER.warning("Flusher " + flusher.getName() + " did not stop within " + FLUSHER_SHUTDOWN_TIMEOUT
+                        + "ms.");
             }
         }
 
@@ -647,13 +1254,7 @@ public class BufferCache implements IBufferCacheInternal {
                     unreferencedFileFound = false;
                     for (Map.Entry<Integer, BufferedFileHandle> entry : fileInfoMap.entrySet()) {
                         if (entry.getValue().getReferenceCount() <= 0) {
-                            int entryFileId = entry.getKey();
-                            boolean fileHasBeenDeleted = entry.getValue().fileHasBeenDeleted();
-                            sweepAndFlush(entryFileId, !fileHasBeenDeleted);
-                            if (!fileHasBeenDeleted) {
-                                ioManager.close(entry.getValue().getFileHandle());
-                            }
-                            fileInfoMap.remove(entryFileId);
+                            evictFile(entry.getKey(), entry.getValue());
                             unreferencedFileFound = true;
                             // for-each iterator is invalid because we changed fileInfoMap
                             break;
@@ -668,15 +1269,41 @@ public class BufferCache implements IBufferCacheInternal {
 
                 // create, open, and map new file reference
                 FileReference fileRef = fileMapManager.lookupFileName(fileId);
+                FileStatistics stats = statistics.getOrCreateFileStatistics(fileId, fileRef.getFile()
+                        .getAbsolutePath());
                 FileHandle fh = ioManager.open(fileRef, IIOManager.FileReadWriteMode.READ_WRITE,
                         IIOManager.FileSyncMode.METADATA_ASYNC_DATA_ASYNC);
-                fInfo = new BufferedFileHandle(fileId, fh);
+                fInfo = new BufferedFileHandle(fileId, fh, getIODeviceId(fileRef), stats);
                 fileInfoMap.put(fileId, fInfo);
             }
             fInfo.incReferenceCount();
         }
     }
 
+    /**
+     * Flushes and drops the cached pages of an unreferenced file, and closes it. The caller holds the fileInfoMap
+     * lock.
+     */
+    private void evictFile(int fileId, BufferedFileHandle fInfo) throws HyracksDataException {
+        boolean fileHasBeenDeleted = fInfo.fileHasBeenDeleted();
+        sweepAndFlush(fileId, !fileHasBeenDeleted);
+        if (!fileHasBeenDeleted) {
+            ioManager.close(fInfo.getFileHandle());
+        }
+        fileInfoMap.remove(fileId);
+    }
+
+    private int getIODeviceId(FileReference fileRef) {
+        String path = fileRef.getFile().getAbsolutePath();
+        List<IODeviceHandle> ioDevices = ioManager.getIODevices();
+        for (int i = 0; i < ioDevices.size(); ++i) {
+            if (path.startsWith(ioDevices.get(i).getPath().getAbsolutePath())) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
     private void sweepAndFlush(int fileId, boolean flushDirtyPages) throws HyracksDataException {
         for (int i = 0; i < pageMap.length; ++i) {
             CacheBucket bucket = pageMap[i];
@@ -713,15 +1340,34 @@ public class BufferCache implements IBufferCacheInternal {
             throws HyracksDataException {
         if (BufferedFileHandle.getFileId(cPage.dpid) == fileId) {
             int pinCount = -1;
+            if (cPage.pendingRead != null) {
+                completePendingRead(cPage);
+            }
             if (cPage.dirty.get()) {
-                if (flushDirtyPages) {
-                    write(cPage);
+                if (closed) {
+                    // The flushers are gone, a latch that is still held will never be released.
+                    if (!cPage.latch.writeLock().tryLock()) {
+                        throw new IllegalStateException("Cache closed, but unable to acquire write lock on dirty page: "
+                                + cPage.dpid);
+                    }
+                } else {
+                    // Wait for a flusher that may be writing the page.
+                    cPage.latch.writeLock().lock();
+                }
+                try {
+                    if (cPage.dirty.get()) {
+                        if (flushDirtyPages) {
+                            write(cPage);
+                        }
+                        cPage.dirty.set(false);
+                        cPage.pinCount.decrementAndGet();
+                        dirtyPageCount.decrementAndGet();
+                    }
+                } finally {
+                    cPage.latch.writeLock().unlock();
                 }
-                cPage.dirty.set(false);                
-                pinCount = cPage.pinCount.decrementAndGet();
-            } else {
-                pinCount = cPage.pinCount.get();
             }
+            pinCount = cPage.pinCount.get();
             if (pinCount != 0) {
                 throw new IllegalStateException("Page is pinned and file is being closed. Pincount is: " + pinCount);
             }
@@ -757,7 +1403,7 @@ public class BufferCache implements IBufferCacheInternal {
     @Override
     public void flushDirtyPage(ICachedPage page) throws HyracksDataException {
     	// Assumes the caller has pinned the page.
-    	cleanerThread.cleanPage((CachedPage)page, true);
+    	cleanPage((CachedPage) page);
     }
 	
 	@Override
@@ -792,6 +1438,7 @@ public class BufferCache implements IBufferCacheInternal {
                 }
             } finally {
                 fileMapManager.unregisterFile(fileId);
+                statistics.removeFileStatistics(fileId);
                 if (fInfo != null) {
                     // Mark the fInfo as deleted, 
                     // such that when its pages are reclaimed in openFile(),
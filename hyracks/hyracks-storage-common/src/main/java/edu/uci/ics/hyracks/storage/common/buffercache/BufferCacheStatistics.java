@@ -0,0 +1,205 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.uci.ics.hyracks.storage.common.buffercache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import edu.uci.ics.hyracks.api.job.profiling.counters.ICounterSource;
+
+/**
+ * Always-on statistics of a buffer cache, broken down by file. The counters of a file are striped by thread, so
+ * that threads pinning pages of the same file do not contend on them. Reading a counter sums its stripes, so the
+ * value is not an atomic snapshot. The statistics of a file are kept after the file is closed, and dropped when it
+ * is deleted.
+ */
+public class BufferCacheStatistics implements ICounterSource {
+    private static final String COUNTER_PREFIX = "buffer-cache.";
+
+    private final ConcurrentMap<Integer, FileStatistics> fileStatistics;
+    private final AtomicInteger dirtyPageCount;
+    private final int stripeMask;
+
+    BufferCacheStatistics(AtomicInteger dirtyPageCount) {
+        this.dirtyPageCount = dirtyPageCount;
+        fileStatistics = new ConcurrentHashMap<Integer, FileStatistics>();
+        int nStripes = 1;
+        while (nStripes < Runtime.getRuntime().availableProcessors()) {
+            nStripes <<= 1;
+        }
+        stripeMask = nStripes - 1;
+    }
+
+    FileStatistics getOrCreateFileStatistics(int fileId, String fileName) {
+        FileStatistics stats = fileStatistics.get(fileId);
+        if (stats == null) {
+            stats = new FileStatistics(fileId, fileName, stripeMask);
+            FileStatistics existing = fileStatistics.putIfAbsent(fileId, stats);
+            if (existing != null) {
+                stats = existing;
+            }
+        }
+        return stats;
+    }
+
+    void removeFileStatistics(int fileId) {
+        fileStatistics.remove(fileId);
+    }
+
+    /**
+     * @return the statistics of a file, or null if the file has not been opened since the cache was created.
+     */
+    public FileStatistics getFileStatistics(int fileId) {
+        return fileStatistics.get(fileId);
+    }
+
+    public Collection<FileStatistics> getAllFileStatistics() {
+        return Collections.unmodifiableCollection(fileStatistics.values());
+    }
+
+    /**
+     * Gets the number of pages that are currently dirty, over all files.
+     */
+    public int getDirtyPageCount() {
+        return dirtyPageCount.get();
+    }
+
+    @Override
+    public void getCounters(Map<String, Long> counters) {
+        counters.put(COUNTER_PREFIX + "dirty-pages", (long) getDirtyPageCount());
+        for (FileStatistics stats : fileStatistics.values()) {
+            String prefix = COUNTER_PREFIX + stats.getFileName() + ".";
+            counters.put(prefix + "hits", stats.getHits());
+            counters.put(prefix + "misses", stats.getMisses());
+            counters.put(prefix + "reads", stats.getReads());
+            counters.put(prefix + "writes", stats.getWrites());
+            counters.put(prefix + "evictions", stats.getEvictions());
+            counters.put(prefix + "victimization-retries", stats.getVictimizationRetries());
+            counters.put(prefix + "cleaner-waits", stats.getCleanerWaits());
+            counters.put(prefix + "cleaner-wait-time-ms", stats.getCleanerWaitTime());
+        }
+    }
+
+    public static class FileStatistics {
+        static final int HITS = 0;
+        static final int MISSES = 1;
+        static final int READS = 2;
+        static final int WRITES = 3;
+        static final int EVICTIONS = 4;
+        static final int VICTIMIZATION_RETRIES = 5;
+        static final int CLEANER_WAITS = 6;
+        static final int CLEANER_WAIT_TIME = 7;
+        // The counters of a stripe are adjacent, so each stripe fills a cache line of 64 bytes.
+        private static final int NUM_COUNTERS = 8;
+
+        private final int fileId;
+        private final String fileName;
+        private final AtomicLongArray cells;
+        private final int stripeMask;
+
+        private FileStatistics(int fileId, String fileName, int stripeMask) {
+            this.fileId = fileId;
+            this.fileName = fileName;
+            this.stripeMask = stripeMask;
+            cells = new AtomicLongArray((stripeMask + 1) * NUM_COUNTERS);
+        }
+
+        void increment(int counter) {
+            add(counter, 1);
+        }
+
+        void add(int counter, long delta) {
+            int stripe = (int) Thread.currentThread().getId() & stripeMask;
+            cells.addAndGet(stripe * NUM_COUNTERS + counter, delta);
+        }
+
+        private long get(int counter) {
+            long sum = 0;
+            for (int i = counter; i < cells.length(); i += NUM_COUNTERS) {
+                sum += cells.get(i);
+            }
+            return sum;
+        }
+
+        public int getFileId() {
+            return fileId;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        /**
+         * Gets the number of pins of pages that were resident, or whose prefetch read had been started.
+         */
+        public long getHits() {
+            return get(HITS);
+        }
+
+        /**
+         * Gets the number of pins that had to read the page.
+         */
+        public long getMisses() {
+            return get(MISSES);
+        }
+
+        /**
+         * Gets the number of pages read, including the pages read by prefetch().
+         */
+        public long getReads() {
+            return get(READS);
+        }
+
+        /**
+         * Gets the number of pages written back.
+         */
+        public long getWrites() {
+            return get(WRITES);
+        }
+
+        /**
+         * Gets the number of pages of the file that were replaced by other pages.
+         */
+        public long getEvictions() {
+            return get(EVICTIONS);
+        }
+
+        /**
+         * Gets the number of times a pin could not find a victim on the first try.
+         */
+        public long getVictimizationRetries() {
+            return get(VICTIMIZATION_RETRIES);
+        }
+
+        /**
+         * Gets the number of times a pin waited for the flushers to clean pages.
+         */
+        public long getCleanerWaits() {
+            return get(CLEANER_WAITS);
+        }
+
+        /**
+         * Gets the total time, in milliseconds, that pins waited for the flushers to clean pages.
+         */
+        public long getCleanerWaitTime() {
+            return get(CLEANER_WAIT_TIME) / 1000000;
+        }
+    }
+}
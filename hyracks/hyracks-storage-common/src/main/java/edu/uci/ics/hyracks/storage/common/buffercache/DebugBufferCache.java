@@ -82,6 +82,11 @@ public class DebugBufferCache implements IBufferCache {
         return page;
     }
 
+    @Override
+    public int prefetch(long startDpid, int numPages) throws HyracksDataException {
+        return bufferCache.prefetch(startDpid, numPages);
+    }
+
     @Override
     public void unpin(ICachedPage page) throws HyracksDataException {
         bufferCache.unpin(page);
@@ -98,6 +103,11 @@ public class DebugBufferCache implements IBufferCache {
         return bufferCache.getNumPages();
     }
 
+    @Override
+    public BufferCacheStatistics getStatistics() {
+        return bufferCache.getStatistics();
+    }
+
     @Override
     public void close() {
         bufferCache.close();
@@ -30,6 +30,16 @@ public interface IBufferCache {
 
     public ICachedPage pin(long dpid, boolean newPage) throws HyracksDataException;
 
+    /**
+     * Starts asynchronous reads of numPages consecutive pages, beginning at startDpid, that are not in the cache
+     * yet. A later pin() of one of these pages waits for its read instead of issuing another one. Prefetching is a
+     * hint: it stops early when no buffer is free without waiting or when the reads still in flight hold enough
+     * pages already, and it may read fewer pages than asked for.
+     * 
+     * @return the number of pages, from startDpid on, that are resident or being read.
+     */
+    public int prefetch(long startDpid, int numPages) throws HyracksDataException;
+
     public void unpin(ICachedPage page) throws HyracksDataException;
 
     public void flushDirtyPage(ICachedPage page) throws HyracksDataException;
@@ -40,5 +50,10 @@ public interface IBufferCache {
 
     public int getNumPages();
 
+    /**
+     * Gets the statistics of the cache, broken down by file.
+     */
+    public BufferCacheStatistics getStatistics();
+
     public void close();
 }
\ No newline at end of file
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.common.buffercache;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
+import edu.uci.ics.hyracks.api.io.FileReference;
+import edu.uci.ics.hyracks.storage.common.file.BufferedFileHandle;
+
+/**
+ * A buffer cache for a single file that only lives in memory. A page is
+ * allocated on the heap when it is first pinned and stays until the cache is
+ * closed, nothing is ever read or written. The number of pages is not bounded,
+ * the owner decides when the file has grown large enough.
+ */
+public class InMemoryBufferCache implements IBufferCache {
+    private final ICacheMemoryAllocator allocator;
+    private final int pageSize;
+    private final BufferCacheStatistics statistics = new BufferCacheStatistics(new AtomicInteger());
+    // Grown under the lock of the cache, pages are never removed until close.
+    private volatile Page[] pages;
+    private int pageCount;
+
+    public InMemoryBufferCache(ICacheMemoryAllocator allocator, int pageSize, int initialPages) {
+        this.allocator = allocator;
+        this.pageSize = pageSize;
+        this.pages = new Page[Math.max(1, initialPages)];
+    }
+
+    @Override
+    public void createFile(FileReference fileRef) throws HyracksDataException {
+    }
+
+    @Override
+    public void openFile(int fileId) throws HyracksDataException {
+    }
+
+    @Override
+    public void closeFile(int fileId) throws HyracksDataException {
+    }
+
+    @Override
+    public void deleteFile(int fileId, boolean flushDirtyPages) throws HyracksDataException {
+    }
+
+    @Override
+    public ICachedPage tryPin(long dpid) throws HyracksDataException {
+        return pin(dpid, false);
+    }
+
+    @Override
+    public ICachedPage pin(long dpid, boolean newPage) throws HyracksDataException {
+        int pageId = BufferedFileHandle.getPageId(dpid);
+        Page[] p = pages;
+        if (pageId < p.length && p[pageId] != null) {
+            return p[pageId];
+        }
+        return allocatePage(pageId);
+    }
+
+    private synchronized Page allocatePage(int pageId) {
+        if (pageId >= pages.length) {
+            Page[] newPages = new Page[Math.max(pages.length * 2, pageId + 1)];
+            System.arraycopy(pages, 0, newPages, 0, pages.length);
+            pages = newPages;
+        }
+        if (pages[pageId] == null) {
+            pages[pageId] = new Page(allocator.allocate(pageSize, 1)[0]);
+            pageCount++;
+        }
+        return pages[pageId];
+    }
+
+    @Override
+    public int prefetch(long startDpid, int numPages) throws HyracksDataException {
+        return numPages;
+    }
+
+    @Override
+    public void unpin(ICachedPage page) throws HyracksDataException {
+    }
+
+    @Override
+    public void flushDirtyPage(ICachedPage page) throws HyracksDataException {
+    }
+
+    @Override
+    public void force(int fileId, boolean metadata) throws HyracksDataException {
+    }
+
+    @Override
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Gets the number of pages that have been allocated.
+     */
+    @Override
+    public synchronized int getNumPages() {
+        return pageCount;
+    }
+
+    @Override
+    public BufferCacheStatistics getStatistics() {
+        return statistics;
+    }
+
+    @Override
+    public synchronized void close() {
+        pages = new Page[1];
+        pageCount = 0;
+    }
+
+    private static class Page implements ICachedPage {
+        private final ByteBuffer buffer;
+        private final ReadWriteLock latch = new ReentrantReadWriteLock();
+
+        public Page(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public ByteBuffer getBuffer() {
+            return buffer;
+        }
+
+        @Override
+        public void acquireReadLatch() {
+            latch.readLock().lock();
+        }
+
+        @Override
+        public void releaseReadLatch() {
+            latch.readLock().unlock();
+        }
+
+        @Override
+        public void acquireWriteLatch() {
+            latch.writeLock().lock();
+        }
+
+        @Override
+        public void releaseWriteLatch() {
+            latch.writeLock().unlock();
+        }
+    }
+}
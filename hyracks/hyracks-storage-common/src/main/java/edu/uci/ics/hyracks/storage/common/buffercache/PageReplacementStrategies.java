@@ -0,0 +1,42 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.uci.ics.hyracks.storage.common.buffercache;
+
+import java.util.Properties;
+
+/**
+ * Creates page replacement strategies by the names used in the Node Controller
+ * configuration (-buffer-cache-page-replacement).
+ */
+public class PageReplacementStrategies {
+    public static final String NODE_PROPERTY = "buffer-cache-page-replacement";
+
+    public static final String CLOCK = "clock";
+
+    public static final String TWO_QUEUE = "2q";
+
+    public static IPageReplacementStrategy create(String name) {
+        if (name == null || CLOCK.equalsIgnoreCase(name)) {
+            return new ClockPageReplacementStrategy();
+        } else if (TWO_QUEUE.equalsIgnoreCase(name)) {
+            return new TwoQueuePageReplacementStrategy();
+        }
+        throw new IllegalArgumentException("Unknown page replacement strategy: " + name);
+    }
+
+    public static IPageReplacementStrategy create(Properties nodeProperties) {
+        return create(nodeProperties.getProperty(NODE_PROPERTY, CLOCK));
+    }
+}
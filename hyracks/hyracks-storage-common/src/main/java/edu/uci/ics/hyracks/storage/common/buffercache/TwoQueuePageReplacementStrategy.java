@@ -0,0 +1,268 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.uci.ics.hyracks.storage.common.buffercache;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Scan resistant page replacement based on 2Q (Johnson and Shasha, VLDB '94).
+ * Pages read for the first time enter a small FIFO queue (A1in). When a page
+ * falls out of A1in, its dpid is remembered in a ghost queue (A1out) that
+ * holds no data. Only pages that are read again while their dpid is in A1out
+ * are admitted to the main queue (Am), which is managed with a clock. Pages
+ * that are pinned again while they are still in A1in are moved to Am when the
+ * victim search reaches them, instead of being replaced.
+ * Sequential scans, which pin every page once, therefore cycle through A1in
+ * without disturbing the hot pages in Am.
+ * Hits only set a reference bit, so pinning a resident page never takes the
+ * strategy lock. The queues are only changed when a page is replaced.
+ */
+public class TwoQueuePageReplacementStrategy implements IPageReplacementStrategy {
+    private static final int MAX_UNSUCCESSFUL_CYCLE_COUNT = 3;
+
+    private static final float DEFAULT_A1IN_RATIO = 0.25f;
+    private static final float DEFAULT_A1OUT_RATIO = 0.5f;
+
+    private final Lock lock;
+    private final float a1inRatio;
+    private final float a1outRatio;
+    private final PageQueue free;
+    private final PageQueue a1in;
+    private final PageQueue am;
+    private final LinkedHashSet<Long> a1out;
+    private IBufferCacheInternal bufferCache;
+    private int maxA1inSize;
+    private int maxA1outSize;
+
+    public TwoQueuePageReplacementStrategy() {
+        this(DEFAULT_A1IN_RATIO, DEFAULT_A1OUT_RATIO);
+    }
+
+    /**
+     * @param a1inRatio
+     *            fraction of the cache pages that A1in may hold before its pages are victimized first.
+     * @param a1outRatio
+     *            number of ghost entries kept in A1out, as a fraction of the cache pages.
+     */
+    public TwoQueuePageReplacementStrategy(float a1inRatio, float a1outRatio) {
+        this.lock = new ReentrantLock();
+        this.a1inRatio = a1inRatio;
+        this.a1outRatio = a1outRatio;
+        free = new PageQueue();
+        a1in = new PageQueue();
+        am = new PageQueue();
+        a1out = new LinkedHashSet<Long>();
+    }
+
+    @Override
+    public Object createPerPageStrategyObject(int cpid) {
+        PageState state = new PageState(cpid);
+        free.addLast(state);
+        return state;
+    }
+
+    @Override
+    public void setBufferCache(IBufferCacheInternal bufferCache) {
+        this.bufferCache = bufferCache;
+        int numPages = bufferCache.getNumPages();
+        maxA1inSize = Math.max(1, (int) (numPages * a1inRatio));
+        maxA1outSize = Math.max(1, (int) (numPages * a1outRatio));
+    }
+
+    @Override
+    public void notifyCachePageReset(ICachedPageInternal cPage) {
+        PageState state = getPerPageObject(cPage);
+        long newDpid = cPage.getDiskPageId();
+        lock.lock();
+        try {
+            if (state.queue != null) {
+                state.queue.remove(state);
+            }
+            if (state.queue == a1in && state.dpid >= 0) {
+                // The page is pushed out of A1in. Remember it, so that a re-reference promotes it to Am.
+                a1out.add(state.dpid);
+                if (a1out.size() > maxA1outSize) {
+                    Iterator<Long> i = a1out.iterator();
+                    i.next();
+                    i.remove();
+                }
+            }
+            state.dpid = newDpid;
+            state.accessed = false;
+            state.referenced = false;
+            if (newDpid < 0) {
+                free.addLast(state);
+            } else if (a1out.remove(newDpid)) {
+                am.addLast(state);
+            } else {
+                a1in.addLast(state);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void notifyCachePageAccess(ICachedPageInternal cPage) {
+        PageState state = getPerPageObject(cPage);
+        if (!state.accessed) {
+            // The first access is the pin that brought the page into the cache.
+            state.accessed = true;
+        } else if (!state.referenced) {
+            state.referenced = true;
+        }
+    }
+
+    @Override
+    public ICachedPageInternal findVictim() {
+        lock.lock();
+        try {
+            ICachedPageInternal victim = findVictim(free);
+            if (victim != null) {
+                return victim;
+            }
+            if (a1in.size > maxA1inSize || am.size == 0) {
+                victim = findA1inVictim();
+                if (victim != null) {
+                    return victim;
+                }
+            }
+            victim = findClockVictim();
+            if (victim != null) {
+                return victim;
+            }
+            return findVictim(a1in);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Picks the oldest page of a FIFO queue that is not pinned.
+     */
+    private ICachedPageInternal findVictim(PageQueue queue) {
+        for (PageState state = queue.head; state != null; state = state.next) {
+            ICachedPageInternal cPage = bufferCache.getPage(state.cpid);
+            if (cPage.pinIfGoodVictim()) {
+                return cPage;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Picks the oldest page of A1in that is not pinned, moving pages that were pinned again since they were
+     * read to Am.
+     */
+    private ICachedPageInternal findA1inVictim() {
+        PageState state = a1in.head;
+        while (state != null) {
+            PageState next = state.next;
+            if (state.referenced) {
+                state.referenced = false;
+                a1in.remove(state);
+                am.addLast(state);
+            } else {
+                ICachedPageInternal cPage = bufferCache.getPage(state.cpid);
+                if (cPage.pinIfGoodVictim()) {
+                    return cPage;
+                }
+            }
+            state = next;
+        }
+        return null;
+    }
+
+    /**
+     * Runs the clock over Am. Referenced pages get a second chance by moving them to the tail of the queue.
+     */
+    private ICachedPageInternal findClockVictim() {
+        int maxSteps = am.size * MAX_UNSUCCESSFUL_CYCLE_COUNT;
+        for (int i = 0; i < maxSteps && am.head != null; ++i) {
+            PageState state = am.head;
+            if (state.referenced) {
+                state.referenced = false;
+            } else {
+                ICachedPageInternal cPage = bufferCache.getPage(state.cpid);
+                if (cPage.pinIfGoodVictim()) {
+                    return cPage;
+                }
+            }
+            am.remove(state);
+            am.addLast(state);
+        }
+        return null;
+    }
+
+    private PageState getPerPageObject(ICachedPageInternal cPage) {
+        return (PageState) cPage.getReplacementStrategyObject();
+    }
+
+    private static class PageState {
+        private final int cpid;
+        private long dpid;
+        private volatile boolean accessed;
+        private volatile boolean referenced;
+        private PageQueue queue;
+        private PageState prev;
+        private PageState next;
+
+        public PageState(int cpid) {
+            this.cpid = cpid;
+            dpid = -1;
+        }
+    }
+
+    /**
+     * Intrusive doubly linked list of page states, so pages can be moved between queues without allocating.
+     */
+    private static class PageQueue {
+        private PageState head;
+        private PageState tail;
+        private int size;
+
+        public void addLast(PageState state) {
+            state.queue = this;
+            state.prev = tail;
+            state.next = null;
+            if (tail != null) {
+                tail.next = state;
+            } else {
+                head = state;
+            }
+            tail = state;
+            ++size;
+        }
+
+        public void remove(PageState state) {
+            if (state.prev != null) {
+                state.prev.next = state.next;
+            } else {
+                head = state.next;
+            }
+            if (state.next != null) {
+                state.next.prev = state.prev;
+            } else {
+                tail = state.prev;
+            }
+            state.prev = null;
+            state.next = null;
+            --size;
+        }
+    }
+}
@@ -17,15 +17,20 @@ package edu.uci.ics.hyracks.storage.common.file;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import edu.uci.ics.hyracks.api.io.FileHandle;
+import edu.uci.ics.hyracks.storage.common.buffercache.BufferCacheStatistics.FileStatistics;
 
 public class BufferedFileHandle {
     private final int fileId;
     private FileHandle handle;
+    private final int ioDeviceId;
+    private final FileStatistics statistics;
     private final AtomicInteger refCount;
 
-    public BufferedFileHandle(int fileId, FileHandle handle) {
+    public BufferedFileHandle(int fileId, FileHandle handle, int ioDeviceId, FileStatistics statistics) {
         this.fileId = fileId;
         this.handle = handle;
+        this.ioDeviceId = ioDeviceId;
+        this.statistics = statistics;
         refCount = new AtomicInteger();
     }
 
@@ -33,6 +38,20 @@ public class BufferedFileHandle {
         return fileId;
     }
 
+    /**
+     * Gets the index of the IO device (in IIOManager.getIODevices()) that holds the file.
+     */
+    public int getIODeviceId() {
+        return ioDeviceId;
+    }
+
+    /**
+     * Gets the buffer cache statistics of the file, which outlive the handle.
+     */
+    public FileStatistics getStatistics() {
+        return statistics;
+    }
+
     public FileHandle getFileHandle() {
         return handle;
     }
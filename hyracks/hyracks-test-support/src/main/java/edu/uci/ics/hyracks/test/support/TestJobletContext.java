@@ -25,18 +25,22 @@ import edu.uci.ics.hyracks.api.io.IIOManager;
 import edu.uci.ics.hyracks.api.job.JobId;
 import edu.uci.ics.hyracks.api.job.profiling.counters.ICounterContext;
 import edu.uci.ics.hyracks.api.resources.IDeallocatable;
+import edu.uci.ics.hyracks.api.resources.IMemoryBudget;
 import edu.uci.ics.hyracks.control.nc.io.IOManager;
 import edu.uci.ics.hyracks.control.nc.io.WorkspaceFileFactory;
+import edu.uci.ics.hyracks.control.nc.resources.MemoryBudget;
 
 public class TestJobletContext implements IHyracksJobletContext {
     private final INCApplicationContext appContext;
     private JobId jobId;
     private WorkspaceFileFactory fileFactory;
+    private final MemoryBudget memoryBudget;
 
     public TestJobletContext(INCApplicationContext appContext, JobId jobId) throws HyracksException {
         this.appContext = appContext;
         this.jobId = jobId;
         fileFactory = new WorkspaceFileFactory(this, (IOManager) getIOManager());
+        memoryBudget = new MemoryBudget(null, MemoryBudget.UNLIMITED);
     }
 
     @Override
@@ -44,6 +48,11 @@ public class TestJobletContext implements IHyracksJobletContext {
         return appContext.getRootContext().allocateFrame();
     }
 
+    @Override
+    public void deallocateFrame(ByteBuffer frame) {
+        appContext.getRootContext().deallocateFrame(frame);
+    }
+
     @Override
     public int getFrameSize() {
         return appContext.getRootContext().getFrameSize();
@@ -69,6 +78,11 @@ public class TestJobletContext implements IHyracksJobletContext {
         return new CounterContext(jobId.toString());
     }
 
+    @Override
+    public IMemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
     @Override
     public void registerDeallocatable(final IDeallocatable deallocatable) {
         Runtime.getRuntime().addShutdownHook(new Thread() {
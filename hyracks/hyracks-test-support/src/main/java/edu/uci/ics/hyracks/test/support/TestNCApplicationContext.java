@@ -15,20 +15,28 @@
 package edu.uci.ics.hyracks.test.support;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
 
 import edu.uci.ics.hyracks.api.application.INCApplicationContext;
 import edu.uci.ics.hyracks.api.context.IHyracksRootContext;
+import edu.uci.ics.hyracks.api.job.profiling.counters.ICounterSource;
 
 public class TestNCApplicationContext implements INCApplicationContext {
     private final IHyracksRootContext rootCtx;
     private final String nodeId;
+    private final Properties nodeProperties;
 
     private Serializable distributedState;
     private Object appObject;
+    private final List<ICounterSource> counterSources;
 
     public TestNCApplicationContext(IHyracksRootContext rootCtx, String nodeId) {
         this.rootCtx = rootCtx;
         this.nodeId = nodeId;
+        nodeProperties = new Properties();
+        counterSources = new ArrayList<ICounterSource>();
     }
 
     @Override
@@ -51,6 +59,11 @@ public class TestNCApplicationContext implements INCApplicationContext {
         return rootCtx;
     }
 
+    @Override
+    public Properties getNodeProperties() {
+        return nodeProperties;
+    }
+
     @Override
     public void setApplicationObject(Object object) {
         this.appObject = object;
@@ -60,4 +73,13 @@ public class TestNCApplicationContext implements INCApplicationContext {
     public Object getApplicationObject() {
         return appObject;
     }
+
+    @Override
+    public void registerCounterSource(ICounterSource counterSource) {
+        counterSources.add(counterSource);
+    }
+
+    public List<ICounterSource> getCounterSources() {
+        return counterSources;
+    }
 }
\ No newline at end of file
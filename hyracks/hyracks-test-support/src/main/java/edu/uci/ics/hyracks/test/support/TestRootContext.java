@@ -25,13 +25,16 @@ import edu.uci.ics.hyracks.api.exceptions.HyracksException;
 import edu.uci.ics.hyracks.api.io.IIOManager;
 import edu.uci.ics.hyracks.api.io.IODeviceHandle;
 import edu.uci.ics.hyracks.control.nc.io.IOManager;
+import edu.uci.ics.hyracks.control.nc.resources.FramePool;
 
 public class TestRootContext implements IHyracksRootContext {
     private int frameSize;
     private IOManager ioManager;
+    private FramePool framePool;
 
     public TestRootContext(int frameSize) throws HyracksException {
         this.frameSize = frameSize;
+        framePool = new FramePool(frameSize, 64);
         List<IODeviceHandle> devices = new ArrayList<IODeviceHandle>();
         devices.add(new IODeviceHandle(new File(System.getProperty("java.io.tmpdir")), "."));
         ioManager = new IOManager(devices, Executors.newCachedThreadPool());
@@ -39,7 +42,12 @@ public class TestRootContext implements IHyracksRootContext {
 
     @Override
     public ByteBuffer allocateFrame() {
-        return ByteBuffer.allocate(frameSize);
+        return framePool.allocate();
+    }
+
+    @Override
+    public void deallocateFrame(ByteBuffer frame) {
+        framePool.deallocate(frame);
     }
 
     @Override
@@ -27,18 +27,22 @@ import edu.uci.ics.hyracks.api.io.FileReference;
 import edu.uci.ics.hyracks.api.io.IIOManager;
 import edu.uci.ics.hyracks.api.job.profiling.counters.ICounterContext;
 import edu.uci.ics.hyracks.api.resources.IDeallocatable;
+import edu.uci.ics.hyracks.api.resources.IMemoryBudget;
 import edu.uci.ics.hyracks.control.nc.io.IOManager;
 import edu.uci.ics.hyracks.control.nc.io.WorkspaceFileFactory;
+import edu.uci.ics.hyracks.control.nc.resources.MemoryBudget;
 
 public class TestTaskContext implements IHyracksTaskContext {
     private final IHyracksJobletContext jobletContext;
     private final TaskAttemptId taskId;
     private WorkspaceFileFactory fileFactory;
+    private final MemoryBudget memoryBudget;
 
     public TestTaskContext(IHyracksJobletContext jobletContext, TaskAttemptId taskId) throws HyracksException {
         this.jobletContext = jobletContext;
         this.taskId = taskId;
         fileFactory = new WorkspaceFileFactory(this, (IOManager) getIOManager());
+        memoryBudget = new MemoryBudget(null, MemoryBudget.UNLIMITED);
     }
 
     @Override
@@ -46,6 +50,11 @@ public class TestTaskContext implements IHyracksTaskContext {
         return jobletContext.allocateFrame();
     }
 
+    @Override
+    public void deallocateFrame(ByteBuffer frame) {
+        jobletContext.deallocateFrame(frame);
+    }
+
     @Override
     public int getFrameSize() {
         return jobletContext.getFrameSize();
@@ -76,6 +85,11 @@ public class TestTaskContext implements IHyracksTaskContext {
         return new CounterContext(jobletContext.getJobId() + "." + taskId);
     }
 
+    @Override
+    public IMemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
     @Override
     public void registerDeallocatable(final IDeallocatable deallocatable) {
         Runtime.getRuntime().addShutdownHook(new Thread() {
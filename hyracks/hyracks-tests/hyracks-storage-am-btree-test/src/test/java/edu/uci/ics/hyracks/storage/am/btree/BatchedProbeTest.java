@@ -0,0 +1,162 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.am.btree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.logging.Level;
+
+import org.junit.Test;
+
+import edu.uci.ics.hyracks.api.dataflow.value.ISerializerDeserializer;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.ArrayTupleBuilder;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.ArrayTupleReference;
+import edu.uci.ics.hyracks.dataflow.common.data.accessors.ITupleReference;
+import edu.uci.ics.hyracks.dataflow.common.data.marshalling.IntegerSerializerDeserializer;
+import edu.uci.ics.hyracks.dataflow.common.util.TupleUtils;
+import edu.uci.ics.hyracks.storage.am.btree.frames.BTreeLeafFrameType;
+import edu.uci.ics.hyracks.storage.am.btree.impls.BTreeRangeSearchCursor;
+import edu.uci.ics.hyracks.storage.am.btree.impls.RangePredicate;
+import edu.uci.ics.hyracks.storage.am.btree.util.AbstractBTreeTest;
+import edu.uci.ics.hyracks.storage.am.btree.util.BTreeTestContext;
+import edu.uci.ics.hyracks.storage.am.btree.util.BTreeTestUtils;
+import edu.uci.ics.hyracks.storage.am.common.ophelpers.MultiComparator;
+
+/**
+ * Probes a BTree with batches of keys, reopening the cursor on the leaf of
+ * the previous probe where possible, and checks that every probe returns the
+ * same tuples as a search from the root.
+ */
+@SuppressWarnings("rawtypes")
+public class BatchedProbeTest extends AbstractBTreeTest {
+    private static final int PAGE_SIZE = 1024;
+    private static final int NUM_PAGES = 1024;
+    private static final int NUM_KEYS = 20000;
+    private static final int NUM_PROBES = 10000;
+
+    private final ISerializerDeserializer[] fieldSerdes = { IntegerSerializerDeserializer.INSTANCE,
+            IntegerSerializerDeserializer.INSTANCE };
+
+    @Override
+    public int getPageSize() {
+        return PAGE_SIZE;
+    }
+
+    @Override
+    public int getNumPages() {
+        return NUM_PAGES;
+    }
+
+    @Test
+    public void sortedPointProbes() throws Exception {
+        runTest(BTreeLeafFrameType.REGULAR_NSM, 0, true);
+    }
+
+    @Test
+    public void sortedRangeProbes() throws Exception {
+        runTest(BTreeLeafFrameType.FIELD_PREFIX_COMPRESSED_NSM, 7, true);
+    }
+
+    @Test
+    public void unsortedProbes() throws Exception {
+        runTest(BTreeLeafFrameType.REGULAR_NSM, 3, false);
+    }
+
+    private void runTest(BTreeLeafFrameType leafType, int rangeSize, boolean sorted) throws Exception {
+        BTreeTestContext testCtx = BTreeTestUtils.createBTreeTestContext(bufferCache, btreeFileId, fieldSerdes, 1,
+                leafType);
+        // only even keys, so that half of the probes miss
+        ArrayTupleBuilder tb = new ArrayTupleBuilder(2);
+        ArrayTupleReference tuple = new ArrayTupleReference();
+        for (int i = 0; i < NUM_KEYS; i++) {
+            TupleUtils.createIntegerTuple(tb, tuple, i * 2, i);
+            testCtx.indexAccessor.insert(tuple);
+        }
+
+        int[] probes = new int[NUM_PROBES];
+        for (int i = 0; i < NUM_PROBES; i++) {
+            probes[i] = rnd.nextInt(NUM_KEYS * 2 + 10) - 5;
+        }
+        if (sorted) {
+            Arrays.sort(probes);
+        }
+
+        ArrayTupleBuilder lowKb = new ArrayTupleBuilder(1);
+        ArrayTupleReference lowKey = new ArrayTupleReference();
+        ArrayTupleBuilder highKb = new ArrayTupleBuilder(1);
+        ArrayTupleReference highKey = new ArrayTupleReference();
+        MultiComparator cmp = testCtx.btree.getMultiComparator();
+        RangePredicate pred = new RangePredicate(true, lowKey, highKey, true, true, cmp, cmp);
+
+        // the expected results, from searches that all start at the root
+        BTreeRangeSearchCursor cursor = new BTreeRangeSearchCursor(testCtx.leafFrame, false);
+        long[] expected = new long[NUM_PROBES];
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < NUM_PROBES; i++) {
+            setKeys(lowKb, lowKey, highKb, highKey, probes[i], rangeSize);
+            cursor.reset();
+            testCtx.indexAccessor.search(cursor, pred);
+            expected[i] = checksum(cursor);
+        }
+        long searchTime = System.currentTimeMillis() - start;
+        cursor.reset();
+
+        int savedDescents = 0;
+        start = System.currentTimeMillis();
+        for (int i = 0; i < NUM_PROBES; i++) {
+            setKeys(lowKb, lowKey, highKb, highKey, probes[i], rangeSize);
+            if (cursor.reopen(pred)) {
+                savedDescents++;
+            } else {
+                cursor.reset();
+                testCtx.indexAccessor.search(cursor, pred);
+            }
+            assertEquals("Probe of " + probes[i] + " returned unexpected answer.", expected[i], checksum(cursor));
+        }
+        long probeTime = System.currentTimeMillis() - start;
+        cursor.reset();
+
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info(leafType + ", range size: " + rangeSize + ", sorted: " + sorted + ", saved descents: "
+                    + savedDescents + "/" + NUM_PROBES + ", search time: " + searchTime + "ms, batched time: "
+                    + probeTime + "ms");
+        }
+        if (sorted) {
+            assertTrue(savedDescents > NUM_PROBES / 2);
+        }
+        testCtx.btree.close();
+    }
+
+    private void setKeys(ArrayTupleBuilder lowKb, ArrayTupleReference lowKey, ArrayTupleBuilder highKb,
+            ArrayTupleReference highKey, int key, int rangeSize) throws Exception {
+        TupleUtils.createIntegerTuple(lowKb, lowKey, key);
+        TupleUtils.createIntegerTuple(highKb, highKey, key + rangeSize);
+    }
+
+    private long checksum(BTreeRangeSearchCursor cursor) throws Exception {
+        long sum = 0;
+        while (cursor.hasNext()) {
+            cursor.next();
+            ITupleReference t = cursor.getTuple();
+            int key = IntegerSerializerDeserializer.getInt(t.getFieldData(0), t.getFieldStart(0));
+            // count and keys of the result, the keys are below 2^16
+            sum = sum * 31 + key + 1;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.am.btree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+
+import org.junit.Test;
+
+import edu.uci.ics.hyracks.api.dataflow.value.IBinaryComparatorFactory;
+import edu.uci.ics.hyracks.api.dataflow.value.ISerializerDeserializer;
+import edu.uci.ics.hyracks.api.dataflow.value.ITypeTraits;
+import edu.uci.ics.hyracks.api.io.FileReference;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.ArrayTupleBuilder;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.ArrayTupleReference;
+import edu.uci.ics.hyracks.dataflow.common.data.accessors.ITupleReference;
+import edu.uci.ics.hyracks.dataflow.common.data.marshalling.IntegerSerializerDeserializer;
+import edu.uci.ics.hyracks.dataflow.common.util.SerdeUtils;
+import edu.uci.ics.hyracks.dataflow.common.util.TupleUtils;
+import edu.uci.ics.hyracks.storage.am.btree.api.IBTreeLeafFrame;
+import edu.uci.ics.hyracks.storage.am.btree.frames.BTreeLeafFrameType;
+import edu.uci.ics.hyracks.storage.am.btree.impls.BTree;
+import edu.uci.ics.hyracks.storage.am.btree.impls.BTreeRangeSearchCursor;
+import edu.uci.ics.hyracks.storage.am.btree.impls.RangePredicate;
+import edu.uci.ics.hyracks.storage.am.btree.util.AbstractBTreeTest;
+import edu.uci.ics.hyracks.storage.am.btree.util.BTreeUtils;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexAccessor;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexCursor;
+import edu.uci.ics.hyracks.storage.am.common.ophelpers.MultiComparator;
+import edu.uci.ics.hyracks.storage.common.file.IFileMapProvider;
+import edu.uci.ics.hyracks.test.support.TestStorageManagerComponentHolder;
+
+/**
+ * Lets several threads insert into one BTree while they search for the keys
+ * they have inserted so far, and logs the throughput for every number of
+ * threads. Every thread inserts its own keys in random order, so splits happen
+ * all over the tree while other threads are passing through it.
+ */
+@SuppressWarnings("rawtypes")
+public class ConcurrentInsertSearchTest extends AbstractBTreeTest {
+    private static final int PAGE_SIZE = 1024;
+    private static final int NUM_PAGES = 4096;
+    private static final int NUM_KEYS = 40000;
+    private static final int[] NUM_THREADS = new int[] { 1, 2, 4, 8 };
+    private static final int RANGE_SEARCH_INTERVAL = 100;
+    private static final int RANGE_SIZE = 50;
+
+    private final ISerializerDeserializer[] fieldSerdes = { IntegerSerializerDeserializer.INSTANCE,
+            IntegerSerializerDeserializer.INSTANCE };
+
+    @Override
+    public int getPageSize() {
+        return PAGE_SIZE;
+    }
+
+    @Override
+    public int getNumPages() {
+        return NUM_PAGES;
+    }
+
+    @Test
+    public void regularNSMTest() throws Exception {
+        runTest(BTreeLeafFrameType.REGULAR_NSM);
+    }
+
+    @Test
+    public void fieldPrefixNSMTest() throws Exception {
+        runTest(BTreeLeafFrameType.FIELD_PREFIX_COMPRESSED_NSM);
+    }
+
+    private void runTest(BTreeLeafFrameType leafType) throws Exception {
+        for (int numThreads : NUM_THREADS) {
+            IFileMapProvider fmp = TestStorageManagerComponentHolder.getFileMapProvider(ctx);
+            FileReference file = new FileReference(new File(fileName + "-" + leafType + "-" + numThreads));
+            bufferCache.createFile(file);
+            int fileId = fmp.lookupFileId(file);
+            bufferCache.openFile(fileId);
+            try {
+                runThreads(createBTree(fileId, leafType), leafType, numThreads);
+            } finally {
+                bufferCache.closeFile(fileId);
+                file.getFile().deleteOnExit();
+            }
+        }
+    }
+
+    private BTree createBTree(int fileId, BTreeLeafFrameType leafType) throws Exception {
+        ITypeTraits[] typeTraits = SerdeUtils.serdesToTypeTraits(fieldSerdes, fieldSerdes.length);
+        IBinaryComparatorFactory[] cmpFactories = SerdeUtils.serdesToComparatorFactories(fieldSerdes, 1);
+        BTree btree = BTreeUtils.createBTree(bufferCache, fileId, typeTraits, cmpFactories, leafType);
+        btree.create(fileId);
+        btree.open(fileId);
+        return btree;
+    }
+
+    private void runThreads(BTree btree, BTreeLeafFrameType leafType, int numThreads) throws Exception {
+        List<Integer> keys = new ArrayList<Integer>(NUM_KEYS);
+        for (int i = 0; i < NUM_KEYS; i++) {
+            keys.add(i);
+        }
+        Collections.shuffle(keys, new Random(RANDOM_SEED));
+
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        Worker[] workers = new Worker[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            int[] workerKeys = new int[(NUM_KEYS - i + numThreads - 1) / numThreads];
+            for (int j = 0; j < workerKeys.length; j++) {
+                workerKeys[j] = keys.get(j * numThreads + i);
+            }
+            workers[i] = new Worker(btree, workerKeys, new MultiComparator(SerdeUtils.serdesToComparators(
+                    fieldSerdes, 1)), failures);
+        }
+        long start = System.currentTimeMillis();
+        for (Worker worker : workers) {
+            worker.start();
+        }
+        for (Worker worker : workers) {
+            worker.join();
+        }
+        long time = System.currentTimeMillis() - start;
+        if (!failures.isEmpty()) {
+            throw new Exception("Worker failed.", failures.get(0));
+        }
+
+        long ops = 0;
+        for (Worker worker : workers) {
+            ops += worker.ops;
+        }
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info(leafType + ", threads: " + numThreads + ", ops: " + ops + ", time: " + time + "ms, ops/s: "
+                    + (ops * 1000 / Math.max(1, time)));
+        }
+
+        // every key must be found exactly once, in order
+        IBTreeLeafFrame leafFrame = (IBTreeLeafFrame) btree.getLeafFrameFactory().createFrame();
+        ITreeIndexCursor scanCursor = new BTreeRangeSearchCursor(leafFrame, false);
+        RangePredicate nullPred = new RangePredicate(true, null, null, true, true, null, null);
+        btree.createAccessor().search(scanCursor, nullPred);
+        int expected = 0;
+        try {
+            while (scanCursor.hasNext()) {
+                scanCursor.next();
+                ITupleReference tuple = scanCursor.getTuple();
+                assertEquals(expected, IntegerSerializerDeserializer.getInt(tuple.getFieldData(0),
+                        tuple.getFieldStart(0)));
+                expected++;
+            }
+        } finally {
+            scanCursor.close();
+        }
+        assertEquals(NUM_KEYS, expected);
+    }
+
+    private static class Worker extends Thread {
+        private final BTree btree;
+        private final int[] keys;
+        // The comparators keep state, every thread needs its own.
+        private final MultiComparator cmp;
+        private final List<Throwable> failures;
+        private long ops = 0;
+
+        public Worker(BTree btree, int[] keys, MultiComparator cmp, List<Throwable> failures) {
+            this.btree = btree;
+            this.keys = keys;
+            this.cmp = cmp;
+            this.failures = failures;
+        }
+
+        @Override
+        public void run() {
+            try {
+                ITreeIndexAccessor accessor = btree.createAccessor();
+                ITreeIndexCursor cursor = new BTreeRangeSearchCursor(
+                        (IBTreeLeafFrame) btree.getLeafFrameFactory().createFrame(), false);
+                ArrayTupleBuilder tb = new ArrayTupleBuilder(2);
+                ArrayTupleReference tuple = new ArrayTupleReference();
+                ArrayTupleBuilder lowKb = new ArrayTupleBuilder(1);
+                ArrayTupleReference lowKey = new ArrayTupleReference();
+                ArrayTupleBuilder highKb = new ArrayTupleBuilder(1);
+                ArrayTupleReference highKey = new ArrayTupleReference();
+                RangePredicate pred = new RangePredicate(true, lowKey, highKey, true, true, cmp, cmp);
+                Random rnd = new Random(RANDOM_SEED + keys.length);
+                for (int i = 0; i < keys.length; i++) {
+                    TupleUtils.createIntegerTuple(tb, tuple, keys[i], keys[i]);
+                    accessor.insert(tuple);
+                    ops++;
+
+                    // look up one of the keys this thread has already inserted
+                    int key = keys[rnd.nextInt(i + 1)];
+                    TupleUtils.createIntegerTuple(lowKb, lowKey, key);
+                    TupleUtils.createIntegerTuple(highKb, highKey, key);
+                    assertEquals(1, search(accessor, cursor, pred));
+                    ops++;
+
+                    if (i % RANGE_SEARCH_INTERVAL == 0) {
+                        TupleUtils.createIntegerTuple(highKb, highKey, key + RANGE_SIZE);
+                        assertTrue(search(accessor, cursor, pred) >= 1);
+                        ops++;
+                    }
+                }
+            } catch (Throwable t) {
+                failures.add(t);
+            }
+        }
+
+        private int search(ITreeIndexAccessor accessor, ITreeIndexCursor cursor, RangePredicate pred) throws Exception {
+            cursor.reset();
+            accessor.search(cursor, pred);
+            int count = 0;
+            int prev = Integer.MIN_VALUE;
+            try {
+                while (cursor.hasNext()) {
+                    cursor.next();
+                    ITupleReference t = cursor.getTuple();
+                    int key = IntegerSerializerDeserializer.getInt(t.getFieldData(0), t.getFieldStart(0));
+                    if (key <= prev) {
+                        fail("Range search returned " + key + " after " + prev + ".");
+                    }
+                    prev = key;
+                    count++;
+                }
+            } finally {
+                cursor.close();
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.am.btree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import edu.uci.ics.hyracks.api.dataflow.value.IBinaryComparator;
+import edu.uci.ics.hyracks.api.dataflow.value.ISerializerDeserializer;
+import edu.uci.ics.hyracks.api.dataflow.value.ITypeTraits;
+import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
+import edu.uci.ics.hyracks.api.io.FileReference;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.ArrayTupleBuilder;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.ArrayTupleReference;
+import edu.uci.ics.hyracks.dataflow.common.data.accessors.ITupleReference;
+import edu.uci.ics.hyracks.dataflow.common.data.marshalling.IntegerSerializerDeserializer;
+import edu.uci.ics.hyracks.dataflow.common.util.SerdeUtils;
+import edu.uci.ics.hyracks.dataflow.common.util.TupleUtils;
+import edu.uci.ics.hyracks.storage.am.btree.frames.BTreeLeafFrameType;
+import edu.uci.ics.hyracks.storage.am.btree.impls.LSMBTree;
+import edu.uci.ics.hyracks.storage.am.btree.impls.LSMBTreeRangeSearchCursor;
+import edu.uci.ics.hyracks.storage.am.btree.impls.RangePredicate;
+import edu.uci.ics.hyracks.storage.am.btree.util.AbstractBTreeTest;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexAccessor;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexCursor;
+import edu.uci.ics.hyracks.storage.am.common.ophelpers.MultiComparator;
+import edu.uci.ics.hyracks.storage.common.buffercache.BufferCacheStatistics;
+import edu.uci.ics.hyracks.storage.common.buffercache.IBufferCache;
+import edu.uci.ics.hyracks.storage.common.buffercache.ICachedPage;
+import edu.uci.ics.hyracks.test.support.TestStorageManagerComponentHolder;
+
+/**
+ * Lets merges of an LSMBTree fail in the middle of the bulk load of the merged
+ * component, and checks that the failed merges leave no pages pinned or
+ * latched: the index keeps all of its tuples, can be closed and reopened, and
+ * the buffer cache shuts down.
+ */
+@SuppressWarnings("rawtypes")
+public class LSMBTreeMergeFailureTest extends AbstractBTreeTest {
+    private static final int PAGE_SIZE = 1024;
+    private static final int NUM_PAGES = 256;
+    private static final int MAX_OPEN_FILES = 100;
+    private static final int MEM_PAGE_BUDGET = 16;
+    private static final int MERGE_THRESHOLD = 3;
+    private static final int NUM_KEYS = 5000;
+    // new pages a merge may allocate before it fails, enough to be in the middle of its bulk load
+    private static final int NEW_PAGES_BEFORE_FAILURE = 10;
+
+    private final ISerializerDeserializer[] fieldSerdes = { IntegerSerializerDeserializer.INSTANCE,
+            IntegerSerializerDeserializer.INSTANCE };
+
+    @Override
+    public int getPageSize() {
+        return PAGE_SIZE;
+    }
+
+    @Override
+    public int getNumPages() {
+        return NUM_PAGES;
+    }
+
+    @Override
+    public int getMaxOpenFiles() {
+        return MAX_OPEN_FILES;
+    }
+
+    @Test
+    public void mergeFailureTest() throws Exception {
+        MergeFailingBufferCache failingCache = new MergeFailingBufferCache(bufferCache);
+        LSMBTree lsmBTree = createLSMBTree(failingCache);
+        lsmBTree.create(btreeFileId);
+        lsmBTree.open(btreeFileId);
+        ITreeIndexAccessor accessor = lsmBTree.createAccessor();
+
+        List<Integer> keys = new ArrayList<Integer>();
+        for (int i = 0; i < NUM_KEYS; i++) {
+            keys.add(i);
+        }
+        Collections.shuffle(keys, rnd);
+        ArrayTupleBuilder tb = new ArrayTupleBuilder(2);
+        ArrayTupleReference tuple = new ArrayTupleReference();
+        for (int k : keys) {
+            TupleUtils.createIntegerTuple(tb, tuple, k, -k);
+            accessor.insert(tuple);
+        }
+        // the merges run in the background
+        for (int i = 0; i < 100 && failingCache.failures.get() == 0; i++) {
+            Thread.sleep(50);
+        }
+        assertTrue("No merge failed.", failingCache.failures.get() > 0);
+        checkScan(accessor);
+
+        // fails if a failed merge left a page latched
+        failingCache.failMerges = false;
+        lsmBTree.close();
+
+        lsmBTree = createLSMBTree(bufferCache);
+        lsmBTree.open(btreeFileId);
+        checkScan(lsmBTree.createAccessor());
+        lsmBTree.close();
+        File base = new File(fileName);
+        File[] siblings = base.getParentFile().listFiles();
+        for (File file : siblings) {
+            assertTrue("Temporary file " + file + " was left behind.",
+                    !(file.getName().startsWith(base.getName()) && file.getName().endsWith(".tmp")));
+        }
+        lsmBTree.create(btreeFileId);
+    }
+
+    private LSMBTree createLSMBTree(IBufferCache diskBufferCache) throws Exception {
+        ITypeTraits[] typeTraits = SerdeUtils.serdesToTypeTraits(fieldSerdes, fieldSerdes.length);
+        IBinaryComparator[] cmps = SerdeUtils.serdesToComparators(fieldSerdes, 1);
+        return new LSMBTree(diskBufferCache, TestStorageManagerComponentHolder.getFileMapProvider(ctx), typeTraits,
+                new MultiComparator(cmps), BTreeLeafFrameType.REGULAR_NSM, MEM_PAGE_BUDGET, MERGE_THRESHOLD);
+    }
+
+    private void checkScan(ITreeIndexAccessor accessor) throws Exception {
+        ITreeIndexCursor cursor = new LSMBTreeRangeSearchCursor();
+        accessor.search(cursor, new RangePredicate(true, null, null, true, true, null, null));
+        int expected = 0;
+        try {
+            while (cursor.hasNext()) {
+                cursor.next();
+                ITupleReference t = cursor.getTuple();
+                assertEquals(expected, IntegerSerializerDeserializer.getInt(t.getFieldData(0), t.getFieldStart(0)));
+                assertEquals(-expected, IntegerSerializerDeserializer.getInt(t.getFieldData(1), t.getFieldStart(1)));
+                expected++;
+            }
+        } finally {
+            cursor.close();
+        }
+        assertEquals(NUM_KEYS, expected);
+    }
+
+    /**
+     * Fails the pins of new pages on merge threads once a merge has allocated
+     * NEW_PAGES_BEFORE_FAILURE pages.
+     */
+    private static class MergeFailingBufferCache implements IBufferCache {
+        private final IBufferCache bufferCache;
+        private final ThreadLocal<Integer> newPages = new ThreadLocal<Integer>();
+        private final AtomicInteger failures = new AtomicInteger();
+        private volatile boolean failMerges = true;
+
+        public MergeFailingBufferCache(IBufferCache bufferCache) {
+            this.bufferCache = bufferCache;
+        }
+
+        @Override
+        public ICachedPage pin(long dpid, boolean newPage) throws HyracksDataException {
+            if (newPage && failMerges && Thread.currentThread().getName().startsWith("LSMBTree merge")) {
+                Integer n = newPages.get();
+                n = n == null ? 1 : n + 1;
+                if (n > NEW_PAGES_BEFORE_FAILURE) {
+                    newPages.set(0);
+                    failures.incrementAndGet();
+                    throw new HyracksDataException("Injected failure of a merge.");
+                }
+                newPages.set(n);
+            }
+            return bufferCache.pin(dpid, newPage);
+        }
+
+        @Override
+        public void createFile(FileReference fileRef) throws HyracksDataException {
+            bufferCache.createFile(fileRef);
+        }
+
+        @Override
+        public void openFile(int fileId) throws HyracksDataException {
+            bufferCache.openFile(fileId);
+        }
+
+        @Override
+        public void closeFile(int fileId) throws HyracksDataException {
+            bufferCache.closeFile(fileId);
+        }
+
+        @Override
+        public void deleteFile(int fileId, boolean flushDirtyPages) throws HyracksDataException {
+            bufferCache.deleteFile(fileId, flushDirtyPages);
+        }
+
+        @Override
+        public ICachedPage tryPin(long dpid) throws HyracksDataException {
+            return bufferCache.tryPin(dpid);
+        }
+
+        @Override
+        public int prefetch(long startDpid, int numPages) throws HyracksDataException {
+            return bufferCache.prefetch(startDpid, numPages);
+        }
+
+        @Override
+        public void unpin(ICachedPage page) throws HyracksDataException {
+            bufferCache.unpin(page);
+        }
+
+        @Override
+        public void flushDirtyPage(ICachedPage page) throws HyracksDataException {
+            bufferCache.flushDirtyPage(page);
+        }
+
+        @Override
+        public void force(int fileId, boolean metadata) throws HyracksDataException {
+            bufferCache.force(fileId, metadata);
+        }
+
+        @Override
+        public int getPageSize() {
+            return bufferCache.getPageSize();
+        }
+
+        @Override
+        public int getNumPages() {
+            return bufferCache.getNumPages();
+        }
+
+        @Override
+        public BufferCacheStatistics getStatistics() {
+            return bufferCache.getStatistics();
+        }
+
+        @Override
+        public void close() {
+            bufferCache.close();
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.uci.ics.hyracks.storage.am.btree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.uci.ics.hyracks.api.comm.IFrameWriter;
+import edu.uci.ics.hyracks.api.dataflow.IOperatorNodePushable;
+import edu.uci.ics.hyracks.api.dataflow.OperatorDescriptorId;
+import edu.uci.ics.hyracks.api.dataflow.value.IBinaryComparatorFactory;
+import edu.uci.ics.hyracks.api.dataflow.value.IRecordDescriptorProvider;
+import edu.uci.ics.hyracks.api.dataflow.value.ISerializerDeserializer;
+import edu.uci.ics.hyracks.api.dataflow.value.ITypeTraits;
+import edu.uci.ics.hyracks.api.dataflow.value.RecordDescriptor;
+import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
+import edu.uci.ics.hyracks.api.io.FileReference;
+import edu.uci.ics.hyracks.api.job.JobSpecification;
+import edu.uci.ics.hyracks.data.std.accessors.PointableBinaryComparatorFactory;
+import edu.uci.ics.hyracks.data.std.primitive.IntegerPointable;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.ArrayTupleBuilder;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAccessor;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAppender;
+import edu.uci.ics.hyracks.dataflow.common.data.marshalling.IntegerSerializerDeserializer;
+import edu.uci.ics.hyracks.dataflow.common.util.SerdeUtils;
+import edu.uci.ics.hyracks.dataflow.std.file.ConstantFileSplitProvider;
+import edu.uci.ics.hyracks.dataflow.std.file.FileSplit;
+import edu.uci.ics.hyracks.dataflow.std.file.IFileSplitProvider;
+import edu.uci.ics.hyracks.storage.am.btree.dataflow.BTreeSearchOperatorDescriptor;
+import edu.uci.ics.hyracks.storage.am.btree.dataflow.BTreeUpdateSearchOperatorDescriptor;
+import edu.uci.ics.hyracks.storage.am.btree.dataflow.LSMBTreeDataflowHelperFactory;
+import edu.uci.ics.hyracks.storage.am.btree.frames.BTreeNSMInteriorFrameFactory;
+import edu.uci.ics.hyracks.storage.am.btree.frames.BTreeNSMLeafFrameFactory;
+import edu.uci.ics.hyracks.storage.am.btree.util.AbstractBTreeTest;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexFrameFactory;
+import edu.uci.ics.hyracks.storage.am.common.dataflow.IIndexDataflowHelperFactory;
+import edu.uci.ics.hyracks.storage.am.common.dataflow.TreeIndexInsertUpdateDeleteOperatorDescriptor;
+import edu.uci.ics.hyracks.storage.am.common.ophelpers.IndexOp;
+import edu.uci.ics.hyracks.storage.am.common.tuples.TypeAwareTupleWriterFactory;
+import edu.uci.ics.hyracks.storage.common.IStorageManagerInterface;
+import edu.uci.ics.hyracks.test.support.TestIndexRegistryProvider;
+import edu.uci.ics.hyracks.test.support.TestStorageManagerComponentHolder;
+import edu.uci.ics.hyracks.test.support.TestStorageManagerInterface;
+
+/**
+ * Inserts into an LSMBTree with the insert operator and searches it with the
+ * search operator of a second job. The index is closed when the insert job is
+ * done, so the search finds the tuples in the flushed disk components.
+ */
+@SuppressWarnings("rawtypes")
+public class LSMBTreeOperatorTest extends AbstractBTreeTest {
+    private static final int PAGE_SIZE = 1024;
+    private static final int NUM_PAGES = 256;
+    private static final int MAX_OPEN_FILES = 100;
+    private static final int HYRACKS_FRAME_SIZE = 4096;
+    private static final int MEM_PAGE_BUDGET = 16;
+    private static final int MERGE_THRESHOLD = 3;
+    private static final int NUM_TUPLES = 2000;
+
+    private final ISerializerDeserializer[] fieldSerdes = { IntegerSerializerDeserializer.INSTANCE,
+            IntegerSerializerDeserializer.INSTANCE };
+    private final RecordDescriptor recDesc = new RecordDescriptor(fieldSerdes);
+    private final ITypeTraits[] typeTraits = SerdeUtils.serdesToTypeTraits(fieldSerdes, fieldSerdes.length);
+    private final IBinaryComparatorFactory[] comparatorFactories = { PointableBinaryComparatorFactory
+            .of(IntegerPointable.FACTORY) };
+    private final IStorageManagerInterface storageManager = new TestStorageManagerInterface();
+    private final TestIndexRegistryProvider indexRegistryProvider = new TestIndexRegistryProvider();
+    private final IIndexDataflowHelperFactory dataflowHelperFactory = new LSMBTreeDataflowHelperFactory(
+            MEM_PAGE_BUDGET, MERGE_THRESHOLD);
+
+    @Override
+    public int getPageSize() {
+        return PAGE_SIZE;
+    }
+
+    @Override
+    public int getNumPages() {
+        return NUM_PAGES;
+    }
+
+    @Override
+    public int getMaxOpenFiles() {
+        return MAX_OPEN_FILES;
+    }
+
+    @Override
+    public int getHyracksFrameSize() {
+        return HYRACKS_FRAME_SIZE;
+    }
+
+    @Test
+    public void insertAndReopenTest() throws Exception {
+        JobSpecification spec = new JobSpecification();
+        TypeAwareTupleWriterFactory tupleWriterFactory = new TypeAwareTupleWriterFactory(typeTraits);
+        ITreeIndexFrameFactory interiorFrameFactory = new BTreeNSMInteriorFrameFactory(tupleWriterFactory);
+        ITreeIndexFrameFactory leafFrameFactory = new BTreeNSMLeafFrameFactory(tupleWriterFactory);
+        IFileSplitProvider fileSplitProvider = new ConstantFileSplitProvider(new FileSplit[] { new FileSplit("nc1",
+                new FileReference(new File(fileName))) });
+
+        TreeIndexInsertUpdateDeleteOperatorDescriptor insertOp = new TreeIndexInsertUpdateDeleteOperatorDescriptor(
+                spec, recDesc, storageManager, indexRegistryProvider, fileSplitProvider, interiorFrameFactory,
+                leafFrameFactory, typeTraits, comparatorFactories, new int[] { 0, 1 }, IndexOp.INSERT,
+                dataflowHelperFactory);
+        List<ByteBuffer> frames = new ArrayList<ByteBuffer>();
+        ArrayTupleBuilder tb = new ArrayTupleBuilder(2);
+        FrameTupleAppender appender = new FrameTupleAppender(HYRACKS_FRAME_SIZE);
+        ByteBuffer frame = ctx.allocateFrame();
+        appender.reset(frame, true);
+        for (int i = 0; i < NUM_TUPLES; i++) {
+            tb.reset();
+            // the keys are inserted out of order
+            tb.addField(IntegerSerializerDeserializer.INSTANCE, (i * 7) % NUM_TUPLES);
+            tb.addField(IntegerSerializerDeserializer.INSTANCE, i);
+            if (!appender.append(tb.getFieldEndOffsets(), tb.getByteArray(), 0, tb.getSize())) {
+                frames.add(frame);
+                frame = ctx.allocateFrame();
+                appender.reset(frame, true);
+                appender.append(tb.getFieldEndOffsets(), tb.getByteArray(), 0, tb.getSize());
+            }
+        }
+        frames.add(frame);
+        runOperator(insertOp.createPushRuntime(ctx, recDescProvider(), 0, 1), frames);
+        assertEquals(0, TestStorageManagerComponentHolder.getIndexRegistry(ctx).size());
+
+        BTreeSearchOperatorDescriptor searchOp = new BTreeSearchOperatorDescriptor(spec, recDesc, storageManager,
+                indexRegistryProvider, fileSplitProvider, interiorFrameFactory, leafFrameFactory, typeTraits,
+                comparatorFactories, true, null, null, true, true, dataflowHelperFactory);
+        // one input tuple scans the whole index
+        ByteBuffer searchFrame = ctx.allocateFrame();
+        appender.reset(searchFrame, true);
+        tb.reset();
+        tb.addField(IntegerSerializerDeserializer.INSTANCE, 0);
+        tb.addField(IntegerSerializerDeserializer.INSTANCE, 0);
+        appender.append(tb.getFieldEndOffsets(), tb.getByteArray(), 0, tb.getSize());
+        List<ByteBuffer> results = runOperator(searchOp.createPushRuntime(ctx, recDescProvider(), 0, 1),
+                Collections.singletonList(searchFrame));
+        assertEquals(0, TestStorageManagerComponentHolder.getIndexRegistry(ctx).size());
+
+        FrameTupleAccessor fta = new FrameTupleAccessor(HYRACKS_FRAME_SIZE, recDesc);
+        int nextKey = 0;
+        for (ByteBuffer result : results) {
+            fta.reset(result);
+            for (int i = 0; i < fta.getTupleCount(); i++) {
+                int fieldsStart = fta.getTupleStartOffset(i) + fta.getFieldSlotsLength();
+                int key = IntegerSerializerDeserializer.getInt(result.array(),
+                        fieldsStart + fta.getFieldStartOffset(i, 0));
+                assertEquals(nextKey, key);
+                nextKey++;
+            }
+        }
+        assertEquals(NUM_TUPLES, nextKey);
+        File[] componentFiles = new File(fileName).getParentFile().listFiles();
+        boolean foundComponent = false;
+        for (File file : componentFiles) {
+            if (file.getName().startsWith(new File(fileName).getName() + "_")) {
+                foundComponent = true;
+                file.deleteOnExit();
+            }
+        }
+        assertTrue("The memory component was not flushed.", foundComponent);
+    }
+
+    @Test
+    public void updateSearchRejectedTest() throws Exception {
+        JobSpecification spec = new JobSpecification();
+        TypeAwareTupleWriterFactory tupleWriterFactory = new TypeAwareTupleWriterFactory(typeTraits);
+        try {
+            new BTreeUpdateSearchOperatorDescriptor(spec, recDesc, storageManager, indexRegistryProvider,
+                    new ConstantFileSplitProvider(new FileSplit[] { new FileSplit("nc1", new FileReference(new File(
+                            fileName))) }), new BTreeNSMInteriorFrameFactory(tupleWriterFactory),
+                    new BTreeNSMLeafFrameFactory(tupleWriterFactory), typeTraits, comparatorFactories, true, null,
+                    null, true, true, dataflowHelperFactory, null);
+            fail("An update search on an LSM BTree was accepted.");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private IRecordDescriptorProvider recDescProvider() {
+        return new IRecordDescriptorProvider() {
+            @Override
+            public RecordDescriptor getOutputRecordDescriptor(OperatorDescriptorId opId, int outputIndex) {
+                return recDesc;
+            }
+
+            @Override
+            public RecordDescriptor getInputRecordDescriptor(OperatorDescriptorId opId, int inputIndex) {
+                return recDesc;
+            }
+        };
+    }
+
+    private List<ByteBuffer> runOperator(IOperatorNodePushable op, List<ByteBuffer> input)
+            throws HyracksDataException {
+        final List<ByteBuffer> output = new ArrayList<ByteBuffer>();
+        op.setOutputFrameWriter(0, new IFrameWriter() {
+            @Override
+            public void open() throws HyracksDataException {
+            }
+
+            @Override
+            public void nextFrame(ByteBuffer buffer) throws HyracksDataException {
+                ByteBuffer copy = ByteBuffer.allocate(buffer.capacity());
+                copy.put(buffer.array(), 0, buffer.capacity());
+                output.add(copy);
+            }
+
+            @Override
+            public void fail() throws HyracksDataException {
+            }
+
+            @Override
+            public void close() throws HyracksDataException {
+            }
+        }, recDesc);
+        IFrameWriter writer = op.getInputFrameWriter(0);
+        writer.open();
+        for (ByteBuffer frame : input) {
+            writer.nextFrame(frame);
+        }
+        writer.close();
+        return output;
+    }
+}
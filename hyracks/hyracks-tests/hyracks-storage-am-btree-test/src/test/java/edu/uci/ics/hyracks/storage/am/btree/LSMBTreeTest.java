@@ -0,0 +1,214 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.am.btree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.logging.Level;
+
+import org.junit.Test;
+
+import edu.uci.ics.hyracks.api.dataflow.value.IBinaryComparator;
+import edu.uci.ics.hyracks.api.dataflow.value.ISerializerDeserializer;
+import edu.uci.ics.hyracks.api.dataflow.value.ITypeTraits;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.ArrayTupleBuilder;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.ArrayTupleReference;
+import edu.uci.ics.hyracks.dataflow.common.data.accessors.ITupleReference;
+import edu.uci.ics.hyracks.dataflow.common.data.marshalling.IntegerSerializerDeserializer;
+import edu.uci.ics.hyracks.dataflow.common.util.SerdeUtils;
+import edu.uci.ics.hyracks.dataflow.common.util.TupleUtils;
+import edu.uci.ics.hyracks.storage.am.btree.exceptions.BTreeDuplicateKeyException;
+import edu.uci.ics.hyracks.storage.am.btree.exceptions.BTreeNonExistentKeyException;
+import edu.uci.ics.hyracks.storage.am.btree.frames.BTreeLeafFrameType;
+import edu.uci.ics.hyracks.storage.am.btree.impls.LSMBTree;
+import edu.uci.ics.hyracks.storage.am.btree.impls.LSMBTreeRangeSearchCursor;
+import edu.uci.ics.hyracks.storage.am.btree.impls.RangePredicate;
+import edu.uci.ics.hyracks.storage.am.btree.util.AbstractBTreeTest;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexAccessor;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexCursor;
+import edu.uci.ics.hyracks.storage.am.common.ophelpers.MultiComparator;
+import edu.uci.ics.hyracks.test.support.TestStorageManagerComponentHolder;
+
+/**
+ * Runs random inserts, updates and deletes against an LSMBTree with a small
+ * memory component, so that they are spread over many flushed and merged
+ * components, and checks searches against a map. The index is reopened at the
+ * end to check that it finds its components again.
+ */
+@SuppressWarnings("rawtypes")
+public class LSMBTreeTest extends AbstractBTreeTest {
+    private static final int PAGE_SIZE = 1024;
+    private static final int NUM_PAGES = 256;
+    private static final int MAX_OPEN_FILES = 100;
+    private static final int MEM_PAGE_BUDGET = 16;
+    private static final int MERGE_THRESHOLD = 3;
+    private static final int NUM_KEYS = 5000;
+    private static final int NUM_OPS = 40000;
+    private static final int CHECK_INTERVAL = 5000;
+
+    private final ISerializerDeserializer[] fieldSerdes = { IntegerSerializerDeserializer.INSTANCE,
+            IntegerSerializerDeserializer.INSTANCE };
+
+    @Override
+    public int getPageSize() {
+        return PAGE_SIZE;
+    }
+
+    @Override
+    public int getNumPages() {
+        return NUM_PAGES;
+    }
+
+    @Override
+    public int getMaxOpenFiles() {
+        return MAX_OPEN_FILES;
+    }
+
+    @Test
+    public void regularNSM() throws Exception {
+        runTest(BTreeLeafFrameType.REGULAR_NSM);
+    }
+
+    @Test
+    public void fieldPrefixNSM() throws Exception {
+        runTest(BTreeLeafFrameType.FIELD_PREFIX_COMPRESSED_NSM);
+    }
+
+    private void runTest(BTreeLeafFrameType leafType) throws Exception {
+        LSMBTree lsmBTree = createLSMBTree(leafType);
+        lsmBTree.create(btreeFileId);
+        lsmBTree.open(btreeFileId);
+        ITreeIndexAccessor accessor = lsmBTree.createAccessor();
+
+        TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+        ArrayTupleBuilder tb = new ArrayTupleBuilder(2);
+        ArrayTupleReference tuple = new ArrayTupleReference();
+        ArrayTupleBuilder kb = new ArrayTupleBuilder(1);
+        ArrayTupleReference key = new ArrayTupleReference();
+        int maxDiskComponents = 0;
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < NUM_OPS; i++) {
+            int k = rnd.nextInt(NUM_KEYS);
+            int v = rnd.nextInt();
+            boolean exists = expected.containsKey(k);
+            int op = rnd.nextInt(10);
+            try {
+                if (op < 6) {
+                    TupleUtils.createIntegerTuple(tb, tuple, k, v);
+                    accessor.insert(tuple);
+                    assertFalse("Inserted duplicate key " + k + ".", exists);
+                    expected.put(k, v);
+                } else if (op < 8) {
+                    TupleUtils.createIntegerTuple(tb, tuple, k, v);
+                    accessor.update(tuple);
+                    assertTrue("Updated nonexistent key " + k + ".", exists);
+                    expected.put(k, v);
+                } else {
+                    // deletes only give the key
+                    TupleUtils.createIntegerTuple(kb, key, k);
+                    accessor.delete(key);
+                    assertTrue("Deleted nonexistent key " + k + ".", exists);
+                    expected.remove(k);
+                }
+            } catch (BTreeDuplicateKeyException e) {
+                assertTrue("Could not insert key " + k + ".", exists);
+            } catch (BTreeNonExistentKeyException e) {
+                assertFalse("Could not modify key " + k + ".", exists);
+            }
+            maxDiskComponents = Math.max(maxDiskComponents, lsmBTree.getNumDiskComponents());
+            if ((i + 1) % CHECK_INTERVAL == 0) {
+                checkSearches(accessor, expected);
+            }
+        }
+        long time = System.currentTimeMillis() - start;
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info(leafType + ": " + NUM_OPS + " operations in " + time + "ms, "
+                    + lsmBTree.getNumDiskComponents() + " disk components, at most " + maxDiskComponents);
+        }
+        assertTrue("The memory component was never flushed.", maxDiskComponents > 0);
+        lsmBTree.close();
+
+        // the flushed components have all the writes
+        lsmBTree = createLSMBTree(leafType);
+        lsmBTree.open(btreeFileId);
+        checkSearches(lsmBTree.createAccessor(), expected);
+        lsmBTree.close();
+        lsmBTree.create(btreeFileId);
+    }
+
+    private LSMBTree createLSMBTree(BTreeLeafFrameType leafType) throws Exception {
+        ITypeTraits[] typeTraits = SerdeUtils.serdesToTypeTraits(fieldSerdes, fieldSerdes.length);
+        IBinaryComparator[] cmps = SerdeUtils.serdesToComparators(fieldSerdes, 1);
+        return new LSMBTree(bufferCache, TestStorageManagerComponentHolder.getFileMapProvider(ctx), typeTraits,
+                new MultiComparator(cmps), leafType, MEM_PAGE_BUDGET, MERGE_THRESHOLD);
+    }
+
+    private void checkSearches(ITreeIndexAccessor accessor, TreeMap<Integer, Integer> expected) throws Exception {
+        checkRangeSearch(accessor, expected, null, null, true);
+        checkRangeSearch(accessor, expected, null, null, false);
+        for (int i = 0; i < 20; i++) {
+            int low = rnd.nextInt(NUM_KEYS);
+            int high = low + rnd.nextInt(NUM_KEYS / 10);
+            checkRangeSearch(accessor, expected, low, high, rnd.nextBoolean());
+        }
+    }
+
+    private void checkRangeSearch(ITreeIndexAccessor accessor, TreeMap<Integer, Integer> expected, Integer low,
+            Integer high, boolean forward) throws Exception {
+        ArrayTupleReference lowKey = null;
+        ArrayTupleReference highKey = null;
+        if (low != null) {
+            lowKey = new ArrayTupleReference();
+            TupleUtils.createIntegerTuple(new ArrayTupleBuilder(1), lowKey, low);
+            highKey = new ArrayTupleReference();
+            TupleUtils.createIntegerTuple(new ArrayTupleBuilder(1), highKey, high);
+        }
+        NavigableMap<Integer, Integer> range = low != null ? expected.subMap(low, true, high, true) : expected;
+        if (!forward) {
+            range = range.descendingMap();
+        }
+        ITreeIndexCursor cursor = new LSMBTreeRangeSearchCursor();
+        accessor.search(cursor, new RangePredicate(forward, lowKey, highKey, true, true, null, null));
+        Iterator<Map.Entry<Integer, Integer>> expectedIter = range.entrySet().iterator();
+        try {
+            while (cursor.hasNext()) {
+                cursor.next();
+                ITupleReference t = cursor.getTuple();
+                assertEquals(2, t.getFieldCount());
+                int k = IntegerSerializerDeserializer.getInt(t.getFieldData(0), t.getFieldStart(0));
+                int v = IntegerSerializerDeserializer.getInt(t.getFieldData(1), t.getFieldStart(1));
+                if (!expectedIter.hasNext()) {
+                    fail("Range search returned more answers than expected, got key " + k + ".");
+                }
+                Map.Entry<Integer, Integer> e = expectedIter.next();
+                assertEquals("Range search returned unexpected key.", e.getKey().intValue(), k);
+                assertEquals("Range search returned unexpected value of key " + k + ".", e.getValue().intValue(), v);
+            }
+        } finally {
+            cursor.close();
+        }
+        if (expectedIter.hasNext()) {
+            fail("Range search returned fewer answers than expected.");
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.am.btree;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import edu.uci.ics.hyracks.api.dataflow.value.ISerializerDeserializer;
+import edu.uci.ics.hyracks.dataflow.common.data.accessors.ITupleReference;
+import edu.uci.ics.hyracks.dataflow.common.data.marshalling.UTF8StringSerializerDeserializer;
+import edu.uci.ics.hyracks.dataflow.common.util.TupleUtils;
+import edu.uci.ics.hyracks.storage.am.btree.frames.BTreeLeafFrameType;
+import edu.uci.ics.hyracks.storage.am.btree.util.AbstractBTreeTest;
+import edu.uci.ics.hyracks.storage.am.btree.util.BTreeTestContext;
+import edu.uci.ics.hyracks.storage.am.btree.util.BTreeTestUtils;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexTupleReference;
+import edu.uci.ics.hyracks.storage.common.buffercache.ICachedPage;
+import edu.uci.ics.hyracks.storage.common.file.BufferedFileHandle;
+
+/**
+ * Tests that separator keys in interior nodes are truncated to the key fields
+ * that tell two leaves apart, and that searches through truncated separators
+ * still find all tuples.
+ */
+@SuppressWarnings("rawtypes")
+public class SeparatorTruncationTest extends AbstractBTreeTest {
+    private static final int numTuplesToInsert = 10000;
+
+    private final ISerializerDeserializer[] fieldSerdes = { UTF8StringSerializerDeserializer.INSTANCE,
+            UTF8StringSerializerDeserializer.INSTANCE };
+
+    @Test
+    public void insertTest() throws Exception {
+        runTest(BTreeLeafFrameType.REGULAR_NSM, false);
+        runTest(BTreeLeafFrameType.FIELD_PREFIX_COMPRESSED_NSM, false);
+    }
+
+    @Test
+    public void bulkLoadTest() throws Exception {
+        runTest(BTreeLeafFrameType.REGULAR_NSM, true);
+        runTest(BTreeLeafFrameType.FIELD_PREFIX_COMPRESSED_NSM, true);
+    }
+
+    private void runTest(BTreeLeafFrameType leafType, boolean bulkLoad) throws Exception {
+        BTreeTestContext testCtx = BTreeTestUtils.createBTreeTestContext(bufferCache, btreeFileId, fieldSerdes, 2,
+                leafType);
+        if (bulkLoad) {
+            BTreeTestUtils.bulkLoadStringTuples(testCtx, numTuplesToInsert, rnd);
+        } else {
+            BTreeTestUtils.insertStringTuples(testCtx, numTuplesToInsert, rnd);
+        }
+
+        // The random first key fields are almost always distinct, so the root
+        // separators should mostly consist of the first key field only.
+        ICachedPage rootNode = bufferCache.pin(
+                BufferedFileHandle.getDiskPageId(btreeFileId, testCtx.btree.getRootPageId()), false);
+        rootNode.acquireReadLatch();
+        int truncatedSeparators = 0;
+        try {
+            testCtx.interiorFrame.setMultiComparator(testCtx.btree.getMultiComparator());
+            testCtx.interiorFrame.setPage(rootNode);
+            assertTrue(testCtx.interiorFrame.isInterior());
+            ITreeIndexTupleReference frameTuple = testCtx.interiorFrame.createTupleReference();
+            for (int i = 0; i < testCtx.interiorFrame.getTupleCount(); i++) {
+                frameTuple.resetByTupleIndex(testCtx.interiorFrame, i);
+                if (frameTuple.getFieldCount() < testCtx.getKeyFieldCount()) {
+                    truncatedSeparators++;
+                }
+            }
+        } finally {
+            rootNode.releaseReadLatch();
+            bufferCache.unpin(rootNode);
+        }
+        assertTrue(truncatedSeparators > 0);
+
+        BTreeTestUtils.checkPointSearches(testCtx);
+        BTreeTestUtils.checkOrderedScan(testCtx);
+        ITupleReference lowKey = TupleUtils.createTuple(fieldSerdes, "cbf", "ddd");
+        ITupleReference highKey = TupleUtils.createTuple(fieldSerdes, "cc7", "eee");
+        BTreeTestUtils.checkRangeSearch(testCtx, lowKey, highKey, true, true);
+        ITupleReference prefixLowKey = TupleUtils.createTuple(fieldSerdes, "cbf");
+        ITupleReference prefixHighKey = TupleUtils.createTuple(fieldSerdes, "cc7");
+        BTreeTestUtils.checkRangeSearch(testCtx, prefixLowKey, prefixHighKey, true, true);
+        testCtx.btree.close();
+    }
+}
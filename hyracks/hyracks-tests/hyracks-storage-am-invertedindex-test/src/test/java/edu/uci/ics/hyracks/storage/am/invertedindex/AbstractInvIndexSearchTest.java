@@ -54,6 +54,8 @@ import edu.uci.ics.hyracks.storage.am.common.freepage.LinkedListFreePageManager;
 import edu.uci.ics.hyracks.storage.am.common.ophelpers.MultiComparator;
 import edu.uci.ics.hyracks.storage.am.common.tuples.TypeAwareTupleWriterFactory;
 import edu.uci.ics.hyracks.storage.am.invertedindex.api.IInvertedIndexResultCursor;
+import edu.uci.ics.hyracks.storage.am.invertedindex.api.IInvertedListFormat;
+import edu.uci.ics.hyracks.storage.am.invertedindex.impls.FixedSizeElementInvertedListFormat;
 import edu.uci.ics.hyracks.storage.am.invertedindex.impls.InvertedIndex;
 import edu.uci.ics.hyracks.storage.am.invertedindex.impls.TOccurrenceSearcher;
 import edu.uci.ics.hyracks.storage.am.invertedindex.tokenizers.IBinaryTokenizer;
@@ -115,6 +117,7 @@ public abstract class AbstractInvIndexSearchTest extends AbstractInvIndexTest {
     protected IBinaryComparator[] invListBinCmps = new IBinaryComparator[invListKeys];
     protected MultiComparator invListCmp = new MultiComparator(invListBinCmps);
 
+    protected IInvertedListFormat invListFormat = new FixedSizeElementInvertedListFormat();
     protected InvertedIndex invIndex;
 
     protected Random rnd = new Random();
@@ -187,7 +190,8 @@ public abstract class AbstractInvIndexSearchTest extends AbstractInvIndexTest {
         invListTypeTraits[0] = IntegerPointable.TYPE_TRAITS;
         invListBinCmps[0] = PointableBinaryComparatorFactory.of(IntegerPointable.FACTORY).createBinaryComparator();
 
-        invIndex = new InvertedIndex(bufferCache, btree, invListTypeTraits, invListCmp);
+        invIndex = new InvertedIndex(bufferCache, btree, invListTypeTraits, invListCmp, invListFormat);
+        invIndex.create(invListsFileId);
         invIndex.open(invListsFileId);
 
         rnd.setSeed(50);
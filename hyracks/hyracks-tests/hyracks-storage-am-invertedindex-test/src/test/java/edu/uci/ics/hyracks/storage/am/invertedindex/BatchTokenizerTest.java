@@ -0,0 +1,289 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.am.invertedindex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.uci.ics.hyracks.api.comm.IFrameWriter;
+import edu.uci.ics.hyracks.api.context.IHyracksTaskContext;
+import edu.uci.ics.hyracks.api.dataflow.value.ISerializerDeserializer;
+import edu.uci.ics.hyracks.api.dataflow.value.RecordDescriptor;
+import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.ArrayTupleBuilder;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAccessor;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAppender;
+import edu.uci.ics.hyracks.dataflow.common.data.marshalling.IntegerSerializerDeserializer;
+import edu.uci.ics.hyracks.dataflow.common.data.marshalling.UTF8StringSerializerDeserializer;
+import edu.uci.ics.hyracks.storage.am.invertedindex.dataflow.BinaryTokenizerOperatorNodePushable;
+import edu.uci.ics.hyracks.storage.am.invertedindex.tokenizers.AbstractUTF8StringBinaryTokenizer;
+import edu.uci.ics.hyracks.storage.am.invertedindex.tokenizers.DelimitedUTF8StringBinaryTokenizer;
+import edu.uci.ics.hyracks.storage.am.invertedindex.tokenizers.HashedUTF8NGramTokenFactory;
+import edu.uci.ics.hyracks.storage.am.invertedindex.tokenizers.HashedUTF8WordTokenFactory;
+import edu.uci.ics.hyracks.storage.am.invertedindex.tokenizers.IBinaryTokenizer;
+import edu.uci.ics.hyracks.storage.am.invertedindex.tokenizers.IToken;
+import edu.uci.ics.hyracks.storage.am.invertedindex.tokenizers.NGramUTF8StringBinaryTokenizer;
+import edu.uci.ics.hyracks.storage.am.invertedindex.tokenizers.UTF8NGramTokenFactory;
+import edu.uci.ics.hyracks.storage.am.invertedindex.tokenizers.UTF8WordTokenFactory;
+import edu.uci.ics.hyracks.test.support.TestUtils;
+
+/**
+ * Checks that batch tokenization serializes the same tokens as tokenizing one
+ * token at a time, for word and n-gram tokenizers with all token types, and
+ * compares the tokens per second of the tokenizer operator on both paths.
+ */
+public class BatchTokenizerTest {
+    private static final Logger LOGGER = Logger.getLogger(BatchTokenizerTest.class.getName());
+
+    private static final int FRAME_SIZE = 32768;
+    private static final int NUM_STRINGS = 100000;
+    private static final int NUM_RUNS = 3;
+    private static final byte TYPE_TAG = 13;
+
+    private static final String[] WORDS = { "Jürgen", "S.", "Generic's", "Car", "car", "CAR", "straße", "Ünïcödé",
+            "日本語", "a", "of", "the", "hyracks", "Databases", "data-parallel", "x", "ab", "abab", "ababab",
+            "2011", "..", "-" };
+
+    private final Random rnd = new Random(50);
+
+    @Test
+    public void sameTokensTest() throws Exception {
+        List<String> strings = createStrings(2000);
+        strings.add("");
+        strings.add("a");
+        strings.add("ab");
+        strings.add("abc");
+        strings.add(" ");
+        strings.add("aaaaaaa AAAA aaa");
+        for (boolean ignoreTokenCount : new boolean[] { true, false }) {
+            for (boolean typeTags : new boolean[] { false, true }) {
+                byte tag = typeTags ? TYPE_TAG : -1;
+                checkSameTokens(strings, new DelimitedUTF8StringBinaryTokenizer(ignoreTokenCount, typeTags,
+                        new UTF8WordTokenFactory(tag, tag)), typeTags);
+                checkSameTokens(strings, new DelimitedUTF8StringBinaryTokenizer(ignoreTokenCount, typeTags,
+                        new HashedUTF8WordTokenFactory(tag, tag)), typeTags);
+                for (boolean prePost : new boolean[] { false, true }) {
+                    for (int gramLength = 1; gramLength <= 4; gramLength++) {
+                        checkSameTokens(strings, new NGramUTF8StringBinaryTokenizer(gramLength, prePost,
+                                ignoreTokenCount, typeTags, new UTF8NGramTokenFactory(tag, tag)), typeTags);
+                        checkSameTokens(strings, new NGramUTF8StringBinaryTokenizer(gramLength, prePost,
+                                ignoreTokenCount, typeTags, new HashedUTF8NGramTokenFactory(tag, tag)), typeTags);
+                    }
+                }
+            }
+        }
+    }
+
+    private void checkSameTokens(List<String> strings, AbstractUTF8StringBinaryTokenizer tokenizer,
+            boolean typeTag) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutput dos = new DataOutputStream(baos);
+        for (String s : strings) {
+            baos.reset();
+            if (typeTag) {
+                dos.write(TYPE_TAG);
+            }
+            dos.writeUTF(s);
+            byte[] data = baos.toByteArray();
+
+            baos.reset();
+            List<Integer> expectedEndOffsets = new ArrayList<Integer>();
+            tokenizer.reset(data, 0, data.length);
+            while (tokenizer.hasNext()) {
+                tokenizer.next();
+                IToken token = tokenizer.getToken();
+                token.serializeToken(dos);
+                expectedEndOffsets.add(baos.size());
+            }
+            byte[] expected = baos.toByteArray();
+
+            int numTokens = tokenizer.tokenize(data, 0, data.length);
+            Assert.assertEquals(s, expectedEndOffsets.size(), numTokens);
+            int[] endOffsets = tokenizer.getTokenEndOffsets();
+            for (int i = 0; i < numTokens; i++) {
+                Assert.assertEquals(s, expectedEndOffsets.get(i).intValue(), endOffsets[i]);
+            }
+            Assert.assertArrayEquals(s, expected, Arrays.copyOf(tokenizer.getTokenBuffer(), expected.length));
+        }
+    }
+
+    @Test
+    public void tokenizerOperatorPerfTest() throws Exception {
+        IHyracksTaskContext ctx = TestUtils.create(FRAME_SIZE);
+        List<ByteBuffer> frames = createFrames(ctx, createStrings(NUM_STRINGS));
+        runOperator(ctx, frames, "word", new DelimitedUTF8StringBinaryTokenizer(true, false,
+                new UTF8WordTokenFactory()));
+        runOperator(ctx, frames, "hashed word", new DelimitedUTF8StringBinaryTokenizer(false, false,
+                new HashedUTF8WordTokenFactory()));
+        runOperator(ctx, frames, "3-gram", new NGramUTF8StringBinaryTokenizer(3, true, true, false,
+                new UTF8NGramTokenFactory()));
+        runOperator(ctx, frames, "hashed 3-gram", new NGramUTF8StringBinaryTokenizer(3, true, false, false,
+                new HashedUTF8NGramTokenFactory()));
+    }
+
+    private void runOperator(IHyracksTaskContext ctx, List<ByteBuffer> frames, String name,
+            final IBinaryTokenizer tokenizer) throws Exception {
+        // hides the batch interface to get the token at a time path
+        IBinaryTokenizer tokenAtATimeTokenizer = new IBinaryTokenizer() {
+            @Override
+            public IToken getToken() {
+                return tokenizer.getToken();
+            }
+
+            @Override
+            public boolean hasNext() {
+                return tokenizer.hasNext();
+            }
+
+            @Override
+            public void next() {
+                tokenizer.next();
+            }
+
+            @Override
+            public void reset(byte[] data, int start, int length) {
+                tokenizer.reset(data, start, length);
+            }
+        };
+        TupleCollector expected = tokenize(ctx, frames, tokenAtATimeTokenizer, true);
+        TupleCollector actual = tokenize(ctx, frames, tokenizer, true);
+        Assert.assertEquals(expected.tupleCount, actual.tupleCount);
+        Assert.assertArrayEquals(expected.tuples.toByteArray(), actual.tuples.toByteArray());
+
+        long tokenAtATimeTime = 0;
+        long batchTime = 0;
+        for (int r = 0; r < NUM_RUNS; r++) {
+            long start = System.currentTimeMillis();
+            tokenize(ctx, frames, tokenAtATimeTokenizer, false);
+            tokenAtATimeTime += System.currentTimeMillis() - start;
+            start = System.currentTimeMillis();
+            tokenize(ctx, frames, tokenizer, false);
+            batchTime += System.currentTimeMillis() - start;
+        }
+
+        if (LOGGER.isLoggable(Level.INFO)) {
+            long tokens = (long) expected.tupleCount * NUM_RUNS * 1000;
+            LOGGER.info(name + " tokenization of " + NUM_STRINGS + " strings: token at a time "
+                    + tokens / Math.max(1, tokenAtATimeTime) + " tokens/s, batch " + tokens / Math.max(1, batchTime)
+                    + " tokens/s");
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private TupleCollector tokenize(IHyracksTaskContext ctx, List<ByteBuffer> frames, IBinaryTokenizer tokenizer,
+            boolean keepTuples) throws HyracksDataException {
+        RecordDescriptor inputRecDesc = new RecordDescriptor(new ISerializerDeserializer[] {
+                UTF8StringSerializerDeserializer.INSTANCE, IntegerSerializerDeserializer.INSTANCE });
+        // the serializer of the token field is never used
+        RecordDescriptor outputRecDesc = new RecordDescriptor(new ISerializerDeserializer[] {
+                UTF8StringSerializerDeserializer.INSTANCE, IntegerSerializerDeserializer.INSTANCE });
+        BinaryTokenizerOperatorNodePushable op = new BinaryTokenizerOperatorNodePushable(ctx, inputRecDesc,
+                outputRecDesc, tokenizer, new int[] { 0 }, new int[] { 1 });
+        TupleCollector collector = new TupleCollector(outputRecDesc, keepTuples);
+        op.setOutputFrameWriter(0, collector, outputRecDesc);
+        op.open();
+        for (ByteBuffer frame : frames) {
+            op.nextFrame(frame);
+        }
+        op.close();
+        return collector;
+    }
+
+    private List<String> createStrings(int numStrings) {
+        List<String> strings = new ArrayList<String>();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < numStrings; i++) {
+            sb.setLength(0);
+            int numWords = rnd.nextInt(12);
+            for (int j = 0; j < numWords; j++) {
+                if (j > 0) {
+                    sb.append(rnd.nextInt(4) == 0 ? ", " : " ");
+                }
+                sb.append(WORDS[rnd.nextInt(WORDS.length)]);
+            }
+            strings.add(sb.toString());
+        }
+        return strings;
+    }
+
+    private List<ByteBuffer> createFrames(IHyracksTaskContext ctx, List<String> strings) throws HyracksDataException {
+        List<ByteBuffer> frames = new ArrayList<ByteBuffer>();
+        ArrayTupleBuilder tb = new ArrayTupleBuilder(2);
+        FrameTupleAppender appender = new FrameTupleAppender(FRAME_SIZE);
+        ByteBuffer frame = ctx.allocateFrame();
+        appender.reset(frame, true);
+        for (int i = 0; i < strings.size(); i++) {
+            tb.reset();
+            tb.addField(UTF8StringSerializerDeserializer.INSTANCE, strings.get(i));
+            tb.addField(IntegerSerializerDeserializer.INSTANCE, i);
+            if (!appender.append(tb.getFieldEndOffsets(), tb.getByteArray(), 0, tb.getSize())) {
+                frames.add(frame);
+                frame = ctx.allocateFrame();
+                appender.reset(frame, true);
+                Assert.assertTrue(appender.append(tb.getFieldEndOffsets(), tb.getByteArray(), 0, tb.getSize()));
+            }
+        }
+        frames.add(frame);
+        return frames;
+    }
+
+    private static class TupleCollector implements IFrameWriter {
+        private final FrameTupleAccessor fta;
+        private final boolean keepTuples;
+        private final ByteArrayOutputStream tuples = new ByteArrayOutputStream();
+        private int tupleCount = 0;
+
+        public TupleCollector(RecordDescriptor recDesc, boolean keepTuples) {
+            this.fta = new FrameTupleAccessor(FRAME_SIZE, recDesc);
+            this.keepTuples = keepTuples;
+        }
+
+        @Override
+        public void open() throws HyracksDataException {
+        }
+
+        @Override
+        public void nextFrame(ByteBuffer buffer) throws HyracksDataException {
+            fta.reset(buffer);
+            tupleCount += fta.getTupleCount();
+            if (keepTuples) {
+                for (int i = 0; i < fta.getTupleCount(); i++) {
+                    int start = fta.getTupleStartOffset(i);
+                    tuples.write(buffer.array(), start, fta.getTupleEndOffset(i) - start);
+                }
+            }
+        }
+
+        @Override
+        public void fail() throws HyracksDataException {
+        }
+
+        @Override
+        public void close() throws HyracksDataException {
+        }
+    }
+}
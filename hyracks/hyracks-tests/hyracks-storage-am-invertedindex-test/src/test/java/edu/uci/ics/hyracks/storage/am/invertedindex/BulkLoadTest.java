@@ -139,6 +139,7 @@ public class BulkLoadTest extends AbstractInvIndexTest {
         MultiComparator invListCmp = new MultiComparator(invListBinCmps);
 
         InvertedIndex invIndex = new InvertedIndex(bufferCache, btree, invListTypeTraits, invListCmp);
+        invIndex.create(invListsFileId);
         invIndex.open(invListsFileId);
 
         Random rnd = new Random();
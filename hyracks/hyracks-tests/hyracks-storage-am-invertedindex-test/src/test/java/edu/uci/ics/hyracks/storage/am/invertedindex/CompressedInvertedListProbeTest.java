@@ -0,0 +1,27 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.am.invertedindex;
+
+import edu.uci.ics.hyracks.storage.am.invertedindex.impls.CompressedInvertedListFormat;
+
+/**
+ * Runs the probes of InvertedListProbeTest against a compressed inverted list.
+ */
+public class CompressedInvertedListProbeTest extends InvertedListProbeTest {
+    public CompressedInvertedListProbeTest() {
+        invListFormat = new CompressedInvertedListFormat();
+    }
+}
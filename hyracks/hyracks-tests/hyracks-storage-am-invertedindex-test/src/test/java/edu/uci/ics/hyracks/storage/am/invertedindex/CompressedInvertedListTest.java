@@ -0,0 +1,187 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.am.invertedindex;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAccessor;
+import edu.uci.ics.hyracks.dataflow.common.data.accessors.FrameTupleReference;
+import edu.uci.ics.hyracks.dataflow.common.data.accessors.ITupleReference;
+import edu.uci.ics.hyracks.dataflow.common.data.marshalling.IntegerSerializerDeserializer;
+import edu.uci.ics.hyracks.dataflow.common.data.marshalling.UTF8StringSerializerDeserializer;
+import edu.uci.ics.hyracks.storage.am.btree.api.IBTreeLeafFrame;
+import edu.uci.ics.hyracks.storage.am.btree.impls.BTree;
+import edu.uci.ics.hyracks.storage.am.btree.impls.BTreeRangeSearchCursor;
+import edu.uci.ics.hyracks.storage.am.btree.impls.RangePredicate;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexAccessor;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexCursor;
+import edu.uci.ics.hyracks.storage.am.invertedindex.api.IInvertedListCursor;
+import edu.uci.ics.hyracks.storage.am.invertedindex.impls.CompressedInvertedListFormat;
+import edu.uci.ics.hyracks.storage.am.invertedindex.impls.FixedSizeTupleReference;
+import edu.uci.ics.hyracks.storage.am.invertedindex.impls.InvertedIndex;
+
+/**
+ * Bulk loads compressed inverted lists of different densities, some of them
+ * spanning several pages, and checks that the cursor scans, positions and
+ * looks up their elements. Logs the size of the lists next to the size they
+ * would have as fixed-size elements.
+ */
+public class CompressedInvertedListTest extends AbstractInvIndexSearchTest {
+
+    private final Map<String, int[]> lists = new TreeMap<String, int[]>();
+
+    public CompressedInvertedListTest() {
+        invListFormat = new CompressedInvertedListFormat();
+    }
+
+    @Test
+    public void compressedInvertedListTest() throws Exception {
+        // consecutive IDs with small gaps
+        int[] dense = new int[200000];
+        for (int i = 1; i < dense.length; i++) {
+            dense[i] = dense[i - 1] + 1 + rnd.nextInt(3);
+        }
+        lists.put("dense", dense);
+        // negative and positive IDs
+        int[] negative = new int[20000];
+        negative[0] = -1000000;
+        for (int i = 1; i < negative.length; i++) {
+            negative[i] = negative[i - 1] + 1 + rnd.nextInt(100);
+        }
+        lists.put("negative", negative);
+        lists.put("single", new int[] { 42 });
+        for (int i = 0; i < 50; i++) {
+            int[] small = new int[rnd.nextInt(300) + 1];
+            for (int j = 0; j < small.length; j++) {
+                small[j] = rnd.nextInt(1000000);
+            }
+            lists.put("small" + (100 + i), distinct(small));
+        }
+        // IDs from the whole range, with deltas up to five bytes long
+        int[] sparse = new int[5000];
+        for (int i = 0; i < sparse.length; i++) {
+            sparse[i] = rnd.nextInt();
+        }
+        sparse[0] = Integer.MIN_VALUE;
+        sparse[1] = Integer.MAX_VALUE;
+        lists.put("sparse", distinct(sparse));
+
+        long totalElements = 0;
+        InvertedIndex.BulkLoadContext ctx = invIndex.beginBulkLoad(invIndex.createInvertedListBuilder(),
+                HYRACKS_FRAME_SIZE, BTree.DEFAULT_FILL_FACTOR);
+        for (Map.Entry<String, int[]> list : lists.entrySet()) {
+            for (int id : list.getValue()) {
+                tb.reset();
+                UTF8StringSerializerDeserializer.INSTANCE.serialize(list.getKey(), dos);
+                tb.addFieldEndOffset();
+                IntegerSerializerDeserializer.INSTANCE.serialize(id, dos);
+                tb.addFieldEndOffset();
+                appender.reset(frame, true);
+                appender.append(tb.getFieldEndOffsets(), tb.getByteArray(), 0, tb.getSize());
+                tuple.reset(accessor, 0);
+                invIndex.bulkLoadAddTuple(ctx, tuple);
+                totalElements++;
+            }
+        }
+        invIndex.endBulkLoad(ctx);
+
+        ITreeIndexCursor btreeCursor = new BTreeRangeSearchCursor((IBTreeLeafFrame) leafFrame, false);
+        FrameTupleReference searchKey = new FrameTupleReference();
+        RangePredicate btreePred = new RangePredicate(true, searchKey, searchKey, true, true, btreeCmp, btreeCmp);
+        ITreeIndexAccessor btreeAccessor = invIndex.getBTree().createAccessor();
+        FrameTupleAccessor tokenAccessor = new FrameTupleAccessor(taskCtx.getFrameSize(), queryRecDesc);
+        tokenAccessor.reset(frame);
+        IInvertedListCursor invListCursor = invIndex.createInvertedListCursor();
+        byte[] keyBytes = new byte[4];
+        FixedSizeTupleReference key = new FixedSizeTupleReference(invListTypeTraits);
+        key.reset(keyBytes, 0);
+
+        int endPageId = 0;
+        for (Map.Entry<String, int[]> list : lists.entrySet()) {
+            int[] ids = list.getValue();
+            queryTb.reset();
+            UTF8StringSerializerDeserializer.INSTANCE.serialize(list.getKey(), queryDos);
+            queryTb.addFieldEndOffset();
+            queryAppender.reset(frame, true);
+            queryAppender.append(queryTb.getFieldEndOffsets(), queryTb.getByteArray(), 0, queryTb.getSize());
+            searchKey.reset(tokenAccessor, 0);
+            Assert.assertTrue(invIndex.openCursor(btreeCursor, btreePred, btreeAccessor, invListCursor));
+            Assert.assertEquals(ids.length, invListCursor.getNumElements());
+            endPageId = invListCursor.getEndPageId();
+
+            invListCursor.pinPagesSync();
+            try {
+                int count = 0;
+                while (invListCursor.hasNext()) {
+                    invListCursor.next();
+                    Assert.assertEquals(ids[count++], getId(invListCursor.getTuple()));
+                }
+                Assert.assertEquals(ids.length, count);
+
+                for (int i = 0; i < 100; i++) {
+                    int elementIx = rnd.nextInt(ids.length);
+                    invListCursor.positionCursor(elementIx);
+                    Assert.assertEquals(ids[elementIx], getId(invListCursor.getTuple()));
+                    if (elementIx + 1 < ids.length) {
+                        Assert.assertTrue(invListCursor.hasNext());
+                        invListCursor.next();
+                        Assert.assertEquals(ids[elementIx + 1], getId(invListCursor.getTuple()));
+                    } else {
+                        Assert.assertFalse(invListCursor.hasNext());
+                    }
+
+                    int id = ids[rnd.nextInt(ids.length)];
+                    IntegerSerializerDeserializer.putInt(id, keyBytes, 0);
+                    Assert.assertTrue(invListCursor.containsKey(key, invListCmp));
+                    id = rnd.nextInt();
+                    IntegerSerializerDeserializer.putInt(id, keyBytes, 0);
+                    Assert.assertEquals(Arrays.binarySearch(ids, id) >= 0, invListCursor.containsKey(key, invListCmp));
+                }
+            } finally {
+                invListCursor.unpinPages();
+            }
+        }
+
+        long compressedSize = (long) (endPageId + 1) * PAGE_SIZE;
+        long fixedSize = totalElements * 4;
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info(totalElements + " inverted list elements: " + compressedSize
+                    + " bytes compressed, " + fixedSize + " bytes as fixed-size elements");
+        }
+        Assert.assertTrue(compressedSize * 2 < fixedSize);
+    }
+
+    private static int getId(ITupleReference tuple) {
+        return IntegerSerializerDeserializer.getInt(tuple.getFieldData(0), tuple.getFieldStart(0));
+    }
+
+    private static int[] distinct(int[] ids) {
+        Arrays.sort(ids);
+        int n = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (n == 0 || ids[n - 1] != ids[i]) {
+                ids[n++] = ids[i];
+            }
+        }
+        return Arrays.copyOf(ids, n);
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.am.invertedindex;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAccessor;
+import edu.uci.ics.hyracks.dataflow.common.data.accessors.FrameTupleReference;
+import edu.uci.ics.hyracks.dataflow.common.data.marshalling.IntegerSerializerDeserializer;
+import edu.uci.ics.hyracks.dataflow.common.data.marshalling.UTF8StringSerializerDeserializer;
+import edu.uci.ics.hyracks.storage.am.btree.api.IBTreeLeafFrame;
+import edu.uci.ics.hyracks.storage.am.btree.impls.BTree;
+import edu.uci.ics.hyracks.storage.am.btree.impls.BTreeRangeSearchCursor;
+import edu.uci.ics.hyracks.storage.am.btree.impls.RangePredicate;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexAccessor;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexCursor;
+import edu.uci.ics.hyracks.storage.am.invertedindex.api.IInvertedListCursor;
+import edu.uci.ics.hyracks.storage.am.invertedindex.impls.FixedSizeTupleReference;
+import edu.uci.ics.hyracks.storage.am.invertedindex.impls.InvertedIndex;
+
+/**
+ * Probes a long inverted list with increasing keys after pinPagesOnDemand(),
+ * checks the answers against the list, and checks that probes confined to the
+ * start of the list leave most of its pages unpinned. Also probes many short
+ * lists that share pages with the lists before and after them, with the IDs of
+ * the next list among the keys.
+ */
+public class InvertedListProbeTest extends AbstractInvIndexSearchTest {
+
+    private static final int NUM_ELEMENTS = 1000000;
+    private static final int NUM_PROBES = 200;
+    private static final int NUM_SHORT_LISTS = 2000;
+    private static final int MAX_SHORT_LIST_ID = 200;
+    private static final int NUM_LONG_LIST_ELEMENTS = 100000;
+
+    @Test
+    public void probeTest() throws Exception {
+        // the even numbers
+        InvertedIndex.BulkLoadContext ctx = invIndex.beginBulkLoad(invIndex.createInvertedListBuilder(),
+                HYRACKS_FRAME_SIZE, BTree.DEFAULT_FILL_FACTOR);
+        for (int i = 0; i < NUM_ELEMENTS; i++) {
+            tb.reset();
+            UTF8StringSerializerDeserializer.INSTANCE.serialize("even", dos);
+            tb.addFieldEndOffset();
+            IntegerSerializerDeserializer.INSTANCE.serialize(i * 2, dos);
+            tb.addFieldEndOffset();
+            appender.reset(frame, true);
+            appender.append(tb.getFieldEndOffsets(), tb.getByteArray(), 0, tb.getSize());
+            tuple.reset(accessor, 0);
+            invIndex.bulkLoadAddTuple(ctx, tuple);
+        }
+        invIndex.endBulkLoad(ctx);
+
+        ITreeIndexCursor btreeCursor = new BTreeRangeSearchCursor((IBTreeLeafFrame) leafFrame, false);
+        FrameTupleReference searchKey = new FrameTupleReference();
+        RangePredicate btreePred = new RangePredicate(true, searchKey, searchKey, true, true, btreeCmp, btreeCmp);
+        ITreeIndexAccessor btreeAccessor = invIndex.getBTree().createAccessor();
+        queryTb.reset();
+        UTF8StringSerializerDeserializer.INSTANCE.serialize("even", queryDos);
+        queryTb.addFieldEndOffset();
+        queryAppender.reset(frame, true);
+        queryAppender.append(queryTb.getFieldEndOffsets(), queryTb.getByteArray(), 0, queryTb.getSize());
+        FrameTupleAccessor tokenAccessor = new FrameTupleAccessor(taskCtx.getFrameSize(), queryRecDesc);
+        tokenAccessor.reset(frame);
+        searchKey.reset(tokenAccessor, 0);
+        IInvertedListCursor invListCursor = invIndex.createInvertedListCursor();
+        Assert.assertTrue(invIndex.openCursor(btreeCursor, btreePred, btreeAccessor, invListCursor));
+        Assert.assertEquals(NUM_ELEMENTS, invListCursor.getNumElements());
+        int numPages = invListCursor.getEndPageId() - invListCursor.getStartPageId() + 1;
+
+        byte[] keyBytes = new byte[4];
+        FixedSizeTupleReference key = new FixedSizeTupleReference(invListTypeTraits);
+        key.reset(keyBytes, 0);
+
+        // increasing keys in the first tenth of the list
+        int[] keys = new int[NUM_PROBES];
+        for (int i = 0; i < NUM_PROBES; i++) {
+            keys[i] = rnd.nextInt(NUM_ELEMENTS / 5);
+        }
+        Arrays.sort(keys);
+        invListCursor.pinPagesOnDemand();
+        try {
+            for (int k : keys) {
+                IntegerSerializerDeserializer.putInt(k, keyBytes, 0);
+                Assert.assertEquals(k % 2 == 0, invListCursor.probeKey(key, invListCmp));
+            }
+            int numPinnedPages = invListCursor.getNumPinnedPages();
+            if (LOGGER.isLoggable(Level.INFO)) {
+                LOGGER.info(NUM_PROBES + " probes pinned " + numPinnedPages + " of " + numPages + " pages");
+            }
+            Assert.assertTrue(numPinnedPages * 2 < numPages);
+
+            // the ends of the list, and a smaller key than the previous one
+            int[] moreKeys = new int[] { NUM_ELEMENTS * 2 - 2, NUM_ELEMENTS * 2 - 1, NUM_ELEMENTS * 2, 0, -1,
+                    NUM_ELEMENTS + 1, NUM_ELEMENTS };
+            for (int k : moreKeys) {
+                IntegerSerializerDeserializer.putInt(k, keyBytes, 0);
+                Assert.assertEquals(k >= 0 && k < NUM_ELEMENTS * 2 && k % 2 == 0,
+                        invListCursor.probeKey(key, invListCmp));
+            }
+        } finally {
+            invListCursor.unpinPages();
+        }
+        Assert.assertEquals(0, invListCursor.getNumPinnedPages());
+    }
+
+    @Test
+    public void sharedPagesProbeTest() throws Exception {
+        Map<String, int[]> lists = new TreeMap<String, int[]>();
+        lists.put("a", new int[] { 1, 5, 9 });
+        lists.put("b", new int[] { 2, 10, 100 });
+        // short lists with overlapping IDs, many of them on each page
+        for (int i = 0; i < NUM_SHORT_LISTS; i++) {
+            int[] ids = new int[rnd.nextInt(20) + 1];
+            for (int j = 0; j < ids.length; j++) {
+                ids[j] = rnd.nextInt(MAX_SHORT_LIST_ID);
+            }
+            lists.put("c" + (10000 + i), distinct(ids));
+        }
+        // a list spanning pages, followed by a short list on its last page
+        int[] longIds = new int[NUM_LONG_LIST_ELEMENTS];
+        for (int i = 0; i < longIds.length; i++) {
+            longIds[i] = i * 2;
+        }
+        lists.put("d", longIds);
+        lists.put("e", new int[] { 3, NUM_LONG_LIST_ELEMENTS + 1, NUM_LONG_LIST_ELEMENTS * 2 - 1 });
+
+        InvertedIndex.BulkLoadContext ctx = invIndex.beginBulkLoad(invIndex.createInvertedListBuilder(),
+                HYRACKS_FRAME_SIZE, BTree.DEFAULT_FILL_FACTOR);
+        for (Map.Entry<String, int[]> list : lists.entrySet()) {
+            for (int id : list.getValue()) {
+                tb.reset();
+                UTF8StringSerializerDeserializer.INSTANCE.serialize(list.getKey(), dos);
+                tb.addFieldEndOffset();
+                IntegerSerializerDeserializer.INSTANCE.serialize(id, dos);
+                tb.addFieldEndOffset();
+                appender.reset(frame, true);
+                appender.append(tb.getFieldEndOffsets(), tb.getByteArray(), 0, tb.getSize());
+                tuple.reset(accessor, 0);
+                invIndex.bulkLoadAddTuple(ctx, tuple);
+            }
+        }
+        invIndex.endBulkLoad(ctx);
+
+        ITreeIndexCursor btreeCursor = new BTreeRangeSearchCursor((IBTreeLeafFrame) leafFrame, false);
+        FrameTupleReference searchKey = new FrameTupleReference();
+        RangePredicate btreePred = new RangePredicate(true, searchKey, searchKey, true, true, btreeCmp, btreeCmp);
+        ITreeIndexAccessor btreeAccessor = invIndex.getBTree().createAccessor();
+        FrameTupleAccessor tokenAccessor = new FrameTupleAccessor(taskCtx.getFrameSize(), queryRecDesc);
+        tokenAccessor.reset(frame);
+        IInvertedListCursor invListCursor = invIndex.createInvertedListCursor();
+        byte[] keyBytes = new byte[4];
+        FixedSizeTupleReference key = new FixedSizeTupleReference(invListTypeTraits);
+        key.reset(keyBytes, 0);
+
+        String[] tokens = lists.keySet().toArray(new String[lists.size()]);
+        for (int t = 0; t < tokens.length; t++) {
+            int[] ids = lists.get(tokens[t]);
+            int[] nextIds = t + 1 < tokens.length ? lists.get(tokens[t + 1]) : new int[0];
+            queryTb.reset();
+            UTF8StringSerializerDeserializer.INSTANCE.serialize(tokens[t], queryDos);
+            queryTb.addFieldEndOffset();
+            queryAppender.reset(frame, true);
+            queryAppender.append(queryTb.getFieldEndOffsets(), queryTb.getByteArray(), 0, queryTb.getSize());
+            searchKey.reset(tokenAccessor, 0);
+            Assert.assertTrue(invIndex.openCursor(btreeCursor, btreePred, btreeAccessor, invListCursor));
+            Assert.assertEquals(ids.length, invListCursor.getNumElements());
+
+            // the IDs of the next list, which may be on the same page, and some of the list's own
+            int[] keys = new int[nextIds.length + 10];
+            System.arraycopy(nextIds, 0, keys, 0, nextIds.length);
+            for (int i = nextIds.length; i < keys.length; i++) {
+                keys[i] = ids[rnd.nextInt(ids.length)] + rnd.nextInt(2);
+            }
+            Arrays.sort(keys);
+            invListCursor.pinPagesOnDemand();
+            try {
+                for (int k : keys) {
+                    IntegerSerializerDeserializer.putInt(k, keyBytes, 0);
+                    Assert.assertEquals("list " + tokens[t] + ", key " + k, Arrays.binarySearch(ids, k) >= 0,
+                            invListCursor.probeKey(key, invListCmp));
+                }
+            } finally {
+                invListCursor.unpinPages();
+            }
+        }
+    }
+
+    private static int[] distinct(int[] ids) {
+        Arrays.sort(ids);
+        int n = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (n == 0 || ids[n - 1] != ids[i]) {
+                ids[n++] = ids[i];
+            }
+        }
+        return Arrays.copyOf(ids, n);
+    }
+}
@@ -16,15 +16,19 @@
 package edu.uci.ics.hyracks.storage.am.invertedindex;
 
 import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.logging.Level;
 
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
+import edu.uci.ics.hyracks.api.io.FileReference;
 import edu.uci.ics.hyracks.dataflow.common.comm.io.ByteArrayAccessibleOutputStream;
 import edu.uci.ics.hyracks.dataflow.common.data.accessors.ITupleReference;
 import edu.uci.ics.hyracks.dataflow.common.data.marshalling.IntegerSerializerDeserializer;
@@ -32,9 +36,12 @@ import edu.uci.ics.hyracks.dataflow.common.data.marshalling.UTF8StringSerializer
 import edu.uci.ics.hyracks.storage.am.btree.impls.BTree;
 import edu.uci.ics.hyracks.storage.am.common.api.PageAllocationException;
 import edu.uci.ics.hyracks.storage.am.common.api.TreeIndexException;
+import edu.uci.ics.hyracks.storage.am.common.freepage.LinkedListFreePageManager;
+import edu.uci.ics.hyracks.storage.am.invertedindex.api.IInvertedIndexResultCursor;
 import edu.uci.ics.hyracks.storage.am.invertedindex.api.IInvertedIndexSearchModifier;
 import edu.uci.ics.hyracks.storage.am.invertedindex.api.IInvertedListBuilder;
-import edu.uci.ics.hyracks.storage.am.invertedindex.impls.FixedSizeElementInvertedListBuilder;
+import edu.uci.ics.hyracks.storage.am.invertedindex.impls.CompressedInvertedListFormat;
+import edu.uci.ics.hyracks.storage.am.invertedindex.impls.FixedSizeElementInvertedListFormat;
 import edu.uci.ics.hyracks.storage.am.invertedindex.impls.InvertedIndex;
 import edu.uci.ics.hyracks.storage.am.invertedindex.impls.OccurrenceThresholdPanicException;
 import edu.uci.ics.hyracks.storage.am.invertedindex.impls.SearchResultCursor;
@@ -131,6 +138,10 @@ public class SearchTest extends AbstractInvIndexSearchTest {
 	}
 
 	public void loadData() throws IOException, TreeIndexException, PageAllocationException {
+		loadData(invIndex);
+	}
+
+	public void loadData(InvertedIndex index) throws IOException, TreeIndexException, PageAllocationException {
 		List<TokenIdPair> pairs = new ArrayList<TokenIdPair>();
 		// generate pairs for subsequent sorting and bulk-loading
 		int id = 0;
@@ -151,9 +162,8 @@ public class SearchTest extends AbstractInvIndexSearchTest {
 		Collections.sort(pairs);
 
 		// bulk load index
-		IInvertedListBuilder invListBuilder = new FixedSizeElementInvertedListBuilder(
-				invListTypeTraits);
-		InvertedIndex.BulkLoadContext ctx = invIndex.beginBulkLoad(
+		IInvertedListBuilder invListBuilder = index.createInvertedListBuilder();
+		InvertedIndex.BulkLoadContext ctx = index.beginBulkLoad(
 				invListBuilder, HYRACKS_FRAME_SIZE, BTree.DEFAULT_FILL_FACTOR);
 
 		for (TokenIdPair t : pairs) {
@@ -170,12 +180,48 @@ public class SearchTest extends AbstractInvIndexSearchTest {
 			tuple.reset(accessor, 0);
 
 			try {
-				invIndex.bulkLoadAddTuple(ctx, tuple);
+				index.bulkLoadAddTuple(ctx, tuple);
 			} catch (Exception e) {
 				e.printStackTrace();
 			}
 		}
-		invIndex.endBulkLoad(ctx);
+		index.endBulkLoad(ctx);
+	}
+
+	private void setQuery(String queryString) throws HyracksDataException {
+		queryTb.reset();
+		UTF8StringSerializerDeserializer.INSTANCE.serialize(queryString,
+				queryDos);
+		queryTb.addFieldEndOffset();
+
+		queryAppender.reset(frame, true);
+		queryAppender.append(queryTb.getFieldEndOffsets(),
+				queryTb.getByteArray(), 0, queryTb.getSize());
+		queryTuple.reset(queryAccessor, 0);
+	}
+
+	/**
+	 * Runs the query that was set with setQuery() and returns the IDs of its
+	 * results, or null if the query caused a panic.
+	 */
+	private List<Integer> getResults(TOccurrenceSearcher querySearcher,
+			IInvertedIndexResultCursor queryResultCursor,
+			IInvertedIndexSearchModifier searchModifier) throws Exception {
+		try {
+			querySearcher.reset();
+			querySearcher.search(queryResultCursor, queryTuple, 0,
+					searchModifier);
+		} catch (OccurrenceThresholdPanicException e) {
+			return null;
+		}
+		List<Integer> results = new ArrayList<Integer>();
+		while (queryResultCursor.hasNext()) {
+			queryResultCursor.next();
+			ITupleReference resultTuple = queryResultCursor.getTuple();
+			results.add(IntegerSerializerDeserializer.getInt(
+					resultTuple.getFieldData(0), resultTuple.getFieldStart(0)));
+		}
+		return results;
 	}
 
 	/**
@@ -193,15 +239,7 @@ public class SearchTest extends AbstractInvIndexSearchTest {
 			int queryIndex = Math.abs(rnd.nextInt() % dataStrings.size());
 			String queryString = dataStrings.get(queryIndex);
 
-			queryTb.reset();
-			UTF8StringSerializerDeserializer.INSTANCE.serialize(queryString,
-					queryDos);
-			queryTb.addFieldEndOffset();
-
-			queryAppender.reset(frame, true);
-			queryAppender.append(queryTb.getFieldEndOffsets(),
-					queryTb.getByteArray(), 0, queryTb.getSize());
-			queryTuple.reset(queryAccessor, 0);
+			setQuery(queryString);
 
 			int repeats = 1;
 			double totalTime = 0;
@@ -305,4 +343,87 @@ public class SearchTest extends AbstractInvIndexSearchTest {
 		searchModifier.setEdThresh(3);
 		runQueries(searchModifier, 5);
 	}
+
+	/**
+	 * Loads the same data into a second index with compressed inverted lists,
+	 * and checks that the queries of all search modifiers return the same
+	 * results from both indexes. Also checks that the compressed lists cannot
+	 * be opened with the fixed-size format.
+	 * 
+	 */
+	@Test
+	public void compressedInvertedListsTest() throws Exception {
+		FileReference compressedBTreeFile = new FileReference(new File(
+				btreeFileName + "_compressed"));
+		bufferCache.createFile(compressedBTreeFile);
+		int compressedBTreeFileId = fmp.lookupFileId(compressedBTreeFile);
+		bufferCache.openFile(compressedBTreeFileId);
+		BTree compressedBTree = new BTree(bufferCache,
+				btreeTypeTraits.length, btreeCmp,
+				new LinkedListFreePageManager(bufferCache,
+						compressedBTreeFileId, 0, metaFrameFactory),
+				interiorFrameFactory, leafFrameFactory);
+		compressedBTree.create(compressedBTreeFileId);
+		compressedBTree.open(compressedBTreeFileId);
+
+		FileReference compressedInvListsFile = new FileReference(new File(
+				invListsFileName + "_compressed"));
+		bufferCache.createFile(compressedInvListsFile);
+		int compressedInvListsFileId = fmp
+				.lookupFileId(compressedInvListsFile);
+		bufferCache.openFile(compressedInvListsFileId);
+		InvertedIndex compressedInvIndex = new InvertedIndex(bufferCache,
+				compressedBTree, invListTypeTraits, invListCmp,
+				new CompressedInvertedListFormat());
+		compressedInvIndex.create(compressedInvListsFileId);
+		compressedInvIndex.open(compressedInvListsFileId);
+
+		try {
+			loadData(compressedInvIndex);
+
+			TOccurrenceSearcher compressedSearcher = new TOccurrenceSearcher(
+					taskCtx, compressedInvIndex, tokenizer);
+			IInvertedIndexResultCursor compressedResultCursor = new SearchResultCursor(
+					compressedSearcher.createResultFrameTupleAccessor(),
+					compressedSearcher.createResultTupleReference());
+
+			List<IInvertedIndexSearchModifier> searchModifiers = new ArrayList<IInvertedIndexSearchModifier>();
+			searchModifiers.add(new ConjunctiveSearchModifier());
+			searchModifiers.add(new JaccardSearchModifier(0.9f));
+			searchModifiers.add(new JaccardSearchModifier(0.7f));
+			searchModifiers.add(new EditDistanceSearchModifier(3, 1));
+			searchModifiers.add(new EditDistanceSearchModifier(3, 3));
+
+			rnd.setSeed(50);
+			for (IInvertedIndexSearchModifier searchModifier : searchModifiers) {
+				for (int i = 0; i < 20; i++) {
+					String queryString = dataStrings.get(Math.abs(rnd
+							.nextInt() % dataStrings.size()));
+					setQuery(queryString);
+					List<Integer> expected = getResults(searcher,
+							resultCursor, searchModifier);
+					List<Integer> actual = getResults(compressedSearcher,
+							compressedResultCursor, searchModifier);
+					Assert.assertEquals(queryString, expected, actual);
+				}
+			}
+
+			InvertedIndex fixedSizeInvIndex = new InvertedIndex(bufferCache,
+					compressedBTree, invListTypeTraits, invListCmp,
+					new FixedSizeElementInvertedListFormat());
+			try {
+				fixedSizeInvIndex.open(compressedInvListsFileId);
+				Assert.fail("Opened compressed inverted lists with the fixed-size format.");
+			} catch (HyracksDataException e) {
+				// expected
+			}
+		} finally {
+			compressedBTree.close();
+			compressedInvIndex.close();
+			bufferCache.closeFile(compressedBTreeFileId);
+			bufferCache.closeFile(compressedInvListsFileId);
+			new File(btreeFileName + "_compressed").deleteOnExit();
+			new File(invListsFileName + "_compressed").deleteOnExit();
+		}
+	}
 }
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.am.invertedindex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.uci.ics.hyracks.dataflow.common.data.accessors.ITupleReference;
+import edu.uci.ics.hyracks.dataflow.common.data.marshalling.IntegerSerializerDeserializer;
+import edu.uci.ics.hyracks.dataflow.common.data.marshalling.UTF8StringSerializerDeserializer;
+import edu.uci.ics.hyracks.storage.am.btree.impls.BTree;
+import edu.uci.ics.hyracks.storage.am.invertedindex.api.IInvertedIndexSearchModifier;
+import edu.uci.ics.hyracks.storage.am.invertedindex.impls.InvertedIndex;
+import edu.uci.ics.hyracks.storage.am.invertedindex.impls.OccurrenceThresholdPanicException;
+import edu.uci.ics.hyracks.storage.am.invertedindex.impls.SearchResultCursor;
+import edu.uci.ics.hyracks.storage.am.invertedindex.impls.TOccurrenceSearcher;
+import edu.uci.ics.hyracks.storage.am.invertedindex.impls.TopKOccurrenceSearcher;
+import edu.uci.ics.hyracks.storage.am.invertedindex.searchmodifiers.ConjunctiveSearchModifier;
+import edu.uci.ics.hyracks.storage.am.invertedindex.searchmodifiers.JaccardSearchModifier;
+import edu.uci.ics.hyracks.storage.am.invertedindex.tokenizers.DelimitedUTF8StringBinaryTokenizer;
+import edu.uci.ics.hyracks.storage.am.invertedindex.tokenizers.UTF8WordTokenFactory;
+
+/**
+ * Runs random queries with the top-k searcher, checks the results against the
+ * k best elements found by counting the occurrences of all elements, and logs
+ * the times next to the times of the searcher that returns all results.
+ */
+public class TopKSearchTest extends AbstractInvIndexSearchTest {
+
+    private static final int NUM_QUERIES = 50;
+
+    private final List<String> tokens = new ArrayList<String>();
+    private final int[] counts = new int[maxId];
+
+    @Before
+    public void start() throws Exception {
+        super.start();
+        tokenFactory = new UTF8WordTokenFactory();
+        tokenizer = new DelimitedUTF8StringBinaryTokenizer(true, false, tokenFactory);
+        loadData();
+    }
+
+    private void loadData() throws Exception {
+        String[] words = new String[] { "compilers", "computer", "databases", "fast", "hyracks", "major",
+                "science", "systems", "university" };
+        InvertedIndex.BulkLoadContext ctx = invIndex.beginBulkLoad(invIndex.createInvertedListBuilder(),
+                HYRACKS_FRAME_SIZE, BTree.DEFAULT_FILL_FACTOR);
+        // lists of very different lengths
+        for (int i = 0; i < words.length; i++) {
+            tokens.add(words[i]);
+            ArrayList<Integer> checkInvList = new ArrayList<Integer>();
+            checkInvLists.add(checkInvList);
+            int addProb = 3 + i * i * 10;
+            for (int j = 0; j < maxId; j++) {
+                if (rnd.nextInt(addProb) != 0) {
+                    continue;
+                }
+                checkInvList.add(j);
+                tb.reset();
+                UTF8StringSerializerDeserializer.INSTANCE.serialize(words[i], dos);
+                tb.addFieldEndOffset();
+                IntegerSerializerDeserializer.INSTANCE.serialize(j, dos);
+                tb.addFieldEndOffset();
+                appender.reset(frame, true);
+                appender.append(tb.getFieldEndOffsets(), tb.getByteArray(), 0, tb.getSize());
+                tuple.reset(accessor, 0);
+                invIndex.bulkLoadAddTuple(ctx, tuple);
+            }
+        }
+        invIndex.endBulkLoad(ctx);
+    }
+
+    @Test
+    public void jaccardTopKTest() throws Exception {
+        runQueries(new JaccardSearchModifier(0.0f), 10);
+        runQueries(new JaccardSearchModifier(0.5f), 10);
+        runQueries(new JaccardSearchModifier(0.5f), 1000);
+    }
+
+    @Test
+    public void conjunctiveTopKTest() throws Exception {
+        runQueries(new ConjunctiveSearchModifier(), 1);
+        runQueries(new ConjunctiveSearchModifier(), 100);
+    }
+
+    private void runQueries(IInvertedIndexSearchModifier searchModifier, int k) throws Exception {
+        TopKOccurrenceSearcher topKSearcher = new TopKOccurrenceSearcher(taskCtx, invIndex, tokenizer, k);
+        TOccurrenceSearcher allSearcher = new TOccurrenceSearcher(taskCtx, invIndex, tokenizer);
+        SearchResultCursor resultCursor = new SearchResultCursor(topKSearcher.createResultFrameTupleAccessor(),
+                topKSearcher.createResultTupleReference());
+        long topKTime = 0;
+        long allTime = 0;
+        List<Integer> queryTokens = new ArrayList<Integer>();
+        for (int i = 0; i < tokens.size(); i++) {
+            queryTokens.add(i);
+        }
+        for (int q = 0; q < NUM_QUERIES; q++) {
+            Collections.shuffle(queryTokens, rnd);
+            int numQueryTokens = rnd.nextInt(tokens.size()) + 1;
+            StringBuilder strBuilder = new StringBuilder();
+            for (int j = 0; j < numQueryTokens; j++) {
+                if (j > 0) {
+                    strBuilder.append(" ");
+                }
+                strBuilder.append(tokens.get(queryTokens.get(j)));
+            }
+            queryTb.reset();
+            UTF8StringSerializerDeserializer.INSTANCE.serialize(strBuilder.toString(), queryDos);
+            queryTb.addFieldEndOffset();
+            queryAppender.reset(frame, true);
+            queryAppender.append(queryTb.getFieldEndOffsets(), queryTb.getByteArray(), 0, queryTb.getSize());
+            queryTuple.reset(queryAccessor, 0);
+
+            long start = System.currentTimeMillis();
+            try {
+                allSearcher.reset();
+                allSearcher.search(resultCursor, queryTuple, 0, searchModifier);
+            } catch (OccurrenceThresholdPanicException e) {
+                // the top-k searcher has no such case
+            }
+            allTime += System.currentTimeMillis() - start;
+
+            start = System.currentTimeMillis();
+            topKSearcher.reset();
+            topKSearcher.search(resultCursor, queryTuple, 0, searchModifier);
+            topKTime += System.currentTimeMillis() - start;
+
+            List<Integer> expected = getExpectedResults(queryTokens.subList(0, numQueryTokens),
+                    Math.max(1, topKSearcher.getOccurrenceThreshold()), k);
+            int resultIx = 0;
+            while (resultCursor.hasNext()) {
+                resultCursor.next();
+                ITupleReference result = resultCursor.getTuple();
+                int id = IntegerSerializerDeserializer.getInt(result.getFieldData(0), result.getFieldStart(0));
+                int count = IntegerSerializerDeserializer.getInt(result.getFieldData(1), result.getFieldStart(1));
+                Assert.assertTrue(resultIx < expected.size());
+                Assert.assertEquals(expected.get(resultIx).intValue(), id);
+                Assert.assertEquals(counts[id], count);
+                resultIx++;
+            }
+            Assert.assertEquals(expected.size(), resultIx);
+        }
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info(searchModifier.getClass().getSimpleName() + ", k = " + k + ": top-k " + topKTime
+                    + "ms, all results " + allTime + "ms");
+        }
+    }
+
+    /**
+     * Counts the occurrences of all elements and returns the k elements with
+     * the most, at least minCount, ties broken by the smaller element.
+     */
+    private List<Integer> getExpectedResults(List<Integer> queryTokens, int minCount, int k) {
+        for (int i = 0; i < maxId; i++) {
+            counts[i] = 0;
+        }
+        for (int t : queryTokens) {
+            for (int id : checkInvLists.get(t)) {
+                counts[id]++;
+            }
+        }
+        List<Integer> results = new ArrayList<Integer>();
+        for (int i = 0; i < maxId; i++) {
+            if (counts[i] >= minCount) {
+                results.add(i);
+            }
+        }
+        Collections.sort(results, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                if (counts[i1] != counts[i2]) {
+                    return counts[i2] - counts[i1];
+                }
+                return i1 - i2;
+            }
+        });
+        return results.subList(0, Math.min(k, results.size()));
+    }
+}
@@ -0,0 +1,401 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.am.rtree;
+
+import java.io.DataOutput;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import edu.uci.ics.hyracks.api.comm.IFrameTupleAccessor;
+import edu.uci.ics.hyracks.api.context.IHyracksTaskContext;
+import edu.uci.ics.hyracks.api.dataflow.value.IBinaryComparator;
+import edu.uci.ics.hyracks.api.dataflow.value.ISerializerDeserializer;
+import edu.uci.ics.hyracks.api.dataflow.value.ITypeTraits;
+import edu.uci.ics.hyracks.api.dataflow.value.RecordDescriptor;
+import edu.uci.ics.hyracks.api.io.FileReference;
+import edu.uci.ics.hyracks.data.std.accessors.PointableBinaryComparatorFactory;
+import edu.uci.ics.hyracks.data.std.primitive.DoublePointable;
+import edu.uci.ics.hyracks.data.std.primitive.IntegerPointable;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.ArrayTupleBuilder;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAccessor;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAppender;
+import edu.uci.ics.hyracks.dataflow.common.data.accessors.FrameTupleReference;
+import edu.uci.ics.hyracks.dataflow.common.data.accessors.ITupleReference;
+import edu.uci.ics.hyracks.dataflow.common.data.marshalling.DoubleSerializerDeserializer;
+import edu.uci.ics.hyracks.dataflow.common.data.marshalling.IntegerSerializerDeserializer;
+import edu.uci.ics.hyracks.storage.am.common.api.IFreePageManager;
+import edu.uci.ics.hyracks.storage.am.common.api.IIndexBulkLoadContext;
+import edu.uci.ics.hyracks.storage.am.common.api.IPrimitiveValueProviderFactory;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexAccessor;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexCursor;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexFrameFactory;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexMetaDataFrameFactory;
+import edu.uci.ics.hyracks.storage.am.common.api.TreeIndexException;
+import edu.uci.ics.hyracks.storage.am.common.frames.LIFOMetaDataFrameFactory;
+import edu.uci.ics.hyracks.storage.am.common.freepage.LinkedListFreePageManager;
+import edu.uci.ics.hyracks.storage.am.common.ophelpers.MultiComparator;
+import edu.uci.ics.hyracks.storage.am.common.util.TreeIndexStats;
+import edu.uci.ics.hyracks.storage.am.common.util.TreeIndexStatsGatherer;
+import edu.uci.ics.hyracks.storage.am.rtree.api.IRTreeInteriorFrame;
+import edu.uci.ics.hyracks.storage.am.rtree.api.IRTreeLeafFrame;
+import edu.uci.ics.hyracks.storage.am.rtree.frames.RTreeNSMInteriorFrameFactory;
+import edu.uci.ics.hyracks.storage.am.rtree.frames.RTreeNSMLeafFrameFactory;
+import edu.uci.ics.hyracks.storage.am.rtree.impls.RTree;
+import edu.uci.ics.hyracks.storage.am.rtree.impls.RTreeSearchCursor;
+import edu.uci.ics.hyracks.storage.am.rtree.impls.SearchPredicate;
+import edu.uci.ics.hyracks.storage.am.rtree.tuples.RTreeTypeAwareTupleWriterFactory;
+import edu.uci.ics.hyracks.storage.am.rtree.util.RTreeUtils;
+import edu.uci.ics.hyracks.storage.common.buffercache.BufferCacheStatistics.FileStatistics;
+import edu.uci.ics.hyracks.storage.common.buffercache.IBufferCache;
+import edu.uci.ics.hyracks.storage.common.file.IFileMapProvider;
+import edu.uci.ics.hyracks.test.support.TestStorageManagerComponentHolder;
+import edu.uci.ics.hyracks.test.support.TestUtils;
+
+/**
+ * Loads the same rectangles into one R-tree with the packed bulk load and into
+ * another one with insertions, checks that range searches on both return
+ * exactly the rectangles that intersect the query, and logs the load and
+ * search times and the tree statistics. Also checks that a bulk load with a
+ * small window packs better on input sorted on the Z-order key.
+ */
+public class RTreeBulkLoadTest extends AbstractRTreeTest {
+    private static final int PAGE_SIZE = 1024;
+    private static final int NUM_PAGES = 100;
+    private static final int MAX_OPEN_FILES = 10;
+    private static final int HYRACKS_FRAME_SIZE = 128;
+    private static final int NUM_TUPLES = 20000;
+    private static final int NUM_QUERIES = 500;
+    private static final float FILL_FACTOR = 0.8f;
+    private IHyracksTaskContext ctx = TestUtils.create(HYRACKS_FRAME_SIZE);
+
+    private final int fieldCount = 5;
+    private final IBinaryComparator[] cmps = new IBinaryComparator[4];
+    private MultiComparator cmp;
+    private ITreeIndexFrameFactory interiorFrameFactory;
+    private ITreeIndexFrameFactory leafFrameFactory;
+    private final ITreeIndexMetaDataFrameFactory metaFrameFactory = new LIFOMetaDataFrameFactory();
+
+    private ByteBuffer hyracksFrame;
+    private final FrameTupleAppender appender = new FrameTupleAppender(HYRACKS_FRAME_SIZE);
+    private final ArrayTupleBuilder tb = new ArrayTupleBuilder(fieldCount);
+    private IFrameTupleAccessor accessor;
+    private final FrameTupleReference tuple = new FrameTupleReference();
+
+    @Test
+    public void bulkLoadTest() throws Exception {
+        TestStorageManagerComponentHolder.init(PAGE_SIZE, NUM_PAGES, MAX_OPEN_FILES);
+        IBufferCache bufferCache = TestStorageManagerComponentHolder.getBufferCache(ctx);
+        IFileMapProvider fmp = TestStorageManagerComponentHolder.getFileMapProvider(ctx);
+        init();
+
+        // small rectangles, as for points with some imprecision
+        Random rnd = new Random(50);
+        double[][] recs = new double[NUM_TUPLES][];
+        for (int i = 0; i < NUM_TUPLES; i++) {
+            double x = rnd.nextDouble();
+            double y = rnd.nextDouble();
+            recs[i] = new double[] { x, y, x + rnd.nextDouble() / 1000, y + rnd.nextDouble() / 1000 };
+        }
+
+        int bulkFileId = createFile(bufferCache, fmp, fileName + "-bulk");
+        RTree bulkTree = createRTree(bufferCache, bulkFileId);
+        long start = System.currentTimeMillis();
+        IIndexBulkLoadContext bulkLoadCtx = bulkTree.beginBulkLoad(FILL_FACTOR);
+        for (int i = 0; i < NUM_TUPLES; i++) {
+            bulkTree.bulkLoadAddTuple(createTuple(recs[i], i), bulkLoadCtx);
+        }
+        bulkTree.endBulkLoad(bulkLoadCtx);
+        long bulkLoadTime = System.currentTimeMillis() - start;
+
+        int insertFileId = createFile(bufferCache, fmp, fileName + "-insert");
+        RTree insertTree = createRTree(bufferCache, insertFileId);
+        ITreeIndexAccessor insertAccessor = insertTree.createAccessor();
+        start = System.currentTimeMillis();
+        for (int i = 0; i < NUM_TUPLES; i++) {
+            insertAccessor.insert(createTuple(recs[i], i));
+        }
+        long insertTime = System.currentTimeMillis() - start;
+
+        double[][] queries = new double[NUM_QUERIES][];
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            double x = rnd.nextDouble();
+            double y = rnd.nextDouble();
+            queries[i] = new double[] { x, y, x + rnd.nextDouble() / 20, y + rnd.nextDouble() / 20 };
+        }
+        long bulkSearchTime = 0;
+        long insertSearchTime = 0;
+        ITreeIndexAccessor bulkAccessor = bulkTree.createAccessor();
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            List<Integer> expected = new ArrayList<Integer>();
+            for (int j = 0; j < NUM_TUPLES; j++) {
+                if (intersect(recs[j], queries[i])) {
+                    expected.add(j);
+                }
+            }
+            start = System.currentTimeMillis();
+            List<Integer> bulkResults = search(bulkTree, bulkAccessor, queries[i]);
+            bulkSearchTime += System.currentTimeMillis() - start;
+            start = System.currentTimeMillis();
+            List<Integer> insertResults = search(insertTree, insertAccessor, queries[i]);
+            insertSearchTime += System.currentTimeMillis() - start;
+            Assert.assertEquals(expected, bulkResults);
+            Assert.assertEquals(expected, insertResults);
+        }
+
+        // the bulk-loaded tree takes insertions like any other
+        double[] rec = new double[] { 0.5, 0.5, 0.5001, 0.5001 };
+        bulkAccessor.insert(createTuple(rec, NUM_TUPLES));
+        Assert.assertTrue(search(bulkTree, bulkAccessor, rec).contains(NUM_TUPLES));
+
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info("Loading " + NUM_TUPLES + " rectangles: bulk load " + bulkLoadTime + "ms, insertions "
+                    + insertTime + "ms");
+            LOGGER.info(NUM_QUERIES + " range searches: bulk-loaded tree " + bulkSearchTime
+                    + "ms, tree built by insertions " + insertSearchTime + "ms");
+            LOGGER.info("Bulk-loaded tree:\n" + gatherStats(bufferCache, bulkTree, bulkFileId));
+            LOGGER.info("Tree built by insertions:\n" + gatherStats(bufferCache, insertTree, insertFileId));
+        }
+
+        bulkTree.close();
+        insertTree.close();
+        bufferCache.closeFile(bulkFileId);
+        bufferCache.closeFile(insertFileId);
+        bufferCache.close();
+    }
+
+    @Test
+    public void zOrderBulkLoadTest() throws Exception {
+        TestStorageManagerComponentHolder.init(PAGE_SIZE, NUM_PAGES, MAX_OPEN_FILES);
+        IBufferCache bufferCache = TestStorageManagerComponentHolder.getBufferCache(ctx);
+        IFileMapProvider fmp = TestStorageManagerComponentHolder.getFileMapProvider(ctx);
+        init();
+
+        // the key follows each axis, on both sides of zero
+        double[] axis = new double[] { -100.0, -2.0, -0.5, 0.0, 0.5, 2.0, 100.0 };
+        for (int i = 1; i < axis.length; i++) {
+            Assert.assertTrue(RTreeUtils.computeZOrderKey(new double[] { axis[i - 1], 0.5 }) < RTreeUtils
+                    .computeZOrderKey(new double[] { axis[i], 0.5 }));
+            Assert.assertTrue(RTreeUtils.computeZOrderKey(new double[] { 0.5, axis[i - 1] }) < RTreeUtils
+                    .computeZOrderKey(new double[] { 0.5, axis[i] }));
+        }
+
+        Random rnd = new Random(50);
+        final double[][] recs = new double[NUM_TUPLES][];
+        final long[] keys = new long[NUM_TUPLES];
+        Integer[] order = new Integer[NUM_TUPLES];
+        for (int i = 0; i < NUM_TUPLES; i++) {
+            double x = rnd.nextDouble();
+            double y = rnd.nextDouble();
+            recs[i] = new double[] { x, y, x + rnd.nextDouble() / 1000, y + rnd.nextDouble() / 1000 };
+            keys[i] = RTreeUtils.computeZOrderKey(new double[] { (recs[i][0] + recs[i][2]) / 2,
+                    (recs[i][1] + recs[i][3]) / 2 });
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return keys[a] < keys[b] ? -1 : (keys[a] == keys[b] ? 0 : 1);
+            }
+        });
+
+        // a window of a few leaves only tiles the input locally
+        int windowSize = 4 * PAGE_SIZE;
+        int sortedFileId = createFile(bufferCache, fmp, fileName + "-zorder");
+        RTree sortedTree = createRTree(bufferCache, sortedFileId);
+        IIndexBulkLoadContext bulkLoadCtx = sortedTree.beginBulkLoad(FILL_FACTOR, windowSize);
+        for (int i = 0; i < NUM_TUPLES; i++) {
+            sortedTree.bulkLoadAddTuple(createTuple(recs[order[i]], order[i]), bulkLoadCtx);
+        }
+        sortedTree.endBulkLoad(bulkLoadCtx);
+
+        int unsortedFileId = createFile(bufferCache, fmp, fileName + "-unsorted");
+        RTree unsortedTree = createRTree(bufferCache, unsortedFileId);
+        bulkLoadCtx = unsortedTree.beginBulkLoad(FILL_FACTOR, windowSize);
+        for (int i = 0; i < NUM_TUPLES; i++) {
+            unsortedTree.bulkLoadAddTuple(createTuple(recs[i], i), bulkLoadCtx);
+        }
+        unsortedTree.endBulkLoad(bulkLoadCtx);
+
+        FileStatistics sortedStats = bufferCache.getStatistics().getFileStatistics(sortedFileId);
+        FileStatistics unsortedStats = bufferCache.getStatistics().getFileStatistics(unsortedFileId);
+        long sortedPins = sortedStats.getHits() + sortedStats.getMisses();
+        long unsortedPins = unsortedStats.getHits() + unsortedStats.getMisses();
+        ITreeIndexAccessor sortedAccessor = sortedTree.createAccessor();
+        ITreeIndexAccessor unsortedAccessor = unsortedTree.createAccessor();
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            double x = rnd.nextDouble();
+            double y = rnd.nextDouble();
+            double[] query = new double[] { x, y, x + rnd.nextDouble() / 20, y + rnd.nextDouble() / 20 };
+            List<Integer> expected = new ArrayList<Integer>();
+            for (int j = 0; j < NUM_TUPLES; j++) {
+                if (intersect(recs[j], query)) {
+                    expected.add(j);
+                }
+            }
+            Assert.assertEquals(expected, search(sortedTree, sortedAccessor, query));
+            Assert.assertEquals(expected, search(unsortedTree, unsortedAccessor, query));
+        }
+        sortedPins = sortedStats.getHits() + sortedStats.getMisses() - sortedPins;
+        unsortedPins = unsortedStats.getHits() + unsortedStats.getMisses() - unsortedPins;
+
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info(NUM_QUERIES + " range searches with a window of " + windowSize + " bytes: " + sortedPins
+                    + " pages pinned on Z-ordered input, " + unsortedPins + " on unsorted input");
+        }
+        Assert.assertTrue(sortedPins < unsortedPins);
+
+        sortedTree.close();
+        unsortedTree.close();
+        bufferCache.closeFile(sortedFileId);
+        bufferCache.closeFile(unsortedFileId);
+        bufferCache.close();
+    }
+
+    @Test
+    public void emptyBulkLoadTest() throws Exception {
+        TestStorageManagerComponentHolder.init(PAGE_SIZE, NUM_PAGES, MAX_OPEN_FILES);
+        IBufferCache bufferCache = TestStorageManagerComponentHolder.getBufferCache(ctx);
+        IFileMapProvider fmp = TestStorageManagerComponentHolder.getFileMapProvider(ctx);
+        init();
+
+        int fileId = createFile(bufferCache, fmp, fileName + "-empty");
+        RTree rtree = createRTree(bufferCache, fileId);
+        rtree.endBulkLoad(rtree.beginBulkLoad(FILL_FACTOR));
+        ITreeIndexAccessor accessor = rtree.createAccessor();
+        double[] rec = new double[] { 0.1, 0.1, 0.2, 0.2 };
+        Assert.assertTrue(search(rtree, accessor, rec).isEmpty());
+        accessor.insert(createTuple(rec, 1));
+        Assert.assertEquals(1, search(rtree, accessor, rec).size());
+
+        // only an empty tree can be bulk-loaded
+        RTree nonEmpty = new RTree(bufferCache, fieldCount, cmp, new LinkedListFreePageManager(bufferCache, fileId, 0,
+                metaFrameFactory), interiorFrameFactory, leafFrameFactory);
+        nonEmpty.open(fileId);
+        try {
+            nonEmpty.beginBulkLoad(FILL_FACTOR);
+            Assert.fail();
+        } catch (TreeIndexException e) {
+        }
+
+        rtree.close();
+        bufferCache.closeFile(fileId);
+        bufferCache.close();
+    }
+
+    private void init() {
+        cmps[0] = PointableBinaryComparatorFactory.of(DoublePointable.FACTORY).createBinaryComparator();
+        cmps[1] = cmps[0];
+        cmps[2] = cmps[0];
+        cmps[3] = cmps[0];
+        cmp = new MultiComparator(cmps);
+
+        ITypeTraits[] typeTraits = new ITypeTraits[fieldCount];
+        typeTraits[0] = DoublePointable.TYPE_TRAITS;
+        typeTraits[1] = DoublePointable.TYPE_TRAITS;
+        typeTraits[2] = DoublePointable.TYPE_TRAITS;
+        typeTraits[3] = DoublePointable.TYPE_TRAITS;
+        typeTraits[4] = IntegerPointable.TYPE_TRAITS;
+        IPrimitiveValueProviderFactory[] valueProviderFactories = RTreeUtils.createPrimitiveValueProviderFactories(
+                cmps.length, DoublePointable.FACTORY);
+        RTreeTypeAwareTupleWriterFactory tupleWriterFactory = new RTreeTypeAwareTupleWriterFactory(typeTraits);
+        interiorFrameFactory = new RTreeNSMInteriorFrameFactory(tupleWriterFactory, valueProviderFactories);
+        leafFrameFactory = new RTreeNSMLeafFrameFactory(tupleWriterFactory, valueProviderFactories);
+
+        hyracksFrame = ctx.allocateFrame();
+        @SuppressWarnings("rawtypes")
+        ISerializerDeserializer[] recDescSers = { DoubleSerializerDeserializer.INSTANCE,
+                DoubleSerializerDeserializer.INSTANCE, DoubleSerializerDeserializer.INSTANCE,
+                DoubleSerializerDeserializer.INSTANCE, IntegerSerializerDeserializer.INSTANCE };
+        accessor = new FrameTupleAccessor(ctx.getFrameSize(), new RecordDescriptor(recDescSers));
+        accessor.reset(hyracksFrame);
+    }
+
+    private int createFile(IBufferCache bufferCache, IFileMapProvider fmp, String name) throws Exception {
+        File f = new File(name);
+        f.deleteOnExit();
+        FileReference file = new FileReference(f);
+        bufferCache.createFile(file);
+        int fileId = fmp.lookupFileId(file);
+        bufferCache.openFile(fileId);
+        return fileId;
+    }
+
+    private RTree createRTree(IBufferCache bufferCache, int fileId) throws Exception {
+        IFreePageManager freePageManager = new LinkedListFreePageManager(bufferCache, fileId, 0, metaFrameFactory);
+        RTree rtree = new RTree(bufferCache, fieldCount, cmp, freePageManager, interiorFrameFactory, leafFrameFactory);
+        rtree.create(fileId);
+        rtree.open(fileId);
+        return rtree;
+    }
+
+    private ITupleReference createTuple(double[] rec, int pk) throws Exception {
+        DataOutput dos = tb.getDataOutput();
+        tb.reset();
+        for (int i = 0; i < rec.length; i++) {
+            DoubleSerializerDeserializer.INSTANCE.serialize(rec[i], dos);
+            tb.addFieldEndOffset();
+        }
+        IntegerSerializerDeserializer.INSTANCE.serialize(pk, dos);
+        tb.addFieldEndOffset();
+        appender.reset(hyracksFrame, true);
+        appender.append(tb.getFieldEndOffsets(), tb.getByteArray(), 0, tb.getSize());
+        tuple.reset(accessor, 0);
+        return tuple;
+    }
+
+    private List<Integer> search(RTree rtree, ITreeIndexAccessor indexAccessor, double[] query) throws Exception {
+        ITupleReference key = createTuple(query, -1);
+        ITreeIndexCursor searchCursor = new RTreeSearchCursor((IRTreeInteriorFrame) interiorFrameFactory.createFrame(),
+                (IRTreeLeafFrame) leafFrameFactory.createFrame());
+        indexAccessor.search(searchCursor, new SearchPredicate(key, cmp));
+        List<Integer> results = new ArrayList<Integer>();
+        try {
+            while (searchCursor.hasNext()) {
+                searchCursor.next();
+                ITupleReference frameTuple = searchCursor.getTuple();
+                results.add(IntegerSerializerDeserializer.getInt(frameTuple.getFieldData(4),
+                        frameTuple.getFieldStart(4)));
+            }
+        } finally {
+            searchCursor.close();
+        }
+        Collections.sort(results);
+        return results;
+    }
+
+    private static boolean intersect(double[] a, double[] b) {
+        return a[0] <= b[2] && b[0] <= a[2] && a[1] <= b[3] && b[1] <= a[3];
+    }
+
+    private String gatherStats(IBufferCache bufferCache, RTree rtree, int fileId) throws Exception {
+        TreeIndexStatsGatherer statsGatherer = new TreeIndexStatsGatherer(bufferCache, rtree.getFreePageManager(),
+                fileId, rtree.getRootPageId());
+        TreeIndexStats stats = statsGatherer.gatherStats(leafFrameFactory.createFrame(),
+                interiorFrameFactory.createFrame(), metaFrameFactory.createFrame());
+        return stats.toString();
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.am.rtree;
+
+import java.io.DataOutput;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import edu.uci.ics.hyracks.api.comm.IFrameTupleAccessor;
+import edu.uci.ics.hyracks.api.context.IHyracksTaskContext;
+import edu.uci.ics.hyracks.api.dataflow.value.IBinaryComparator;
+import edu.uci.ics.hyracks.api.dataflow.value.ISerializerDeserializer;
+import edu.uci.ics.hyracks.api.dataflow.value.ITypeTraits;
+import edu.uci.ics.hyracks.api.dataflow.value.RecordDescriptor;
+import edu.uci.ics.hyracks.api.io.FileReference;
+import edu.uci.ics.hyracks.data.std.accessors.PointableBinaryComparatorFactory;
+import edu.uci.ics.hyracks.data.std.primitive.DoublePointable;
+import edu.uci.ics.hyracks.data.std.primitive.IntegerPointable;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.ArrayTupleBuilder;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAccessor;
+import edu.uci.ics.hyracks.dataflow.common.comm.io.FrameTupleAppender;
+import edu.uci.ics.hyracks.dataflow.common.data.accessors.FrameTupleReference;
+import edu.uci.ics.hyracks.dataflow.common.data.accessors.ITupleReference;
+import edu.uci.ics.hyracks.dataflow.common.data.marshalling.DoubleSerializerDeserializer;
+import edu.uci.ics.hyracks.dataflow.common.data.marshalling.IntegerSerializerDeserializer;
+import edu.uci.ics.hyracks.storage.am.common.api.IFreePageManager;
+import edu.uci.ics.hyracks.storage.am.common.api.IPrimitiveValueProviderFactory;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexAccessor;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexCursor;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexFrameFactory;
+import edu.uci.ics.hyracks.storage.am.common.api.ITreeIndexMetaDataFrameFactory;
+import edu.uci.ics.hyracks.storage.am.common.frames.LIFOMetaDataFrameFactory;
+import edu.uci.ics.hyracks.storage.am.common.freepage.LinkedListFreePageManager;
+import edu.uci.ics.hyracks.storage.am.common.ophelpers.MultiComparator;
+import edu.uci.ics.hyracks.storage.am.rtree.api.IRTreeInteriorFrame;
+import edu.uci.ics.hyracks.storage.am.rtree.api.IRTreeLeafFrame;
+import edu.uci.ics.hyracks.storage.am.rtree.frames.RTreeNSMInteriorFrameFactory;
+import edu.uci.ics.hyracks.storage.am.rtree.frames.RTreeNSMLeafFrameFactory;
+import edu.uci.ics.hyracks.storage.am.rtree.impls.KNNSearchPredicate;
+import edu.uci.ics.hyracks.storage.am.rtree.impls.RTree;
+import edu.uci.ics.hyracks.storage.am.rtree.impls.RTreeKNNSearchCursor;
+import edu.uci.ics.hyracks.storage.am.rtree.impls.RTreeSearchCursor;
+import edu.uci.ics.hyracks.storage.am.rtree.impls.SearchPredicate;
+import edu.uci.ics.hyracks.storage.am.rtree.tuples.RTreeTypeAwareTupleWriterFactory;
+import edu.uci.ics.hyracks.storage.am.rtree.util.RTreeUtils;
+import edu.uci.ics.hyracks.storage.common.buffercache.IBufferCache;
+import edu.uci.ics.hyracks.storage.common.file.IFileMapProvider;
+import edu.uci.ics.hyracks.test.support.TestStorageManagerComponentHolder;
+import edu.uci.ics.hyracks.test.support.TestUtils;
+
+/**
+ * Checks that the k-nearest-neighbor search returns the distances of the k
+ * rectangles closest to the query point, and logs its time next to the time
+ * of finding the same neighbors with range searches over growing squares.
+ */
+public class RTreeKNNSearchTest extends AbstractRTreeTest {
+    private static final int PAGE_SIZE = 1024;
+    private static final int NUM_PAGES = 100;
+    private static final int MAX_OPEN_FILES = 10;
+    private static final int HYRACKS_FRAME_SIZE = 128;
+    private static final int NUM_TUPLES = 20000;
+    private static final int NUM_QUERIES = 500;
+    private static final int K = 10;
+    private IHyracksTaskContext ctx = TestUtils.create(HYRACKS_FRAME_SIZE);
+
+    private final int fieldCount = 5;
+    private final IBinaryComparator[] cmps = new IBinaryComparator[4];
+    private MultiComparator cmp;
+    private ITreeIndexFrameFactory interiorFrameFactory;
+    private ITreeIndexFrameFactory leafFrameFactory;
+    private final ITreeIndexMetaDataFrameFactory metaFrameFactory = new LIFOMetaDataFrameFactory();
+
+    private ByteBuffer hyracksFrame;
+    private final FrameTupleAppender appender = new FrameTupleAppender(HYRACKS_FRAME_SIZE);
+    private final ArrayTupleBuilder tb = new ArrayTupleBuilder(fieldCount);
+    private IFrameTupleAccessor accessor;
+    private final FrameTupleReference tuple = new FrameTupleReference();
+
+    @Test
+    public void knnSearchTest() throws Exception {
+        TestStorageManagerComponentHolder.init(PAGE_SIZE, NUM_PAGES, MAX_OPEN_FILES);
+        IBufferCache bufferCache = TestStorageManagerComponentHolder.getBufferCache(ctx);
+        IFileMapProvider fmp = TestStorageManagerComponentHolder.getFileMapProvider(ctx);
+        init();
+
+        Random rnd = new Random(50);
+        double[][] recs = new double[NUM_TUPLES][];
+        for (int i = 0; i < NUM_TUPLES; i++) {
+            double x = rnd.nextDouble();
+            double y = rnd.nextDouble();
+            recs[i] = new double[] { x, y, x + rnd.nextDouble() / 1000, y + rnd.nextDouble() / 1000 };
+        }
+        int fileId = createFile(bufferCache, fmp, fileName + "-knn");
+        RTree rtree = createRTree(bufferCache, fileId);
+        ITreeIndexAccessor indexAccessor = rtree.createAccessor();
+        for (int i = 0; i < NUM_TUPLES; i++) {
+            indexAccessor.insert(createTuple(recs[i], i));
+        }
+
+        RTreeKNNSearchCursor knnCursor = new RTreeKNNSearchCursor(
+                (IRTreeInteriorFrame) interiorFrameFactory.createFrame(),
+                (IRTreeLeafFrame) leafFrameFactory.createFrame());
+        long knnTime = 0;
+        long rangeTime = 0;
+        for (int q = 0; q < NUM_QUERIES; q++) {
+            double[] point = new double[] { rnd.nextDouble(), rnd.nextDouble() };
+            double[] expected = bruteForce(recs, point, K);
+
+            long start = System.currentTimeMillis();
+            List<Integer> knnResults = knnSearch(indexAccessor, knnCursor, point, K);
+            knnTime += System.currentTimeMillis() - start;
+            start = System.currentTimeMillis();
+            List<Integer> rangeResults = growingRangeSearch(indexAccessor, recs, point, K);
+            rangeTime += System.currentTimeMillis() - start;
+
+            Assert.assertEquals(K, knnResults.size());
+            for (int i = 0; i < K; i++) {
+                Assert.assertEquals(expected[i], distance(recs[knnResults.get(i)], point));
+                Assert.assertEquals(expected[i], distance(recs[rangeResults.get(i)], point));
+            }
+        }
+
+        // a rectangle containing the point is at distance 0
+        double[] point = new double[] { (recs[7][0] + recs[7][2]) / 2, (recs[7][1] + recs[7][3]) / 2 };
+        Assert.assertEquals(7, knnSearch(indexAccessor, knnCursor, point, 1).get(0).intValue());
+        Assert.assertEquals(0.0, knnCursor.getDistance());
+        Assert.assertTrue(knnSearch(indexAccessor, knnCursor, point, 0).isEmpty());
+
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info(NUM_QUERIES + " searches for the " + K + " nearest of " + NUM_TUPLES
+                    + " rectangles: k-NN search " + knnTime + "ms, growing range searches " + rangeTime + "ms");
+        }
+
+        rtree.close();
+        bufferCache.closeFile(fileId);
+        bufferCache.close();
+    }
+
+    @Test
+    public void smallTreeTest() throws Exception {
+        TestStorageManagerComponentHolder.init(PAGE_SIZE, NUM_PAGES, MAX_OPEN_FILES);
+        IBufferCache bufferCache = TestStorageManagerComponentHolder.getBufferCache(ctx);
+        IFileMapProvider fmp = TestStorageManagerComponentHolder.getFileMapProvider(ctx);
+        init();
+
+        int fileId = createFile(bufferCache, fmp, fileName + "-knn-small");
+        RTree rtree = createRTree(bufferCache, fileId);
+        ITreeIndexAccessor indexAccessor = rtree.createAccessor();
+        RTreeKNNSearchCursor knnCursor = new RTreeKNNSearchCursor(
+                (IRTreeInteriorFrame) interiorFrameFactory.createFrame(),
+                (IRTreeLeafFrame) leafFrameFactory.createFrame());
+        double[] point = new double[] { 0.0, 0.0 };
+        Assert.assertTrue(knnSearch(indexAccessor, knnCursor, point, K).isEmpty());
+
+        // fewer tuples than k, all in the root leaf
+        indexAccessor.insert(createTuple(new double[] { 3.0, 3.0, 4.0, 4.0 }, 0));
+        indexAccessor.insert(createTuple(new double[] { -1.0, 1.0, 1.0, 2.0 }, 1));
+        indexAccessor.insert(createTuple(new double[] { 2.0, -2.0, 2.0, -1.0 }, 2));
+        Assert.assertEquals(Arrays.asList(1, 2, 0), knnSearch(indexAccessor, knnCursor, point, K));
+        Assert.assertEquals(18.0, knnCursor.getDistance());
+
+        rtree.close();
+        bufferCache.closeFile(fileId);
+        bufferCache.close();
+    }
+
+    private void init() {
+        cmps[0] = PointableBinaryComparatorFactory.of(DoublePointable.FACTORY).createBinaryComparator();
+        cmps[1] = cmps[0];
+        cmps[2] = cmps[0];
+        cmps[3] = cmps[0];
+        cmp = new MultiComparator(cmps);
+
+        ITypeTraits[] typeTraits = new ITypeTraits[fieldCount];
+        typeTraits[0] = DoublePointable.TYPE_TRAITS;
+        typeTraits[1] = DoublePointable.TYPE_TRAITS;
+        typeTraits[2] = DoublePointable.TYPE_TRAITS;
+        typeTraits[3] = DoublePointable.TYPE_TRAITS;
+        typeTraits[4] = IntegerPointable.TYPE_TRAITS;
+        IPrimitiveValueProviderFactory[] valueProviderFactories = RTreeUtils.createPrimitiveValueProviderFactories(
+                cmps.length, DoublePointable.FACTORY);
+        RTreeTypeAwareTupleWriterFactory tupleWriterFactory = new RTreeTypeAwareTupleWriterFactory(typeTraits);
+        interiorFrameFactory = new RTreeNSMInteriorFrameFactory(tupleWriterFactory, valueProviderFactories);
+        leafFrameFactory = new RTreeNSMLeafFrameFactory(tupleWriterFactory, valueProviderFactories);
+
+        hyracksFrame = ctx.allocateFrame();
+        @SuppressWarnings("rawtypes")
+        ISerializerDeserializer[] recDescSers = { DoubleSerializerDeserializer.INSTANCE,
+                DoubleSerializerDeserializer.INSTANCE, DoubleSerializerDeserializer.INSTANCE,
+                DoubleSerializerDeserializer.INSTANCE, IntegerSerializerDeserializer.INSTANCE };
+        accessor = new FrameTupleAccessor(ctx.getFrameSize(), new RecordDescriptor(recDescSers));
+        accessor.reset(hyracksFrame);
+    }
+
+    private int createFile(IBufferCache bufferCache, IFileMapProvider fmp, String name) throws Exception {
+        File f = new File(name);
+        f.deleteOnExit();
+        FileReference file = new FileReference(f);
+        bufferCache.createFile(file);
+        int fileId = fmp.lookupFileId(file);
+        bufferCache.openFile(fileId);
+        return fileId;
+    }
+
+    private RTree createRTree(IBufferCache bufferCache, int fileId) throws Exception {
+        IFreePageManager freePageManager = new LinkedListFreePageManager(bufferCache, fileId, 0, metaFrameFactory);
+        RTree rtree = new RTree(bufferCache, fieldCount, cmp, freePageManager, interiorFrameFactory, leafFrameFactory);
+        rtree.create(fileId);
+        rtree.open(fileId);
+        return rtree;
+    }
+
+    private ITupleReference createTuple(double[] rec, int pk) throws Exception {
+        DataOutput dos = tb.getDataOutput();
+        tb.reset();
+        for (int i = 0; i < rec.length; i++) {
+            DoubleSerializerDeserializer.INSTANCE.serialize(rec[i], dos);
+            tb.addFieldEndOffset();
+        }
+        IntegerSerializerDeserializer.INSTANCE.serialize(pk, dos);
+        tb.addFieldEndOffset();
+        appender.reset(hyracksFrame, true);
+        appender.append(tb.getFieldEndOffsets(), tb.getByteArray(), 0, tb.getSize());
+        tuple.reset(accessor, 0);
+        return tuple;
+    }
+
+    private List<Integer> knnSearch(ITreeIndexAccessor indexAccessor, RTreeKNNSearchCursor knnCursor,
+            double[] point, int k) throws Exception {
+        // the point fields go first, as in the input tuples of the k-NN search operator
+        ITupleReference key = createTuple(new double[] { point[0], point[1], 0.0, 0.0 }, -1);
+        knnCursor.reset();
+        indexAccessor.search(knnCursor, new KNNSearchPredicate(key, k, cmp));
+        List<Integer> results = new ArrayList<Integer>();
+        while (knnCursor.hasNext()) {
+            knnCursor.next();
+            ITupleReference frameTuple = knnCursor.getTuple();
+            results.add(IntegerSerializerDeserializer.getInt(frameTuple.getFieldData(4), frameTuple.getFieldStart(4)));
+        }
+        return results;
+    }
+
+    /**
+     * Finds the k nearest rectangles the way it is done without a k-NN search:
+     * range searches over a square around the point that doubles in size until
+     * it holds k rectangles, and then one over the square that holds the circle
+     * through the k-th of them, which may hold closer rectangles than the
+     * squares before.
+     */
+    private List<Integer> growingRangeSearch(ITreeIndexAccessor indexAccessor, final double[][] recs,
+            final double[] point, int k) throws Exception {
+        double halfSide = 0.001;
+        List<Integer> results = rangeSearch(indexAccessor, point, halfSide);
+        while (results.size() < k) {
+            halfSide *= 2;
+            results = rangeSearch(indexAccessor, point, halfSide);
+        }
+        sortByDistance(results, recs, point);
+        results = rangeSearch(indexAccessor, point, Math.sqrt(distance(recs[results.get(k - 1)], point)));
+        sortByDistance(results, recs, point);
+        return results.subList(0, k);
+    }
+
+    private List<Integer> rangeSearch(ITreeIndexAccessor indexAccessor, double[] point, double halfSide)
+            throws Exception {
+        ITupleReference key = createTuple(new double[] { point[0] - halfSide, point[1] - halfSide,
+                point[0] + halfSide, point[1] + halfSide }, -1);
+        ITreeIndexCursor searchCursor = new RTreeSearchCursor((IRTreeInteriorFrame) interiorFrameFactory.createFrame(),
+                (IRTreeLeafFrame) leafFrameFactory.createFrame());
+        indexAccessor.search(searchCursor, new SearchPredicate(key, cmp));
+        List<Integer> results = new ArrayList<Integer>();
+        try {
+            while (searchCursor.hasNext()) {
+                searchCursor.next();
+                ITupleReference frameTuple = searchCursor.getTuple();
+                results.add(IntegerSerializerDeserializer.getInt(frameTuple.getFieldData(4),
+                        frameTuple.getFieldStart(4)));
+            }
+        } finally {
+            searchCursor.close();
+        }
+        return results;
+    }
+
+    private static void sortByDistance(List<Integer> results, final double[][] recs, final double[] point) {
+        Collections.sort(results, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(distance(recs[a], point), distance(recs[b], point));
+            }
+        });
+    }
+
+    private static double[] bruteForce(double[][] recs, double[] point, int k) {
+        double[] distances = new double[recs.length];
+        for (int i = 0; i < recs.length; i++) {
+            distances[i] = distance(recs[i], point);
+        }
+        Arrays.sort(distances);
+        return Arrays.copyOf(distances, k);
+    }
+
+    /**
+     * Gets the square of the distance between the rectangle and the point.
+     */
+    private static double distance(double[] rec, double[] point) {
+        double distance = 0.0;
+        for (int i = 0; i < 2; i++) {
+            double d = Math.max(0.0, Math.max(rec[i] - point[i], point[i] - rec[i + 2]));
+            distance += d * d;
+        }
+        return distance;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.common;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.uci.ics.hyracks.api.context.IHyracksTaskContext;
+import edu.uci.ics.hyracks.api.io.FileReference;
+import edu.uci.ics.hyracks.storage.common.buffercache.IBufferCache;
+import edu.uci.ics.hyracks.storage.common.buffercache.ICachedPage;
+import edu.uci.ics.hyracks.storage.common.file.BufferedFileHandle;
+import edu.uci.ics.hyracks.storage.common.file.IFileMapProvider;
+import edu.uci.ics.hyracks.test.support.TestStorageManagerComponentHolder;
+import edu.uci.ics.hyracks.test.support.TestUtils;
+
+/**
+ * Measures the throughput of concurrent pin/unpin calls on pages that are
+ * already resident in the buffer cache, with 1 to N threads. Every thread pins
+ * random pages of a working set that fits in the cache, takes a read latch,
+ * reads an int from the page, and unpins it again. The throughput for each
+ * thread count is logged.
+ */
+public class BufferCachePinPerfTest {
+    private static final Logger LOGGER = Logger.getLogger(BufferCachePinPerfTest.class.getName());
+
+    protected static final List<String> openedFiles = new ArrayList<String>();
+    protected static final SimpleDateFormat simpleDateFormat = new SimpleDateFormat("ddMMyy-hhmmssSS");
+    protected static final String tmpDir = System.getProperty("java.io.tmpdir");
+    protected static final String sep = System.getProperty("file.separator");
+
+    private static final int PAGE_SIZE = 256;
+    private static final int NUM_PAGES = 128;
+    private static final int NUM_WORKING_SET_PAGES = 64;
+    private static final int MAX_OPEN_FILES = 10;
+    private static final int HYRACKS_FRAME_SIZE = PAGE_SIZE;
+    private static final int OPS_PER_THREAD = 200000;
+    private IHyracksTaskContext ctx = TestUtils.create(HYRACKS_FRAME_SIZE);
+
+    private String getFileName() {
+        String fileName = tmpDir + sep + simpleDateFormat.format(new Date()) + openedFiles.size();
+        openedFiles.add(fileName);
+        return fileName;
+    }
+
+    @Test
+    public void concurrentPinUnpinTest() throws Exception {
+        TestStorageManagerComponentHolder.init(PAGE_SIZE, NUM_PAGES, MAX_OPEN_FILES);
+        final IBufferCache bufferCache = TestStorageManagerComponentHolder.getBufferCache(ctx);
+        IFileMapProvider fmp = TestStorageManagerComponentHolder.getFileMapProvider(ctx);
+        FileReference file = new FileReference(new File(getFileName()));
+        bufferCache.createFile(file);
+        final int fileId = fmp.lookupFileId(file);
+        bufferCache.openFile(fileId);
+
+        // bring the working set into the cache
+        for (int i = 0; i < NUM_WORKING_SET_PAGES; i++) {
+            ICachedPage page = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, i), true);
+            page.acquireWriteLatch();
+            try {
+                page.getBuffer().putInt(0, i);
+            } finally {
+                page.releaseWriteLatch();
+                bufferCache.unpin(page);
+            }
+        }
+
+        int maxThreads = Runtime.getRuntime().availableProcessors() * 2;
+        for (int numThreads = 1; numThreads <= maxThreads; numThreads *= 2) {
+            final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+            Thread[] threads = new Thread[numThreads];
+            for (int i = 0; i < numThreads; i++) {
+                final Random rnd = new Random(50 + i);
+                threads[i] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int j = 0; j < OPS_PER_THREAD; j++) {
+                                int pageId = rnd.nextInt(NUM_WORKING_SET_PAGES);
+                                ICachedPage page = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, pageId),
+                                        false);
+                                page.acquireReadLatch();
+                                try {
+                                    if (page.getBuffer().getInt(0) != pageId) {
+                                        throw new IllegalStateException("Pinned the wrong page: " + pageId);
+                                    }
+                                } finally {
+                                    page.releaseReadLatch();
+                                    bufferCache.unpin(page);
+                                }
+                            }
+                        } catch (Throwable t) {
+                            failure.compareAndSet(null, t);
+                        }
+                    }
+                };
+            }
+            long timeStart = System.nanoTime();
+            for (Thread t : threads) {
+                t.start();
+            }
+            for (Thread t : threads) {
+                t.join();
+            }
+            long timeEnd = System.nanoTime();
+            if (failure.get() != null) {
+                throw new Exception(failure.get());
+            }
+            double seconds = (timeEnd - timeStart) / 1000000000.0;
+            long totalOps = (long) numThreads * OPS_PER_THREAD;
+            if (LOGGER.isLoggable(Level.INFO)) {
+                LOGGER.info(numThreads + " threads: " + totalOps + " pin/unpin pairs in " + seconds + "s, "
+                        + (long) (totalOps / seconds) + " ops/s");
+            }
+        }
+
+        // all pins must have been released, so every page can be re-pinned
+        for (int i = 0; i < NUM_WORKING_SET_PAGES; i++) {
+            ICachedPage page = bufferCache.tryPin(BufferedFileHandle.getDiskPageId(fileId, i));
+            Assert.assertNotNull(page);
+            bufferCache.unpin(page);
+        }
+
+        bufferCache.closeFile(fileId);
+        bufferCache.close();
+    }
+
+    @AfterClass
+    public static void cleanup() throws Exception {
+        for (String s : openedFiles) {
+            File f = new File(s);
+            f.deleteOnExit();
+        }
+    }
+}
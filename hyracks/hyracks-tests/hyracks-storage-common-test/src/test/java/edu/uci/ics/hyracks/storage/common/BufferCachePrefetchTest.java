@@ -0,0 +1,294 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.common;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.uci.ics.hyracks.api.context.IHyracksTaskContext;
+import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
+import edu.uci.ics.hyracks.api.io.FileHandle;
+import edu.uci.ics.hyracks.api.io.FileReference;
+import edu.uci.ics.hyracks.api.io.IIOFuture;
+import edu.uci.ics.hyracks.api.io.IIOManager;
+import edu.uci.ics.hyracks.api.io.IODeviceHandle;
+import edu.uci.ics.hyracks.storage.common.buffercache.BufferCache;
+import edu.uci.ics.hyracks.storage.common.buffercache.ClockPageReplacementStrategy;
+import edu.uci.ics.hyracks.storage.common.buffercache.HeapBufferAllocator;
+import edu.uci.ics.hyracks.storage.common.buffercache.IBufferCache;
+import edu.uci.ics.hyracks.storage.common.buffercache.ICachedPage;
+import edu.uci.ics.hyracks.storage.common.file.BufferedFileHandle;
+import edu.uci.ics.hyracks.storage.common.smi.TransientFileMapManager;
+import edu.uci.ics.hyracks.test.support.TestUtils;
+
+/**
+ * Checks that pages read ahead with prefetch() are served to later pins
+ * without another read, and that prefetched pages which are never pinned
+ * can still be replaced and their file closed. Also checks that prefetches
+ * in flight are bounded across calls, and that a read that cannot be started
+ * leaves no pin behind.
+ */
+public class BufferCachePrefetchTest {
+    protected static final List<String> openedFiles = new ArrayList<String>();
+    protected static final SimpleDateFormat simpleDateFormat = new SimpleDateFormat("ddMMyy-hhmmssSS");
+    protected static final String tmpDir = System.getProperty("java.io.tmpdir");
+    protected static final String sep = System.getProperty("file.separator");
+
+    private static final int PAGE_SIZE = 256;
+    private static final int NUM_PAGES = 64;
+    private static final int MAX_OPEN_FILES = 10;
+    private static final int HYRACKS_FRAME_SIZE = PAGE_SIZE;
+    // prefetch() reads ahead at most an eighth of the cache
+    private static final int PREFETCH_PAGES = NUM_PAGES / 8;
+    private static final int NUM_FILE_PAGES = 4 * NUM_PAGES;
+
+    private IHyracksTaskContext ctx = TestUtils.create(HYRACKS_FRAME_SIZE);
+
+    private String getFileName() {
+        String fileName = tmpDir + sep + simpleDateFormat.format(new Date()) + openedFiles.size();
+        openedFiles.add(fileName);
+        return fileName;
+    }
+
+    private final TransientFileMapManager fileMapManager = new TransientFileMapManager();
+
+    @Test
+    public void prefetchTest() throws Exception {
+        int fileId = writeFile();
+        ReadCountingIOManager ioManager = new ReadCountingIOManager(ctx.getIOManager());
+        IBufferCache bufferCache = new BufferCache(ioManager, new HeapBufferAllocator(),
+                new ClockPageReplacementStrategy(), fileMapManager, PAGE_SIZE, NUM_PAGES, MAX_OPEN_FILES);
+        bufferCache.openFile(fileId);
+
+        // scan the file, reading ahead like a disk-order scan
+        int prefetchedPageId = -1;
+        for (int i = 0; i < NUM_FILE_PAGES; i++) {
+            if (i > prefetchedPageId) {
+                int prefetched = bufferCache.prefetch(BufferedFileHandle.getDiskPageId(fileId, i), PREFETCH_PAGES);
+                Assert.assertEquals(PREFETCH_PAGES, prefetched);
+                prefetchedPageId = i + prefetched - 1;
+            }
+            checkPage(bufferCache, fileId, i);
+        }
+        Assert.assertEquals(NUM_FILE_PAGES, ioManager.asyncReads.get());
+        Assert.assertEquals(0, ioManager.syncReads.get());
+
+        // resident pages are not read again
+        int prefetched = bufferCache.prefetch(BufferedFileHandle.getDiskPageId(fileId, NUM_FILE_PAGES - 1), 1);
+        Assert.assertEquals(1, prefetched);
+        Assert.assertEquals(NUM_FILE_PAGES, ioManager.asyncReads.get());
+
+        // prefetch pages that are never pinned, and make sure they do not stay pinned
+        for (int i = 0; i < NUM_PAGES; i += PREFETCH_PAGES) {
+            bufferCache.prefetch(BufferedFileHandle.getDiskPageId(fileId, i), PREFETCH_PAGES);
+        }
+        for (int i = 0; i < NUM_FILE_PAGES; i++) {
+            checkPage(bufferCache, fileId, i);
+        }
+
+        bufferCache.closeFile(fileId);
+        bufferCache.close();
+    }
+
+    @Test
+    public void outstandingPrefetchLimitTest() throws Exception {
+        int fileId = writeFile();
+        ReadCountingIOManager ioManager = new ReadCountingIOManager(ctx.getIOManager());
+        IBufferCache bufferCache = new BufferCache(ioManager, new HeapBufferAllocator(),
+                new ClockPageReplacementStrategy(), fileMapManager, PAGE_SIZE, NUM_PAGES, MAX_OPEN_FILES);
+        bufferCache.openFile(fileId);
+
+        // the reads do not complete until the gate opens
+        ioManager.readGate = new CountDownLatch(1);
+        Assert.assertEquals(PREFETCH_PAGES, bufferCache.prefetch(BufferedFileHandle.getDiskPageId(fileId, 0),
+                PREFETCH_PAGES));
+        // the first prefetch holds all the pages prefetches may take
+        Assert.assertEquals(0, bufferCache.prefetch(BufferedFileHandle.getDiskPageId(fileId, PREFETCH_PAGES),
+                PREFETCH_PAGES));
+        Assert.assertEquals(PREFETCH_PAGES, ioManager.asyncReads.get());
+
+        ioManager.readGate.countDown();
+        for (int i = 0; i < PREFETCH_PAGES; i++) {
+            checkPage(bufferCache, fileId, i);
+        }
+        // the completed prefetches no longer count
+        Assert.assertEquals(PREFETCH_PAGES, bufferCache.prefetch(BufferedFileHandle.getDiskPageId(fileId,
+                PREFETCH_PAGES), PREFETCH_PAGES));
+        Assert.assertEquals(2 * PREFETCH_PAGES, ioManager.asyncReads.get());
+        for (int i = PREFETCH_PAGES; i < 2 * PREFETCH_PAGES; i++) {
+            checkPage(bufferCache, fileId, i);
+        }
+        Assert.assertEquals(0, ioManager.syncReads.get());
+
+        bufferCache.closeFile(fileId);
+        bufferCache.close();
+    }
+
+    @Test
+    public void failedPrefetchTest() throws Exception {
+        int fileId = writeFile();
+        ReadCountingIOManager ioManager = new ReadCountingIOManager(ctx.getIOManager());
+        IBufferCache bufferCache = new BufferCache(ioManager, new HeapBufferAllocator(),
+                new ClockPageReplacementStrategy(), fileMapManager, PAGE_SIZE, NUM_PAGES, MAX_OPEN_FILES);
+        bufferCache.openFile(fileId);
+
+        ioManager.failAsyncReads = true;
+        try {
+            bufferCache.prefetch(BufferedFileHandle.getDiskPageId(fileId, 0), PREFETCH_PAGES);
+            Assert.fail("The prefetch did not fail.");
+        } catch (HyracksDataException e) {
+            // expected
+        }
+        ioManager.failAsyncReads = false;
+
+        // the page is read by the pin, and no prefetch slot was lost
+        checkPage(bufferCache, fileId, 0);
+        Assert.assertEquals(1, ioManager.syncReads.get());
+        Assert.assertEquals(PREFETCH_PAGES, bufferCache.prefetch(BufferedFileHandle.getDiskPageId(fileId, 1),
+                PREFETCH_PAGES));
+        for (int i = 1; i <= PREFETCH_PAGES; i++) {
+            checkPage(bufferCache, fileId, i);
+        }
+
+        // fails if the failed prefetch left a page pinned
+        bufferCache.closeFile(fileId);
+        bufferCache.close();
+    }
+
+    private void checkPage(IBufferCache bufferCache, int fileId, int pageId) throws HyracksDataException {
+        ICachedPage page = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, pageId), false);
+        page.acquireReadLatch();
+        try {
+            Assert.assertEquals(pageId, page.getBuffer().getInt(0));
+        } finally {
+            page.releaseReadLatch();
+            bufferCache.unpin(page);
+        }
+    }
+
+    /**
+     * Writes a file of NUM_FILE_PAGES pages, each of which starts with its
+     * page number.
+     */
+    private int writeFile() throws HyracksDataException {
+        IBufferCache writeCache = new BufferCache(ctx.getIOManager(), new HeapBufferAllocator(),
+                new ClockPageReplacementStrategy(), fileMapManager, PAGE_SIZE, NUM_PAGES, MAX_OPEN_FILES);
+        FileReference file = new FileReference(new File(getFileName()));
+        writeCache.createFile(file);
+        int fileId = fileMapManager.lookupFileId(file);
+        writeCache.openFile(fileId);
+        for (int i = 0; i < NUM_FILE_PAGES; i++) {
+            ICachedPage page = writeCache.pin(BufferedFileHandle.getDiskPageId(fileId, i), true);
+            page.acquireWriteLatch();
+            try {
+                page.getBuffer().putInt(0, i);
+            } finally {
+                page.releaseWriteLatch();
+                writeCache.unpin(page);
+            }
+        }
+        writeCache.closeFile(fileId);
+        writeCache.close();
+        return fileId;
+    }
+
+    @AfterClass
+    public static void cleanup() throws Exception {
+        for (String s : openedFiles) {
+            File f = new File(s);
+            f.deleteOnExit();
+        }
+    }
+
+    private static class ReadCountingIOManager implements IIOManager {
+        private final IIOManager ioManager;
+        private final AtomicInteger syncReads = new AtomicInteger();
+        private final AtomicInteger asyncReads = new AtomicInteger();
+        private volatile boolean failAsyncReads;
+        private volatile CountDownLatch readGate;
+
+        public ReadCountingIOManager(IIOManager ioManager) {
+            this.ioManager = ioManager;
+        }
+
+        @Override
+        public List<IODeviceHandle> getIODevices() {
+            return ioManager.getIODevices();
+        }
+
+        @Override
+        public FileHandle open(FileReference fileRef, FileReadWriteMode rwMode, FileSyncMode syncMode)
+                throws HyracksDataException {
+            return ioManager.open(fileRef, rwMode, syncMode);
+        }
+
+        @Override
+        public int syncWrite(FileHandle fHandle, long offset, ByteBuffer data) throws HyracksDataException {
+            return ioManager.syncWrite(fHandle, offset, data);
+        }
+
+        @Override
+        public int syncRead(FileHandle fHandle, long offset, ByteBuffer data) throws HyracksDataException {
+            syncReads.incrementAndGet();
+            return ioManager.syncRead(fHandle, offset, data);
+        }
+
+        @Override
+        public IIOFuture asyncWrite(FileHandle fHandle, long offset, ByteBuffer data) {
+            return ioManager.asyncWrite(fHandle, offset, data);
+        }
+
+        @Override
+        public IIOFuture asyncRead(FileHandle fHandle, long offset, ByteBuffer data) {
+            if (failAsyncReads) {
+                throw new IllegalStateException("No reads can be started.");
+            }
+            asyncReads.incrementAndGet();
+            final CountDownLatch gate = readGate;
+            final IIOFuture future = ioManager.asyncRead(fHandle, offset, data);
+            if (gate == null) {
+                return future;
+            }
+            return new IIOFuture() {
+                @Override
+                public int synchronize() throws HyracksDataException, InterruptedException {
+                    gate.await();
+                    return future.synchronize();
+                }
+
+                @Override
+                public boolean isComplete() {
+                    return gate.getCount() == 0 && future.isComplete();
+                }
+            };
+        }
+
+        @Override
+        public void close(FileHandle fHandle) throws HyracksDataException {
+            ioManager.close(fHandle);
+        }
+    }
+}
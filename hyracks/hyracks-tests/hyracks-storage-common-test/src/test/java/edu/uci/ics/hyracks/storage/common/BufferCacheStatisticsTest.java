@@ -0,0 +1,141 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.common;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.uci.ics.hyracks.api.context.IHyracksTaskContext;
+import edu.uci.ics.hyracks.api.io.FileReference;
+import edu.uci.ics.hyracks.storage.common.buffercache.BufferCache;
+import edu.uci.ics.hyracks.storage.common.buffercache.BufferCacheStatistics;
+import edu.uci.ics.hyracks.storage.common.buffercache.BufferCacheStatistics.FileStatistics;
+import edu.uci.ics.hyracks.storage.common.buffercache.ClockPageReplacementStrategy;
+import edu.uci.ics.hyracks.storage.common.buffercache.HeapBufferAllocator;
+import edu.uci.ics.hyracks.storage.common.buffercache.IBufferCache;
+import edu.uci.ics.hyracks.storage.common.buffercache.ICachedPage;
+import edu.uci.ics.hyracks.storage.common.file.BufferedFileHandle;
+import edu.uci.ics.hyracks.storage.common.smi.TransientFileMapManager;
+import edu.uci.ics.hyracks.test.support.TestUtils;
+
+/**
+ * Checks the per-file hit, miss, read, write and eviction counts of a buffer
+ * cache against a known sequence of pins, and that they are reported as
+ * counters.
+ */
+public class BufferCacheStatisticsTest {
+    protected static final List<String> openedFiles = new ArrayList<String>();
+    protected static final SimpleDateFormat simpleDateFormat = new SimpleDateFormat("ddMMyy-hhmmssSS");
+    protected static final String tmpDir = System.getProperty("java.io.tmpdir");
+    protected static final String sep = System.getProperty("file.separator");
+
+    private static final int PAGE_SIZE = 256;
+    private static final int NUM_PAGES = 32;
+    private static final int MAX_OPEN_FILES = 10;
+    private static final int HYRACKS_FRAME_SIZE = PAGE_SIZE;
+    private static final int NUM_FILE_PAGES = 4 * NUM_PAGES;
+
+    private IHyracksTaskContext ctx = TestUtils.create(HYRACKS_FRAME_SIZE);
+
+    private String getFileName() {
+        String fileName = tmpDir + sep + simpleDateFormat.format(new Date()) + openedFiles.size();
+        openedFiles.add(fileName);
+        return fileName;
+    }
+
+    @Test
+    public void statisticsTest() throws Exception {
+        TransientFileMapManager fileMapManager = new TransientFileMapManager();
+        IBufferCache bufferCache = new BufferCache(ctx.getIOManager(), new HeapBufferAllocator(),
+                new ClockPageReplacementStrategy(), fileMapManager, PAGE_SIZE, NUM_PAGES, MAX_OPEN_FILES);
+        BufferCacheStatistics statistics = bufferCache.getStatistics();
+
+        FileReference hotFile = new FileReference(new File(getFileName()));
+        bufferCache.createFile(hotFile);
+        int hotFileId = fileMapManager.lookupFileId(hotFile);
+        bufferCache.openFile(hotFileId);
+        FileReference scanFile = new FileReference(new File(getFileName()));
+        bufferCache.createFile(scanFile);
+        int scanFileId = fileMapManager.lookupFileId(scanFile);
+        bufferCache.openFile(scanFileId);
+
+        // new pages are neither hits nor misses
+        for (int i = 0; i < NUM_FILE_PAGES; i++) {
+            ICachedPage page = bufferCache.pin(BufferedFileHandle.getDiskPageId(scanFileId, i), true);
+            page.acquireWriteLatch();
+            try {
+                page.getBuffer().putInt(0, i);
+            } finally {
+                page.releaseWriteLatch();
+                bufferCache.unpin(page);
+            }
+        }
+        FileStatistics scanStats = statistics.getFileStatistics(scanFileId);
+        Assert.assertEquals(0, scanStats.getHits());
+        Assert.assertEquals(0, scanStats.getMisses());
+        Assert.assertTrue(scanStats.getEvictions() >= NUM_FILE_PAGES - NUM_PAGES);
+
+        // the hot file is pinned over and over, the scan file is read once
+        ICachedPage hotPage = bufferCache.pin(BufferedFileHandle.getDiskPageId(hotFileId, 0), true);
+        bufferCache.unpin(hotPage);
+        long scanEvictions = scanStats.getEvictions();
+        for (int i = 0; i < NUM_FILE_PAGES; i++) {
+            hotPage = bufferCache.pin(BufferedFileHandle.getDiskPageId(hotFileId, 0), false);
+            ICachedPage page = bufferCache.pin(BufferedFileHandle.getDiskPageId(scanFileId, i), false);
+            Assert.assertEquals(i, page.getBuffer().getInt(0));
+            bufferCache.unpin(page);
+            bufferCache.unpin(hotPage);
+        }
+        FileStatistics hotStats = statistics.getFileStatistics(hotFileId);
+        Assert.assertEquals(NUM_FILE_PAGES, hotStats.getHits());
+        Assert.assertEquals(0, hotStats.getMisses());
+        Assert.assertEquals(0, hotStats.getEvictions());
+        Assert.assertEquals(NUM_FILE_PAGES, scanStats.getMisses() + scanStats.getHits());
+        Assert.assertEquals(scanStats.getMisses(), scanStats.getReads());
+        Assert.assertTrue(scanStats.getMisses() >= NUM_FILE_PAGES - NUM_PAGES);
+        Assert.assertTrue(scanStats.getEvictions() > scanEvictions);
+
+        bufferCache.closeFile(hotFileId);
+        bufferCache.closeFile(scanFileId);
+
+        Map<String, Long> counters = new HashMap<String, Long>();
+        statistics.getCounters(counters);
+        String prefix = "buffer-cache." + hotFile.getFile().getAbsolutePath() + ".";
+        Assert.assertEquals(NUM_FILE_PAGES, counters.get(prefix + "hits").longValue());
+        Assert.assertTrue(counters.containsKey("buffer-cache.dirty-pages"));
+
+        bufferCache.close();
+        // every page of the scan file was written back once
+        Assert.assertEquals(NUM_FILE_PAGES, scanStats.getWrites());
+    }
+
+    @AfterClass
+    public static void cleanup() throws Exception {
+        for (String s : openedFiles) {
+            File f = new File(s);
+            f.deleteOnExit();
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.common;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.uci.ics.hyracks.api.context.IHyracksTaskContext;
+import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
+import edu.uci.ics.hyracks.api.io.FileHandle;
+import edu.uci.ics.hyracks.api.io.FileReference;
+import edu.uci.ics.hyracks.api.io.IIOFuture;
+import edu.uci.ics.hyracks.api.io.IIOManager;
+import edu.uci.ics.hyracks.api.io.IODeviceHandle;
+import edu.uci.ics.hyracks.storage.common.buffercache.BufferCache;
+import edu.uci.ics.hyracks.storage.common.buffercache.ClockPageReplacementStrategy;
+import edu.uci.ics.hyracks.storage.common.buffercache.HeapBufferAllocator;
+import edu.uci.ics.hyracks.storage.common.buffercache.IBufferCache;
+import edu.uci.ics.hyracks.storage.common.buffercache.ICachedPage;
+import edu.uci.ics.hyracks.storage.common.file.BufferedFileHandle;
+import edu.uci.ics.hyracks.storage.common.smi.TransientFileMapManager;
+import edu.uci.ics.hyracks.test.support.TestUtils;
+
+/**
+ * Writes a file that is several times larger than the buffer cache, so that
+ * the dirty pages have to be written back by the flushers while the file is
+ * written, and checks that every page reads back correctly through a new
+ * buffer cache. Also checks that the flushers coalesced adjacent dirty pages
+ * into larger writes. Also checks that dirty pages below the high-water mark
+ * are only written when the cache is closed, and that closing the cache while
+ * a dirty page is still latched fails instead of waiting forever.
+ */
+public class BufferCacheWriteBackTest {
+    private static final Logger LOGGER = Logger.getLogger(BufferCacheWriteBackTest.class.getName());
+
+    protected static final List<String> openedFiles = new ArrayList<String>();
+    protected static final SimpleDateFormat simpleDateFormat = new SimpleDateFormat("ddMMyy-hhmmssSS");
+    protected static final String tmpDir = System.getProperty("java.io.tmpdir");
+    protected static final String sep = System.getProperty("file.separator");
+
+    private static final int PAGE_SIZE = 256;
+    private static final int NUM_PAGES = 32;
+    private static final int MAX_OPEN_FILES = 10;
+    private static final int HYRACKS_FRAME_SIZE = PAGE_SIZE;
+    private static final int FLUSHERS_PER_IO_DEVICE = 2;
+    private static final float DIRTY_PAGE_HIGH_WATER_MARK = 0.25f;
+    private static final int NUM_FILE_PAGES = 1000;
+    // fewer than the high-water mark of NUM_PAGES * DIRTY_PAGE_HIGH_WATER_MARK pages
+    private static final int NUM_IDLE_PAGES = 4;
+    private static final int IDLE_TIME = 1500;
+
+    private IHyracksTaskContext ctx = TestUtils.create(HYRACKS_FRAME_SIZE);
+
+    private String getFileName() {
+        String fileName = tmpDir + sep + simpleDateFormat.format(new Date()) + openedFiles.size();
+        openedFiles.add(fileName);
+        return fileName;
+    }
+
+    @Test
+    public void writeBackTest() throws Exception {
+        WriteCountingIOManager ioManager = new WriteCountingIOManager(ctx.getIOManager());
+        TransientFileMapManager fileMapManager = new TransientFileMapManager();
+        // configured the way a Node Controller passes its options to applications
+        Properties nodeProperties = new Properties();
+        nodeProperties.setProperty(BufferCache.FLUSHERS_PER_IO_DEVICE_NODE_PROPERTY,
+                String.valueOf(FLUSHERS_PER_IO_DEVICE));
+        nodeProperties.setProperty(BufferCache.DIRTY_PAGE_HIGH_WATER_MARK_NODE_PROPERTY,
+                String.valueOf(DIRTY_PAGE_HIGH_WATER_MARK));
+        IBufferCache bufferCache = new BufferCache(ioManager, new HeapBufferAllocator(),
+                new ClockPageReplacementStrategy(), fileMapManager, PAGE_SIZE, NUM_PAGES, MAX_OPEN_FILES,
+                nodeProperties);
+        FileReference file = new FileReference(new File(getFileName()));
+        bufferCache.createFile(file);
+        int fileId = fileMapManager.lookupFileId(file);
+        bufferCache.openFile(fileId);
+
+        for (int i = 0; i < NUM_FILE_PAGES; i++) {
+            ICachedPage page = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, i), true);
+            page.acquireWriteLatch();
+            try {
+                page.getBuffer().putInt(0, i);
+                page.getBuffer().putInt(PAGE_SIZE - 4, -i);
+            } finally {
+                page.releaseWriteLatch();
+                bufferCache.unpin(page);
+            }
+        }
+
+        bufferCache.closeFile(fileId);
+        bufferCache.close();
+
+        int asyncWrites = ioManager.asyncWrites.get();
+        int asyncWritePages = ioManager.asyncWriteBytes.get() / PAGE_SIZE;
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info(asyncWritePages + " pages written back with " + asyncWrites + " writes");
+        }
+        Assert.assertTrue(asyncWritePages > asyncWrites);
+
+        // read the file back through a cache that has not seen it yet
+        IBufferCache readCache = new BufferCache(ctx.getIOManager(), new HeapBufferAllocator(),
+                new ClockPageReplacementStrategy(), fileMapManager, PAGE_SIZE, NUM_PAGES, MAX_OPEN_FILES);
+        readCache.openFile(fileId);
+        for (int i = 0; i < NUM_FILE_PAGES; i++) {
+            ICachedPage page = readCache.pin(BufferedFileHandle.getDiskPageId(fileId, i), false);
+            page.acquireReadLatch();
+            try {
+                Assert.assertEquals(i, page.getBuffer().getInt(0));
+                Assert.assertEquals(-i, page.getBuffer().getInt(PAGE_SIZE - 4));
+            } finally {
+                page.releaseReadLatch();
+                readCache.unpin(page);
+            }
+        }
+        readCache.closeFile(fileId);
+        readCache.close();
+    }
+
+    @Test
+    public void belowHighWaterMarkTest() throws Exception {
+        WriteCountingIOManager ioManager = new WriteCountingIOManager(ctx.getIOManager());
+        TransientFileMapManager fileMapManager = new TransientFileMapManager();
+        IBufferCache bufferCache = createBufferCache(ioManager, fileMapManager);
+        FileReference file = new FileReference(new File(getFileName()));
+        bufferCache.createFile(file);
+        int fileId = fileMapManager.lookupFileId(file);
+        bufferCache.openFile(fileId);
+        for (int i = 0; i < NUM_IDLE_PAGES; i++) {
+            ICachedPage page = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, i), true);
+            page.acquireWriteLatch();
+            try {
+                page.getBuffer().putInt(0, i);
+            } finally {
+                page.releaseWriteLatch();
+                bufferCache.unpin(page);
+            }
+        }
+
+        // no flush has been requested, so the flushers leave the pages alone however long they wait
+        Thread.sleep(IDLE_TIME);
+        Assert.assertEquals(0, ioManager.asyncWrites.get());
+        Assert.assertEquals(NUM_IDLE_PAGES, bufferCache.getStatistics().getDirtyPageCount());
+
+        bufferCache.close();
+        IBufferCache readCache = new BufferCache(ctx.getIOManager(), new HeapBufferAllocator(),
+                new ClockPageReplacementStrategy(), fileMapManager, PAGE_SIZE, NUM_PAGES, MAX_OPEN_FILES);
+        readCache.openFile(fileId);
+        for (int i = 0; i < NUM_IDLE_PAGES; i++) {
+            ICachedPage page = readCache.pin(BufferedFileHandle.getDiskPageId(fileId, i), false);
+            page.acquireReadLatch();
+            try {
+                Assert.assertEquals(i, page.getBuffer().getInt(0));
+            } finally {
+                page.releaseReadLatch();
+                readCache.unpin(page);
+            }
+        }
+        readCache.closeFile(fileId);
+        readCache.close();
+    }
+
+    @Test
+    public void closeWithLatchedPageTest() throws Exception {
+        TransientFileMapManager fileMapManager = new TransientFileMapManager();
+        IBufferCache bufferCache = createBufferCache(ctx.getIOManager(), fileMapManager);
+        FileReference file = new FileReference(new File(getFileName()));
+        bufferCache.createFile(file);
+        int fileId = fileMapManager.lookupFileId(file);
+        bufferCache.openFile(fileId);
+        ICachedPage page = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, 0), true);
+        page.acquireWriteLatch();
+        page.getBuffer().putInt(0, 1);
+        try {
+            bufferCache.close();
+            Assert.fail("Closed the cache while a dirty page was latched.");
+        } catch (IllegalStateException e) {
+            // expected, the page can never be written
+        } finally {
+            page.releaseWriteLatch();
+        }
+    }
+
+    private IBufferCache createBufferCache(IIOManager ioManager, TransientFileMapManager fileMapManager) {
+        Properties nodeProperties = new Properties();
+        nodeProperties.setProperty(BufferCache.FLUSHERS_PER_IO_DEVICE_NODE_PROPERTY,
+                String.valueOf(FLUSHERS_PER_IO_DEVICE));
+        nodeProperties.setProperty(BufferCache.DIRTY_PAGE_HIGH_WATER_MARK_NODE_PROPERTY,
+                String.valueOf(DIRTY_PAGE_HIGH_WATER_MARK));
+        return new BufferCache(ioManager, new HeapBufferAllocator(), new ClockPageReplacementStrategy(),
+                fileMapManager, PAGE_SIZE, NUM_PAGES, MAX_OPEN_FILES, nodeProperties);
+    }
+
+    @AfterClass
+    public static void cleanup() throws Exception {
+        for (String s : openedFiles) {
+            File f = new File(s);
+            f.deleteOnExit();
+        }
+    }
+
+    private static class WriteCountingIOManager implements IIOManager {
+        private final IIOManager ioManager;
+        private final AtomicInteger asyncWrites = new AtomicInteger();
+        private final AtomicInteger asyncWriteBytes = new AtomicInteger();
+
+        public WriteCountingIOManager(IIOManager ioManager) {
+            this.ioManager = ioManager;
+        }
+
+        @Override
+        public List<IODeviceHandle> getIODevices() {
+            return ioManager.getIODevices();
+        }
+
+        @Override
+        public FileHandle open(FileReference fileRef, FileReadWriteMode rwMode, FileSyncMode syncMode)
+                throws HyracksDataException {
+            return ioManager.open(fileRef, rwMode, syncMode);
+        }
+
+        @Override
+        public int syncWrite(FileHandle fHandle, long offset, ByteBuffer data) throws HyracksDataException {
+            return ioManager.syncWrite(fHandle, offset, data);
+        }
+
+        @Override
+        public int syncRead(FileHandle fHandle, long offset, ByteBuffer data) throws HyracksDataException {
+            return ioManager.syncRead(fHandle, offset, data);
+        }
+
+        @Override
+        public IIOFuture asyncWrite(FileHandle fHandle, long offset, ByteBuffer data) {
+            asyncWrites.incrementAndGet();
+            asyncWriteBytes.addAndGet(data.remaining());
+            return ioManager.asyncWrite(fHandle, offset, data);
+        }
+
+        @Override
+        public IIOFuture asyncRead(FileHandle fHandle, long offset, ByteBuffer data) {
+            return ioManager.asyncRead(fHandle, offset, data);
+        }
+
+        @Override
+        public void close(FileHandle fHandle) throws HyracksDataException {
+            ioManager.close(fHandle);
+        }
+    }
+}
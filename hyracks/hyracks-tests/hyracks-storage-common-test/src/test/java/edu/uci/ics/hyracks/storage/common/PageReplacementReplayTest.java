@@ -0,0 +1,183 @@
+/*
+ * Copyright 2009-2010 by The Regents of the University of California
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * you may obtain a copy of the License from
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.hyracks.storage.common;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.uci.ics.hyracks.api.context.IHyracksTaskContext;
+import edu.uci.ics.hyracks.api.exceptions.HyracksDataException;
+import edu.uci.ics.hyracks.api.io.FileHandle;
+import edu.uci.ics.hyracks.api.io.FileReference;
+import edu.uci.ics.hyracks.api.io.IIOFuture;
+import edu.uci.ics.hyracks.api.io.IIOManager;
+import edu.uci.ics.hyracks.api.io.IODeviceHandle;
+import edu.uci.ics.hyracks.storage.common.buffercache.BufferCache;
+import edu.uci.ics.hyracks.storage.common.buffercache.HeapBufferAllocator;
+import edu.uci.ics.hyracks.storage.common.buffercache.IBufferCache;
+import edu.uci.ics.hyracks.storage.common.buffercache.ICachedPage;
+import edu.uci.ics.hyracks.storage.common.buffercache.PageReplacementStrategies;
+import edu.uci.ics.hyracks.storage.common.file.BufferedFileHandle;
+import edu.uci.ics.hyracks.storage.common.smi.TransientFileMapManager;
+import edu.uci.ics.hyracks.test.support.TestUtils;
+
+/**
+ * Replays a trace that mixes point lookups on a hot set of pages with large
+ * sequential scans against buffer caches using each page replacement
+ * strategy, and logs the hit ratio of every strategy. Misses are counted as
+ * the reads the buffer cache issues to the IO manager.
+ */
+public class PageReplacementReplayTest {
+    private static final Logger LOGGER = Logger.getLogger(PageReplacementReplayTest.class.getName());
+
+    protected static final List<String> openedFiles = new ArrayList<String>();
+    protected static final SimpleDateFormat simpleDateFormat = new SimpleDateFormat("ddMMyy-hhmmssSS");
+    protected static final String tmpDir = System.getProperty("java.io.tmpdir");
+    protected static final String sep = System.getProperty("file.separator");
+
+    private static final int PAGE_SIZE = 256;
+    private static final int NUM_PAGES = 100;
+    private static final int MAX_OPEN_FILES = 10;
+    private static final int HYRACKS_FRAME_SIZE = PAGE_SIZE;
+
+    private static final int HOT_SET_PAGES = 60;
+    private static final int LOOKUPS_PER_ROUND = 300;
+    private static final int SCAN_PAGES_PER_ROUND = 200;
+    private static final int NUM_ROUNDS = 50;
+
+    private IHyracksTaskContext ctx = TestUtils.create(HYRACKS_FRAME_SIZE);
+
+    private String getFileName() {
+        String fileName = tmpDir + sep + simpleDateFormat.format(new Date()) + openedFiles.size();
+        openedFiles.add(fileName);
+        return fileName;
+    }
+
+    private double replay(String strategyName) throws HyracksDataException {
+        ReadCountingIOManager ioManager = new ReadCountingIOManager(ctx.getIOManager());
+        TransientFileMapManager fileMapManager = new TransientFileMapManager();
+        IBufferCache bufferCache = new BufferCache(ioManager, new HeapBufferAllocator(),
+                PageReplacementStrategies.create(strategyName), fileMapManager, PAGE_SIZE, NUM_PAGES, MAX_OPEN_FILES);
+        FileReference file = new FileReference(new File(getFileName()));
+        bufferCache.createFile(file);
+        int fileId = fileMapManager.lookupFileId(file);
+        bufferCache.openFile(fileId);
+
+        Random rnd = new Random(50);
+        int accesses = 0;
+        int nextScanPage = HOT_SET_PAGES;
+        for (int i = 0; i < NUM_ROUNDS; i++) {
+            for (int j = 0; j < LOOKUPS_PER_ROUND; j++) {
+                access(bufferCache, fileId, rnd.nextInt(HOT_SET_PAGES));
+                ++accesses;
+            }
+            for (int j = 0; j < SCAN_PAGES_PER_ROUND; j++) {
+                access(bufferCache, fileId, nextScanPage++);
+                ++accesses;
+            }
+        }
+
+        bufferCache.closeFile(fileId);
+        bufferCache.close();
+
+        double hitRatio = 1.0 - ioManager.reads / (double) accesses;
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info(strategyName + ": " + accesses + " accesses, " + ioManager.reads + " misses, hit ratio "
+                    + hitRatio);
+        }
+        return hitRatio;
+    }
+
+    private void access(IBufferCache bufferCache, int fileId, int pageId) throws HyracksDataException {
+        ICachedPage page = bufferCache.pin(BufferedFileHandle.getDiskPageId(fileId, pageId), false);
+        bufferCache.unpin(page);
+    }
+
+    @Test
+    public void mixedScanLookupReplayTest() throws Exception {
+        double clockHitRatio = replay(PageReplacementStrategies.CLOCK);
+        double twoQueueHitRatio = replay(PageReplacementStrategies.TWO_QUEUE);
+
+        // the scans must not flush the hot set out of the 2Q cache
+        Assert.assertTrue(twoQueueHitRatio > clockHitRatio);
+    }
+
+    @AfterClass
+    public static void cleanup() throws Exception {
+        for (String s : openedFiles) {
+            File f = new File(s);
+            f.deleteOnExit();
+        }
+    }
+
+    private static class ReadCountingIOManager implements IIOManager {
+        private final IIOManager ioManager;
+        private int reads;
+
+        public ReadCountingIOManager(IIOManager ioManager) {
+            this.ioManager = ioManager;
+        }
+
+        @Override
+        public List<IODeviceHandle> getIODevices() {
+            return ioManager.getIODevices();
+        }
+
+        @Override
+        public FileHandle open(FileReference fileRef, FileReadWriteMode rwMode, FileSyncMode syncMode)
+                throws HyracksDataException {
+            return ioManager.open(fileRef, rwMode, syncMode);
+        }
+
+        @Override
+        public int syncWrite(FileHandle fHandle, long offset, ByteBuffer data) throws HyracksDataException {
+            return ioManager.syncWrite(fHandle, offset, data);
+        }
+
+        @Override
+        public int syncRead(FileHandle fHandle, long offset, ByteBuffer data) throws HyracksDataException {
+            ++reads;
+            return ioManager.syncRead(fHandle, offset, data);
+        }
+
+        @Override
+        public IIOFuture asyncWrite(FileHandle fHandle, long offset, ByteBuffer data) {
+            return ioManager.asyncWrite(fHandle, offset, data);
+        }
+
+        @Override
+        public IIOFuture asyncRead(FileHandle fHandle, long offset, ByteBuffer data) {
+            ++reads;
+            return ioManager.asyncRead(fHandle, offset, data);
+        }
+
+        @Override
+        public void close(FileHandle fHandle) throws HyracksDataException {
+            ioManager.close(fHandle);
+        }
+    }
+}